@@ -38,6 +38,7 @@ import com.hivemq.migration.MigrationUnit;
 import com.hivemq.migration.Migrations;
 import com.hivemq.migration.meta.PersistenceType;
 import com.hivemq.persistence.PersistenceStartup;
+import com.hivemq.persistence.local.memory.MemoryPersistenceSnapshots;
 import com.hivemq.statistics.UsageStatistics;
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.lang3.StringUtils;
@@ -143,6 +144,11 @@ public class HiveMQServer {
         if (persistenceInjector.getInstance(ShutdownHooks.class).isShuttingDown()) {
             throw new StartAbortedException("User aborted.");
         }
+        // must happen before the main injector is created, the topic tree is built from the restored subscriptions
+        if (configService.persistenceConfigurationService().getMode() == PersistenceMode.IN_MEMORY &&
+                InternalConfigurations.MEMORY_PERSISTENCE_SNAPSHOT_ENABLED.get()) {
+            persistenceInjector.getInstance(MemoryPersistenceSnapshots.class).restore();
+        }
         if (migrate && configService.persistenceConfigurationService().getMode() != PersistenceMode.IN_MEMORY) {
             if (migrations.size() + valueMigrations.size() > 0) {
                 if (migrations.isEmpty()) {
@@ -17,6 +17,7 @@ package com.hivemq.bootstrap;
 
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.util.concurrent.SettableFuture;
+import com.hivemq.codec.encoder.mqtt5.Mqtt5OutboundTopicAliases;
 import com.hivemq.configuration.service.entity.Listener;
 import com.hivemq.extension.sdk.api.annotations.NotNull;
 import com.hivemq.extension.sdk.api.annotations.Nullable;
@@ -69,6 +70,7 @@ public class ClientConnection implements ClientConnectionContext {
     private @Nullable Long connectReceivedTimestamp;
     private @Nullable Long maxPacketSizeSend;
     private @NotNull String @Nullable [] topicAliasMapping;
+    private @Nullable Mqtt5OutboundTopicAliases outboundTopicAliases;
     private boolean noSharedSubscription;
     private boolean clientIdAssigned;
     private boolean incomingPublishesSkipRest;
@@ -80,6 +82,10 @@ public class ClientConnection implements ClientConnectionContext {
     private boolean sendWill;
     private boolean preventLwt;
     private boolean inFlightMessagesSent;
+    private boolean connectedWithWill;
+    private volatile @Nullable ClientConnection takeoverSuccessor;
+    private volatile @Nullable Long handedOverSessionExpiryInterval;
+    private @Nullable Long takeoverStartNanos;
     private @Nullable SslClientCertificate authCertificate;
     private @Nullable String authSniHostname;
     private @Nullable String authCipherSuite;
@@ -437,6 +443,15 @@ public class ClientConnection implements ClientConnectionContext {
         this.topicAliasMapping = topicAliasMapping;
     }
 
+    @Override
+    public @Nullable Mqtt5OutboundTopicAliases getOutboundTopicAliases() {
+        return outboundTopicAliases;
+    }
+
+    public void setOutboundTopicAliases(final @NotNull Mqtt5OutboundTopicAliases outboundTopicAliases) {
+        this.outboundTopicAliases = outboundTopicAliases;
+    }
+
     /**
      * True if it is guarantied that this client has no shared subscriptions, if false it is unclear.
      */
@@ -561,6 +576,53 @@ public class ClientConnection implements ClientConnectionContext {
         this.inFlightMessagesSent = inFlightMessagesSent;
     }
 
+    /**
+     * Whether the CONNECT of this connection contained a will. A will is only persisted with the client session on
+     * connect, so without one the session can never contain a will of this connection.
+     */
+    public boolean isConnectedWithWill() {
+        return connectedWithWill;
+    }
+
+    public void setConnectedWithWill(final boolean connectedWithWill) {
+        this.connectedWithWill = connectedWithWill;
+    }
+
+    /**
+     * The connection that takes over the session of this connection and resumes it (clean start false).
+     */
+    public @Nullable ClientConnection getTakeoverSuccessor() {
+        return takeoverSuccessor;
+    }
+
+    public void setTakeoverSuccessor(final @Nullable ClientConnection takeoverSuccessor) {
+        this.takeoverSuccessor = takeoverSuccessor;
+    }
+
+    /**
+     * The session expiry interval of the session the previous connection handed over to this connection without
+     * persisting its disconnect, null if the session was not handed over. A handed over session is still marked as
+     * connected in the client session persistence.
+     */
+    public @Nullable Long getHandedOverSessionExpiryInterval() {
+        return handedOverSessionExpiryInterval;
+    }
+
+    public void setHandedOverSessionExpiryInterval(final @Nullable Long handedOverSessionExpiryInterval) {
+        this.handedOverSessionExpiryInterval = handedOverSessionExpiryInterval;
+    }
+
+    /**
+     * The {@link System#nanoTime()} at which this connection started to take over the session of another connection.
+     */
+    public @Nullable Long getTakeoverStartNanos() {
+        return takeoverStartNanos;
+    }
+
+    public void setTakeoverStartNanos(final @Nullable Long takeoverStartNanos) {
+        this.takeoverStartNanos = takeoverStartNanos;
+    }
+
     public boolean isMessagesInFlight() {
         return !inFlightMessagesSent || inFlightMessageCount() > 0;
     }
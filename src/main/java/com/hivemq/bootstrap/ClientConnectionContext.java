@@ -16,6 +16,7 @@
 package com.hivemq.bootstrap;
 
 import com.google.common.util.concurrent.SettableFuture;
+import com.hivemq.codec.encoder.mqtt5.Mqtt5OutboundTopicAliases;
 import com.hivemq.configuration.service.entity.Listener;
 import com.hivemq.extension.sdk.api.annotations.NotNull;
 import com.hivemq.extension.sdk.api.annotations.Nullable;
@@ -141,6 +142,8 @@ public interface ClientConnectionContext {
 
     void setTopicAliasMapping(@NotNull String @NotNull [] strings);
 
+    @Nullable Mqtt5OutboundTopicAliases getOutboundTopicAliases();
+
     @Nullable String getAuthMethod();
 
     void setAuthMethod(@NotNull String authMethod);
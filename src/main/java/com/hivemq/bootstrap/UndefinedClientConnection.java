@@ -16,6 +16,7 @@
 package com.hivemq.bootstrap;
 
 import com.google.common.util.concurrent.SettableFuture;
+import com.hivemq.codec.encoder.mqtt5.Mqtt5OutboundTopicAliases;
 import com.hivemq.configuration.service.entity.Listener;
 import com.hivemq.extension.sdk.api.annotations.NotNull;
 import com.hivemq.extension.sdk.api.annotations.Nullable;
@@ -220,6 +221,12 @@ public class UndefinedClientConnection implements ClientConnectionContext {
         this.topicAliasMapping = topicAliasMapping;
     }
 
+    @Override
+    public @Nullable Mqtt5OutboundTopicAliases getOutboundTopicAliases() {
+        // outgoing topic aliases are only assigned after the CONNECT
+        return null;
+    }
+
     @Override
     public boolean isClientIdAssigned() {
         return clientIdAssigned;
@@ -0,0 +1,93 @@
+/*
+ * Copyright 2019-present HiveMQ GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hivemq.bootstrap.netty;
+
+import com.hivemq.extension.sdk.api.annotations.NotNull;
+import io.netty.channel.Channel;
+import io.netty.util.Attribute;
+import io.netty.util.AttributeKey;
+
+/**
+ * Controls the auto read of a channel that is paused by several independent owners.
+ * <p>
+ * Every owner pauses and resumes reading for its own {@link Reason}. The channel reads again only when no reason is
+ * left, so an owner never resumes a channel that another owner still wants paused. The state is only changed on the
+ * event loop of the channel, calls from other threads are handed over to it.
+ */
+public class AutoReadGate {
+
+    public enum Reason {
+        CONNECT_BARRIER,
+        SUBSCRIBE_BARRIER,
+        OVERLOAD_PROTECTION,
+        RATE_LIMIT
+    }
+
+    private static final @NotNull AttributeKey<AutoReadGate> CHANNEL_ATTRIBUTE_NAME =
+            AttributeKey.valueOf("AutoReadGate");
+
+    private final @NotNull Channel channel;
+    // one bit per reason, only accessed by the event loop of the channel
+    private int pauseReasons;
+    private AutoReadGate(final @NotNull Channel channel) {
+        this.channel = channel;
+    }
+
+    public static @NotNull AutoReadGate of(final @NotNull Channel channel) {
+        final Attribute<AutoReadGate> attribute = channel.attr(CHANNEL_ATTRIBUTE_NAME);
+        final AutoReadGate gate = attribute.get();
+        if (gate != null) {
+            return gate;
+        }
+        final AutoReadGate newGate = new AutoReadGate(channel);
+        final AutoReadGate existingGate = attribute.setIfAbsent(newGate);
+        return existingGate != null ? existingGate : newGate;
+    }
+
+    public void pause(final @NotNull Reason reason) {
+        if (!channel.eventLoop().inEventLoop()) {
+            channel.eventLoop().execute(() -> pause(reason));
+            return;
+        }
+        pauseReasons |= 1 << reason.ordinal();
+        channel.config().setAutoRead(false);
+    }
+
+    /**
+     * Removes the reason. Resuming a reason that does not pause the channel has no effect.
+     */
+    public void resume(final @NotNull Reason reason) {
+        if (!channel.eventLoop().inEventLoop()) {
+            channel.eventLoop().execute(() -> resume(reason));
+            return;
+        }
+        final int bit = 1 << reason.ordinal();
+        if ((pauseReasons & bit) == 0) {
+            return;
+        }
+        pauseReasons &= ~bit;
+        if (pauseReasons == 0 && channel.isActive()) {
+            channel.config().setAutoRead(true);
+        }
+    }
+
+    /**
+     * Must be called on the event loop of the channel.
+     */
+    public boolean isPaused(final @NotNull Reason reason) {
+        return (pauseReasons & (1 << reason.ordinal())) != 0;
+    }
+}
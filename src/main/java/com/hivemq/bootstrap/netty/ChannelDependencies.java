@@ -27,6 +27,7 @@ import com.hivemq.extensions.handler.ClientLifecycleEventHandler;
 import com.hivemq.extensions.handler.IncomingPublishHandler;
 import com.hivemq.extensions.handler.IncomingSubscribeHandler;
 import com.hivemq.extensions.handler.PluginInitializerHandler;
+import com.hivemq.limitation.OverloadProtection;
 import com.hivemq.logging.EventLog;
 import com.hivemq.metrics.MetricsHolder;
 import com.hivemq.metrics.handler.GlobalMQTTMessageCounter;
@@ -40,11 +41,15 @@ import com.hivemq.mqtt.handler.connect.NoConnectIdleHandler;
 import com.hivemq.mqtt.handler.disconnect.DisconnectHandler;
 import com.hivemq.mqtt.handler.disconnect.MqttServerDisconnector;
 import com.hivemq.mqtt.handler.ping.PingRequestHandler;
+import com.hivemq.mqtt.handler.publish.AdaptiveFlushHandler;
+import com.hivemq.mqtt.handler.publish.FlushMetrics;
 import com.hivemq.mqtt.handler.publish.MessageExpiryHandler;
 import com.hivemq.mqtt.handler.publish.PublishFlushHandler;
 import com.hivemq.mqtt.handler.subscribe.SubscribeHandler;
 import com.hivemq.mqtt.handler.unsubscribe.UnsubscribeHandler;
+import com.hivemq.mqtt.services.SharedSubscriptionDispatcher;
 import com.hivemq.security.ssl.SslParameterHandler;
+import com.hivemq.throttling.ThrottledClients;
 import io.netty.channel.group.ChannelGroup;
 import io.netty.handler.traffic.GlobalTrafficShapingHandler;
 
@@ -83,6 +88,10 @@ public class ChannelDependencies {
     private final @NotNull InterceptorHandler interceptorHandler;
     private final @NotNull GlobalMQTTMessageCounter globalMQTTMessageCounter;
     private final @NotNull ShutdownHooks shutdownHooks;
+    private final @NotNull SharedSubscriptionDispatcher sharedSubscriptionDispatcher;
+    private final @NotNull OverloadProtection overloadProtection;
+    private final @NotNull ThrottledClients throttledClients;
+    private final @NotNull FlushMetrics flushMetrics;
     @Inject
     public ChannelDependencies(
             final @NotNull NoConnectIdleHandler noConnectIdleHandler,
@@ -114,7 +123,11 @@ public class ChannelDependencies {
             final @NotNull MqttServerDisconnector mqttServerDisconnector,
             final @NotNull InterceptorHandler interceptorHandler,
             final @NotNull GlobalMQTTMessageCounter globalMQTTMessageCounter,
-            final @NotNull ShutdownHooks shutdownHooks) {
+            final @NotNull ShutdownHooks shutdownHooks,
+            final @NotNull SharedSubscriptionDispatcher sharedSubscriptionDispatcher,
+            final @NotNull OverloadProtection overloadProtection,
+            final @NotNull ThrottledClients throttledClients,
+            final @NotNull FlushMetrics flushMetrics) {
         this.noConnectIdleHandler = noConnectIdleHandler;
         this.connectHandlerProvider = connectHandlerProvider;
         this.connectionLimiterHandler = connectionLimiterHandler;
@@ -145,6 +158,10 @@ public class ChannelDependencies {
         this.mqttServerDisconnector = mqttServerDisconnector;
         this.interceptorHandler = interceptorHandler;
         this.globalMQTTMessageCounter = globalMQTTMessageCounter;
+        this.sharedSubscriptionDispatcher = sharedSubscriptionDispatcher;
+        this.overloadProtection = overloadProtection;
+        this.throttledClients = throttledClients;
+        this.flushMetrics = flushMetrics;
     }
 
     @NotNull public NoConnectIdleHandler getNoConnectIdleHandler() {
@@ -264,10 +281,22 @@ public class ChannelDependencies {
     }
 
     @NotNull public PublishFlushHandler createPublishFlushHandler() {
-        return new PublishFlushHandler(metricsHolder);
+        return new PublishFlushHandler(metricsHolder, sharedSubscriptionDispatcher);
+    }
+
+    @NotNull public AdaptiveFlushHandler createAdaptiveFlushHandler() {
+        return new AdaptiveFlushHandler(flushMetrics);
     }
 
     @NotNull public ShutdownHooks getShutdownHooks() {
         return shutdownHooks;
     }
+
+    @NotNull public OverloadProtection getOverloadProtection() {
+        return overloadProtection;
+    }
+
+    @NotNull public ThrottledClients getThrottledClients() {
+        return throttledClients;
+    }
 }
@@ -28,6 +28,8 @@ public class ChannelHandlerNames {
     public static final String ALL_CHANNELS_GROUP_HANDLER = "all_channel_group_handler";
     public static final String MQTT_MESSAGE_DECODER = "mqtt_message_decoder";
     public static final String GLOBAL_THROTTLING_HANDLER = "global_throttling_handler";
+    public static final String OVERLOAD_PROTECTION_HANDLER = "overload_protection_handler";
+    public static final String FLUSH_CONSOLIDATION_HANDLER = "flush_consolidation_handler";
     public static final String NEW_CONNECTION_IDLE_HANDLER = "new_connection_idle_handler";
     public static final String NO_CONNECT_IDLE_EVENT_HANDLER = "no_connect_idle_event_handler";
     public static final String NO_TLS_HANDSHAKE_IDLE_EVENT_HANDLER = "no_tls_handshake_idle_event_handler";
@@ -43,6 +45,7 @@ public class ChannelHandlerNames {
     public static final String MQTT_KEEPALIVE_IDLE_HANDLER = "mqtt_keepalive_idle_handler";
     public static final String HTTP_SERVER_CODEC = "http_server_codec";
     public static final String HTTP_OBJECT_AGGREGATOR = "http_object_aggregator";
+    public static final String WEBSOCKET_SERVER_EXTENSION_HANDLER = "websocket_server_extension_handler";
     public static final String WEBSOCKET_SERVER_PROTOCOL_HANDLER = "websocket_server_protocol_handler";
     public static final String WEBSOCKET_BINARY_FRAME_HANDLER = "websocket_binary_frame_handler";
     public static final String WEBSOCKET_CONTINUATION_FRAME_HANDLER = "websocket_continuation_frame_handler";
@@ -24,6 +24,7 @@ import com.hivemq.configuration.service.InternalConfigurations;
 import com.hivemq.configuration.service.RestrictionsConfigurationService;
 import com.hivemq.configuration.service.entity.Listener;
 import com.hivemq.extension.sdk.api.annotations.NotNull;
+import com.hivemq.limitation.OverloadProtectionHandler;
 import com.hivemq.mqtt.handler.connect.MessageBarrier;
 import com.hivemq.mqtt.handler.publish.PublishFlushHandler;
 import com.hivemq.security.exception.SslException;
@@ -40,6 +41,7 @@ import static com.hivemq.bootstrap.netty.ChannelHandlerNames.ALL_CHANNELS_GROUP_
 import static com.hivemq.bootstrap.netty.ChannelHandlerNames.CLIENT_LIFECYCLE_EVENT_HANDLER;
 import static com.hivemq.bootstrap.netty.ChannelHandlerNames.CONNECTION_LIMITER;
 import static com.hivemq.bootstrap.netty.ChannelHandlerNames.EXCEPTION_HANDLER;
+import static com.hivemq.bootstrap.netty.ChannelHandlerNames.FLUSH_CONSOLIDATION_HANDLER;
 import static com.hivemq.bootstrap.netty.ChannelHandlerNames.GLOBAL_THROTTLING_HANDLER;
 import static com.hivemq.bootstrap.netty.ChannelHandlerNames.INTERCEPTOR_HANDLER;
 import static com.hivemq.bootstrap.netty.ChannelHandlerNames.MESSAGE_EXPIRY_HANDLER;
@@ -54,6 +56,7 @@ import static com.hivemq.bootstrap.netty.ChannelHandlerNames.MQTT_SUBSCRIBE_HAND
 import static com.hivemq.bootstrap.netty.ChannelHandlerNames.MQTT_UNSUBSCRIBE_HANDLER;
 import static com.hivemq.bootstrap.netty.ChannelHandlerNames.NEW_CONNECTION_IDLE_HANDLER;
 import static com.hivemq.bootstrap.netty.ChannelHandlerNames.NO_CONNECT_IDLE_EVENT_HANDLER;
+import static com.hivemq.bootstrap.netty.ChannelHandlerNames.OVERLOAD_PROTECTION_HANDLER;
 import static com.hivemq.bootstrap.netty.ChannelHandlerNames.PLUGIN_INITIALIZER_HANDLER;
 import static com.hivemq.bootstrap.netty.ChannelHandlerNames.PUBLISH_FLUSH_HANDLER;
 import static com.hivemq.logging.LoggingUtils.appendListenerToMessage;
@@ -65,6 +68,8 @@ public abstract class AbstractChannelInitializer extends ChannelInitializer<Chan
     private final @NotNull Listener listener;
     private final boolean throttlingEnabled;
     private final boolean legacyNettyShutdown;
+    private final boolean overloadProtectionEnabled;
+    private final boolean flushConsolidationEnabled;
     protected AbstractChannelInitializer(
             final @NotNull ChannelDependencies channelDependencies,
             final @NotNull Listener listener) {
@@ -73,6 +78,8 @@ public abstract class AbstractChannelInitializer extends ChannelInitializer<Chan
         final boolean incomingEnabled = channelDependencies.getRestrictionsConfigurationService().incomingLimit() > 0;
         final boolean outgoingEnabled = InternalConfigurations.OUTGOING_BANDWIDTH_THROTTLING_DEFAULT_BYTES_PER_SEC > 0;
         legacyNettyShutdown = InternalConfigurations.NETTY_SHUTDOWN_LEGACY;
+        overloadProtectionEnabled = InternalConfigurations.OVERLOAD_PROTECTION_ENABLED.get();
+        flushConsolidationEnabled = InternalConfigurations.FLUSH_CONSOLIDATION_ENABLED.get();
         throttlingEnabled = incomingEnabled || outgoingEnabled;
     }
 
@@ -95,6 +102,15 @@ public abstract class AbstractChannelInitializer extends ChannelInitializer<Chan
         if (throttlingEnabled) {
             ch.pipeline().addLast(GLOBAL_THROTTLING_HANDLER, channelDependencies.getGlobalTrafficShapingHandler());
         }
+        if (overloadProtectionEnabled) {
+            ch.pipeline()
+                    .addLast(OVERLOAD_PROTECTION_HANDLER,
+                            new OverloadProtectionHandler(channelDependencies.getOverloadProtection()));
+        }
+        if (flushConsolidationEnabled) {
+            // below the encoder so it coalesces the flushes of all encoded MQTT packets
+            ch.pipeline().addLast(FLUSH_CONSOLIDATION_HANDLER, channelDependencies.createAdaptiveFlushHandler());
+        }
         ch.pipeline().addLast(MQTT_MESSAGE_DECODER, new MQTTMessageDecoder(channelDependencies));
         ch.pipeline().addLast(MQTT_MESSAGE_ENCODER, channelDependencies.getMqttMessageEncoder());
         addNoConnectIdleHandler(ch);
@@ -33,12 +33,15 @@ import static com.hivemq.bootstrap.netty.ChannelHandlerNames.SSL_PARAMETER_HANDL
 public class TlsWebsocketChannelInitializer extends AbstractTlsChannelInitializer {
 
     @NotNull private final TlsWebsocketListener tlsWebsocketListener;
+    @NotNull private final WebSocketInitializer webSocketInitializer;
     public TlsWebsocketChannelInitializer(
             @NotNull final ChannelDependencies channelDependencies,
             @NotNull final TlsWebsocketListener tlsWebsocketListener,
             @NotNull final SslFactory sslFactory) {
         super(channelDependencies, tlsWebsocketListener, sslFactory);
         this.tlsWebsocketListener = tlsWebsocketListener;
+        // created once per listener, so the channels of the listener share its metrics
+        webSocketInitializer = new WebSocketInitializer(tlsWebsocketListener, channelDependencies.getMetricsHolder());
     }
 
     @Override
@@ -47,6 +50,6 @@ public class TlsWebsocketChannelInitializer extends AbstractTlsChannelInitialize
         final Tls.ClientAuthMode authMode = tlsWebsocketListener.getTls().getClientAuthMode();
         final String handlerName =
                 !Tls.ClientAuthMode.NONE.equals(authMode) ? SSL_CLIENT_CERTIFICATE_HANDLER : SSL_PARAMETER_HANDLER;
-        new WebSocketInitializer(tlsWebsocketListener).addHandlers(ch, handlerName);
+        webSocketInitializer.addHandlers(ch, handlerName);
     }
 }
@@ -31,20 +31,21 @@ import static com.hivemq.bootstrap.netty.ChannelHandlerNames.NON_SSL_HANDLER;
  */
 public class WebsocketChannelInitializer extends AbstractChannelInitializer {
 
-    @NotNull private final WebsocketListener websocketListener;
     @NotNull private final Provider<NonSslHandler> nonSslHandlerProvider;
+    @NotNull private final WebSocketInitializer webSocketInitializer;
     public WebsocketChannelInitializer(
             @NotNull final ChannelDependencies channelDependencies,
             @NotNull final WebsocketListener websocketListener,
             @NotNull final Provider<NonSslHandler> nonSslHandlerProvider) {
         super(channelDependencies, websocketListener);
-        this.websocketListener = websocketListener;
         this.nonSslHandlerProvider = nonSslHandlerProvider;
+        // created once per listener, so the channels of the listener share its metrics
+        webSocketInitializer = new WebSocketInitializer(websocketListener, channelDependencies.getMetricsHolder());
     }
 
     @Override
     protected void addSpecialHandlers(@NotNull final Channel ch) {
         ch.pipeline().addFirst(NON_SSL_HANDLER, nonSslHandlerProvider.get());
-        new WebSocketInitializer(websocketListener).addHandlers(ch, NON_SSL_HANDLER);
+        webSocketInitializer.addHandlers(ch, NON_SSL_HANDLER);
     }
 }
@@ -35,9 +35,11 @@ import com.hivemq.mqtt.message.reason.MqttCommonReasonCode;
 import com.hivemq.util.ReasonStrings;
 import com.hivemq.util.Strings;
 import com.hivemq.util.Topics;
+import com.hivemq.util.Utf8TopicValidator;
 import io.netty.buffer.ByteBuf;
 
 import static com.hivemq.mqtt.message.publish.PUBLISH.MESSAGE_EXPIRY_INTERVAL_NOT_SET;
+import static java.nio.charset.StandardCharsets.UTF_8;
 
 /**
  * Abstract Base Class for all Mqtt Decoders
@@ -197,6 +199,58 @@ public abstract class AbstractMqttDecoder<T extends Message> extends MqttDecoder
         return utf8String;
     }
 
+    /**
+     * Decodes the topic name of a PUBLISH and validates it in a single pass over its bytes with {@link
+     * Utf8TopicValidator}.
+     * <p>
+     * Results in {@link MqttCommonReasonCode#MALFORMED_PACKET} with DISCONNECT by:
+     * <p>
+     * - topic not UTF-8 well formed
+     * <p>
+     * - readable bytes less than indicated string length
+     * <p>
+     * Results in {@link MqttCommonReasonCode#TOPIC_NAME_INVALID} with DISCONNECT by:
+     * <p>
+     * - topic contains '+' or '#' character
+     *
+     * @param  clientConnectionContext     the connection of the mqtt client
+     * @param  buf                         the encoded ByteBuf of the message
+     * @param  utf8StringLength            length of the topic
+     * @param  validateMustNotCharacters   whether to check for UTF-8 well-formedness and the null character
+     * @param  validateShouldNotCharacters whether to check for control characters and non characters
+     * @return                             the topic, which may be empty, or {@code null} if failed
+     */
+    @Nullable protected String decodePublishTopic(
+            final @NotNull ClientConnectionContext clientConnectionContext,
+            final @NotNull ByteBuf buf,
+            final int utf8StringLength,
+            final boolean validateMustNotCharacters,
+            final boolean validateShouldNotCharacters) {
+        final int result = buf.readableBytes() < utf8StringLength ?
+                Utf8TopicValidator.MALFORMED :
+                Utf8TopicValidator.validateTopicName(buf,
+                        buf.readerIndex(),
+                        utf8StringLength,
+                        validateMustNotCharacters,
+                        validateShouldNotCharacters);
+        if (result == Utf8TopicValidator.MALFORMED) {
+            disconnector.disconnect(clientConnectionContext.getChannel(),
+                    "A client (IP: {}) sent a PUBLISH with a malformed 'topic'. This is not allowed. Disconnecting client.",
+                    "Sent a PUBLISH with malformed UTF-8 String for 'topic'",
+                    Mqtt5DisconnectReasonCode.MALFORMED_PACKET,
+                    String.format(ReasonStrings.DISCONNECT_MALFORMED_UTF8_STRING, "PUBLISH", "topic"));
+            return null;
+        }
+        final String topicName = buf.toString(buf.readerIndex(), utf8StringLength, UTF_8);
+        // The ByteBuf.toString method, doesn't move the read index, therefor we have to do this manually.
+        buf.skipBytes(utf8StringLength);
+        if (result == Utf8TopicValidator.WILDCARD) {
+            disconnectByWildcard(clientConnectionContext, topicName);
+            return null;
+        }
+        return topicName;
+    }
+
     /**
      * Decodes and validates the authentication method.
      *
@@ -248,6 +302,28 @@ public abstract class AbstractMqttDecoder<T extends Message> extends MqttDecoder
             final @NotNull ClientConnectionContext clientConnectionContext,
             final @NotNull String parameterName,
             final @NotNull String topicName) {
+        if (topicEmpty(clientConnectionContext, parameterName, topicName)) {
+            return true;
+        }
+        if (Topics.containsWildcard(topicName)) {
+            disconnectByWildcard(clientConnectionContext, topicName);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Results in {@link MqttCommonReasonCode#TOPIC_NAME_INVALID} with DISCONNECT if the topic is empty.
+     *
+     * @param  clientConnectionContext the connection of the mqtt client
+     * @param  parameterName           the name of the mqtt parameter (topic, response topic)
+     * @param  topicName               the topic
+     * @return                         true if empty, false if not
+     */
+    protected boolean topicEmpty(
+            final @NotNull ClientConnectionContext clientConnectionContext,
+            final @NotNull String parameterName,
+            final @NotNull String topicName) {
         if (topicName.isEmpty()) {
             disconnector.disconnect(clientConnectionContext.getChannel(),
                     "A client (ID: {}, IP: {}) sent a PUBLISH with an empty " + parameterName +
@@ -257,17 +333,19 @@ public abstract class AbstractMqttDecoder<T extends Message> extends MqttDecoder
                     String.format(ReasonStrings.DISCONNECT_TOPIC_NAME_INVALID_EMPTY, parameterName));
             return true;
         }
-        if (Topics.containsWildcard(topicName)) {
-            disconnector.disconnect(clientConnectionContext.getChannel(),
-                    "A client (ID: {}, IP: {}) sent a PUBLISH with a wildcard character (# or +). This is not allowed. Disconnecting client.",
-                    "Sent a PUBLISH with wildcard character (#/+) in topic: " + topicName,
-                    Mqtt5DisconnectReasonCode.TOPIC_NAME_INVALID,
-                    String.format(ReasonStrings.DISCONNECT_MALFORMED_WILDCARD, "PUBLISH"));
-            return true;
-        }
         return false;
     }
 
+    private void disconnectByWildcard(
+            final @NotNull ClientConnectionContext clientConnectionContext,
+            final @NotNull String topicName) {
+        disconnector.disconnect(clientConnectionContext.getChannel(),
+                "A client (ID: {}, IP: {}) sent a PUBLISH with a wildcard character (# or +). This is not allowed. Disconnecting client.",
+                "Sent a PUBLISH with wildcard character (#/+) in topic: " + topicName,
+                Mqtt5DisconnectReasonCode.TOPIC_NAME_INVALID,
+                String.format(ReasonStrings.DISCONNECT_MALFORMED_WILDCARD, "PUBLISH"));
+    }
+
     /**
      * Decodes and validates a correlation data property
      * <p>
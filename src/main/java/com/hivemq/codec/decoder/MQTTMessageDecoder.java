@@ -29,6 +29,8 @@ import com.hivemq.mqtt.message.ProtocolVersion;
 import com.hivemq.mqtt.message.mqtt5.Mqtt5UserProperties;
 import com.hivemq.mqtt.message.reason.Mqtt5ConnAckReasonCode;
 import com.hivemq.mqtt.message.reason.Mqtt5DisconnectReasonCode;
+import com.hivemq.throttling.ClientRateLimiter;
+import com.hivemq.throttling.ThrottledClients;
 import com.hivemq.util.ReasonStrings;
 import io.netty.buffer.ByteBuf;
 import io.netty.channel.ChannelHandlerContext;
@@ -37,6 +39,7 @@ import io.netty.handler.codec.ByteToMessageDecoder;
 import java.util.List;
 
 import static com.hivemq.mqtt.message.MessageType.CONNECT;
+import static com.hivemq.mqtt.message.MessageType.PUBLISH;
 
 /**
  * @author Dominik Obermaier
@@ -53,7 +56,9 @@ public class MQTTMessageDecoder extends ByteToMessageDecoder {
     private final @NotNull MqttDecoders mqttDecoders;
     private final @NotNull MqttServerDisconnector mqttServerDisconnector;
     private final @NotNull GlobalMQTTMessageCounter globalMQTTMessageCounter;
+    private final @Nullable ThrottledClients throttledClients;
     private final int maxPacketSize;
+    private @Nullable ClientRateLimiter clientRateLimiter;
     public MQTTMessageDecoder(
             final @NotNull MqttConnectDecoder connectDecoder,
             final @NotNull MqttConnacker mqttConnacker,
@@ -61,11 +66,29 @@ public class MQTTMessageDecoder extends ByteToMessageDecoder {
             final @NotNull MqttDecoders mqttDecoders,
             final @NotNull MqttServerDisconnector mqttServerDisconnector,
             final @NotNull GlobalMQTTMessageCounter globalMQTTMessageCounter) {
+        this(connectDecoder,
+                mqttConnacker,
+                mqttConfig,
+                mqttDecoders,
+                mqttServerDisconnector,
+                globalMQTTMessageCounter,
+                null);
+    }
+
+    public MQTTMessageDecoder(
+            final @NotNull MqttConnectDecoder connectDecoder,
+            final @NotNull MqttConnacker mqttConnacker,
+            final @NotNull MqttConfigurationService mqttConfig,
+            final @NotNull MqttDecoders mqttDecoders,
+            final @NotNull MqttServerDisconnector mqttServerDisconnector,
+            final @NotNull GlobalMQTTMessageCounter globalMQTTMessageCounter,
+            final @Nullable ThrottledClients throttledClients) {
         this.connectDecoder = connectDecoder;
         this.mqttConnacker = mqttConnacker;
         this.mqttDecoders = mqttDecoders;
         this.mqttServerDisconnector = mqttServerDisconnector;
         this.globalMQTTMessageCounter = globalMQTTMessageCounter;
+        this.throttledClients = throttledClients;
         this.maxPacketSize = mqttConfig.maxPacketSize();
     }
 
@@ -75,7 +98,8 @@ public class MQTTMessageDecoder extends ByteToMessageDecoder {
                 channelDependencies.getConfigurationService().mqttConfiguration(),
                 channelDependencies.getMqttDecoders(),
                 channelDependencies.getMqttServerDisconnector(),
-                channelDependencies.getGlobalMQTTMessageCounter());
+                channelDependencies.getGlobalMQTTMessageCounter(),
+                channelDependencies.getThrottledClients());
     }
 
     @Override
@@ -202,6 +226,19 @@ public class MQTTMessageDecoder extends ByteToMessageDecoder {
         return connectDecoder.decode(clientConnectionContext, messageBuffer, fixedHeader);
     }
 
+    private void limitPublishRate(
+            final @NotNull ThrottledClients throttledClients,
+            final @NotNull ClientConnectionContext clientConnectionContext,
+            final int packetSize) {
+        ClientRateLimiter clientRateLimiter = this.clientRateLimiter;
+        if (clientRateLimiter == null) {
+            clientRateLimiter = throttledClients.createRateLimiter(clientConnectionContext.getChannel(),
+                    clientConnectionContext.getConnectedListener());
+            this.clientRateLimiter = clientRateLimiter;
+        }
+        clientRateLimiter.publishReceived(clientConnectionContext, packetSize);
+    }
+
     private @Nullable Message handleMessage(
             final @NotNull ByteBuf buf,
             final @NotNull ClientConnectionContext clientConnectionContext,
@@ -218,6 +255,9 @@ public class MQTTMessageDecoder extends ByteToMessageDecoder {
             return null;
         }
         globalMQTTMessageCounter.countInboundTraffic(packetSize);
+        if (messageType == PUBLISH && throttledClients != null) {
+            limitPublishRate(throttledClients, clientConnectionContext, packetSize);
+        }
         // We're slicing the buffer to the exact MQTT message size so we don't have to pass the actual length around
         final ByteBuf messageBuffer = buf.readSlice(remainingLength);
         // We mark the end of the message
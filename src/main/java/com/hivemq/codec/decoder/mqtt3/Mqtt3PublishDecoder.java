@@ -28,7 +28,6 @@ import com.hivemq.mqtt.message.MessageType;
 import com.hivemq.mqtt.message.QoS;
 import com.hivemq.mqtt.message.publish.Mqtt3PUBLISH;
 import com.hivemq.mqtt.message.publish.PUBLISHFactory;
-import com.hivemq.util.Strings;
 import io.netty.buffer.ByteBuf;
 
 /**
@@ -69,16 +68,9 @@ public class Mqtt3PublishDecoder extends AbstractMqttPublishDecoder<Mqtt3PUBLISH
         if (utf8StringLength == DISCONNECTED) {
             return null;
         }
-        final String topicName;
-        if (validateUTF8) {
-            topicName = decodeUTF8Topic(clientConnectionContext, buf, utf8StringLength, "topic", MessageType.PUBLISH);
-            if (topicName == null) {
-                return null;
-            }
-        } else {
-            topicName = Strings.getPrefixedString(buf, utf8StringLength);
-        }
-        if (topicInvalid(clientConnectionContext, "topic", topicName)) {
+        final String topicName =
+                decodePublishTopic(clientConnectionContext, buf, utf8StringLength, validateUTF8, validateUTF8);
+        if (topicName == null || topicEmpty(clientConnectionContext, "topic", topicName)) {
             return null;
         }
         final int packetIdentifier;
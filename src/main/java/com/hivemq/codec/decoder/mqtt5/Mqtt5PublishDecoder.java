@@ -87,16 +87,16 @@ public class Mqtt5PublishDecoder extends AbstractMqttPublishDecoder<Mqtt5PUBLISH
         if (retain == null) {
             return null;
         }
-        String topicName = decodeUTF8Topic(clientConnectionContext, buf, "topic", MessageType.PUBLISH);
+        final int utf8StringLength = decodeUTF8StringLength(clientConnectionContext, buf, "topic", MessageType.PUBLISH);
+        if (utf8StringLength == DISCONNECTED) {
+            return null;
+        }
+        String topicName = decodePublishTopic(clientConnectionContext, buf, utf8StringLength, true, validateUTF8);
         if (topicName == null) {
             return null;
         }
         if (topicName.isEmpty()) {
             topicName = null;
-        } else {
-            if (topicInvalid(clientConnectionContext, "topic", topicName)) {
-                return null;
-            }
         }
         final int packetIdentifier;
         if (qos > 0) {
@@ -0,0 +1,113 @@
+/*
+ * Copyright 2019-present HiveMQ GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hivemq.codec.encoder.mqtt5;
+
+import com.hivemq.extension.sdk.api.annotations.NotNull;
+import com.hivemq.limitation.TopicAliasLimiter;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static com.hivemq.mqtt.message.publish.PUBLISH.DEFAULT_NO_TOPIC_ALIAS;
+
+/**
+ * The topic aliases the broker assigned to the topics of outgoing PUBLISHes of one MQTT 5 connection.
+ * <p>
+ * At most the Topic Alias Maximum the client sent in its CONNECT is used. When all aliases are in use, the alias of
+ * the least recently sent topic is reassigned. Only accessed by the event loop of the connection. Once released, no
+ * aliases are used anymore, as PUBLISHes can still be encoded after the connection was closed.
+ */
+public class Mqtt5OutboundTopicAliases {
+
+    /**
+     * An alias costs 3 bytes for the Topic Alias property, so shorter topics are always sent in full.
+     */
+    static final int MIN_TOPIC_LENGTH = 8;
+
+    private final int maximum;
+    private final @NotNull TopicAliasLimiter topicAliasLimiter;
+    // access ordered, the first entry is the least recently used topic
+    private final @NotNull LinkedHashMap<String, Integer> aliases;
+    private boolean released;
+    public Mqtt5OutboundTopicAliases(final int maximum, final @NotNull TopicAliasLimiter topicAliasLimiter) {
+        this.maximum = maximum;
+        this.topicAliasLimiter = topicAliasLimiter;
+        aliases = new LinkedHashMap<>(16, 0.75f, true);
+    }
+
+    /**
+     * @return the alias that is already known to the client for the topic or {@link
+     *         com.hivemq.mqtt.message.publish.PUBLISH#DEFAULT_NO_TOPIC_ALIAS}.
+     */
+    int get(final @NotNull String topic) {
+        final Integer alias = aliases.get(topic);
+        return alias == null ? DEFAULT_NO_TOPIC_ALIAS : alias;
+    }
+
+    /**
+     * Proposes an alias for a topic that has none yet. The alias is only assigned by {@link #assign(String, int)}
+     * once the PUBLISH that introduces it to the client is actually encoded.
+     *
+     * @return the alias for the topic or {@link com.hivemq.mqtt.message.publish.PUBLISH#DEFAULT_NO_TOPIC_ALIAS} if
+     *         the topic should be sent without an alias.
+     */
+    int propose(final @NotNull String topic) {
+        if (released || topic.length() < MIN_TOPIC_LENGTH) {
+            return DEFAULT_NO_TOPIC_ALIAS;
+        }
+        if (aliases.size() < maximum) {
+            return topicAliasLimiter.outboundAliasesAvailable() ? aliases.size() + 1 : DEFAULT_NO_TOPIC_ALIAS;
+        }
+        return aliases.values().iterator().next();
+    }
+
+    void assign(final @NotNull String topic, final int alias) {
+        if (released) {
+            return;
+        }
+        if (aliases.size() >= maximum) {
+            final Iterator<Map.Entry<String, Integer>> iterator = aliases.entrySet().iterator();
+            final Map.Entry<String, Integer> leastRecentlyUsed = iterator.next();
+            iterator.remove();
+            topicAliasLimiter.removeOutboundUsage(leastRecentlyUsed.getKey());
+        }
+        aliases.put(topic, alias);
+        topicAliasLimiter.addOutboundUsage(topic);
+    }
+
+    /**
+     * @param bytes the bytes that were not sent because a PUBLISH used an alias instead of its topic.
+     */
+    void saved(final int bytes) {
+        topicAliasLimiter.outboundBytesSaved(bytes);
+    }
+
+    /**
+     * Releases the memory usage of the aliases when the connection is closed.
+     */
+    public void release() {
+        released = true;
+        for (final String topic : aliases.keySet()) {
+            topicAliasLimiter.removeOutboundUsage(topic);
+        }
+        aliases.clear();
+    }
+
+    int size() {
+        return aliases.size();
+    }
+}
@@ -16,8 +16,10 @@
 package com.hivemq.codec.encoder.mqtt5;
 
 import com.google.common.primitives.ImmutableIntArray;
+import com.hivemq.bootstrap.ClientConnectionContext;
 import com.hivemq.configuration.service.SecurityConfigurationService;
 import com.hivemq.extension.sdk.api.annotations.NotNull;
+import com.hivemq.extension.sdk.api.annotations.Nullable;
 import com.hivemq.mqtt.message.MessageType;
 import com.hivemq.mqtt.message.QoS;
 import com.hivemq.mqtt.message.dropping.MessageDroppedService;
@@ -29,9 +31,11 @@ import javax.inject.Singleton;
 
 import static com.hivemq.codec.encoder.mqtt5.Mqtt5MessageEncoderUtil.encodeIntProperty;
 import static com.hivemq.codec.encoder.mqtt5.Mqtt5MessageEncoderUtil.encodeNullableProperty;
+import static com.hivemq.codec.encoder.mqtt5.Mqtt5MessageEncoderUtil.encodeShortProperty;
 import static com.hivemq.codec.encoder.mqtt5.Mqtt5MessageEncoderUtil.encodeVariableByteIntegerProperty;
 import static com.hivemq.codec.encoder.mqtt5.Mqtt5MessageEncoderUtil.intPropertyEncodedLength;
 import static com.hivemq.codec.encoder.mqtt5.Mqtt5MessageEncoderUtil.nullablePropertyEncodedLength;
+import static com.hivemq.codec.encoder.mqtt5.Mqtt5MessageEncoderUtil.shortPropertyEncodedLength;
 import static com.hivemq.codec.encoder.mqtt5.Mqtt5MessageEncoderUtil.variableByteIntegerPropertyEncodedLength;
 import static com.hivemq.configuration.entity.mqtt.MqttConfigurationDefaults.MAX_EXPIRY_INTERVAL_DEFAULT;
 import static com.hivemq.mqtt.message.mqtt5.MessageProperties.CONTENT_TYPE;
@@ -40,6 +44,8 @@ import static com.hivemq.mqtt.message.mqtt5.MessageProperties.MESSAGE_EXPIRY_INT
 import static com.hivemq.mqtt.message.mqtt5.MessageProperties.PAYLOAD_FORMAT_INDICATOR;
 import static com.hivemq.mqtt.message.mqtt5.MessageProperties.RESPONSE_TOPIC;
 import static com.hivemq.mqtt.message.mqtt5.MessageProperties.SUBSCRIPTION_IDENTIFIER;
+import static com.hivemq.mqtt.message.mqtt5.MessageProperties.TOPIC_ALIAS;
+import static com.hivemq.mqtt.message.publish.PUBLISH.DEFAULT_NO_TOPIC_ALIAS;
 
 /**
  * @author Silvio Giebl
@@ -49,12 +55,58 @@ import static com.hivemq.mqtt.message.mqtt5.MessageProperties.SUBSCRIPTION_IDENT
 public class Mqtt5PublishEncoder extends Mqtt5MessageWithUserPropertiesEncoder<PUBLISH> {
 
     private static final int FIXED_HEADER = MessageType.PUBLISH.ordinal() << 4;
+    // the encoded length of the empty topic that is sent instead of an aliased topic
+    private static final int EMPTY_TOPIC_LENGTH = 2;
     public Mqtt5PublishEncoder(
             final @NotNull MessageDroppedService messageDroppedService,
             final @NotNull SecurityConfigurationService securityConfigurationService) {
         super(messageDroppedService, securityConfigurationService);
     }
 
+    @Override
+    public int bufferSize(
+            final @NotNull ClientConnectionContext clientConnectionContext,
+            final @NotNull PUBLISH publish) {
+        // creates the shared core once the PUBLISH is encoded for another subscriber, so the lengths below use it
+        publish.getSharedEncoding().prepare(publish);
+        final Mqtt5OutboundTopicAliases topicAliases = clientConnectionContext.getOutboundTopicAliases();
+        if (topicAliases == null) {
+            publish.setOutboundTopicAlias(DEFAULT_NO_TOPIC_ALIAS, false);
+            return super.bufferSize(clientConnectionContext, publish);
+        }
+        final String topic = publish.getTopic();
+        final int knownAlias = topicAliases.get(topic);
+        if (knownAlias != DEFAULT_NO_TOPIC_ALIAS) {
+            publish.setOutboundTopicAlias(knownAlias, true);
+            final int bufferSize = super.bufferSize(clientConnectionContext, publish);
+            if (publish.getOmittedProperties() == 0) {
+                topicAliases.saved(topicLength(publish) - EMPTY_TOPIC_LENGTH -
+                        shortPropertyEncodedLength(knownAlias, DEFAULT_NO_TOPIC_ALIAS));
+            }
+            return bufferSize;
+        }
+        final int newAlias = topicAliases.propose(topic);
+        if (newAlias != DEFAULT_NO_TOPIC_ALIAS) {
+            publish.setOutboundTopicAlias(newAlias, false);
+            final int bufferSize = super.bufferSize(clientConnectionContext, publish);
+            // the alias is only known to the client if this PUBLISH is not dropped for its size
+            if (publish.getOmittedProperties() == 0) {
+                topicAliases.assign(topic, newAlias);
+                return bufferSize;
+            }
+        }
+        publish.setOutboundTopicAlias(DEFAULT_NO_TOPIC_ALIAS, false);
+        return super.bufferSize(clientConnectionContext, publish);
+    }
+
+    private static int topicLength(final @NotNull PUBLISH publish) {
+        final Mqtt5SharedPublishEncoding.Core core = publish.getSharedEncoding().get(publish);
+        if (core != null) {
+            return core.encodedTopic.length;
+        }
+        return MqttBinaryData.encodedLength(publish.getTopic());
+    }
+
     @Override
     void encode(final @NotNull PUBLISH publish, final @NotNull ByteBuf out) {
         encodeFixedHeader(publish, out);
@@ -65,7 +117,11 @@ public class Mqtt5PublishEncoder extends Mqtt5MessageWithUserPropertiesEncoder<P
     @Override
     int calculateRemainingLengthWithoutProperties(final @NotNull PUBLISH publish) {
         int remainingLength = 0;
-        remainingLength += MqttBinaryData.encodedLength(publish.getTopic());
+        if (publish.isOutboundTopicOmitted()) {
+            remainingLength += EMPTY_TOPIC_LENGTH;
+        } else {
+            remainingLength += topicLength(publish);
+        }
         // packetIdentifier
         if (publish.getQoS() != QoS.AT_MOST_ONCE) {
             remainingLength += 2;
@@ -80,8 +136,15 @@ public class Mqtt5PublishEncoder extends Mqtt5MessageWithUserPropertiesEncoder<P
     @Override
     int calculatePropertyLength(final @NotNull PUBLISH publish) {
         int propertyLength = 0;
-        propertyLength += fixedPropertyLength(publish);
-        propertyLength += publish.getUserProperties().encodedLength();
+        final Mqtt5SharedPublishEncoding.Core core = publish.getSharedEncoding().get(publish);
+        if (core != null) {
+            propertyLength += intPropertyEncodedLength(publish.getMessageExpiryInterval(), MAX_EXPIRY_INTERVAL_DEFAULT);
+            propertyLength += core.encodedProperties.length;
+        } else {
+            propertyLength += fixedPropertyLength(publish);
+            propertyLength += publish.getUserProperties().encodedLength();
+        }
+        propertyLength += shortPropertyEncodedLength(publish.getOutboundTopicAlias(), DEFAULT_NO_TOPIC_ALIAS);
         final ImmutableIntArray subscriptionIdentifiers = publish.getSubscriptionIdentifiers();
         if (subscriptionIdentifiers != null) {
             for (int i = 0; i < subscriptionIdentifiers.length(); i++) {
@@ -120,17 +183,36 @@ public class Mqtt5PublishEncoder extends Mqtt5MessageWithUserPropertiesEncoder<P
     }
 
     private void encodeVariableHeader(final @NotNull PUBLISH publish, final @NotNull ByteBuf out) {
-        MqttBinaryData.encode(publish.getTopic(), out);
+        final Mqtt5SharedPublishEncoding.Core core = publish.getSharedEncoding().get(publish);
+        if (publish.isOutboundTopicOmitted()) {
+            out.writeShort(0);
+        } else if (core != null) {
+            out.writeBytes(core.encodedTopic);
+        } else {
+            MqttBinaryData.encode(publish.getTopic(), out);
+        }
         if (publish.getQoS() != QoS.AT_MOST_ONCE) {
             out.writeShort(publish.getPacketIdentifier());
         }
-        encodeProperties(publish, out);
+        encodeProperties(publish, core, out);
     }
 
-    private void encodeProperties(final @NotNull PUBLISH publish, final @NotNull ByteBuf out) {
+    private void encodeProperties(
+            final @NotNull PUBLISH publish,
+            final @Nullable Mqtt5SharedPublishEncoding.Core core,
+            final @NotNull ByteBuf out) {
         MqttVariableByteInteger.encode(publish.getPropertyLength(), out);
-        encodeFixedProperties(publish, out);
-        encodeOmissibleProperties(publish, out);
+        if (core != null) {
+            encodeIntProperty(MESSAGE_EXPIRY_INTERVAL,
+                    publish.getMessageExpiryInterval(),
+                    MAX_EXPIRY_INTERVAL_DEFAULT,
+                    out);
+            out.writeBytes(core.encodedProperties);
+        } else {
+            encodeFixedProperties(publish, out);
+            encodeOmissibleProperties(publish, out);
+        }
+        encodeShortProperty(TOPIC_ALIAS, publish.getOutboundTopicAlias(), DEFAULT_NO_TOPIC_ALIAS, out);
         final ImmutableIntArray subscriptionIdentifiers = publish.getSubscriptionIdentifiers();
         if (subscriptionIdentifiers != null) {
             for (int i = 0; i < subscriptionIdentifiers.length(); i++) {
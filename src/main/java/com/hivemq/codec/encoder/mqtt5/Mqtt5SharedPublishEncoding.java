@@ -0,0 +1,122 @@
+/*
+ * Copyright 2019-present HiveMQ GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hivemq.codec.encoder.mqtt5;
+
+import com.hivemq.extension.sdk.api.annotations.NotNull;
+import com.hivemq.extension.sdk.api.annotations.Nullable;
+import com.hivemq.extension.sdk.api.annotations.ThreadSafe;
+import com.hivemq.mqtt.message.mqtt5.Mqtt5UserProperties;
+import com.hivemq.mqtt.message.publish.PUBLISH;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+
+import static com.hivemq.codec.encoder.mqtt5.Mqtt5MessageEncoderUtil.encodeNullableProperty;
+import static com.hivemq.codec.encoder.mqtt5.Mqtt5MessageEncoderUtil.nullablePropertyEncodedLength;
+import static com.hivemq.mqtt.message.mqtt5.MessageProperties.CONTENT_TYPE;
+import static com.hivemq.mqtt.message.mqtt5.MessageProperties.CORRELATION_DATA;
+import static com.hivemq.mqtt.message.mqtt5.MessageProperties.PAYLOAD_FORMAT_INDICATOR;
+import static com.hivemq.mqtt.message.mqtt5.MessageProperties.RESPONSE_TOPIC;
+
+/**
+ * The subscriber independent part of the MQTT 5 encoding of a PUBLISH: the topic and all properties except the
+ * message expiry interval and the subscription identifiers. It is shared by all copies of a PUBLISH that are made
+ * for its subscribers, so the topic and the properties are only encoded once per fan-out.
+ * <p>
+ * The core is only encoded when a PUBLISH is encoded for the second time, so PUBLISHes with a single subscriber do
+ * not pay for the extra copy. A core is only used for a copy that still references the same topic and properties.
+ *
+ * @see Mqtt5PublishEncoder
+ */
+@ThreadSafe
+public class Mqtt5SharedPublishEncoding {
+
+    private volatile boolean encoded;
+    private volatile @Nullable Core core;
+
+    /**
+     * @return the shared core for the PUBLISH, or null if the PUBLISH was not encoded yet by another copy
+     */
+    @Nullable Core prepare(final @NotNull PUBLISH publish) {
+        final Core core = this.core;
+        if (core != null) {
+            return core.matches(publish) ? core : null;
+        }
+        if (!encoded) {
+            encoded = true;
+            return null;
+        }
+        // racing encoders produce equal cores, so it does not matter which one is kept
+        final Core newCore = new Core(publish);
+        this.core = newCore;
+        return newCore;
+    }
+
+    /**
+     * @return the shared core for the PUBLISH if {@link #prepare(PUBLISH)} already created it
+     */
+    @Nullable Core get(final @NotNull PUBLISH publish) {
+        final Core core = this.core;
+        return core != null && core.matches(publish) ? core : null;
+    }
+
+    static class Core {
+
+        private final @NotNull String topic;
+        private final @Nullable Mqtt5PayloadFormatIndicator payloadFormatIndicator;
+        private final @Nullable String contentType;
+        private final @Nullable String responseTopic;
+        private final byte @Nullable [] correlationData;
+        private final @NotNull Mqtt5UserProperties userProperties;
+        final byte @NotNull [] encodedTopic;
+        final byte @NotNull [] encodedProperties;
+        Core(final @NotNull PUBLISH publish) {
+            topic = publish.getTopic();
+            payloadFormatIndicator = publish.getPayloadFormatIndicator();
+            contentType = publish.getContentType();
+            responseTopic = publish.getResponseTopic();
+            correlationData = publish.getCorrelationData();
+            userProperties = publish.getUserProperties();
+
+            encodedTopic = new byte[MqttBinaryData.encodedLength(topic)];
+            MqttBinaryData.encode(topic, wrap(encodedTopic));
+
+            encodedProperties = new byte[nullablePropertyEncodedLength(payloadFormatIndicator) +
+                    nullablePropertyEncodedLength(contentType) +
+                    nullablePropertyEncodedLength(responseTopic) +
+                    nullablePropertyEncodedLength(correlationData) +
+                    userProperties.encodedLength()];
+            final ByteBuf out = wrap(encodedProperties);
+            encodeNullableProperty(PAYLOAD_FORMAT_INDICATOR, payloadFormatIndicator, out);
+            encodeNullableProperty(CONTENT_TYPE, contentType, out);
+            encodeNullableProperty(RESPONSE_TOPIC, responseTopic, out);
+            encodeNullableProperty(CORRELATION_DATA, correlationData, out);
+            userProperties.encode(out);
+        }
+
+        private boolean matches(final @NotNull PUBLISH publish) {
+            return topic == publish.getTopic() &&
+                    payloadFormatIndicator == publish.getPayloadFormatIndicator() &&
+                    contentType == publish.getContentType() &&
+                    responseTopic == publish.getResponseTopic() &&
+                    correlationData == publish.getCorrelationData() &&
+                    userProperties == publish.getUserProperties();
+        }
+
+        private static @NotNull ByteBuf wrap(final byte @NotNull [] bytes) {
+            return Unpooled.wrappedBuffer(bytes).writerIndex(0);
+        }
+    }
+}
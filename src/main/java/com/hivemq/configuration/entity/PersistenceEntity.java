@@ -40,9 +40,24 @@ public class PersistenceEntity {
         @XmlEnumValue("in-memory")
         IN_MEMORY
     }
+
+    @XmlEnum
+    @XmlType(name = "queued-messages-storage")
+    public enum QueuedMessagesStorage {
+        @XmlEnumValue("xodus")
+        XODUS,
+        @XmlEnumValue("segmented-log")
+        SEGMENTED_LOG
+    }
     @XmlElement(name = "mode", defaultValue = "file")
     private @NotNull PersistenceEntity.PersistenceMode mode = PersistenceMode.FILE;
+    @XmlElement(name = "queued-messages-storage", defaultValue = "xodus")
+    private @NotNull QueuedMessagesStorage queuedMessagesStorage = QueuedMessagesStorage.XODUS;
     @NotNull public PersistenceMode getMode() {
         return mode;
     }
+
+    @NotNull public QueuedMessagesStorage getQueuedMessagesStorage() {
+        return queuedMessagesStorage;
+    }
 }
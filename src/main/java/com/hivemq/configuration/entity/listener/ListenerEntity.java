@@ -31,6 +31,8 @@ public abstract class ListenerEntity {
     private @NotNull String bindAddress = "0.0.0.0";
     @XmlElement(name = "name")
     private @Nullable String name;
+    @XmlElement(name = "client-rate-limits")
+    private @Nullable ClientRateLimitsEntity clientRateLimits;
     public int getPort() {
         return port;
     }
@@ -42,4 +44,8 @@ public abstract class ListenerEntity {
     public @Nullable String getName() {
         return name;
     }
+
+    public @Nullable ClientRateLimitsEntity getClientRateLimits() {
+        return clientRateLimits;
+    }
 }
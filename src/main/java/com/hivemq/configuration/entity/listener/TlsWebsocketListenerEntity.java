@@ -16,6 +16,7 @@
 package com.hivemq.configuration.entity.listener;
 
 import com.hivemq.extension.sdk.api.annotations.NotNull;
+import com.hivemq.extension.sdk.api.annotations.Nullable;
 import jakarta.xml.bind.annotation.XmlAccessType;
 import jakarta.xml.bind.annotation.XmlAccessorType;
 import jakarta.xml.bind.annotation.XmlElement;
@@ -43,6 +44,8 @@ public class TlsWebsocketListenerEntity extends ListenerEntity {
     private boolean allowExtensions = false;
     @XmlElementRef
     private @NotNull TLSEntity tls = new TLSEntity();
+    @XmlElementRef(required = false)
+    private @Nullable WebsocketCompressionEntity compression = null;
     public @NotNull String getPath() {
         return path;
     }
@@ -59,6 +62,10 @@ public class TlsWebsocketListenerEntity extends ListenerEntity {
         return tls;
     }
 
+    public @Nullable WebsocketCompressionEntity getCompression() {
+        return compression;
+    }
+
     private @NotNull List<String> defaultProtocols() {
         final List<String> protocols = new ArrayList<>();
         protocols.add("mqttv3.1");
@@ -0,0 +1,59 @@
+/*
+ * Copyright 2019-present HiveMQ GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hivemq.configuration.entity.listener;
+
+import jakarta.xml.bind.annotation.XmlAccessType;
+import jakarta.xml.bind.annotation.XmlAccessorType;
+import jakarta.xml.bind.annotation.XmlElement;
+import jakarta.xml.bind.annotation.XmlRootElement;
+
+import static com.hivemq.configuration.service.entity.WebsocketCompression.DEFAULT_COMPRESSION_LEVEL;
+import static com.hivemq.configuration.service.entity.WebsocketCompression.DEFAULT_MINIMUM_SIZE;
+import static com.hivemq.configuration.service.entity.WebsocketCompression.DEFAULT_CLIENT_MAX_WINDOW_BITS;
+
+/**
+ * The permessage-deflate settings of a (TLS) websocket listener. Compression is enabled as soon as the element is
+ * present, unless it is explicitly disabled.
+ */
+@XmlRootElement(name = "compression")
+@XmlAccessorType(XmlAccessType.NONE)
+@SuppressWarnings({"FieldMayBeFinal", "FieldCanBeLocal"})
+public class WebsocketCompressionEntity {
+
+    @XmlElement(name = "enabled", defaultValue = "true")
+    private boolean enabled = true;
+    @XmlElement(name = "compression-level", defaultValue = "6")
+    private int compressionLevel = DEFAULT_COMPRESSION_LEVEL;
+    @XmlElement(name = "client-max-window-bits", defaultValue = "15")
+    private int clientMaxWindowBits = DEFAULT_CLIENT_MAX_WINDOW_BITS;
+    @XmlElement(name = "minimum-size", defaultValue = "256")
+    private int minimumSize = DEFAULT_MINIMUM_SIZE;
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public int getCompressionLevel() {
+        return compressionLevel;
+    }
+
+    public int getClientMaxWindowBits() {
+        return clientMaxWindowBits;
+    }
+
+    public int getMinimumSize() {
+        return minimumSize;
+    }
+}
@@ -16,9 +16,11 @@
 package com.hivemq.configuration.entity.listener;
 
 import com.hivemq.extension.sdk.api.annotations.NotNull;
+import com.hivemq.extension.sdk.api.annotations.Nullable;
 import jakarta.xml.bind.annotation.XmlAccessType;
 import jakarta.xml.bind.annotation.XmlAccessorType;
 import jakarta.xml.bind.annotation.XmlElement;
+import jakarta.xml.bind.annotation.XmlElementRef;
 import jakarta.xml.bind.annotation.XmlElementWrapper;
 import jakarta.xml.bind.annotation.XmlRootElement;
 
@@ -40,6 +42,8 @@ public class WebsocketListenerEntity extends ListenerEntity {
     private @NotNull List<String> subprotocols = defaultProtocols();
     @XmlElement(name = "allow-extensions", defaultValue = "false")
     private @NotNull Boolean allowExtensions = false;
+    @XmlElementRef(required = false)
+    private @Nullable WebsocketCompressionEntity compression = null;
     public @NotNull String getPath() {
         return path;
     }
@@ -52,6 +56,10 @@ public class WebsocketListenerEntity extends ListenerEntity {
         return allowExtensions;
     }
 
+    public @Nullable WebsocketCompressionEntity getCompression() {
+        return compression;
+    }
+
     private @NotNull List<String> defaultProtocols() {
         final List<String> protocols = new ArrayList<>();
         protocols.add("mqttv3.1");
@@ -17,19 +17,23 @@ package com.hivemq.configuration.reader;
 
 import com.google.common.base.Preconditions;
 import com.google.common.collect.ImmutableList;
+import com.hivemq.configuration.entity.listener.ClientRateLimitsEntity;
 import com.hivemq.configuration.entity.listener.ListenerEntity;
 import com.hivemq.configuration.entity.listener.TCPListenerEntity;
 import com.hivemq.configuration.entity.listener.TLSEntity;
 import com.hivemq.configuration.entity.listener.TlsTCPListenerEntity;
 import com.hivemq.configuration.entity.listener.TlsWebsocketListenerEntity;
+import com.hivemq.configuration.entity.listener.WebsocketCompressionEntity;
 import com.hivemq.configuration.entity.listener.WebsocketListenerEntity;
 import com.hivemq.configuration.entity.listener.tls.ClientAuthenticationModeEntity;
 import com.hivemq.configuration.info.SystemInformation;
+import com.hivemq.configuration.service.entity.ClientRateLimits;
 import com.hivemq.configuration.service.entity.Listener;
 import com.hivemq.configuration.service.entity.TcpListener;
 import com.hivemq.configuration.service.entity.Tls;
 import com.hivemq.configuration.service.entity.TlsTcpListener;
 import com.hivemq.configuration.service.entity.TlsWebsocketListener;
+import com.hivemq.configuration.service.entity.WebsocketCompression;
 import com.hivemq.configuration.service.entity.WebsocketListener;
 import com.hivemq.configuration.service.impl.listener.ListenerConfigurationService;
 import com.hivemq.extension.sdk.api.annotations.NotNull;
@@ -69,6 +73,11 @@ public class ListenerConfigurator {
             final Listener listener = convertListener(entity);
             if (listener != null) {
                 builder.add(listener);
+                final ClientRateLimitsEntity clientRateLimits = entity.getClientRateLimits();
+                if (clientRateLimits != null) {
+                    listenerConfigurationService.setClientRateLimits(listener.getName(),
+                            convertClientRateLimits(clientRateLimits));
+                }
             }
         }
         return builder.build();
@@ -97,10 +106,30 @@ public class ListenerConfigurator {
                 .path(entity.getPath())
                 .port(entity.getPort())
                 .subprotocols(entity.getSubprotocols())
+                .compression(convertWebsocketCompression(entity.getCompression()))
                 .name(getName(entity, "websocket-listener-"))
                 .build();
     }
 
+    @NotNull WebsocketCompression convertWebsocketCompression(final @Nullable WebsocketCompressionEntity entity) {
+        if (entity == null || !entity.isEnabled()) {
+            return WebsocketCompression.DISABLED;
+        }
+        try {
+            return new WebsocketCompression(true,
+                    entity.getCompressionLevel(),
+                    entity.getClientMaxWindowBits(),
+                    entity.getMinimumSize());
+        } catch (final IllegalArgumentException e) {
+            log.warn("{} Websocket compression is disabled.", e.getMessage());
+            return WebsocketCompression.DISABLED;
+        }
+    }
+
+    @NotNull ClientRateLimits convertClientRateLimits(final @NotNull ClientRateLimitsEntity entity) {
+        return new ClientRateLimits(entity.getPublishesPerSecond(), entity.getBytesPerSecond());
+    }
+
     @NotNull TlsTcpListener convertTlsTcpListener(final @NotNull TlsTCPListenerEntity entity) {
         return new TlsTcpListener(entity.getPort(),
                 entity.getBindAddress(),
@@ -115,6 +144,7 @@ public class ListenerConfigurator {
                 .allowExtensions(entity.isAllowExtensions())
                 .tls(convertTls(entity.getTls()))
                 .subprotocols(entity.getSubprotocols())
+                .compression(convertWebsocketCompression(entity.getCompression()))
                 .name(getName(entity, "tls-websocket-listener-"))
                 .build();
     }
@@ -16,8 +16,10 @@
 package com.hivemq.configuration.reader;
 
 import com.hivemq.configuration.entity.PersistenceEntity;
+import com.hivemq.configuration.service.InternalConfigurations;
 import com.hivemq.configuration.service.PersistenceConfigurationService;
 import com.hivemq.extension.sdk.api.annotations.NotNull;
+import com.hivemq.migration.meta.PersistenceType;
 
 /**
  * @author Lukas Brandl
@@ -32,5 +34,9 @@ public class PersistenceConfigurator {
     public void setPersistenceConfig(@NotNull final PersistenceEntity persistenceConfig) {
         persistenceConfigurationService
                 .setMode(PersistenceConfigurationService.PersistenceMode.valueOf(persistenceConfig.getMode().name()));
+        InternalConfigurations.QUEUED_MESSAGES_PERSISTENCE_TYPE.set(
+                persistenceConfig.getQueuedMessagesStorage() == PersistenceEntity.QueuedMessagesStorage.SEGMENTED_LOG ?
+                        PersistenceType.FILE_SEGMENTED :
+                        PersistenceType.FILE);
     }
 }
@@ -16,6 +16,7 @@
 package com.hivemq.configuration.service;
 
 import com.hivemq.migration.meta.PersistenceType;
+import com.hivemq.mqtt.services.SharedSubscriberSelectionStrategy;
 import org.rocksdb.CompressionType;
 import org.rocksdb.MutableColumnFamilyOptionsInterface;
 
@@ -65,6 +66,16 @@ public class InternalConfigurations {
     public static final AtomicInteger PERSISTENCE_STARTUP_THREAD_POOL_SIZE =
             new AtomicInteger(AVAILABLE_PROCESSORS_TIMES_FOUR);
     public static final AtomicInteger PERSISTENCE_BUCKET_COUNT = new AtomicInteger(64);
+    /**
+     * The in-memory persistences are written to a snapshot in the data folder on shutdown and restored from it on the
+     * next start.
+     */
+    public static final AtomicBoolean MEMORY_PERSISTENCE_SNAPSHOT_ENABLED = new AtomicBoolean(false);
+    /**
+     * the amount of threads writing and reading the snapshot files of the in-memory persistences
+     */
+    public static final AtomicInteger MEMORY_PERSISTENCE_SNAPSHOT_THREAD_POOL_SIZE =
+            new AtomicInteger(AVAILABLE_PROCESSORS);
     public static final AtomicInteger SINGLE_WRITER_THREAD_POOL_SIZE =
             new AtomicInteger(AVAILABLE_PROCESSORS_TIMES_TWO);
     public static final AtomicInteger SINGLE_WRITER_CREDITS_PER_EXECUTION = new AtomicInteger(65);
@@ -72,10 +83,25 @@ public class InternalConfigurations {
             new AtomicInteger(500);
     public static final AtomicInteger PERSISTENCE_CLOSE_RETRIES = new AtomicInteger(500);
     public static final AtomicInteger PERSISTENCE_CLOSE_RETRY_INTERVAL_MSEC = new AtomicInteger(100);
+    /**
+     * The maximum amount of directly queued single writer tasks that are committed together by a group commit, 1
+     * disables group commits
+     */
+    public static final AtomicInteger PERSISTENCE_GROUP_COMMIT_MAX_BATCH_SIZE = new AtomicInteger(256);
     /**
      * max amount of subscriptions to pull from the peristence for extension iterate chunk
      */
     public static final int PERSISTENCE_SUBSCRIPTIONS_MAX_CHUNK_SIZE = 2000;
+    /**
+     * Whether the extension SubscriptionStore iterates all subscriptions by streaming them from the local persistence
+     * instead of fetching chunks through the single writer
+     */
+    public static final AtomicBoolean SUBSCRIPTION_STORE_STREAMING_ITERATION_ENABLED = new AtomicBoolean(false);
+    /**
+     * The max amount of clients per second a streaming subscription iteration passes to the extension callback, 0
+     * means unlimited
+     */
+    public static final AtomicInteger SUBSCRIPTION_STORE_STREAMING_ITERATION_RATE = new AtomicInteger(0);
     /**
      * max amount of clients to pull from the peristence for extension iterate chunk
      */
@@ -105,6 +131,12 @@ public class InternalConfigurations {
      * The amount of qos 0 messages that are queued if the channel is not writable
      */
     public static final AtomicInteger NOT_WRITABLE_QUEUE_SIZE = new AtomicInteger(1000);
+
+    /**
+     * The maximum amount of bytes of MQTT packets that are coalesced into one websocket frame until the next flush,
+     * 0 sends one frame per packet. Coalescing changes the frames on the wire, so it is disabled by default.
+     */
+    public static final AtomicInteger WEBSOCKET_FRAME_COALESCING_MAX_BYTES = new AtomicInteger(0);
     /**
      * The limit of unacknowledged messages that hivemq will handle, regardless of the client receive maximum
      */
@@ -145,6 +177,22 @@ public class InternalConfigurations {
      * The configuration for xodus persistence environment durable writes
      */
     public static final boolean XODUS_PERSISTENCE_ENVIRONMENT_DURABLE_WRITES_ENABLED = false;
+    /**
+     * Whether incoming publishes are only acknowledged after the file persistences were synced to disk. The syncs
+     * are shared by all writes that happened since the last sync (group commit). Only takes effect if
+     * {@link #ACKNOWLEDGE_INCOMING_PUBLISH_AFTER_PERSISTING_ENABLED} is true and the payload, retained message and
+     * client queue persistences use {@link PersistenceType#FILE}, as only the xodus environments are synced.
+     */
+    public static final AtomicBoolean XODUS_PERSISTENCE_DURABLE_GROUP_COMMIT_ENABLED = new AtomicBoolean(false);
+    /**
+     * The maximum time in milliseconds an acknowledgement waits for the next sync in the durable group commit mode
+     */
+    public static final AtomicInteger XODUS_PERSISTENCE_DURABLE_GROUP_COMMIT_INTERVAL_MSEC = new AtomicInteger(5);
+    /**
+     * The amount of waiting acknowledgements that triggers a sync before the interval elapsed in the durable group
+     * commit mode
+     */
+    public static final AtomicInteger XODUS_PERSISTENCE_DURABLE_GROUP_COMMIT_MAX_WAITING = new AtomicInteger(1024);
     /**
      * The memory limit used by the xodus environments in percentage of the JVM heap (Xmx).
      */
@@ -161,6 +209,46 @@ public class InternalConfigurations {
      * The amount of qos > 0 retained messages that are queued
      */
     public static final AtomicInteger RETAINED_MESSAGE_QUEUE_SIZE = new AtomicInteger(100_000);
+    /**
+     * The type of storage underlying the client queue persistence. {@link PersistenceType#FILE} is the xodus key value
+     * store, {@link PersistenceType#FILE_SEGMENTED} is the memory-mapped segmented log. The segments are only forced
+     * to disk on shutdown, messages queued shortly before an operating system crash or power loss can be lost.
+     */
+    public static final AtomicReference<PersistenceType> QUEUED_MESSAGES_PERSISTENCE_TYPE =
+            new AtomicReference<>(PersistenceType.FILE);
+    /**
+     * The size of a single segment file of the segmented client queue persistence.
+     */
+    public static final AtomicInteger QUEUED_MESSAGES_SEGMENT_SIZE_BYTES = new AtomicInteger(1024 * 1024 * 16);
+    /**
+     * A sealed segment of the segmented client queue persistence is compacted when less than this percentage of its
+     * bytes belongs to messages that are still queued.
+     */
+    public static final AtomicInteger QUEUED_MESSAGES_SEGMENT_COMPACTION_LIVE_PERCENT = new AtomicInteger(50);
+    /**
+     * The delay in milliseconds between two runs of the background removal of expired queued messages, each run
+     * handles one bucket. 0 disables the background removal, expired messages are then only removed by the clean up.
+     */
+    public static final AtomicInteger QUEUED_MESSAGES_COMPACTION_INTERVAL_MSEC = new AtomicInteger(500);
+    /**
+     * The maximum amount of expired queued messages a run of the background removal removes.
+     */
+    public static final AtomicInteger QUEUED_MESSAGES_COMPACTION_BATCH_SIZE = new AtomicInteger(1000);
+    /**
+     * Queued and retained messages are written in the compact value format (varint fields, omitted defaults and
+     * dictionary encoded topics). Values in the previous format stay readable either way.
+     */
+    public static final AtomicBoolean PERSISTENCE_COMPACT_VALUE_FORMAT_ENABLED = new AtomicBoolean(false);
+    /**
+     * The variable part of a value in the compact format is deflated when it is at least this large.
+     */
+    public static final AtomicInteger PERSISTENCE_COMPACT_VALUE_COMPRESSION_THRESHOLD_BYTES = new AtomicInteger(1024);
+    /**
+     * The maximum amount of topics in the topic dictionary of one bucket of the xodus client queue persistence. Topics
+     * of queued messages beyond this are written inline. Entries are never evicted, a topic is only added once it was
+     * queued twice.
+     */
+    public static final AtomicInteger QUEUED_MESSAGES_TOPIC_DICTIONARY_MAX_SIZE = new AtomicInteger(16_384);
     /**
      * The configuration if rocks db is used instead of xodus for retained messages.
      */
@@ -180,6 +268,11 @@ public class InternalConfigurations {
      * The block size used by rocksdb for the retained message persistence
      */
     public static final int RETAINED_MESSAGE_BLOCK_SIZE_BYTES = 32 * 1024;
+    /**
+     * The approximate memory the read cache of fully loaded retained messages may use if the file persistence is used.
+     * 0 disables the cache.
+     */
+    public static final AtomicInteger RETAINED_MESSAGE_READ_CACHE_SIZE_BYTES = new AtomicInteger(0);
     /*
      * ************************ Payload Persistence *
      **************************/
@@ -270,6 +363,21 @@ public class InternalConfigurations {
     // 200Mb
     public static final AtomicInteger TOPIC_ALIAS_GLOBAL_MEMORY_SOFT_LIMIT_BYTES = new AtomicInteger(1024 * 1024 * 50);
     // 50Mb
+    /**
+     * Whether the broker assigns topic aliases to outgoing PUBLISHes for MQTT 5 clients that accept topic aliases,
+     * disabled by default
+     */
+    public static final AtomicBoolean TOPIC_ALIAS_OUTBOUND_ENABLED = new AtomicBoolean(false);
+    /**
+     * The maximum amount of topic aliases the broker assigns per client, limited by the client's Topic Alias Maximum
+     */
+    public static final AtomicInteger TOPIC_ALIAS_OUTBOUND_MAX_PER_CLIENT = new AtomicInteger(32);
+    /**
+     * No new outgoing topic aliases are assigned while the aliased topics of all clients use more memory
+     */
+    public static final AtomicInteger TOPIC_ALIAS_OUTBOUND_GLOBAL_MEMORY_LIMIT_BYTES =
+            new AtomicInteger(1024 * 1024 * 50);
+    // 50Mb
     public static final AtomicBoolean DISCONNECT_WITH_REASON_CODE_ENABLED = new AtomicBoolean(true);
     public static final AtomicBoolean DISCONNECT_WITH_REASON_STRING_ENABLED = new AtomicBoolean(true);
     public static final AtomicBoolean CONNACK_WITH_REASON_CODE_ENABLED = new AtomicBoolean(true);
@@ -293,6 +401,12 @@ public class InternalConfigurations {
      */
     public static final AtomicInteger MANAGED_EXTENSION_EXECUTOR_SHUTDOWN_TIMEOUT_SEC = new AtomicInteger(180);
     public static final AtomicInteger EXTENSION_SERVICE_CALL_RATE_LIMIT_PER_SEC = new AtomicInteger(0); // unlimited
+    /**
+     * Runs the tasks submitted to the managed extension executor and the per-client extension callbacks (for example
+     * authenticators and authorizers) on virtual threads. The callbacks of a client are still executed in order.
+     * Requires Java 21, on older JVMs the platform thread pools are used.
+     */
+    public static final AtomicBoolean EXTENSION_EXECUTOR_VIRTUAL_THREADS_ENABLED = new AtomicBoolean(false);
     /*
      * ******************** Auth *
      **********************/
@@ -301,6 +415,85 @@ public class InternalConfigurations {
      */
     public static final AtomicBoolean AUTH_DENY_UNAUTHENTICATED_CONNECTIONS = new AtomicBoolean(true);
     public static final AtomicInteger AUTH_PROCESS_TIMEOUT_SEC = new AtomicInteger(30);
+    /*
+     * ***************** Overload Protection *
+     *******************/
+    /**
+     * Whether reading from the busiest clients and accepting new connections is slowed down when the broker is
+     * overloaded
+     */
+    public static final AtomicBoolean OVERLOAD_PROTECTION_ENABLED = new AtomicBoolean(false);
+    /**
+     * The interval in which the internal backlogs are sampled
+     */
+    public static final AtomicInteger OVERLOAD_PROTECTION_SAMPLE_INTERVAL_MSEC = new AtomicInteger(500);
+    /**
+     * The amount of pending single writer tasks at which the broker is overloaded, 0 ignores the single writer
+     */
+    public static final AtomicInteger OVERLOAD_PROTECTION_SINGLE_WRITER_TASKS_THRESHOLD = new AtomicInteger(200_000);
+    /**
+     * The amount of pending extension tasks at which the broker is overloaded, 0 ignores the extension tasks
+     */
+    public static final AtomicInteger OVERLOAD_PROTECTION_EXTENSION_TASKS_THRESHOLD = new AtomicInteger(100_000);
+    /**
+     * The heap usage after garbage collection in percent at which the broker is overloaded, 0 ignores the heap usage
+     */
+    public static final AtomicInteger OVERLOAD_PROTECTION_HEAP_USAGE_THRESHOLD_PERCENT = new AtomicInteger(90);
+    /**
+     * The percentage of the thresholds all backlogs must fall below before the protection is released
+     */
+    public static final AtomicInteger OVERLOAD_PROTECTION_RELEASE_THRESHOLD_PERCENT = new AtomicInteger(70);
+    /**
+     * The percentage of the connected clients with the most inbound traffic that are paused per sample while the
+     * broker is overloaded
+     */
+    public static final AtomicInteger OVERLOAD_PROTECTION_PAUSED_CLIENTS_PERCENT = new AtomicInteger(10);
+    /**
+     * The maximum amount of paused clients that are resumed per sample while the protection is released
+     */
+    public static final AtomicInteger OVERLOAD_PROTECTION_RESUMED_CLIENTS_PER_SAMPLE = new AtomicInteger(100);
+    /**
+     * The amount of CONNECTs that are admitted in the first sample while the protection is released, the amount
+     * doubles with every following sample
+     */
+    public static final AtomicInteger OVERLOAD_PROTECTION_RECOVERY_CONNECTS_PER_SAMPLE = new AtomicInteger(10);
+    /*
+     * ***************** Memory Governor *
+     *******************/
+    /**
+     * Whether the heap usage of the broker subsystems is governed by one shared budget, subsystems are told to shed
+     * when they exceed their limit within the budget
+     */
+    public static final AtomicBoolean MEMORY_GOVERNOR_ENABLED = new AtomicBoolean(false);
+    /**
+     * The interval in which the budgets are rebalanced
+     */
+    public static final AtomicInteger MEMORY_GOVERNOR_SAMPLE_INTERVAL_MSEC = new AtomicInteger(1000);
+    /**
+     * The share of the max heap in percent that is shared by all governed subsystems
+     */
+    public static final AtomicInteger MEMORY_GOVERNOR_HEAP_BUDGET_PERCENT = new AtomicInteger(50);
+    /**
+     * The percentage of its memory limit the usage of a subsystem must fall below before it stops shedding
+     */
+    public static final AtomicInteger MEMORY_GOVERNOR_RELEASE_THRESHOLD_PERCENT = new AtomicInteger(90);
+    /*
+     * ***************** Client Rate Limits *
+     *******************/
+    /**
+     * The maximum amount of PUBLISHes per second a client may send on listeners without client rate limits, 0 means
+     * unlimited
+     */
+    public static final AtomicInteger CLIENT_RATE_LIMIT_PUBLISHES_PER_SEC = new AtomicInteger(0);
+    /**
+     * The maximum amount of PUBLISH bytes per second a client may send on listeners without client rate limits, 0
+     * means unlimited
+     */
+    public static final AtomicInteger CLIENT_RATE_LIMIT_BYTES_PER_SEC = new AtomicInteger(0);
+    /**
+     * The amount of most throttled clients that are exposed as metric
+     */
+    public static final AtomicInteger CLIENT_RATE_LIMIT_TOP_THROTTLED_CLIENTS = new AtomicInteger(10);
     /*
      * ***************** Misc *
      *******************/
@@ -342,8 +535,36 @@ public class InternalConfigurations {
      */
     public static final int OCKSDB_STATS_HISTORY_BUFFER_SIZE_BYTES = 64 * 1024; // 64KB
     public static final AtomicInteger COUNT_OF_PUBLISHES_WRITTEN_TO_CHANNEL_TO_TRIGGER_FLUSH = new AtomicInteger(128);
+    /**
+     * Whether the flushes of a client channel are coalesced until the end of the current read or event loop task.
+     * The flush threshold adapts to the time between a flush and the next inbound read, not to the network round trip
+     * time.
+     */
+    public static final AtomicBoolean FLUSH_CONSOLIDATION_ENABLED = new AtomicBoolean(false);
+    /**
+     * The amount of written bytes at which a client channel is flushed immediately on low latency connections
+     */
+    public static final AtomicInteger FLUSH_CONSOLIDATION_MIN_THRESHOLD_BYTES = new AtomicInteger(8 * 1024);
+    /**
+     * The amount of written bytes at which a client channel is flushed immediately on high latency connections
+     */
+    public static final AtomicInteger FLUSH_CONSOLIDATION_MAX_THRESHOLD_BYTES = new AtomicInteger(64 * 1024);
     public static final long SHARED_SUBSCRIBER_CACHE_TIME_TO_LIVE_MSEC = 1000;
     public static final int SHARED_SUBSCRIBER_CACHE_MAX_SIZE_SUBSCRIBERS = 10000;
+    /**
+     * The strategy that decides which member of a shared subscription group is asked first to poll a new message
+     */
+    public static final AtomicReference<SharedSubscriberSelectionStrategy> SHARED_SUBSCRIPTION_SELECTION_STRATEGY =
+            new AtomicReference<>(SharedSubscriberSelectionStrategy.ROUND_ROBIN);
+    /**
+     * The maximum amount of shared subscribers that are probed for being idle per new message, every idle subscriber
+     * among them polls the message
+     */
+    public static final AtomicInteger SHARED_SUBSCRIPTION_DISPATCH_MAX_PROBES = new AtomicInteger(64);
+    /**
+     * The maximum amount of shared subscription groups that report their own metrics
+     */
+    public static final AtomicInteger SHARED_SUBSCRIPTION_DISPATCH_MAX_GROUP_METRICS = new AtomicInteger(1000);
     public static final int CLEANUP_JOB_PARALLELISM = 1;
     /**
      * The timeout for a cleanup job task.
@@ -356,11 +577,17 @@ public class InternalConfigurations {
     public static final int NETTY_COUNT_OF_CONNECTIONS_IN_SHUTDOWN_PARTITION = 100;
     public static final double MQTT_CONNECTION_KEEP_ALIVE_FACTOR = 1.5;
     public static final boolean MQTT_CONNECTION_AUTH_CLEAR_PASSWORD = true;
+    /**
+     * Whether a connection without will that is taken over by a client resuming its session hands the session over
+     * without persisting the disconnect in between
+     */
+    public static final AtomicBoolean SESSION_TAKEOVER_FAST_PATH_ENABLED = new AtomicBoolean(true);
     public static final long DISCONNECT_KEEP_ALIVE_BATCH = 100;
     public static final int EVENT_LOOP_GROUP_SHUTDOWN_TIMEOUT_SEC = 60;
     public static final int CONNECTION_PERSISTENCE_SHUTDOWN_TIMEOUT_SEC = 180;
     public static final boolean DROP_MESSAGES_QOS_0_ENABLED = true;
     public static final int WILL_DELAY_CHECK_INTERVAL_SEC = 1;
+    public static final int SESSION_EXPIRY_CHECK_INTERVAL_SEC = 1;
     public static final int LISTENER_SOCKET_RECEIVE_BUFFER_SIZE_BYTES = -1;
     public static final int LISTENER_SOCKET_SEND_BUFFER_SIZE_BYTES = -1;
     public static final int LISTENER_CLIENT_WRITE_BUFFER_HIGH_THRESHOLD_BYTES = 65536; // 64Kb
@@ -0,0 +1,59 @@
+/*
+ * Copyright 2019-present HiveMQ GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hivemq.configuration.service.entity;
+
+import com.hivemq.extension.sdk.api.annotations.Immutable;
+
+/**
+ * The inbound rate limits that apply to each single client.
+ */
+@Immutable
+public class ClientRateLimits {
+
+    /**
+     * The limits of a client that may send as many PUBLISHes as it likes.
+     */
+    public static final ClientRateLimits UNLIMITED = new ClientRateLimits(0, 0);
+
+    private final long publishesPerSecond;
+    private final long bytesPerSecond;
+    /**
+     * @param publishesPerSecond the PUBLISHes a client may send per second, 0 means unlimited
+     * @param bytesPerSecond     the PUBLISH bytes a client may send per second, 0 means unlimited
+     */
+    public ClientRateLimits(final long publishesPerSecond, final long bytesPerSecond) {
+        if (publishesPerSecond < 0) {
+            throw new IllegalArgumentException("The publishes per second of a client must not be negative.");
+        }
+        if (bytesPerSecond < 0) {
+            throw new IllegalArgumentException("The bytes per second of a client must not be negative.");
+        }
+        this.publishesPerSecond = publishesPerSecond;
+        this.bytesPerSecond = bytesPerSecond;
+    }
+
+    public long getPublishesPerSecond() {
+        return publishesPerSecond;
+    }
+
+    public long getBytesPerSecond() {
+        return bytesPerSecond;
+    }
+
+    public boolean isUnlimited() {
+        return publishesPerSecond == 0 && bytesPerSecond == 0;
+    }
+}
@@ -45,8 +45,9 @@ public class TlsWebsocketListener extends WebsocketListener implements TlsListen
             final @NotNull Boolean allowExtensions,
             final @NotNull List<String> subprotocols,
             final @NotNull Tls tls,
-            final @NotNull String name) {
-        super(port, bindAddress, path, allowExtensions, subprotocols, name);
+            final @NotNull String name,
+            final @NotNull WebsocketCompression compression) {
+        super(port, bindAddress, path, allowExtensions, subprotocols, name, compression);
         this.tls = tls;
     }
 
@@ -69,12 +70,14 @@ public class TlsWebsocketListener extends WebsocketListener implements TlsListen
         protected @Nullable Integer port;
         protected @Nullable String bindAddress;
         protected boolean allowExtensions;
+        protected @NotNull WebsocketCompression compression;
         private @Nullable Tls tls;
         public Builder() {
             path = "";
             subprotocols = new ArrayList<>();
             subprotocols.add("mqtt"); // Add default subprotocol which is required by the MQTT spec
             allowExtensions = false;
+            compression = WebsocketCompression.DISABLED;
         }
 
         public @NotNull Builder from(final @NotNull TlsWebsocketListener tlsWebsocketListener) {
@@ -84,6 +87,7 @@ public class TlsWebsocketListener extends WebsocketListener implements TlsListen
             name = tlsWebsocketListener.getName();
             allowExtensions = tlsWebsocketListener.getAllowExtensions();
             subprotocols = new ArrayList<>(tlsWebsocketListener.getSubprotocols());
+            compression = tlsWebsocketListener.getCompression();
             tls = tlsWebsocketListener.getTls();
             return this;
         }
@@ -158,6 +162,18 @@ public class TlsWebsocketListener extends WebsocketListener implements TlsListen
             return this;
         }
 
+        /**
+         * Sets the permessage-deflate settings of the TLS websocket listener
+         *
+         * @param  compression the compression settings
+         * @return             the Builder
+         */
+        public @NotNull Builder compression(final @NotNull WebsocketCompression compression) {
+            checkNotNull(compression);
+            this.compression = compression;
+            return this;
+        }
+
         /**
          * Sets a list of subprotocols the websocket listener should support.
          * <p>
@@ -190,7 +206,14 @@ public class TlsWebsocketListener extends WebsocketListener implements TlsListen
             if (tls == null) {
                 throw new IllegalStateException("The TLS settings for a TLS Websocket listener was not set.");
             }
-            return new TlsWebsocketListener(port, bindAddress, path, allowExtensions, subprotocols, tls, name);
+            return new TlsWebsocketListener(port,
+                    bindAddress,
+                    path,
+                    allowExtensions,
+                    subprotocols,
+                    tls,
+                    name,
+                    compression);
         }
     }
 }
@@ -0,0 +1,86 @@
+/*
+ * Copyright 2019-present HiveMQ GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hivemq.configuration.service.entity;
+
+import com.hivemq.extension.sdk.api.annotations.Immutable;
+
+/**
+ * The permessage-deflate (RFC 7692) settings of a websocket listener.
+ */
+@Immutable
+public class WebsocketCompression {
+
+    public static final int DEFAULT_COMPRESSION_LEVEL = 6;
+    public static final int DEFAULT_CLIENT_MAX_WINDOW_BITS = 15;
+    public static final int DEFAULT_MINIMUM_SIZE = 256;
+
+    /**
+     * The settings of a listener that does not negotiate permessage-deflate.
+     */
+    public static final WebsocketCompression DISABLED =
+            new WebsocketCompression(false,
+                    DEFAULT_COMPRESSION_LEVEL,
+                    DEFAULT_CLIENT_MAX_WINDOW_BITS,
+                    DEFAULT_MINIMUM_SIZE);
+
+    private final boolean enabled;
+    private final int compressionLevel;
+    private final int clientMaxWindowBits;
+    private final int minimumSize;
+    /**
+     * @param enabled             if permessage-deflate is negotiated with clients that offer it
+     * @param compressionLevel    the deflate compression level (0-9)
+     * @param clientMaxWindowBits the client_max_window_bits the broker requests from clients (8-15), the window of
+     *                            the broker's own compressor is not limited
+     * @param minimumSize         frames with fewer payload bytes are sent uncompressed
+     */
+    public WebsocketCompression(
+            final boolean enabled,
+            final int compressionLevel,
+            final int clientMaxWindowBits,
+            final int minimumSize) {
+        if (compressionLevel < 0 || compressionLevel > 9) {
+            throw new IllegalArgumentException("The websocket compression level must be between 0 and 9.");
+        }
+        if (clientMaxWindowBits < 8 || clientMaxWindowBits > 15) {
+            throw new IllegalArgumentException(
+                    "The websocket compression client max window bits must be between 8 and 15.");
+        }
+        if (minimumSize < 0) {
+            throw new IllegalArgumentException("The websocket compression minimum size must not be negative.");
+        }
+        this.enabled = enabled;
+        this.compressionLevel = compressionLevel;
+        this.clientMaxWindowBits = clientMaxWindowBits;
+        this.minimumSize = minimumSize;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public int getCompressionLevel() {
+        return compressionLevel;
+    }
+
+    public int getClientMaxWindowBits() {
+        return clientMaxWindowBits;
+    }
+
+    public int getMinimumSize() {
+        return minimumSize;
+    }
+}
@@ -43,6 +43,7 @@ public class WebsocketListener implements Listener {
     private final boolean allowExtensions;
     private final @NotNull List<String> subprotocols;
     private final @NotNull String name;
+    private final @NotNull WebsocketCompression compression;
     protected WebsocketListener(
             final int port,
             final @NotNull String bindAddress,
@@ -50,12 +51,24 @@ public class WebsocketListener implements Listener {
             final boolean allowExtensions,
             final @NotNull List<String> subprotocols,
             final @NotNull String name) {
+        this(port, bindAddress, path, allowExtensions, subprotocols, name, WebsocketCompression.DISABLED);
+    }
+
+    protected WebsocketListener(
+            final int port,
+            final @NotNull String bindAddress,
+            final @NotNull String path,
+            final boolean allowExtensions,
+            final @NotNull List<String> subprotocols,
+            final @NotNull String name,
+            final @NotNull WebsocketCompression compression) {
         this.port = port;
         this.bindAddress = bindAddress;
         this.path = path;
         this.allowExtensions = allowExtensions;
         this.subprotocols = subprotocols;
         this.name = name;
+        this.compression = compression;
     }
 
     @Override
@@ -103,6 +116,13 @@ public class WebsocketListener implements Listener {
     public @NotNull List<String> getSubprotocols() {
         return subprotocols;
     }
+
+    /**
+     * @return the permessage-deflate settings of the websocket
+     */
+    public @NotNull WebsocketCompression getCompression() {
+        return compression;
+    }
     /**
      * A builder which allows to conveniently build a listener object with a fluent API
      */
@@ -114,11 +134,13 @@ public class WebsocketListener implements Listener {
         protected @Nullable Integer port;
         protected @Nullable String bindAddress;
         protected boolean allowExtensions;
+        protected @NotNull WebsocketCompression compression;
         public Builder() {
             path = "";
             subprotocols = new ArrayList<>();
             subprotocols.add("mqtt"); // Add default subprotocol which is required by the MQTT spec
             allowExtensions = false;
+            compression = WebsocketCompression.DISABLED;
         }
 
         public @NotNull Builder from(final @NotNull WebsocketListener websocketListener) {
@@ -128,6 +150,7 @@ public class WebsocketListener implements Listener {
             name = websocketListener.getName();
             allowExtensions = websocketListener.getAllowExtensions();
             subprotocols = new ArrayList<>(websocketListener.getSubprotocols());
+            compression = websocketListener.getCompression();
             return this;
         }
 
@@ -189,6 +212,18 @@ public class WebsocketListener implements Listener {
             return this;
         }
 
+        /**
+         * Sets the permessage-deflate settings of the websocket listener
+         *
+         * @param  compression the compression settings
+         * @return             the Builder
+         */
+        public @NotNull Builder compression(final @NotNull WebsocketCompression compression) {
+            checkNotNull(compression);
+            this.compression = compression;
+            return this;
+        }
+
         /**
          * Sets a list of subprotocols the websocket listener should support.
          * <p>
@@ -218,7 +253,7 @@ public class WebsocketListener implements Listener {
             if (name == null) {
                 name = "websocket-listener-" + port;
             }
-            return new WebsocketListener(port, bindAddress, path, allowExtensions, subprotocols, name);
+            return new WebsocketListener(port, bindAddress, path, allowExtensions, subprotocols, name, compression);
         }
     }
 }
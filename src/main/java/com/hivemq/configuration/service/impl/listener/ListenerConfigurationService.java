@@ -16,6 +16,7 @@
 package com.hivemq.configuration.service.impl.listener;
 
 import com.hivemq.annotations.ReadOnly;
+import com.hivemq.configuration.service.entity.ClientRateLimits;
 import com.hivemq.configuration.service.entity.Listener;
 import com.hivemq.configuration.service.entity.TcpListener;
 import com.hivemq.configuration.service.entity.TlsTcpListener;
@@ -23,6 +24,7 @@ import com.hivemq.configuration.service.entity.TlsWebsocketListener;
 import com.hivemq.configuration.service.entity.WebsocketListener;
 import com.hivemq.configuration.service.exception.ConfigurationValidationException;
 import com.hivemq.extension.sdk.api.annotations.NotNull;
+import com.hivemq.extension.sdk.api.annotations.Nullable;
 
 import java.util.List;
 
@@ -76,4 +78,19 @@ public interface ListenerConfigurationService {
      */
     @ReadOnly
     @NotNull List<TlsWebsocketListener> getTlsWebsocketListeners();
+
+    /**
+     * Sets the inbound rate limits of each client connected to a listener.
+     *
+     * @param listenerName     the name of the listener
+     * @param clientRateLimits the rate limits of each client
+     */
+    void setClientRateLimits(@NotNull String listenerName, @NotNull ClientRateLimits clientRateLimits);
+
+    /**
+     * @param  listenerName the name of the listener
+     * @return              the inbound rate limits of each client connected to the listener or {@code null} if none
+     *                      are configured for the listener
+     */
+    @Nullable ClientRateLimits getClientRateLimits(@NotNull String listenerName);
 }
@@ -16,17 +16,21 @@
 package com.hivemq.configuration.service.impl.listener;
 
 import com.google.common.collect.ImmutableList;
+import com.hivemq.configuration.service.entity.ClientRateLimits;
 import com.hivemq.configuration.service.entity.Listener;
 import com.hivemq.configuration.service.entity.TcpListener;
 import com.hivemq.configuration.service.entity.TlsTcpListener;
 import com.hivemq.configuration.service.entity.TlsWebsocketListener;
 import com.hivemq.configuration.service.entity.WebsocketListener;
 import com.hivemq.extension.sdk.api.annotations.NotNull;
+import com.hivemq.extension.sdk.api.annotations.Nullable;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.inject.Singleton;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CopyOnWriteArrayList;
 
 /**
@@ -42,6 +46,7 @@ public class ListenerConfigurationServiceImpl implements ListenerConfigurationSe
      * The actual listener. COWAL because we read a lot more than we write
      */
     private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+    private final Map<String, ClientRateLimits> clientRateLimits = new ConcurrentHashMap<>();
     @Override
     public <T extends Listener> void addListener(final @NotNull T listener) {
         if (listener.getClass().equals(TcpListener.class) || listener.getClass().equals(TlsTcpListener.class) ||
@@ -85,8 +90,20 @@ public class ListenerConfigurationServiceImpl implements ListenerConfigurationSe
         return filterListeners(TlsWebsocketListener.class);
     }
 
+    @Override
+    public void setClientRateLimits(
+            final @NotNull String listenerName, final @NotNull ClientRateLimits clientRateLimits) {
+        this.clientRateLimits.put(listenerName, clientRateLimits);
+    }
+
+    @Override
+    public @Nullable ClientRateLimits getClientRateLimits(final @NotNull String listenerName) {
+        return clientRateLimits.get(listenerName);
+    }
+
     public void clear() {
         listeners.clear();
+        clientRateLimits.clear();
     }
 
     private <T extends Listener> @NotNull ImmutableList<T> filterListeners(final @NotNull Class<T> clazz) {
@@ -23,20 +23,22 @@ import com.google.common.util.concurrent.ListenableFuture;
 import com.google.common.util.concurrent.MoreExecutors;
 import com.google.common.util.concurrent.Striped;
 import com.hivemq.common.annotations.GuardedBy;
+import com.hivemq.configuration.service.InternalConfigurations;
 import com.hivemq.extension.sdk.api.annotations.NotNull;
 import com.hivemq.extension.sdk.api.annotations.Nullable;
 import com.hivemq.extension.sdk.api.annotations.ThreadSafe;
 import com.hivemq.extensions.ioc.annotation.PluginTaskQueue;
 import com.hivemq.util.Exceptions;
 import com.hivemq.util.ThreadFactoryUtil;
+import com.hivemq.util.VirtualThreads;
 
 import javax.annotation.PostConstruct;
 import javax.inject.Inject;
 import java.util.Map;
-import java.util.Queue;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.RejectedExecutionException;
@@ -52,6 +54,11 @@ import java.util.function.Function;
  * takes the first one from the queue. If the first task has the "async" feature enabled, then the tasks stays in the
  * queue and the Thread continues on to the next queue. When the async task taken by the Thread is not marked as done it
  * is ignored, if it is done the post-functions are executed and the Thread moves on to the next queue.
+ * <p>
+ * If {@link InternalConfigurations#EXTENSION_EXECUTOR_VIRTUAL_THREADS_ENABLED} is set and the JVM supports virtual
+ * threads, every queue is instead drained by its own virtual thread as long as it has tasks. The tasks of a queue are
+ * still executed one after another in order, but a blocking extension callback, for example an authenticator that
+ * looks up credentials, only blocks the client it was called for and not every client that shares this executor.
  *
  * @author Christoph Schäbel
  */
@@ -60,8 +67,9 @@ public class PluginTaskExecutor {
 
     private static final @NotNull AtomicInteger COUNTER = new AtomicInteger();
     private final @NotNull ExecutorService executorService;
+    private final @Nullable ExecutorService virtualThreadExecutorService;
     private final @NotNull AtomicBoolean running = new AtomicBoolean(true);
-    @GuardedBy("stripedLock") private final @NotNull ConcurrentMap<String, Queue<PluginTaskExecution>> taskQueues = new ConcurrentHashMap<>();
+    @GuardedBy("stripedLock") private final @NotNull ConcurrentMap<String, TaskQueue> taskQueues = new ConcurrentHashMap<>();
     private final @NotNull AtomicLong counterAllQueues;
     /**
      * The semaphore is used to make the thread wait if no more tasks are available. The thread is therefore *not*
@@ -75,19 +83,36 @@ public class PluginTaskExecutor {
     @Inject
     public PluginTaskExecutor(final @NotNull @PluginTaskQueue AtomicLong counterAllQueues) {
         this.counterAllQueues = counterAllQueues;
-        this.executorService = Executors.newSingleThreadExecutor(
-                ThreadFactoryUtil.create("extension-task-executor-" + COUNTER.getAndIncrement()));
+        final int executorIndex = COUNTER.getAndIncrement();
+        this.executorService =
+                Executors.newSingleThreadExecutor(ThreadFactoryUtil.create("extension-task-executor-" + executorIndex));
+        if (InternalConfigurations.EXTENSION_EXECUTOR_VIRTUAL_THREADS_ENABLED.get() && VirtualThreads.isSupported()) {
+            virtualThreadExecutorService = VirtualThreads.newThreadPerTaskExecutor(ThreadFactoryUtil.createVirtual(
+                    "extension-task-executor-" + executorIndex + "-%d"));
+        } else {
+            virtualThreadExecutorService = null;
+        }
     }
 
     @VisibleForTesting
     @PostConstruct
     public void postConstruct() {
-        executorService.submit(new PluginTaskExecutorRunnable());
+        if (virtualThreadExecutorService == null) {
+            executorService.submit(new PluginTaskExecutorRunnable());
+        }
     }
 
     public void stop() {
         running.set(false);
         executorService.shutdownNow();
+        if (virtualThreadExecutorService != null) {
+            virtualThreadExecutorService.shutdownNow();
+        }
+    }
+
+    @VisibleForTesting
+    boolean isVirtualThreads() {
+        return virtualThreadExecutorService != null;
     }
 
     public void handlePluginTaskExecution(@NotNull final PluginTaskExecution pluginTaskExecution) {
@@ -99,19 +124,199 @@ public class PluginTaskExecutor {
         final Lock lock = stripedLock.get(identifier);
         try {
             lock.lock();
-            final Queue<PluginTaskExecution> queueForId =
-                    taskQueues.computeIfAbsent(identifier, new CreateQueueIfNotPresent());
+            final TaskQueue queueForId = taskQueues.computeIfAbsent(identifier, new CreateQueueIfNotPresent());
             queueForId.add(pluginTaskExecution);
+            if (virtualThreadExecutorService != null && !queueForId.draining) {
+                queueForId.draining = true;
+                virtualThreadExecutorService.execute(new TaskQueueDrainer(identifier, queueForId));
+            }
         } finally {
             lock.unlock();
         }
-        semaphore.release();
+        if (virtualThreadExecutorService == null) {
+            semaphore.release();
+        }
+    }
+
+    private void executeDoneTask(@NotNull final PluginTaskExecution task) {
+        try {
+            final PluginTaskOutput outputObject = task.getOutputObject();
+            if (outputObject == null) {
+                return;
+            }
+            final PluginTaskContext pluginContext = task.getPluginContext();
+            if (pluginContext instanceof PluginTaskPost) {
+                final PluginTaskPost pluginPost = (PluginTaskPost) pluginContext;
+                // noinspection unchecked: generics extends a PluginTaskOutput
+                pluginPost.pluginPost(outputObject);
+            }
+            if (outputObject.isAsync()) {
+                outputObject.resetAsyncStatus();
+            }
+        } catch (final Throwable t) {
+            Exceptions.rethrowError("Exception at extension post", t);
+        }
+    }
+
+    /**
+     * @param onAsyncDone called after an async task was marked as done
+     */
+    private void executeTask(@NotNull final PluginTaskExecution task, final @NotNull Runnable onAsyncDone) {
+        final PluginTaskOutput output = runTask(task);
+        // noinspection unchecked: generics extends a PluginTaskOutput
+        task.setOutputObject(output);
+        if (output.isAsync()) {
+            // handle async result
+            task.markAsAsync();
+            final ListenableFuture<Boolean> asyncFuture = output.getAsyncFuture();
+            Preconditions.checkNotNull(asyncFuture, "Async future cannot be null for an async task");
+            Futures.addCallback(asyncFuture, new FutureCallback<Boolean>() {
+
+                @Override
+                public void onSuccess(@Nullable final Boolean result) {
+                    // mark the task as done and notify the thread that drains the queue
+                    task.markAsDone();
+                    onAsyncDone.run();
+                }
+
+                @Override
+                public void onFailure(@NotNull final Throwable t) {
+                    Exceptions.rethrowError("Exception at PluginTaskExecutor", t);
+                    task.markAsDone();
+                    onAsyncDone.run();
+                }
+                // the queue executor cannot be passed here, because it is spinning or blocked all the time
+                // therefore a new task might never be executed.
+                // A direct executor is the choice here, because it can run the callback even if resume is called
+                // in the same thread as async without (does not add a new task to the executor service)
+            }, MoreExecutors.directExecutor());
+        } else {
+            // directly execute result function
+            task.markAsDone();
+            executeDoneTask(task);
+        }
+    }
+
+    @NotNull private PluginTaskOutput runTask(@NotNull final PluginTaskExecution task) {
+        final Thread thread = Thread.currentThread();
+        final ClassLoader contextClassLoader = thread.getContextClassLoader();
+        try {
+            final PluginTask pluginTask = task.getPluginTask();
+            thread.setContextClassLoader(pluginTask.getPluginClassLoader());
+            final PluginTaskOutput output;
+            if (pluginTask instanceof PluginInOutTask) {
+                output = runInOutTask(task, (PluginInOutTask) pluginTask);
+            } else if (pluginTask instanceof PluginInTask) {
+                output = runInTask(task, (PluginInTask) pluginTask);
+            } else if (pluginTask instanceof PluginOutTask) {
+                output = runOutTask(task, (PluginOutTask) pluginTask);
+            } else {
+                throw new IllegalArgumentException("Unknown task type for extension task queue");
+            }
+            return output;
+        } finally {
+            thread.setContextClassLoader(contextClassLoader);
+        }
     }
-    private static class CreateQueueIfNotPresent implements Function<String, Queue<PluginTaskExecution>> {
+
+    @NotNull private PluginTaskOutput runOutTask(@NotNull final PluginTaskExecution task, final PluginOutTask pluginTask) {
+        // noinspection unchecked: cast is safe because accept has generics that extend PluginTaskOutput
+        return (PluginTaskOutput) pluginTask.apply(task.getOutputObject());
+    }
+
+    @NotNull private PluginTaskOutput runInTask(
+            @NotNull final PluginTaskExecution task,
+            @NotNull final PluginInTask pluginTask) {
+        // noinspection unchecked: cast is safe because accept has generics that extend PluginTaskOutput
+        pluginTask.accept(task.getInputObject());
+        return DefaultPluginTaskOutput.getInstance();
+    }
+
+    @NotNull private PluginTaskOutput runInOutTask(
+            @NotNull final PluginTaskExecution task,
+            final PluginInOutTask pluginTask) {
+        // noinspection unchecked: cast is safe because apply has generics that extend PluginTaskOutput
+        return (PluginTaskOutput) pluginTask.apply(task.getInputObject(), task.getOutputObject());
+    }
+
+    private static class TaskQueue extends ConcurrentLinkedQueue<PluginTaskExecution> {
+
+        // whether a virtual thread drains the queue
+        @GuardedBy("stripedLock") boolean draining;
+    }
+
+    private static class CreateQueueIfNotPresent implements Function<String, TaskQueue> {
 
         @NotNull @Override
-        public Queue<PluginTaskExecution> apply(@NotNull final String id) {
-            return new ConcurrentLinkedQueue<>();
+        public TaskQueue apply(@NotNull final String id) {
+            return new TaskQueue();
+        }
+    }
+
+    /**
+     * Executes the tasks of one queue in order on a virtual thread. The thread waits for async tasks to be done, so
+     * the next task of the queue is not started before the post-functions of the previous task are executed. The
+     * queue is removed once it is empty, a new task starts a new drainer.
+     */
+    private class TaskQueueDrainer implements Runnable {
+
+        private final @NotNull String identifier;
+        private final @NotNull TaskQueue queue;
+        TaskQueueDrainer(final @NotNull String identifier, final @NotNull TaskQueue queue) {
+            this.identifier = identifier;
+            this.queue = queue;
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (running.get()) {
+                    final PluginTaskExecution task = queue.peek();
+                    if (task == null) {
+                        if (stopDraining()) {
+                            return;
+                        }
+                        continue;
+                    }
+                    final CountDownLatch asyncDone = new CountDownLatch(1);
+                    try {
+                        executeTask(task, asyncDone::countDown);
+                        if (task.isAsync()) {
+                            // blocking is cheap on a virtual thread, the callback counts down once the task is done
+                            asyncDone.await();
+                            executeDoneTask(task);
+                        }
+                    } catch (final InterruptedException e) {
+                        // the executor was stopped
+                        return;
+                    } catch (final Throwable t) {
+                        Exceptions.rethrowError("Exception at extension task", t);
+                    } finally {
+                        queue.remove();
+                        counterAllQueues.decrementAndGet();
+                    }
+                }
+            } catch (final Throwable t) {
+                Exceptions.rethrowError("Exception at PluginTaskExecutor", t);
+            }
+        }
+
+        /**
+         * @return true if the queue is really empty and was removed, false if a task was added concurrently
+         */
+        private boolean stopDraining() {
+            final Lock lock = stripedLock.get(identifier);
+            try {
+                lock.lock();
+                if (!queue.isEmpty()) {
+                    return false;
+                }
+                queue.draining = false;
+                taskQueues.remove(identifier, queue);
+                return true;
+            } finally {
+                lock.unlock();
+            }
         }
     }
 
@@ -125,8 +330,8 @@ public class PluginTaskExecutor {
                 while (running.get()) {
                     boolean taskExecuted = false;
                     final int availablePermitsBeforeLoop = semaphore.availablePermits();
-                    for (final Map.Entry<String, Queue<PluginTaskExecution>> taskQueueEntry : taskQueues.entrySet()) {
-                        final Queue<PluginTaskExecution> queue = taskQueueEntry.getValue();
+                    for (final Map.Entry<String, TaskQueue> taskQueueEntry : taskQueues.entrySet()) {
+                        final TaskQueue queue = taskQueueEntry.getValue();
                         final String key = taskQueueEntry.getKey();
                         if (queue.isEmpty()) {
                             if (possiblyCleanupEmptyQueue(key)) {
@@ -152,7 +357,7 @@ public class PluginTaskExecutor {
                         }
                         try {
                             taskExecuted = true;
-                            executeTask(task);
+                            executeTask(task, semaphore::release);
                             if (!task.isAsync()) {
                                 queue.remove();
                                 counterAllQueues.decrementAndGet();
@@ -199,7 +404,7 @@ public class PluginTaskExecutor {
             final Lock lock = stripedLock.get(key);
             try {
                 lock.lock();
-                final Queue<PluginTaskExecution> possiblyEmptyQueue = taskQueues.get(key);
+                final TaskQueue possiblyEmptyQueue = taskQueues.get(key);
                 if (possiblyEmptyQueue.isEmpty()) {
                     taskQueues.remove(key);
                     return true;
@@ -209,103 +414,5 @@ public class PluginTaskExecutor {
             }
             return false;
         }
-
-        private void executeDoneTask(@NotNull final PluginTaskExecution task) {
-            try {
-                final PluginTaskOutput outputObject = task.getOutputObject();
-                if (outputObject == null) {
-                    return;
-                }
-                final PluginTaskContext pluginContext = task.getPluginContext();
-                if (pluginContext instanceof PluginTaskPost) {
-                    final PluginTaskPost pluginPost = (PluginTaskPost) pluginContext;
-                    // noinspection unchecked: generics extends a PluginTaskOutput
-                    pluginPost.pluginPost(outputObject);
-                }
-                if (outputObject.isAsync()) {
-                    outputObject.resetAsyncStatus();
-                }
-            } catch (final Throwable t) {
-                Exceptions.rethrowError("Exception at extension post", t);
-            }
-        }
-
-        private void executeTask(@NotNull final PluginTaskExecution task) {
-            final PluginTaskOutput output = runTask(task);
-            // noinspection unchecked: generics extends a PluginTaskOutput
-            task.setOutputObject(output);
-            if (output.isAsync()) {
-                // handle async result
-                task.markAsAsync();
-                final ListenableFuture<Boolean> asyncFuture = output.getAsyncFuture();
-                Preconditions.checkNotNull(asyncFuture, "Async future cannot be null for an async task");
-                Futures.addCallback(asyncFuture, new FutureCallback<Boolean>() {
-
-                    @Override
-                    public void onSuccess(@Nullable final Boolean result) {
-                        // mark the task as done and increment the semaphore to make sure the thread runs
-                        task.markAsDone();
-                        semaphore.release();
-                    }
-
-                    @Override
-                    public void onFailure(@NotNull final Throwable t) {
-                        Exceptions.rethrowError("Exception at PluginTaskExecutor", t);
-                        task.markAsDone();
-                        semaphore.release();
-                    }
-                    // the queue executor cannot be passed here, because it is spinning or blocked all the time
-                    // therefore a new task might never be executed.
-                    // A direct executor is the choice here, because it can run the callback even if resume is called
-                    // in the same thread as async without (does not add a new task to the executor service)
-                }, MoreExecutors.directExecutor());
-            } else {
-                // directly execute result function
-                task.markAsDone();
-                executeDoneTask(task);
-            }
-        }
-
-        @NotNull private PluginTaskOutput runTask(@NotNull final PluginTaskExecution task) {
-            final Thread thread = Thread.currentThread();
-            final ClassLoader contextClassLoader = thread.getContextClassLoader();
-            try {
-                final PluginTask pluginTask = task.getPluginTask();
-                thread.setContextClassLoader(pluginTask.getPluginClassLoader());
-                final PluginTaskOutput output;
-                if (pluginTask instanceof PluginInOutTask) {
-                    output = runInOutTask(task, (PluginInOutTask) pluginTask);
-                } else if (pluginTask instanceof PluginInTask) {
-                    output = runInTask(task, (PluginInTask) pluginTask);
-                } else if (pluginTask instanceof PluginOutTask) {
-                    output = runOutTask(task, (PluginOutTask) pluginTask);
-                } else {
-                    throw new IllegalArgumentException("Unknown task type for extension task queue");
-                }
-                return output;
-            } finally {
-                thread.setContextClassLoader(contextClassLoader);
-            }
-        }
-
-        @NotNull private PluginTaskOutput runOutTask(@NotNull final PluginTaskExecution task, final PluginOutTask pluginTask) {
-            // noinspection unchecked: cast is safe because accept has generics that extend PluginTaskOutput
-            return (PluginTaskOutput) pluginTask.apply(task.getOutputObject());
-        }
-
-        @NotNull private PluginTaskOutput runInTask(
-                @NotNull final PluginTaskExecution task,
-                @NotNull final PluginInTask pluginTask) {
-            // noinspection unchecked: cast is safe because accept has generics that extend PluginTaskOutput
-            pluginTask.accept(task.getInputObject());
-            return DefaultPluginTaskOutput.getInstance();
-        }
-
-        @NotNull private PluginTaskOutput runInOutTask(
-                @NotNull final PluginTaskExecution task,
-                final PluginInOutTask pluginTask) {
-            // noinspection unchecked: cast is safe because apply has generics that extend PluginTaskOutput
-            return (PluginTaskOutput) pluginTask.apply(task.getInputObject(), task.getOutputObject());
-        }
     }
 }
@@ -15,11 +15,17 @@
  */
 package com.hivemq.extensions.services.executor;
 
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.collect.ImmutableList;
 import com.hivemq.common.shutdown.ShutdownHooks;
 import com.hivemq.configuration.service.InternalConfigurations;
 import com.hivemq.extension.sdk.api.annotations.NotNull;
 import com.hivemq.extension.sdk.api.annotations.Nullable;
+import com.hivemq.metrics.HiveMQMetrics;
 import com.hivemq.util.ThreadFactoryUtil;
+import com.hivemq.util.VirtualThreads;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -31,6 +37,7 @@ import java.util.List;
 import java.util.Objects;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Future;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledFuture;
@@ -38,10 +45,17 @@ import java.util.concurrent.ScheduledThreadPoolExecutor;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static com.hivemq.configuration.service.InternalConfigurations.MANAGED_EXTENSION_EXECUTOR_SHUTDOWN_TIMEOUT_SEC;
 
 /**
+ * The executor shared by all extensions.
+ * <p>
+ * If {@link InternalConfigurations#EXTENSION_EXECUTOR_VIRTUAL_THREADS_ENABLED} is set and the JVM supports virtual
+ * threads, the submitted tasks each run on a new virtual thread, so blocking extension code does not exhaust the
+ * thread pool. Delayed and periodic tasks are still run by the platform thread pool.
+ *
  * @author Florian Limpöck
  * @since  4.0.0
  */
@@ -50,11 +64,18 @@ public class GlobalManagedExtensionExecutorService implements ScheduledExecutorS
 
     private static final Logger log = LoggerFactory.getLogger(GlobalManagedExtensionExecutorService.class);
     private final @NotNull ShutdownHooks shutdownHooks;
+    private final @NotNull MetricRegistry metricRegistry;
+    private final @NotNull AtomicInteger activeVirtualTasks = new AtomicInteger();
     private @Nullable ScheduledExecutorService scheduledExecutorService;
     private @Nullable ScheduledThreadPoolExecutor scheduledThreadPoolExecutor;
+    private @Nullable ExecutorService virtualThreadExecutorService;
+    private @Nullable AutoCloseable pinnedMonitor;
     @Inject
-    public GlobalManagedExtensionExecutorService(final @NotNull ShutdownHooks shutdownHooks) {
+    public GlobalManagedExtensionExecutorService(
+            final @NotNull ShutdownHooks shutdownHooks,
+            final @NotNull MetricRegistry metricRegistry) {
         this.shutdownHooks = shutdownHooks;
+        this.metricRegistry = metricRegistry;
     }
 
     @PostConstruct
@@ -69,6 +90,22 @@ public class GlobalManagedExtensionExecutorService implements ScheduledExecutorS
         scheduledThreadPoolExecutor.allowCoreThreadTimeOut(true);
         // for instrumentation (metrics)
         scheduledExecutorService = scheduledThreadPoolExecutor;
+        if (InternalConfigurations.EXTENSION_EXECUTOR_VIRTUAL_THREADS_ENABLED.get()) {
+            if (VirtualThreads.isSupported()) {
+                virtualThreadExecutorService = VirtualThreads.newThreadPerTaskExecutor(ThreadFactoryUtil.createVirtual(
+                        "managed-extension-virtual-executor-%d"));
+                final Counter pinnedCounter = metricRegistry.counter(HiveMQMetrics.VIRTUAL_THREADS_PINNED.name());
+                pinnedMonitor = VirtualThreads.monitorPinning(pinnedCounter::inc);
+                log.debug("Running extension executor tasks on virtual threads");
+            } else {
+                log.warn("Virtual threads for extension executors require Java 21 or newer, using platform threads.");
+            }
+        }
+        final ScheduledThreadPoolExecutor threadPool = scheduledThreadPoolExecutor;
+        metricRegistry.register(HiveMQMetrics.EXTENSION_EXECUTOR_ACTIVE_TASKS.name(),
+                (Gauge<Integer>) () -> threadPool.getActiveCount() + activeVirtualTasks.get());
+        metricRegistry.register(HiveMQMetrics.EXTENSION_EXECUTOR_QUEUED_TASKS.name(),
+                (Gauge<Integer>) () -> threadPool.getQueue().size());
         shutdownHooks.add(
                 new ManagedPluginExecutorShutdownHook(this, MANAGED_EXTENSION_EXECUTOR_SHUTDOWN_TIMEOUT_SEC.get()));
     }
@@ -117,14 +154,30 @@ public class GlobalManagedExtensionExecutorService implements ScheduledExecutorS
                 .scheduleWithFixedDelay(command, initialDelay, delay, unit);
     }
 
+    public boolean isVirtualThreads() {
+        return virtualThreadExecutorService != null;
+    }
+
     @Override
     public void shutdown() {
         Objects.requireNonNull(scheduledExecutorService).shutdown();
+        if (virtualThreadExecutorService != null) {
+            virtualThreadExecutorService.shutdown();
+        }
+        stopPinnedMonitor();
     }
 
     @Override
     public @NotNull List<Runnable> shutdownNow() {
-        return Objects.requireNonNull(scheduledExecutorService).shutdownNow();
+        final List<Runnable> pendingTasks = Objects.requireNonNull(scheduledExecutorService).shutdownNow();
+        stopPinnedMonitor();
+        if (virtualThreadExecutorService == null) {
+            return pendingTasks;
+        }
+        return ImmutableList.<Runnable>builder()
+                .addAll(pendingTasks)
+                .addAll(virtualThreadExecutorService.shutdownNow())
+                .build();
     }
 
     public boolean isShutdown() {
@@ -132,50 +185,116 @@ public class GlobalManagedExtensionExecutorService implements ScheduledExecutorS
     }
 
     public boolean isTerminated() {
-        return Objects.requireNonNull(scheduledExecutorService).isTerminated();
+        return Objects.requireNonNull(scheduledExecutorService).isTerminated() &&
+                (virtualThreadExecutorService == null || virtualThreadExecutorService.isTerminated());
     }
 
     public boolean awaitTermination(final long timeout, @NotNull final TimeUnit unit) throws InterruptedException {
-        return Objects.requireNonNull(scheduledExecutorService).awaitTermination(timeout, unit);
+        final long deadline = System.nanoTime() + unit.toNanos(timeout);
+        if (!Objects.requireNonNull(scheduledExecutorService).awaitTermination(timeout, unit)) {
+            return false;
+        }
+        return virtualThreadExecutorService == null ||
+                virtualThreadExecutorService.awaitTermination(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
     }
 
     @NotNull public <T> Future<T> submit(@NotNull final Callable<T> task) {
-        return Objects.requireNonNull(scheduledExecutorService).submit(task);
+        return taskExecutor().submit(countActive(task));
     }
 
     @NotNull public <T> Future<T> submit(@NotNull final Runnable task, @NotNull final T result) {
-        return Objects.requireNonNull(scheduledExecutorService).submit(task, result);
+        return taskExecutor().submit(countActive(task), result);
     }
 
     @NotNull public Future<?> submit(@NotNull final Runnable task) {
-        return Objects.requireNonNull(scheduledExecutorService).submit(task);
+        return taskExecutor().submit(countActive(task));
     }
 
     @NotNull public <T> List<Future<T>> invokeAll(@NotNull final Collection<? extends Callable<T>> tasks)
             throws InterruptedException {
-        return Objects.requireNonNull(scheduledExecutorService).invokeAll(tasks);
+        return taskExecutor().invokeAll(countActive(tasks));
     }
 
     @NotNull public <T> List<Future<T>> invokeAll(
             @NotNull final Collection<? extends Callable<T>> tasks,
             final long timeout,
             @NotNull final TimeUnit unit) throws InterruptedException {
-        return Objects.requireNonNull(scheduledExecutorService).invokeAll(tasks, timeout, unit);
+        return taskExecutor().invokeAll(countActive(tasks), timeout, unit);
     }
 
     @NotNull public <T> T invokeAny(@NotNull final Collection<? extends Callable<T>> tasks)
             throws InterruptedException, ExecutionException {
-        return Objects.requireNonNull(scheduledExecutorService).invokeAny(tasks);
+        return taskExecutor().invokeAny(countActive(tasks));
     }
 
     @NotNull public <T> T invokeAny(
             @NotNull final Collection<? extends Callable<T>> tasks,
             final long timeout,
             @NotNull final TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
-        return Objects.requireNonNull(scheduledExecutorService).invokeAny(tasks, timeout, unit);
+        return taskExecutor().invokeAny(countActive(tasks), timeout, unit);
     }
 
     public void execute(@NotNull final Runnable command) {
-        Objects.requireNonNull(scheduledExecutorService).execute(command);
+        taskExecutor().execute(countActive(command));
+    }
+
+    private @NotNull ExecutorService taskExecutor() {
+        if (virtualThreadExecutorService != null) {
+            return virtualThreadExecutorService;
+        }
+        return Objects.requireNonNull(scheduledExecutorService);
+    }
+
+    // the platform thread pool counts its active threads itself
+    private @NotNull Runnable countActive(final @NotNull Runnable task) {
+        if (virtualThreadExecutorService == null) {
+            return task;
+        }
+        return () -> {
+            activeVirtualTasks.incrementAndGet();
+            try {
+                task.run();
+            } finally {
+                activeVirtualTasks.decrementAndGet();
+            }
+        };
+    }
+
+    private @NotNull <T> Callable<T> countActive(final @NotNull Callable<T> task) {
+        if (virtualThreadExecutorService == null) {
+            return task;
+        }
+        return () -> {
+            activeVirtualTasks.incrementAndGet();
+            try {
+                return task.call();
+            } finally {
+                activeVirtualTasks.decrementAndGet();
+            }
+        };
+    }
+
+    private @NotNull <T> Collection<? extends Callable<T>> countActive(
+            final @NotNull Collection<? extends Callable<T>> tasks) {
+        if (virtualThreadExecutorService == null) {
+            return tasks;
+        }
+        final ImmutableList.Builder<Callable<T>> countedTasks = ImmutableList.builderWithExpectedSize(tasks.size());
+        for (final Callable<T> task : tasks) {
+            countedTasks.add(countActive(task));
+        }
+        return countedTasks.build();
+    }
+
+    private void stopPinnedMonitor() {
+        if (pinnedMonitor == null) {
+            return;
+        }
+        try {
+            pinnedMonitor.close();
+        } catch (final Exception e) {
+            log.debug("Not able to stop the monitoring of pinned virtual threads.", e);
+        }
+        pinnedMonitor = null;
     }
 }
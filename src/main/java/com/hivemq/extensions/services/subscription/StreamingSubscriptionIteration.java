@@ -0,0 +1,120 @@
+/*
+ * Copyright 2019-present HiveMQ GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hivemq.extensions.services.subscription;
+
+import com.codahale.metrics.Meter;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.util.concurrent.SettableFuture;
+import com.hivemq.extension.sdk.api.annotations.NotNull;
+import com.hivemq.extension.sdk.api.services.general.IterationCallback;
+import com.hivemq.extension.sdk.api.services.subscription.SubscriptionsForClientResult;
+import com.hivemq.extensions.services.general.IterationContextImpl;
+import com.hivemq.mqtt.message.subscribe.Topic;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Passes all subscriptions of this node to an extension callback while they are streamed from the local persistence.
+ * <p>
+ * The callback is called in batches on the callback executor. Between two batches the executor is released, so a
+ * long iteration does not occupy it. If a rate is set, each batch holds the clients of one tick and the next batch is
+ * scheduled at the start of the next tick.
+ */
+class StreamingSubscriptionIteration implements Runnable {
+
+    static final long TICK_MILLIS = 100;
+
+    private final @NotNull Iterator<Map.Entry<String, ImmutableSet<Topic>>> subscriptions;
+    private final @NotNull IterationCallback<SubscriptionsForClientResult> callback;
+    private final @NotNull Executor callbackExecutor;
+    private final @NotNull ScheduledExecutorService scheduler;
+    private final @NotNull Meter throughput;
+    private final int batchSize;
+    private final boolean rateLimited;
+    private final @NotNull IterationContextImpl iterationContext = new IterationContextImpl();
+    private final @NotNull SettableFuture<Void> finishedFuture = SettableFuture.create();
+    StreamingSubscriptionIteration(
+            final @NotNull Iterator<Map.Entry<String, ImmutableSet<Topic>>> subscriptions,
+            final @NotNull IterationCallback<SubscriptionsForClientResult> callback,
+            final @NotNull Executor callbackExecutor,
+            final @NotNull ScheduledExecutorService scheduler,
+            final @NotNull Meter throughput,
+            final int clientsPerSecond,
+            final int unlimitedBatchSize) {
+        this.subscriptions = subscriptions;
+        this.callback = callback;
+        this.callbackExecutor = callbackExecutor;
+        this.scheduler = scheduler;
+        this.throughput = throughput;
+        rateLimited = clientsPerSecond > 0;
+        batchSize = rateLimited ? (int) Math.max(1, clientsPerSecond * TICK_MILLIS / 1000) : unlimitedBatchSize;
+    }
+
+    @NotNull SettableFuture<Void> start() {
+        callbackExecutor.execute(this);
+        return finishedFuture;
+    }
+
+    @Override
+    public void run() {
+        final long tickStart = System.nanoTime();
+        final ClassLoader previousClassLoader = Thread.currentThread().getContextClassLoader();
+        try {
+            Thread.currentThread().setContextClassLoader(callback.getClass().getClassLoader());
+            for (int i = 0; i < batchSize; i++) {
+                if (!subscriptions.hasNext()) {
+                    finishedFuture.set(null);
+                    return;
+                }
+                final Map.Entry<String, ImmutableSet<Topic>> entry = subscriptions.next();
+                callback.iterate(iterationContext,
+                        new SubscriptionsForClientResultImpl(entry.getKey(),
+                                entry.getValue().stream().map(TopicSubscriptionImpl::new).collect(Collectors.toSet())));
+                throughput.mark();
+                if (iterationContext.isAborted()) {
+                    finishedFuture.set(null);
+                    return;
+                }
+            }
+        } catch (final Throwable t) {
+            finishedFuture.setException(t);
+            return;
+        } finally {
+            Thread.currentThread().setContextClassLoader(previousClassLoader);
+        }
+        scheduleNextBatch(tickStart);
+    }
+
+    private void scheduleNextBatch(final long tickStart) {
+        final long delay = rateLimited ?
+                TimeUnit.MILLISECONDS.toNanos(TICK_MILLIS) - (System.nanoTime() - tickStart) :
+                0;
+        try {
+            if (delay > 0) {
+                scheduler.schedule(() -> callbackExecutor.execute(this), delay, TimeUnit.NANOSECONDS);
+            } else {
+                callbackExecutor.execute(this);
+            }
+        } catch (final Throwable t) {
+            finishedFuture.setException(t);
+        }
+    }
+}
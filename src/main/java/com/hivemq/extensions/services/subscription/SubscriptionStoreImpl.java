@@ -15,6 +15,8 @@
  */
 package com.hivemq.extensions.services.subscription;
 
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
 import com.google.common.base.Preconditions;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
@@ -23,6 +25,7 @@ import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
 import com.google.common.util.concurrent.SettableFuture;
 import com.hivemq.bootstrap.ioc.lazysingleton.LazySingleton;
+import com.hivemq.configuration.service.InternalConfigurations;
 import com.hivemq.extension.sdk.api.annotations.NotNull;
 import com.hivemq.extension.sdk.api.annotations.Nullable;
 import com.hivemq.extension.sdk.api.services.exception.DoNotImplementException;
@@ -46,6 +49,7 @@ import com.hivemq.extensions.iteration.MultipleChunkResult;
 import com.hivemq.extensions.services.PluginServiceRateLimitService;
 import com.hivemq.extensions.services.executor.GlobalManagedExtensionExecutorService;
 import com.hivemq.extensions.services.general.IterationContextImpl;
+import com.hivemq.metrics.HiveMQMetrics;
 import com.hivemq.mqtt.message.subscribe.Topic;
 import com.hivemq.mqtt.topic.tree.LocalTopicTree;
 import com.hivemq.mqtt.topic.tree.SubscriptionTypeItemFilter;
@@ -76,18 +80,22 @@ public class SubscriptionStoreImpl implements SubscriptionStore {
     private final @NotNull LocalTopicTree topicTree;
     private final @NotNull GlobalManagedExtensionExecutorService managedExtensionExecutorService;
     private final @NotNull AsyncIteratorFactory asyncIteratorFactory;
+    private final @NotNull Meter streamingIterationThroughput;
     @Inject
     public SubscriptionStoreImpl(
             final @NotNull ClientSessionSubscriptionPersistence subscriptionPersistence,
             final @NotNull PluginServiceRateLimitService rateLimitService,
             final @NotNull LocalTopicTree topicTree,
             final @NotNull GlobalManagedExtensionExecutorService managedExtensionExecutorService,
-            final @NotNull AsyncIteratorFactory asyncIteratorFactory) {
+            final @NotNull AsyncIteratorFactory asyncIteratorFactory,
+            final @NotNull MetricRegistry metricRegistry) {
         this.subscriptionPersistence = subscriptionPersistence;
         this.rateLimitService = rateLimitService;
         this.topicTree = topicTree;
         this.managedExtensionExecutorService = managedExtensionExecutorService;
         this.asyncIteratorFactory = asyncIteratorFactory;
+        streamingIterationThroughput =
+                metricRegistry.meter(HiveMQMetrics.SUBSCRIPTION_STORE_STREAMING_ITERATION_CLIENTS.name());
     }
 
     @Override
@@ -380,6 +388,17 @@ public class SubscriptionStoreImpl implements SubscriptionStore {
         if (rateLimitService.rateLimitExceeded()) {
             return CompletableFuture.failedFuture(PluginServiceRateLimitService.RATE_LIMIT_EXCEEDED_EXCEPTION);
         }
+        if (InternalConfigurations.SUBSCRIPTION_STORE_STREAMING_ITERATION_ENABLED.get()) {
+            final StreamingSubscriptionIteration iteration =
+                    new StreamingSubscriptionIteration(subscriptionPersistence.getAllLocalSubscribersIterator(),
+                            callback,
+                            callbackExecutor,
+                            managedExtensionExecutorService,
+                            streamingIterationThroughput,
+                            InternalConfigurations.SUBSCRIPTION_STORE_STREAMING_ITERATION_RATE.get(),
+                            InternalConfigurations.PERSISTENCE_SUBSCRIPTIONS_MAX_CHUNK_SIZE);
+            return ListenableFutureConverter.toCompletable(iteration.start(), managedExtensionExecutorService);
+        }
         final FetchCallback<SubscriptionsForClientResult> fetchCallback =
                 new AllSubscribersFetchCallback(subscriptionPersistence);
         final AsyncIterator<SubscriptionsForClientResult> asyncIterator = asyncIteratorFactory
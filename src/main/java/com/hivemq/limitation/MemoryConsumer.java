@@ -0,0 +1,111 @@
+/*
+ * Copyright 2019-present HiveMQ GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hivemq.limitation;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Gauge;
+import com.hivemq.extension.sdk.api.annotations.NotNull;
+import com.hivemq.metrics.HiveMQMetric;
+
+/**
+ * The subsystems whose heap usage is governed by the {@link MemoryGovernor}.
+ * <p>
+ * Each subsystem is told to shed on its own when its usage exceeds its limit. Subsystems that can not shed without
+ * losing guaranteed messages or state are never told to shed, but their usage still counts against the budget.
+ */
+public enum MemoryConsumer {
+
+    /**
+     * Queued QoS 0 messages, new QoS 0 messages for offline or slow clients are dropped while shedding.
+     */
+    QOS_0_MESSAGES("qos-0-messages", 10, true),
+    /**
+     * Topic aliases, no new topic aliases are assigned while shedding.
+     */
+    TOPIC_ALIASES("topic-aliases", 5, true),
+    /**
+     * Retained messages and the retained message read cache. While shedding new retained messages are not stored, the
+     * existing retained message of the topic is kept and the PUBLISH is still delivered to the subscribers. Every
+     * message that is not stored is logged as dropped.
+     */
+    RETAINED_MESSAGES("retained-messages", 15, true),
+    /**
+     * Queued QoS 1 and 2 messages of the in-memory persistence.
+     */
+    QUEUED_MESSAGES("queued-messages", 35, false),
+    /**
+     * Subscriptions of the in-memory persistence.
+     */
+    SUBSCRIPTIONS("subscriptions", 15, false),
+    /**
+     * Client sessions of the in-memory persistence.
+     */
+    CLIENT_SESSIONS("client-sessions", 20, false);
+    private final int weightPercent;
+    private final boolean sheddable;
+    private final @NotNull HiveMQMetric<Gauge<Number>> usageMetric;
+    private final @NotNull HiveMQMetric<Gauge<Number>> budgetMetric;
+    private final @NotNull HiveMQMetric<Gauge<Number>> sheddingMetric;
+    private final @NotNull HiveMQMetric<Counter> shedMetric;
+    MemoryConsumer(final @NotNull String metricName, final int weightPercent, final boolean sheddable) {
+        this.weightPercent = weightPercent;
+        this.sheddable = sheddable;
+        final String prefix = "com.hivemq.memory-governor." + metricName;
+        usageMetric = HiveMQMetric.gaugeValue(prefix + ".usage");
+        budgetMetric = HiveMQMetric.gaugeValue(prefix + ".budget");
+        sheddingMetric = HiveMQMetric.gaugeValue(prefix + ".shedding");
+        shedMetric = HiveMQMetric.valueOf(prefix + ".shed.total", Counter.class);
+    }
+
+    /**
+     * @return the share of the heap budget in percent the subsystem is guaranteed when all subsystems are busy
+     */
+    public int getWeightPercent() {
+        return weightPercent;
+    }
+
+    public boolean isSheddable() {
+        return sheddable;
+    }
+
+    /**
+     * @return the {@link Gauge} holding the estimated heap usage of the subsystem in bytes
+     */
+    public @NotNull HiveMQMetric<Gauge<Number>> getUsageMetric() {
+        return usageMetric;
+    }
+
+    /**
+     * @return the {@link Gauge} holding the budget of the subsystem in bytes after the last rebalancing
+     */
+    public @NotNull HiveMQMetric<Gauge<Number>> getBudgetMetric() {
+        return budgetMetric;
+    }
+
+    /**
+     * @return the {@link Gauge} holding 1 while the subsystem is told to shed, else 0
+     */
+    public @NotNull HiveMQMetric<Gauge<Number>> getSheddingMetric() {
+        return sheddingMetric;
+    }
+
+    /**
+     * @return the {@link Counter} counting the messages or entries the subsystem dropped or rejected while shedding
+     */
+    public @NotNull HiveMQMetric<Counter> getShedMetric() {
+        return shedMetric;
+    }
+}
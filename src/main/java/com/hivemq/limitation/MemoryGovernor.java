@@ -0,0 +1,313 @@
+/*
+ * Copyright 2019-present HiveMQ GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hivemq.limitation;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Metric;
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.annotations.VisibleForTesting;
+import com.hivemq.common.shutdown.HiveMQShutdownHook;
+import com.hivemq.common.shutdown.ShutdownHooks;
+import com.hivemq.configuration.service.InternalConfigurations;
+import com.hivemq.extension.sdk.api.annotations.NotNull;
+import com.hivemq.metrics.HiveMQMetric;
+import com.hivemq.metrics.HiveMQMetrics;
+import com.hivemq.util.Strings;
+import com.hivemq.util.ThreadFactoryUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.PostConstruct;
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.LongSupplier;
+
+/**
+ * Governs the heap usage of the broker subsystems with one shared budget, a share of the max heap.
+ * <p>
+ * The subsystems register their usage, which is estimated with {@link com.hivemq.util.ObjectMemoryEstimation} where
+ * the subsystems keep track of their memory. The in-memory persistences and the retained message read cache are
+ * registered from their memory gauges.
+ * <p>
+ * Every sample the budget is rebalanced: each {@link MemoryConsumer} is guaranteed its weighted share, the share a
+ * subsystem does not use is lent to the subsystems that need more. The limit of a subsystem is the most it may use
+ * while the other subsystems keep their current usage. A sheddable subsystem is told to shed once its usage exceeds its
+ * limit and keeps shedding until its usage fell below the release threshold of its limit. Subsystems that can not shed
+ * are not held to their budget, but their usage reduces the limits of the others down to their weighted shares.
+ */
+@Singleton
+public class MemoryGovernor {
+
+    private static final @NotNull Logger log = LoggerFactory.getLogger(MemoryGovernor.class);
+    private static final @NotNull MemoryConsumer @NotNull [] CONSUMERS = MemoryConsumer.values();
+    private final @NotNull MetricRegistry metricRegistry;
+    private final @NotNull ShutdownHooks shutdownHooks;
+    private final @NotNull List<List<LongSupplier>> usages = new ArrayList<>(CONSUMERS.length);
+    private final @NotNull List<Counter> shedCounters = new ArrayList<>(CONSUMERS.length);
+    private final @NotNull AtomicLongArray budgets = new AtomicLongArray(CONSUMERS.length);
+    private final @NotNull AtomicLongArray limits = new AtomicLongArray(CONSUMERS.length);
+    private final boolean enabled;
+    private final int sampleIntervalMillis;
+    private final long heapBudget;
+    private final int releaseThresholdPercent;
+    // one bit per consumer ordinal
+    private volatile int sheddingConsumers;
+    @Inject
+    public MemoryGovernor(final @NotNull MetricRegistry metricRegistry, final @NotNull ShutdownHooks shutdownHooks) {
+        this(metricRegistry,
+                shutdownHooks,
+                Runtime.getRuntime().maxMemory() / 100 *
+                        InternalConfigurations.MEMORY_GOVERNOR_HEAP_BUDGET_PERCENT.get());
+    }
+
+    @VisibleForTesting
+    MemoryGovernor(
+            final @NotNull MetricRegistry metricRegistry,
+            final @NotNull ShutdownHooks shutdownHooks,
+            final long heapBudget) {
+        this.metricRegistry = metricRegistry;
+        this.shutdownHooks = shutdownHooks;
+        this.heapBudget = heapBudget;
+        enabled = InternalConfigurations.MEMORY_GOVERNOR_ENABLED.get();
+        sampleIntervalMillis = InternalConfigurations.MEMORY_GOVERNOR_SAMPLE_INTERVAL_MSEC.get();
+        releaseThresholdPercent = InternalConfigurations.MEMORY_GOVERNOR_RELEASE_THRESHOLD_PERCENT.get();
+        for (final MemoryConsumer consumer : CONSUMERS) {
+            usages.add(new CopyOnWriteArrayList<>());
+            shedCounters.add(metricRegistry.counter(consumer.getShedMetric().name()));
+            metricRegistry.register(consumer.getUsageMetric().name(), (Gauge<Long>) () -> getUsage(consumer));
+            metricRegistry.register(consumer.getBudgetMetric().name(),
+                    (Gauge<Long>) () -> budgets.get(consumer.ordinal()));
+            metricRegistry.register(consumer.getSheddingMetric().name(),
+                    (Gauge<Integer>) () -> isShedding(consumer) ? 1 : 0);
+        }
+        metricRegistry.register(HiveMQMetrics.MEMORY_GOVERNOR_TOTAL_USAGE.name(), (Gauge<Long>) this::getTotalUsage);
+        metricRegistry.register(HiveMQMetrics.MEMORY_GOVERNOR_TOTAL_BUDGET.name(), (Gauge<Long>) () -> heapBudget);
+        // the persistences are created by a separate injector, their memory accounting is shared via the metrics
+        registerGauge(MemoryConsumer.CLIENT_SESSIONS, HiveMQMetrics.CLIENT_SESSIONS_MEMORY_PERSISTENCE_TOTAL_SIZE);
+        registerGauge(MemoryConsumer.SUBSCRIPTIONS,
+                HiveMQMetrics.CLIENT_SESSION_SUBSCRIPTIONS_MEMORY_PERSISTENCE_TOTAL_SIZE);
+        registerGauge(MemoryConsumer.QUEUED_MESSAGES, HiveMQMetrics.QUEUED_MESSAGES_MEMORY_PERSISTENCE_TOTAL_SIZE);
+        registerGauge(MemoryConsumer.RETAINED_MESSAGES, HiveMQMetrics.RETAINED_MESSAGES_MEMORY_PERSISTENCE_TOTAL_SIZE);
+        registerGauge(MemoryConsumer.RETAINED_MESSAGES, HiveMQMetrics.RETAINED_MESSAGES_READ_CACHE_TOTAL_SIZE);
+    }
+
+    @PostConstruct
+    public void postConstruct() {
+        if (!enabled) {
+            return;
+        }
+        final ScheduledExecutorService executor =
+                Executors.newSingleThreadScheduledExecutor(ThreadFactoryUtil.create("memory-governor-%d"));
+        executor.scheduleWithFixedDelay(() -> {
+            try {
+                rebalance();
+            } catch (final Exception e) {
+                log.error("Exception in memory governor sample task ", e);
+            }
+        }, sampleIntervalMillis, sampleIntervalMillis, TimeUnit.MILLISECONDS);
+        shutdownHooks.add(new MemoryGovernorShutdownHook(executor));
+    }
+
+    /**
+     * Registers the estimated heap usage of a subsystem. The usage of multiple registrations for the same consumer is
+     * summed up.
+     *
+     * @param usage supplies the current usage in bytes, it is called from the sampling thread and must be thread safe
+     */
+    public void register(final @NotNull MemoryConsumer consumer, final @NotNull LongSupplier usage) {
+        usages.get(consumer.ordinal()).add(usage);
+    }
+
+    /**
+     * @return {@code true} if the subsystem must not grow and drop or reject what it can, else {@code false}
+     */
+    public boolean isShedding(final @NotNull MemoryConsumer consumer) {
+        return (sheddingConsumers & (1 << consumer.ordinal())) != 0;
+    }
+
+    /**
+     * Counts a message or entry the subsystem dropped or rejected while shedding.
+     */
+    public void shed(final @NotNull MemoryConsumer consumer) {
+        shedCounters.get(consumer.ordinal()).inc();
+    }
+
+    public long getBudget(final @NotNull MemoryConsumer consumer) {
+        return budgets.get(consumer.ordinal());
+    }
+
+    /**
+     * @return the most the subsystem may use while the other subsystems keep their usage of the last sample
+     */
+    public long getLimit(final @NotNull MemoryConsumer consumer) {
+        return limits.get(consumer.ordinal());
+    }
+
+    public long getUsage(final @NotNull MemoryConsumer consumer) {
+        long usage = 0;
+        for (final LongSupplier supplier : usages.get(consumer.ordinal())) {
+            usage += supplier.getAsLong();
+        }
+        if (consumer == MemoryConsumer.QUEUED_MESSAGES) {
+            // the accounting of the in-memory queue persistence contains the QoS 0 messages
+            usage = Math.max(0, usage - getUsage(MemoryConsumer.QOS_0_MESSAGES));
+        }
+        return usage;
+    }
+
+    public long getTotalUsage() {
+        long totalUsage = 0;
+        for (final MemoryConsumer consumer : CONSUMERS) {
+            totalUsage += getUsage(consumer);
+        }
+        return totalUsage;
+    }
+
+    @VisibleForTesting
+    void rebalance() {
+        final long[] usage = new long[CONSUMERS.length];
+        long totalUsage = 0;
+        for (final MemoryConsumer consumer : CONSUMERS) {
+            usage[consumer.ordinal()] = getUsage(consumer);
+            totalUsage += usage[consumer.ordinal()];
+        }
+        final long[] fairShares = fairShares(usage);
+        final int previousShedding = sheddingConsumers;
+        int shedding = previousShedding;
+        for (final MemoryConsumer consumer : CONSUMERS) {
+            final int index = consumer.ordinal();
+            budgets.set(index, fairShares[index]);
+            // the limit is the fair share of the consumer if it asked for the whole budget
+            final long[] demand = usage.clone();
+            demand[index] = Long.MAX_VALUE;
+            final long limit = fairShares(demand)[index];
+            limits.set(index, limit);
+            if (!consumer.isSheddable()) {
+                continue;
+            }
+            final int bit = 1 << index;
+            if (usage[index] > limit) {
+                shedding |= bit;
+            } else if (usage[index] < limit / 100 * releaseThresholdPercent) {
+                shedding &= ~bit;
+            }
+        }
+        sheddingConsumers = shedding;
+        if (shedding != previousShedding) {
+            final int stopped = previousShedding & ~shedding;
+            if (stopped != 0) {
+                log.info("The estimated heap usage of {} is below the memory limit again, stopped shedding. The " +
+                        "total usage is {}.", consumersOf(stopped), Strings.convertBytes(totalUsage));
+            }
+            final int started = shedding & ~previousShedding;
+            if (started != 0) {
+                log.warn("The estimated heap usage of {} exceeds the memory limit, shedding. The total usage is {} " +
+                                "of the memory budget of {}.",
+                        consumersOf(started),
+                        Strings.convertBytes(totalUsage),
+                        Strings.convertBytes(heapBudget));
+            }
+        }
+    }
+
+    /**
+     * Max-min fair share of the heap budget: consumers below their weighted share keep what they use, the rest is
+     * shared by weight among the consumers that need more.
+     *
+     * @param  usage the demand of every consumer by ordinal
+     * @return       the share of every consumer by ordinal
+     */
+    private long @NotNull [] fairShares(final long @NotNull [] usage) {
+        final long[] shares = new long[CONSUMERS.length];
+        final boolean[] satisfied = new boolean[CONSUMERS.length];
+        long remainingBudget = heapBudget;
+        int remainingWeight = 0;
+        for (final MemoryConsumer consumer : CONSUMERS) {
+            remainingWeight += consumer.getWeightPercent();
+        }
+        boolean changed = true;
+        while (changed && remainingWeight > 0) {
+            changed = false;
+            for (final MemoryConsumer consumer : CONSUMERS) {
+                final int index = consumer.ordinal();
+                if (!satisfied[index] &&
+                        usage[index] <= remainingBudget / remainingWeight * consumer.getWeightPercent()) {
+                    satisfied[index] = true;
+                    shares[index] = usage[index];
+                    remainingBudget -= usage[index];
+                    remainingWeight -= consumer.getWeightPercent();
+                    changed = true;
+                }
+            }
+        }
+        for (final MemoryConsumer consumer : CONSUMERS) {
+            if (!satisfied[consumer.ordinal()]) {
+                shares[consumer.ordinal()] = remainingBudget / remainingWeight * consumer.getWeightPercent();
+            }
+        }
+        return shares;
+    }
+
+    private void registerGauge(final @NotNull MemoryConsumer consumer, final @NotNull HiveMQMetric<?> gauge) {
+        register(consumer, () -> {
+            // the gauge may be registered after the governor was created
+            final Metric metric = metricRegistry.getMetrics().get(gauge.name());
+            if (metric instanceof Gauge) {
+                final Object value = ((Gauge<?>) metric).getValue();
+                if (value instanceof Number) {
+                    return ((Number) value).longValue();
+                }
+            }
+            return 0;
+        });
+    }
+
+    private static @NotNull List<MemoryConsumer> consumersOf(final int shedding) {
+        final List<MemoryConsumer> consumers = new ArrayList<>();
+        for (final MemoryConsumer consumer : CONSUMERS) {
+            if ((shedding & (1 << consumer.ordinal())) != 0) {
+                consumers.add(consumer);
+            }
+        }
+        return consumers;
+    }
+
+    private static class MemoryGovernorShutdownHook implements HiveMQShutdownHook {
+
+        private final @NotNull ScheduledExecutorService sampleExecutor;
+        MemoryGovernorShutdownHook(final @NotNull ScheduledExecutorService sampleExecutor) {
+            this.sampleExecutor = sampleExecutor;
+        }
+
+        @Override
+        public @NotNull String name() {
+            return "Memory Governor Shutdown";
+        }
+
+        @Override
+        public void run() {
+            sampleExecutor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,332 @@
+/*
+ * Copyright 2019-present HiveMQ GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hivemq.limitation;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.annotations.VisibleForTesting;
+import com.hivemq.common.shutdown.HiveMQShutdownHook;
+import com.hivemq.common.shutdown.ShutdownHooks;
+import com.hivemq.configuration.service.InternalConfigurations;
+import com.hivemq.extension.sdk.api.annotations.NotNull;
+import com.hivemq.extensions.ioc.annotation.PluginTaskQueue;
+import com.hivemq.logging.EventLog;
+import com.hivemq.metrics.HiveMQMetrics;
+import com.hivemq.persistence.SingleWriterService;
+import com.hivemq.util.ThreadFactoryUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.PostConstruct;
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.util.Comparator;
+import java.util.PriorityQueue;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.IntSupplier;
+
+/**
+ * Protects the broker against overload by sampling its internal backlogs: the pending single writer tasks, the pending
+ * extension tasks and the heap usage after garbage collection.
+ * <p>
+ * As soon as one backlog exceeds its threshold the protection is {@link OverloadProtectionState#OVERLOADED}. In this
+ * state every sample stops reading from a share of the connected clients with the most inbound traffic since the last
+ * sample and all CONNECTs are rejected with the reason code 'Server busy'.
+ * <p>
+ * When all backlogs fell below the release threshold the protection is {@link OverloadProtectionState#RECOVERING}. In
+ * this state every sample resumes a limited amount of paused clients and admits a budget of CONNECTs that doubles with
+ * every sample. The protection returns to {@link OverloadProtectionState#NORMAL} when all clients are resumed and the
+ * budget doubled {@link #RECOVERY_SAMPLES} times.
+ */
+@Singleton
+public class OverloadProtection {
+
+    private static final @NotNull Logger log = LoggerFactory.getLogger(OverloadProtection.class);
+    @VisibleForTesting
+    static final int RECOVERY_SAMPLES = 6;
+    private final @NotNull SingleWriterService singleWriterService;
+    private final @NotNull AtomicLong extensionTaskCount;
+    private final @NotNull EventLog eventLog;
+    private final @NotNull ShutdownHooks shutdownHooks;
+    private final @NotNull IntSupplier heapUsagePercent;
+    private final @NotNull Counter stateChanges;
+    private final @NotNull Counter rejectedConnects;
+    private final boolean enabled;
+    private final int sampleIntervalMillis;
+    private final int singleWriterTasksThreshold;
+    private final int extensionTasksThreshold;
+    private final int heapUsageThresholdPercent;
+    private final double releaseRatio;
+    private final int pausedClientsPercent;
+    private final int resumedClientsPerSample;
+    private final int recoveryConnectsPerSample;
+    private final @NotNull Set<OverloadProtectionHandler> handlers = ConcurrentHashMap.newKeySet();
+    private final @NotNull AtomicInteger connectPermits = new AtomicInteger();
+    private volatile @NotNull OverloadProtectionState state = OverloadProtectionState.NORMAL;
+    private volatile int pausedClientCount;
+    // filled by the sampling thread, the handlers of closed channels are removed by their event loops
+    private final @NotNull Queue<OverloadProtectionHandler> pausedHandlers = new ConcurrentLinkedQueue<>();
+    // only accessed by the sampling thread
+    private int connectBudget;
+    private int recoverySamples;
+    @Inject
+    public OverloadProtection(
+            final @NotNull SingleWriterService singleWriterService,
+            final @NotNull @PluginTaskQueue AtomicLong extensionTaskCount,
+            final @NotNull EventLog eventLog,
+            final @NotNull MetricRegistry metricRegistry,
+            final @NotNull ShutdownHooks shutdownHooks) {
+        this(singleWriterService,
+                extensionTaskCount,
+                eventLog,
+                metricRegistry,
+                shutdownHooks,
+                OverloadProtection::heapUsageAfterGcPercent);
+    }
+
+    @VisibleForTesting
+    OverloadProtection(
+            final @NotNull SingleWriterService singleWriterService,
+            final @NotNull AtomicLong extensionTaskCount,
+            final @NotNull EventLog eventLog,
+            final @NotNull MetricRegistry metricRegistry,
+            final @NotNull ShutdownHooks shutdownHooks,
+            final @NotNull IntSupplier heapUsagePercent) {
+        this.singleWriterService = singleWriterService;
+        this.extensionTaskCount = extensionTaskCount;
+        this.eventLog = eventLog;
+        this.shutdownHooks = shutdownHooks;
+        this.heapUsagePercent = heapUsagePercent;
+        enabled = InternalConfigurations.OVERLOAD_PROTECTION_ENABLED.get();
+        sampleIntervalMillis = InternalConfigurations.OVERLOAD_PROTECTION_SAMPLE_INTERVAL_MSEC.get();
+        singleWriterTasksThreshold = InternalConfigurations.OVERLOAD_PROTECTION_SINGLE_WRITER_TASKS_THRESHOLD.get();
+        extensionTasksThreshold = InternalConfigurations.OVERLOAD_PROTECTION_EXTENSION_TASKS_THRESHOLD.get();
+        heapUsageThresholdPercent = InternalConfigurations.OVERLOAD_PROTECTION_HEAP_USAGE_THRESHOLD_PERCENT.get();
+        releaseRatio = InternalConfigurations.OVERLOAD_PROTECTION_RELEASE_THRESHOLD_PERCENT.get() / 100d;
+        pausedClientsPercent = InternalConfigurations.OVERLOAD_PROTECTION_PAUSED_CLIENTS_PERCENT.get();
+        resumedClientsPerSample = InternalConfigurations.OVERLOAD_PROTECTION_RESUMED_CLIENTS_PER_SAMPLE.get();
+        recoveryConnectsPerSample = InternalConfigurations.OVERLOAD_PROTECTION_RECOVERY_CONNECTS_PER_SAMPLE.get();
+        stateChanges = metricRegistry.counter(HiveMQMetrics.OVERLOAD_PROTECTION_STATE_CHANGES.name());
+        rejectedConnects = metricRegistry.counter(HiveMQMetrics.OVERLOAD_PROTECTION_REJECTED_CONNECTS.name());
+        metricRegistry.register(HiveMQMetrics.OVERLOAD_PROTECTION_LEVEL.name(),
+                (Gauge<Integer>) () -> state.getLevel());
+        metricRegistry.register(HiveMQMetrics.OVERLOAD_PROTECTION_PAUSED_CLIENTS.name(),
+                (Gauge<Integer>) () -> pausedClientCount);
+    }
+
+    @PostConstruct
+    public void postConstruct() {
+        if (!enabled) {
+            return;
+        }
+        final ScheduledExecutorService executor =
+                Executors.newSingleThreadScheduledExecutor(ThreadFactoryUtil.create("overload-protection-%d"));
+        executor.scheduleWithFixedDelay(() -> {
+            try {
+                sample();
+            } catch (final Exception e) {
+                log.error("Exception in overload protection sample task ", e);
+            }
+        }, sampleIntervalMillis, sampleIntervalMillis, TimeUnit.MILLISECONDS);
+        shutdownHooks.add(new OverloadProtectionShutdownHook(executor));
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public @NotNull OverloadProtectionState getState() {
+        return state;
+    }
+
+    /**
+     * Decides if a CONNECT is admitted in the current state and counts the rejection otherwise.
+     *
+     * @return {@code true} if the CONNECT is admitted, else {@code false}
+     */
+    public boolean admitConnect() {
+        final OverloadProtectionState currentState = state;
+        if (currentState == OverloadProtectionState.NORMAL) {
+            return true;
+        }
+        if (currentState == OverloadProtectionState.RECOVERING &&
+                connectPermits.getAndUpdate(permits -> permits > 0 ? permits - 1 : 0) > 0) {
+            return true;
+        }
+        rejectedConnects.inc();
+        return false;
+    }
+
+    void register(final @NotNull OverloadProtectionHandler handler) {
+        handlers.add(handler);
+    }
+
+    void unregister(final @NotNull OverloadProtectionHandler handler) {
+        handlers.remove(handler);
+        pausedHandlers.remove(handler);
+    }
+
+    @VisibleForTesting
+    void sample() {
+        for (final OverloadProtectionHandler handler : handlers) {
+            handler.sampleReadBytes();
+        }
+        final double pressure = pressure();
+        switch (state) {
+            case NORMAL:
+                if (pressure >= 1) {
+                    changeState(OverloadProtectionState.OVERLOADED, pressure);
+                }
+                break;
+            case OVERLOADED:
+                if (pressure < releaseRatio) {
+                    connectBudget = recoveryConnectsPerSample;
+                    recoverySamples = 0;
+                    changeState(OverloadProtectionState.RECOVERING, pressure);
+                }
+                break;
+            case RECOVERING:
+                if (pressure >= 1) {
+                    changeState(OverloadProtectionState.OVERLOADED, pressure);
+                } else if (pausedHandlers.isEmpty() && recoverySamples >= RECOVERY_SAMPLES) {
+                    changeState(OverloadProtectionState.NORMAL, pressure);
+                }
+                break;
+        }
+        if (state == OverloadProtectionState.OVERLOADED) {
+            connectPermits.set(0);
+            pauseBusiestClients();
+        } else if (state == OverloadProtectionState.RECOVERING) {
+            resumeClients();
+            connectPermits.set(connectBudget);
+            connectBudget = connectBudget > Integer.MAX_VALUE / 2 ? Integer.MAX_VALUE : connectBudget * 2;
+            recoverySamples++;
+        }
+        pausedClientCount = pausedHandlers.size();
+    }
+
+    private double pressure() {
+        double pressure = 0;
+        if (singleWriterTasksThreshold > 0) {
+            pressure = Math.max(pressure,
+                    (double) singleWriterService.getPendingTaskCount() / singleWriterTasksThreshold);
+        }
+        if (extensionTasksThreshold > 0) {
+            pressure = Math.max(pressure, (double) extensionTaskCount.get() / extensionTasksThreshold);
+        }
+        if (heapUsageThresholdPercent > 0) {
+            pressure = Math.max(pressure, (double) heapUsagePercent.getAsInt() / heapUsageThresholdPercent);
+        }
+        return pressure;
+    }
+
+    private void changeState(final @NotNull OverloadProtectionState newState, final double pressure) {
+        final OverloadProtectionState previousState = state;
+        state = newState;
+        stateChanges.inc();
+        eventLog.overloadProtectionStateChanged(previousState, newState, pressure);
+        if (newState == OverloadProtectionState.OVERLOADED) {
+            log.warn("The broker is overloaded, reading from the busiest clients is paused and new connections " +
+                    "are rejected.");
+        } else if (newState == OverloadProtectionState.NORMAL) {
+            log.info("The broker recovered from overload.");
+        }
+    }
+
+    private void pauseBusiestClients() {
+        final int count = Math.max(1, handlers.size() * pausedClientsPercent / 100);
+        final Queue<OverloadProtectionHandler> busiest =
+                new PriorityQueue<>(count, Comparator.comparingLong(OverloadProtectionHandler::getRecentReadBytes));
+        for (final OverloadProtectionHandler handler : handlers) {
+            if (handler.getRecentReadBytes() == 0 || !handler.isPausable()) {
+                continue;
+            }
+            if (busiest.size() < count) {
+                busiest.add(handler);
+            } else if (handler.getRecentReadBytes() > busiest.element().getRecentReadBytes()) {
+                busiest.poll();
+                busiest.add(handler);
+            }
+        }
+        for (final OverloadProtectionHandler handler : busiest) {
+            handler.pause();
+            pausedHandlers.add(handler);
+            // the channel was closed in the meantime, its handler must not hold up the recovery
+            if (!handlers.contains(handler)) {
+                pausedHandlers.remove(handler);
+            }
+        }
+    }
+
+    private void resumeClients() {
+        for (int i = 0; i < resumedClientsPerSample; i++) {
+            final OverloadProtectionHandler handler = pausedHandlers.poll();
+            if (handler == null) {
+                return;
+            }
+            handler.resume();
+        }
+    }
+
+    private static int heapUsageAfterGcPercent() {
+        long used = 0;
+        long max = 0;
+        for (final MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() != MemoryType.HEAP) {
+                continue;
+            }
+            // the usage after the last collection does not contain garbage that is about to be collected
+            final MemoryUsage usage = pool.getCollectionUsage();
+            if (usage == null || usage.getMax() <= 0) {
+                continue;
+            }
+            used += usage.getUsed();
+            max += usage.getMax();
+        }
+        return max > 0 ? (int) (used * 100 / max) : 0;
+    }
+
+    private static class OverloadProtectionShutdownHook implements HiveMQShutdownHook {
+
+        private final @NotNull ScheduledExecutorService sampleExecutor;
+        OverloadProtectionShutdownHook(final @NotNull ScheduledExecutorService sampleExecutor) {
+            this.sampleExecutor = sampleExecutor;
+        }
+
+        @Override
+        public @NotNull String name() {
+            return "Overload Protection Shutdown";
+        }
+
+        @Override
+        public void run() {
+            sampleExecutor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,108 @@
+/*
+ * Copyright 2019-present HiveMQ GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hivemq.limitation;
+
+import com.hivemq.bootstrap.ClientConnectionContext;
+import com.hivemq.bootstrap.ClientState;
+import com.hivemq.bootstrap.netty.AutoReadGate;
+import com.hivemq.extension.sdk.api.annotations.NotNull;
+import com.hivemq.extension.sdk.api.annotations.Nullable;
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+
+/**
+ * Counts the inbound bytes of a channel for the {@link OverloadProtection}, which pauses reading from the channel if it
+ * is one of the busiest while the broker is overloaded.
+ */
+public class OverloadProtectionHandler extends ChannelInboundHandlerAdapter {
+
+    private final @NotNull OverloadProtection overloadProtection;
+    private volatile @Nullable Channel channel;
+    // only written by the event loop of the channel
+    private volatile long readBytes;
+    // only accessed by the sampling thread of the overload protection
+    private long sampledReadBytes;
+    private long recentReadBytes;
+    private boolean paused;
+    public OverloadProtectionHandler(final @NotNull OverloadProtection overloadProtection) {
+        this.overloadProtection = overloadProtection;
+    }
+
+    @Override
+    public void channelActive(final @NotNull ChannelHandlerContext ctx) throws Exception {
+        channel = ctx.channel();
+        overloadProtection.register(this);
+        super.channelActive(ctx);
+    }
+
+    @Override
+    public void channelInactive(final @NotNull ChannelHandlerContext ctx) throws Exception {
+        overloadProtection.unregister(this);
+        super.channelInactive(ctx);
+    }
+
+    @Override
+    public void handlerRemoved(final @NotNull ChannelHandlerContext ctx) throws Exception {
+        overloadProtection.unregister(this);
+        super.handlerRemoved(ctx);
+    }
+
+    @Override
+    public void channelRead(final @NotNull ChannelHandlerContext ctx, final @NotNull Object msg) throws Exception {
+        if (msg instanceof ByteBuf) {
+            // noinspection NonAtomicOperationOnVolatileField: only the event loop writes
+            readBytes += ((ByteBuf) msg).readableBytes();
+        }
+        super.channelRead(ctx, msg);
+    }
+
+    void sampleReadBytes() {
+        final long currentReadBytes = readBytes;
+        recentReadBytes = currentReadBytes - sampledReadBytes;
+        sampledReadBytes = currentReadBytes;
+    }
+
+    long getRecentReadBytes() {
+        return recentReadBytes;
+    }
+
+    boolean isPausable() {
+        final Channel channel = this.channel;
+        // only connected clients are paused, the busiest channels are the ones that send publishes
+        return !paused &&
+                channel != null &&
+                channel.isActive() &&
+                ClientConnectionContext.of(channel).getClientState() == ClientState.AUTHENTICATED;
+    }
+
+    void pause() {
+        final Channel channel = this.channel;
+        if (channel != null) {
+            paused = true;
+            AutoReadGate.of(channel).pause(AutoReadGate.Reason.OVERLOAD_PROTECTION);
+        }
+    }
+
+    void resume() {
+        final Channel channel = this.channel;
+        if (channel != null && paused) {
+            paused = false;
+            AutoReadGate.of(channel).resume(AutoReadGate.Reason.OVERLOAD_PROTECTION);
+        }
+    }
+}
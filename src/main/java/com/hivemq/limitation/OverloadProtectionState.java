@@ -0,0 +1,44 @@
+/*
+ * Copyright 2019-present HiveMQ GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hivemq.limitation;
+
+/**
+ * The states of the {@link OverloadProtection}.
+ */
+public enum OverloadProtectionState {
+
+    /**
+     * All clients are read from and all CONNECTs are admitted.
+     */
+    NORMAL(0),
+    /**
+     * The backlogs fell below the release threshold. Paused clients are resumed step by step and the amount of
+     * admitted CONNECTs grows with every sample.
+     */
+    RECOVERING(1),
+    /**
+     * A backlog exceeds its threshold. The busiest clients are paused and no CONNECTs are admitted.
+     */
+    OVERLOADED(2);
+    private final int level;
+    OverloadProtectionState(final int level) {
+        this.level = level;
+    }
+
+    public int getLevel() {
+        return level;
+    }
+}
@@ -60,4 +60,30 @@ public interface TopicAliasLimiter {
      * @param topics the topics to remove memory usage for
      */
     void finishUsage(@NotNull final String... topics);
+
+    /**
+     * @return true if the memory limit for topic aliases of outgoing PUBLISHes is not reached, else false
+     */
+    boolean outboundAliasesAvailable();
+
+    /**
+     * Use this method to add memory usage for a topic alias of outgoing PUBLISHes
+     *
+     * @param topic the topic to add memory usage for
+     */
+    void addOutboundUsage(@NotNull String topic);
+
+    /**
+     * Use this method to remove memory usage for a topic alias of outgoing PUBLISHes
+     *
+     * @param topic the topic to remove memory usage for
+     */
+    void removeOutboundUsage(@NotNull String topic);
+
+    /**
+     * Use this method to record the bytes outgoing PUBLISHes saved by using a topic alias
+     *
+     * @param bytes the bytes saved
+     */
+    void outboundBytesSaved(int bytes);
 }
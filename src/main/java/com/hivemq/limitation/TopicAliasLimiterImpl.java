@@ -15,9 +15,14 @@
  */
 package com.hivemq.limitation;
 
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
 import com.hivemq.configuration.service.InternalConfigurations;
 import com.hivemq.extension.sdk.api.annotations.NotNull;
+import com.hivemq.metrics.HiveMQMetrics;
 
+import javax.inject.Inject;
 import javax.inject.Singleton;
 import java.util.concurrent.atomic.AtomicLong;
 
@@ -32,15 +37,33 @@ public class TopicAliasLimiterImpl implements TopicAliasLimiter {
     private final @NotNull AtomicLong topicAliasesTotal;
     private final int memorySoftLimit;
     private final int memoryHardLimit;
-    public TopicAliasLimiterImpl() {
+    private final @NotNull AtomicLong outboundMemoryUsage;
+    private final int outboundMemoryLimit;
+    private final @NotNull Counter outboundBytesSaved;
+    private final @NotNull MemoryGovernor memoryGovernor;
+    @Inject
+    public TopicAliasLimiterImpl(
+            final @NotNull MetricRegistry metricRegistry,
+            final @NotNull MemoryGovernor memoryGovernor) {
+        this.memoryGovernor = memoryGovernor;
         this.memoryUsage = new AtomicLong(0);
         this.topicAliasesTotal = new AtomicLong(0);
         this.memorySoftLimit = InternalConfigurations.TOPIC_ALIAS_GLOBAL_MEMORY_SOFT_LIMIT_BYTES.get();
         this.memoryHardLimit = InternalConfigurations.TOPIC_ALIAS_GLOBAL_MEMORY_HARD_LIMIT_BYTES.get();
+        this.outboundMemoryUsage = new AtomicLong(0);
+        this.outboundMemoryLimit = InternalConfigurations.TOPIC_ALIAS_OUTBOUND_GLOBAL_MEMORY_LIMIT_BYTES.get();
+        this.outboundBytesSaved = metricRegistry.counter(HiveMQMetrics.TOPIC_ALIAS_OUTBOUND_BYTES_SAVED.name());
+        metricRegistry.register(HiveMQMetrics.TOPIC_ALIAS_OUTBOUND_MEMORY_USAGE.name(),
+                (Gauge<Long>) outboundMemoryUsage::get);
+        memoryGovernor.register(MemoryConsumer.TOPIC_ALIASES, () -> memoryUsage.get() + outboundMemoryUsage.get());
     }
 
     @Override
     public boolean aliasesAvailable() {
+        if (memoryGovernor.isShedding(MemoryConsumer.TOPIC_ALIASES)) {
+            memoryGovernor.shed(MemoryConsumer.TOPIC_ALIASES);
+            return false;
+        }
         return memoryUsage.get() < memorySoftLimit;
     }
 
@@ -78,6 +101,29 @@ public class TopicAliasLimiterImpl implements TopicAliasLimiter {
         this.removeUsage(topics);
     }
 
+    @Override
+    public boolean outboundAliasesAvailable() {
+        if (memoryGovernor.isShedding(MemoryConsumer.TOPIC_ALIASES)) {
+            return false;
+        }
+        return outboundMemoryUsage.get() < outboundMemoryLimit;
+    }
+
+    @Override
+    public void addOutboundUsage(final @NotNull String topic) {
+        outboundMemoryUsage.addAndGet(getEstimatedSize(topic));
+    }
+
+    @Override
+    public void removeOutboundUsage(final @NotNull String topic) {
+        outboundMemoryUsage.addAndGet(-1 * getEstimatedSize(topic));
+    }
+
+    @Override
+    public void outboundBytesSaved(final int bytes) {
+        outboundBytesSaved.inc(bytes);
+    }
+
     /**
      * 38 = estimated String overhead 2 = per character of a topic
      *
@@ -20,6 +20,7 @@ import com.hivemq.bootstrap.ioc.lazysingleton.LazySingleton;
 import com.hivemq.configuration.service.entity.Listener;
 import com.hivemq.extension.sdk.api.annotations.NotNull;
 import com.hivemq.extension.sdk.api.annotations.Nullable;
+import com.hivemq.limitation.OverloadProtectionState;
 import com.hivemq.mqtt.message.reason.Mqtt5AuthReasonCode;
 import io.netty.channel.Channel;
 import org.slf4j.Logger;
@@ -43,6 +44,7 @@ public class EventLog {
     public static final String EVENT_MESSAGE_DROPPED = "event.message-dropped";
     public static final String EVENT_CLIENT_SESSION_EXPIRED = "event.client-session-expired";
     public static final String EVENT_AUTHENTICATION = "event.authentication";
+    public static final String EVENT_OVERLOAD_PROTECTION = "event.overload-protection";
     /**
      * Events are logged to DEBUG, in case customers are using a custom logback.xml
      */
@@ -51,6 +53,7 @@ public class EventLog {
     private static final Logger logMessageDropped = LoggerFactory.getLogger(EVENT_MESSAGE_DROPPED);
     private static final Logger logClientSessionExpired = LoggerFactory.getLogger(EVENT_CLIENT_SESSION_EXPIRED);
     private static final Logger logAuthentication = LoggerFactory.getLogger(EVENT_AUTHENTICATION);
+    private static final Logger logOverloadProtection = LoggerFactory.getLogger(EVENT_OVERLOAD_PROTECTION);
     private static final DateTimeFormatter dateTimeFormatter = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
     public static final ZoneId ZONE = ZoneId.of("UTC");
     /**
@@ -95,6 +98,21 @@ public class EventLog {
                 reason);
     }
 
+    /**
+     * Log that a retained message was not stored. The existing retained message of the topic is kept.
+     *
+     * @param topic  of the retained message
+     * @param qos    of the retained message
+     * @param reason why the message was not stored
+     */
+    public void retainedMessageDropped(
+            @Nullable final String topic,
+            @NotNull final int qos,
+            @NotNull final String reason) {
+        logMessageDropped.debug("Retained message was not stored, the previous retained message is kept. Topic: {}, " +
+                "qos: {}, reason: {}.", valueOrUnknown(topic), qos, reason);
+    }
+
     /**
      * Log that a outgoing MQTT message for a client was dropped.
      *
@@ -237,6 +255,23 @@ public class EventLog {
                 disconnectedSinceDateTime.format(dateTimeFormatter));
     }
 
+    /**
+     * Log that the overload protection changed its state.
+     *
+     * @param previousState the state before the change
+     * @param state         the state after the change
+     * @param pressure      the highest backlog relative to its threshold that caused the change
+     */
+    public void overloadProtectionStateChanged(
+            final @NotNull OverloadProtectionState previousState,
+            final @NotNull OverloadProtectionState state,
+            final double pressure) {
+        logOverloadProtection.debug("Overload protection changed from {} to {} at {}% of the backlog thresholds.",
+                previousState,
+                state,
+                Math.round(pressure * 100));
+    }
+
     @NotNull private String valueOrUnknown(@Nullable final Object object) {
         return object != null ? object.toString() : "UNKNOWN";
     }
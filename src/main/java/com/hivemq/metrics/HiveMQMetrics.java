@@ -17,6 +17,8 @@ package com.hivemq.metrics;
 
 import com.codahale.metrics.Counter;
 import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.Timer;
 
 /**
  * This class holds a constant {@link HiveMQMetric} for every metric which is provided by HiveMQ
@@ -122,6 +124,28 @@ public class HiveMQMetrics {
      */
     public static final HiveMQMetric<Gauge<Number>> RETAINED_MESSAGES_MEMORY_PERSISTENCE_TOTAL_SIZE =
             HiveMQMetric.gaugeValue("com.hivemq.persistence.retained-messages.in-memory.total-size");
+    /**
+     * represents a {@link Counter}, which counts the retained message reads served by the read cache of the file
+     * persistence
+     */
+    public static final HiveMQMetric<Counter> RETAINED_MESSAGES_READ_CACHE_HITS =
+            HiveMQMetric.valueOf("com.hivemq.persistence.retained-messages.read-cache.hits", Counter.class);
+    /**
+     * represents a {@link Counter}, which counts the retained message reads the read cache of the file persistence
+     * could not serve
+     */
+    public static final HiveMQMetric<Counter> RETAINED_MESSAGES_READ_CACHE_MISSES =
+            HiveMQMetric.valueOf("com.hivemq.persistence.retained-messages.read-cache.misses", Counter.class);
+    /**
+     * represents a {@link Gauge}, which holds the share of retained message reads served by the read cache
+     */
+    public static final HiveMQMetric<Gauge<Number>> RETAINED_MESSAGES_READ_CACHE_HIT_RATIO =
+            HiveMQMetric.gaugeValue("com.hivemq.persistence.retained-messages.read-cache.hit-ratio");
+    /**
+     * represents a {@link Gauge}, which measures the approximate memory usage of the retained message read cache
+     */
+    public static final HiveMQMetric<Gauge<Number>> RETAINED_MESSAGES_READ_CACHE_TOTAL_SIZE =
+            HiveMQMetric.gaugeValue("com.hivemq.persistence.retained-messages.read-cache.total-size");
     /**
      * represents a {@link Gauge}, which measures the approximate memory usage of the subscription persistence if the
      * memory persistence is used.
@@ -140,6 +164,179 @@ public class HiveMQMetrics {
      */
     public static final HiveMQMetric<Gauge<Number>> QUEUED_MESSAGES_MEMORY_PERSISTENCE_TOTAL_SIZE =
             HiveMQMetric.gaugeValue("com.hivemq.persistence.queued-messages.in-memory.total-size");
+    /**
+     * represents a {@link Counter}, which measures the bytes of queued messages enqueued to the file persistence.
+     */
+    public static final HiveMQMetric<Counter> QUEUED_MESSAGES_FILE_PERSISTENCE_ENQUEUED_BYTES =
+            HiveMQMetric.valueOf("com.hivemq.persistence.queued-messages.file.bytes-enqueued", Counter.class);
+    /**
+     * represents a {@link Counter}, which measures the bytes of message values written by the queued message file
+     * persistence, including enqueued messages and PUBRELs.
+     */
+    public static final HiveMQMetric<Counter> QUEUED_MESSAGES_FILE_PERSISTENCE_VALUE_BYTES_WRITTEN =
+            HiveMQMetric.valueOf("com.hivemq.persistence.queued-messages.file.value-bytes-written", Counter.class);
+    /**
+     * represents a {@link Counter}, which measures the bytes of in-flight markers written by the queued message file
+     * persistence.
+     */
+    public static final HiveMQMetric<Counter> QUEUED_MESSAGES_FILE_PERSISTENCE_IN_FLIGHT_BYTES_WRITTEN =
+            HiveMQMetric.valueOf("com.hivemq.persistence.queued-messages.file.in-flight-bytes-written", Counter.class);
+    /**
+     * represents a {@link Counter}, which counts the PUBLISHes written by the queued message file persistence in the
+     * compact value format
+     */
+    public static final HiveMQMetric<Counter> QUEUED_MESSAGES_FILE_PERSISTENCE_COMPACT_VALUES =
+            HiveMQMetric.valueOf("com.hivemq.persistence.queued-messages.file.compact-values", Counter.class);
+    /**
+     * represents a {@link Counter}, which measures the bytes the PUBLISHes written in the compact value format would
+     * have taken in the previous value format
+     */
+    public static final HiveMQMetric<Counter> QUEUED_MESSAGES_FILE_PERSISTENCE_COMPACT_VALUES_LEGACY_BYTES =
+            HiveMQMetric.valueOf("com.hivemq.persistence.queued-messages.file.compact-values.legacy-bytes",
+                    Counter.class);
+    /**
+     * represents a {@link Counter}, which measures the bytes of the PUBLISHes written in the compact value format
+     */
+    public static final HiveMQMetric<Counter> QUEUED_MESSAGES_FILE_PERSISTENCE_COMPACT_VALUES_BYTES =
+            HiveMQMetric.valueOf("com.hivemq.persistence.queued-messages.file.compact-values.bytes", Counter.class);
+    /**
+     * represents a {@link Counter}, which counts the expired queued messages removed by the background compaction
+     */
+    public static final HiveMQMetric<Counter> QUEUED_MESSAGES_COMPACTION_REMOVED_MESSAGES =
+            HiveMQMetric.valueOf("com.hivemq.persistence.queued-messages.compaction.removed-messages.total",
+                    Counter.class);
+    /**
+     * represents a {@link Counter}, which measures the approximate bytes of the expired queued messages removed by the
+     * background compaction
+     */
+    public static final HiveMQMetric<Counter> QUEUED_MESSAGES_COMPACTION_RECLAIMED_BYTES =
+            HiveMQMetric.valueOf("com.hivemq.persistence.queued-messages.compaction.reclaimed-bytes.total",
+                    Counter.class);
+    /**
+     * represents a {@link Counter}, which measures the bytes outgoing PUBLISHes saved by using a topic alias instead of
+     * the topic.
+     */
+    public static final HiveMQMetric<Counter> TOPIC_ALIAS_OUTBOUND_BYTES_SAVED =
+            HiveMQMetric.valueOf("com.hivemq.mqtt.topic-alias.outbound.bytes-saved.total", Counter.class);
+    /**
+     * represents a {@link Gauge}, which measures the approximate memory usage of the topics of all topic aliases for
+     * outgoing PUBLISHes.
+     */
+    public static final HiveMQMetric<Gauge<Number>> TOPIC_ALIAS_OUTBOUND_MEMORY_USAGE =
+            HiveMQMetric.gaugeValue("com.hivemq.mqtt.topic-alias.outbound.memory-usage");
+    /**
+     * represents a {@link Meter}, which measures the throughput of clients passed to the extension callbacks of
+     * streaming subscription store iterations.
+     */
+    public static final HiveMQMetric<Meter> SUBSCRIPTION_STORE_STREAMING_ITERATION_CLIENTS =
+            HiveMQMetric.valueOf("com.hivemq.extension.subscription-store.streaming-iteration.clients", Meter.class);
+    /**
+     * represents a {@link Gauge}, which holds the current amount of tasks running on the managed extension executor
+     */
+    public static final HiveMQMetric<Gauge<Number>> EXTENSION_EXECUTOR_ACTIVE_TASKS =
+            HiveMQMetric.gaugeValue("com.hivemq.extension.managed-executor.active-tasks");
+    /**
+     * represents a {@link Gauge}, which holds the current amount of tasks in the queue of the managed extension
+     * executor, including delayed and periodic tasks. Submitted tasks are not queued if the executor runs on virtual
+     * threads.
+     */
+    public static final HiveMQMetric<Gauge<Number>> EXTENSION_EXECUTOR_QUEUED_TASKS =
+            HiveMQMetric.gaugeValue("com.hivemq.extension.managed-executor.queued-tasks");
+    /**
+     * represents a {@link Counter}, which counts how often a virtual thread blocked while pinned to its carrier
+     * thread, for example inside a synchronized block
+     */
+    public static final HiveMQMetric<Counter> VIRTUAL_THREADS_PINNED =
+            HiveMQMetric.valueOf("com.hivemq.extension.virtual-threads.pinned.total", Counter.class);
+    /**
+     * represents a {@link Gauge}, which holds the current overload protection state: 0 is normal, 1 is recovering and 2
+     * is overloaded.
+     */
+    public static final HiveMQMetric<Gauge<Number>> OVERLOAD_PROTECTION_LEVEL =
+            HiveMQMetric.gaugeValue("com.hivemq.overload-protection.level");
+    /**
+     * represents a {@link Counter}, which counts the state changes of the overload protection.
+     */
+    public static final HiveMQMetric<Counter> OVERLOAD_PROTECTION_STATE_CHANGES =
+            HiveMQMetric.valueOf("com.hivemq.overload-protection.state-changes.total", Counter.class);
+    /**
+     * represents a {@link Gauge}, which holds the current amount of clients the overload protection stopped reading
+     * from.
+     */
+    public static final HiveMQMetric<Gauge<Number>> OVERLOAD_PROTECTION_PAUSED_CLIENTS =
+            HiveMQMetric.gaugeValue("com.hivemq.overload-protection.paused-clients.current");
+    /**
+     * represents a {@link Counter}, which counts the CONNECTs rejected by the overload protection.
+     */
+    public static final HiveMQMetric<Counter> OVERLOAD_PROTECTION_REJECTED_CONNECTS =
+            HiveMQMetric.valueOf("com.hivemq.overload-protection.rejected-connects.total", Counter.class);
+    /**
+     * represents a {@link Gauge}, which holds the estimated heap usage of all subsystems governed by the memory
+     * governor. The breakdown per subsystem is available below com.hivemq.memory-governor.
+     */
+    public static final HiveMQMetric<Gauge<Number>> MEMORY_GOVERNOR_TOTAL_USAGE =
+            HiveMQMetric.gaugeValue("com.hivemq.memory-governor.total.usage");
+    /**
+     * represents a {@link Gauge}, which holds the heap budget shared by all subsystems governed by the memory governor
+     */
+    public static final HiveMQMetric<Gauge<Number>> MEMORY_GOVERNOR_TOTAL_BUDGET =
+            HiveMQMetric.gaugeValue("com.hivemq.memory-governor.total.budget");
+    /**
+     * represents a {@link Timer}, which measures the time from a CONNECT taking over the session of a connected client
+     * until the session is resumed or created for the new connection
+     */
+    public static final HiveMQMetric<Timer> SESSION_TAKEOVER_TIME =
+            HiveMQMetric.valueOf("com.hivemq.sessions.takeover.time", Timer.class);
+    /**
+     * represents a {@link Counter}, which counts the session takeovers where the session was handed over from the
+     * previous connection without persisting its disconnect
+     */
+    public static final HiveMQMetric<Counter> SESSION_TAKEOVER_FAST_PATH_COUNT =
+            HiveMQMetric.valueOf("com.hivemq.sessions.takeover.fast-path.total", Counter.class);
+    /**
+     * represents a {@link Gauge}, which holds the current amount of clients that are throttled by their inbound rate
+     * limits.
+     */
+    public static final HiveMQMetric<Gauge<Number>> THROTTLED_CLIENTS_CURRENT =
+            HiveMQMetric.gaugeValue("com.hivemq.throttling.clients.throttled.current");
+    /**
+     * represents a {@link Counter}, which counts how often clients were throttled by their inbound rate limits.
+     */
+    public static final HiveMQMetric<Counter> THROTTLED_CLIENTS_TOTAL =
+            HiveMQMetric.valueOf("com.hivemq.throttling.clients.throttled.total", Counter.class);
+    /**
+     * represents a {@link Gauge}, which holds the connected clients that were throttled most often by their inbound
+     * rate limits as list of 'client id=count'.
+     */
+    @SuppressWarnings("rawtypes")
+    public static final HiveMQMetric<Gauge> THROTTLED_CLIENTS_TOP =
+            HiveMQMetric.valueOf("com.hivemq.throttling.clients.throttled.top", Gauge.class);
+    /**
+     * represents a {@link Counter}, which counts the flushes of all MQTT client channels.
+     */
+    public static final HiveMQMetric<Counter> MQTT_CONNECTION_FLUSHES =
+            HiveMQMetric.valueOf("com.hivemq.mqtt.connection.flushes.total", Counter.class);
+    /**
+     * represents a {@link Counter}, which counts the messages that were written to all MQTT client channels and
+     * flushed.
+     */
+    public static final HiveMQMetric<Counter> MQTT_CONNECTION_FLUSHED_MESSAGES =
+            HiveMQMetric.valueOf("com.hivemq.mqtt.connection.flushes.messages.total", Counter.class);
+    /**
+     * represents a {@link Counter}, which counts the bytes that were written to all MQTT client channels and flushed.
+     */
+    public static final HiveMQMetric<Counter> MQTT_CONNECTION_FLUSHED_BYTES =
+            HiveMQMetric.valueOf("com.hivemq.mqtt.connection.flushes.bytes.total", Counter.class);
+    /**
+     * represents a {@link Gauge}, which holds the flushes per written message. Every flush is at least one syscall.
+     */
+    public static final HiveMQMetric<Gauge<Number>> MQTT_CONNECTION_FLUSHES_PER_MESSAGE =
+            HiveMQMetric.gaugeValue("com.hivemq.mqtt.connection.flushes.per-message");
+    /**
+     * represents a {@link Gauge}, which holds the average bytes per flush.
+     */
+    public static final HiveMQMetric<Gauge<Number>> MQTT_CONNECTION_BYTES_PER_FLUSH =
+            HiveMQMetric.gaugeValue("com.hivemq.mqtt.connection.flushes.bytes-per-flush");
     /**
      * represents a {@link Counter} for the number of MQTT client channels which are currently not writable.
      */
@@ -21,6 +21,8 @@ import com.hivemq.extension.sdk.api.annotations.NotNull;
 import com.hivemq.migration.meta.MetaFileService;
 import com.hivemq.migration.meta.MetaInformation;
 import com.hivemq.migration.meta.PersistenceType;
+import com.hivemq.persistence.clientqueue.ClientQueuePersistenceSerializer;
+import com.hivemq.persistence.clientqueue.ClientQueueSegmentedLocalPersistence;
 import com.hivemq.persistence.clientqueue.ClientQueueXodusLocalPersistence;
 import com.hivemq.persistence.local.xodus.RetainedMessageRocksDBLocalPersistence;
 import com.hivemq.persistence.local.xodus.RetainedMessageXodusLocalPersistence;
@@ -38,10 +40,12 @@ class MigrationFinisher {
     private final @NotNull SystemInformation systemInformation;
     private final @NotNull PersistenceType retainedType;
     private final @NotNull PersistenceType payloadType;
+    private final @NotNull PersistenceType queueType;
     public MigrationFinisher(final @NotNull SystemInformation systemInformation) {
         this.systemInformation = systemInformation;
         this.retainedType = InternalConfigurations.RETAINED_MESSAGE_PERSISTENCE_TYPE.get();
         this.payloadType = InternalConfigurations.PAYLOAD_PERSISTENCE_TYPE.get();
+        this.queueType = InternalConfigurations.QUEUED_MESSAGES_PERSISTENCE_TYPE.get();
     }
 
     public void finishMigration() {
@@ -52,7 +56,9 @@ class MigrationFinisher {
         final MetaInformation metaFile = MetaFileService.readMetaFile(systemInformation);
         metaFile.setHivemqVersion(systemInformation.getHiveMQVersion());
         metaFile.setClientSessionPersistenceVersion(ClientSessionXodusLocalPersistence.PERSISTENCE_VERSION);
-        metaFile.setQueuedMessagesPersistenceVersion(ClientQueueXodusLocalPersistence.PERSISTENCE_VERSION);
+        metaFile.setQueuedMessagesPersistenceVersion(queueType == PersistenceType.FILE_SEGMENTED ?
+                ClientQueueSegmentedLocalPersistence.PERSISTENCE_VERSION :
+                ClientQueueXodusLocalPersistence.PERSISTENCE_VERSION);
         metaFile.setSubscriptionPersistenceVersion(ClientSessionSubscriptionXodusLocalPersistence.PERSISTENCE_VERSION);
         metaFile.setRetainedMessagesPersistenceVersion(retainedType == PersistenceType.FILE_NATIVE ?
                 RetainedMessageRocksDBLocalPersistence.PERSISTENCE_VERSION :
@@ -62,6 +68,11 @@ class MigrationFinisher {
                         PublishPayloadXodusLocalPersistence.PERSISTENCE_VERSION);
         metaFile.setRetainedMessagesPersistenceType(retainedType);
         metaFile.setPublishPayloadPersistenceType(payloadType);
+        metaFile.setQueuedMessagesPersistenceType(queueType);
+        metaFile.setQueuedMessagesValueFormatVersion(
+                InternalConfigurations.PERSISTENCE_COMPACT_VALUE_FORMAT_ENABLED.get() ?
+                        ClientQueuePersistenceSerializer.COMPACT_FORMAT_VERSION :
+                        0);
         MetaFileService.writeMetaFile(systemInformation, metaFile);
     }
 }
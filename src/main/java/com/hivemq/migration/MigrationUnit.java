@@ -26,8 +26,10 @@ public enum MigrationUnit {
     // As the MigrationUnit enum is used in a TreeSet the order of declaration is the order of persistence migration
     FILE_PERSISTENCE_PUBLISH_PAYLOAD("publish payload file persistence"),
     FILE_PERSISTENCE_RETAINED_MESSAGES("retained message file persistence"),
+    FILE_PERSISTENCE_CLIENT_QUEUE("client queue file persistence"),
     PAYLOAD_ID_RETAINED_MESSAGES("retained message payload id"),
-    PAYLOAD_ID_CLIENT_QUEUE("client queue payload id");
+    PAYLOAD_ID_CLIENT_QUEUE("client queue payload id"),
+    COMPACT_VALUE_FORMAT_CLIENT_QUEUE("client queue compact value format");
     private final @NotNull String description;
     MigrationUnit(final @NotNull String description) {
         this.description = description;
@@ -24,6 +24,8 @@ import com.hivemq.migration.meta.MetaFileService;
 import com.hivemq.migration.meta.MetaInformation;
 import com.hivemq.migration.meta.PersistenceType;
 import com.hivemq.migration.persistence.PersistenceMigrator;
+import com.hivemq.persistence.clientqueue.ClientQueuePersistenceSerializer;
+import com.hivemq.persistence.clientqueue.ClientQueueSegmentedLocalPersistence;
 import com.hivemq.persistence.clientqueue.ClientQueueXodusLocalPersistence;
 import com.hivemq.persistence.local.xodus.RetainedMessageRocksDBLocalPersistence;
 import com.hivemq.persistence.local.xodus.RetainedMessageXodusLocalPersistence;
@@ -71,23 +73,31 @@ public class Migrations {
         }
         final PersistenceType previousRetainedType;
         final PersistenceType previousPayloadType;
+        final PersistenceType previousQueueType;
         if (!metaInformation.isMetaFilePresent()) {
             log.trace("No meta file present, assuming HiveMQ version 2019.1 => Migration needed.");
             MIGRATION_LOGGER.info("No meta file present, assuming HiveMQ version 2019.1 => Migration needed.");
             previousPayloadType = PersistenceType.FILE;
             previousRetainedType = PersistenceType.FILE;
+            previousQueueType = PersistenceType.FILE;
             final MetaInformation newMetaInformation = new MetaInformation();
             newMetaInformation.setPublishPayloadPersistenceType(previousPayloadType);
             newMetaInformation.setRetainedMessagesPersistenceType(previousRetainedType);
+            newMetaInformation.setQueuedMessagesPersistenceType(previousQueueType);
             MetaFileService.writeMetaFile(systemInformation, newMetaInformation);
         } else {
             Preconditions.checkNotNull(metaInformation.getRetainedMessagesPersistenceType());
             Preconditions.checkNotNull(metaInformation.getPublishPayloadPersistenceType());
             previousRetainedType = metaInformation.getRetainedMessagesPersistenceType();
             previousPayloadType = metaInformation.getPublishPayloadPersistenceType();
+            // meta files written before the queued messages storage was selectable have no queue type
+            previousQueueType = metaInformation.getQueuedMessagesPersistenceType() != null ?
+                    metaInformation.getQueuedMessagesPersistenceType() :
+                    PersistenceType.FILE;
         }
         final PersistenceType currentRetainedType = InternalConfigurations.RETAINED_MESSAGE_PERSISTENCE_TYPE.get();
         final PersistenceType currentPayloadType = InternalConfigurations.PAYLOAD_PERSISTENCE_TYPE.get();
+        final PersistenceType currentQueueType = InternalConfigurations.QUEUED_MESSAGES_PERSISTENCE_TYPE.get();
         final Map<MigrationUnit, PersistenceType> neededMigrations = new EnumMap<>(MigrationUnit.class);
         if (!previousPayloadType.equals(currentPayloadType) &&
                 isPreviousPersistenceExistent(systemInformation, PublishPayloadLocalPersistence.PERSISTENCE_NAME)) {
@@ -97,6 +107,10 @@ public class Migrations {
                 isPreviousPersistenceExistent(systemInformation, RetainedMessageLocalPersistence.PERSISTENCE_NAME)) {
             neededMigrations.put(MigrationUnit.FILE_PERSISTENCE_RETAINED_MESSAGES, currentRetainedType);
         }
+        if (!previousQueueType.equals(currentQueueType) &&
+                isPreviousPersistenceExistent(systemInformation, ClientQueueXodusLocalPersistence.PERSISTENCE_NAME)) {
+            neededMigrations.put(MigrationUnit.FILE_PERSISTENCE_CLIENT_QUEUE, currentQueueType);
+        }
         if (neededMigrations.isEmpty()) {
             MIGRATION_LOGGER.info("Nothing to migrate found.");
         } else {
@@ -130,6 +144,9 @@ public class Migrations {
         if (queuedNeeded(metaInformation, systemInformation)) {
             neededMigrations.add(MigrationUnit.PAYLOAD_ID_CLIENT_QUEUE);
         }
+        if (compactValueFormatNeeded(metaInformation, systemInformation)) {
+            neededMigrations.add(MigrationUnit.COMPACT_VALUE_FORMAT_CLIENT_QUEUE);
+        }
         if (neededMigrations.isEmpty()) {
             MIGRATION_LOGGER.info("Nothing to migrate found.");
         } else {
@@ -167,8 +184,25 @@ public class Migrations {
         } else {
             previousQueuedVersion = metaInformation.getQueuedMessagesPersistenceVersion();
         }
-        final String currentQueuedVersion = ClientQueueXodusLocalPersistence.PERSISTENCE_VERSION;
-        return !previousQueuedVersion.equals(currentQueuedVersion) &&
+        // switching between the xodus and the segmented storage is a type migration
+        return !previousQueuedVersion.equals(ClientQueueXodusLocalPersistence.PERSISTENCE_VERSION) &&
+                !previousQueuedVersion.equals(ClientQueueSegmentedLocalPersistence.PERSISTENCE_VERSION) &&
+                isPreviousPersistenceExistent(systemInformation, ClientQueueXodusLocalPersistence.PERSISTENCE_NAME);
+    }
+
+    private static boolean compactValueFormatNeeded(
+            final @NotNull MetaInformation metaInformation,
+            final @NotNull SystemInformation systemInformation) {
+        if (!InternalConfigurations.PERSISTENCE_COMPACT_VALUE_FORMAT_ENABLED.get() ||
+                InternalConfigurations.QUEUED_MESSAGES_PERSISTENCE_TYPE.get() != PersistenceType.FILE) {
+            return false;
+        }
+        // the other queue migrations write the queued messages in the current format anyway
+        final Integer previousFormatVersion = metaInformation.getQueuedMessagesValueFormatVersion();
+        return (previousFormatVersion == null ||
+                previousFormatVersion != ClientQueuePersistenceSerializer.COMPACT_FORMAT_VERSION) &&
+                ClientQueueXodusLocalPersistence.PERSISTENCE_VERSION.equals(
+                        metaInformation.getQueuedMessagesPersistenceVersion()) &&
                 isPreviousPersistenceExistent(systemInformation, ClientQueueXodusLocalPersistence.PERSISTENCE_NAME);
     }
 
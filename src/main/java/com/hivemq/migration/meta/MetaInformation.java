@@ -31,6 +31,8 @@ public class MetaInformation {
     private @Nullable String publishPayloadPersistenceVersion = null;
     private @Nullable PersistenceType retainedMessagesPersistenceType = null;
     private @Nullable PersistenceType publishPayloadPersistenceType = null;
+    private @Nullable PersistenceType queuedMessagesPersistenceType = null;
+    private @Nullable Integer queuedMessagesValueFormatVersion = null;
     private boolean dataFolderPresent = false;
     private boolean persistenceFolderPresent = false;
     private boolean metaFilePresent = false;
@@ -122,6 +124,22 @@ public class MetaInformation {
         this.publishPayloadPersistenceType = publishPayloadPersistenceType;
     }
 
+    @Nullable public PersistenceType getQueuedMessagesPersistenceType() {
+        return queuedMessagesPersistenceType;
+    }
+
+    public void setQueuedMessagesPersistenceType(final @Nullable PersistenceType queuedMessagesPersistenceType) {
+        this.queuedMessagesPersistenceType = queuedMessagesPersistenceType;
+    }
+
+    @Nullable public Integer getQueuedMessagesValueFormatVersion() {
+        return queuedMessagesValueFormatVersion;
+    }
+
+    public void setQueuedMessagesValueFormatVersion(final @Nullable Integer queuedMessagesValueFormatVersion) {
+        this.queuedMessagesValueFormatVersion = queuedMessagesValueFormatVersion;
+    }
+
     @Override
     public String toString() {
         return "MetaInformation{" + "hivemqVersion='" + hivemqVersion + '\'' + ", clientSessionPersistenceVersion='" +
@@ -131,6 +149,8 @@ public class MetaInformation {
                 retainedMessagesPersistenceVersion + '\'' + ", publishPayloadPersistenceVersion='" +
                 publishPayloadPersistenceVersion + '\'' + ", retainedMessagesPersistenceType='" +
                 retainedMessagesPersistenceType + '\'' + ", publishPayloadPersistenceType='" +
-                publishPayloadPersistenceType + '\'' + '}';
+                publishPayloadPersistenceType + '\'' + ", queuedMessagesPersistenceType='" +
+                queuedMessagesPersistenceType + '\'' + ", queuedMessagesValueFormatVersion=" +
+                queuedMessagesValueFormatVersion + '}';
     }
 }
@@ -53,11 +53,18 @@ public class MetaInformationSerializer {
         final byte publishPayloadPersistenceType = metaInformation.getPublishPayloadPersistenceType() != null ?
                 (byte) metaInformation.getPublishPayloadPersistenceType().ordinal() :
                 -1;
+        final byte queuedMessagesPersistenceType = metaInformation.getQueuedMessagesPersistenceType() != null ?
+                (byte) metaInformation.getQueuedMessagesPersistenceType().ordinal() :
+                -1;
+        final byte queuedMessagesValueFormatVersion = metaInformation.getQueuedMessagesValueFormatVersion() != null ?
+                metaInformation.getQueuedMessagesValueFormatVersion().byteValue() :
+                -1;
         final int bufferSize = 6 * 4 +
                 // 6 * int(4 byte) for byte[] length.
                 hivemqVersion.length + publishPayloadPersistenceVersion.length +
                 retainedMessagesPersistenceVersion.length + subscriptionPersistenceVersion.length +
-                clientSessionPersistenceVersion.length + queuedMessagesPersistenceVersion.length + 2; // types
+                clientSessionPersistenceVersion.length + queuedMessagesPersistenceVersion.length + 3 + // types
+                1; // value format
         final ByteBuffer byteBuffer = ByteBuffer.allocate(bufferSize);
         putByteArray(hivemqVersion, byteBuffer);
         putByteArray(publishPayloadPersistenceVersion, byteBuffer);
@@ -67,6 +74,8 @@ public class MetaInformationSerializer {
         putByteArray(queuedMessagesPersistenceVersion, byteBuffer);
         byteBuffer.put(retainedMessagesPersistenceType);
         byteBuffer.put(publishPayloadPersistenceType);
+        byteBuffer.put(queuedMessagesPersistenceType);
+        byteBuffer.put(queuedMessagesValueFormatVersion);
         return byteBuffer.array();
     }
 
@@ -89,6 +98,12 @@ public class MetaInformationSerializer {
         final String queuedMessagesPersistenceVersion = getStringFromBuffer(metaFileAsByteBuffer);
         final PersistenceType retainedMessagePersistenceType = getTypeFromBuffer(metaFileAsByteBuffer);
         final PersistenceType publishPayloadPersistenceType = getTypeFromBuffer(metaFileAsByteBuffer);
+        // the type of the queued messages persistence was added later, older meta files end here
+        final PersistenceType queuedMessagesPersistenceType =
+                metaFileAsByteBuffer.hasRemaining() ? getTypeFromBuffer(metaFileAsByteBuffer) : null;
+        // as is the value format of the queued messages
+        final Integer queuedMessagesValueFormatVersion =
+                metaFileAsByteBuffer.hasRemaining() ? getVersionFromBuffer(metaFileAsByteBuffer) : null;
         final MetaInformation metaInformation = new MetaInformation();
         metaInformation.setHivemqVersion(hivemqVersion);
         metaInformation.setClientSessionPersistenceVersion(clientSessionPersistenceVersion);
@@ -98,6 +113,8 @@ public class MetaInformationSerializer {
         metaInformation.setPublishPayloadPersistenceVersion(publishPayloadPersistenceVersion);
         metaInformation.setRetainedMessagesPersistenceType(retainedMessagePersistenceType);
         metaInformation.setPublishPayloadPersistenceType(publishPayloadPersistenceType);
+        metaInformation.setQueuedMessagesPersistenceType(queuedMessagesPersistenceType);
+        metaInformation.setQueuedMessagesValueFormatVersion(queuedMessagesValueFormatVersion);
         // always true at this point
         metaInformation.setMetaFilePresent(true);
         metaInformation.setPersistenceFolderPresent(true);
@@ -110,6 +127,11 @@ public class MetaInformationSerializer {
         return typeAsByte > -1 ? PersistenceType.forCode(typeAsByte) : null;
     }
 
+    private @Nullable Integer getVersionFromBuffer(final @NotNull ByteBuffer metaFileAsByteBuffer) {
+        final byte versionAsByte = metaFileAsByteBuffer.get();
+        return versionAsByte > -1 ? (int) versionAsByte : null;
+    }
+
     @Nullable private String getStringFromBuffer(final ByteBuffer metaFileAsByteBuffer) {
         final int stringLength = metaFileAsByteBuffer.getInt();
         if (stringLength == 0) {
@@ -23,7 +23,8 @@ import com.hivemq.extension.sdk.api.annotations.NotNull;
 public enum PersistenceType {
 
     FILE,
-    FILE_NATIVE;
+    FILE_NATIVE,
+    FILE_SEGMENTED;
     private static final @NotNull PersistenceType @NotNull [] VALUES = values();
     public static @NotNull PersistenceType forCode(final int code) {
         try {
@@ -23,7 +23,9 @@ import com.hivemq.migration.TypeMigration;
 import com.hivemq.migration.ValueMigration;
 import com.hivemq.migration.meta.PersistenceType;
 import com.hivemq.migration.persistence.payload.PublishPayloadTypeMigration;
+import com.hivemq.migration.persistence.queue.ClientQueueCompactFormatMigration;
 import com.hivemq.migration.persistence.queue.ClientQueuePayloadIDMigration;
+import com.hivemq.migration.persistence.queue.ClientQueueTypeMigration;
 import com.hivemq.migration.persistence.retained.RetainedMessagePayloadIDMigration;
 import com.hivemq.migration.persistence.retained.RetainedMessageTypeMigration;
 import org.slf4j.Logger;
@@ -47,16 +49,22 @@ public class PersistenceMigrator {
     private final @NotNull Provider<RetainedMessageTypeMigration> retainedMessageMigrationProvider;
     private final @NotNull Provider<RetainedMessagePayloadIDMigration> retainedMessagePayloadIDMigrationProvider;
     private final @NotNull Provider<ClientQueuePayloadIDMigration> clientQueuePayloadIDMigrationProvider;
+    private final @NotNull Provider<ClientQueueTypeMigration> clientQueueTypeMigrationProvider;
+    private final @NotNull Provider<ClientQueueCompactFormatMigration> clientQueueCompactFormatMigrationProvider;
     @Inject
     public PersistenceMigrator(
             final @NotNull Provider<PublishPayloadTypeMigration> publishPayloadMigrationProvider,
             final @NotNull Provider<RetainedMessageTypeMigration> retainedMessageMigrationProvider,
             final @NotNull Provider<RetainedMessagePayloadIDMigration> retainedMessagePayloadIDMigrationProvider,
-            final @NotNull Provider<ClientQueuePayloadIDMigration> clientQueuePayloadIDMigrationProvider) {
+            final @NotNull Provider<ClientQueuePayloadIDMigration> clientQueuePayloadIDMigrationProvider,
+            final @NotNull Provider<ClientQueueTypeMigration> clientQueueTypeMigrationProvider,
+            final @NotNull Provider<ClientQueueCompactFormatMigration> clientQueueCompactFormatMigrationProvider) {
         this.publishPayloadMigrationProvider = publishPayloadMigrationProvider;
         this.retainedMessageMigrationProvider = retainedMessageMigrationProvider;
         this.retainedMessagePayloadIDMigrationProvider = retainedMessagePayloadIDMigrationProvider;
         this.clientQueuePayloadIDMigrationProvider = clientQueuePayloadIDMigrationProvider;
+        this.clientQueueTypeMigrationProvider = clientQueueTypeMigrationProvider;
+        this.clientQueueCompactFormatMigrationProvider = clientQueueCompactFormatMigrationProvider;
     }
 
     public void migratePersistenceTypes(final Map<MigrationUnit, PersistenceType> migrations) {
@@ -74,6 +82,9 @@ public class PersistenceMigrator {
                 case FILE_PERSISTENCE_RETAINED_MESSAGES :
                     migrator = retainedMessageMigrationProvider.get();
                     break;
+                case FILE_PERSISTENCE_CLIENT_QUEUE :
+                    migrator = clientQueueTypeMigrationProvider.get();
+                    break;
                 default :
                     continue;
             }
@@ -109,6 +120,9 @@ public class PersistenceMigrator {
                 case PAYLOAD_ID_CLIENT_QUEUE :
                     migrator = clientQueuePayloadIDMigrationProvider.get();
                     break;
+                case COMPACT_VALUE_FORMAT_CLIENT_QUEUE :
+                    migrator = clientQueueCompactFormatMigrationProvider.get();
+                    break;
                 default :
                     continue;
             }
@@ -0,0 +1,49 @@
+/*
+ * Copyright 2019-present HiveMQ GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hivemq.migration.persistence.queue;
+
+import com.hivemq.extension.sdk.api.annotations.NotNull;
+import com.hivemq.migration.Migrations;
+import com.hivemq.migration.ValueMigration;
+import com.hivemq.persistence.clientqueue.ClientQueueXodusLocalPersistence;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.inject.Inject;
+import javax.inject.Provider;
+
+/**
+ * Rewrites the queued messages of the xodus client queue persistence that are still stored in the previous value
+ * format in the compact value format. Values of both formats are readable, so this only reclaims the space.
+ */
+public class ClientQueueCompactFormatMigration implements ValueMigration {
+
+    private static final Logger log = LoggerFactory.getLogger(ClientQueueCompactFormatMigration.class);
+    private static final Logger migrationLog = LoggerFactory.getLogger(Migrations.MIGRATION_LOGGER_NAME);
+    private final @NotNull Provider<ClientQueueXodusLocalPersistence> xodusLocalPersistenceProvider;
+    @Inject
+    public ClientQueueCompactFormatMigration(
+            final @NotNull Provider<ClientQueueXodusLocalPersistence> xodusLocalPersistenceProvider) {
+        this.xodusLocalPersistenceProvider = xodusLocalPersistenceProvider;
+    }
+
+    @Override
+    public void migrateToValue() {
+        final int rewritten = xodusLocalPersistenceProvider.get().rewriteInCompactValueFormat();
+        migrationLog.info("Rewrote {} queued messages in the compact value format.", rewritten);
+        log.debug("Rewrote {} queued messages in the compact value format.", rewritten);
+    }
+}
@@ -0,0 +1,233 @@
+/*
+ * Copyright 2019-present HiveMQ GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hivemq.migration.persistence.queue;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.ImmutableList;
+import com.hivemq.configuration.info.SystemInformation;
+import com.hivemq.configuration.service.InternalConfigurations;
+import com.hivemq.configuration.service.MqttConfigurationService;
+import com.hivemq.extension.sdk.api.annotations.NotNull;
+import com.hivemq.migration.Migrations;
+import com.hivemq.migration.TypeMigration;
+import com.hivemq.migration.logging.PayloadExceptionLogging;
+import com.hivemq.migration.meta.MetaFileService;
+import com.hivemq.migration.meta.MetaInformation;
+import com.hivemq.migration.meta.PersistenceType;
+import com.hivemq.mqtt.message.publish.PUBLISH;
+import com.hivemq.mqtt.message.pubrel.PUBREL;
+import com.hivemq.persistence.clientqueue.ClientQueueEntry;
+import com.hivemq.persistence.clientqueue.ClientQueueLocalPersistence;
+import com.hivemq.persistence.clientqueue.ClientQueuePersistenceImpl;
+import com.hivemq.persistence.clientqueue.ClientQueueSegmentedLocalPersistence;
+import com.hivemq.persistence.clientqueue.ClientQueueXodusLocalPersistence;
+import com.hivemq.persistence.local.ClientSessionLocalPersistence;
+import com.hivemq.persistence.local.xodus.bucket.BucketUtils;
+import com.hivemq.persistence.payload.PublishPayloadPersistence;
+import com.hivemq.util.Exceptions;
+import com.hivemq.util.LocalPersistenceFileUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.inject.Inject;
+import javax.inject.Provider;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Moves the queued messages between the xodus and the segmented log storage of the client queue persistence.
+ */
+public class ClientQueueTypeMigration implements TypeMigration {
+
+    private static final Logger log = LoggerFactory.getLogger(ClientQueueTypeMigration.class);
+    private static final Logger migrationLog = LoggerFactory.getLogger(Migrations.MIGRATION_LOGGER_NAME);
+    private static final String FIRST_BUCKET_FOLDER = "client_queue_0";
+    private final @NotNull Provider<ClientQueueXodusLocalPersistence> xodusLocalPersistenceProvider;
+    private final @NotNull Provider<ClientQueueSegmentedLocalPersistence> segmentedLocalPersistenceProvider;
+    private final @NotNull Provider<ClientSessionLocalPersistence> sessionLocalPersistenceProvider;
+    private final @NotNull Provider<PublishPayloadPersistence> payloadPersistenceProvider;
+    private final @NotNull LocalPersistenceFileUtil localPersistenceFileUtil;
+    private final @NotNull SystemInformation systemInformation;
+    private final @NotNull PayloadExceptionLogging payloadExceptionLogging;
+    private final int bucketCount;
+    @Inject
+    public ClientQueueTypeMigration(
+            final @NotNull Provider<ClientQueueXodusLocalPersistence> xodusLocalPersistenceProvider,
+            final @NotNull Provider<ClientQueueSegmentedLocalPersistence> segmentedLocalPersistenceProvider,
+            final @NotNull Provider<ClientSessionLocalPersistence> sessionLocalPersistenceProvider,
+            final @NotNull Provider<PublishPayloadPersistence> payloadPersistenceProvider,
+            final @NotNull LocalPersistenceFileUtil localPersistenceFileUtil,
+            final @NotNull SystemInformation systemInformation,
+            final @NotNull PayloadExceptionLogging payloadExceptionLogging) {
+        this.xodusLocalPersistenceProvider = xodusLocalPersistenceProvider;
+        this.segmentedLocalPersistenceProvider = segmentedLocalPersistenceProvider;
+        this.sessionLocalPersistenceProvider = sessionLocalPersistenceProvider;
+        this.payloadPersistenceProvider = payloadPersistenceProvider;
+        this.localPersistenceFileUtil = localPersistenceFileUtil;
+        this.systemInformation = systemInformation;
+        this.payloadExceptionLogging = payloadExceptionLogging;
+        this.bucketCount = InternalConfigurations.PERSISTENCE_BUCKET_COUNT.get();
+    }
+
+    @Override
+    public void migrateToType(final @NotNull PersistenceType type) {
+        if (type.equals(PersistenceType.FILE_SEGMENTED)) {
+            migrateToSegmented();
+        } else if (type.equals(PersistenceType.FILE)) {
+            migrateToXodus();
+        } else {
+            throw new IllegalArgumentException("Unknown persistence type " + type + " for client queue migration");
+        }
+    }
+
+    private void migrateToSegmented() {
+        final File persistenceFolder = localPersistenceFileUtil.getVersionedLocalPersistenceFolder(
+                ClientQueueXodusLocalPersistence.PERSISTENCE_NAME,
+                ClientQueueXodusLocalPersistence.PERSISTENCE_VERSION);
+        if (oldFolderMissing(persistenceFolder)) {
+            return;
+        }
+        final ClientQueueXodusLocalPersistence xodus = xodusLocalPersistenceProvider.get();
+        final ClientQueueSegmentedLocalPersistence segmented = segmentedLocalPersistenceProvider.get();
+        final ClientQueuePersistenceTypeSwitchCallback callback = newCallback(segmented);
+        xodus.iterate(callback);
+        savePersistenceType(PersistenceType.FILE_SEGMENTED);
+        // cleanup the old queues with their own payload references
+        clear(xodus, callback.getMigratedKeys());
+        xodus.stop();
+    }
+
+    private void migrateToXodus() {
+        final File persistenceFolder = localPersistenceFileUtil.getVersionedLocalPersistenceFolder(
+                ClientQueueSegmentedLocalPersistence.PERSISTENCE_NAME,
+                ClientQueueSegmentedLocalPersistence.PERSISTENCE_VERSION);
+        if (oldFolderMissing(persistenceFolder)) {
+            return;
+        }
+        final ClientQueueXodusLocalPersistence xodus = xodusLocalPersistenceProvider.get();
+        final ClientQueueSegmentedLocalPersistence segmented = segmentedLocalPersistenceProvider.get();
+        final ClientQueuePersistenceTypeSwitchCallback callback = newCallback(xodus);
+        segmented.iterate(callback);
+        savePersistenceType(PersistenceType.FILE);
+        // cleanup the old queues with their own payload references
+        clear(segmented, callback.getMigratedKeys());
+        segmented.stop();
+    }
+
+    private @NotNull ClientQueuePersistenceTypeSwitchCallback newCallback(
+            final @NotNull ClientQueueLocalPersistence target) {
+        return new ClientQueuePersistenceTypeSwitchCallback(bucketCount,
+                target,
+                payloadPersistenceProvider.get(),
+                sessionLocalPersistenceProvider.get(),
+                payloadExceptionLogging);
+    }
+
+    private void clear(
+            final @NotNull ClientQueueLocalPersistence source,
+            final @NotNull List<ClientQueuePersistenceImpl.Key> keys) {
+        for (final ClientQueuePersistenceImpl.Key key : keys) {
+            source.clear(key.getQueueId(), key.isShared(), BucketUtils.getBucket(key.getQueueId(), bucketCount));
+        }
+    }
+
+    private static boolean oldFolderMissing(final @NotNull File persistenceFolder) {
+        final File oldPersistenceFolder = new File(persistenceFolder, FIRST_BUCKET_FOLDER);
+        if (!oldPersistenceFolder.exists()) {
+            migrationLog.info("No (old) persistence folder (client_queue) present, skipping migration.");
+            log.debug("No (old) persistence folder (client_queue) present, skipping migration.");
+            return true;
+        }
+        return false;
+    }
+
+    private void savePersistenceType(final @NotNull PersistenceType persistenceType) {
+        final MetaInformation metaFile = MetaFileService.readMetaFile(systemInformation);
+        metaFile.setQueuedMessagesPersistenceType(persistenceType);
+        metaFile.setQueuedMessagesPersistenceVersion(persistenceType == PersistenceType.FILE_SEGMENTED ?
+                ClientQueueSegmentedLocalPersistence.PERSISTENCE_VERSION :
+                ClientQueueXodusLocalPersistence.PERSISTENCE_VERSION);
+        MetaFileService.writeMetaFile(systemInformation, metaFile);
+    }
+
+    @VisibleForTesting
+    static class ClientQueuePersistenceTypeSwitchCallback implements ClientQueueLocalPersistence.QueueCallback {
+
+        private final int bucketCount;
+        private final @NotNull ClientQueueLocalPersistence target;
+        private final @NotNull PublishPayloadPersistence payloadPersistence;
+        private final @NotNull ClientSessionLocalPersistence sessionLocalPersistence;
+        private final @NotNull PayloadExceptionLogging payloadExceptionLogging;
+        private final @NotNull List<ClientQueuePersistenceImpl.Key> migratedKeys = new ArrayList<>();
+        ClientQueuePersistenceTypeSwitchCallback(
+                final int bucketCount,
+                final @NotNull ClientQueueLocalPersistence target,
+                final @NotNull PublishPayloadPersistence payloadPersistence,
+                final @NotNull ClientSessionLocalPersistence sessionLocalPersistence,
+                final @NotNull PayloadExceptionLogging payloadExceptionLogging) {
+            this.bucketCount = bucketCount;
+            this.target = target;
+            this.payloadPersistence = payloadPersistence;
+            this.sessionLocalPersistence = sessionLocalPersistence;
+            this.payloadExceptionLogging = payloadExceptionLogging;
+        }
+
+        @Override
+        public void onItem(
+                final ClientQueuePersistenceImpl.@NotNull Key key,
+                final @NotNull ImmutableList<ClientQueueEntry> messages) {
+            // the old queue is cleared in any case, its messages are either migrated or not needed anymore
+            migratedKeys.add(key);
+            try {
+                if (!key.isShared() && sessionLocalPersistence.getSession(key.getQueueId(), true, false) == null) {
+                    // no need to migrate queued messages for expired sessions
+                    return;
+                }
+                final int bucketIndex = BucketUtils.getBucket(key.getQueueId(), bucketCount);
+                for (final ClientQueueEntry queueEntry : messages) {
+                    if (queueEntry.getMessageWithID() instanceof PUBLISH) {
+                        final PUBLISH publish = (PUBLISH) queueEntry.getMessageWithID();
+                        final byte[] bytes = payloadPersistence.get(publish.getPublishId());
+                        if (bytes == null) {
+                            payloadExceptionLogging.addLogging(publish.getPublishId(), null, null);
+                            continue;
+                        }
+                        publish.setPayload(bytes);
+                        target.add(key.getQueueId(),
+                                key.isShared(),
+                                publish,
+                                Long.MAX_VALUE,
+                                MqttConfigurationService.QueuedMessagesStrategy.DISCARD,
+                                queueEntry.isRetained(),
+                                bucketIndex);
+                    } else if (queueEntry.getMessageWithID() instanceof PUBREL) {
+                        target.replace(key.getQueueId(), (PUBREL) queueEntry.getMessageWithID(), bucketIndex);
+                    }
+                }
+            } catch (final Throwable throwable) {
+                log.warn("Could not migrate queued messages for {}, original exception: ",
+                        key.getQueueId(),
+                        throwable);
+                Exceptions.rethrowError(throwable);
+            }
+        }
+
+        @NotNull List<ClientQueuePersistenceImpl.Key> getMigratedKeys() {
+            return migratedKeys;
+        }
+    }
+}
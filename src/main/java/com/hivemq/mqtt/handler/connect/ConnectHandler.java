@@ -15,6 +15,9 @@
  */
 package com.hivemq.mqtt.handler.connect;
 
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.util.concurrent.FutureCallback;
 import com.google.common.util.concurrent.Futures;
@@ -23,6 +26,7 @@ import com.google.common.util.concurrent.SettableFuture;
 import com.hivemq.bootstrap.ClientConnection;
 import com.hivemq.bootstrap.ClientConnectionContext;
 import com.hivemq.bootstrap.ClientState;
+import com.hivemq.codec.encoder.mqtt5.Mqtt5OutboundTopicAliases;
 import com.hivemq.configuration.service.FullConfigurationService;
 import com.hivemq.configuration.service.InternalConfigurations;
 import com.hivemq.extension.sdk.api.annotations.NotNull;
@@ -40,6 +44,7 @@ import com.hivemq.extensions.handler.tasks.PublishAuthorizerResult;
 import com.hivemq.extensions.packets.general.ModifiableDefaultPermissionsImpl;
 import com.hivemq.extensions.services.auth.Authorizers;
 import com.hivemq.limitation.TopicAliasLimiter;
+import com.hivemq.metrics.HiveMQMetrics;
 import com.hivemq.mqtt.handler.KeepAliveDisconnectHandler;
 import com.hivemq.mqtt.handler.KeepAliveDisconnectService;
 import com.hivemq.mqtt.handler.connack.MqttConnacker;
@@ -115,6 +120,8 @@ public class ConnectHandler extends SimpleChannelInboundHandler<CONNECT> {
     private final @NotNull PluginAuthorizerService pluginAuthorizerService;
     private final @NotNull MqttServerDisconnector mqttServerDisconnector;
     private final @NotNull KeepAliveDisconnectService keepAliveDisconnectService;
+    private final @NotNull Timer takeoverTime;
+    private final @NotNull Counter takeoverFastPathCount;
     private int maxClientIdLength;
     private long configuredSessionExpiryInterval;
     private int topicAliasMaximum;
@@ -136,7 +143,8 @@ public class ConnectHandler extends SimpleChannelInboundHandler<CONNECT> {
             final @NotNull Authorizers authorizers,
             final @NotNull PluginAuthorizerService pluginAuthorizerService,
             final @NotNull MqttServerDisconnector mqttServerDisconnector,
-            final @NotNull KeepAliveDisconnectService keepAliveDisconnectService) {
+            final @NotNull KeepAliveDisconnectService keepAliveDisconnectService,
+            final @NotNull MetricRegistry metricRegistry) {
         this.clientSessionPersistence = clientSessionPersistence;
         this.connectionPersistence = connectionPersistence;
         this.configurationService = configurationService;
@@ -151,6 +159,8 @@ public class ConnectHandler extends SimpleChannelInboundHandler<CONNECT> {
         this.pluginAuthorizerService = pluginAuthorizerService;
         this.mqttServerDisconnector = mqttServerDisconnector;
         this.keepAliveDisconnectService = keepAliveDisconnectService;
+        takeoverTime = metricRegistry.timer(HiveMQMetrics.SESSION_TAKEOVER_TIME.name());
+        takeoverFastPathCount = metricRegistry.counter(HiveMQMetrics.SESSION_TAKEOVER_FAST_PATH_COUNT.name());
     }
 
     @PostConstruct
@@ -496,9 +506,15 @@ public class ConnectHandler extends SimpleChannelInboundHandler<CONNECT> {
         final long sessionExpiryInterval =
                 msg.getSessionExpiryInterval() > configuredSessionExpiryInterval ? configuredSessionExpiryInterval :
                         msg.getSessionExpiryInterval();
+        // the will is persisted with the session below, a takeover of this connection must know about it
+        clientConnection.setConnectedWithWill(msg.getWillPublish() != null);
         final boolean existent;
         if (msg.isCleanStart()) {
             existent = false;
+        } else if (clientConnection.getHandedOverSessionExpiryInterval() != null) {
+            // the previous connection handed over its session without persisting the disconnect, so it still exists
+            existent = true;
+            takeoverFastPathCount.inc();
         } else {
             existent = clientSessionPersistence.isExistent(msg.getClientIdentifier());
         }
@@ -521,6 +537,10 @@ public class ConnectHandler extends SimpleChannelInboundHandler<CONNECT> {
         // client connects.
         // This is sufficient since messages for shared subscriptions are not queued for specific clients.
         sharedSubscriptionService.invalidateSharedSubscriptionCache(msg.getClientIdentifier());
+        final Long takeoverStartNanos = clientConnection.getTakeoverStartNanos();
+        if (takeoverStartNanos != null) {
+            takeoverTime.update(System.nanoTime() - takeoverStartNanos, TimeUnit.NANOSECONDS);
+        }
         addKeepAliveHandler(ctx, msg);
         sendConnackSuccess(ctx, clientConnection, msg, sessionPresent);
         // We're removing ourselves
@@ -596,6 +616,15 @@ public class ConnectHandler extends SimpleChannelInboundHandler<CONNECT> {
             builder.withTopicAliasMaximum(topicAliasMaximum);
             topicAliasLimiter.initUsage(topicAliasMaximum);
         }
+        // assign topic aliases to outgoing PUBLISHes if the client accepts them
+        if (msg.getTopicAliasMaximum() > 0 && InternalConfigurations.TOPIC_ALIAS_OUTBOUND_ENABLED.get()) {
+            final int outboundMaximum = Math.min(msg.getTopicAliasMaximum(),
+                    InternalConfigurations.TOPIC_ALIAS_OUTBOUND_MAX_PER_CLIENT.get());
+            if (outboundMaximum > 0) {
+                clientConnection.setOutboundTopicAliases(new Mqtt5OutboundTopicAliases(outboundMaximum,
+                        topicAliasLimiter));
+            }
+        }
         // Set session expiry interval to channel for DISCONNECT
         clientConnection.setClientSessionExpiryInterval(sessionExpiryInterval);
         // set userproperties from auth to connack
@@ -627,6 +656,14 @@ public class ConnectHandler extends SimpleChannelInboundHandler<CONNECT> {
                     "Disconnecting client with same client identifier '{}' failed. " +
                             "Cause: Disconnected before takeover.",
                     clientConnection.getClientId());
+            final Long handedOverSessionExpiryInterval = clientConnection.getHandedOverSessionExpiryInterval();
+            if (handedOverSessionExpiryInterval != null) {
+                // Nobody resumes the handed over session, so we have to persist the disconnect of the previous
+                // connection ourselves. Otherwise the session would stay connected and never expire.
+                clientSessionPersistence.clientDisconnected(clientConnection.getClientId(),
+                        false,
+                        handedOverSessionExpiryInterval);
+            }
             return;
         }
         final ClientConnection persistedClientConnection = connectionPersistence.persistIfAbsent(clientConnection);
@@ -635,6 +672,14 @@ public class ConnectHandler extends SimpleChannelInboundHandler<CONNECT> {
             afterTakeover(ctx, clientConnection, msg);
             return;
         }
+        // A session handed over to us before has been resumed or cleaned by the connection persisted in between.
+        clientConnection.setHandedOverSessionExpiryInterval(null);
+        if (clientConnection.getTakeoverStartNanos() == null) {
+            clientConnection.setTakeoverStartNanos(System.nanoTime());
+        }
+        if (!msg.isCleanStart() && InternalConfigurations.SESSION_TAKEOVER_FAST_PATH_ENABLED.get()) {
+            persistedClientConnection.setTakeoverSuccessor(clientConnection);
+        }
         // It is ok that multiple clients can queue a task here as we guard the client with the check
         // disconnectingOrDisconnected().
         persistedClientConnection.getChannel().eventLoop().execute(() -> {
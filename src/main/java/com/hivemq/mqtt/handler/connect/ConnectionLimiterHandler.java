@@ -18,6 +18,7 @@ package com.hivemq.mqtt.handler.connect;
 import com.google.common.annotations.VisibleForTesting;
 import com.hivemq.configuration.service.RestrictionsConfigurationService;
 import com.hivemq.extension.sdk.api.annotations.NotNull;
+import com.hivemq.limitation.OverloadProtection;
 import com.hivemq.metrics.gauges.OpenConnectionsGauge;
 import com.hivemq.mqtt.handler.connack.MqttConnacker;
 import com.hivemq.mqtt.message.connect.CONNECT;
@@ -33,7 +34,8 @@ import javax.inject.Singleton;
 
 /**
  * A {@link ChannelHandler} which is responsible for limiting the concurrent connections which is defined by the
- * 'max-connections' parameter in the configuration.
+ * 'max-connections' parameter in the configuration. CONNECTs are also rejected while the {@link OverloadProtection}
+ * does not admit them.
  *
  * @author Yannick Weber
  */
@@ -45,16 +47,19 @@ public class ConnectionLimiterHandler extends ChannelInboundHandlerAdapter {
     private final @NotNull MqttConnacker mqttConnacker;
     private final @NotNull RestrictionsConfigurationService restrictionsConfigurationService;
     private final @NotNull OpenConnectionsGauge openConnectionsGauge;
+    private final @NotNull OverloadProtection overloadProtection;
     private volatile long maxConnections;
     private volatile long warnThreshold;
     @Inject
     public ConnectionLimiterHandler(
             final @NotNull MqttConnacker mqttConnacker,
             final @NotNull RestrictionsConfigurationService restrictionsConfigurationService,
-            final @NotNull OpenConnectionsGauge openConnectionsGauge) {
+            final @NotNull OpenConnectionsGauge openConnectionsGauge,
+            final @NotNull OverloadProtection overloadProtection) {
         this.mqttConnacker = mqttConnacker;
         this.restrictionsConfigurationService = restrictionsConfigurationService;
         this.openConnectionsGauge = openConnectionsGauge;
+        this.overloadProtection = overloadProtection;
     }
 
     @Override
@@ -65,6 +70,10 @@ public class ConnectionLimiterHandler extends ChannelInboundHandlerAdapter {
             // allowed connections.
             this.warnThreshold = 90 * configuredCount / 100;
             this.maxConnections = configuredCount;
+        } else if (overloadProtection.isEnabled()) {
+            // Unlimited connections, but the overload protection must still admit the CONNECT
+            this.warnThreshold = 0;
+            this.maxConnections = Long.MAX_VALUE;
         } else {
             // This means we are dealing with unlimited connections so we can remove this handler from the pipeline
             ctx.pipeline().remove(this);
@@ -91,6 +100,15 @@ public class ConnectionLimiterHandler extends ChannelInboundHandlerAdapter {
             } else if (warnThreshold > 0 && currentCount >= warnThreshold) {
                 log.warn("The amount of connections ({}) is close to its limit ({}).", currentCount, maxConnections);
             }
+            if (!overloadProtection.admitConnect()) {
+                log.debug("The broker is overloaded. ClientID ({}) connection denied.", connect.getClientIdentifier());
+                mqttConnacker.connackError(ctx.channel(),
+                        null,
+                        "The broker is overloaded",
+                        Mqtt5ConnAckReasonCode.SERVER_BUSY,
+                        null);
+                return;
+            }
             // We can remove the handler because it doesn't do anything after this point.
             ctx.pipeline().remove(this);
         }
@@ -17,6 +17,7 @@ package com.hivemq.mqtt.handler.connect;
 
 import com.google.common.annotations.VisibleForTesting;
 import com.hivemq.bootstrap.ClientConnectionContext;
+import com.hivemq.bootstrap.netty.AutoReadGate;
 import com.hivemq.extension.sdk.api.annotations.NotNull;
 import com.hivemq.mqtt.handler.disconnect.MqttServerDisconnector;
 import com.hivemq.mqtt.message.Message;
@@ -111,7 +112,7 @@ public class MessageBarrier extends ChannelDuplexHandler {
                     clientConnectionContext.getClientId(),
                     channelIP.orElse("UNKNOWN"));
         }
-        channel.config().setAutoRead(false);
+        AutoReadGate.of(channel).pause(AutoReadGate.Reason.CONNECT_BARRIER);
     }
 
     private static void resumeRead(final @NotNull Channel channel) {
@@ -122,7 +123,7 @@ public class MessageBarrier extends ChannelDuplexHandler {
                     clientConnectionContext.getClientId(),
                     channelIP.orElse("UNKNOWN"));
         }
-        channel.config().setAutoRead(true);
+        AutoReadGate.of(channel).resume(AutoReadGate.Reason.CONNECT_BARRIER);
     }
 
     @VisibleForTesting
@@ -16,6 +16,7 @@
 package com.hivemq.mqtt.handler.connect;
 
 import com.google.common.annotations.VisibleForTesting;
+import com.hivemq.bootstrap.netty.AutoReadGate;
 import com.hivemq.bootstrap.netty.ChannelHandlerNames;
 import com.hivemq.extension.sdk.api.annotations.NotNull;
 import com.hivemq.mqtt.message.Message;
@@ -57,7 +58,7 @@ public class SubscribeMessageBarrier extends ChannelDuplexHandler {
 
     @Override
     public void handlerAdded(final @NotNull ChannelHandlerContext ctx) {
-        ctx.channel().config().setAutoRead(false);
+        AutoReadGate.of(ctx.channel()).pause(AutoReadGate.Reason.SUBSCRIBE_BARRIER);
     }
 
     @Override
@@ -82,7 +83,7 @@ public class SubscribeMessageBarrier extends ChannelDuplexHandler {
                     if (future.isSuccess()) {
                         final boolean allMessagesReleased = releaseQueuedMessages(ctx);
                         if (allMessagesReleased) {
-                            ctx.channel().config().setAutoRead(true);
+                            AutoReadGate.of(ctx.channel()).resume(AutoReadGate.Reason.SUBSCRIBE_BARRIER);
                             ctx.pipeline().remove(SubscribeMessageBarrier.this);
                         }
                     }
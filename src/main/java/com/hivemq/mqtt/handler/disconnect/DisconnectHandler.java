@@ -23,6 +23,7 @@ import com.google.common.util.concurrent.SettableFuture;
 import com.hivemq.bootstrap.ClientConnection;
 import com.hivemq.bootstrap.ClientConnectionContext;
 import com.hivemq.bootstrap.ClientState;
+import com.hivemq.codec.encoder.mqtt5.Mqtt5OutboundTopicAliases;
 import com.hivemq.configuration.service.InternalConfigurations;
 import com.hivemq.extension.sdk.api.annotations.NotNull;
 import com.hivemq.extension.sdk.api.annotations.Nullable;
@@ -32,6 +33,8 @@ import com.hivemq.limitation.TopicAliasLimiter;
 import com.hivemq.logging.EventLog;
 import com.hivemq.metrics.MetricsHolder;
 import com.hivemq.mqtt.message.disconnect.DISCONNECT;
+import com.hivemq.mqtt.services.SharedSubscriptionDispatcher;
+import com.hivemq.persistence.clientqueue.ClientQueuePersistence;
 import com.hivemq.persistence.clientsession.ClientSessionPersistence;
 import com.hivemq.persistence.connection.ConnectionPersistence;
 import com.hivemq.util.Checkpoints;
@@ -57,6 +60,8 @@ public class DisconnectHandler extends SimpleChannelInboundHandler<DISCONNECT> {
     private final @NotNull TopicAliasLimiter topicAliasLimiter;
     private final @NotNull ClientSessionPersistence clientSessionPersistence;
     private final @NotNull ConnectionPersistence connectionPersistence;
+    private final @NotNull SharedSubscriptionDispatcher sharedSubscriptionDispatcher;
+    private final @NotNull ClientQueuePersistence clientQueuePersistence;
     private final boolean logClientReasonString;
     @Inject
     public DisconnectHandler(
@@ -64,12 +69,16 @@ public class DisconnectHandler extends SimpleChannelInboundHandler<DISCONNECT> {
             final @NotNull MetricsHolder metricsHolder,
             final @NotNull TopicAliasLimiter topicAliasLimiter,
             final @NotNull ClientSessionPersistence clientSessionPersistence,
-            final @NotNull ConnectionPersistence connectionPersistence) {
+            final @NotNull ConnectionPersistence connectionPersistence,
+            final @NotNull SharedSubscriptionDispatcher sharedSubscriptionDispatcher,
+            final @NotNull ClientQueuePersistence clientQueuePersistence) {
         this.eventLog = eventLog;
         this.metricsHolder = metricsHolder;
         this.topicAliasLimiter = topicAliasLimiter;
         this.clientSessionPersistence = clientSessionPersistence;
         this.connectionPersistence = connectionPersistence;
+        this.sharedSubscriptionDispatcher = sharedSubscriptionDispatcher;
+        this.clientQueuePersistence = clientQueuePersistence;
         logClientReasonString = InternalConfigurations.LOG_CLIENT_REASON_STRING_ON_DISCONNECT_ENABLED;
     }
 
@@ -118,6 +127,10 @@ public class DisconnectHandler extends SimpleChannelInboundHandler<DISCONNECT> {
         if (topicAliasMapping != null) {
             topicAliasLimiter.finishUsage(topicAliasMapping);
         }
+        final Mqtt5OutboundTopicAliases outboundTopicAliases = clientConnectionContext.getOutboundTopicAliases();
+        if (outboundTopicAliases != null) {
+            outboundTopicAliases.release();
+        }
         super.channelInactive(ctx);
     }
 
@@ -132,6 +145,7 @@ public class DisconnectHandler extends SimpleChannelInboundHandler<DISCONNECT> {
             return;
         }
         final ClientConnection clientConnection = (ClientConnection) clientConnectionContext;
+        sharedSubscriptionDispatcher.clientDisconnected(clientConnection);
         // We are not the currently persisted client.
         if (clientConnection != connectionPersistence.get(clientConnection.getClientId())) {
             if (disconnectFuture != null) {
@@ -139,6 +153,29 @@ public class DisconnectHandler extends SimpleChannelInboundHandler<DISCONNECT> {
             }
             return;
         }
+        final ClientConnection takeoverSuccessor = clientConnection.getTakeoverSuccessor();
+        if (takeoverSuccessor != null && canHandOverSession(clientConnection, takeoverSuccessor)) {
+            // The successor resumes the session right away, so marking it as disconnected in between is redundant.
+            // QoS 0 messages are not part of the session and are dropped like on every other disconnect.
+            takeoverSuccessor.setHandedOverSessionExpiryInterval(clientConnection.getClientSessionExpiryInterval());
+            final ListenableFuture<Void> removeQos0Future =
+                    clientQueuePersistence.removeAllQos0Messages(clientConnection.getClientId(), false);
+            Futures.addCallback(removeQos0Future, new FutureCallback<>() {
+
+                @Override
+                public void onSuccess(final @Nullable Void result) {
+                    handedOver(clientConnection);
+                }
+
+                @Override
+                public void onFailure(final @NotNull Throwable throwable) {
+                    Exceptions.rethrowError("Unable to remove the QoS 0 messages of client " +
+                            clientConnection.getClientId() + " that was taken over.", throwable);
+                    handedOver(clientConnection);
+                }
+            }, MoreExecutors.directExecutor());
+            return;
+        }
         if (clientConnection.isPreventLwt()) {
             clientConnection.setSendWill(false);
             // ungraceful disconnect
@@ -171,4 +208,24 @@ public class DisconnectHandler extends SimpleChannelInboundHandler<DISCONNECT> {
             }
         }, MoreExecutors.directExecutor());
     }
+
+    private void handedOver(final @NotNull ClientConnection clientConnection) {
+        connectionPersistence.remove(clientConnection);
+        final SettableFuture<Void> disconnectFuture = clientConnection.getDisconnectFuture();
+        if (disconnectFuture != null) {
+            disconnectFuture.set(null);
+        }
+    }
+
+    private static boolean canHandOverSession(
+            final @NotNull ClientConnection clientConnection, final @NotNull ClientConnection takeoverSuccessor) {
+        // Without a will there is nothing to send or to schedule on disconnect. The session must outlive the
+        // connection, otherwise the disconnect would have to remove its subscriptions.
+        final Long sessionExpiryInterval = clientConnection.getClientSessionExpiryInterval();
+        return clientConnection.getClientState() == ClientState.DISCONNECTED_TAKEN_OVER &&
+                !clientConnection.isConnectedWithWill() &&
+                sessionExpiryInterval != null &&
+                sessionExpiryInterval > 0 &&
+                !takeoverSuccessor.getClientState().disconnectingOrDisconnected();
+    }
 }
@@ -0,0 +1,191 @@
+/*
+ * Copyright 2019-present HiveMQ GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hivemq.mqtt.handler.publish;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.hivemq.configuration.service.InternalConfigurations;
+import com.hivemq.extension.sdk.api.annotations.NotNull;
+import com.hivemq.extension.sdk.api.annotations.Nullable;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufHolder;
+import io.netty.channel.ChannelDuplexHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelPromise;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Coalesces the flushes of a client channel, so that all MQTT packets that are written during a read or an event loop
+ * task (PUBLISHes from the {@link PublishFlushHandler}, but also PUBACKs, PUBRECs, PUBCOMPs, SUBACKs, ...) are written
+ * to the socket with a single syscall.
+ * <p>
+ * A flush is deferred until the end of the current read or until the tasks that are already queued on the event loop
+ * are executed. It is passed on immediately when the written bytes reach a threshold that adapts to the response gap
+ * of the client: the time between a flush and the next inbound read of the channel. This is not the network round trip
+ * time, the next read can be caused by any packet the client sends, and a client that does not answer the flushed
+ * packets (QoS 0 subscribers) provides no samples. Clients with a short gap get the minimum threshold, every
+ * millisecond of the gap increases the threshold by the minimum up to the maximum.
+ * <p>
+ * The handler must be placed between the MQTT encoder and the socket, so it sees the encoded bytes.
+ */
+public class AdaptiveFlushHandler extends ChannelDuplexHandler {
+
+    private static final long GAP_STEP_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+    // a client that is idle for a long time does not tell us anything about its response gap
+    private static final long MAX_GAP_SAMPLE_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private final @NotNull FlushMetrics flushMetrics;
+    private final int minThresholdBytes;
+    private final int maxThresholdBytes;
+    private final @NotNull Runnable flushTask = this::flushTask;
+    private @Nullable ChannelHandlerContext ctx;
+    private int thresholdBytes;
+    private int pendingMessages;
+    private long pendingBytes;
+    private boolean flushPending;
+    private boolean flushScheduled;
+    private boolean readInProgress;
+    private long lastFlushNanos;
+    private long responseGapNanos;
+    public AdaptiveFlushHandler(final @NotNull FlushMetrics flushMetrics) {
+        this.flushMetrics = flushMetrics;
+        minThresholdBytes = InternalConfigurations.FLUSH_CONSOLIDATION_MIN_THRESHOLD_BYTES.get();
+        maxThresholdBytes =
+                Math.max(minThresholdBytes, InternalConfigurations.FLUSH_CONSOLIDATION_MAX_THRESHOLD_BYTES.get());
+        thresholdBytes = minThresholdBytes;
+    }
+
+    @Override
+    public void handlerAdded(final @NotNull ChannelHandlerContext ctx) {
+        this.ctx = ctx;
+    }
+
+    @Override
+    public void handlerRemoved(final @NotNull ChannelHandlerContext ctx) {
+        flushIfPending(ctx);
+    }
+
+    @Override
+    public void channelRead(final @NotNull ChannelHandlerContext ctx, final @NotNull Object msg) {
+        readInProgress = true;
+        if (lastFlushNanos != 0) {
+            sampleResponseGap(System.nanoTime() - lastFlushNanos);
+            lastFlushNanos = 0;
+        }
+        ctx.fireChannelRead(msg);
+    }
+
+    @Override
+    public void channelReadComplete(final @NotNull ChannelHandlerContext ctx) {
+        readInProgress = false;
+        flushIfPending(ctx);
+        ctx.fireChannelReadComplete();
+    }
+
+    @Override
+    public void channelWritabilityChanged(final @NotNull ChannelHandlerContext ctx) {
+        // the bytes have to reach the socket before the channel can become writable again
+        if (!ctx.channel().isWritable()) {
+            flushIfPending(ctx);
+        }
+        ctx.fireChannelWritabilityChanged();
+    }
+
+    @Override
+    public void exceptionCaught(final @NotNull ChannelHandlerContext ctx, final @NotNull Throwable cause) {
+        flushIfPending(ctx);
+        ctx.fireExceptionCaught(cause);
+    }
+
+    @Override
+    public void write(
+            final @NotNull ChannelHandlerContext ctx,
+            final @NotNull Object msg,
+            final @NotNull ChannelPromise promise) {
+        pendingMessages++;
+        if (msg instanceof ByteBuf) {
+            pendingBytes += ((ByteBuf) msg).readableBytes();
+        } else if (msg instanceof ByteBufHolder) {
+            pendingBytes += ((ByteBufHolder) msg).content().readableBytes();
+        }
+        ctx.write(msg, promise);
+    }
+
+    @Override
+    public void flush(final @NotNull ChannelHandlerContext ctx) {
+        if (pendingBytes >= thresholdBytes) {
+            flushNow(ctx);
+            return;
+        }
+        flushPending = true;
+        if (!readInProgress && !flushScheduled) {
+            flushScheduled = true;
+            ctx.channel().eventLoop().execute(flushTask);
+        }
+    }
+
+    @Override
+    public void disconnect(final @NotNull ChannelHandlerContext ctx, final @NotNull ChannelPromise promise) {
+        flushIfPending(ctx);
+        ctx.disconnect(promise);
+    }
+
+    @Override
+    public void close(final @NotNull ChannelHandlerContext ctx, final @NotNull ChannelPromise promise) {
+        flushIfPending(ctx);
+        ctx.close(promise);
+    }
+
+    @VisibleForTesting
+    int getThresholdBytes() {
+        return thresholdBytes;
+    }
+
+    private void flushTask() {
+        flushScheduled = false;
+        if (ctx != null) {
+            flushIfPending(ctx);
+        }
+    }
+
+    private void flushIfPending(final @NotNull ChannelHandlerContext ctx) {
+        if (flushPending) {
+            flushNow(ctx);
+        }
+    }
+
+    private void flushNow(final @NotNull ChannelHandlerContext ctx) {
+        flushPending = false;
+        if (pendingMessages > 0) {
+            flushMetrics.flushed(pendingMessages, pendingBytes);
+            pendingMessages = 0;
+            pendingBytes = 0;
+            lastFlushNanos = System.nanoTime();
+        }
+        ctx.flush();
+    }
+
+    private void sampleResponseGap(final long sampleNanos) {
+        if (sampleNanos > MAX_GAP_SAMPLE_NANOS) {
+            return;
+        }
+        // smoothed like the round trip time estimate of TCP
+        responseGapNanos =
+                responseGapNanos == 0 ? sampleNanos : responseGapNanos + (sampleNanos - responseGapNanos) / 8;
+        final long threshold = minThresholdBytes * (1 + responseGapNanos / GAP_STEP_NANOS);
+        thresholdBytes = (int) Math.min(maxThresholdBytes, threshold);
+    }
+}
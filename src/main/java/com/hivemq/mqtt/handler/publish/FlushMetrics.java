@@ -0,0 +1,68 @@
+/*
+ * Copyright 2019-present HiveMQ GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hivemq.mqtt.handler.publish;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import com.hivemq.extension.sdk.api.annotations.NotNull;
+import com.hivemq.metrics.HiveMQMetrics;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+/**
+ * The flush metrics shared by the {@link AdaptiveFlushHandler}s of all client channels.
+ */
+@Singleton
+public class FlushMetrics {
+
+    private final @NotNull Counter flushes;
+    private final @NotNull Counter flushedMessages;
+    private final @NotNull Counter flushedBytes;
+    @Inject
+    public FlushMetrics(final @NotNull MetricRegistry metricRegistry) {
+        flushes = metricRegistry.counter(HiveMQMetrics.MQTT_CONNECTION_FLUSHES.name());
+        flushedMessages = metricRegistry.counter(HiveMQMetrics.MQTT_CONNECTION_FLUSHED_MESSAGES.name());
+        flushedBytes = metricRegistry.counter(HiveMQMetrics.MQTT_CONNECTION_FLUSHED_BYTES.name());
+        metricRegistry.register(HiveMQMetrics.MQTT_CONNECTION_FLUSHES_PER_MESSAGE.name(),
+                (Gauge<Double>) this::flushesPerMessage);
+        metricRegistry.register(HiveMQMetrics.MQTT_CONNECTION_BYTES_PER_FLUSH.name(),
+                (Gauge<Double>) this::bytesPerFlush);
+    }
+
+    void flushed(final int messages, final long bytes) {
+        flushes.inc();
+        flushedMessages.inc(messages);
+        flushedBytes.inc(bytes);
+    }
+
+    /**
+     * @return the flushes per written message, every flush is at least one syscall
+     */
+    double flushesPerMessage() {
+        final long messages = flushedMessages.getCount();
+        return messages == 0 ? 0.0 : (double) flushes.getCount() / messages;
+    }
+
+    /**
+     * @return the average bytes per flush
+     */
+    double bytesPerFlush() {
+        final long count = flushes.getCount();
+        return count == 0 ? 0.0 : (double) flushedBytes.getCount() / count;
+    }
+}
@@ -16,11 +16,14 @@
 package com.hivemq.mqtt.handler.publish;
 
 import com.codahale.metrics.Counter;
+import com.hivemq.bootstrap.ClientConnection;
+import com.hivemq.bootstrap.ClientConnectionContext;
 import com.hivemq.configuration.service.InternalConfigurations;
 import com.hivemq.extension.sdk.api.annotations.NotNull;
 import com.hivemq.extension.sdk.api.annotations.Nullable;
 import com.hivemq.metrics.MetricsHolder;
 import com.hivemq.mqtt.message.publish.PublishWithFuture;
+import com.hivemq.mqtt.services.SharedSubscriptionDispatcher;
 import io.netty.channel.Channel;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.ChannelInboundHandlerAdapter;
@@ -36,10 +39,14 @@ public class PublishFlushHandler extends ChannelInboundHandlerAdapter implements
     private @Nullable ChannelHandlerContext ctx;
     private final @NotNull LinkedList<PublishWithFuture> messagesToWrite = new LinkedList<>();
     private final @NotNull Counter channelNotWritable;
+    private final @NotNull SharedSubscriptionDispatcher sharedSubscriptionDispatcher;
     private final int maxWritesBeforeFlush;
     private boolean wasWritable = true; // will only ever be updated in the channel's eventloop
-    public PublishFlushHandler(final @NotNull MetricsHolder metricsHolder) {
+    public PublishFlushHandler(
+            final @NotNull MetricsHolder metricsHolder,
+            final @NotNull SharedSubscriptionDispatcher sharedSubscriptionDispatcher) {
         channelNotWritable = metricsHolder.getChannelNotWritableCounter();
+        this.sharedSubscriptionDispatcher = sharedSubscriptionDispatcher;
         maxWritesBeforeFlush = InternalConfigurations.COUNT_OF_PUBLISHES_WRITTEN_TO_CHANNEL_TO_TRIGGER_FLUSH.get();
     }
 
@@ -51,6 +58,13 @@ public class PublishFlushHandler extends ChannelInboundHandlerAdapter implements
     @Override
     public void channelWritabilityChanged(final @NotNull ChannelHandlerContext ctx) {
         final Channel channel = ctx.channel();
+        if (channel.hasAttr(ClientConnectionContext.CHANNEL_ATTRIBUTE_NAME)) {
+            final ClientConnectionContext clientConnectionContext = ClientConnectionContext.of(channel);
+            if (clientConnectionContext instanceof ClientConnection) {
+                sharedSubscriptionDispatcher.writabilityChanged((ClientConnection) clientConnectionContext,
+                        channel.isWritable());
+            }
+        }
         if (channel.isWritable() && !wasWritable) {
             wasWritable = true;
             channelNotWritable.dec();
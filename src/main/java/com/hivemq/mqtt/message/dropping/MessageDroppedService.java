@@ -85,4 +85,10 @@ public interface MessageDroppedService {
             final int qos,
             final long currentMemory,
             final long maxMemory);
+
+    /**
+     * Update the metrics if a retained message was not stored because the retained message memory limit was exceeded.
+     * The PUBLISH is still delivered, the existing retained message of the topic is kept.
+     */
+    void retainedMemoryExceeded(final String topic, final int qos, final long currentMemory, final long maxMemory);
 }
@@ -118,6 +118,18 @@ public class MessageDroppedServiceImpl implements MessageDroppedService {
         eventLog.sharedSubscriptionMessageDropped(group, topic, qos, reason);
     }
 
+    @Override
+    public void retainedMemoryExceeded(
+            final @NotNull String topic,
+            final int qos,
+            final long currentMemory,
+            final long maxMemory) {
+        metricsHolder.getDroppedMessageCounter().inc();
+        final String reason = "The retained message memory limit exceeded, size: " + FORMAT.format(currentMemory) +
+                " bytes, max: " + FORMAT.format(maxMemory) + " bytes";
+        eventLog.retainedMessageDropped(topic, qos, reason);
+    }
+
     @Override
     public void publishMaxPacketSizeExceeded(
             final @NotNull String clientId,
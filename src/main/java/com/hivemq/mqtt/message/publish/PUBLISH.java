@@ -19,6 +19,7 @@ import com.google.common.base.Preconditions;
 import com.google.common.collect.ImmutableList;
 import com.google.common.primitives.ImmutableIntArray;
 import com.hivemq.codec.encoder.mqtt5.Mqtt5PayloadFormatIndicator;
+import com.hivemq.codec.encoder.mqtt5.Mqtt5SharedPublishEncoding;
 import com.hivemq.codec.encoder.mqtt5.UnsignedDataTypes;
 import com.hivemq.configuration.entity.mqtt.MqttConfigurationDefaults;
 import com.hivemq.extension.sdk.api.annotations.NotNull;
@@ -36,6 +37,9 @@ import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * A MQTT PUBLISH message
+ * <p>
+ * The topic, the identity and the properties of the message are kept in a {@link PublishCore} that is shared with the
+ * copies of this PUBLISH made for its subscribers. This class only holds the delivery specific fields.
  *
  * @since 4.0.0
  */
@@ -47,49 +51,35 @@ public class PUBLISH extends MqttMessageWithUserProperties implements Mqtt3PUBLI
     public static final long MESSAGE_EXPIRY_INTERVAL_NOT_SET = Long.MAX_VALUE;
     public static final long MESSAGE_EXPIRY_INTERVAL_MAX = UnsignedDataTypes.UNSIGNED_INT_MAX_VALUE;
     public static final AtomicLong PUBLISH_COUNTER = new AtomicLong(1);
-    protected long timestamp;
+    private final @NotNull PublishCore core;
     private byte @Nullable [] payload;
     private boolean duplicateDelivery;
-    private final @NotNull String topic;
     private final boolean retain;
     private final @NotNull QoS qos;
     private final @NotNull QoS onwardQos;
     private long messageExpiryInterval;
-    private final long publishId;
-    private final @NotNull String hivemqId;
-    private final @NotNull String uniqueId;
-    private final @Nullable Mqtt5PayloadFormatIndicator payloadFormatIndicator;
-    private final @Nullable String contentType;
-    private final @Nullable String responseTopic;
-    private final byte @Nullable [] correlationData;
     private final boolean isNewTopicAlias;
     private final @Nullable ImmutableIntArray subscriptionIdentifiers;
     private int sizeInMemory = SIZE_NOT_CALCULATED;
-    // MQTT 5
+    // the topic alias this PUBLISH is encoded with for its receiver, set by the encoder
+    private int outboundTopicAlias = DEFAULT_NO_TOPIC_ALIAS;
+    private boolean outboundTopicOmitted;
     PUBLISH(
-            final @NotNull String hivemqId,
-            final @NotNull String topic,
+            final @NotNull PublishCore core,
             final byte @Nullable [] payload,
             final @NotNull QoS qos,
             final @NotNull QoS onwardQos,
             final boolean retain,
             final long messageExpiryInterval,
-            final @Nullable Mqtt5PayloadFormatIndicator payloadFormatIndicator,
-            final @Nullable String contentType,
-            final @Nullable String responseTopic,
-            final byte @Nullable [] correlationData,
             final @NotNull Mqtt5UserProperties userProperties,
             final int packetIdentifier,
             final boolean duplicateDelivery,
             final boolean isNewTopicAlias,
-            final @Nullable ImmutableIntArray subscriptionIdentifiers,
-            final long timestamp,
-            final long publishId) {
+            final @Nullable ImmutableIntArray subscriptionIdentifiers) {
         super(userProperties);
-        Preconditions.checkNotNull(hivemqId, "HivemqId may never be null");
-        Preconditions.checkNotNull(topic, "Topic may never be null");
+        Preconditions.checkNotNull(core, "Core may never be null");
         Preconditions.checkNotNull(qos, "Quality of service may never be null");
-        this.topic = topic;
+        this.core = core;
         this.payload = payload;
         this.qos = qos;
         this.onwardQos = onwardQos;
@@ -98,125 +88,70 @@ public class PUBLISH extends MqttMessageWithUserProperties implements Mqtt3PUBLI
         this.isNewTopicAlias = isNewTopicAlias;
         this.subscriptionIdentifiers = subscriptionIdentifiers;
         this.messageExpiryInterval = messageExpiryInterval;
-        this.payloadFormatIndicator = payloadFormatIndicator;
-        this.contentType = contentType;
-        this.responseTopic = responseTopic;
-        this.correlationData = correlationData;
-        if (publishId > NO_PUBLISH_ID_SET) {
-            this.publishId = publishId;
-        } else {
-            this.publishId = PUBLISH_COUNTER.getAndIncrement();
-        }
-        this.hivemqId = hivemqId;
-        uniqueId = hivemqId + "_pub_" + this.publishId;
-        if (timestamp > -1) {
-            this.timestamp = timestamp;
-        } else {
-            this.timestamp = System.currentTimeMillis();
-        }
-        setPacketIdentifier(packetIdentifier);
-    }
-
-    // MQTT 3
-    PUBLISH(
-            final @NotNull String hivemqId,
-            final @NotNull String topic,
-            final @Nullable byte[] payload,
-            final @NotNull QoS qos,
-            final @NotNull QoS onwardQos,
-            final boolean retain,
-            final long messageExpiryInterval,
-            final int packetIdentifier,
-            final boolean duplicateDelivery,
-            final long publishId,
-            final long timestamp) {
-        super(Mqtt5UserProperties.NO_USER_PROPERTIES);
-        Preconditions.checkNotNull(hivemqId, "Hivemq Id may never be null");
-        Preconditions.checkNotNull(topic, "Topic may never be null");
-        Preconditions.checkNotNull(qos, "Quality of service may never be null");
-        this.hivemqId = hivemqId;
-        this.topic = topic;
-        this.payload = payload;
-        this.qos = qos;
-        this.onwardQos = onwardQos;
-        this.retain = retain;
-        this.messageExpiryInterval = messageExpiryInterval;
-        this.duplicateDelivery = duplicateDelivery;
-        if (publishId > NO_PUBLISH_ID_SET) {
-            this.publishId = publishId;
-        } else {
-            this.publishId = PUBLISH_COUNTER.getAndIncrement();
-        }
-        uniqueId = hivemqId + "_pub_" + this.publishId;
-        if (timestamp > -1) {
-            this.timestamp = timestamp;
-        } else {
-            this.timestamp = System.currentTimeMillis();
-        }
         setPacketIdentifier(packetIdentifier);
-        // MQTT 5 Only
-        isNewTopicAlias = false;
-        subscriptionIdentifiers = null;
-        payloadFormatIndicator = null;
-        contentType = null;
-        responseTopic = null;
-        correlationData = null;
     }
 
     public PUBLISH(final @NotNull PUBLISH publish) {
-        this(publish.getHivemqId(),
-                publish.getTopic(),
+        this(publish.getCore(),
                 publish.getPayload(),
                 publish.getQoS(),
                 publish.getOnwardQoS(),
                 publish.isRetain(),
                 publish.getMessageExpiryInterval(),
-                publish.getPayloadFormatIndicator(),
-                publish.getContentType(),
-                publish.getResponseTopic(),
-                publish.getCorrelationData(),
                 publish.getUserProperties(),
                 publish.getPacketIdentifier(),
                 publish.isDuplicateDelivery(),
                 publish.isNewTopicAlias(),
-                publish.getSubscriptionIdentifiers(),
-                publish.getTimestamp(),
-                publish.getPublishId());
+                publish.getSubscriptionIdentifiers());
+    }
+
+    /**
+     * @return the part of this PUBLISH that is shared with all its copies
+     */
+    public @NotNull PublishCore getCore() {
+        return core;
+    }
+
+    /**
+     * @return the encoding of the subscriber independent part of this PUBLISH, shared with all its copies
+     */
+    public @NotNull Mqtt5SharedPublishEncoding getSharedEncoding() {
+        return core.getSharedEncoding();
     }
 
     @Override
     public @NotNull String getHivemqId() {
-        return hivemqId;
+        return core.getHivemqId();
     }
 
     @Override
     public @NotNull String getUniqueId() {
-        return uniqueId;
+        return core.getUniqueId();
     }
 
     @Override
     public long getPublishId() {
-        return publishId;
+        return core.getPublishId();
     }
 
     @Override
     public @Nullable Mqtt5PayloadFormatIndicator getPayloadFormatIndicator() {
-        return payloadFormatIndicator;
+        return core.getPayloadFormatIndicator();
     }
 
     @Override
     public @Nullable String getContentType() {
-        return contentType;
+        return core.getContentType();
     }
 
     @Override
     public @Nullable String getResponseTopic() {
-        return responseTopic;
+        return core.getResponseTopic();
     }
 
     @Override
     public byte @Nullable [] getCorrelationData() {
-        return correlationData;
+        return core.getCorrelationData();
     }
 
     @Override
@@ -224,6 +159,25 @@ public class PUBLISH extends MqttMessageWithUserProperties implements Mqtt3PUBLI
         return isNewTopicAlias;
     }
 
+    /**
+     * Sets the topic alias this PUBLISH is encoded with. Only used by the encoder of the receiving connection.
+     *
+     * @param topicAlias   the topic alias or {@link #DEFAULT_NO_TOPIC_ALIAS}.
+     * @param topicOmitted whether the receiver already knows the alias, so the topic is not encoded.
+     */
+    public void setOutboundTopicAlias(final int topicAlias, final boolean topicOmitted) {
+        this.outboundTopicAlias = topicAlias;
+        this.outboundTopicOmitted = topicOmitted;
+    }
+
+    public int getOutboundTopicAlias() {
+        return outboundTopicAlias;
+    }
+
+    public boolean isOutboundTopicOmitted() {
+        return outboundTopicOmitted;
+    }
+
     @Override
     public void setPayload(final byte @Nullable [] payload) {
         this.payload = payload;
@@ -236,7 +190,7 @@ public class PUBLISH extends MqttMessageWithUserProperties implements Mqtt3PUBLI
 
     @Override
     public @NotNull String getTopic() {
-        return topic;
+        return core.getTopic();
     }
 
     @Override
@@ -278,14 +232,14 @@ public class PUBLISH extends MqttMessageWithUserProperties implements Mqtt3PUBLI
 
     @Override
     public long getTimestamp() {
-        return timestamp;
+        return core.getTimestamp();
     }
 
     public long getRemainingExpiry() {
         if (isExpiryDisabled()) {
             return MESSAGE_EXPIRY_INTERVAL_NOT_SET;
         }
-        final long waitingSeconds = (System.currentTimeMillis() - timestamp) / 1000;
+        final long waitingSeconds = (System.currentTimeMillis() - core.getTimestamp()) / 1000;
         return Math.max(0, messageExpiryInterval - waitingSeconds);
     }
 
@@ -300,7 +254,7 @@ public class PUBLISH extends MqttMessageWithUserProperties implements Mqtt3PUBLI
 
     @Override
     public @NotNull String toString() {
-        return "PUBLISH{uniqueId=" + uniqueId + ", timestamp=" + timestamp + '}';
+        return "PUBLISH{uniqueId=" + getUniqueId() + ", timestamp=" + getTimestamp() + '}';
     }
 
     @Override
@@ -312,36 +266,36 @@ public class PUBLISH extends MqttMessageWithUserProperties implements Mqtt3PUBLI
             return false;
         }
         final PUBLISH publish = (PUBLISH) o;
-        return timestamp == publish.timestamp && duplicateDelivery == publish.duplicateDelivery &&
+        return getTimestamp() == publish.getTimestamp() && duplicateDelivery == publish.duplicateDelivery &&
                 retain == publish.retain && messageExpiryInterval == publish.messageExpiryInterval &&
-                publishId == publish.publishId && isNewTopicAlias == publish.isNewTopicAlias &&
-                Arrays.equals(payload, publish.payload) && Objects.equals(topic, publish.topic) && qos == publish.qos &&
-                Objects.equals(hivemqId, publish.hivemqId) && Objects.equals(uniqueId, publish.uniqueId) &&
-                payloadFormatIndicator == publish.payloadFormatIndicator &&
-                Objects.equals(contentType, publish.contentType) &&
-                Objects.equals(responseTopic, publish.responseTopic) &&
-                Arrays.equals(correlationData, publish.correlationData) &&
+                getPublishId() == publish.getPublishId() && isNewTopicAlias == publish.isNewTopicAlias &&
+                Arrays.equals(payload, publish.payload) && Objects.equals(getTopic(), publish.getTopic()) &&
+                qos == publish.qos && Objects.equals(getHivemqId(), publish.getHivemqId()) &&
+                getPayloadFormatIndicator() == publish.getPayloadFormatIndicator() &&
+                Objects.equals(getContentType(), publish.getContentType()) &&
+                Objects.equals(getResponseTopic(), publish.getResponseTopic()) &&
+                Arrays.equals(getCorrelationData(), publish.getCorrelationData()) &&
                 Objects.equals(subscriptionIdentifiers, publish.subscriptionIdentifiers);
     }
 
     @Override
     public int hashCode() {
-        int result = Objects.hash(timestamp,
-                topic,
+        int result = Objects.hash(getTimestamp(),
+                getTopic(),
                 duplicateDelivery,
                 retain,
                 qos,
                 messageExpiryInterval,
-                publishId,
-                hivemqId,
-                uniqueId,
-                payloadFormatIndicator,
-                contentType,
-                responseTopic,
+                getPublishId(),
+                getHivemqId(),
+                getUniqueId(),
+                getPayloadFormatIndicator(),
+                getContentType(),
+                getResponseTopic(),
                 isNewTopicAlias,
                 subscriptionIdentifiers);
         result = 31 * result + Arrays.hashCode(payload);
-        result = 31 * result + Arrays.hashCode(correlationData);
+        result = 31 * result + Arrays.hashCode(getCorrelationData());
         return result;
     }
 
@@ -370,17 +324,10 @@ public class PUBLISH extends MqttMessageWithUserProperties implements Mqtt3PUBLI
         if (sizeInMemory != SIZE_NOT_CALCULATED) {
             return sizeInMemory;
         }
-        int size = 0;
+        int size = core.getEstimatedSizeInMemory();
         size += ObjectMemoryEstimation.objectShellSize(); // the publish himself
         size += ObjectMemoryEstimation.intSize(); // sizeInMemory
-        size += ObjectMemoryEstimation.longSize(); // timestamp
-        size += ObjectMemoryEstimation.stringSize(topic);
         size += ObjectMemoryEstimation.byteArraySize(payload);
-        size += ObjectMemoryEstimation.byteArraySize(correlationData);
-        size += ObjectMemoryEstimation.stringSize(responseTopic);
-        size += ObjectMemoryEstimation.stringSize(uniqueId);
-        size += ObjectMemoryEstimation.stringSize(hivemqId);
-        size += ObjectMemoryEstimation.stringSize(contentType);
         size += 24; // User Properties Overhead
         final ImmutableList<MqttUserProperty> userProperties = getUserProperties().asList();
         for (int i = 0; i < userProperties.size(); i++) {
@@ -393,10 +340,8 @@ public class PUBLISH extends MqttMessageWithUserProperties implements Mqtt3PUBLI
         size += ObjectMemoryEstimation.booleanSize(); // retain
         size += ObjectMemoryEstimation.booleanSize(); // isNewTopicAlias
         size += ObjectMemoryEstimation.longSize(); // messageExpiryInterval
-        size += ObjectMemoryEstimation.longSize(); // publishId
         size += ObjectMemoryEstimation.longWrapperSize(); // payloadId
         size += ObjectMemoryEstimation.enumSize(); // QoS
-        size += ObjectMemoryEstimation.enumSize(); // payloadFormatIndicator
         size += ObjectMemoryEstimation.immutableIntArraySize(subscriptionIdentifiers);
         sizeInMemory = size;
         return sizeInMemory;
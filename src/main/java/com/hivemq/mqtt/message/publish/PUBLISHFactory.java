@@ -61,6 +61,7 @@ public class PUBLISHFactory {
         private @NotNull Mqtt5UserProperties userProperties = Mqtt5UserProperties.NO_USER_PROPERTIES;
         private int packetIdentifier;
         private long publishId = PUBLISH.NO_PUBLISH_ID_SET;
+        private @Nullable PublishCore core;
         public @NotNull Mqtt5Builder fromPublish(final @NotNull PUBLISH publish) {
             this.hivemqId = publish.getHivemqId();
             this.topic = publish.getTopic();
@@ -79,6 +80,7 @@ public class PUBLISHFactory {
             this.payloadFormatIndicator = publish.getPayloadFormatIndicator();
             this.timestamp = publish.getTimestamp();
             this.subscriptionIdentifiers = publish.getSubscriptionIdentifiers();
+            this.core = publish.getCore();
             return this;
         }
 
@@ -86,24 +88,27 @@ public class PUBLISHFactory {
             Preconditions.checkNotNull(hivemqId, "HivemqId may never be null");
             Preconditions.checkNotNull(topic, "Topic may never be null");
             Preconditions.checkNotNull(qoS, "Quality of service may never be null");
-            return new PUBLISH(hivemqId,
+            // the copies for the subscribers only change delivery specific fields, so they share the core
+            final PublishCore publishCore = PublishCore.reuseOrCreate(core,
+                    hivemqId,
                     topic,
+                    publishId,
+                    timestamp,
+                    payloadFormatIndicator,
+                    contentType,
+                    responseTopic,
+                    correlationData);
+            return new PUBLISH(publishCore,
                     payload,
                     qoS,
                     onwardQos,
                     retain,
                     messageExpiryInterval,
-                    payloadFormatIndicator,
-                    contentType,
-                    responseTopic,
-                    correlationData,
                     userProperties,
                     packetIdentifier,
                     duplicateDelivery,
                     isNewTopicAlias,
-                    subscriptionIdentifiers,
-                    timestamp,
-                    publishId);
+                    subscriptionIdentifiers);
         }
 
         public @NotNull Mqtt5Builder withTimestamp(final long timestamp) {
@@ -212,6 +217,7 @@ public class PUBLISHFactory {
         private int packetIdentifier;
         private long publishId = PUBLISH.NO_PUBLISH_ID_SET;
         private long timestamp = -1;
+        private @Nullable PublishCore core;
         public @NotNull Mqtt3Builder fromPublish(final @NotNull PUBLISH publish) {
             this.hivemqId = publish.getHivemqId();
             this.topic = publish.getTopic();
@@ -223,6 +229,7 @@ public class PUBLISHFactory {
             this.duplicateDelivery = publish.isDuplicateDelivery();
             this.packetIdentifier = publish.getPacketIdentifier();
             this.publishId = publish.getPublishId();
+            this.core = publish.getCore();
             return this;
         }
 
@@ -230,17 +237,26 @@ public class PUBLISHFactory {
             Preconditions.checkNotNull(hivemqId, "HivemqId may never be null");
             Preconditions.checkNotNull(topic, "Topic may never be null");
             Preconditions.checkNotNull(qoS, "Quality of service may never be null");
-            return new PUBLISH(hivemqId,
+            final PublishCore publishCore = PublishCore.reuseOrCreate(core,
+                    hivemqId,
                     topic,
+                    publishId,
+                    timestamp,
+                    null,
+                    null,
+                    null,
+                    null);
+            return new PUBLISH(publishCore,
                     payload,
                     qoS,
                     onwardQos,
                     retain,
                     messageExpiryInterval,
+                    Mqtt5UserProperties.NO_USER_PROPERTIES,
                     packetIdentifier,
                     duplicateDelivery,
-                    publishId,
-                    timestamp);
+                    false,
+                    null);
         }
 
         public @NotNull Mqtt3Builder withTimestamp(final long timestamp) {
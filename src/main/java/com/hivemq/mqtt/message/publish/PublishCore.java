@@ -0,0 +1,201 @@
+/*
+ * Copyright 2019-present HiveMQ GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hivemq.mqtt.message.publish;
+
+import com.hivemq.codec.encoder.mqtt5.Mqtt5PayloadFormatIndicator;
+import com.hivemq.codec.encoder.mqtt5.Mqtt5SharedPublishEncoding;
+import com.hivemq.extension.sdk.api.annotations.NotNull;
+import com.hivemq.extension.sdk.api.annotations.Nullable;
+import com.hivemq.extension.sdk.api.annotations.ThreadSafe;
+import com.hivemq.util.ObjectMemoryEstimation;
+
+/**
+ * The part of a {@link PUBLISH} that is the same for all its subscribers: the identity of the message, its topic and
+ * its properties.
+ * <p>
+ * The copies of a PUBLISH that are made for its subscribers only differ in the delivery specific fields like the QoS,
+ * the retain flag, the packet identifier and the subscription identifiers. They share the core, so a fan-out does not
+ * copy the identity and properties of the message, the unique id is only built once and only if it is needed.
+ * <p>
+ * A core is only reused by a copy that references the same topic and properties, see
+ * {@link #reuseOrCreate(PublishCore, String, String, long, long, Mqtt5PayloadFormatIndicator, String, String,
+ * byte[])}.
+ */
+@ThreadSafe
+public class PublishCore {
+
+    private static final int SIZE_NOT_CALCULATED = -1;
+    private static final @NotNull String UNIQUE_ID_SEPARATOR = "_pub_";
+
+    private final @NotNull String hivemqId;
+    private final @NotNull String topic;
+    private final long publishId;
+    private final long timestamp;
+    private final @Nullable Mqtt5PayloadFormatIndicator payloadFormatIndicator;
+    private final @Nullable String contentType;
+    private final @Nullable String responseTopic;
+    private final byte @Nullable [] correlationData;
+    // racing threads build equal values, so it does not matter which one is kept
+    private volatile @Nullable String uniqueId;
+    private volatile @Nullable Mqtt5SharedPublishEncoding sharedEncoding;
+    private volatile int sizeInMemory = SIZE_NOT_CALCULATED;
+    PublishCore(
+            final @NotNull String hivemqId,
+            final @NotNull String topic,
+            final long publishId,
+            final long timestamp,
+            final @Nullable Mqtt5PayloadFormatIndicator payloadFormatIndicator,
+            final @Nullable String contentType,
+            final @Nullable String responseTopic,
+            final byte @Nullable [] correlationData) {
+        this.hivemqId = hivemqId;
+        this.topic = topic;
+        if (publishId > PUBLISH.NO_PUBLISH_ID_SET) {
+            this.publishId = publishId;
+        } else {
+            this.publishId = PUBLISH.PUBLISH_COUNTER.getAndIncrement();
+        }
+        if (timestamp > -1) {
+            this.timestamp = timestamp;
+        } else {
+            this.timestamp = System.currentTimeMillis();
+        }
+        this.payloadFormatIndicator = payloadFormatIndicator;
+        this.contentType = contentType;
+        this.responseTopic = responseTopic;
+        this.correlationData = correlationData;
+    }
+
+    /**
+     * @return the given core if it references exactly the given values, otherwise a new core for the values
+     */
+    static @NotNull PublishCore reuseOrCreate(
+            final @Nullable PublishCore core,
+            final @NotNull String hivemqId,
+            final @NotNull String topic,
+            final long publishId,
+            final long timestamp,
+            final @Nullable Mqtt5PayloadFormatIndicator payloadFormatIndicator,
+            final @Nullable String contentType,
+            final @Nullable String responseTopic,
+            final byte @Nullable [] correlationData) {
+        if (core != null &&
+                core.hivemqId == hivemqId &&
+                core.topic == topic &&
+                core.publishId == publishId &&
+                core.timestamp == timestamp &&
+                core.payloadFormatIndicator == payloadFormatIndicator &&
+                core.contentType == contentType &&
+                core.responseTopic == responseTopic &&
+                core.correlationData == correlationData) {
+            return core;
+        }
+        return new PublishCore(hivemqId,
+                topic,
+                publishId,
+                timestamp,
+                payloadFormatIndicator,
+                contentType,
+                responseTopic,
+                correlationData);
+    }
+
+    public @NotNull String getHivemqId() {
+        return hivemqId;
+    }
+
+    public @NotNull String getTopic() {
+        return topic;
+    }
+
+    public long getPublishId() {
+        return publishId;
+    }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public @Nullable Mqtt5PayloadFormatIndicator getPayloadFormatIndicator() {
+        return payloadFormatIndicator;
+    }
+
+    public @Nullable String getContentType() {
+        return contentType;
+    }
+
+    public @Nullable String getResponseTopic() {
+        return responseTopic;
+    }
+
+    public byte @Nullable [] getCorrelationData() {
+        return correlationData;
+    }
+
+    public @NotNull String getUniqueId() {
+        String uniqueId = this.uniqueId;
+        if (uniqueId == null) {
+            uniqueId = hivemqId + UNIQUE_ID_SEPARATOR + publishId;
+            this.uniqueId = uniqueId;
+        }
+        return uniqueId;
+    }
+
+    /**
+     * @return the encoding of the subscriber independent part of the PUBLISH, shared with all its copies
+     */
+    @NotNull Mqtt5SharedPublishEncoding getSharedEncoding() {
+        Mqtt5SharedPublishEncoding sharedEncoding = this.sharedEncoding;
+        if (sharedEncoding == null) {
+            sharedEncoding = new Mqtt5SharedPublishEncoding();
+            this.sharedEncoding = sharedEncoding;
+        }
+        return sharedEncoding;
+    }
+
+    /**
+     * The estimated size of the values of the core in bytes. The size is accounted by every PUBLISH that references
+     * the core, so the memory limits of the queues stay independent of how many copies share a core.
+     *
+     * @return the estimated size of the values of the core in bytes
+     */
+    int getEstimatedSizeInMemory() {
+        int size = sizeInMemory;
+        if (size != SIZE_NOT_CALCULATED) {
+            return size;
+        }
+        size = ObjectMemoryEstimation.longSize(); // timestamp
+        size += ObjectMemoryEstimation.stringSize(topic);
+        size += ObjectMemoryEstimation.byteArraySize(correlationData);
+        size += ObjectMemoryEstimation.stringSize(responseTopic);
+        // the unique id is accounted as if it was built, without building it
+        size += ObjectMemoryEstimation.STRING_OVERHEAD + uniqueIdLength() * ObjectMemoryEstimation.CHAR_SIZE;
+        size += ObjectMemoryEstimation.stringSize(hivemqId);
+        size += ObjectMemoryEstimation.stringSize(contentType);
+        size += ObjectMemoryEstimation.longSize(); // publishId
+        size += ObjectMemoryEstimation.enumSize(); // payloadFormatIndicator
+        sizeInMemory = size;
+        return size;
+    }
+
+    private int uniqueIdLength() {
+        int digits = 1;
+        for (long value = publishId; value >= 10 || value <= -10; value /= 10) {
+            digits++;
+        }
+        return hivemqId.length() + UNIQUE_ID_SEPARATOR.length() + (publishId < 0 ? digits + 1 : digits);
+    }
+}
@@ -25,11 +25,13 @@ import com.hivemq.bootstrap.ioc.lazysingleton.LazySingleton;
 import com.hivemq.extension.sdk.api.annotations.NotNull;
 import com.hivemq.extension.sdk.api.annotations.Nullable;
 import com.hivemq.mqtt.handler.publish.PublishReturnCode;
+import com.hivemq.mqtt.message.QoS;
 import com.hivemq.mqtt.message.publish.PUBLISH;
 import com.hivemq.mqtt.topic.SubscriberWithIdentifiers;
 import com.hivemq.mqtt.topic.tree.LocalTopicTree;
 import com.hivemq.mqtt.topic.tree.TopicSubscribers;
 import com.hivemq.persistence.RetainedMessage;
+import com.hivemq.persistence.local.xodus.XodusDurableSync;
 import com.hivemq.persistence.retained.RetainedMessagePersistence;
 import com.hivemq.util.Exceptions;
 import org.slf4j.Logger;
@@ -55,15 +57,18 @@ public class InternalPublishServiceImpl implements InternalPublishService {
     private final RetainedMessagePersistence retainedMessagePersistence;
     private final LocalTopicTree topicTree;
     private final PublishDistributor publishDistributor;
+    private final XodusDurableSync durableSync;
     private final boolean acknowledgeAfterPersist;
     @Inject
     public InternalPublishServiceImpl(
             final RetainedMessagePersistence retainedMessagePersistence,
             final LocalTopicTree topicTree,
-            final PublishDistributor publishDistributor) {
+            final PublishDistributor publishDistributor,
+            final XodusDurableSync durableSync) {
         this.retainedMessagePersistence = retainedMessagePersistence;
         this.topicTree = topicTree;
         this.publishDistributor = publishDistributor;
+        this.durableSync = durableSync;
         this.acknowledgeAfterPersist = ACKNOWLEDGE_INCOMING_PUBLISH_AFTER_PERSISTING_ENABLED.get();
     }
 
@@ -107,7 +112,12 @@ public class InternalPublishServiceImpl implements InternalPublishService {
 
                     @Override
                     public void onSuccess(final @Nullable Void aVoid) {
-                        persistSettableFuture.set(null);
+                        completeAfterSync(persistSettableFuture,
+                                null,
+                                null,
+                                "Unable to sync retained message for topic " + publish.getTopic() +
+                                        " with message id " + publish.getUniqueId() + " to disk.",
+                                executorService);
                     }
 
                     @Override
@@ -180,8 +190,18 @@ public class InternalPublishServiceImpl implements InternalPublishService {
 
                     @Override
                     public void onSuccess(final @Nullable List<Void> result) {
-                        if (returnCodeFuture != null) {
+                        if (returnCodeFuture == null) {
+                            return;
+                        }
+                        if (publish.getQoS() == QoS.AT_MOST_ONCE) {
                             returnCodeFuture.set(PublishReturnCode.DELIVERED);
+                        } else {
+                            completeAfterSync(returnCodeFuture,
+                                    PublishReturnCode.DELIVERED,
+                                    PublishReturnCode.FAILED,
+                                    "Unable to sync message for topic " + publish.getTopic() + " with message id " +
+                                            publish.getUniqueId() + " to disk.",
+                                    executorService);
                         }
                     }
 
@@ -198,4 +218,38 @@ public class InternalPublishServiceImpl implements InternalPublishService {
                 },
                 executorService);
     }
+
+    /**
+     * Completes the future once the persisted writes are synced to disk if the durable group commit is enabled,
+     * otherwise immediately. A failed sync is logged and completes the future with the failed value, or with the
+     * exception of the sync if there is no failed value.
+     */
+    private <T> void completeAfterSync(
+            final @NotNull SettableFuture<T> future,
+            final @Nullable T value,
+            final @Nullable T failedValue,
+            final @NotNull String failureText,
+            final @NotNull ExecutorService executorService) {
+        if (!durableSync.isEnabled()) {
+            future.set(value);
+            return;
+        }
+        Futures.addCallback(durableSync.awaitSync(), new FutureCallback<>() {
+
+            @Override
+            public void onSuccess(final @Nullable Void result) {
+                future.set(value);
+            }
+
+            @Override
+            public void onFailure(final @NotNull Throwable throwable) {
+                Exceptions.rethrowError(failureText, throwable);
+                if (failedValue != null) {
+                    future.set(failedValue);
+                } else {
+                    future.setException(throwable);
+                }
+            }
+        }, executorService);
+    }
 }
@@ -32,8 +32,8 @@ import com.hivemq.mqtt.message.publish.PUBLISHFactory;
 import com.hivemq.mqtt.topic.SubscriberWithIdentifiers;
 import com.hivemq.persistence.SingleWriterService;
 import com.hivemq.persistence.clientqueue.ClientQueuePersistence;
-import com.hivemq.persistence.clientsession.ClientSession;
 import com.hivemq.persistence.clientsession.ClientSessionPersistence;
+import com.hivemq.persistence.clientsession.ClientSessionState;
 import com.hivemq.persistence.util.FutureUtils;
 
 import javax.inject.Inject;
@@ -144,13 +144,14 @@ public class PublishDistributorImpl implements PublishDistributor {
                     null);
         }
         final boolean qos0Message = Math.min(subscriptionQos, publish.getQoS().getQosNumber()) == 0;
-        final ClientSession clientSession = clientSessionPersistence.getSession(client, false);
-        final boolean clientConnected = clientSession != null && clientSession.isConnected();
+        // the state index is maintained by the single writer, so this does not read the persistent store
+        final ClientSessionState sessionState = clientSessionPersistence.getSessionState(client);
+        final boolean clientConnected = sessionState != null && sessionState.isConnected();
         if ((qos0Message && !clientConnected)) {
             return Futures.immediateFuture(NOT_CONNECTED);
         }
         // no session present or session already expired
-        if (clientSession == null) {
+        if (sessionState == null) {
             return Futures.immediateFuture(NOT_CONNECTED);
         }
         return queuePublish(client,
@@ -159,7 +160,7 @@ public class PublishDistributorImpl implements PublishDistributor {
                 false,
                 retainAsPublished,
                 subscriptionIdentifier,
-                clientSession.getQueueLimit());
+                sessionState.getQueueLimitOrNull());
     }
 
     private @NotNull SettableFuture<PublishStatus> queuePublish(
@@ -54,13 +54,22 @@ public interface PublishPollService {
     void pollInflightMessages(@NotNull String client, @NotNull Channel channel);
 
     /**
-     * Find all connected clients that share the given shared subscription poll publishes from the shared subscription
-     * queue for each of them.
+     * Select idle connected clients that share the given shared subscription and poll publishes from the shared
+     * subscription queue for each of them.
      *
      * @param sharedSubscription of the queue for which messages are polled
      */
     void pollSharedPublishes(@NotNull String sharedSubscription);
 
+    /**
+     * Selects idle connected subscribers of the given shared subscription and polls publishes from the shared
+     * subscription queue for them.
+     *
+     * @param sharedSubscription of the queue for which messages are polled
+     * @param topicHash          the hash of the topic of the message that became available
+     */
+    void pollSharedPublishes(@NotNull String sharedSubscription, int topicHash);
+
     /**
      * Poll publishes from the shared subscription queue for a given client.
      *
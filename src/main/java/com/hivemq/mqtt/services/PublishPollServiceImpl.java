@@ -58,7 +58,6 @@ import javax.inject.Inject;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.ExecutionException;
-import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import static com.google.common.base.Preconditions.checkNotNull;
@@ -74,6 +73,7 @@ public class PublishPollServiceImpl implements PublishPollService {
     private final @NotNull SharedSubscriptionService sharedSubscriptionService;
     private final @NotNull SingleWriterService singleWriterService;
     private final @NotNull ClientSessionSubscriptionPersistence clientSessionSubscriptionPersistence;
+    private final @NotNull SharedSubscriptionDispatcher sharedSubscriptionDispatcher;
     @Inject
     public PublishPollServiceImpl(
             final @NotNull ClientQueuePersistence clientQueuePersistence,
@@ -81,13 +81,15 @@ public class PublishPollServiceImpl implements PublishPollService {
             final @NotNull MessageDroppedService messageDroppedService,
             final @NotNull SharedSubscriptionService sharedSubscriptionService,
             final @NotNull SingleWriterService singleWriterService,
-            final @NotNull ClientSessionSubscriptionPersistence clientSessionSubscriptionPersistence) {
+            final @NotNull ClientSessionSubscriptionPersistence clientSessionSubscriptionPersistence,
+            final @NotNull SharedSubscriptionDispatcher sharedSubscriptionDispatcher) {
         this.clientQueuePersistence = clientQueuePersistence;
         this.connectionPersistence = connectionPersistence;
         this.messageDroppedService = messageDroppedService;
         this.sharedSubscriptionService = sharedSubscriptionService;
         this.singleWriterService = singleWriterService;
         this.clientSessionSubscriptionPersistence = clientSessionSubscriptionPersistence;
+        this.sharedSubscriptionDispatcher = sharedSubscriptionDispatcher;
     }
 
     @Override
@@ -112,6 +114,7 @@ public class PublishPollServiceImpl implements PublishPollService {
                 }
                 for (final Topic topic : topics) {
                     final String sharedSubscriptions = SharedSubscriptionService.removePrefix(topic.getTopic());
+                    sharedSubscriptionDispatcher.memberAvailable(clientConnection, sharedSubscriptions);
                     pollSharedPublishesForClient(client,
                             sharedSubscriptions,
                             topic.getQoS().getQosNumber(),
@@ -268,28 +271,24 @@ public class PublishPollServiceImpl implements PublishPollService {
 
     @Override
     public void pollSharedPublishes(final @NotNull String sharedSubscription) {
-        final List<SubscriberWithQoS> subscribers =
-                new ArrayList<>(sharedSubscriptionService.getSharedSubscriber(sharedSubscription));
-        // Don't shuffle the whole Collection at once here, as this is CPU-intensive for many subscribers.
-        // Instead, use an approach similar to what Collections.shuffle does: Iterate backwards, randomly choose
-        // an element below the back index, and swap it with the element at the back index if it can't be used.
-        for (int backIndex = subscribers.size(); backIndex > 0; backIndex--) {
-            final int chosenIndex = ThreadLocalRandom.current().nextInt(backIndex);
-            final SubscriberWithQoS subscriber = subscribers.get(chosenIndex);
-            final ClientConnection clientConnection = connectionPersistence.get(subscriber.getSubscriber());
-            if (clientConnection == null || !clientConnection.getChannel().isActive()) {
-                // The subscriber is disconnected.
-                // Swap it with the back index so that any other subscriber could be chosen next.
-                final SubscriberWithQoS backSubscriber = subscribers.get(backIndex - 1);
-                subscribers.set(chosenIndex, backSubscriber);
-                continue;
-            }
+        // Without a topic the sticky strategy keeps all messages of the shared subscription at the same member.
+        pollSharedPublishes(sharedSubscription, sharedSubscription.hashCode());
+    }
+
+    @Override
+    public void pollSharedPublishes(final @NotNull String sharedSubscription, final int topicHash) {
+        // The dispatcher only returns connected, writable and idle members, so no connection lookups are needed here.
+        // Every returned member polls, the first member of the strategy reads the shared queue first.
+        final List<SharedSubscriptionDispatcher.Member> members =
+                sharedSubscriptionDispatcher.select(sharedSubscription, topicHash);
+        for (final SharedSubscriptionDispatcher.Member member : members) {
+            final SubscriberWithQoS subscriber = member.getSubscriber();
             pollSharedPublishesForClient(subscriber.getSubscriber(),
                     sharedSubscription,
                     subscriber.getQos(),
                     subscriber.isRetainAsPublished(),
                     subscriber.getSubscriptionIdentifier(),
-                    clientConnection.getChannel());
+                    member.getClientConnection().getChannel());
         }
     }
 
@@ -371,6 +370,7 @@ public class PublishPollServiceImpl implements PublishPollService {
                             new PublishWithFuture(publishToSend, publishFuture, false);
                     publishesToSend.add(publishWithFuture);
                 }
+                sharedSubscriptionDispatcher.messagesDispatched(sharedSubscription, publishesToSend.size());
                 clientConnection.getPublishFlushHandler().sendPublishes(publishesToSend);
             }
 
@@ -0,0 +1,84 @@
+/*
+ * Copyright 2019-present HiveMQ GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hivemq.mqtt.services;
+
+import com.hivemq.extension.sdk.api.annotations.NotNull;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Decides in which order the {@link SharedSubscriptionDispatcher} hands a newly available message to the members of a
+ * shared subscription group. A strategy only chooses the member that is asked first, the dispatcher then walks the
+ * group from there and asks every idle member in turn, so a busy first choice never holds back the message. Every
+ * strategy chooses in constant time, independent of the group size.
+ */
+public enum SharedSubscriberSelectionStrategy {
+
+    /**
+     * Cycles through the members of the group, every message starts at the next member.
+     */
+    ROUND_ROBIN {
+        @Override
+        int first(
+                final @NotNull SharedSubscriptionDispatcher.Member[] members,
+                final @NotNull AtomicInteger cursor,
+                final int topicHash) {
+            return Math.floorMod(cursor.getAndIncrement(), members.length);
+        }
+    },
+
+    /**
+     * Starts at the member with fewer in-flight messages out of two randomly chosen members ("power of two choices").
+     */
+    LEAST_IN_FLIGHT {
+        @Override
+        int first(
+                final @NotNull SharedSubscriptionDispatcher.Member[] members,
+                final @NotNull AtomicInteger cursor,
+                final int topicHash) {
+            final ThreadLocalRandom random = ThreadLocalRandom.current();
+            final int first = random.nextInt(members.length);
+            final int second = random.nextInt(members.length);
+            return members[first].inFlightMessages() <= members[second].inFlightMessages() ? first : second;
+        }
+    },
+
+    /**
+     * Maps the topic of the message to a fixed member as long as the group does not change. If that member is busy,
+     * the members after it are asked.
+     */
+    STICKY_TOPIC_HASH {
+        @Override
+        int first(
+                final @NotNull SharedSubscriptionDispatcher.Member[] members,
+                final @NotNull AtomicInteger cursor,
+                final int topicHash) {
+            return Math.floorMod(topicHash, members.length);
+        }
+    };
+
+    /**
+     * @param  members   the live members of the group, never empty
+     * @param  cursor    the round-robin cursor of the group
+     * @param  topicHash the hash of the topic of the message that became available
+     * @return           the index of the member that is asked first
+     */
+    abstract int first(
+            @NotNull SharedSubscriptionDispatcher.Member[] members,
+            @NotNull AtomicInteger cursor,
+            int topicHash);
+}
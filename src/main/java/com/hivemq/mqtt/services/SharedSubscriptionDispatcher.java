@@ -0,0 +1,400 @@
+/*
+ * Copyright 2019-present HiveMQ GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hivemq.mqtt.services;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.hivemq.bootstrap.ClientConnection;
+import com.hivemq.bootstrap.ioc.lazysingleton.LazySingleton;
+import com.hivemq.configuration.service.InternalConfigurations;
+import com.hivemq.extension.sdk.api.annotations.NotNull;
+import com.hivemq.extension.sdk.api.annotations.Nullable;
+import com.hivemq.extension.sdk.api.annotations.ThreadSafe;
+import com.hivemq.metrics.MetricsHolder;
+import com.hivemq.mqtt.topic.SubscriberWithQoS;
+import com.hivemq.persistence.clientsession.SharedSubscriptionService;
+import com.hivemq.persistence.connection.ConnectionPersistence;
+
+import javax.inject.Inject;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Keeps a live set of connected and writable members for every shared subscription group, so that a subscriber for a
+ * newly available shared message can be selected without copying the subscriber set or looking up the connection of
+ * every subscriber.
+ * <p>
+ * A group is built lazily from the subscribers of the {@link SharedSubscriptionService} and rebuilt whenever the
+ * service returns a different subscriber set (subscribe, unsubscribe or cache expiry). In between, members are added
+ * when a connected client polls its shared subscriptions and removed when the client disconnects. The writability of
+ * the members is updated by the {@link com.hivemq.mqtt.handler.publish.PublishFlushHandler}.
+ */
+@LazySingleton
+@ThreadSafe
+public class SharedSubscriptionDispatcher {
+
+    public static final @NotNull String METRIC_PREFIX = "com.hivemq.messages.shared-subscription.";
+    private static final @NotNull Member[] NO_MEMBERS = new Member[0];
+
+    private final @NotNull SharedSubscriptionService sharedSubscriptionService;
+    private final @NotNull ConnectionPersistence connectionPersistence;
+    private final @NotNull MetricRegistry metricRegistry;
+    private final @NotNull SharedSubscriberSelectionStrategy strategy;
+    private final int maxProbes;
+    private final int maxGroupMetrics;
+    private final @NotNull Map<String, Group> groups = new ConcurrentHashMap<>();
+    private final @NotNull Map<String, Set<String>> groupsByClient = new ConcurrentHashMap<>();
+    // the groups that have registered metrics, the metrics are kept when a group is rebuilt
+    private final @NotNull Set<String> groupsWithMetrics = ConcurrentHashMap.newKeySet();
+    @Inject
+    public SharedSubscriptionDispatcher(
+            final @NotNull SharedSubscriptionService sharedSubscriptionService,
+            final @NotNull ConnectionPersistence connectionPersistence,
+            final @NotNull MetricsHolder metricsHolder) {
+        this.sharedSubscriptionService = sharedSubscriptionService;
+        this.connectionPersistence = connectionPersistence;
+        this.metricRegistry = metricsHolder.getMetricRegistry();
+        strategy = InternalConfigurations.SHARED_SUBSCRIPTION_SELECTION_STRATEGY.get();
+        maxProbes = Math.max(1, InternalConfigurations.SHARED_SUBSCRIPTION_DISPATCH_MAX_PROBES.get());
+        maxGroupMetrics = InternalConfigurations.SHARED_SUBSCRIPTION_DISPATCH_MAX_GROUP_METRICS.get();
+    }
+
+    /**
+     * Selects the members of a shared subscription group that poll a newly available message. Only connected, writable
+     * and idle members are selected, the configured {@link SharedSubscriberSelectionStrategy} decides which of them
+     * comes first. The amount of probed members is bounded, busy members poll the shared queue again as soon as their
+     * in-flight messages are acknowledged.
+     *
+     * @param  sharedSubscription the share name and the topic filter separated by a '/'
+     * @param  topicHash          the hash of the topic of the available message
+     * @return                    the selected members in the order of the strategy, empty if no member can take the
+     *                            message right now
+     */
+    public @NotNull List<Member> select(final @NotNull String sharedSubscription, final int topicHash) {
+        final Group group = currentGroup(sharedSubscription);
+        if (group == null) {
+            return List.of();
+        }
+        final Member[] members = group.members;
+        if (members.length == 0) {
+            return List.of();
+        }
+        final int first = strategy.first(members, group.cursor, topicHash);
+        final int probes = Math.min(maxProbes, members.length);
+        final List<Member> selected = new ArrayList<>(probes);
+        for (int i = 0; i < probes; i++) {
+            final Member member = members[(first + i) % members.length];
+            if (member.isIdle()) {
+                selected.add(member);
+            }
+        }
+        if (!selected.isEmpty()) {
+            group.selections.mark(selected.size());
+        }
+        return selected;
+    }
+
+    /**
+     * Adds a connected client to the live set of a group. Called when the client polls its shared subscriptions,
+     * which happens after connecting and whenever its in-flight window is drained.
+     *
+     * @param clientConnection   the connection of the client
+     * @param sharedSubscription the share name and the topic filter separated by a '/'
+     */
+    public void memberAvailable(
+            final @NotNull ClientConnection clientConnection,
+            final @NotNull String sharedSubscription) {
+        final String clientId = clientConnection.getClientId();
+        final Group group = groups.get(sharedSubscription);
+        if (clientId == null || group == null) {
+            // the group is built with all connected subscribers on the next selection
+            return;
+        }
+        final SubscriberWithQoS subscriber = group.subscribersById.get(clientId);
+        if (subscriber == null) {
+            // the subscriber set changed, the group is rebuilt on the next selection
+            return;
+        }
+        if (group.add(new Member(subscriber, clientConnection))) {
+            groupsByClient.computeIfAbsent(clientId, id -> ConcurrentHashMap.newKeySet()).add(sharedSubscription);
+        }
+    }
+
+    /**
+     * Removes a disconnected client from the live sets of all of its groups. Members that already belong to a newer
+     * connection of the same client (session takeover) are kept.
+     *
+     * @param clientConnection the connection of the disconnected client
+     */
+    public void clientDisconnected(final @NotNull ClientConnection clientConnection) {
+        final String clientId = clientConnection.getClientId();
+        if (clientId == null) {
+            return;
+        }
+        final Set<String> sharedSubscriptions = groupsByClient.get(clientId);
+        if (sharedSubscriptions == null) {
+            return;
+        }
+        for (final String sharedSubscription : sharedSubscriptions) {
+            final Group group = groups.get(sharedSubscription);
+            if (group != null) {
+                removeMember(group, clientId, clientConnection);
+            }
+        }
+    }
+
+    /**
+     * Updates the writability of a client in all of its groups. Members that are not writable are not selected.
+     *
+     * @param clientConnection the connection of the client
+     * @param writable         whether the channel of the client is writable
+     */
+    public void writabilityChanged(final @NotNull ClientConnection clientConnection, final boolean writable) {
+        final String clientId = clientConnection.getClientId();
+        if (clientId == null) {
+            return;
+        }
+        final Set<String> sharedSubscriptions = groupsByClient.get(clientId);
+        if (sharedSubscriptions == null) {
+            return;
+        }
+        for (final String sharedSubscription : sharedSubscriptions) {
+            final Group group = groups.get(sharedSubscription);
+            if (group == null) {
+                continue;
+            }
+            final Member member = group.member(clientId);
+            if (member != null && member.clientConnection == clientConnection) {
+                member.writable = writable;
+            }
+        }
+    }
+
+    /**
+     * Records the amount of messages that were sent to a member of a group.
+     *
+     * @param sharedSubscription the share name and the topic filter separated by a '/'
+     * @param count              the amount of sent messages
+     */
+    public void messagesDispatched(final @NotNull String sharedSubscription, final int count) {
+        final Group group = groups.get(sharedSubscription);
+        if (group != null) {
+            group.messages.mark(count);
+        }
+    }
+
+    private @Nullable Group currentGroup(final @NotNull String sharedSubscription) {
+        final ImmutableSet<SubscriberWithQoS> subscribers =
+                sharedSubscriptionService.getSharedSubscriber(sharedSubscription);
+        final Group group = groups.get(sharedSubscription);
+        // the subscriber set instance only changes when the cache of the shared subscription service was invalidated
+        // or expired, so an identity check is sufficient here
+        if (group != null && group.subscribers == subscribers) {
+            return group;
+        }
+        if (subscribers.isEmpty()) {
+            if (group != null && groups.remove(sharedSubscription, group)) {
+                unregister(group);
+                removeMetrics(sharedSubscription);
+            }
+            return null;
+        }
+        return groups.compute(sharedSubscription, (key, existing) -> {
+            if (existing != null && existing.subscribers == subscribers) {
+                return existing;
+            }
+            if (existing != null) {
+                unregister(existing);
+            }
+            return buildGroup(key, subscribers);
+        });
+    }
+
+    private @NotNull Group buildGroup(
+            final @NotNull String sharedSubscription,
+            final @NotNull ImmutableSet<SubscriberWithQoS> subscribers) {
+        final ImmutableMap.Builder<String, SubscriberWithQoS> subscribersById = ImmutableMap.builder();
+        for (final SubscriberWithQoS subscriber : subscribers) {
+            subscribersById.put(subscriber.getSubscriber(), subscriber);
+        }
+        final Group group = new Group(sharedSubscription, subscribers, subscribersById.buildKeepingLast());
+        for (final SubscriberWithQoS subscriber : subscribers) {
+            final ClientConnection clientConnection = connectionPersistence.get(subscriber.getSubscriber());
+            if (clientConnection == null || !clientConnection.getChannel().isActive()) {
+                continue;
+            }
+            group.add(new Member(subscriber, clientConnection));
+            groupsByClient.computeIfAbsent(subscriber.getSubscriber(), id -> ConcurrentHashMap.newKeySet())
+                    .add(sharedSubscription);
+        }
+        return group;
+    }
+
+    private void removeMember(
+            final @NotNull Group group,
+            final @NotNull String clientId,
+            final @NotNull ClientConnection clientConnection) {
+        if (!group.remove(clientId, clientConnection)) {
+            return;
+        }
+        groupsByClient.computeIfPresent(clientId, (id, sharedSubscriptions) -> {
+            sharedSubscriptions.remove(group.sharedSubscription);
+            return sharedSubscriptions.isEmpty() ? null : sharedSubscriptions;
+        });
+    }
+
+    private static @NotNull String metricName(final @NotNull String sharedSubscription, final @NotNull String name) {
+        return METRIC_PREFIX + sharedSubscription + "." + name;
+    }
+
+    private @NotNull Meter meter(final @NotNull String sharedSubscription, final @NotNull String name) {
+        if (groupsWithMetrics.contains(sharedSubscription)) {
+            return metricRegistry.meter(metricName(sharedSubscription, name));
+        }
+        // the amount of groups is not bounded, groups beyond the limit are still counted but not reported
+        return new Meter();
+    }
+
+    private void registerMetrics(final @NotNull String sharedSubscription) {
+        if (groupsWithMetrics.contains(sharedSubscription)) {
+            return;
+        }
+        synchronized (groupsWithMetrics) {
+            if (groupsWithMetrics.size() >= maxGroupMetrics || !groupsWithMetrics.add(sharedSubscription)) {
+                return;
+            }
+        }
+        metricRegistry.gauge(metricName(sharedSubscription, "members.live"), () -> (Gauge<Integer>) () -> {
+            // the gauge outlives rebuilds of the group, so it always reads the current group
+            final Group current = groups.get(sharedSubscription);
+            return current == null ? 0 : current.members.length;
+        });
+    }
+
+    private void removeMetrics(final @NotNull String sharedSubscription) {
+        if (!groupsWithMetrics.remove(sharedSubscription)) {
+            return;
+        }
+        metricRegistry.remove(metricName(sharedSubscription, "members.live"));
+        metricRegistry.remove(metricName(sharedSubscription, "messages.dispatched"));
+        metricRegistry.remove(metricName(sharedSubscription, "members.selected"));
+    }
+
+    private void unregister(final @NotNull Group group) {
+        for (final Member member : group.members) {
+            groupsByClient.computeIfPresent(member.getClientId(), (id, sharedSubscriptions) -> {
+                sharedSubscriptions.remove(group.sharedSubscription);
+                return sharedSubscriptions.isEmpty() ? null : sharedSubscriptions;
+            });
+        }
+    }
+
+    /**
+     * A connected subscriber of a shared subscription group.
+     */
+    public static class Member {
+
+        private final @NotNull SubscriberWithQoS subscriber;
+        private final @NotNull ClientConnection clientConnection;
+        private volatile boolean writable;
+        Member(final @NotNull SubscriberWithQoS subscriber, final @NotNull ClientConnection clientConnection) {
+            this.subscriber = subscriber;
+            this.clientConnection = clientConnection;
+            writable = clientConnection.getChannel().isWritable();
+        }
+
+        public @NotNull String getClientId() {
+            return subscriber.getSubscriber();
+        }
+
+        public @NotNull SubscriberWithQoS getSubscriber() {
+            return subscriber;
+        }
+
+        public @NotNull ClientConnection getClientConnection() {
+            return clientConnection;
+        }
+
+        /**
+         * @return whether the member is connected, writable and has no messages in-flight
+         */
+        boolean isIdle() {
+            // the disconnect notification may not have been processed yet
+            return writable && clientConnection.getChannel().isActive() && !clientConnection.isMessagesInFlight();
+        }
+
+        int inFlightMessages() {
+            final AtomicInteger inFlightMessageCount = clientConnection.getInFlightMessageCount();
+            return inFlightMessageCount == null ? 0 : inFlightMessageCount.get();
+        }
+    }
+
+    private class Group {
+
+        private final @NotNull String sharedSubscription;
+        private final @NotNull ImmutableSet<SubscriberWithQoS> subscribers;
+        private final @NotNull ImmutableMap<String, SubscriberWithQoS> subscribersById;
+        private final @NotNull Meter messages;
+        private final @NotNull Meter selections;
+        private final @NotNull AtomicInteger cursor = new AtomicInteger();
+        // guarded by this, the members array is replaced on every change so that selections don't need to lock
+        private final @NotNull Map<String, Member> membersById = new HashMap<>();
+        private volatile @NotNull Member[] members = NO_MEMBERS;
+        Group(
+                final @NotNull String sharedSubscription,
+                final @NotNull ImmutableSet<SubscriberWithQoS> subscribers,
+                final @NotNull ImmutableMap<String, SubscriberWithQoS> subscribersById) {
+            this.sharedSubscription = sharedSubscription;
+            this.subscribers = subscribers;
+            this.subscribersById = subscribersById;
+            registerMetrics(sharedSubscription);
+            messages = meter(sharedSubscription, "messages.dispatched");
+            selections = meter(sharedSubscription, "members.selected");
+        }
+
+        synchronized boolean add(final @NotNull Member member) {
+            final Member existing = membersById.get(member.getClientId());
+            if (existing != null && existing.clientConnection == member.clientConnection) {
+                return false;
+            }
+            membersById.put(member.getClientId(), member);
+            members = membersById.values().toArray(NO_MEMBERS);
+            return true;
+        }
+
+        synchronized boolean remove(final @NotNull String clientId, final @NotNull ClientConnection clientConnection) {
+            final Member member = membersById.get(clientId);
+            if (member == null || member.clientConnection != clientConnection) {
+                return false;
+            }
+            membersById.remove(clientId);
+            members = membersById.values().toArray(NO_MEMBERS);
+            return true;
+        }
+
+        synchronized @Nullable Member member(final @NotNull String clientId) {
+            return membersById.get(clientId);
+        }
+    }
+}
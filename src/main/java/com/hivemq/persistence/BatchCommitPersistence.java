@@ -0,0 +1,36 @@
+/*
+ * Copyright 2019-present HiveMQ GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hivemq.persistence;
+
+import com.hivemq.annotations.ExecuteInSingleWriter;
+import com.hivemq.extension.sdk.api.annotations.NotNull;
+
+/**
+ * A local persistence that is able to apply the writes of multiple single writer tasks of one bucket in one commit.
+ */
+public interface BatchCommitPersistence {
+
+    /**
+     * Executes the given writes in one transaction of the bucket. Every write of this persistence to the same bucket
+     * that happens inside the runnable joins this transaction, reads of the calling thread see the uncommitted writes.
+     * If the runnable throws, nothing is committed.
+     *
+     * @param bucketIndex the index of the bucket.
+     * @param writes      the writes to commit together.
+     */
+    @ExecuteInSingleWriter
+    void executeInBatch(int bucketIndex, @NotNull Runnable writes);
+}
@@ -0,0 +1,139 @@
+/*
+ * Copyright 2019-present HiveMQ GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hivemq.persistence;
+
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import com.hivemq.configuration.service.InternalConfigurations;
+import com.hivemq.extension.sdk.api.annotations.NotNull;
+import com.hivemq.extension.sdk.api.annotations.Nullable;
+import com.hivemq.extension.sdk.api.annotations.ThreadSafe;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Coalesces single writer tasks of one persistence into one commit per bucket.
+ * <p>
+ * Tasks that are submitted with {@link ProducerQueues#submit(String, GroupCommit, SingleWriterService.Task)} and
+ * directly follow each other in a single writer queue are executed together, up to {@link #getMaxBatchSize()} tasks.
+ * The tasks of each bucket are applied inside one {@link BatchCommitPersistence#executeInBatch(int, Runnable)} call
+ * and their futures are completed individually after the commit. Tasks are never reordered with other tasks of the
+ * same queue, so a group commit has the same semantics as executing the tasks one after another.
+ * <p>
+ * Coalescing happens when tasks arrive faster than the single writer commits them, for example when many clients
+ * reconnect at once. An idle persistence still commits every task on its own and does not wait for more tasks.
+ * <p>
+ * The tasks of a batch are executed again when the batch fails or its commit is retried. Side effects outside the
+ * persistence must therefore be registered with {@link #afterCommit(int, Runnable)} instead of running in the task.
+ */
+@ThreadSafe
+public class GroupCommit {
+
+    private static final @NotNull Logger log = LoggerFactory.getLogger(GroupCommit.class);
+
+    public static final @NotNull String METRIC_PREFIX = "com.hivemq.persistence.group-commit.";
+
+    private final @Nullable BatchCommitPersistence persistence;
+    private final int maxBatchSize;
+    private final @NotNull Histogram batchSize;
+    private final @NotNull Timer waitTime;
+    private final @NotNull Map<Integer, List<Runnable>> commitActions = new ConcurrentHashMap<>();
+
+    /**
+     * @param name             the name of the persistence, used for the metric names.
+     * @param localPersistence the local persistence the tasks write to. If it is no {@link BatchCommitPersistence}
+     *                         the tasks are executed one by one.
+     * @param metricRegistry   the registry for the batch size and wait time metrics.
+     */
+    public GroupCommit(
+            final @NotNull String name,
+            final @NotNull LocalPersistence localPersistence,
+            final @NotNull MetricRegistry metricRegistry) {
+        persistence = localPersistence instanceof BatchCommitPersistence ?
+                (BatchCommitPersistence) localPersistence :
+                null;
+        maxBatchSize = persistence != null ?
+                Math.max(1, InternalConfigurations.PERSISTENCE_GROUP_COMMIT_MAX_BATCH_SIZE.get()) :
+                1;
+        batchSize = metricRegistry.histogram(METRIC_PREFIX + name + ".batch-size");
+        waitTime = metricRegistry.timer(METRIC_PREFIX + name + ".wait-time");
+    }
+
+    public int getMaxBatchSize() {
+        return maxBatchSize;
+    }
+
+    /**
+     * Runs the action once the writes of the calling task are committed. Outside a batch the writes of a task are
+     * already committed when the task continues, so the action runs immediately.
+     * <p>
+     * Must be called from the single writer thread of the bucket.
+     *
+     * @param bucketIndex the bucket of the calling task.
+     * @param action      the side effect of the task.
+     */
+    public void afterCommit(final int bucketIndex, final @NotNull Runnable action) {
+        final List<Runnable> actions = commitActions.get(bucketIndex);
+        if (actions == null) {
+            action.run();
+        } else {
+            actions.add(action);
+        }
+    }
+
+    void executeInBatch(final int bucketIndex, final @NotNull Runnable writes) {
+        final List<Runnable> actions = new ArrayList<>();
+        commitActions.put(bucketIndex, actions);
+        try {
+            final Runnable attempt = () -> {
+                // the actions of a reverted attempt are registered again by the next attempt
+                actions.clear();
+                writes.run();
+            };
+            if (persistence == null) {
+                attempt.run();
+            } else {
+                persistence.executeInBatch(bucketIndex, attempt);
+            }
+        } finally {
+            commitActions.remove(bucketIndex);
+        }
+        for (final Runnable action : actions) {
+            try {
+                action.run();
+            } catch (final Throwable e) {
+                // the batch is committed, a failing action must not make the tasks run again
+                log.error("Exception in commit action of a group commit", e);
+            }
+        }
+    }
+
+    /**
+     * @param size          the amount of tasks that were committed together.
+     * @param waitTimeNanos the time the oldest task of the batch waited in the queue.
+     */
+    void recordBatch(final int size, final long waitTimeNanos) {
+        batchSize.update(size);
+        waitTime.update(waitTimeNanos, TimeUnit.NANOSECONDS);
+    }
+}
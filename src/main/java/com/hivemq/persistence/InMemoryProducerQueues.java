@@ -96,6 +96,14 @@ public class InMemoryProducerQueues implements ProducerQueues {
         return submitInternal(bucketIndex, task, false);
     }
 
+    public <R> @NotNull ListenableFuture<R> submit(
+            final @NotNull String key,
+            final @NotNull GroupCommit groupCommit,
+            final @NotNull Task<R> task) {
+        // in-memory persistences do not benefit from group commits, the tasks are executed one after another
+        return submit(key, task);
+    }
+
     private <R> @Nullable ListenableFuture<
             R> submitInternal(final int bucketIndex, final @NotNull Task<R> task, final boolean ignoreShutdown) {
         if (!ignoreShutdown && shutdown.get() && System.currentTimeMillis() - shutdownStartTime > shutdownGracePeriod) {
@@ -87,6 +87,12 @@ public class InMemorySingleWriter implements SingleWriterService {
         return persistenceBucketCount;
     }
 
+    @Override
+    public long getPendingTaskCount() {
+        // tasks are executed by the submitting thread, there is no backlog
+        return 0;
+    }
+
     public void stop() {
         if (log.isTraceEnabled()) {
             log.trace("Shutting down single writer");
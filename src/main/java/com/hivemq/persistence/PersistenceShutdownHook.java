@@ -21,12 +21,15 @@ import com.google.common.util.concurrent.ListeningExecutorService;
 import com.google.common.util.concurrent.ListeningScheduledExecutorService;
 import com.google.inject.Inject;
 import com.hivemq.common.shutdown.HiveMQShutdownHook;
+import com.hivemq.configuration.service.InternalConfigurations;
+import com.hivemq.configuration.service.PersistenceConfigurationService;
 import com.hivemq.extension.sdk.api.annotations.NotNull;
 import com.hivemq.persistence.clientqueue.ClientQueuePersistence;
 import com.hivemq.persistence.clientsession.ClientSessionPersistence;
 import com.hivemq.persistence.clientsession.ClientSessionSubscriptionPersistence;
 import com.hivemq.persistence.ioc.annotation.PayloadPersistence;
 import com.hivemq.persistence.ioc.annotation.Persistence;
+import com.hivemq.persistence.local.memory.MemoryPersistenceSnapshots;
 import com.hivemq.persistence.payload.PublishPayloadPersistence;
 import com.hivemq.persistence.qos.IncomingMessageFlowPersistence;
 import com.hivemq.persistence.retained.RetainedMessagePersistence;
@@ -34,6 +37,7 @@ import com.hivemq.persistence.util.FutureUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.inject.Provider;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 
@@ -55,6 +59,8 @@ public class PersistenceShutdownHook implements HiveMQShutdownHook {
     private final @NotNull ListeningScheduledExecutorService payloadPersistenceExecutor;
     private final @NotNull SingleWriterService singleWriterService;
     private final @NotNull PublishPayloadPersistence payloadPersistence;
+    private final @NotNull PersistenceConfigurationService persistenceConfigurationService;
+    private final @NotNull Provider<MemoryPersistenceSnapshots> memoryPersistenceSnapshots;
     @Inject
     PersistenceShutdownHook(
             final @NotNull ClientSessionPersistence clientSessionPersistence,
@@ -66,7 +72,9 @@ public class PersistenceShutdownHook implements HiveMQShutdownHook {
             final @NotNull @Persistence ListeningExecutorService persistenceExecutorService,
             final @NotNull @Persistence ListeningScheduledExecutorService persistenceScheduledExecutorService,
             final @NotNull @PayloadPersistence ListeningScheduledExecutorService payloadPersistenceExecutor,
-            final @NotNull SingleWriterService singleWriterService) {
+            final @NotNull SingleWriterService singleWriterService,
+            final @NotNull PersistenceConfigurationService persistenceConfigurationService,
+            final @NotNull Provider<MemoryPersistenceSnapshots> memoryPersistenceSnapshots) {
         this.clientSessionPersistence = clientSessionPersistence;
         this.clientSessionSubscriptionPersistence = clientSessionSubscriptionPersistence;
         this.incomingMessageFlowPersistence = incomingMessageFlowPersistence;
@@ -77,6 +85,8 @@ public class PersistenceShutdownHook implements HiveMQShutdownHook {
         this.payloadPersistenceExecutor = payloadPersistenceExecutor;
         this.singleWriterService = singleWriterService;
         this.payloadPersistence = payloadPersistence;
+        this.persistenceConfigurationService = persistenceConfigurationService;
+        this.memoryPersistenceSnapshots = memoryPersistenceSnapshots;
     }
 
     @Override
@@ -91,6 +101,11 @@ public class PersistenceShutdownHook implements HiveMQShutdownHook {
             log.trace("Shutting down persistent stores");
         }
         payloadPersistenceExecutor.shutdown();
+        if (persistenceConfigurationService.getMode() == PersistenceConfigurationService.PersistenceMode.IN_MEMORY &&
+                InternalConfigurations.MEMORY_PERSISTENCE_SNAPSHOT_ENABLED.get()) {
+            // the in-memory persistences are gone after the closeDB below
+            memoryPersistenceSnapshots.get().write(singleWriterService);
+        }
         final ImmutableList.Builder<ListenableFuture<Void>> builder = ImmutableList.builder();
         incomingMessageFlowPersistence.closeDB();
         builder.add(clientSessionPersistence.closeDB());
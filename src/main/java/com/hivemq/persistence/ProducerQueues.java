@@ -30,6 +30,15 @@ public interface ProducerQueues {
 
     <R> @NotNull ListenableFuture<R> submit(int bucketIndex, @NotNull SingleWriterServiceImpl.Task<R> task);
 
+    /**
+     * Submits a write task that may be committed together with the tasks of the same {@link GroupCommit} that
+     * directly follow it in the queue.
+     */
+    <R> @NotNull ListenableFuture<R> submit(
+            @NotNull String key,
+            @NotNull GroupCommit groupCommit,
+            @NotNull SingleWriterServiceImpl.Task<R> task);
+
     @NotNull <R> List<ListenableFuture<R>> submitToAllBucketsParallel(@NotNull SingleWriterService.Task<R> task);
 
     @NotNull <R> List<ListenableFuture<R>> submitToAllBucketsSequential(@NotNull SingleWriterService.Task<R> task);
@@ -28,7 +28,10 @@ import com.hivemq.extension.sdk.api.annotations.Nullable;
 import com.hivemq.persistence.local.xodus.bucket.BucketUtils;
 import com.hivemq.util.ThreadFactoryUtil;
 
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Queue;
 import java.util.SplittableRandom;
 import java.util.concurrent.ConcurrentLinkedQueue;
@@ -95,8 +98,24 @@ public class ProducerQueuesImpl implements ProducerQueues {
         return submitInternal(bucketIndex, task, false);
     }
 
+    @NotNull public <R> ListenableFuture<R> submit(
+            @NotNull final String key,
+            @NotNull final GroupCommit groupCommit,
+            @NotNull final Task<R> task) {
+        // noinspection ConstantConditions (futuer is never null if the callbacks are null)
+        return submitInternal(getBucket(key), task, false, groupCommit);
+    }
+
     @Nullable public <R> ListenableFuture<
             R> submitInternal(final int bucketIndex, @NotNull final Task<R> task, final boolean ignoreShutdown) {
+        return submitInternal(bucketIndex, task, ignoreShutdown, null);
+    }
+
+    private @Nullable <R> ListenableFuture<R> submitInternal(
+            final int bucketIndex,
+            final @NotNull Task<R> task,
+            final boolean ignoreShutdown,
+            final @Nullable GroupCommit groupCommit) {
         if (!ignoreShutdown && shutdown.get() &&
                 System.currentTimeMillis() - shutdownStartTime > singleWriterServiceImpl.getShutdownGracePeriod()) {
             return SettableFuture.create(); // Future will never return since we are shutting down.
@@ -104,7 +123,7 @@ public class ProducerQueuesImpl implements ProducerQueues {
         final int queueIndex = bucketIndex / bucketsPerQueue;
         final Queue<TaskWithFuture<?>> queue = queues.get(queueIndex);
         final SettableFuture<R> resultFuture = SettableFuture.create();
-        queue.add(new TaskWithFuture<>(resultFuture, task, bucketIndex));
+        queue.add(new TaskWithFuture<>(resultFuture, task, bucketIndex, groupCommit));
         taskCount.incrementAndGet();
         singleWriterServiceImpl.getGlobalTaskCount().incrementAndGet();
         if (queueTaskCounter.get(queueIndex).getAndIncrement() == 0) {
@@ -188,17 +207,17 @@ public class ProducerQueuesImpl implements ProducerQueues {
                         return;
                     }
                     creditCount++;
-                    try {
-                        final Object result = taskWithFuture.getTask().doTask(taskWithFuture.getBucketIndex());
-                        taskWithFuture.getFuture();
-                        taskWithFuture.getFuture().set(result);
-                    } catch (final Throwable e) {
-                        taskWithFuture.getFuture();
-                        taskWithFuture.getFuture().setException(e);
+                    final GroupCommit groupCommit = taskWithFuture.getGroupCommit();
+                    final int executedTasks;
+                    if (groupCommit != null && groupCommit.getMaxBatchSize() > 1) {
+                        executedTasks = executeGroupCommit(queue, taskWithFuture, groupCommit);
+                    } else {
+                        execute(taskWithFuture);
+                        executedTasks = 1;
                     }
-                    taskCount.decrementAndGet();
-                    singleWriterServiceImpl.getGlobalTaskCount().decrementAndGet();
-                    if (queueTaskCounter.get(queueIndex).decrementAndGet() == 0) {
+                    taskCount.addAndGet(-executedTasks);
+                    singleWriterServiceImpl.getGlobalTaskCount().addAndGet(-executedTasks);
+                    if (queueTaskCounter.get(queueIndex).addAndGet(-executedTasks) == 0) {
                         singleWriterServiceImpl.decrementNonemptyQueueCounter();
                     }
                 }
@@ -208,6 +227,68 @@ public class ProducerQueuesImpl implements ProducerQueues {
         }
     }
 
+    private static void execute(final @NotNull TaskWithFuture taskWithFuture) {
+        try {
+            final Object result = taskWithFuture.getTask().doTask(taskWithFuture.getBucketIndex());
+            taskWithFuture.getFuture().set(result);
+        } catch (final Throwable e) {
+            taskWithFuture.getFuture().setException(e);
+        }
+    }
+
+    /**
+     * Polls the tasks of the same group commit that directly follow the first task and commits them per bucket.
+     * Only tasks that are next to each other in the queue are coalesced, so no task overtakes another task.
+     *
+     * @return the amount of executed tasks.
+     */
+    private static int executeGroupCommit(
+            final @NotNull Queue<TaskWithFuture<?>> queue,
+            final @NotNull TaskWithFuture<?> first,
+            final @NotNull GroupCommit groupCommit) {
+        final Map<Integer, List<TaskWithFuture<?>>> tasksPerBucket = new LinkedHashMap<>();
+        tasksPerBucket.computeIfAbsent(first.getBucketIndex(), bucketIndex -> new ArrayList<>()).add(first);
+        int polledTasks = 1;
+        while (polledTasks < groupCommit.getMaxBatchSize()) {
+            final TaskWithFuture<?> next = queue.peek();
+            if (next == null || next.getGroupCommit() != groupCommit) {
+                break;
+            }
+            queue.poll();
+            polledTasks++;
+            tasksPerBucket.computeIfAbsent(next.getBucketIndex(), bucketIndex -> new ArrayList<>()).add(next);
+        }
+        for (final Map.Entry<Integer, List<TaskWithFuture<?>>> entry : tasksPerBucket.entrySet()) {
+            commit(groupCommit, entry.getKey(), entry.getValue());
+        }
+        return polledTasks;
+    }
+
+    private static void commit(
+            final @NotNull GroupCommit groupCommit,
+            final int bucketIndex,
+            final @NotNull List<TaskWithFuture<?>> tasks) {
+        final Object[] results = new Object[tasks.size()];
+        final long commitStart = System.nanoTime();
+        try {
+            groupCommit.executeInBatch(bucketIndex, () -> {
+                for (int i = 0; i < tasks.size(); i++) {
+                    results[i] = tasks.get(i).getTask().doTask(bucketIndex);
+                }
+            });
+        } catch (final Throwable e) {
+            // Nothing of the batch was committed. The tasks are repeated one by one, so only the failing task fails.
+            for (final TaskWithFuture<?> task : tasks) {
+                execute(task);
+            }
+            return;
+        }
+        groupCommit.recordBatch(tasks.size(), commitStart - tasks.get(0).getSubmitTime());
+        for (int i = 0; i < tasks.size(); i++) {
+            tasks.get(i).getFuture().set(results[i]);
+        }
+    }
+
     @NotNull public ListenableFuture<Void> shutdown(final @Nullable Task<Void> finalTask) {
         if (shutdown.getAndSet(true)) {
             // guard from being called twice
@@ -261,13 +342,18 @@ public class ProducerQueuesImpl implements ProducerQueues {
         private final @NotNull SettableFuture<T> future;
         private final @NotNull Task task;
         private final int bucketIndex;
+        private final @Nullable GroupCommit groupCommit;
+        private final long submitTime;
         private TaskWithFuture(
                 final @NotNull SettableFuture<T> future,
                 final @NotNull Task task,
-                final int bucketIndex) {
+                final int bucketIndex,
+                final @Nullable GroupCommit groupCommit) {
             this.future = future;
             this.task = task;
             this.bucketIndex = bucketIndex;
+            this.groupCommit = groupCommit;
+            submitTime = groupCommit != null ? System.nanoTime() : 0;
         }
 
         public @NotNull SettableFuture getFuture() {
@@ -281,5 +367,13 @@ public class ProducerQueuesImpl implements ProducerQueues {
         public int getBucketIndex() {
             return bucketIndex;
         }
+
+        public @Nullable GroupCommit getGroupCommit() {
+            return groupCommit;
+        }
+
+        public long getSubmitTime() {
+            return submitTime;
+        }
     }
 }
@@ -32,6 +32,11 @@ public interface SingleWriterService {
 
     int getPersistenceBucketCount();
 
+    /**
+     * @return the amount of tasks that were submitted to the single writer and are not yet executed
+     */
+    long getPendingTaskCount();
+
     void stop();
     interface Task<R> {
 
@@ -150,6 +150,11 @@ public class SingleWriterServiceImpl implements SingleWriterService {
         return persistenceBucketCount;
     }
 
+    @Override
+    public long getPendingTaskCount() {
+        return globalTaskCount.get();
+    }
+
     public int getCreditsPerExecution() {
         return creditsPerExecution;
     }
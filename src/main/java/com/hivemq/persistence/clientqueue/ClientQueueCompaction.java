@@ -0,0 +1,113 @@
+/*
+ * Copyright 2019-present HiveMQ GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hivemq.persistence.clientqueue;
+
+import com.hivemq.configuration.service.InternalConfigurations;
+import com.hivemq.extension.sdk.api.annotations.NotNull;
+import com.hivemq.mqtt.message.MessageWithID;
+import com.hivemq.mqtt.message.QoS;
+import com.hivemq.mqtt.message.publish.PUBLISH;
+import com.hivemq.mqtt.message.pubrel.PUBREL;
+
+/**
+ * One run of the removal of expired messages from the queues of a bucket of a {@link ClientQueueLocalPersistence}.
+ * <p>
+ * The local persistences keep an expiry watermark per queue: a point in time before which none of the messages of
+ * the queue can be removed because of its expiry. A run skips all queues whose watermark has not passed yet, so
+ * queues without expired messages are not read at all. A run removes at most a limited amount of messages, the
+ * remaining expired messages are removed by the next run.
+ */
+public class ClientQueueCompaction {
+
+    /**
+     * The watermark of a queue with no message that may ever expire.
+     */
+    public static final long NO_EXPIRY = Long.MAX_VALUE;
+    /**
+     * The watermark of a queue whose messages are unknown, e.g. after a restart, so the queue must be read.
+     */
+    public static final long UNKNOWN_EXPIRY = Long.MIN_VALUE;
+    private final long now;
+    private int remainingMessages;
+    private long removedMessages;
+    private long reclaimedBytes;
+    public ClientQueueCompaction(final int maxMessages) {
+        now = System.currentTimeMillis();
+        remainingMessages = maxMessages;
+    }
+
+    /**
+     * Whether the queue with the given watermark may contain messages that are expired.
+     */
+    public boolean isDue(final long expiryWatermark) {
+        return expiryWatermark <= now;
+    }
+
+    /**
+     * Whether this run removed the maximum amount of messages. A queue that was not fully read must keep a watermark
+     * that is due.
+     */
+    public boolean isExhausted() {
+        return remainingMessages <= 0;
+    }
+
+    public void removed(final long bytes) {
+        remainingMessages--;
+        removedMessages++;
+        reclaimedBytes += bytes;
+    }
+
+    public long getRemovedMessages() {
+        return removedMessages;
+    }
+
+    public long getReclaimedBytes() {
+        return reclaimedBytes;
+    }
+
+    /**
+     * Returns the point in time at which the clean up may remove the message because of its expiry.
+     *
+     * @param message  the queued message
+     * @param inFlight whether the message has a packet identifier assigned
+     * @return the timestamp in milliseconds or {@link #NO_EXPIRY}
+     */
+    public static long expiryTimestamp(final @NotNull MessageWithID message, final boolean inFlight) {
+        if (message instanceof PUBREL) {
+            final PUBREL pubrel = (PUBREL) message;
+            final Long publishTimestamp = pubrel.getPublishTimestamp();
+            final Long messageExpiryInterval = pubrel.getMessageExpiryInterval();
+            if (!InternalConfigurations.EXPIRE_INFLIGHT_PUBRELS_ENABLED || publishTimestamp == null ||
+                    messageExpiryInterval == null || pubrel.isExpiryDisabled()) {
+                return NO_EXPIRY;
+            }
+            return publishTimestamp +
+                    Math.min(messageExpiryInterval, InternalConfigurations.MAXIMUM_INFLIGHT_PUBREL_EXPIRY) * 1000;
+        }
+        if (message instanceof PUBLISH) {
+            final PUBLISH publish = (PUBLISH) message;
+            if (publish.isExpiryDisabled()) {
+                return NO_EXPIRY;
+            }
+            if (inFlight && publish.getQoS() == QoS.EXACTLY_ONCE &&
+                    !InternalConfigurations.EXPIRE_INFLIGHT_MESSAGES_ENABLED) {
+                return NO_EXPIRY;
+            }
+            return publish.getTimestamp() + publish.getMessageExpiryInterval() * 1000;
+        }
+        return NO_EXPIRY;
+    }
+}
@@ -0,0 +1,124 @@
+/*
+ * Copyright 2019-present HiveMQ GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hivemq.persistence.clientqueue;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningScheduledExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.hivemq.extension.sdk.api.annotations.NotNull;
+import com.hivemq.metrics.HiveMQMetrics;
+import com.hivemq.persistence.ioc.annotation.Persistence;
+import com.hivemq.persistence.util.FutureUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.PostConstruct;
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import java.util.concurrent.TimeUnit;
+
+import static com.hivemq.configuration.service.InternalConfigurations.PERSISTENCE_BUCKET_COUNT;
+import static com.hivemq.configuration.service.InternalConfigurations.QUEUED_MESSAGES_COMPACTION_BATCH_SIZE;
+import static com.hivemq.configuration.service.InternalConfigurations.QUEUED_MESSAGES_COMPACTION_INTERVAL_MSEC;
+
+/**
+ * Removes expired messages from the client queues in the background, one bucket at a time.
+ * <p>
+ * Unlike the clean up of the {@link com.hivemq.persistence.ScheduledCleanUpService}, which visits a bucket of the
+ * client queue persistence only every few minutes and then reads all of its queues, a run of the compactor only
+ * reads the queues whose expiry watermark has passed and removes a limited amount of messages, so it can run often
+ * without blocking the single writer for long.
+ */
+@Singleton
+public class ClientQueueCompactor {
+
+    private static final @NotNull Logger log = LoggerFactory.getLogger(ClientQueueCompactor.class);
+    private final @NotNull ListeningScheduledExecutorService scheduledExecutorService;
+    private final @NotNull ClientQueuePersistence clientQueuePersistence;
+    private final @NotNull Counter removedMessages;
+    private final @NotNull Counter reclaimedBytes;
+    private final int bucketCount;
+    private final int intervalMillis;
+    private final int batchSize;
+    private int bucketIndex = 0;
+    @Inject
+    public ClientQueueCompactor(
+            final @NotNull @Persistence ListeningScheduledExecutorService scheduledExecutorService,
+            final @NotNull ClientQueuePersistence clientQueuePersistence,
+            final @NotNull MetricRegistry metricRegistry) {
+        this.scheduledExecutorService = scheduledExecutorService;
+        this.clientQueuePersistence = clientQueuePersistence;
+        removedMessages =
+                metricRegistry.counter(HiveMQMetrics.QUEUED_MESSAGES_COMPACTION_REMOVED_MESSAGES.name());
+        reclaimedBytes = metricRegistry.counter(HiveMQMetrics.QUEUED_MESSAGES_COMPACTION_RECLAIMED_BYTES.name());
+        bucketCount = PERSISTENCE_BUCKET_COUNT.get();
+        intervalMillis = QUEUED_MESSAGES_COMPACTION_INTERVAL_MSEC.get();
+        batchSize = QUEUED_MESSAGES_COMPACTION_BATCH_SIZE.get();
+    }
+
+    @PostConstruct
+    public void postConstruct() {
+        if (intervalMillis <= 0 || batchSize <= 0) {
+            log.debug("Background compaction of the queued messages is disabled.");
+            return;
+        }
+        scheduleCompaction();
+    }
+
+    @VisibleForTesting
+    synchronized void scheduleCompaction() {
+        if (scheduledExecutorService.isShutdown()) {
+            return;
+        }
+        final int nextBucketIndex = bucketIndex;
+        bucketIndex = (bucketIndex + 1) % bucketCount;
+        FutureUtils.addExceptionLogger(scheduledExecutorService.schedule(() -> compact(nextBucketIndex),
+                intervalMillis,
+                TimeUnit.MILLISECONDS));
+    }
+
+    @VisibleForTesting
+    void compact(final int bucketIndex) {
+        final ListenableFuture<ClientQueueCompaction> future;
+        try {
+            future = clientQueuePersistence.removeExpiredMessages(bucketIndex, batchSize);
+        } catch (final Throwable throwable) {
+            log.error("Exception during compaction of the queued messages.", throwable);
+            scheduleCompaction();
+            return;
+        }
+        Futures.addCallback(future, new FutureCallback<>() {
+
+            @Override
+            public void onSuccess(final @NotNull ClientQueueCompaction compaction) {
+                removedMessages.inc(compaction.getRemovedMessages());
+                reclaimedBytes.inc(compaction.getReclaimedBytes());
+                scheduleCompaction();
+            }
+
+            @Override
+            public void onFailure(final @NotNull Throwable throwable) {
+                log.error("Exception during compaction of the queued messages.", throwable);
+                scheduleCompaction();
+            }
+        }, MoreExecutors.directExecutor());
+    }
+}
@@ -0,0 +1,148 @@
+/*
+ * Copyright 2019-present HiveMQ GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hivemq.persistence.clientqueue;
+
+import com.hivemq.extension.sdk.api.annotations.NotNull;
+import org.eclipse.collections.api.map.primitive.LongIntMap;
+import org.eclipse.collections.api.map.primitive.MutableLongIntMap;
+import org.eclipse.collections.impl.map.mutable.primitive.LongIntHashMap;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static java.nio.file.StandardOpenOption.APPEND;
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.TRUNCATE_EXISTING;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+/**
+ * Append-only side table that holds the packet ids of the in-flight entries of one bucket of the
+ * {@link ClientQueueSegmentedLocalPersistence}. A record consists of the entry id and the packet id, a packet id of 0
+ * removes the in-flight marker and the last record of an entry wins.
+ * <p>
+ * The table is rewritten from the live in-flight state once it mostly consists of outdated records.
+ */
+class ClientQueueInFlightTable {
+
+    static final @NotNull String FILE_NAME = "in-flight.table";
+    private static final @NotNull String REWRITE_FILE_NAME = "in-flight.table.rewrite";
+    private static final int RECORD_BYTES = Long.BYTES + Integer.BYTES;
+    private static final int MIN_RECORDS_FOR_REWRITE = 4096;
+    private final @NotNull Path file;
+    private final @NotNull Path rewriteFile;
+    private final @NotNull ByteBuffer record = ByteBuffer.allocate(RECORD_BYTES);
+    private @NotNull FileChannel channel;
+    private long records;
+    private long maxEntryId;
+    ClientQueueInFlightTable(final @NotNull Path folder) throws IOException {
+        this.file = folder.resolve(FILE_NAME);
+        this.rewriteFile = folder.resolve(REWRITE_FILE_NAME);
+        Files.deleteIfExists(rewriteFile);
+        this.channel = FileChannel.open(file, CREATE, WRITE, APPEND);
+        // cut off a partially written record
+        records = channel.size() / RECORD_BYTES;
+        channel.truncate(records * RECORD_BYTES);
+    }
+
+    /**
+     * @return the packet ids of all entries that are marked as in-flight, by entry id
+     */
+    @NotNull MutableLongIntMap read() throws IOException {
+        final MutableLongIntMap packetIds = new LongIntHashMap();
+        final ByteBuffer bytes = ByteBuffer.wrap(Files.readAllBytes(file));
+        while (bytes.remaining() >= RECORD_BYTES) {
+            final long entryId = bytes.getLong();
+            final int packetId = bytes.getInt();
+            maxEntryId = Math.max(maxEntryId, entryId);
+            if (packetId == ClientQueuePersistenceSerializer.NO_PACKET_ID) {
+                packetIds.remove(entryId);
+            } else {
+                packetIds.put(entryId, packetId);
+            }
+        }
+        return packetIds;
+    }
+
+    /**
+     * @return the highest entry id of all records read by {@link #read()}, outdated records included
+     */
+    long getMaxEntryId() {
+        return maxEntryId;
+    }
+
+    void put(final long entryId, final int packetId) {
+        record.clear();
+        record.putLong(entryId);
+        record.putInt(packetId);
+        record.flip();
+        try {
+            while (record.hasRemaining()) {
+                channel.write(record);
+            }
+        } catch (final IOException e) {
+            throw new UncheckedIOException("Could not write to " + file, e);
+        }
+        records++;
+    }
+
+    boolean needsRewrite(final int liveRecords) {
+        return records >= MIN_RECORDS_FOR_REWRITE && records > 4L * liveRecords;
+    }
+
+    /**
+     * Replaces the table with one record per in-flight entry.
+     */
+    void rewrite(final @NotNull LongIntMap packetIds) {
+        final ByteBuffer bytes = ByteBuffer.allocate(packetIds.size() * RECORD_BYTES);
+        packetIds.forEachKeyValue((entryId, packetId) -> {
+            bytes.putLong(entryId);
+            bytes.putInt(packetId);
+        });
+        bytes.flip();
+        try {
+            try (final FileChannel rewriteChannel = FileChannel.open(rewriteFile, CREATE, WRITE, TRUNCATE_EXISTING)) {
+                while (bytes.hasRemaining()) {
+                    rewriteChannel.write(bytes);
+                }
+                rewriteChannel.force(true);
+            }
+            channel.close();
+            Files.move(rewriteFile, file, ATOMIC_MOVE, REPLACE_EXISTING);
+            channel = FileChannel.open(file, CREATE, WRITE, APPEND);
+        } catch (final IOException e) {
+            throw new UncheckedIOException("Could not rewrite " + file, e);
+        }
+        records = packetIds.size();
+    }
+
+    void force() {
+        try {
+            channel.force(false);
+        } catch (final IOException e) {
+            throw new UncheckedIOException("Could not force " + file, e);
+        }
+    }
+
+    void close() throws IOException {
+        channel.close();
+    }
+}
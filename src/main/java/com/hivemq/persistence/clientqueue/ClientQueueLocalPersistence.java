@@ -201,6 +201,14 @@ public interface ClientQueueLocalPersistence extends LocalPersistence {
      */
     @NotNull ImmutableSet<String> cleanUp(int bucketIndex);
 
+    /**
+     * Remove expired messages from the queues whose expiry watermark has passed. Other queues are not read.
+     *
+     * @param compaction  the run that limits the amount of removed messages and collects the reclaimed bytes
+     * @param bucketIndex provided by the single writer
+     */
+    void removeExpiredMessages(@NotNull ClientQueueCompaction compaction, int bucketIndex);
+
     /**
      * Remove a PUBLISH with a given unique ID. Messages with QoS 0 are not checked.
      *
@@ -218,4 +226,17 @@ public interface ClientQueueLocalPersistence extends LocalPersistence {
      * @param bucketIndex        provided by the single writer
      */
     void removeInFlightMarker(@NotNull String sharedSubscription, @NotNull String uniqueId, int bucketIndex);
+
+    /**
+     * @return the estimated memory in bytes currently held by queued QoS 0 messages over all buckets
+     */
+    long getQos0MessagesMemory();
+
+    /**
+     * Used to iterate all persisted queues of a file persistence, for example to migrate them to another storage.
+     */
+    interface QueueCallback {
+
+        void onItem(@NotNull ClientQueuePersistenceImpl.Key key, @NotNull ImmutableList<ClientQueueEntry> messages);
+    }
 }
@@ -124,6 +124,15 @@ public interface ClientQueuePersistence {
      */
     @NotNull ListenableFuture<Void> cleanUp(int bucketIndex);
 
+    /**
+     * Remove expired messages from the queues of a bucket that may contain expired messages.
+     *
+     * @param  bucketIndex of the bucket to compact
+     * @param  maxMessages the maximum amount of messages to remove
+     * @return             the finished compaction run
+     */
+    @NotNull ListenableFuture<ClientQueueCompaction> removeExpiredMessages(int bucketIndex, int maxMessages);
+
     /**
      * Returns the amount of messages queued for the client.
      *
@@ -25,7 +25,11 @@ import com.hivemq.bootstrap.ioc.lazysingleton.LazySingleton;
 import com.hivemq.configuration.service.MqttConfigurationService;
 import com.hivemq.extension.sdk.api.annotations.NotNull;
 import com.hivemq.extension.sdk.api.annotations.Nullable;
+import com.hivemq.limitation.MemoryConsumer;
+import com.hivemq.limitation.MemoryGovernor;
 import com.hivemq.mqtt.message.MessageWithID;
+import com.hivemq.mqtt.message.QoS;
+import com.hivemq.mqtt.message.dropping.MessageDroppedService;
 import com.hivemq.mqtt.message.publish.PUBLISH;
 import com.hivemq.mqtt.message.pubrel.PUBREL;
 import com.hivemq.mqtt.services.PublishPollService;
@@ -40,6 +44,7 @@ import com.hivemq.persistence.connection.ConnectionPersistence;
 import com.hivemq.persistence.local.ClientSessionLocalPersistence;
 
 import javax.inject.Inject;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Objects;
 
@@ -56,6 +61,8 @@ public class ClientQueuePersistenceImpl extends AbstractPersistence implements C
     private final @NotNull LocalTopicTree topicTree;
     private final @NotNull ConnectionPersistence connectionPersistence;
     private final @NotNull PublishPollService publishPollService;
+    private final @NotNull MemoryGovernor memoryGovernor;
+    private final @NotNull MessageDroppedService messageDroppedService;
     @Inject
     public ClientQueuePersistenceImpl(
             final @NotNull ClientQueueLocalPersistence localPersistence,
@@ -64,14 +71,19 @@ public class ClientQueuePersistenceImpl extends AbstractPersistence implements C
             final @NotNull ClientSessionLocalPersistence clientSessionLocalPersistence,
             final @NotNull LocalTopicTree topicTree,
             final @NotNull ConnectionPersistence connectionPersistence,
-            final @NotNull PublishPollService publishPollService) {
+            final @NotNull PublishPollService publishPollService,
+            final @NotNull MemoryGovernor memoryGovernor,
+            final @NotNull MessageDroppedService messageDroppedService) {
         this.localPersistence = localPersistence;
         this.mqttConfigurationService = mqttConfigurationService;
         this.clientSessionLocalPersistence = clientSessionLocalPersistence;
         this.topicTree = topicTree;
         this.connectionPersistence = connectionPersistence;
         this.publishPollService = publishPollService;
+        this.memoryGovernor = memoryGovernor;
+        this.messageDroppedService = messageDroppedService;
         singleWriter = singleWriterService.getQueuedMessagesQueue();
+        memoryGovernor.register(MemoryConsumer.QOS_0_MESSAGES, localPersistence::getQos0MessagesMemory);
     }
 
     @Override
@@ -87,6 +99,9 @@ public class ClientQueuePersistenceImpl extends AbstractPersistence implements C
         } catch (final Exception exception) {
             return Futures.immediateFailedFuture(exception);
         }
+        if (shedQos0Publish(queueId, shared, publish)) {
+            return Futures.immediateFuture(null);
+        }
         return singleWriter.submit(queueId, (bucketIndex) -> {
             localPersistence.add(queueId,
                     shared,
@@ -98,7 +113,7 @@ public class ClientQueuePersistenceImpl extends AbstractPersistence implements C
             final int queueSize = localPersistence.size(queueId, shared, bucketIndex);
             if (queueSize == 1) {
                 if (shared) {
-                    sharedPublishAvailable(queueId);
+                    publishPollService.pollSharedPublishes(queueId, publish.getTopic().hashCode());
                 } else {
                     publishAvailable(queueId);
                 }
@@ -120,18 +135,35 @@ public class ClientQueuePersistenceImpl extends AbstractPersistence implements C
         } catch (final Exception exception) {
             return Futures.immediateFailedFuture(exception);
         }
+        final List<PUBLISH> admittedPublishes;
+        if (memoryGovernor.isShedding(MemoryConsumer.QOS_0_MESSAGES)) {
+            admittedPublishes = new ArrayList<>(publishes.size());
+            for (final PUBLISH publish : publishes) {
+                if (!shedQos0Publish(queueId, shared, publish)) {
+                    admittedPublishes.add(publish);
+                }
+            }
+            if (admittedPublishes.isEmpty()) {
+                return Futures.immediateFuture(null);
+            }
+        } else {
+            admittedPublishes = publishes;
+        }
         return singleWriter.submit(queueId, (bucketIndex) -> {
             final boolean queueWasEmpty = localPersistence.size(queueId, shared, bucketIndex) == 0;
             localPersistence.add(queueId,
                     shared,
-                    publishes,
+                    admittedPublishes,
                     queueLimit,
                     mqttConfigurationService.getQueuedMessagesStrategy(),
                     retained,
                     bucketIndex);
             if (queueWasEmpty) {
                 if (shared) {
-                    sharedPublishAvailable(queueId);
+                    final int topicHash = admittedPublishes.isEmpty() ?
+                            queueId.hashCode() :
+                            admittedPublishes.get(0).getTopic().hashCode();
+                    publishPollService.pollSharedPublishes(queueId, topicHash);
                 } else {
                     publishAvailable(queueId);
                 }
@@ -140,6 +172,29 @@ public class ClientQueuePersistenceImpl extends AbstractPersistence implements C
         });
     }
 
+    /**
+     * New QoS 0 messages are dropped before they are queued as long as the memory governor sheds them.
+     *
+     * @return true if the PUBLISH was dropped, else false
+     */
+    private boolean shedQos0Publish(
+            final @NotNull String queueId,
+            final boolean shared,
+            final @NotNull PUBLISH publish) {
+        if (publish.getQoS() != QoS.AT_MOST_ONCE || !memoryGovernor.isShedding(MemoryConsumer.QOS_0_MESSAGES)) {
+            return false;
+        }
+        final long usage = memoryGovernor.getUsage(MemoryConsumer.QOS_0_MESSAGES);
+        final long limit = memoryGovernor.getLimit(MemoryConsumer.QOS_0_MESSAGES);
+        if (shared) {
+            messageDroppedService.qos0MemoryExceededShared(queueId, publish.getTopic(), 0, usage, limit);
+        } else {
+            messageDroppedService.qos0MemoryExceeded(queueId, publish.getTopic(), 0, usage, limit);
+        }
+        memoryGovernor.shed(MemoryConsumer.QOS_0_MESSAGES);
+        return true;
+    }
+
     @Override
     public void publishAvailable(final @NotNull String client) {
         final ClientSession session = clientSessionLocalPersistence.getSession(client);
@@ -253,6 +308,17 @@ public class ClientQueuePersistenceImpl extends AbstractPersistence implements C
         });
     }
 
+    @Override
+    public @NotNull ListenableFuture<ClientQueueCompaction> removeExpiredMessages(
+            final int bucketIndex,
+            final int maxMessages) {
+        return singleWriter.submit(bucketIndex, (bucketIndex1) -> {
+            final ClientQueueCompaction compaction = new ClientQueueCompaction(maxMessages);
+            localPersistence.removeExpiredMessages(compaction, bucketIndex1);
+            return compaction;
+        });
+    }
+
     @Override
     public @NotNull ListenableFuture<Integer> size(final @NotNull String queueId, final boolean shared) {
         return singleWriter.submit(queueId, (bucketIndex) -> localPersistence.size(queueId, shared, bucketIndex));
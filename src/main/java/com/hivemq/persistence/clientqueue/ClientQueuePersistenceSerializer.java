@@ -17,6 +17,7 @@ package com.hivemq.persistence.clientqueue;
 
 import com.google.common.primitives.ImmutableIntArray;
 import com.hivemq.codec.encoder.mqtt5.Mqtt5PayloadFormatIndicator;
+import com.hivemq.configuration.service.InternalConfigurations;
 import com.hivemq.extension.sdk.api.annotations.NotNull;
 import com.hivemq.extension.sdk.api.annotations.Nullable;
 import com.hivemq.mqtt.message.MessageWithID;
@@ -26,6 +27,8 @@ import com.hivemq.mqtt.message.mqtt5.PropertiesSerializationUtil;
 import com.hivemq.mqtt.message.publish.PUBLISH;
 import com.hivemq.mqtt.message.publish.PUBLISHFactory;
 import com.hivemq.mqtt.message.pubrel.PUBREL;
+import com.hivemq.persistence.local.xodus.CompactValueReader;
+import com.hivemq.persistence.local.xodus.CompactValueWriter;
 import com.hivemq.persistence.local.xodus.XodusUtils;
 import com.hivemq.util.Bytes;
 import jetbrains.exodus.ByteIterable;
@@ -37,6 +40,21 @@ import java.util.concurrent.atomic.AtomicLong;
 import static com.hivemq.persistence.clientqueue.ClientQueuePersistenceImpl.Key;
 import static java.nio.charset.StandardCharsets.UTF_8;
 
+/**
+ * Serializes the keys and values of the client queue persistences.
+ * <p>
+ * PUBLISH values are written in the compact value format unless it is disabled, values in the previous fixed width
+ * format stay readable. A compact value keeps the packet id and the flags of the previous format at the same offsets
+ * and marks itself with the {@code COMPACT_FORMAT_BIT}:
+ * <p>
+ * 2 bytes packet id | 1 byte flags | 1 byte format version | 1 byte present flags | topic | varint timestamp | varint
+ * publish id | hivemq id | (varint message expiry) | (1 byte payload format indicator) | (response topic) | (content
+ * type) | (correlation data) | (varint count, varint subscription identifiers) | (user properties)
+ * <p>
+ * Optional fields are only written if their present flag is set, so default values take no space at all. The topic
+ * and the hivemq id are written as varint references into the {@link TopicDictionary} of the bucket if one is given
+ * and they are part of it, inline otherwise. Everything after the present flags is deflated if it is large.
+ */
 public class ClientQueuePersistenceSerializer {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(ClientQueuePersistenceSerializer.class);
@@ -57,9 +75,28 @@ public class ClientQueuePersistenceSerializer {
     private static final byte CORRELATION_DATA_PRESENT_BIT = (byte) 0b0010_0000;
     private static final byte SUBSCRIPTION_IDENTIFIERS_PRESENT_BIT = (byte) 0b0001_0000;
     private static final byte USER_PROPERTIES_PRESENT_BIT = (byte) 0b0000_1000;
+    // compact format only
+    private static final byte COMPACT_FORMAT_BIT = (byte) 0b0000_1000;
+    private static final byte MESSAGE_EXPIRY_PRESENT_BIT = (byte) 0b0000_0100;
+    private static final byte PAYLOAD_FORMAT_INDICATOR_PRESENT_BIT = (byte) 0b0000_0010;
+    private static final byte COMPRESSED_BIT = (byte) 0b0000_0001;
+    private static final int COMPACT_HEADER_LENGTH = Short.BYTES + 3;
+    public static final int COMPACT_FORMAT_VERSION = 1;
     // The messages must preserve the order in which they are added to the persistence
     // ID's < Long.MAX_VALUE / 2 are reserved for messages that should be polled with priority
     public static final AtomicLong NEXT_PUBLISH_NUMBER = new AtomicLong(Long.MAX_VALUE / 2);
+    private final boolean compactFormat;
+    private final int compressionThreshold;
+    public ClientQueuePersistenceSerializer() {
+        this(InternalConfigurations.PERSISTENCE_COMPACT_VALUE_FORMAT_ENABLED.get(),
+                InternalConfigurations.PERSISTENCE_COMPACT_VALUE_COMPRESSION_THRESHOLD_BYTES.get());
+    }
+
+    ClientQueuePersistenceSerializer(final boolean compactFormat, final int compressionThreshold) {
+        this.compactFormat = compactFormat;
+        this.compressionThreshold = compressionThreshold;
+    }
+
     // ********** Key **********
     /**
      * Serializes the client id and adds a entry number to represent the message order.
@@ -133,9 +170,34 @@ public class ClientQueuePersistenceSerializer {
     // ********** Value **********
 
     @NotNull ByteIterable serializePublishWithoutPacketId(final @NotNull PUBLISH publish, final boolean retained) {
+        return serializePublishWithoutPacketId(publish, retained, null);
+    }
+
+    /**
+     * @param dictionary the topic dictionary of the bucket the value is written to, it is only read here
+     */
+    @NotNull ByteIterable serializePublishWithoutPacketId(
+            final @NotNull PUBLISH publish,
+            final boolean retained,
+            final @Nullable TopicDictionary dictionary) {
+        if (compactFormat) {
+            return XodusUtils.bytesToByteIterable(createCompactPublishBytes(publish, retained, dictionary));
+        }
         return XodusUtils.bytesToByteIterable(createPublishBytes(publish, retained));
     }
 
+    boolean isPubRel(final @NotNull ByteIterable serializedValue) {
+        return (serializedValue.getBytesUnsafe()[Short.BYTES] & PUBREL_BIT) == PUBREL_BIT;
+    }
+
+    /**
+     * @return true if the value is a PUBLISH in the compact value format
+     */
+    boolean isCompact(final @NotNull ByteIterable serializedValue) {
+        final byte flags = serializedValue.getBytesUnsafe()[Short.BYTES];
+        return (flags & PUBLISH_BIT) == PUBLISH_BIT && (flags & COMPACT_FORMAT_BIT) == COMPACT_FORMAT_BIT;
+    }
+
     @NotNull ByteIterable serializeAndSetPacketId(final @NotNull ByteIterable serializedValue, final int packetId) {
         final byte[] bytes = XodusUtils.byteIterableToBytes(serializedValue);
         Bytes.copyUnsignedShortToByteArray(packetId, bytes, 0);
@@ -153,7 +215,26 @@ public class ClientQueuePersistenceSerializer {
         return Bytes.readUnsignedShort(serializedValue.getBytesUnsafe(), 0);
     }
 
+    @NotNull ByteIterable serializeInFlightPacketId(final int packetId) {
+        final byte[] bytes = new byte[Short.BYTES];
+        Bytes.copyUnsignedShortToByteArray(packetId, bytes, 0);
+        return XodusUtils.bytesToByteIterable(bytes);
+    }
+
+    int deserializeInFlightPacketId(final @NotNull ByteIterable serializedPacketId) {
+        return Bytes.readUnsignedShort(serializedPacketId.getBytesUnsafe(), 0);
+    }
+
     @NotNull MessageWithID deserializeValue(final @NotNull ByteIterable serializedValue) {
+        return deserializeValue(serializedValue, null);
+    }
+
+    /**
+     * @param dictionary the topic dictionary of the bucket the value was read from
+     */
+    @NotNull MessageWithID deserializeValue(
+            final @NotNull ByteIterable serializedValue,
+            final @Nullable TopicDictionary dictionary) {
         final byte[] bytes = serializedValue.getBytesUnsafe();
         if ((bytes[Short.BYTES] & PUBREL_BIT) == PUBREL_BIT) {
             final int packetId = Bytes.readUnsignedShort(bytes, 0);
@@ -167,6 +248,9 @@ public class ClientQueuePersistenceSerializer {
             return pubrel;
         }
         if ((bytes[Short.BYTES] & PUBLISH_BIT) == PUBLISH_BIT) {
+            if ((bytes[Short.BYTES] & COMPACT_FORMAT_BIT) == COMPACT_FORMAT_BIT) {
+                return deserializeCompactPublish(bytes, serializedValue.getLength(), dictionary);
+            }
             return deserializePublish(bytes);
         }
         LOGGER.error("Could not deserialize client queue persistence value");
@@ -178,6 +262,31 @@ public class ClientQueuePersistenceSerializer {
         return (bytes[Short.BYTES] & RETAINED_MESSAGE_BIT) == RETAINED_MESSAGE_BIT;
     }
 
+    /**
+     * Serializes a queued PUBLISH or PUBREL including its packet identifier in the compact value format, e.g. for the
+     * snapshots of the in-memory persistence. The payload of a PUBLISH is not part of the value.
+     */
+    public byte @NotNull [] serializeMessage(final @NotNull MessageWithID message, final boolean retained) {
+        if (message instanceof PUBREL) {
+            final PUBREL pubrel = (PUBREL) message;
+            return createPubrelBytes(pubrel.getPacketIdentifier(),
+                    retained,
+                    pubrel.getMessageExpiryInterval(),
+                    pubrel.getPublishTimestamp());
+        }
+        final byte[] bytes = createCompactPublishBytes((PUBLISH) message, retained, null);
+        Bytes.copyUnsignedShortToByteArray(message.getPacketIdentifier(), bytes, 0);
+        return bytes;
+    }
+
+    public @NotNull MessageWithID deserializeMessage(final byte @NotNull [] serializedMessage) {
+        return deserializeValue(XodusUtils.bytesToByteIterable(serializedMessage));
+    }
+
+    public boolean deserializeMessageRetained(final byte @NotNull [] serializedMessage) {
+        return (serializedMessage[Short.BYTES] & RETAINED_MESSAGE_BIT) == RETAINED_MESSAGE_BIT;
+    }
+
     private byte @NotNull [] createPubrelBytes(
             final int packetId,
             final boolean retained,
@@ -203,39 +312,37 @@ public class ClientQueuePersistenceSerializer {
         return result;
     }
 
-    private byte @NotNull [] createPublishBytes(final @NotNull PUBLISH message, final boolean retained) {
-        final byte[] topic = message.getTopic().getBytes(UTF_8);
-        final byte[] hivemqId = message.getHivemqId().getBytes(UTF_8);
-        final byte[] responseTopic =
-                message.getResponseTopic() == null ? null : message.getResponseTopic().getBytes(UTF_8);
-        final byte[] contentType = message.getContentType() == null ? null : message.getContentType().getBytes(UTF_8);
+    /**
+     * @return the size of the PUBLISH in the previous fixed width value format
+     */
+    int legacyPublishSize(final @NotNull PUBLISH message) {
+        final String responseTopic = message.getResponseTopic();
+        final String contentType = message.getContentType();
         final byte[] correlationData = message.getCorrelationData();
         final ImmutableIntArray subscriptionIdentifiers = message.getSubscriptionIdentifiers();
         final int subscriptionIdentifierLength = subscriptionIdentifiers == null ? 0 : subscriptionIdentifiers.length();
-        final int payloadFormatIndicator =
-                message.getPayloadFormatIndicator() != null ? message.getPayloadFormatIndicator().getCode() : -1;
         final Mqtt5UserProperties userProperties = message.getUserProperties();
-        final byte[] result = new byte[Short.BYTES +
+        return Short.BYTES +
                 // packet id
                 1 +
                 // PUBLISH_BIT, dup, retain, qos
                 1 +
                 // present flags
-                XodusUtils.shortLengthArraySize(topic) +
+                XodusUtils.shortLengthStringSize(message.getTopic()) +
                 // topic
                 Long.BYTES +
                 // timestamp
                 Long.BYTES +
                 // publish id
-                XodusUtils.shortLengthArraySize(hivemqId) +
+                XodusUtils.shortLengthStringSize(message.getHivemqId()) +
                 // hivemq id
                 Long.BYTES +
                 // payload id
                 Long.BYTES +
                 // message expiry
-                (responseTopic == null ? 0 : XodusUtils.shortLengthArraySize(responseTopic)) +
+                (responseTopic == null ? 0 : XodusUtils.shortLengthStringSize(responseTopic)) +
                 // response topic
-                (contentType == null ? 0 : XodusUtils.shortLengthArraySize(contentType)) +
+                (contentType == null ? 0 : XodusUtils.shortLengthStringSize(contentType)) +
                 // content type
                 (correlationData == null ? 0 : XodusUtils.shortLengthArraySize(correlationData)) +
                 // correlation data
@@ -243,7 +350,22 @@ public class ClientQueuePersistenceSerializer {
                 // subscription identifiers
                 1 +
                 // payload format indicator
-                (userProperties.asList().size() == 0 ? 0 : PropertiesSerializationUtil.encodedSize(userProperties))];
+                (userProperties.asList().size() == 0 ? 0 : PropertiesSerializationUtil.encodedSize(userProperties));
+    }
+
+    private byte @NotNull [] createPublishBytes(final @NotNull PUBLISH message, final boolean retained) {
+        final byte[] topic = message.getTopic().getBytes(UTF_8);
+        final byte[] hivemqId = message.getHivemqId().getBytes(UTF_8);
+        final byte[] responseTopic =
+                message.getResponseTopic() == null ? null : message.getResponseTopic().getBytes(UTF_8);
+        final byte[] contentType = message.getContentType() == null ? null : message.getContentType().getBytes(UTF_8);
+        final byte[] correlationData = message.getCorrelationData();
+        final ImmutableIntArray subscriptionIdentifiers = message.getSubscriptionIdentifiers();
+        final int subscriptionIdentifierLength = subscriptionIdentifiers == null ? 0 : subscriptionIdentifiers.length();
+        final int payloadFormatIndicator =
+                message.getPayloadFormatIndicator() != null ? message.getPayloadFormatIndicator().getCode() : -1;
+        final Mqtt5UserProperties userProperties = message.getUserProperties();
+        final byte[] result = new byte[legacyPublishSize(message)];
         int cursor = 0;
         cursor = XodusUtils.serializeShort(NO_PACKET_ID, result, cursor);
         byte flags = PUBLISH_BIT;
@@ -306,6 +428,122 @@ public class ClientQueuePersistenceSerializer {
         return result;
     }
 
+    private byte @NotNull [] createCompactPublishBytes(
+            final @NotNull PUBLISH message,
+            final boolean retained,
+            final @Nullable TopicDictionary dictionary) {
+        final String responseTopic = message.getResponseTopic();
+        final String contentType = message.getContentType();
+        final byte[] correlationData = message.getCorrelationData();
+        final ImmutableIntArray subscriptionIdentifiers = message.getSubscriptionIdentifiers();
+        final Mqtt5PayloadFormatIndicator payloadFormatIndicator = message.getPayloadFormatIndicator();
+        final Mqtt5UserProperties userProperties = message.getUserProperties();
+        final CompactValueWriter writer = new CompactValueWriter(64);
+        writer.writeShort(NO_PACKET_ID);
+        byte flags = (byte) (PUBLISH_BIT | COMPACT_FORMAT_BIT);
+        flags |= message.getQoS().getQosNumber();
+        if (message.isDuplicateDelivery()) {
+            flags |= DUPLICATE_DELIVERY_BIT;
+        }
+        if (message.isRetain()) {
+            flags |= RETAINED_BIT;
+        }
+        if (retained) {
+            flags |= RETAINED_MESSAGE_BIT;
+        }
+        writer.writeByte(flags);
+        writer.writeByte(COMPACT_FORMAT_VERSION);
+        byte presentFlags = (byte) 0b0000_0000;
+        if (responseTopic != null) {
+            presentFlags |= RESPONSE_TOPIC_PRESENT_BIT;
+        }
+        if (contentType != null) {
+            presentFlags |= CONTENT_TYPE_PRESENT_BIT;
+        }
+        if (correlationData != null) {
+            presentFlags |= CORRELATION_DATA_PRESENT_BIT;
+        }
+        if (subscriptionIdentifiers != null) {
+            presentFlags |= SUBSCRIPTION_IDENTIFIERS_PRESENT_BIT;
+        }
+        if (userProperties.asList().size() > 0) {
+            presentFlags |= USER_PROPERTIES_PRESENT_BIT;
+        }
+        if (message.getMessageExpiryInterval() != PUBLISH.MESSAGE_EXPIRY_INTERVAL_NOT_SET) {
+            presentFlags |= MESSAGE_EXPIRY_PRESENT_BIT;
+        }
+        if (payloadFormatIndicator != null) {
+            presentFlags |= PAYLOAD_FORMAT_INDICATOR_PRESENT_BIT;
+        }
+        writer.writeByte(presentFlags);
+        writeReference(writer, message.getTopic(), dictionary);
+        writer.writeVarLong(message.getTimestamp());
+        writer.writeVarLong(message.getPublishId());
+        writeReference(writer, message.getHivemqId(), dictionary);
+        if (message.getMessageExpiryInterval() != PUBLISH.MESSAGE_EXPIRY_INTERVAL_NOT_SET) {
+            writer.writeVarLong(message.getMessageExpiryInterval());
+        }
+        if (payloadFormatIndicator != null) {
+            writer.writeByte(payloadFormatIndicator.getCode());
+        }
+        if (responseTopic != null) {
+            writer.writeString(responseTopic);
+        }
+        if (contentType != null) {
+            writer.writeString(contentType);
+        }
+        if (correlationData != null) {
+            writer.writeBytes(correlationData);
+        }
+        if (subscriptionIdentifiers != null) {
+            writer.writeVarInt(subscriptionIdentifiers.length());
+            for (int i = 0; i < subscriptionIdentifiers.length(); i++) {
+                writer.writeVarInt(subscriptionIdentifiers.get(i));
+            }
+        }
+        if (userProperties.asList().size() > 0) {
+            writer.writeUserProperties(userProperties);
+        }
+        if (writer.compressFrom(COMPACT_HEADER_LENGTH, compressionThreshold)) {
+            writer.setByte(COMPACT_HEADER_LENGTH - 1, presentFlags | COMPRESSED_BIT);
+        }
+        return writer.toByteArray();
+    }
+
+    /**
+     * A reference is either the id of the string in the dictionary (shifted left by one) or the length of the inline
+     * string (shifted left by one, with the lowest bit set) followed by the string itself.
+     */
+    private static void writeReference(
+            final @NotNull CompactValueWriter writer,
+            final @NotNull String string,
+            final @Nullable TopicDictionary dictionary) {
+        final int id = dictionary != null ? dictionary.id(string) : TopicDictionary.NO_ID;
+        if (id != TopicDictionary.NO_ID) {
+            writer.writeVarInt(id << 1);
+            return;
+        }
+        final byte[] bytes = string.getBytes(UTF_8);
+        writer.writeVarInt((bytes.length << 1) | 1);
+        writer.writeRaw(bytes);
+    }
+
+    private static @NotNull String readReference(
+            final @NotNull CompactValueReader reader,
+            final @Nullable TopicDictionary dictionary) {
+        final int reference = reader.readVarInt();
+        if ((reference & 1) == 1) {
+            return reader.readString(reference >>> 1);
+        }
+        final String string = dictionary != null ? dictionary.value(reference >>> 1) : null;
+        if (string == null) {
+            LOGGER.error("Could not deserialize client queue persistence value, unknown topic dictionary id {}",
+                    reference >>> 1);
+            throw new IllegalArgumentException("Unknown topic dictionary id in client queue persistence value");
+        }
+        return string;
+    }
+
     private @NotNull PUBLISH deserializePublish(final @NotNull byte[] serialized) {
         final PUBLISHFactory.Mqtt5Builder builder = new PUBLISHFactory.Mqtt5Builder();
         int cursor = 0;
@@ -383,4 +621,61 @@ public class ClientQueuePersistenceSerializer {
         }
         return builder.build();
     }
+
+    private @NotNull PUBLISH deserializeCompactPublish(
+            final byte @NotNull [] serialized,
+            final int length,
+            final @Nullable TopicDictionary dictionary) {
+        final PUBLISHFactory.Mqtt5Builder builder = new PUBLISHFactory.Mqtt5Builder();
+        builder.withPacketIdentifier(Bytes.readUnsignedShort(serialized, 0));
+        final byte flags = serialized[Short.BYTES];
+        builder.withQoS(QoS.valueOf(flags & QOS_BITS));
+        builder.withOnwardQos(QoS.valueOf(flags & QOS_BITS));
+        builder.withDuplicateDelivery((flags & DUPLICATE_DELIVERY_BIT) == DUPLICATE_DELIVERY_BIT);
+        builder.withRetain((flags & RETAINED_BIT) == RETAINED_BIT);
+        final int version = serialized[Short.BYTES + 1];
+        if (version != COMPACT_FORMAT_VERSION) {
+            LOGGER.error("Could not deserialize client queue persistence value of unknown format version {}", version);
+            throw new IllegalArgumentException("Unknown format version of client queue persistence value");
+        }
+        final byte presentFlags = serialized[Short.BYTES + 2];
+        CompactValueReader reader = new CompactValueReader(serialized, COMPACT_HEADER_LENGTH, length);
+        if ((presentFlags & COMPRESSED_BIT) == COMPRESSED_BIT) {
+            reader = reader.inflate();
+        }
+        builder.withTopic(readReference(reader, dictionary));
+        builder.withTimestamp(reader.readVarLong());
+        builder.withPublishId(reader.readVarLong());
+        builder.withHivemqId(readReference(reader, dictionary));
+        if ((presentFlags & MESSAGE_EXPIRY_PRESENT_BIT) == MESSAGE_EXPIRY_PRESENT_BIT) {
+            builder.withMessageExpiryInterval(reader.readVarLong());
+        } else {
+            builder.withMessageExpiryInterval(PUBLISH.MESSAGE_EXPIRY_INTERVAL_NOT_SET);
+        }
+        if ((presentFlags & PAYLOAD_FORMAT_INDICATOR_PRESENT_BIT) == PAYLOAD_FORMAT_INDICATOR_PRESENT_BIT) {
+            builder.withPayloadFormatIndicator(Mqtt5PayloadFormatIndicator.fromCode(reader.readByte()));
+        }
+        if ((presentFlags & RESPONSE_TOPIC_PRESENT_BIT) == RESPONSE_TOPIC_PRESENT_BIT) {
+            builder.withResponseTopic(reader.readString());
+        }
+        if ((presentFlags & CONTENT_TYPE_PRESENT_BIT) == CONTENT_TYPE_PRESENT_BIT) {
+            builder.withContentType(reader.readString());
+        }
+        if ((presentFlags & CORRELATION_DATA_PRESENT_BIT) == CORRELATION_DATA_PRESENT_BIT) {
+            builder.withCorrelationData(reader.readBytes());
+        }
+        if ((presentFlags & SUBSCRIPTION_IDENTIFIERS_PRESENT_BIT) == SUBSCRIPTION_IDENTIFIERS_PRESENT_BIT) {
+            final int subscriptionIdentifiersLength = reader.readVarInt();
+            final ImmutableIntArray.Builder subscriptionIdentifiers =
+                    ImmutableIntArray.builder(subscriptionIdentifiersLength);
+            for (int i = 0; i < subscriptionIdentifiersLength; i++) {
+                subscriptionIdentifiers.add(reader.readVarInt());
+            }
+            builder.withSubscriptionIdentifiers(subscriptionIdentifiers.build());
+        }
+        if ((presentFlags & USER_PROPERTIES_PRESENT_BIT) == USER_PROPERTIES_PRESENT_BIT) {
+            builder.withUserProperties(reader.readUserProperties());
+        }
+        return builder.build();
+    }
 }
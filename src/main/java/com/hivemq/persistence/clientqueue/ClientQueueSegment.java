@@ -0,0 +1,277 @@
+/*
+ * Copyright 2019-present HiveMQ GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hivemq.persistence.clientqueue;
+
+import com.hivemq.extension.sdk.api.annotations.NotNull;
+import io.netty.util.internal.PlatformDependent;
+import org.eclipse.collections.api.set.primitive.MutableLongSet;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.zip.CRC32;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.StandardOpenOption.APPEND;
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+/**
+ * An append-only, memory-mapped segment file of the {@link ClientQueueSegmentedLocalPersistence}.
+ * <p>
+ * Every record consists of the body length, the CRC32 of the body and the body itself. The body holds the entry id,
+ * the queue index, the shared flag, the queue id and the serialized queue value. A body length of 0 marks the end of
+ * the written records. Entries that are removed from the queue are appended to the ack file of the segment that
+ * holds them, the segment itself is never rewritten.
+ * <p>
+ * A segment is only accessed by the single writer thread of its bucket.
+ */
+class ClientQueueSegment {
+
+    static final @NotNull String SEGMENT_FILE_SUFFIX = ".segment";
+    static final @NotNull String ACK_FILE_SUFFIX = ".acks";
+    private static final int RECORD_HEADER_BYTES = Integer.BYTES * 2;
+    private static final int BODY_HEADER_BYTES = Long.BYTES * 2 + 1 + Integer.BYTES;
+    private final long id;
+    private final @NotNull Path segmentFile;
+    private final @NotNull Path ackFile;
+    private final @NotNull FileChannel channel;
+    private final @NotNull MappedByteBuffer buffer;
+    private final @NotNull FileChannel ackChannel;
+    private final @NotNull ByteBuffer ackRecord = ByteBuffer.allocate(Long.BYTES);
+    private final @NotNull CRC32 crc = new CRC32();
+    private int writePosition;
+    private int liveEntries;
+    private long liveBytes;
+    private ClientQueueSegment(final @NotNull Path folder, final long id, final int size) throws IOException {
+        this.id = id;
+        this.segmentFile = folder.resolve(fileName(id, SEGMENT_FILE_SUFFIX));
+        this.ackFile = folder.resolve(fileName(id, ACK_FILE_SUFFIX));
+        this.channel = FileChannel.open(segmentFile, CREATE, READ, WRITE);
+        final int mappedSize = Math.max(size, (int) Math.min(channel.size(), Integer.MAX_VALUE));
+        this.buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, mappedSize);
+        this.ackChannel = FileChannel.open(ackFile, CREATE, WRITE, APPEND);
+        // cut off a partially written ack
+        ackChannel.truncate(ackChannel.size() - ackChannel.size() % Long.BYTES);
+    }
+
+    static @NotNull ClientQueueSegment create(final @NotNull Path folder, final long id, final int size)
+            throws IOException {
+        return new ClientQueueSegment(folder, id, size);
+    }
+
+    static @NotNull ClientQueueSegment open(final @NotNull Path folder, final long id) throws IOException {
+        return new ClientQueueSegment(folder, id, 0);
+    }
+
+    static @NotNull String fileName(final long id, final @NotNull String suffix) {
+        return String.format("%020d%s", id, suffix);
+    }
+
+    static int recordLength(final int queueIdLength, final int valueLength) {
+        return RECORD_HEADER_BYTES + BODY_HEADER_BYTES + queueIdLength + valueLength;
+    }
+
+    long getId() {
+        return id;
+    }
+
+    int getCapacity() {
+        return buffer.capacity();
+    }
+
+    int getWritePosition() {
+        return writePosition;
+    }
+
+    int getLiveEntries() {
+        return liveEntries;
+    }
+
+    long getLiveBytes() {
+        return liveBytes;
+    }
+
+    boolean hasRoom(final int recordLength) {
+        return writePosition + recordLength <= buffer.capacity();
+    }
+
+    /**
+     * Appends a record. The caller must check {@link #hasRoom(int)} before.
+     *
+     * @return the offset of the value inside of the segment
+     */
+    int append(
+            final long entryId,
+            final long queueIndex,
+            final byte @NotNull [] queueId,
+            final boolean shared,
+            final byte @NotNull [] value) {
+        final int recordLength = recordLength(queueId.length, value.length);
+        final int bodyOffset = writePosition + RECORD_HEADER_BYTES;
+        final int bodyLength = recordLength - RECORD_HEADER_BYTES;
+        final ByteBuffer body = buffer.duplicate();
+        body.position(bodyOffset);
+        body.putLong(entryId);
+        body.putLong(queueIndex);
+        body.put((byte) (shared ? 1 : 0));
+        body.putInt(queueId.length);
+        body.put(queueId);
+        final int valueOffset = body.position();
+        body.put(value);
+        if (body.position() + Integer.BYTES <= buffer.capacity()) {
+            // terminate the written records, the remainder of a reused segment may hold an outdated record
+            body.putInt(0);
+        }
+        // the length is written last, so a partially written record is never read
+        buffer.putInt(writePosition + Integer.BYTES, checksum(bodyOffset, bodyLength));
+        buffer.putInt(writePosition, bodyLength);
+        writePosition += recordLength;
+        liveEntries++;
+        liveBytes += recordLength;
+        return valueOffset;
+    }
+
+    byte @NotNull [] read(final int valueOffset, final int valueLength) {
+        final byte[] value = new byte[valueLength];
+        final ByteBuffer source = buffer.duplicate();
+        source.position(valueOffset);
+        source.get(value);
+        return value;
+    }
+
+    /**
+     * Reads all complete records of the segment and moves the write position behind the last one.
+     */
+    void scan(final @NotNull RecordVisitor visitor) {
+        int position = 0;
+        while (position + RECORD_HEADER_BYTES <= buffer.capacity()) {
+            final int bodyLength = buffer.getInt(position);
+            final int bodyOffset = position + RECORD_HEADER_BYTES;
+            if (bodyLength < BODY_HEADER_BYTES || bodyOffset + bodyLength > buffer.capacity()) {
+                break;
+            }
+            if (buffer.getInt(position + Integer.BYTES) != checksum(bodyOffset, bodyLength)) {
+                break;
+            }
+            final ByteBuffer body = buffer.duplicate();
+            body.position(bodyOffset);
+            final long entryId = body.getLong();
+            final long queueIndex = body.getLong();
+            final boolean shared = body.get() == 1;
+            final byte[] queueId = new byte[body.getInt()];
+            body.get(queueId);
+            final int valueOffset = body.position();
+            final int recordLength = RECORD_HEADER_BYTES + bodyLength;
+            visitor.onRecord(entryId,
+                    queueIndex,
+                    new String(queueId, UTF_8),
+                    shared,
+                    valueOffset,
+                    bodyOffset + bodyLength - valueOffset,
+                    recordLength);
+            position += recordLength;
+        }
+        writePosition = position;
+    }
+
+    void addLiveEntry(final int recordLength) {
+        liveEntries++;
+        liveBytes += recordLength;
+    }
+
+    void removeLiveEntry(final int recordLength) {
+        liveEntries--;
+        liveBytes -= recordLength;
+    }
+
+    void ack(final long entryId) {
+        ackRecord.clear();
+        ackRecord.putLong(entryId);
+        ackRecord.flip();
+        try {
+            while (ackRecord.hasRemaining()) {
+                ackChannel.write(ackRecord);
+            }
+        } catch (final IOException e) {
+            throw new UncheckedIOException("Could not write ack to " + ackFile, e);
+        }
+    }
+
+    void readAcks(final @NotNull MutableLongSet acks) throws IOException {
+        final ByteBuffer bytes = ByteBuffer.wrap(Files.readAllBytes(ackFile));
+        while (bytes.remaining() >= Long.BYTES) {
+            acks.add(bytes.getLong());
+        }
+    }
+
+    void force() {
+        buffer.force();
+        try {
+            ackChannel.force(false);
+        } catch (final IOException e) {
+            throw new UncheckedIOException("Could not force " + ackFile, e);
+        }
+    }
+
+    void close() throws IOException {
+        ackChannel.close();
+        channel.close();
+    }
+
+    /**
+     * Closes the segment, unmaps it and deletes its files. The segment must not be accessed afterwards.
+     */
+    void delete() throws IOException {
+        close();
+        // the mapping would otherwise keep the space of the deleted file allocated until the buffer is collected
+        PlatformDependent.freeDirectBuffer(buffer);
+        Files.deleteIfExists(ackFile);
+        Files.deleteIfExists(segmentFile);
+    }
+
+    private int checksum(final int offset, final int length) {
+        final ByteBuffer body = buffer.duplicate();
+        body.position(offset);
+        body.limit(offset + length);
+        crc.reset();
+        crc.update(body);
+        return (int) crc.getValue();
+    }
+
+    @Override
+    public @NotNull String toString() {
+        return "ClientQueueSegment{" + "id=" + id + ", writePosition=" + writePosition + ", liveEntries=" +
+                liveEntries + ", liveBytes=" + liveBytes + '}';
+    }
+
+    interface RecordVisitor {
+
+        void onRecord(
+                long entryId,
+                long queueIndex,
+                @NotNull String queueId,
+                boolean shared,
+                int valueOffset,
+                int valueLength,
+                int recordLength);
+    }
+}
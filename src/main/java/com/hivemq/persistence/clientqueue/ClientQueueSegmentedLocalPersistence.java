@@ -0,0 +1,1261 @@
+/*
+ * Copyright 2019-present HiveMQ GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hivemq.persistence.clientqueue;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.primitives.ImmutableIntArray;
+import com.hivemq.bootstrap.ioc.lazysingleton.LazySingleton;
+import com.hivemq.configuration.service.InternalConfigurations;
+import com.hivemq.configuration.service.MqttConfigurationService.QueuedMessagesStrategy;
+import com.hivemq.exceptions.UnrecoverableException;
+import com.hivemq.extension.sdk.api.annotations.NotNull;
+import com.hivemq.extension.sdk.api.annotations.Nullable;
+import com.hivemq.migration.meta.PersistenceType;
+import com.hivemq.mqtt.message.MessageWithID;
+import com.hivemq.mqtt.message.QoS;
+import com.hivemq.mqtt.message.dropping.MessageDroppedService;
+import com.hivemq.mqtt.message.publish.PUBLISH;
+import com.hivemq.mqtt.message.pubrel.PUBREL;
+import com.hivemq.persistence.FilePersistence;
+import com.hivemq.persistence.PersistenceStartup;
+import com.hivemq.persistence.payload.PublishPayloadPersistence;
+import com.hivemq.util.LocalPersistenceFileUtil;
+import com.hivemq.util.ThreadPreConditions;
+import jetbrains.exodus.ByteIterable;
+import org.eclipse.collections.api.map.primitive.MutableLongIntMap;
+import org.eclipse.collections.api.map.primitive.MutableLongObjectMap;
+import org.eclipse.collections.api.set.primitive.MutableLongSet;
+import org.eclipse.collections.impl.map.mutable.primitive.LongIntHashMap;
+import org.eclipse.collections.impl.map.mutable.primitive.LongObjectHashMap;
+import org.eclipse.collections.impl.set.mutable.primitive.LongHashSet;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.PostConstruct;
+import javax.inject.Inject;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.hivemq.persistence.clientqueue.ClientQueuePersistenceImpl.Key;
+import static com.hivemq.persistence.clientqueue.ClientQueuePersistenceSerializer.NO_PACKET_ID;
+import static com.hivemq.persistence.local.xodus.XodusUtils.bytesToByteIterable;
+import static com.hivemq.persistence.local.xodus.XodusUtils.byteIterableToBytes;
+import static com.hivemq.util.ThreadPreConditions.SINGLE_WRITER_THREAD_PREFIX;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * A {@link ClientQueueLocalPersistence} that appends the queued messages to memory-mapped segment files instead of
+ * storing them in a key value store.
+ * <p>
+ * Every bucket has its own folder with a sequence of {@link ClientQueueSegment}s and a
+ * {@link ClientQueueInFlightTable}. The order of the queues and the positions of their entries are only kept in
+ * memory and are rebuilt from the segments on startup. Removing an entry only appends its id to an ack file and
+ * marking an entry as in-flight only appends to the side table, so a queued message is written exactly once. Segments
+ * that mostly hold removed entries are compacted during the periodic clean up of their bucket.
+ * <p>
+ * The segments and the side table are only forced to disk when the persistence is closed. Until then the operating
+ * system writes the mapped pages back whenever it decides to, so the messages queued shortly before a crash of the
+ * operating system or a power loss can be lost. A crash of the broker process alone loses nothing.
+ * <p>
+ * QoS 0 messages are kept in memory, like in the {@link ClientQueueXodusLocalPersistence}.
+ */
+@LazySingleton
+public class ClientQueueSegmentedLocalPersistence implements ClientQueueLocalPersistence, FilePersistence {
+
+    private static final @NotNull Logger log = LoggerFactory.getLogger(ClientQueueSegmentedLocalPersistence.class);
+    public static final @NotNull String PERSISTENCE_NAME = ClientQueueXodusLocalPersistence.PERSISTENCE_NAME;
+    public static final @NotNull String PERSISTENCE_VERSION = "040500_S";
+    private static final int LINKED_LIST_NODE_OVERHEAD = 24;
+    // queue indexes below this offset are reserved for unknown PUBRELs, so they are polled first
+    private static final long UNKNOWN_PUBREL_INDEX_OFFSET = Long.MAX_VALUE / 2;
+    private final @NotNull PublishPayloadPersistence payloadPersistence;
+    private final @NotNull LocalPersistenceFileUtil localPersistenceFileUtil;
+    private final @NotNull PersistenceStartup persistenceStartup;
+    private final @NotNull MessageDroppedService messageDroppedService;
+    private final @NotNull ClientQueuePersistenceSerializer serializer = new ClientQueuePersistenceSerializer();
+    private final @Nullable SegmentedBucket @NotNull [] buckets;
+    private final @NotNull AtomicBoolean stopped = new AtomicBoolean();
+    private final @NotNull AtomicLong nextQueueIndex = new AtomicLong(UNKNOWN_PUBREL_INDEX_OFFSET);
+    private final @NotNull AtomicLong qos0MessagesMemory = new AtomicLong();
+    private final @NotNull ConcurrentHashMap<String, AtomicInteger> clientQos0MemoryMap = new ConcurrentHashMap<>();
+    private final int bucketCount;
+    private final int segmentSize;
+    private final int compactionLivePercent;
+    private final int retainedMessageMax;
+    private final long qos0MemoryLimit;
+    private final int qos0ClientMemoryLimit;
+    private final boolean enabled;
+    @Inject
+    ClientQueueSegmentedLocalPersistence(
+            final @NotNull PublishPayloadPersistence payloadPersistence,
+            final @NotNull LocalPersistenceFileUtil localPersistenceFileUtil,
+            final @NotNull PersistenceStartup persistenceStartup,
+            final @NotNull MessageDroppedService messageDroppedService) {
+        this.payloadPersistence = payloadPersistence;
+        this.localPersistenceFileUtil = localPersistenceFileUtil;
+        this.persistenceStartup = persistenceStartup;
+        this.messageDroppedService = messageDroppedService;
+        bucketCount = InternalConfigurations.PERSISTENCE_BUCKET_COUNT.get();
+        buckets = new SegmentedBucket[bucketCount];
+        segmentSize = InternalConfigurations.QUEUED_MESSAGES_SEGMENT_SIZE_BYTES.get();
+        compactionLivePercent = InternalConfigurations.QUEUED_MESSAGES_SEGMENT_COMPACTION_LIVE_PERCENT.get();
+        retainedMessageMax = InternalConfigurations.RETAINED_MESSAGE_QUEUE_SIZE.get();
+        qos0MemoryLimit = ClientQueueXodusLocalPersistence.getQos0MemoryLimit();
+        qos0ClientMemoryLimit = InternalConfigurations.QOS_0_MEMORY_LIMIT_PER_CLIENT_BYTES.get();
+        enabled = InternalConfigurations.QUEUED_MESSAGES_PERSISTENCE_TYPE.get() == PersistenceType.FILE_SEGMENTED;
+    }
+
+    @PostConstruct
+    protected void postConstruct() {
+        if (enabled) {
+            persistenceStartup.submitPersistenceStart(this);
+        } else {
+            startExternal();
+        }
+    }
+
+    @Override
+    public void startExternal() {
+        final File persistenceFolder =
+                localPersistenceFileUtil.getVersionedLocalPersistenceFolder(PERSISTENCE_NAME, PERSISTENCE_VERSION);
+        try {
+            for (int i = 0; i < bucketCount; i++) {
+                buckets[i] = openBucket(persistenceFolder, i);
+            }
+        } catch (final IOException e) {
+            log.error("An error occurred while opening the {} persistence.", PERSISTENCE_NAME);
+            log.info("Original Exception:", e);
+            throw new UnrecoverableException();
+        }
+        logStartup();
+    }
+
+    @Override
+    public void start() {
+        final File persistenceFolder =
+                localPersistenceFileUtil.getVersionedLocalPersistenceFolder(PERSISTENCE_NAME, PERSISTENCE_VERSION);
+        final CountDownLatch counter = new CountDownLatch(bucketCount);
+        final AtomicBoolean failed = new AtomicBoolean();
+        for (int i = 0; i < bucketCount; i++) {
+            final int bucketIndex = i;
+            persistenceStartup.submitEnvironmentCreate(() -> {
+                try {
+                    buckets[bucketIndex] = openBucket(persistenceFolder, bucketIndex);
+                } catch (final Throwable throwable) {
+                    log.info("Original Exception:", throwable);
+                    failed.set(true);
+                } finally {
+                    counter.countDown();
+                }
+            });
+        }
+        try {
+            counter.await();
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            failed.set(true);
+        }
+        if (failed.get()) {
+            log.error("An error occurred while opening the {} persistence.", PERSISTENCE_NAME);
+            throw new UnrecoverableException();
+        }
+        logStartup();
+    }
+
+    private void logStartup() {
+        if (log.isDebugEnabled()) {
+            int segments = 0;
+            int entries = 0;
+            for (final SegmentedBucket bucket : buckets) {
+                if (bucket != null) {
+                    segments += bucket.segments.size();
+                    entries += bucket.entries.size();
+                }
+            }
+            log.debug("Opened {} persistence with {} queued messages in {} segments.",
+                    PERSISTENCE_NAME,
+                    entries,
+                    segments);
+        }
+    }
+
+    /**
+     * Opens the segments of a bucket and rebuilds the in-memory indexes of its queues.
+     */
+    private @NotNull SegmentedBucket openBucket(final @NotNull File persistenceFolder, final int bucketIndex)
+            throws IOException {
+        final Path folder = new File(persistenceFolder, PERSISTENCE_NAME + "_" + bucketIndex).toPath();
+        Files.createDirectories(folder);
+        final SegmentedBucket bucket = new SegmentedBucket(new ClientQueueInFlightTable(folder), folder);
+        final List<ClientQueueSegment> segments = new ArrayList<>();
+        try (final DirectoryStream<Path> files =
+                     Files.newDirectoryStream(folder, "*" + ClientQueueSegment.SEGMENT_FILE_SUFFIX)) {
+            for (final Path file : files) {
+                final String fileName = file.getFileName().toString();
+                final long segmentId = Long.parseLong(fileName.substring(0,
+                        fileName.length() - ClientQueueSegment.SEGMENT_FILE_SUFFIX.length()));
+                segments.add(ClientQueueSegment.open(folder, segmentId));
+            }
+        }
+        segments.sort(Comparator.comparingLong(ClientQueueSegment::getId));
+        final MutableLongSet acks = new LongHashSet();
+        for (final ClientQueueSegment segment : segments) {
+            segment.readAcks(acks);
+        }
+        final MutableLongIntMap packetIds = bucket.inFlightTable.read();
+        final long[] maxEntryId = {bucket.inFlightTable.getMaxEntryId()};
+        final MutableLongObjectMap<Key> keys = new LongObjectHashMap<>();
+        final Map<Key, Key> uniqueKeys = new HashMap<>();
+        for (final ClientQueueSegment segment : segments) {
+            segment.scan((entryId, queueIndex, queueId, shared, valueOffset, valueLength, recordLength) -> {
+                maxEntryId[0] = Math.max(maxEntryId[0], entryId);
+                if (acks.contains(entryId)) {
+                    return;
+                }
+                final QueueEntry previous = bucket.entries.get(entryId);
+                if (previous != null) {
+                    // copied by an interrupted compaction, the later copy wins
+                    previous.segment.removeLiveEntry(previous.recordLength);
+                }
+                segment.addLiveEntry(recordLength);
+                bucket.entries.put(entryId,
+                        new QueueEntry(entryId, queueIndex, segment, valueOffset, valueLength, recordLength));
+                final Key key = new Key(queueId, shared);
+                keys.put(entryId, uniqueKeys.computeIfAbsent(key, k -> k));
+            });
+        }
+        bucket.entries.forEachValue(entry -> {
+            final ByteIterable serializedValue = readValue(entry);
+            final MessageWithID message = serializer.deserializeValue(serializedValue);
+            entry.retained = serializer.deserializeRetained(serializedValue);
+            if (message instanceof PUBLISH) {
+                final PUBLISH publish = (PUBLISH) message;
+                entry.publishId = publish.getPublishId();
+                entry.packetId = packetIds.getIfAbsent(entry.entryId, NO_PACKET_ID);
+                if (entry.packetId != NO_PACKET_ID) {
+                    bucket.inFlightMarkers++;
+                }
+                payloadPersistence.incrementReferenceCounterOnBootstrap(publish.getPublishId());
+                nextQueueIndex.accumulateAndGet(entry.queueIndex + 1, Math::max);
+            } else {
+                entry.pubrel = true;
+                entry.packetId = message.getPacketIdentifier();
+            }
+            final SegmentedQueue queue = getOrPutQueue(bucket, keys.get(entry.entryId));
+            queue.expiryWatermark = ClientQueueCompaction.UNKNOWN_EXPIRY;
+            (entry.packetId == NO_PACKET_ID ? queue.pending : queue.inFlight).put(entry.queueIndex, entry);
+            queue.size++;
+            if (entry.retained) {
+                queue.retainedSize++;
+            }
+        });
+        bucket.nextEntryId = maxEntryId[0] + 1;
+        for (int i = 0; i < segments.size(); i++) {
+            final ClientQueueSegment segment = segments.get(i);
+            if (segment.getLiveEntries() == 0 && i < segments.size() - 1) {
+                segment.delete();
+            } else {
+                bucket.segments.add(segment);
+            }
+        }
+        if (!segments.isEmpty()) {
+            bucket.nextSegmentId = segments.get(segments.size() - 1).getId() + 1;
+        }
+        if (bucket.inFlightTable.needsRewrite(bucket.inFlightMarkers)) {
+            rewriteInFlightTable(bucket);
+        }
+        return bucket;
+    }
+
+    @Override
+    public void stop() {
+        stopped.set(true);
+        closeDB();
+    }
+
+    public void closeDB() {
+        for (int i = 0; i < bucketCount; i++) {
+            closeDB(i);
+        }
+    }
+
+    @Override
+    public void closeDB(final int bucketIndex) {
+        final SegmentedBucket bucket = buckets[bucketIndex];
+        if (bucket == null || bucket.closed) {
+            return;
+        }
+        bucket.closed = true;
+        try {
+            for (final ClientQueueSegment segment : bucket.segments) {
+                segment.force();
+                segment.close();
+            }
+            bucket.inFlightTable.force();
+            bucket.inFlightTable.close();
+        } catch (final Exception e) {
+            log.error("Could not close bucket {} of the {} persistence.", bucketIndex, PERSISTENCE_NAME);
+            log.debug("Original Exception:", e);
+        }
+    }
+
+    @Override
+    public void add(
+            final @NotNull String queueId,
+            final boolean shared,
+            final @NotNull PUBLISH publish,
+            final long max,
+            final @NotNull QueuedMessagesStrategy strategy,
+            final boolean retained,
+            final int bucketIndex) {
+        checkNotNull(queueId, "Queue ID must not be null");
+        checkNotNull(publish, "Publish must not be null");
+        checkNotNull(strategy, "Strategy must not be null");
+        ThreadPreConditions.startsWith(SINGLE_WRITER_THREAD_PREFIX);
+        final SegmentedBucket bucket = bucket(bucketIndex);
+        final Key key = new Key(queueId, shared);
+        final SegmentedQueue queue = getOrPutQueue(bucket, key);
+        addPublish(bucket, key, queue, publish, max, strategy, retained);
+    }
+
+    @Override
+    public void add(
+            final @NotNull String queueId,
+            final boolean shared,
+            final @NotNull List<PUBLISH> publishes,
+            final long max,
+            final @NotNull QueuedMessagesStrategy strategy,
+            final boolean retained,
+            final int bucketIndex) {
+        checkNotNull(queueId, "Queue ID must not be null");
+        checkNotNull(publishes, "Publishes must not be null");
+        checkNotNull(strategy, "Strategy must not be null");
+        ThreadPreConditions.startsWith(SINGLE_WRITER_THREAD_PREFIX);
+        final SegmentedBucket bucket = bucket(bucketIndex);
+        final Key key = new Key(queueId, shared);
+        final SegmentedQueue queue = getOrPutQueue(bucket, key);
+        for (final PUBLISH publish : publishes) {
+            addPublish(bucket, key, queue, publish, max, strategy, retained);
+        }
+    }
+
+    private void addPublish(
+            final @NotNull SegmentedBucket bucket,
+            final @NotNull Key key,
+            final @NotNull SegmentedQueue queue,
+            final @NotNull PUBLISH publish,
+            final long max,
+            final @NotNull QueuedMessagesStrategy strategy,
+            final boolean retained) {
+        if (publish.getQoS() == QoS.AT_MOST_ONCE) {
+            addQos0Publish(key, queue, new PublishWithRetained(publish, retained));
+            return;
+        }
+        final int qos1And2QueueSize = queue.size - queue.qos0Messages.size() - queue.retainedSize;
+        if ((!retained && qos1And2QueueSize >= max) || (retained && queue.retainedSize >= retainedMessageMax)) {
+            // messages that are queued as retained messages are only discarded in favor of other retained messages,
+            // otherwise a client could only receive a limited amount of retained messages per subscription
+            if (strategy == QueuedMessagesStrategy.DISCARD || !discardOldest(bucket, key, queue, retained)) {
+                logMessageDropped(publish, key.isShared(), key.getQueueId());
+                return;
+            }
+        }
+        final byte[] value = byteIterableToBytes(serializer.serializePublishWithoutPacketId(publish, retained));
+        final QueueEntry entry = append(bucket, key, nextQueueIndex.getAndIncrement(), value);
+        entry.publishId = publish.getPublishId();
+        entry.retained = retained;
+        queue.pending.put(entry.queueIndex, entry);
+        queue.size++;
+        if (retained) {
+            queue.retainedSize++;
+        }
+        lowerExpiryWatermark(queue, publish, false);
+        payloadPersistence.add(publish.getPayload(), publish.getPublishId());
+    }
+
+    /**
+     * @return true if a message was discarded, else false
+     */
+    private boolean discardOldest(
+            final @NotNull SegmentedBucket bucket,
+            final @NotNull Key key,
+            final @NotNull SegmentedQueue queue,
+            final boolean retainedOnly) {
+        // in-flight messages are not discarded
+        final Iterator<QueueEntry> pending = queue.pending.values().iterator();
+        while (pending.hasNext()) {
+            final QueueEntry entry = pending.next();
+            if (entry.retained == retainedOnly) {
+                final PUBLISH publish = (PUBLISH) readMessage(entry);
+                pending.remove();
+                removeEntry(bucket, queue, entry);
+                logMessageDropped(publish, key.isShared(), key.getQueueId());
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void addQos0Publish(
+            final @NotNull Key key,
+            final @NotNull SegmentedQueue queue,
+            final @NotNull PublishWithRetained publishWithRetained) {
+        final long currentQos0MessagesMemory = qos0MessagesMemory.get();
+        final PUBLISH publish = publishWithRetained.publish;
+        if (currentQos0MessagesMemory >= qos0MemoryLimit) {
+            if (key.isShared()) {
+                messageDroppedService.qos0MemoryExceededShared(key.getQueueId(),
+                        publish.getTopic(),
+                        0,
+                        currentQos0MessagesMemory,
+                        qos0MemoryLimit);
+            } else {
+                messageDroppedService.qos0MemoryExceeded(key.getQueueId(),
+                        publish.getTopic(),
+                        0,
+                        currentQos0MessagesMemory,
+                        qos0MemoryLimit);
+            }
+            return;
+        }
+        if (!key.isShared()) {
+            final AtomicInteger clientQos0Memory = clientQos0MemoryMap.get(key.getQueueId());
+            if (clientQos0Memory != null && clientQos0Memory.get() >= qos0ClientMemoryLimit) {
+                messageDroppedService.qos0MemoryExceeded(key.getQueueId(),
+                        publish.getTopic(),
+                        0,
+                        clientQos0Memory.get(),
+                        qos0ClientMemoryLimit);
+                return;
+            }
+        }
+        queue.qos0Messages.add(publishWithRetained);
+        queue.size++;
+        if (publishWithRetained.retained) {
+            queue.retainedSize++;
+        }
+        lowerExpiryWatermark(queue, publish, false);
+        increaseQos0MessagesMemory(key, publish.getEstimatedSizeInMemory());
+        payloadPersistence.add(publish.getPayload(), publish.getPublishId());
+        publish.setPayload(null);
+    }
+
+    @Override
+    public @NotNull ImmutableList<PUBLISH> readNew(
+            final @NotNull String queueId,
+            final boolean shared,
+            final @NotNull ImmutableIntArray packetIds,
+            final long bytesLimit,
+            final int bucketIndex) {
+        checkNotNull(queueId, "Queue ID must not be null");
+        checkNotNull(packetIds, "Packet IDs must not be null");
+        ThreadPreConditions.startsWith(SINGLE_WRITER_THREAD_PREFIX);
+        final SegmentedBucket bucket = bucket(bucketIndex);
+        final Key key = new Key(queueId, shared);
+        final SegmentedQueue queue = bucket.queues.get(key);
+        if (queue == null || queue.size == 0) {
+            return ImmutableList.of();
+        }
+        final int countLimit = packetIds.length();
+        final ImmutableList.Builder<PUBLISH> publishes = ImmutableList.builder();
+        int messageCount = 0;
+        int packetIdIndex = 0;
+        long bytes = 0;
+        final Iterator<QueueEntry> pending = queue.pending.values().iterator();
+        while (messageCount < countLimit && bytes <= bytesLimit) {
+            if (pending.hasNext()) {
+                final QueueEntry entry = pending.next();
+                final PUBLISH publish = (PUBLISH) readMessage(entry);
+                if (publish.isExpired()) {
+                    pending.remove();
+                    removeEntry(bucket, queue, entry);
+                    // do not stop here, because we could have a QoS 0 message left
+                } else if (setPayloadIfExistingElseDrop(publish, queueId)) {
+                    final int packetId = packetIds.get(packetIdIndex++);
+                    publish.setPacketIdentifier(packetId);
+                    pending.remove();
+                    setPacketId(bucket, entry, packetId);
+                    queue.inFlight.put(entry.queueIndex, entry);
+                    publishes.add(publish);
+                    messageCount++;
+                    bytes += publish.getEstimatedSizeInMemory();
+                    if (messageCount == countLimit || bytes > bytesLimit) {
+                        break;
+                    }
+                } else {
+                    pending.remove();
+                    removeEntry(bucket, queue, entry);
+                    continue;
+                }
+            } else if (queue.qos0Messages.isEmpty()) {
+                break;
+            }
+            // add a qos 0 message
+            if (!queue.qos0Messages.isEmpty()) {
+                final PUBLISH qos0Publish = pollQos0Message(key, queue);
+                if (qos0Publish.isExpired()) {
+                    payloadPersistence.decrementReferenceCounter(qos0Publish.getPublishId());
+                } else if (setPayloadIfExistingElseDrop(qos0Publish, queueId)) {
+                    publishes.add(qos0Publish);
+                    messageCount++;
+                    bytes += qos0Publish.getEstimatedSizeInMemory();
+                }
+            }
+        }
+        return publishes.build();
+    }
+
+    private @NotNull PUBLISH pollQos0Message(final @NotNull Key key, final @NotNull SegmentedQueue queue) {
+        final PublishWithRetained publishWithRetained = queue.qos0Messages.poll();
+        final PUBLISH qos0Publish = publishWithRetained.publish;
+        queue.size--;
+        if (publishWithRetained.retained) {
+            queue.retainedSize--;
+        }
+        increaseQos0MessagesMemory(key, qos0Publish.getEstimatedSizeInMemory() * -1);
+        return qos0Publish;
+    }
+
+    /**
+     * Sets the payload of the PUBLISH. The caller is responsible to remove a persisted PUBLISH without payload.
+     *
+     * @return true if the payload exists, false if the PUBLISH has to be dropped
+     */
+    private boolean setPayloadIfExistingElseDrop(final @NotNull PUBLISH publish, final @NotNull String queueId) {
+        final byte[] payload = payloadPersistence.get(publish.getPublishId());
+        if (payload == null) {
+            messageDroppedService.failed(queueId, publish.getTopic(), publish.getQoS().getQosNumber());
+            if (publish.getQoS() == QoS.AT_MOST_ONCE) {
+                payloadPersistence.decrementReferenceCounter(publish.getPublishId());
+            }
+            return false;
+        }
+        publish.setPayload(payload);
+        if (publish.getQoS() == QoS.AT_MOST_ONCE) {
+            // the QoS 0 PUBLISH has already been removed from its (in-memory) queue
+            payloadPersistence.decrementReferenceCounter(publish.getPublishId());
+        }
+        return true;
+    }
+
+    @Override
+    public @NotNull ImmutableList<MessageWithID> readInflight(
+            final @NotNull String client,
+            final boolean shared,
+            final int batchSize,
+            final long bytesLimit,
+            final int bucketIndex) {
+        checkNotNull(client, "client id must not be null");
+        ThreadPreConditions.startsWith(SINGLE_WRITER_THREAD_PREFIX);
+        final SegmentedBucket bucket = bucket(bucketIndex);
+        final SegmentedQueue queue = bucket.queues.get(new Key(client, shared));
+        if (queue == null) {
+            return ImmutableList.of();
+        }
+        final ImmutableList.Builder<MessageWithID> messages = ImmutableList.builder();
+        int count = 0;
+        long bytes = 0;
+        final Iterator<QueueEntry> inFlight = queue.inFlight.values().iterator();
+        while (inFlight.hasNext() && count < batchSize && bytes <= bytesLimit) {
+            final QueueEntry entry = inFlight.next();
+            final MessageWithID message = readMessage(entry);
+            if (message instanceof PUBLISH) {
+                final PUBLISH publish = (PUBLISH) message;
+                if (!setPayloadIfExistingElseDrop(publish, client)) {
+                    inFlight.remove();
+                    removeEntry(bucket, queue, entry);
+                    continue;
+                }
+                bytes += publish.getEstimatedSizeInMemory();
+                publish.setDuplicateDelivery(true);
+            }
+            messages.add(message);
+            count++;
+        }
+        return messages.build();
+    }
+
+    @Override
+    public @Nullable String replace(final @NotNull String client, final @NotNull PUBREL pubrel, final int bucketIndex) {
+        checkNotNull(client, "client id must not be null");
+        checkNotNull(pubrel, "pubrel must not be null");
+        ThreadPreConditions.startsWith(SINGLE_WRITER_THREAD_PREFIX);
+        final SegmentedBucket bucket = bucket(bucketIndex);
+        final Key key = new Key(client, false);
+        final SegmentedQueue queue = getOrPutQueue(bucket, key);
+        final QueueEntry replaced = findInFlight(queue, pubrel.getPacketIdentifier());
+        String replacedId = null;
+        final long queueIndex;
+        final boolean retained;
+        if (replaced != null) {
+            final MessageWithID message = readMessage(replaced);
+            if (message instanceof PUBLISH) {
+                final PUBLISH publish = (PUBLISH) message;
+                payloadPersistence.decrementReferenceCounter(publish.getPublishId());
+                pubrel.setMessageExpiryInterval(publish.getMessageExpiryInterval());
+                pubrel.setPublishTimestamp(publish.getTimestamp());
+                replacedId = publish.getUniqueId();
+            } else if (message instanceof PUBREL) {
+                pubrel.setMessageExpiryInterval(((PUBREL) message).getMessageExpiryInterval());
+                pubrel.setPublishTimestamp(((PUBREL) message).getPublishTimestamp());
+            }
+            queueIndex = replaced.queueIndex;
+            retained = replaced.retained;
+            ack(bucket, replaced);
+        } else {
+            if (InternalConfigurations.EXPIRE_INFLIGHT_PUBRELS_ENABLED) {
+                pubrel.setMessageExpiryInterval(InternalConfigurations.MAXIMUM_INFLIGHT_PUBREL_EXPIRY);
+                pubrel.setPublishTimestamp(System.currentTimeMillis());
+            }
+            queueIndex = nextQueueIndex.getAndIncrement() - UNKNOWN_PUBREL_INDEX_OFFSET;
+            retained = false;
+            queue.size++;
+        }
+        final byte[] value = byteIterableToBytes(serializer.serializePubRel(pubrel, retained));
+        final QueueEntry entry = append(bucket, key, queueIndex, value);
+        entry.pubrel = true;
+        entry.retained = retained;
+        entry.packetId = pubrel.getPacketIdentifier();
+        queue.inFlight.put(queueIndex, entry);
+        lowerExpiryWatermark(queue, pubrel, true);
+        return replacedId;
+    }
+
+    @Override
+    public @Nullable String remove(final @NotNull String client, final int packetId, final int bucketIndex) {
+        return remove(client, packetId, null, bucketIndex);
+    }
+
+    @Override
+    public @Nullable String remove(
+            final @NotNull String client,
+            final int packetId,
+            final @Nullable String uniqueId,
+            final int bucketIndex) {
+        checkNotNull(client, "client id must not be null");
+        ThreadPreConditions.startsWith(SINGLE_WRITER_THREAD_PREFIX);
+        final SegmentedBucket bucket = bucket(bucketIndex);
+        final SegmentedQueue queue = bucket.queues.get(new Key(client, false));
+        if (queue == null) {
+            return null;
+        }
+        final QueueEntry entry = findInFlight(queue, packetId);
+        if (entry == null) {
+            return null;
+        }
+        String removedId = null;
+        if (!entry.pubrel) {
+            final PUBLISH publish = (PUBLISH) readMessage(entry);
+            if (uniqueId != null && !uniqueId.equals(publish.getUniqueId())) {
+                return null;
+            }
+            removedId = publish.getUniqueId();
+        }
+        queue.inFlight.remove(entry.queueIndex);
+        removeEntry(bucket, queue, entry);
+        return removedId;
+    }
+
+    @Override
+    public int size(final @NotNull String queueId, final boolean shared, final int bucketIndex) {
+        checkNotNull(queueId, "Queue ID must not be null");
+        ThreadPreConditions.startsWith(SINGLE_WRITER_THREAD_PREFIX);
+        final SegmentedQueue queue = bucket(bucketIndex).queues.get(new Key(queueId, shared));
+        return (queue == null) ? 0 : queue.size;
+    }
+
+    @Override
+    public void clear(final @NotNull String queueId, final boolean shared, final int bucketIndex) {
+        checkNotNull(queueId, "Queue ID must not be null");
+        ThreadPreConditions.startsWith(SINGLE_WRITER_THREAD_PREFIX);
+        final SegmentedBucket bucket = bucket(bucketIndex);
+        final Key key = new Key(queueId, shared);
+        final SegmentedQueue queue = bucket.queues.remove(key);
+        if (queue == null) {
+            return;
+        }
+        for (final QueueEntry entry : queue.inFlight.values()) {
+            removeEntry(bucket, queue, entry);
+        }
+        for (final QueueEntry entry : queue.pending.values()) {
+            removeEntry(bucket, queue, entry);
+        }
+        for (final PublishWithRetained qos0Message : queue.qos0Messages) {
+            increaseQos0MessagesMemory(key, qos0Message.publish.getEstimatedSizeInMemory() * -1);
+            payloadPersistence.decrementReferenceCounter(qos0Message.publish.getPublishId());
+        }
+    }
+
+    @Override
+    public void removeAllQos0Messages(final @NotNull String queueId, final boolean shared, final int bucketIndex) {
+        checkNotNull(queueId, "Queue id must not be null");
+        ThreadPreConditions.startsWith(SINGLE_WRITER_THREAD_PREFIX);
+        final Key key = new Key(queueId, shared);
+        final SegmentedQueue queue = bucket(bucketIndex).queues.get(key);
+        if (queue == null) {
+            return;
+        }
+        while (!queue.qos0Messages.isEmpty()) {
+            final PUBLISH publish = pollQos0Message(key, queue);
+            payloadPersistence.decrementReferenceCounter(publish.getPublishId());
+        }
+    }
+
+    @Override
+    public @NotNull ImmutableSet<String> cleanUp(final int bucketIndex) {
+        ThreadPreConditions.startsWith(SINGLE_WRITER_THREAD_PREFIX);
+        if (stopped.get()) {
+            return ImmutableSet.of();
+        }
+        final SegmentedBucket bucket = bucket(bucketIndex);
+        final ImmutableSet.Builder<String> sharedQueues = ImmutableSet.builder();
+        for (final Key key : bucket.queues.keySet()) {
+            if (key.isShared()) {
+                sharedQueues.add(key.getQueueId());
+            }
+        }
+        removeExpiredMessages(bucket, new ClientQueueCompaction(Integer.MAX_VALUE));
+        compactSegment(bucket);
+        return sharedQueues.build();
+    }
+
+    @Override
+    public void removeExpiredMessages(final @NotNull ClientQueueCompaction compaction, final int bucketIndex) {
+        ThreadPreConditions.startsWith(SINGLE_WRITER_THREAD_PREFIX);
+        if (stopped.get()) {
+            return;
+        }
+        removeExpiredMessages(bucket(bucketIndex), compaction);
+    }
+
+    private void removeExpiredMessages(
+            final @NotNull SegmentedBucket bucket,
+            final @NotNull ClientQueueCompaction compaction) {
+        final Iterator<Map.Entry<Key, SegmentedQueue>> queues = bucket.queues.entrySet().iterator();
+        while (queues.hasNext() && !compaction.isExhausted()) {
+            final Map.Entry<Key, SegmentedQueue> queue = queues.next();
+            if (compaction.isDue(queue.getValue().expiryWatermark)) {
+                cleanExpiredMessages(bucket, queue.getKey(), queue.getValue(), compaction);
+            }
+            if (queue.getValue().size == 0) {
+                queues.remove();
+            }
+        }
+    }
+
+    private void cleanExpiredMessages(
+            final @NotNull SegmentedBucket bucket,
+            final @NotNull Key key,
+            final @NotNull SegmentedQueue queue,
+            final @NotNull ClientQueueCompaction compaction) {
+        // the queue stays due if the compaction is exhausted before all messages are checked
+        queue.expiryWatermark = ClientQueueCompaction.UNKNOWN_EXPIRY;
+        long expiryWatermark = ClientQueueCompaction.NO_EXPIRY;
+        final Iterator<PublishWithRetained> qos0Messages = queue.qos0Messages.iterator();
+        while (qos0Messages.hasNext()) {
+            if (compaction.isExhausted()) {
+                return;
+            }
+            final PublishWithRetained publishWithRetained = qos0Messages.next();
+            final PUBLISH qos0Message = publishWithRetained.publish;
+            if (qos0Message.isExpired()) {
+                queue.size--;
+                if (publishWithRetained.retained) {
+                    queue.retainedSize--;
+                }
+                increaseQos0MessagesMemory(key, qos0Message.getEstimatedSizeInMemory() * -1);
+                payloadPersistence.decrementReferenceCounter(qos0Message.getPublishId());
+                qos0Messages.remove();
+                compaction.removed(qos0Message.getEstimatedSizeInMemory());
+            } else {
+                expiryWatermark =
+                        Math.min(expiryWatermark, ClientQueueCompaction.expiryTimestamp(qos0Message, false));
+            }
+        }
+        expiryWatermark = Math.min(expiryWatermark,
+                removeExpired(bucket, queue, queue.inFlight.values().iterator(), compaction));
+        expiryWatermark = Math.min(expiryWatermark,
+                removeExpired(bucket, queue, queue.pending.values().iterator(), compaction));
+        if (!compaction.isExhausted()) {
+            queue.expiryWatermark = expiryWatermark;
+        }
+    }
+
+    /**
+     * @return the expiry watermark of the remaining entries
+     */
+    private long removeExpired(
+            final @NotNull SegmentedBucket bucket,
+            final @NotNull SegmentedQueue queue,
+            final @NotNull Iterator<QueueEntry> entries,
+            final @NotNull ClientQueueCompaction compaction) {
+        long expiryWatermark = ClientQueueCompaction.NO_EXPIRY;
+        while (entries.hasNext()) {
+            if (compaction.isExhausted()) {
+                return ClientQueueCompaction.UNKNOWN_EXPIRY;
+            }
+            final QueueEntry entry = entries.next();
+            final MessageWithID message = readMessage(entry);
+            final boolean drop;
+            if (message instanceof PUBREL) {
+                drop = InternalConfigurations.EXPIRE_INFLIGHT_PUBRELS_ENABLED &&
+                        ((PUBREL) message).hasExpired(InternalConfigurations.MAXIMUM_INFLIGHT_PUBREL_EXPIRY);
+            } else {
+                final PUBLISH publish = (PUBLISH) message;
+                final boolean isInflight =
+                        publish.getQoS() == QoS.EXACTLY_ONCE && entry.packetId != NO_PACKET_ID;
+                drop = publish.isExpired() &&
+                        (!isInflight || InternalConfigurations.EXPIRE_INFLIGHT_MESSAGES_ENABLED);
+            }
+            if (drop) {
+                entries.remove();
+                removeEntry(bucket, queue, entry);
+                compaction.removed(entry.recordLength);
+            } else {
+                expiryWatermark = Math.min(expiryWatermark,
+                        ClientQueueCompaction.expiryTimestamp(message, entry.packetId != NO_PACKET_ID));
+            }
+        }
+        return expiryWatermark;
+    }
+
+    @Override
+    public void removeShared(
+            final @NotNull String sharedSubscription,
+            final @NotNull String uniqueId,
+            final int bucketIndex) {
+        checkNotNull(sharedSubscription, "Shared subscription must not be null");
+        checkNotNull(uniqueId, "Unique id must not be null");
+        ThreadPreConditions.startsWith(SINGLE_WRITER_THREAD_PREFIX);
+        final SegmentedBucket bucket = bucket(bucketIndex);
+        final SegmentedQueue queue = bucket.queues.get(new Key(sharedSubscription, true));
+        if (queue == null) {
+            return;
+        }
+        if (!removeShared(bucket, queue, queue.inFlight.values().iterator(), uniqueId)) {
+            removeShared(bucket, queue, queue.pending.values().iterator(), uniqueId);
+        }
+    }
+
+    private boolean removeShared(
+            final @NotNull SegmentedBucket bucket,
+            final @NotNull SegmentedQueue queue,
+            final @NotNull Iterator<QueueEntry> entries,
+            final @NotNull String uniqueId) {
+        while (entries.hasNext()) {
+            final QueueEntry entry = entries.next();
+            if (!entry.pubrel && uniqueId.equals(((PUBLISH) readMessage(entry)).getUniqueId())) {
+                entries.remove();
+                removeEntry(bucket, queue, entry);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public void removeInFlightMarker(
+            final @NotNull String sharedSubscription,
+            final @NotNull String uniqueId,
+            final int bucketIndex) {
+        checkNotNull(sharedSubscription, "Shared subscription must not be null");
+        checkNotNull(uniqueId, "Unique id must not be null");
+        ThreadPreConditions.startsWith(SINGLE_WRITER_THREAD_PREFIX);
+        final SegmentedBucket bucket = bucket(bucketIndex);
+        final SegmentedQueue queue = bucket.queues.get(new Key(sharedSubscription, true));
+        if (queue == null) {
+            return;
+        }
+        final Iterator<QueueEntry> inFlight = queue.inFlight.values().iterator();
+        while (inFlight.hasNext()) {
+            final QueueEntry entry = inFlight.next();
+            if (entry.pubrel) {
+                continue;
+            }
+            final PUBLISH publish = (PUBLISH) readMessage(entry);
+            if (uniqueId.equals(publish.getUniqueId())) {
+                inFlight.remove();
+                setPacketId(bucket, entry, NO_PACKET_ID);
+                queue.pending.put(entry.queueIndex, entry);
+                // the message is not protected from expiry as in-flight QoS 2 message anymore
+                lowerExpiryWatermark(queue, publish, false);
+                return;
+            }
+        }
+    }
+
+    @Override
+    public long getQos0MessagesMemory() {
+        return qos0MessagesMemory.get();
+    }
+
+    /**
+     * Iterates the persisted queues, QoS 0 messages are not included. Must not be called concurrently to any other
+     * method, it is only used for migrations.
+     */
+    public void iterate(final @NotNull QueueCallback callback) {
+        for (final SegmentedBucket bucket : buckets) {
+            if (bucket == null) {
+                continue;
+            }
+            for (final Map.Entry<Key, SegmentedQueue> queue : bucket.queues.entrySet()) {
+                final ImmutableList<ClientQueueEntry> entries = readEntries(queue.getValue(), false);
+                if (!entries.isEmpty()) {
+                    callback.onItem(queue.getKey(), entries);
+                }
+            }
+        }
+    }
+
+    @VisibleForTesting
+    @NotNull ImmutableList<ClientQueueEntry> getAll(
+            final @NotNull String queueId,
+            final boolean shared,
+            final int bucketIndex) {
+        final SegmentedQueue queue = bucket(bucketIndex).queues.get(new Key(queueId, shared));
+        if (queue == null) {
+            return ImmutableList.of();
+        }
+        return readEntries(queue, true);
+    }
+
+    @VisibleForTesting
+    int getSegmentCount(final int bucketIndex) {
+        return bucket(bucketIndex).segments.size();
+    }
+
+    private @NotNull ImmutableList<ClientQueueEntry> readEntries(
+            final @NotNull SegmentedQueue queue,
+            final boolean withPayload) {
+        final ImmutableList.Builder<ClientQueueEntry> entries = ImmutableList.builder();
+        final List<QueueEntry> queueEntries = new ArrayList<>(queue.inFlight.values());
+        queueEntries.addAll(queue.pending.values());
+        for (final QueueEntry entry : queueEntries) {
+            final MessageWithID message = readMessage(entry);
+            if (withPayload && message instanceof PUBLISH) {
+                final PUBLISH publish = (PUBLISH) message;
+                publish.setPayload(payloadPersistence.get(publish.getPublishId()));
+            }
+            entries.add(new ClientQueueEntry(message, entry.retained));
+        }
+        return entries.build();
+    }
+
+    private @Nullable QueueEntry findInFlight(final @NotNull SegmentedQueue queue, final int packetId) {
+        for (final QueueEntry entry : queue.inFlight.values()) {
+            if (entry.packetId == packetId) {
+                return entry;
+            }
+        }
+        return null;
+    }
+
+    private @NotNull MessageWithID readMessage(final @NotNull QueueEntry entry) {
+        final MessageWithID message = serializer.deserializeValue(readValue(entry));
+        if (!entry.pubrel) {
+            message.setPacketIdentifier(entry.packetId);
+        }
+        return message;
+    }
+
+    private static @NotNull ByteIterable readValue(final @NotNull QueueEntry entry) {
+        return bytesToByteIterable(entry.segment.read(entry.valueOffset, entry.valueLength));
+    }
+
+    /**
+     * Appends a new entry to the active segment of the bucket.
+     */
+    private @NotNull QueueEntry append(
+            final @NotNull SegmentedBucket bucket,
+            final @NotNull Key key,
+            final long queueIndex,
+            final byte @NotNull [] value) {
+        final byte[] queueId = key.getQueueId().getBytes(UTF_8);
+        final long entryId = bucket.nextEntryId++;
+        final int recordLength = ClientQueueSegment.recordLength(queueId.length, value.length);
+        final ClientQueueSegment segment = writableSegment(bucket, recordLength);
+        final int valueOffset = segment.append(entryId, queueIndex, queueId, key.isShared(), value);
+        final QueueEntry entry = new QueueEntry(entryId, queueIndex, segment, valueOffset, value.length, recordLength);
+        bucket.entries.put(entryId, entry);
+        return entry;
+    }
+
+    private @NotNull ClientQueueSegment writableSegment(final @NotNull SegmentedBucket bucket, final int recordLength) {
+        final ClientQueueSegment active = bucket.activeSegment();
+        if (active != null && active.hasRoom(recordLength)) {
+            return active;
+        }
+        final ClientQueueSegment segment;
+        try {
+            // a record that is larger than a segment gets a segment of its own
+            segment = ClientQueueSegment.create(bucket.folder,
+                    bucket.nextSegmentId++,
+                    Math.max(segmentSize, recordLength + Integer.BYTES));
+        } catch (final IOException e) {
+            throw new UncheckedIOException("Could not create a segment in " + bucket.folder, e);
+        }
+        bucket.segments.add(segment);
+        if (active != null && active.getLiveEntries() == 0) {
+            deleteSegment(bucket, active);
+        }
+        return segment;
+    }
+
+    /**
+     * Removes the entry from the queue sizes and the bucket. The caller is responsible to remove the entry from the
+     * in-flight or pending entries of the queue.
+     */
+    private void removeEntry(
+            final @NotNull SegmentedBucket bucket,
+            final @NotNull SegmentedQueue queue,
+            final @NotNull QueueEntry entry) {
+        if (!entry.pubrel) {
+            payloadPersistence.decrementReferenceCounter(entry.publishId);
+        }
+        queue.size--;
+        if (entry.retained) {
+            queue.retainedSize--;
+        }
+        ack(bucket, entry);
+    }
+
+    private void ack(final @NotNull SegmentedBucket bucket, final @NotNull QueueEntry entry) {
+        bucket.entries.remove(entry.entryId);
+        if (!entry.pubrel && entry.packetId != NO_PACKET_ID) {
+            bucket.inFlightMarkers--;
+        }
+        final ClientQueueSegment segment = entry.segment;
+        segment.ack(entry.entryId);
+        segment.removeLiveEntry(entry.recordLength);
+        if (segment.getLiveEntries() == 0 && segment != bucket.activeSegment()) {
+            deleteSegment(bucket, segment);
+        }
+    }
+
+    private void setPacketId(
+            final @NotNull SegmentedBucket bucket,
+            final @NotNull QueueEntry entry,
+            final int packetId) {
+        if (entry.packetId == NO_PACKET_ID && packetId != NO_PACKET_ID) {
+            bucket.inFlightMarkers++;
+        } else if (entry.packetId != NO_PACKET_ID && packetId == NO_PACKET_ID) {
+            bucket.inFlightMarkers--;
+        }
+        entry.packetId = packetId;
+        bucket.inFlightTable.put(entry.entryId, packetId);
+        if (bucket.inFlightTable.needsRewrite(bucket.inFlightMarkers)) {
+            rewriteInFlightTable(bucket);
+        }
+    }
+
+    private static void rewriteInFlightTable(final @NotNull SegmentedBucket bucket) {
+        final MutableLongIntMap packetIds = new LongIntHashMap(bucket.inFlightMarkers);
+        for (final SegmentedQueue queue : bucket.queues.values()) {
+            for (final QueueEntry entry : queue.inFlight.values()) {
+                if (!entry.pubrel) {
+                    packetIds.put(entry.entryId, entry.packetId);
+                }
+            }
+        }
+        bucket.inFlightTable.rewrite(packetIds);
+    }
+
+    /**
+     * Copies the live entries of at most one sealed segment, that mostly holds removed entries, to the active segment
+     * and deletes it afterwards.
+     */
+    private void compactSegment(final @NotNull SegmentedBucket bucket) {
+        final ClientQueueSegment active = bucket.activeSegment();
+        for (final ClientQueueSegment segment : bucket.segments) {
+            if (segment == active ||
+                    segment.getLiveBytes() * 100 >= (long) segment.getWritePosition() * compactionLivePercent) {
+                continue;
+            }
+            final long liveBytes = segment.getLiveBytes();
+            segment.scan((entryId, queueIndex, queueId, shared, valueOffset, valueLength, recordLength) -> {
+                final QueueEntry entry = bucket.entries.get(entryId);
+                if (entry == null || entry.segment != segment) {
+                    return;
+                }
+                final byte[] value = segment.read(valueOffset, valueLength);
+                final ClientQueueSegment target = writableSegment(bucket, recordLength);
+                entry.valueOffset = target.append(entryId, queueIndex, queueId.getBytes(UTF_8), shared, value);
+                entry.segment = target;
+            });
+            log.trace("Compacted segment {} of the {} persistence, reclaimed {} bytes.",
+                    segment.getId(),
+                    PERSISTENCE_NAME,
+                    segment.getCapacity() - liveBytes);
+            deleteSegment(bucket, segment);
+            return;
+        }
+    }
+
+    private static void deleteSegment(
+            final @NotNull SegmentedBucket bucket,
+            final @NotNull ClientQueueSegment segment) {
+        bucket.segments.remove(segment);
+        try {
+            segment.delete();
+        } catch (final IOException e) {
+            log.warn("Could not delete segment {} of the {} persistence.", segment.getId(), PERSISTENCE_NAME);
+            log.debug("Original Exception:", e);
+        }
+    }
+
+    private @NotNull SegmentedBucket bucket(final int bucketIndex) {
+        final SegmentedBucket bucket = buckets[bucketIndex];
+        checkNotNull(bucket, "Bucket %s of the %s persistence is not opened", bucketIndex, PERSISTENCE_NAME);
+        return bucket;
+    }
+
+    private static void lowerExpiryWatermark(
+            final @NotNull SegmentedQueue queue,
+            final @NotNull MessageWithID message,
+            final boolean inFlight) {
+        queue.expiryWatermark =
+                Math.min(queue.expiryWatermark, ClientQueueCompaction.expiryTimestamp(message, inFlight));
+    }
+
+    private static @NotNull SegmentedQueue getOrPutQueue(
+            final @NotNull SegmentedBucket bucket,
+            final @NotNull Key key) {
+        return bucket.queues.computeIfAbsent(key, k -> new SegmentedQueue());
+    }
+
+    private void logMessageDropped(
+            final @NotNull PUBLISH publish,
+            final boolean shared,
+            final @NotNull String queueId) {
+        if (shared) {
+            messageDroppedService.queueFullShared(queueId, publish.getTopic(), publish.getQoS().getQosNumber());
+        } else {
+            messageDroppedService.queueFull(queueId, publish.getTopic(), publish.getQoS().getQosNumber());
+        }
+    }
+
+    /**
+     * @param size the amount of bytes the currently used qos 0 memory will be increased by. May be negative.
+     */
+    private void increaseQos0MessagesMemory(final @NotNull Key key, final int size) {
+        final int delta = size < 0 ? size - LINKED_LIST_NODE_OVERHEAD : size + LINKED_LIST_NODE_OVERHEAD;
+        qos0MessagesMemory.addAndGet(delta);
+        if (key.isShared()) {
+            return;
+        }
+        final AtomicInteger qos0MemoryPerClient = clientQos0MemoryMap.compute(key.getQueueId(), (clientId, memory) -> {
+            if (memory == null) {
+                return new AtomicInteger(Math.max(delta, 0));
+            }
+            memory.addAndGet(delta);
+            return memory;
+        });
+        if (qos0MemoryPerClient.get() <= 0) {
+            clientQos0MemoryMap.remove(key.getQueueId());
+        }
+    }
+
+    private static class SegmentedBucket {
+
+        private final @NotNull ClientQueueInFlightTable inFlightTable;
+        private final @NotNull Path folder;
+        // ordered by segment id, the last segment is the active one
+        private final @NotNull List<ClientQueueSegment> segments = new ArrayList<>();
+        private final @NotNull MutableLongObjectMap<QueueEntry> entries = new LongObjectHashMap<>();
+        private final @NotNull Map<Key, SegmentedQueue> queues = new HashMap<>();
+        private long nextEntryId = 1;
+        private long nextSegmentId = 1;
+        private int inFlightMarkers;
+        private boolean closed;
+        private SegmentedBucket(final @NotNull ClientQueueInFlightTable inFlightTable, final @NotNull Path folder) {
+            this.inFlightTable = inFlightTable;
+            this.folder = folder;
+        }
+
+        private @Nullable ClientQueueSegment activeSegment() {
+            return segments.isEmpty() ? null : segments.get(segments.size() - 1);
+        }
+    }
+
+    private static class SegmentedQueue {
+
+        // both ordered by queue index
+        private final @NotNull TreeMap<Long, QueueEntry> inFlight = new TreeMap<>();
+        private final @NotNull TreeMap<Long, QueueEntry> pending = new TreeMap<>();
+        private final @NotNull LinkedList<PublishWithRetained> qos0Messages = new LinkedList<>();
+        private int size;
+        private int retainedSize;
+        private long expiryWatermark = ClientQueueCompaction.NO_EXPIRY;
+    }
+
+    private static class QueueEntry {
+
+        private final long entryId;
+        private final long queueIndex;
+        private final int valueLength;
+        private final int recordLength;
+        private @NotNull ClientQueueSegment segment;
+        private int valueOffset;
+        private long publishId;
+        private int packetId;
+        private boolean retained;
+        private boolean pubrel;
+        private QueueEntry(
+                final long entryId,
+                final long queueIndex,
+                final @NotNull ClientQueueSegment segment,
+                final int valueOffset,
+                final int valueLength,
+                final int recordLength) {
+            this.entryId = entryId;
+            this.queueIndex = queueIndex;
+            this.segment = segment;
+            this.valueOffset = valueOffset;
+            this.valueLength = valueLength;
+            this.recordLength = recordLength;
+        }
+    }
+
+    private static class PublishWithRetained {
+
+        private final @NotNull PUBLISH publish;
+        private final boolean retained;
+        private PublishWithRetained(final @NotNull PUBLISH publish, final boolean retained) {
+            this.publish = publish;
+            this.retained = retained;
+        }
+    }
+}
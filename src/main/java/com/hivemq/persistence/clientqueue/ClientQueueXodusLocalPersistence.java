@@ -15,6 +15,8 @@
  */
 package com.hivemq.persistence.clientqueue;
 
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.MetricRegistry;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.cache.Cache;
 import com.google.common.cache.CacheBuilder;
@@ -27,6 +29,8 @@ import com.hivemq.configuration.service.MqttConfigurationService;
 import com.hivemq.configuration.service.MqttConfigurationService.QueuedMessagesStrategy;
 import com.hivemq.extension.sdk.api.annotations.NotNull;
 import com.hivemq.extension.sdk.api.annotations.Nullable;
+import com.hivemq.metrics.HiveMQMetrics;
+import com.hivemq.migration.meta.PersistenceType;
 import com.hivemq.mqtt.message.MessageWithID;
 import com.hivemq.mqtt.message.QoS;
 import com.hivemq.mqtt.message.dropping.MessageDroppedService;
@@ -44,8 +48,11 @@ import com.hivemq.util.Strings;
 import com.hivemq.util.ThreadPreConditions;
 import jetbrains.exodus.ByteIterable;
 import jetbrains.exodus.env.Cursor;
+import jetbrains.exodus.env.Store;
 import jetbrains.exodus.env.StoreConfig;
 import jetbrains.exodus.env.Transaction;
+import org.eclipse.collections.api.map.primitive.MutableLongIntMap;
+import org.eclipse.collections.impl.map.mutable.primitive.LongIntHashMap;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -74,6 +81,8 @@ public class ClientQueueXodusLocalPersistence extends XodusLocalPersistence impl
     public static final @NotNull String PERSISTENCE_NAME = "client_queue";
     public static final @NotNull String PERSISTENCE_VERSION = "040500";
     private static final int LINKED_LIST_NODE_OVERHEAD = 24;
+    private static final @NotNull String IN_FLIGHT_STORE_NAME = PERSISTENCE_NAME + "_in_flight";
+    private static final @NotNull String TOPIC_DICTIONARY_STORE_NAME = PERSISTENCE_NAME + "_topics";
     private final @NotNull ClientQueuePersistenceSerializer serializer;
     private final @NotNull MessageDroppedService messageDroppedService;
     private final @NotNull ConcurrentHashMap<Integer, Map<Key, AtomicInteger>> queueSizeBuckets;
@@ -85,26 +94,46 @@ public class ClientQueueXodusLocalPersistence extends XodusLocalPersistence impl
     private final long qos0MemoryLimit;
     private final int qos0ClientMemoryLimit;
     private final @NotNull ConcurrentHashMap<String, AtomicInteger> clientQos0MemoryMap;
+    // a queue without an expiry watermark has not been read by a clean up yet, so it may contain expired messages
+    private final @NotNull ConcurrentHashMap<Integer, Map<Key, Long>> expiryWatermarkBuckets;
     // this caches the lower bound for a publish without packet-id,
     // the cached index is guaranteed to be lower or equal to the index
     // so it is safe to seek to this index without missing a publish without packet-id
     @VisibleForTesting
     final @NotNull Cache<String, Long> sharedSubLastPacketWithoutIdCache;
+    // The packet ids of in-flight PUBLISHes are not part of the persisted values, so marking a PUBLISH as in-flight
+    // does not rewrite the whole message. They are kept per queue by queue index and are persisted in a companion
+    // store of each bucket, from which they are loaded on startup.
+    private final @NotNull ConcurrentHashMap<Key, MutableLongIntMap> inFlightPacketIds = new ConcurrentHashMap<>();
+    private @NotNull Store @NotNull [] inFlightStores = new Store[0];
+    // Topics and hivemq ids that are referenced by id from the values in the compact format, one per bucket.
+    private @NotNull TopicDictionary @NotNull [] topicDictionaries = new TopicDictionary[0];
+    private final boolean compactValueFormat;
+    private final int topicDictionaryMaxSize;
+    private final @NotNull Counter enqueuedBytes;
+    private final @NotNull Counter valueBytesWritten;
+    private final @NotNull Counter inFlightBytesWritten;
+    private final @NotNull Counter compactValues;
+    private final @NotNull Counter compactValuesLegacyBytes;
+    private final @NotNull Counter compactValuesBytes;
     @Inject
     ClientQueueXodusLocalPersistence(
             final @NotNull PublishPayloadPersistence payloadPersistence,
             final @NotNull EnvironmentUtil environmentUtil,
             final @NotNull LocalPersistenceFileUtil localPersistenceFileUtil,
             final @NotNull PersistenceStartup persistenceStartup,
-            final @NotNull MessageDroppedService messageDroppedService) {
+            final @NotNull MessageDroppedService messageDroppedService,
+            final @NotNull MetricRegistry metricRegistry) {
         super(environmentUtil,
                 localPersistenceFileUtil,
                 persistenceStartup,
                 InternalConfigurations.PERSISTENCE_BUCKET_COUNT.get(),
-                true);
+                InternalConfigurations.QUEUED_MESSAGES_PERSISTENCE_TYPE.get() == PersistenceType.FILE);
         retainedMessageMax = InternalConfigurations.RETAINED_MESSAGE_QUEUE_SIZE.get();
         qos0ClientMemoryLimit = InternalConfigurations.QOS_0_MEMORY_LIMIT_PER_CLIENT_BYTES.get();
         serializer = new ClientQueuePersistenceSerializer();
+        compactValueFormat = InternalConfigurations.PERSISTENCE_COMPACT_VALUE_FORMAT_ENABLED.get();
+        topicDictionaryMaxSize = InternalConfigurations.QUEUED_MESSAGES_TOPIC_DICTIONARY_MAX_SIZE.get();
         this.messageDroppedService = messageDroppedService;
         queueSizeBuckets = new ConcurrentHashMap<>();
         retainedQueueSizeBuckets = new ConcurrentHashMap<>();
@@ -112,13 +141,24 @@ public class ClientQueueXodusLocalPersistence extends XodusLocalPersistence impl
         qos0MessageBuckets = new ConcurrentHashMap<>();
         qos0MemoryLimit = getQos0MemoryLimit();
         clientQos0MemoryMap = new ConcurrentHashMap<>();
+        expiryWatermarkBuckets = new ConcurrentHashMap<>();
         sharedSubLastPacketWithoutIdCache = CacheBuilder.newBuilder()
                 .maximumSize(InternalConfigurations.SHARED_SUBSCRIPTION_WITHOUT_PACKET_ID_CACHE_MAX_SIZE_ENTRIES.get())
                 .expireAfterAccess(60, TimeUnit.SECONDS)
                 .build();
+        enqueuedBytes = metricRegistry.counter(HiveMQMetrics.QUEUED_MESSAGES_FILE_PERSISTENCE_ENQUEUED_BYTES.name());
+        valueBytesWritten =
+                metricRegistry.counter(HiveMQMetrics.QUEUED_MESSAGES_FILE_PERSISTENCE_VALUE_BYTES_WRITTEN.name());
+        inFlightBytesWritten =
+                metricRegistry.counter(HiveMQMetrics.QUEUED_MESSAGES_FILE_PERSISTENCE_IN_FLIGHT_BYTES_WRITTEN.name());
+        compactValues = metricRegistry.counter(HiveMQMetrics.QUEUED_MESSAGES_FILE_PERSISTENCE_COMPACT_VALUES.name());
+        compactValuesLegacyBytes = metricRegistry.counter(
+                HiveMQMetrics.QUEUED_MESSAGES_FILE_PERSISTENCE_COMPACT_VALUES_LEGACY_BYTES.name());
+        compactValuesBytes =
+                metricRegistry.counter(HiveMQMetrics.QUEUED_MESSAGES_FILE_PERSISTENCE_COMPACT_VALUES_BYTES.name());
     }
 
-    private static long getQos0MemoryLimit() {
+    static long getQos0MemoryLimit() {
         final long maxHeap = Runtime.getRuntime().maxMemory();
         final long maxHardLimit;
         final int hardLimitDivisor = QOS_0_MEMORY_HARD_LIMIT_DIVISOR.get();
@@ -165,10 +205,35 @@ public class ClientQueueXodusLocalPersistence extends XodusLocalPersistence impl
             qos0MessageBuckets.put(i, new ConcurrentHashMap<>());
             queueSizeBuckets.put(i, new ConcurrentSkipListMap<>());
             retainedQueueSizeBuckets.put(i, new ConcurrentHashMap<>());
+            expiryWatermarkBuckets.put(i, new ConcurrentHashMap<>());
         }
         final AtomicLong nextMessageIndex = new AtomicLong(Long.MAX_VALUE / 2);
-        for (final Bucket bucket : buckets) {
-            bucket.getEnvironment().executeInReadonlyTransaction(txn -> {
+        inFlightPacketIds.clear();
+        inFlightStores = new Store[buckets.length];
+        topicDictionaries = new TopicDictionary[buckets.length];
+        for (int i = 0; i < buckets.length; i++) {
+            final Bucket bucket = buckets[i];
+            final Store inFlightStore = bucket.getEnvironment()
+                    .computeInTransaction(txn -> bucket.getEnvironment()
+                            .openStore(IN_FLIGHT_STORE_NAME, StoreConfig.WITHOUT_DUPLICATES, txn));
+            inFlightStores[i] = inFlightStore;
+            final Store topicDictionaryStore = bucket.getEnvironment()
+                    .computeInTransaction(txn -> bucket.getEnvironment()
+                            .openStore(TOPIC_DICTIONARY_STORE_NAME, StoreConfig.WITHOUT_DUPLICATES, txn));
+            final TopicDictionary topicDictionary =
+                    new TopicDictionary(topicDictionaryStore, topicDictionaryMaxSize);
+            topicDictionaries[i] = topicDictionary;
+            bucket.getEnvironment().executeInExclusiveTransaction(txn -> {
+                final TransactionCommitActions commitActions = TransactionCommitActions.asCommitHookFor(txn);
+                topicDictionary.load(txn);
+                try (final Cursor cursor = inFlightStore.openCursor(txn)) {
+                    while (cursor.getNext()) {
+                        inFlightPacketIds.computeIfAbsent(serializer.deserializeKeyId(cursor.getKey()),
+                                        k -> new LongIntHashMap())
+                                .put(serializer.deserializeIndex(cursor.getKey()),
+                                        serializer.deserializeInFlightPacketId(cursor.getValue()));
+                    }
+                }
                 try (final Cursor cursor = bucket.getStore().openCursor(txn)) {
                     Key currentKey = null;
                     int queueSize = 0;
@@ -189,7 +254,8 @@ public class ClientQueueXodusLocalPersistence extends XodusLocalPersistence impl
                             retainedSize = 0;
                         }
                         currentKey = key;
-                        final MessageWithID messageWithID = serializer.deserializeValue(cursor.getValue());
+                        final MessageWithID messageWithID =
+                                serializer.deserializeValue(cursor.getValue(), topicDictionary);
                         if (messageWithID instanceof PUBLISH) {
                             final long deserializeIndex = serializer.deserializeIndex(cursor.getKey());
                             if (nextMessageIndex.get() <= deserializeIndex) {
@@ -197,6 +263,19 @@ public class ClientQueueXodusLocalPersistence extends XodusLocalPersistence impl
                             }
                             final PUBLISH publish = (PUBLISH) messageWithID;
                             payloadPersistence.incrementReferenceCounterOnBootstrap(publish.getPublishId());
+                            if (publish.getPacketIdentifier() != ClientQueuePersistenceSerializer.NO_PACKET_ID) {
+                                // written before in-flight markers were kept apart, move the marker once
+                                putInFlightMarker(txn,
+                                        commitActions,
+                                        inFlightStore,
+                                        key,
+                                        cursor.getKey(),
+                                        publish.getPacketIdentifier());
+                                final ByteIterable value = serializer.serializeAndSetPacketId(cursor.getValue(),
+                                        ClientQueuePersistenceSerializer.NO_PACKET_ID);
+                                bucket.getStore().put(txn, cursor.getKey(), value);
+                                valueBytesWritten.inc(cursor.getKey().getLength() + value.getLength());
+                            }
                         }
                         queueSize++;
                         if (serializer.deserializeRetained(cursor.getValue())) {
@@ -279,12 +358,19 @@ public class ClientQueueXodusLocalPersistence extends XodusLocalPersistence impl
                 retainedQueueSize.incrementAndGet();
             }
         }
+        final TopicDictionary topicDictionary = topicDictionaries[bucketIndex];
         final ByteIterable keyBytes = serializer.serializeNewPublishKey(key);
-        final ByteIterable valueBytes = serializer.serializePublishWithoutPacketId(publish, retained);
-        bucket.getEnvironment().executeInExclusiveTransaction(txn -> {
-            txn.setCommitHook(() -> payloadPersistence.add(publish.getPayload(), publish.getPublishId()));
-            bucket.getStore().put(txn, keyBytes, valueBytes);
+        final ByteIterable valueBytes = bucket.getEnvironment().computeInExclusiveTransaction(txn -> {
+            final TransactionCommitActions commitActions = TransactionCommitActions.asCommitHookFor(txn);
+            commitActions.add(() -> payloadPersistence.add(publish.getPayload(), publish.getPublishId()));
+            registerTopic(topicDictionary, publish, txn, commitActions);
+            final ByteIterable value = serializePublish(publish, retained, topicDictionary);
+            bucket.getStore().put(txn, keyBytes, value);
+            return value;
         });
+        lowerExpiryWatermark(key, publish, false, bucketIndex);
+        enqueuedBytes.inc(keyBytes.getLength() + valueBytes.getLength());
+        valueBytesWritten.inc(keyBytes.getLength() + valueBytes.getLength());
     }
 
     /**
@@ -337,6 +423,7 @@ public class ClientQueueXodusLocalPersistence extends XodusLocalPersistence impl
         final AtomicInteger queueSize = getOrPutQueueSize(key, bucketIndex);
         final AtomicInteger retainedQueueSize = getOrPutRetainedQueueSize(key, bucketIndex);
         final int qos0Size = qos0Size(key, bucketIndex);
+        final TopicDictionary topicDictionary = topicDictionaries[bucketIndex];
         bucket.getEnvironment().executeInExclusiveTransaction(txn -> {
             final TransactionCommitActions commitActions = TransactionCommitActions.asCommitHookFor(txn);
             for (final PUBLISH publish : qos1and2Publishes.build()) {
@@ -371,9 +458,13 @@ public class ClientQueueXodusLocalPersistence extends XodusLocalPersistence impl
                     }
                 }
                 final ByteIterable keyBytes = serializer.serializeNewPublishKey(key);
-                final ByteIterable valueBytes = serializer.serializePublishWithoutPacketId(publish, retained);
+                registerTopic(topicDictionary, publish, txn, commitActions);
+                final ByteIterable valueBytes = serializePublish(publish, retained, topicDictionary);
                 commitActions.add(() -> payloadPersistence.add(publish.getPayload(), publish.getPublishId()));
                 bucket.getStore().put(txn, keyBytes, valueBytes);
+                lowerExpiryWatermark(key, publish, false, bucketIndex);
+                enqueuedBytes.inc(keyBytes.getLength() + valueBytes.getLength());
+                valueBytesWritten.inc(keyBytes.getLength() + valueBytes.getLength());
             }
         });
     }
@@ -403,6 +494,7 @@ public class ClientQueueXodusLocalPersistence extends XodusLocalPersistence impl
             }
         }
         getOrPutQos0Messages(key, bucketIndex).add(publishWithRetained);
+        lowerExpiryWatermark(key, publish, false, bucketIndex);
         getOrPutQueueSize(key, bucketIndex).incrementAndGet();
         if (publishWithRetained.retained) {
             getOrPutRetainedQueueSize(key, bucketIndex).incrementAndGet();
@@ -494,7 +586,7 @@ public class ClientQueueXodusLocalPersistence extends XodusLocalPersistence impl
                 if (retainedOnly != serializer.deserializeRetained(value)) {
                     return true;
                 }
-                final PUBLISH publish = (PUBLISH) serializer.deserializeValue(value);
+                final PUBLISH publish = (PUBLISH) serializer.deserializeValue(value, topicDictionary(key));
                 commitActions.add(() -> {
                     logMessageDropped(publish, key.isShared(), key.getQueueId());
                     payloadPersistence.decrementReferenceCounter(publish.getPublishId());
@@ -577,6 +669,7 @@ public class ClientQueueXodusLocalPersistence extends XodusLocalPersistence impl
         }
         final Bucket bucket = buckets[bucketIndex];
         return bucket.getEnvironment().computeInExclusiveTransaction(txn -> {
+            final TransactionCommitActions commitActions = TransactionCommitActions.asCommitHookFor(txn);
             try (final Cursor cursor = bucket.getStore().openCursor(txn)) {
                 final int countLimit = packetIds.length();
                 final int[] messageCount = {0};
@@ -585,7 +678,8 @@ public class ClientQueueXodusLocalPersistence extends XodusLocalPersistence impl
                 final ImmutableList.Builder<PUBLISH> publishes = ImmutableList.builder();
                 iterateQueue(cursor, key, true, () -> {
                     final ByteIterable serializedValue = cursor.getValue();
-                    final PUBLISH publish = (PUBLISH) serializer.deserializeValue(serializedValue);
+                    final PUBLISH publish =
+                            (PUBLISH) serializer.deserializeValue(serializedValue, topicDictionaries[bucketIndex]);
                     if (publish.isExpired()) {
                         cursor.deleteCurrent();
                         payloadPersistence.decrementReferenceCounter(publish.getPublishId());
@@ -600,10 +694,12 @@ public class ClientQueueXodusLocalPersistence extends XodusLocalPersistence impl
                         }
                         final int packetId = packetIds.get(packetIdIndex[0]);
                         publish.setPacketIdentifier(packetId);
-                        bucket.getStore()
-                                .put(txn,
-                                        cursor.getKey(),
-                                        serializer.serializeAndSetPacketId(serializedValue, packetId));
+                        putInFlightMarker(txn,
+                                commitActions,
+                                inFlightStores[bucketIndex],
+                                key,
+                                cursor.getKey(),
+                                packetId);
                         publishes.add(publish);
                         packetIdIndex[0]++;
                         messageCount[0]++;
@@ -660,8 +756,7 @@ public class ClientQueueXodusLocalPersistence extends XodusLocalPersistence impl
                 final int[] bytes = {0};
                 final ImmutableList.Builder<MessageWithID> messages = ImmutableList.builder();
                 iterateQueue(cursor, key, false, () -> {
-                    final ByteIterable serializedValue = cursor.getValue();
-                    final MessageWithID message = serializer.deserializeValue(serializedValue);
+                    final MessageWithID message = deserializeMessage(key, cursor);
                     // This works because in-flight messages are always first in the queue
                     if (message.getPacketIdentifier() == ClientQueuePersistenceSerializer.NO_PACKET_ID) {
                         return false;
@@ -691,11 +786,12 @@ public class ClientQueueXodusLocalPersistence extends XodusLocalPersistence impl
         final Key key = new Key(client, false);
         final Bucket bucket = buckets[bucketIndex];
         return bucket.getEnvironment().computeInExclusiveTransaction(txn -> {
+            final TransactionCommitActions commitActions = TransactionCommitActions.asCommitHookFor(txn);
             try (final Cursor cursor = bucket.getStore().openCursor(txn)) {
                 final boolean[] packetIdFound = new boolean[1];
                 final String[] replacedId = new String[1];
                 iterateQueue(cursor, key, false, () -> {
-                    final MessageWithID message = serializer.deserializeValue(cursor.getValue());
+                    final MessageWithID message = deserializeMessage(key, cursor);
                     final int packetId = message.getPacketIdentifier();
                     if (packetId == pubrel.getPacketIdentifier()) {
                         packetIdFound[0] = true;
@@ -711,7 +807,9 @@ public class ClientQueueXodusLocalPersistence extends XodusLocalPersistence impl
                             pubrel.setPublishTimestamp(((PUBREL) message).getPublishTimestamp());
                         }
                         final ByteIterable serializedPubRel = serializer.serializePubRel(pubrel, retained);
+                        deleteInFlightMarker(txn, commitActions, inFlightStores[bucketIndex], key, cursor.getKey());
                         bucket.getStore().put(txn, cursor.getKey(), serializedPubRel);
+                        valueBytesWritten.inc(cursor.getKey().getLength() + serializedPubRel.getLength());
                         return false;
                     }
                     return packetId != ClientQueuePersistenceSerializer.NO_PACKET_ID;
@@ -723,8 +821,11 @@ public class ClientQueueXodusLocalPersistence extends XodusLocalPersistence impl
                     }
                     getOrPutQueueSize(key, bucketIndex).incrementAndGet();
                     final ByteIterable serializedPubRel = serializer.serializePubRel(pubrel, false);
-                    bucket.getStore().put(txn, serializer.serializeUnknownPubRelKey(key), serializedPubRel);
+                    final ByteIterable pubRelKey = serializer.serializeUnknownPubRelKey(key);
+                    bucket.getStore().put(txn, pubRelKey, serializedPubRel);
+                    valueBytesWritten.inc(pubRelKey.getLength() + serializedPubRel.getLength());
                 }
+                lowerExpiryWatermark(key, pubrel, true, bucketIndex);
                 return replacedId[0];
             }
         });
@@ -746,10 +847,11 @@ public class ClientQueueXodusLocalPersistence extends XodusLocalPersistence impl
         final Key key = new Key(client, false);
         final Bucket bucket = buckets[bucketIndex];
         return bucket.getEnvironment().computeInExclusiveTransaction(txn -> {
+            final TransactionCommitActions commitActions = TransactionCommitActions.asCommitHookFor(txn);
             try (final Cursor cursor = bucket.getStore().openCursor(txn)) {
                 final String[] result = {null};
                 iterateQueue(cursor, key, false, () -> {
-                    final MessageWithID message = serializer.deserializeValue(cursor.getValue());
+                    final MessageWithID message = deserializeMessage(key, cursor);
                     if (message.getPacketIdentifier() == packetId) {
                         String removedId = null;
                         if (message instanceof PUBLISH) {
@@ -764,6 +866,7 @@ public class ClientQueueXodusLocalPersistence extends XodusLocalPersistence impl
                         if (serializer.deserializeRetained(cursor.getValue())) {
                             getOrPutRetainedQueueSize(key, bucketIndex).decrementAndGet();
                         }
+                        deleteInFlightMarker(txn, commitActions, inFlightStores[bucketIndex], key, cursor.getKey());
                         cursor.deleteCurrent();
                         result[0] = removedId;
                         return false;
@@ -791,12 +894,15 @@ public class ClientQueueXodusLocalPersistence extends XodusLocalPersistence impl
         final Key key = new Key(queueId, shared);
         final Bucket bucket = buckets[bucketIndex];
         bucket.getEnvironment().executeInExclusiveTransaction(txn -> {
+            final TransactionCommitActions commitActions = TransactionCommitActions.asCommitHookFor(txn);
             try (final Cursor cursor = bucket.getStore().openCursor(txn)) {
                 iterateQueue(cursor, key, false, () -> {
-                    final MessageWithID message = serializer.deserializeValue(cursor.getValue());
+                    final MessageWithID message = serializer.deserializeValue(cursor.getValue(),
+                            topicDictionaries[bucketIndex]);
                     if (message instanceof PUBLISH) {
                         payloadPersistence.decrementReferenceCounter(((PUBLISH) message).getPublishId());
                     }
+                    deleteInFlightMarker(txn, commitActions, inFlightStores[bucketIndex], key, cursor.getKey());
                     cursor.deleteCurrent();
                     return true;
                 });
@@ -811,6 +917,7 @@ public class ClientQueueXodusLocalPersistence extends XodusLocalPersistence impl
         qos0MessageBuckets.get(bucketIndex).remove(key);
         queueSizeBuckets.get(bucketIndex).remove(key);
         retainedQueueSizeBuckets.get(bucketIndex).remove(key);
+        expiryWatermarkBuckets.get(bucketIndex).remove(key);
     }
 
     @Override
@@ -847,11 +954,29 @@ public class ClientQueueXodusLocalPersistence extends XodusLocalPersistence impl
             if (bucketKey.isShared()) {
                 sharedQueues.add(bucketKey.getQueueId());
             }
-            cleanExpiredMessages(bucketKey, bucketIndex);
         }
+        removeExpiredMessages(new ClientQueueCompaction(Integer.MAX_VALUE), bucketIndex);
         return sharedQueues.build();
     }
 
+    @Override
+    public void removeExpiredMessages(final @NotNull ClientQueueCompaction compaction, final int bucketIndex) {
+        ThreadPreConditions.startsWith(SINGLE_WRITER_THREAD_PREFIX);
+        if (stopped.get()) {
+            return;
+        }
+        final Map<Key, Long> expiryWatermarks = expiryWatermarkBuckets.get(bucketIndex);
+        for (final Key bucketKey : queueSizeBuckets.get(bucketIndex).keySet()) {
+            if (compaction.isExhausted()) {
+                return;
+            }
+            final Long expiryWatermark = expiryWatermarks.get(bucketKey);
+            if (expiryWatermark == null || compaction.isDue(expiryWatermark)) {
+                cleanExpiredMessages(compaction, bucketKey, bucketIndex);
+            }
+        }
+    }
+
     @Override
     public void removeShared(
             final @NotNull String sharedSubscription,
@@ -863,9 +988,11 @@ public class ClientQueueXodusLocalPersistence extends XodusLocalPersistence impl
         final Key key = new Key(sharedSubscription, true);
         final Bucket bucket = buckets[bucketIndex];
         bucket.getEnvironment().executeInExclusiveTransaction(txn -> {
+            final TransactionCommitActions commitActions = TransactionCommitActions.asCommitHookFor(txn);
             try (final Cursor cursor = bucket.getStore().openCursor(txn)) {
                 iterateQueue(cursor, key, false, () -> {
-                    final MessageWithID message = serializer.deserializeValue(cursor.getValue());
+                    final MessageWithID message = serializer.deserializeValue(cursor.getValue(),
+                            topicDictionaries[bucketIndex]);
                     if (message instanceof PUBLISH) {
                         final PUBLISH publish = (PUBLISH) message;
                         if (!uniqueId.equals(publish.getUniqueId())) {
@@ -876,6 +1003,7 @@ public class ClientQueueXodusLocalPersistence extends XodusLocalPersistence impl
                         if (serializer.deserializeRetained(cursor.getValue())) {
                             getOrPutRetainedQueueSize(key, bucketIndex).decrementAndGet();
                         }
+                        deleteInFlightMarker(txn, commitActions, inFlightStores[bucketIndex], key, cursor.getKey());
                         cursor.deleteCurrent();
                     }
                     return false;
@@ -895,9 +1023,11 @@ public class ClientQueueXodusLocalPersistence extends XodusLocalPersistence impl
         final Key key = new Key(sharedSubscription, true);
         final Bucket bucket = buckets[bucketIndex];
         bucket.getEnvironment().executeInExclusiveTransaction(txn -> {
+            final TransactionCommitActions commitActions = TransactionCommitActions.asCommitHookFor(txn);
             try (final Cursor cursor = bucket.getStore().openCursor(txn)) {
                 iterateQueue(cursor, key, false, () -> {
-                    final MessageWithID message = serializer.deserializeValue(cursor.getValue());
+                    final MessageWithID message = serializer.deserializeValue(cursor.getValue(),
+                            topicDictionaries[bucketIndex]);
                     if (message instanceof PUBLISH) {
                         final PUBLISH publish = (PUBLISH) message;
                         if (!uniqueId.equals(publish.getUniqueId())) {
@@ -905,8 +1035,9 @@ public class ClientQueueXodusLocalPersistence extends XodusLocalPersistence impl
                         }
                         final long index = serializer.deserializeIndex(cursor.getKey());
                         decrementSharedSubscriptionIndexFirstMessageWithoutPacketId(sharedSubscription, index);
-                        bucket.getStore()
-                                .put(txn, cursor.getKey(), serializer.serializePublishWithoutPacketId(publish, false));
+                        deleteInFlightMarker(txn, commitActions, inFlightStores[bucketIndex], key, cursor.getKey());
+                        // the message is not protected from expiry as in-flight QoS 2 message anymore
+                        lowerExpiryWatermark(key, publish, false, bucketIndex);
                     }
                     return false;
                 });
@@ -914,6 +1045,11 @@ public class ClientQueueXodusLocalPersistence extends XodusLocalPersistence impl
         });
     }
 
+    @Override
+    public long getQos0MessagesMemory() {
+        return qos0MessagesMemory.get();
+    }
+
     public @NotNull ConcurrentHashMap<Integer, Map<Key, AtomicInteger>> getQueueSizeBuckets() {
         return queueSizeBuckets;
     }
@@ -922,10 +1058,20 @@ public class ClientQueueXodusLocalPersistence extends XodusLocalPersistence impl
         return clientQos0MemoryMap;
     }
 
-    private void cleanExpiredMessages(final @NotNull Key key, final int bucketIndex) {
+    private void cleanExpiredMessages(
+            final @NotNull ClientQueueCompaction compaction,
+            final @NotNull Key key,
+            final int bucketIndex) {
+        // the queue stays due if the compaction is exhausted before all messages are checked
+        final Map<Key, Long> expiryWatermarks = expiryWatermarkBuckets.get(bucketIndex);
+        expiryWatermarks.remove(key);
+        final long[] expiryWatermark = {ClientQueueCompaction.NO_EXPIRY};
         final LinkedList<PublishWithRetained> qos0Messages = getOrPutQos0Messages(key, bucketIndex);
         final Iterator<PublishWithRetained> iterator = qos0Messages.iterator();
         while (iterator.hasNext()) {
+            if (compaction.isExhausted()) {
+                return;
+            }
             final PublishWithRetained publishWithRetained = iterator.next();
             final PUBLISH qos0Message = publishWithRetained.publish;
             if (qos0Message.isExpired()) {
@@ -937,20 +1083,29 @@ public class ClientQueueXodusLocalPersistence extends XodusLocalPersistence impl
                     getOrPutRetainedQueueSize(key, bucketIndex).decrementAndGet();
                 }
                 iterator.remove();
+                compaction.removed(qos0Message.getEstimatedSizeInMemory());
+            } else {
+                expiryWatermark[0] =
+                        Math.min(expiryWatermark[0], ClientQueueCompaction.expiryTimestamp(qos0Message, false));
             }
         }
         final Bucket bucket = buckets[bucketIndex];
         bucket.getEnvironment().executeInExclusiveTransaction(txn -> {
+            final TransactionCommitActions commitActions = TransactionCommitActions.asCommitHookFor(txn);
             try (final Cursor cursor = bucket.getStore().openCursor(txn)) {
                 iterateQueue(cursor, key, false, () -> {
+                    if (compaction.isExhausted()) {
+                        return false;
+                    }
                     final ByteIterable serializedValue = cursor.getValue();
-                    final MessageWithID message = serializer.deserializeValue(serializedValue);
+                    final int entryBytes = cursor.getKey().getLength() + serializedValue.getLength();
+                    final MessageWithID message = deserializeMessage(key, cursor);
                     if (message instanceof PUBREL) {
                         final PUBREL pubrel = (PUBREL) message;
-                        if (!InternalConfigurations.EXPIRE_INFLIGHT_PUBRELS_ENABLED) {
-                            return true;
-                        }
-                        if (!pubrel.hasExpired(InternalConfigurations.MAXIMUM_INFLIGHT_PUBREL_EXPIRY)) {
+                        if (!InternalConfigurations.EXPIRE_INFLIGHT_PUBRELS_ENABLED ||
+                                !pubrel.hasExpired(InternalConfigurations.MAXIMUM_INFLIGHT_PUBREL_EXPIRY)) {
+                            expiryWatermark[0] =
+                                    Math.min(expiryWatermark[0], ClientQueueCompaction.expiryTimestamp(pubrel, true));
                             return true;
                         }
                         getOrPutQueueSize(key, bucketIndex).decrementAndGet();
@@ -958,6 +1113,7 @@ public class ClientQueueXodusLocalPersistence extends XodusLocalPersistence impl
                             getOrPutRetainedQueueSize(key, bucketIndex).decrementAndGet();
                         }
                         cursor.deleteCurrent();
+                        compaction.removed(entryBytes);
                     } else if (message instanceof PUBLISH) {
                         final PUBLISH publish = (PUBLISH) message;
                         final boolean expireInflight = InternalConfigurations.EXPIRE_INFLIGHT_MESSAGES_ENABLED;
@@ -970,13 +1126,31 @@ public class ClientQueueXodusLocalPersistence extends XodusLocalPersistence impl
                             if (serializer.deserializeRetained(serializedValue)) {
                                 getOrPutRetainedQueueSize(key, bucketIndex).decrementAndGet();
                             }
+                            deleteInFlightMarker(txn, commitActions, inFlightStores[bucketIndex], key, cursor.getKey());
                             cursor.deleteCurrent();
+                            compaction.removed(entryBytes);
+                        } else {
+                            expiryWatermark[0] = Math.min(expiryWatermark[0], ClientQueueCompaction.expiryTimestamp(
+                                    publish, publish.getPacketIdentifier() > 0));
                         }
                     }
                     return true;
                 });
             }
         });
+        if (!compaction.isExhausted()) {
+            expiryWatermarks.put(key, expiryWatermark[0]);
+        }
+    }
+
+    private void lowerExpiryWatermark(
+            final @NotNull Key key,
+            final @NotNull MessageWithID message,
+            final boolean inFlight,
+            final int bucketIndex) {
+        final long expiryTimestamp = ClientQueueCompaction.expiryTimestamp(message, inFlight);
+        expiryWatermarkBuckets.get(bucketIndex)
+                .computeIfPresent(key, (k, expiryWatermark) -> Math.min(expiryWatermark, expiryTimestamp));
     }
 
     private int skipPrefix(final @NotNull ByteIterable serializedKey, final @NotNull Cursor cursor) {
@@ -988,11 +1162,12 @@ public class ClientQueueXodusLocalPersistence extends XodusLocalPersistence impl
     }
 
     private int skipWithPacketId(
+            final @NotNull Key key,
             final @NotNull ByteIterable serializedKey,
             final @NotNull Cursor cursor,
             int comparison) {
         while (comparison == ClientQueuePersistenceSerializer.CLIENT_ID_MATCH) {
-            if (serializer.deserializePacketId(cursor.getValue()) == ClientQueuePersistenceSerializer.NO_PACKET_ID) {
+            if (packetIdAt(key, cursor) == ClientQueuePersistenceSerializer.NO_PACKET_ID) {
                 break;
             }
             comparison = compareNextClientId(serializedKey, cursor);
@@ -1035,7 +1210,7 @@ public class ClientQueueXodusLocalPersistence extends XodusLocalPersistence impl
         }
         int comparison = skipPrefix(serializedKey, cursor);
         if (skipWithId) {
-            comparison = skipWithPacketId(serializedKey, cursor, comparison);
+            comparison = skipWithPacketId(key, serializedKey, cursor, comparison);
             if (key.isShared()) {
                 incrementSharedSubscriptionIndexFirstMessageWithoutPacketId(key.getQueueId(),
                         serializer.deserializeIndex(cursor.getKey()));
@@ -1048,6 +1223,78 @@ public class ClientQueueXodusLocalPersistence extends XodusLocalPersistence impl
             comparison = compareNextClientId(serializedKey, cursor);
         }
     }
+
+    /**
+     * Deserializes the message under the cursor. The packet id of an in-flight PUBLISH is taken from the in-flight
+     * index, PUBRELs carry their packet id in the value.
+     */
+    private @NotNull MessageWithID deserializeMessage(final @NotNull Key key, final @NotNull Cursor cursor) {
+        final MessageWithID message = serializer.deserializeValue(cursor.getValue(), topicDictionary(key));
+        if (message instanceof PUBLISH &&
+                message.getPacketIdentifier() == ClientQueuePersistenceSerializer.NO_PACKET_ID) {
+            ((PUBLISH) message).setPacketIdentifier(inFlightPacketId(key,
+                    serializer.deserializeIndex(cursor.getKey())));
+        }
+        return message;
+    }
+
+    private int packetIdAt(final @NotNull Key key, final @NotNull Cursor cursor) {
+        final int packetId = serializer.deserializePacketId(cursor.getValue());
+        if (packetId != ClientQueuePersistenceSerializer.NO_PACKET_ID) {
+            return packetId;
+        }
+        return inFlightPacketId(key, serializer.deserializeIndex(cursor.getKey()));
+    }
+
+    private int inFlightPacketId(final @NotNull Key key, final long index) {
+        final MutableLongIntMap packetIds = inFlightPacketIds.get(key);
+        if (packetIds == null) {
+            return ClientQueuePersistenceSerializer.NO_PACKET_ID;
+        }
+        return packetIds.getIfAbsent(index, ClientQueuePersistenceSerializer.NO_PACKET_ID);
+    }
+
+    private void putInFlightMarker(
+            final @NotNull Transaction txn,
+            final @NotNull TransactionCommitActions commitActions,
+            final @NotNull Store inFlightStore,
+            final @NotNull Key key,
+            final @NotNull ByteIterable serializedKey,
+            final int packetId) {
+        final ByteIterable serializedPacketId = serializer.serializeInFlightPacketId(packetId);
+        inFlightStore.put(txn, serializedKey, serializedPacketId);
+        final long index = serializer.deserializeIndex(serializedKey);
+        // the index only reflects committed markers, a reverted transaction must not leave a packet id behind
+        commitActions.add(() -> inFlightPacketIds.computeIfAbsent(key, k -> new LongIntHashMap()).put(index, packetId));
+        inFlightBytesWritten.inc(serializedKey.getLength() + serializedPacketId.getLength());
+    }
+
+    /**
+     * Must be called before the entry is deleted from the cursor, as the serialized key is read from it.
+     */
+    private void deleteInFlightMarker(
+            final @NotNull Transaction txn,
+            final @NotNull TransactionCommitActions commitActions,
+            final @NotNull Store inFlightStore,
+            final @NotNull Key key,
+            final @NotNull ByteIterable serializedKey) {
+        final MutableLongIntMap packetIds = inFlightPacketIds.get(key);
+        if (packetIds == null) {
+            return;
+        }
+        final long index = serializer.deserializeIndex(serializedKey);
+        if (!packetIds.containsKey(index)) {
+            return;
+        }
+        inFlightStore.delete(txn, serializedKey);
+        commitActions.add(() -> {
+            packetIds.remove(index);
+            if (packetIds.isEmpty()) {
+                inFlightPacketIds.remove(key, packetIds);
+            }
+        });
+    }
+
     private interface IterationCallback {
 
         boolean nextEntry();
@@ -1065,7 +1312,7 @@ public class ClientQueueXodusLocalPersistence extends XodusLocalPersistence impl
                         final ImmutableList.Builder<ClientQueueEntry> entries = ImmutableList.builder();
                         iterateQueue(cursor, key, false, () -> {
                             final ByteIterable value = cursor.getValue();
-                            final MessageWithID messageWithID = serializer.deserializeValue(value);
+                            final MessageWithID messageWithID = deserializeMessage(key, cursor);
                             if (messageWithID instanceof PUBLISH) {
                                 final PUBLISH publish = (PUBLISH) messageWithID;
                                 publish.setPayload(payloadPersistence.get(publish.getPublishId()));
@@ -1080,6 +1327,122 @@ public class ClientQueueXodusLocalPersistence extends XodusLocalPersistence impl
         return messageBuilder.build();
     }
 
+    /**
+     * Iterates the persisted queues, QoS 0 messages are not included. Must not be called concurrently to any other
+     * method, it is only used for migrations.
+     */
+    public void iterate(final @NotNull QueueCallback callback) {
+        for (final Bucket bucket : buckets) {
+            bucket.getEnvironment().executeInReadonlyTransaction(txn -> {
+                try (final Cursor cursor = bucket.getStore().openCursor(txn)) {
+                    Key currentKey = null;
+                    ImmutableList.Builder<ClientQueueEntry> builder = ImmutableList.builder();
+                    while (cursor.getNext()) {
+                        final ByteIterable serializedValue = cursor.getValue();
+                        final Key key = serializer.deserializeKeyId(cursor.getKey());
+                        if (currentKey == null) {
+                            currentKey = key;
+                        }
+                        if (!currentKey.equals(key)) {
+                            callback.onItem(currentKey, builder.build());
+                            builder = ImmutableList.builder();
+                            currentKey = key;
+                        }
+                        final MessageWithID message = deserializeMessage(key, cursor);
+                        final boolean retained = serializer.deserializeRetained(serializedValue);
+                        builder.add(new ClientQueueEntry(message, retained));
+                    }
+                    final ImmutableList<ClientQueueEntry> entries = builder.build();
+                    if (!entries.isEmpty() && currentKey != null) {
+                        callback.onItem(currentKey, entries);
+                    }
+                }
+            });
+        }
+    }
+
+    /**
+     * Rewrites the PUBLISHes that are still stored in the previous value format in the compact value format. Must not
+     * be called concurrently to any other method, it is only used for migrations.
+     *
+     * @return the amount of rewritten PUBLISHes
+     */
+    public int rewriteInCompactValueFormat() {
+        if (!compactValueFormat) {
+            return 0;
+        }
+        int rewritten = 0;
+        for (int i = 0; i < buckets.length; i++) {
+            final Bucket bucket = buckets[i];
+            final TopicDictionary topicDictionary = topicDictionaries[i];
+            rewritten += bucket.getEnvironment().computeInExclusiveTransaction(txn -> {
+                final TransactionCommitActions commitActions = TransactionCommitActions.asCommitHookFor(txn);
+                int count = 0;
+                try (final Cursor cursor = bucket.getStore().openCursor(txn)) {
+                    while (cursor.getNext()) {
+                        final ByteIterable serializedValue = cursor.getValue();
+                        if (!isLegacyPublish(serializedValue)) {
+                            continue;
+                        }
+                        final PUBLISH publish =
+                                (PUBLISH) serializer.deserializeValue(serializedValue, topicDictionary);
+                        // the stored messages are known, so their topics are added without waiting for a repetition
+                        topicDictionary.register(publish.getTopic(), txn, commitActions);
+                        topicDictionary.register(publish.getHivemqId(), txn, commitActions);
+                        ByteIterable value = serializePublish(publish,
+                                serializer.deserializeRetained(serializedValue),
+                                topicDictionary);
+                        if (publish.getPacketIdentifier() != ClientQueuePersistenceSerializer.NO_PACKET_ID) {
+                            value = serializer.serializeAndSetPacketId(value, publish.getPacketIdentifier());
+                        }
+                        bucket.getStore().put(txn, cursor.getKey(), value);
+                        valueBytesWritten.inc(cursor.getKey().getLength() + value.getLength());
+                        count++;
+                    }
+                }
+                return count;
+            });
+        }
+        return rewritten;
+    }
+
+    private boolean isLegacyPublish(final @NotNull ByteIterable serializedValue) {
+        return !serializer.isCompact(serializedValue) && !serializer.isPubRel(serializedValue);
+    }
+
+    private @NotNull ByteIterable serializePublish(
+            final @NotNull PUBLISH publish,
+            final boolean retained,
+            final @NotNull TopicDictionary topicDictionary) {
+        final ByteIterable value = serializer.serializePublishWithoutPacketId(publish, retained, topicDictionary);
+        if (compactValueFormat) {
+            compactValues.inc();
+            compactValuesLegacyBytes.inc(serializer.legacyPublishSize(publish));
+            compactValuesBytes.inc(value.getLength());
+        }
+        return value;
+    }
+
+    private void registerTopic(
+            final @NotNull TopicDictionary topicDictionary,
+            final @NotNull PUBLISH publish,
+            final @NotNull Transaction txn,
+            final @NotNull TransactionCommitActions commitActions) {
+        if (!compactValueFormat) {
+            return;
+        }
+        if (topicDictionary.admit(publish.getTopic())) {
+            topicDictionary.register(publish.getTopic(), txn, commitActions);
+        }
+        if (topicDictionary.admit(publish.getHivemqId())) {
+            topicDictionary.register(publish.getHivemqId(), txn, commitActions);
+        }
+    }
+
+    private @NotNull TopicDictionary topicDictionary(final @NotNull Key key) {
+        return topicDictionaries[BucketUtils.getBucket(key.getQueueId(), getBucketCount())];
+    }
+
     private @NotNull AtomicInteger getOrPutQueueSize(final @NotNull Key key, final int bucketIndex) {
         final Map<Key, AtomicInteger> queueSizeBucket = queueSizeBuckets.get(bucketIndex);
         return getOrPutQueueSizeFromBucket(key, queueSizeBucket);
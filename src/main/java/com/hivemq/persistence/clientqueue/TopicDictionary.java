@@ -0,0 +1,198 @@
+/*
+ * Copyright 2019-present HiveMQ GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hivemq.persistence.clientqueue;
+
+import com.hivemq.extension.sdk.api.annotations.NotNull;
+import com.hivemq.extension.sdk.api.annotations.Nullable;
+import com.hivemq.extension.sdk.api.annotations.ThreadSafe;
+import com.hivemq.persistence.local.xodus.TransactionCommitActions;
+import com.hivemq.persistence.local.xodus.XodusUtils;
+import com.hivemq.util.Bytes;
+import jetbrains.exodus.env.Cursor;
+import jetbrains.exodus.env.Store;
+import jetbrains.exodus.env.Transaction;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Assigns integer ids to the topics (and cluster ids) of the messages in one bucket of the xodus client queue
+ * persistence, so the compact value format can reference them with a varint instead of repeating the string in every
+ * queued message.
+ * <p>
+ * The dictionary is append only. A new entry is persisted in a companion store of the bucket inside the transaction
+ * that writes the first value referring to it, so an entry and its first reference are committed together. Values
+ * written while a topic is not (yet) part of the dictionary carry the topic inline.
+ * <p>
+ * As entries are never evicted, the enqueue path only adds a topic once it is {@link #admit(String) admitted}: the
+ * second time it is seen. Topics that are used for a single message do not take the place of frequent ones.
+ */
+@ThreadSafe
+class TopicDictionary {
+
+    static final int NO_ID = -1;
+    private static final int CANDIDATE_SLOTS = 4096;
+
+    private final @Nullable Store store;
+    private final int maxSize;
+    private final @NotNull ConcurrentHashMap<String, Integer> ids = new ConcurrentHashMap<>();
+    // replaced (or re-assigned) after every append to publish the new entry to readers
+    private volatile @Nullable String @NotNull [] values = new String[16];
+    // hashes of values that were seen once, 0 marks an empty slot
+    private final int @NotNull [] candidates = new int[CANDIDATE_SLOTS];
+    // entries whose transaction did not commit yet, they are written again by the next transaction referring to them
+    private final @NotNull BitSet uncommitted = new BitSet();
+    private int size;
+    TopicDictionary(final int maxSize) {
+        this(null, maxSize);
+    }
+
+    TopicDictionary(final @Nullable Store store, final int maxSize) {
+        this.store = store;
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Loads the persisted entries, must be called before the dictionary is used.
+     */
+    synchronized void load(final @NotNull Transaction txn) {
+        if (store == null) {
+            return;
+        }
+        try (final Cursor cursor = store.openCursor(txn)) {
+            while (cursor.getNext()) {
+                final int id = Bytes.readInt(cursor.getKey().getBytesUnsafe(), 0);
+                final String value = new String(XodusUtils.byteIterableToBytes(cursor.getValue()), UTF_8);
+                put(id, value);
+                size = Math.max(size, id + 1);
+            }
+        }
+    }
+
+    /**
+     * @return the id of the value or {@link #NO_ID} if it is not part of the dictionary
+     */
+    int id(final @NotNull String value) {
+        final Integer id = ids.get(value);
+        return id == null ? NO_ID : id;
+    }
+
+    /**
+     * @return true if the value is part of the dictionary or was seen before, so it is worth adding it
+     */
+    synchronized boolean admit(final @NotNull String value) {
+        if (ids.containsKey(value)) {
+            return true;
+        }
+        final int hash = value.hashCode() | 1;
+        final int slot = (hash ^ (hash >>> 16)) & (CANDIDATE_SLOTS - 1);
+        if (candidates[slot] == hash) {
+            candidates[slot] = 0;
+            return true;
+        }
+        candidates[slot] = hash;
+        return false;
+    }
+
+    /**
+     * Adds the value to a dictionary without a store if it is not yet part of it and the dictionary is not full.
+     *
+     * @return the id of the value or {@link #NO_ID} if the dictionary is full
+     */
+    synchronized int register(final @NotNull String value) {
+        final Integer existing = ids.get(value);
+        if (existing != null) {
+            return existing;
+        }
+        if (size >= maxSize) {
+            return NO_ID;
+        }
+        final int id = size++;
+        put(id, value);
+        return id;
+    }
+
+    /**
+     * Adds the value to the dictionary if it is not yet part of it and the dictionary is not full. The entry is
+     * written in the given transaction, which must write the values that refer to it.
+     *
+     * @return the id of the value or {@link #NO_ID} if the dictionary is full
+     */
+    synchronized int register(
+            final @NotNull String value,
+            final @NotNull Transaction txn,
+            final @NotNull TransactionCommitActions commitActions) {
+        final Integer existing = ids.get(value);
+        if (existing != null) {
+            if (uncommitted.get(existing)) {
+                // the transaction that added the entry may have been aborted
+                write(existing, value, txn, commitActions);
+            }
+            return existing;
+        }
+        if (size >= maxSize) {
+            return NO_ID;
+        }
+        final int id = size++;
+        put(id, value);
+        write(id, value, txn, commitActions);
+        return id;
+    }
+
+    /**
+     * @return the value for the id or null if the id is unknown
+     */
+    @Nullable String value(final int id) {
+        final String[] current = values;
+        return id >= 0 && id < current.length ? current[id] : null;
+    }
+
+    synchronized int size() {
+        return size;
+    }
+
+    private void write(
+            final int id,
+            final @NotNull String value,
+            final @NotNull Transaction txn,
+            final @NotNull TransactionCommitActions commitActions) {
+        if (store == null) {
+            return;
+        }
+        final byte[] key = new byte[Integer.BYTES];
+        Bytes.copyIntToByteArray(id, key, 0);
+        store.put(txn, XodusUtils.bytesToByteIterable(key), XodusUtils.bytesToByteIterable(value.getBytes(UTF_8)));
+        uncommitted.set(id);
+        commitActions.add(() -> committed(id));
+    }
+
+    private synchronized void committed(final int id) {
+        uncommitted.clear(id);
+    }
+
+    private void put(final int id, final @NotNull String value) {
+        String[] current = values;
+        if (id >= current.length) {
+            current = Arrays.copyOf(current, Math.max(current.length * 2, id + 1));
+        }
+        current[id] = value;
+        values = current;
+        ids.put(value, id);
+    }
+}
@@ -71,6 +71,14 @@ public interface ClientSessionPersistence {
      */
     @Nullable ClientSession getSession(@NotNull String clientId, boolean includeWill);
 
+    /**
+     * Returns the routing relevant state of a client session without reading the persistent store.
+     *
+     * @param  clientId the client id.
+     * @return          the state of the client session or {@code null} if there is no session or it is expired.
+     */
+    @Nullable ClientSessionState getSessionState(@NotNull String clientId);
+
     /**
      * Trigger a cleanup for a specific bucket
      *
@@ -15,11 +15,14 @@
  */
 package com.hivemq.persistence.clientsession;
 
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.annotations.VisibleForTesting;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.util.concurrent.FutureCallback;
 import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningScheduledExecutorService;
 import com.google.common.util.concurrent.MoreExecutors;
 import com.google.common.util.concurrent.SettableFuture;
 import com.hivemq.bootstrap.ClientConnection;
@@ -35,27 +38,34 @@ import com.hivemq.mqtt.handler.disconnect.MqttServerDisconnector;
 import com.hivemq.mqtt.message.connect.MqttWillPublish;
 import com.hivemq.mqtt.message.reason.Mqtt5DisconnectReasonCode;
 import com.hivemq.persistence.AbstractPersistence;
+import com.hivemq.persistence.GroupCommit;
 import com.hivemq.persistence.ProducerQueues;
 import com.hivemq.persistence.SingleWriterService;
 import com.hivemq.persistence.clientqueue.ClientQueuePersistence;
 import com.hivemq.persistence.clientsession.task.ClientSessionCleanUpTask;
 import com.hivemq.persistence.connection.ConnectionPersistence;
+import com.hivemq.persistence.ioc.annotation.Persistence;
 import com.hivemq.persistence.local.ClientSessionLocalPersistence;
 import com.hivemq.persistence.payload.PublishPayloadPersistence;
 import com.hivemq.persistence.util.FutureUtils;
+import com.hivemq.util.HierarchicalTimingWheel;
 import io.netty.channel.ChannelFutureListener;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.annotation.PostConstruct;
 import javax.inject.Inject;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
 import static com.google.common.base.Preconditions.checkNotNull;
+import static com.hivemq.configuration.service.InternalConfigurations.SESSION_EXPIRY_CHECK_INTERVAL_SEC;
 import static com.hivemq.mqtt.message.connect.Mqtt5CONNECT.SESSION_EXPIRE_ON_DISCONNECT;
+import static com.hivemq.mqtt.message.connect.Mqtt5CONNECT.SESSION_EXPIRY_MAX;
 import static com.hivemq.mqtt.message.disconnect.DISCONNECT.SESSION_EXPIRY_NOT_SET;
 
 @LazySingleton
@@ -71,6 +81,11 @@ public class ClientSessionPersistenceImpl extends AbstractPersistence implements
     private final @NotNull PendingWillMessages pendingWillMessages;
     private final @NotNull MqttServerDisconnector mqttServerDisconnector;
     private final @NotNull Chunker chunker;
+    private final @NotNull GroupCommit groupCommit;
+    private final @NotNull ListeningScheduledExecutorService executorService;
+    // the expiry times of the disconnected sessions, changed by the single writer tasks of the sessions
+    private final @NotNull HierarchicalTimingWheel<String> sessionExpiries =
+            new HierarchicalTimingWheel<>(SESSION_EXPIRY_CHECK_INTERVAL_SEC * 1000L, System.currentTimeMillis());
     @Inject
     public ClientSessionPersistenceImpl(
             final @NotNull ClientSessionLocalPersistence localPersistence,
@@ -81,7 +96,9 @@ public class ClientSessionPersistenceImpl extends AbstractPersistence implements
             final @NotNull EventLog eventLog,
             final @NotNull PendingWillMessages pendingWillMessages,
             final @NotNull MqttServerDisconnector mqttServerDisconnector,
-            final @NotNull Chunker chunker) {
+            final @NotNull Chunker chunker,
+            final @NotNull MetricRegistry metricRegistry,
+            final @Persistence @NotNull ListeningScheduledExecutorService executorService) {
         this.localPersistence = localPersistence;
         this.clientQueuePersistence = clientQueuePersistence;
         this.connectionPersistence = connectionPersistence;
@@ -91,6 +108,16 @@ public class ClientSessionPersistenceImpl extends AbstractPersistence implements
         this.chunker = chunker;
         subscriptionPersistence = sessionSubscriptionPersistence;
         singleWriter = singleWriterService.getClientSessionQueue();
+        groupCommit = new GroupCommit("client-sessions", localPersistence, metricRegistry);
+        this.executorService = executorService;
+    }
+
+    @PostConstruct
+    public void postConstruct() {
+        executorService.scheduleAtFixedRate(new CheckSessionExpiriesTask(),
+                SESSION_EXPIRY_CHECK_INTERVAL_SEC,
+                SESSION_EXPIRY_CHECK_INTERVAL_SEC,
+                TimeUnit.SECONDS);
     }
 
     @Override
@@ -117,6 +144,7 @@ public class ClientSessionPersistenceImpl extends AbstractPersistence implements
         singleWriter.submit(client, (SingleWriterService.Task<Void>) (bucketIndex) -> {
             final ClientSession disconnectSession =
                     localPersistence.disconnect(client, timestamp, sendWill, bucketIndex, sessionExpiry);
+            scheduleExpiry(client, disconnectSession.getSessionExpiryIntervalSec(), timestamp);
             if (sendWill) {
                 pendingWillMessages.sendOrEnqueueWillIfAvailable(client, disconnectSession);
             }
@@ -150,10 +178,12 @@ public class ClientSessionPersistenceImpl extends AbstractPersistence implements
         }
         final ClientSession clientSession =
                 new ClientSession(true, clientSessionExpiryInterval, sessionWill, queueLimit);
-        final ListenableFuture<ConnectResult> submitFuture = singleWriter.submit(client, (bucketIndex) -> {
+        // reconnect storms are committed in batches, side effects outside the local persistence run after the commit
+        final ListenableFuture<ConnectResult> submitFuture = singleWriter.submit(client, groupCommit, (bucketIndex) -> {
             final Long previousTimestamp = localPersistence.getTimestamp(client, bucketIndex);
             final ClientSession previousClientSession = localPersistence.getSession(client, bucketIndex, false);
             localPersistence.put(client, clientSession, timestamp, bucketIndex);
+            groupCommit.afterCommit(bucketIndex, () -> cancelExpiry(client));
             return new ConnectResult(previousTimestamp, previousClientSession);
         });
         final SettableFuture<Void> resultFuture = SettableFuture.create();
@@ -280,6 +310,12 @@ public class ClientSessionPersistenceImpl extends AbstractPersistence implements
         return localPersistence.getSession(clientId, true, includeWill);
     }
 
+    @Override
+    public @Nullable ClientSessionState getSessionState(final @NotNull String clientId) {
+        checkNotNull(clientId, "Client id must not be null");
+        return localPersistence.getSessionState(clientId);
+    }
+
     @Override
     public @NotNull ListenableFuture<Boolean> setSessionExpiryInterval(
             final @NotNull String clientId,
@@ -291,6 +327,12 @@ public class ClientSessionPersistenceImpl extends AbstractPersistence implements
                 return false;
             }
             localPersistence.setSessionExpiryInterval(clientId, sessionExpiryInterval, bucketIndex);
+            final ClientSessionState state = localPersistence.getSessionState(clientId);
+            if (state == null || state.isConnected()) {
+                cancelExpiry(clientId);
+            } else {
+                scheduleExpiry(clientId, sessionExpiryInterval, state.getTimestamp());
+            }
             return true;
         });
         final SettableFuture<Boolean> settableFuture = SettableFuture.create();
@@ -327,11 +369,11 @@ public class ClientSessionPersistenceImpl extends AbstractPersistence implements
 
     @Override
     public @Nullable Long getSessionExpiryInterval(final @NotNull String clientId) {
-        final ClientSession session = getSession(clientId, false);
-        if (session == null) {
+        final ClientSessionState state = getSessionState(clientId);
+        if (state == null) {
             return null;
         }
-        return session.getSessionExpiryIntervalSec();
+        return state.getSessionExpiryIntervalSec();
     }
 
     @Override
@@ -402,6 +444,46 @@ public class ClientSessionPersistenceImpl extends AbstractPersistence implements
         return settableFuture;
     }
 
+    private void scheduleExpiry(
+            final @NotNull String clientId,
+            final long sessionExpiryInterval,
+            final long timestamp) {
+        // sessions that expire on disconnect are removed with the disconnect or by the clean up
+        if (sessionExpiryInterval <= SESSION_EXPIRE_ON_DISCONNECT || sessionExpiryInterval >= SESSION_EXPIRY_MAX) {
+            cancelExpiry(clientId);
+            return;
+        }
+        synchronized (sessionExpiries) {
+            // timestamp in milliseconds + session expiry in seconds * 1000 = milliseconds
+            sessionExpiries.schedule(clientId, timestamp + sessionExpiryInterval * 1000);
+        }
+    }
+
+    private void cancelExpiry(final @NotNull String clientId) {
+        synchronized (sessionExpiries) {
+            sessionExpiries.cancel(clientId);
+        }
+    }
+
+    /**
+     * Reads the pending wills and the session expiries of the disconnected sessions in the single writer, so the
+     * timers of the sessions that connect or disconnect in the meantime are not overwritten.
+     */
+    private void restoreTimers() {
+        singleWriter.submitToAllBucketsParallel((SingleWriterService.Task<Void>) (bucketIndex) -> {
+            pendingWillMessages.restore(localPersistence.getPendingWills(bucketIndex));
+            final Map<String, Long> expiries = localPersistence.getSessionExpiries(bucketIndex);
+            synchronized (sessionExpiries) {
+                expiries.forEach((clientId, expiry) -> {
+                    if (!sessionExpiries.contains(clientId)) {
+                        sessionExpiries.schedule(clientId, expiry);
+                    }
+                });
+            }
+            return null;
+        });
+    }
+
     @Override
     public @NotNull ListenableFuture<Void> deleteWill(final @NotNull String clientId) {
         checkNotNull(clientId, "Client id must not be null");
@@ -426,6 +508,43 @@ public class ClientSessionPersistenceImpl extends AbstractPersistence implements
         return (clientSession != null) &&
                 (clientSession.getSessionExpiryIntervalSec() > 0 || clientSession.isConnected());
     }
+
+    @VisibleForTesting
+    void expireSessions(final long nowMillis) {
+        final ImmutableList<String> expiredClientIds;
+        synchronized (sessionExpiries) {
+            expiredClientIds = sessionExpiries.advance(nowMillis);
+        }
+        for (final String clientId : expiredClientIds) {
+            // the session may have been reconnected or changed since the expiry was scheduled
+            singleWriter.submit(clientId, (SingleWriterService.Task<Void>) (bucketIndex) -> {
+                if (localPersistence.removeIfExpired(clientId, bucketIndex)) {
+                    pendingWillMessages.sendWillIfPending(clientId);
+                    cleanClientData(clientId);
+                }
+                return null;
+            });
+        }
+    }
+
+    private class CheckSessionExpiriesTask implements Runnable {
+
+        private boolean restored;
+
+        @Override
+        public void run() {
+            try {
+                // the timers are restored with the first run, after the persistences were restored and migrated
+                if (!restored) {
+                    restored = true;
+                    restoreTimers();
+                }
+                expireSessions(System.currentTimeMillis());
+            } catch (final Exception e) {
+                log.error("Exception while checking the session expiries", e);
+            }
+        }
+    }
     public enum DisconnectSource {
 
         /**
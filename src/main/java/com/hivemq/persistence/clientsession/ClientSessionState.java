@@ -0,0 +1,99 @@
+/*
+ * Copyright 2019-present HiveMQ GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hivemq.persistence.clientsession;
+
+import com.hivemq.extension.sdk.api.annotations.Immutable;
+import com.hivemq.extension.sdk.api.annotations.NotNull;
+import com.hivemq.extension.sdk.api.annotations.Nullable;
+
+/**
+ * The part of a {@link ClientSession} that is needed to route a message to a client, stored as primitives.
+ * <p>
+ * Unlike the client session it never holds the will, so it can be handed out without copying or deserialization.
+ */
+@Immutable
+public class ClientSessionState {
+
+    public static final long QUEUE_LIMIT_NOT_SET = -1;
+
+    private final boolean connected;
+    private final long sessionExpiryIntervalSec;
+    private final long timestamp;
+    private final long queueLimit;
+
+    public ClientSessionState(
+            final boolean connected,
+            final long sessionExpiryIntervalSec,
+            final long timestamp,
+            final long queueLimit) {
+        this.connected = connected;
+        this.sessionExpiryIntervalSec = sessionExpiryIntervalSec;
+        this.timestamp = timestamp;
+        this.queueLimit = queueLimit;
+    }
+
+    public static @NotNull ClientSessionState of(final @NotNull ClientSession clientSession, final long timestamp) {
+        final Long queueLimit = clientSession.getQueueLimit();
+        return new ClientSessionState(clientSession.isConnected(),
+                clientSession.getSessionExpiryIntervalSec(),
+                timestamp,
+                queueLimit != null ? queueLimit : QUEUE_LIMIT_NOT_SET);
+    }
+
+    public boolean isConnected() {
+        return connected;
+    }
+
+    public long getSessionExpiryIntervalSec() {
+        return sessionExpiryIntervalSec;
+    }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    /**
+     * @return the queue limit of the client or {@link #QUEUE_LIMIT_NOT_SET} if the configured default applies.
+     */
+    public long getQueueLimit() {
+        return queueLimit;
+    }
+
+    public @Nullable Long getQueueLimitOrNull() {
+        return queueLimit != QUEUE_LIMIT_NOT_SET ? queueLimit : null;
+    }
+
+    public boolean isExpired(final long currentTimeMillis) {
+        if (connected) {
+            return false;
+        }
+        return (currentTimeMillis - timestamp) / 1000 >= sessionExpiryIntervalSec;
+    }
+
+    @Override
+    public @NotNull String toString() {
+        return "ClientSessionState{" +
+                "connected=" +
+                connected +
+                ", sessionExpiryIntervalSec=" +
+                sessionExpiryIntervalSec +
+                ", timestamp=" +
+                timestamp +
+                ", queueLimit=" +
+                queueLimit +
+                '}';
+    }
+}
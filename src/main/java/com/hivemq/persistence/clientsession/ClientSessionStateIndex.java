@@ -0,0 +1,69 @@
+/*
+ * Copyright 2019-present HiveMQ GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hivemq.persistence.clientsession;
+
+import com.hivemq.extension.sdk.api.annotations.NotNull;
+import com.hivemq.extension.sdk.api.annotations.Nullable;
+import com.hivemq.extension.sdk.api.annotations.ThreadSafe;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * An in-memory index of the {@link ClientSessionState} of every stored client session.
+ * <p>
+ * The index is updated by the single writer right after the owning local persistence changed a session, so a client
+ * is always updated by the same thread. Readers never lock and never touch the persistent store.
+ */
+@ThreadSafe
+public class ClientSessionStateIndex {
+
+    private final @NotNull ConcurrentHashMap<String, ClientSessionState> states = new ConcurrentHashMap<>();
+
+    /**
+     * @return the state of the client, expired sessions and tombstones included, or {@code null} if the client has no
+     *         stored session.
+     */
+    public @Nullable ClientSessionState get(final @NotNull String clientId) {
+        return states.get(clientId);
+    }
+
+    /**
+     * @return the state of the client or {@code null} if there is no session or the session is already expired.
+     */
+    public @Nullable ClientSessionState getIfNotExpired(final @NotNull String clientId, final long currentTimeMillis) {
+        final ClientSessionState state = states.get(clientId);
+        if (state == null || state.isExpired(currentTimeMillis)) {
+            return null;
+        }
+        return state;
+    }
+
+    public void put(final @NotNull String clientId, final @NotNull ClientSession clientSession, final long timestamp) {
+        states.put(clientId, ClientSessionState.of(clientSession, timestamp));
+    }
+
+    public void remove(final @NotNull String clientId) {
+        states.remove(clientId);
+    }
+
+    public int size() {
+        return states.size();
+    }
+
+    public void clear() {
+        states.clear();
+    }
+}
@@ -25,6 +25,7 @@ import com.hivemq.extensions.iteration.MultipleChunkResult;
 import com.hivemq.mqtt.message.subscribe.Topic;
 import com.hivemq.persistence.clientsession.callback.SubscriptionResult;
 
+import java.util.Iterator;
 import java.util.Map;
 
 /**
@@ -61,6 +62,15 @@ public interface ClientSessionSubscriptionPersistence {
     @NotNull ListenableFuture<MultipleChunkResult<Map<String, ImmutableSet<Topic>>>> getAllLocalSubscribersChunk(
             @NotNull ChunkCursor cursor);
 
+    /**
+     * Get an iterator over all the subscriptions from this node, that reads the buckets one after another without
+     * going through the single writer. Only a bounded chunk of a bucket is held in memory at once.
+     *
+     * @return an iterator of clientIds with their subscriptions
+     */
+    @NotNull @ReadOnly
+    Iterator<Map.Entry<String, ImmutableSet<Topic>>> getAllLocalSubscribersIterator();
+
     /**
      * Remove a subscription for a specific client and a specific topic.
      *
@@ -15,8 +15,11 @@
  */
 package com.hivemq.persistence.clientsession;
 
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.collect.AbstractIterator;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Iterators;
 import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
 import com.google.common.util.concurrent.MoreExecutors;
@@ -24,6 +27,7 @@ import com.hivemq.bootstrap.ClientConnection;
 import com.hivemq.bootstrap.ioc.lazysingleton.LazySingleton;
 import com.hivemq.configuration.service.InternalConfigurations;
 import com.hivemq.extension.sdk.api.annotations.NotNull;
+import com.hivemq.extension.sdk.api.annotations.Nullable;
 import com.hivemq.extensions.iteration.ChunkCursor;
 import com.hivemq.extensions.iteration.Chunker;
 import com.hivemq.extensions.iteration.MultipleChunkResult;
@@ -36,6 +40,7 @@ import com.hivemq.mqtt.topic.SubscriptionFlag;
 import com.hivemq.mqtt.topic.TopicFilter;
 import com.hivemq.mqtt.topic.tree.LocalTopicTree;
 import com.hivemq.persistence.AbstractPersistence;
+import com.hivemq.persistence.GroupCommit;
 import com.hivemq.persistence.ProducerQueues;
 import com.hivemq.persistence.SingleWriterService;
 import com.hivemq.persistence.clientsession.callback.SubscriptionResult;
@@ -48,6 +53,7 @@ import org.slf4j.LoggerFactory;
 
 import javax.inject.Inject;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.Map;
 import java.util.Set;
 
@@ -67,6 +73,7 @@ public class ClientSessionSubscriptionPersistenceImpl extends AbstractPersistenc
     private final @NotNull PublishPollService publishPollService;
     private final @NotNull Chunker chunker;
     private final @NotNull MqttServerDisconnector mqttServerDisconnector;
+    private final @NotNull GroupCommit groupCommit;
     @Inject
     ClientSessionSubscriptionPersistenceImpl(
             final @NotNull ClientSessionSubscriptionLocalPersistence localPersistence,
@@ -77,7 +84,8 @@ public class ClientSessionSubscriptionPersistenceImpl extends AbstractPersistenc
             final @NotNull ClientSessionLocalPersistence clientSessionLocalPersistence,
             final @NotNull PublishPollService publishPollService,
             final @NotNull Chunker chunker,
-            final @NotNull MqttServerDisconnector mqttServerDisconnector) {
+            final @NotNull MqttServerDisconnector mqttServerDisconnector,
+            final @NotNull MetricRegistry metricRegistry) {
         this.localPersistence = localPersistence;
         this.topicTree = topicTree;
         this.sharedSubscriptionService = sharedSubscriptionService;
@@ -87,6 +95,8 @@ public class ClientSessionSubscriptionPersistenceImpl extends AbstractPersistenc
         this.chunker = chunker;
         this.mqttServerDisconnector = mqttServerDisconnector;
         singleWriter = singleWriterService.getSubscriptionQueue();
+        // all subscription writes use the group commit, so they can not overtake each other
+        groupCommit = new GroupCommit("subscriptions", localPersistence, metricRegistry);
     }
 
     @NotNull @Override
@@ -119,7 +129,7 @@ public class ClientSessionSubscriptionPersistenceImpl extends AbstractPersistenc
                         topic,
                         SubscriptionFlag.getDefaultFlags(false, topic.isRetainAsPublished(), topic.isNoLocal()),
                         null);
-                persistFuture = singleWriter.submit(client, (bucketIndex) -> {
+                persistFuture = singleWriter.submit(client, groupCommit, (bucketIndex) -> {
                     localPersistence.addSubscription(client, topic, timestamp, bucketIndex);
                     return null;
                 });
@@ -145,9 +155,10 @@ public class ClientSessionSubscriptionPersistenceImpl extends AbstractPersistenc
                 final Subscription subscription = new Subscription(sharedTopic,
                         SubscriptionFlag.getDefaultFlags(true, topic.isRetainAsPublished(), topic.isNoLocal()),
                         sharedSubscription.getShareName());
-                persistFuture = singleWriter.submit(client, (bucketIndex) -> {
+                persistFuture = singleWriter.submit(client, groupCommit, (bucketIndex) -> {
                     localPersistence.addSubscription(client, topic, timestamp, bucketIndex);
-                    invalidateSharedSubscriptionCacheAndPoll(client, ImmutableSet.of(subscription));
+                    groupCommit.afterCommit(bucketIndex,
+                            () -> invalidateSharedSubscriptionCacheAndPoll(client, ImmutableSet.of(subscription)));
                     return null;
                 });
             }
@@ -209,7 +220,7 @@ public class ClientSessionSubscriptionPersistenceImpl extends AbstractPersistenc
                         sharedSubscription.getTopicFilter(),
                         sharedSubscription.getShareName());
             }
-            final ListenableFuture<Void> persistFuture = singleWriter.submit(client, (bucketIndex) -> {
+            final ListenableFuture<Void> persistFuture = singleWriter.submit(client, groupCommit, (bucketIndex) -> {
                 localPersistence.remove(client, topic, timestamp, bucketIndex);
                 return null;
             });
@@ -248,7 +259,7 @@ public class ClientSessionSubscriptionPersistenceImpl extends AbstractPersistenc
 
     @NotNull @Override
     public ListenableFuture<Void> removeAllLocally(@NotNull final String clientId) {
-        return singleWriter.submit(clientId, (bucketIndex) -> {
+        return singleWriter.submit(clientId, groupCommit, (bucketIndex) -> {
             localPersistence.removeAll(clientId, System.currentTimeMillis(), bucketIndex);
             return null;
         });
@@ -305,7 +316,7 @@ public class ClientSessionSubscriptionPersistenceImpl extends AbstractPersistenc
             subscriptionResultBuilder.add(
                     new SubscriptionResult(subscription.getTopic(), subscriberExisted, subscription.getSharedGroup()));
         }
-        final ListenableFuture<Void> persistFuture = singleWriter.submit(clientId, (bucketIndex) -> {
+        final ListenableFuture<Void> persistFuture = singleWriter.submit(clientId, groupCommit, (bucketIndex) -> {
             localPersistence.addSubscriptions(clientId, topics, timestamp, bucketIndex);
             return null;
         });
@@ -357,6 +368,25 @@ public class ClientSessionSubscriptionPersistenceImpl extends AbstractPersistenc
                         (bucketIndex) -> localPersistence.getAllSubscribersChunk(bucketIndex, lastKey, maxResults)));
     }
 
+    @Override
+    public @NotNull Iterator<Map.Entry<String, ImmutableSet<Topic>>> getAllLocalSubscribersIterator() {
+        final int bucketCount = InternalConfigurations.PERSISTENCE_BUCKET_COUNT.get();
+        return Iterators.concat(new AbstractIterator<>() {
+
+            private int bucketIndex = 0;
+
+            @Override
+            protected @Nullable Iterator<Map.Entry<String, ImmutableSet<Topic>>> computeNext() {
+                if (bucketIndex == bucketCount) {
+                    return endOfData();
+                }
+                // the iterator of a bucket only starts reading once the previous bucket is done
+                return localPersistence.getAllSubscribersIterator(bucketIndex++,
+                        InternalConfigurations.PERSISTENCE_SUBSCRIPTIONS_MAX_CHUNK_SIZE);
+            }
+        });
+    }
+
     @NotNull private ListenableFuture<Void> removeBatchedTopics(
             @NotNull final String clientId,
             @NotNull final ImmutableSet<String> topics) {
@@ -376,7 +406,7 @@ public class ClientSessionSubscriptionPersistenceImpl extends AbstractPersistenc
         for (final TopicFilter topicFilter : topicsToRemove) {
             topicTree.removeSubscriber(clientId, topicFilter.getTopic(), topicFilter.getSharedName());
         }
-        final ListenableFuture<Void> persistFuture = singleWriter.submit(clientId, (bucketIndex) -> {
+        final ListenableFuture<Void> persistFuture = singleWriter.submit(clientId, groupCommit, (bucketIndex) -> {
             localPersistence.removeSubscriptions(clientId, topics, timestamp, bucketIndex);
             return null;
         });
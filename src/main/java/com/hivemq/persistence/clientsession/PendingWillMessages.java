@@ -22,6 +22,7 @@ import com.google.common.util.concurrent.ListenableFuture;
 import com.google.common.util.concurrent.ListeningScheduledExecutorService;
 import com.google.common.util.concurrent.MoreExecutors;
 import com.hivemq.extension.sdk.api.annotations.NotNull;
+import com.hivemq.extension.sdk.api.annotations.Nullable;
 import com.hivemq.metrics.MetricsHolder;
 import com.hivemq.mqtt.handler.publish.PublishReturnCode;
 import com.hivemq.mqtt.message.connect.Mqtt5CONNECT;
@@ -32,11 +33,14 @@ import com.hivemq.persistence.ioc.annotation.Persistence;
 import com.hivemq.persistence.local.ClientSessionLocalPersistence;
 import com.hivemq.util.Checkpoints;
 import com.hivemq.util.Exceptions;
+import com.hivemq.util.HierarchicalTimingWheel;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.inject.Inject;
 import javax.inject.Singleton;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
@@ -52,6 +56,9 @@ public class PendingWillMessages {
 
     private static final Logger log = LoggerFactory.getLogger(PendingWillMessages.class);
     private final @NotNull Map<String, PendingWill> pendingWills = new ConcurrentHashMap<>();
+    // the send times of the pending wills, changed together with the pending wills while holding its lock
+    private final @NotNull HierarchicalTimingWheel<String> willDelays =
+            new HierarchicalTimingWheel<>(WILL_DELAY_CHECK_INTERVAL_SEC * 1000L, System.currentTimeMillis());
     private final @NotNull InternalPublishService publishService;
     private final @NotNull ListeningScheduledExecutorService executorService;
     private final @NotNull ClientSessionPersistence clientSessionPersistence;
@@ -87,20 +94,34 @@ public class PendingWillMessages {
             sendWill(clientId, publishFromWill(sessionWill));
             return;
         }
-        pendingWills.put(clientId,
+        enqueue(clientId,
                 new PendingWill(Math.min(sessionWill.getDelayInterval(), session.getSessionExpiryIntervalSec()),
                         System.currentTimeMillis()));
     }
 
+    private void enqueue(final @NotNull String clientId, final @NotNull PendingWill pendingWill) {
+        synchronized (willDelays) {
+            pendingWills.put(clientId, pendingWill);
+            willDelays.schedule(clientId, pendingWill.getSendTime());
+        }
+    }
+
+    private @Nullable PendingWill dequeue(final @NotNull String clientId) {
+        synchronized (willDelays) {
+            willDelays.cancel(clientId);
+            return pendingWills.remove(clientId);
+        }
+    }
+
     public void sendWillIfPending(final @NotNull String clientId) {
-        final PendingWill pendingWill = pendingWills.remove(clientId);
+        final PendingWill pendingWill = dequeue(clientId);
         if (pendingWill != null) {
             getAndSendPendingWill(clientId);
         }
     }
 
     public void sendWillIfPending(final @NotNull String clientId, final @NotNull ClientSession session) {
-        final PendingWill pendingWill = pendingWills.remove(clientId);
+        final PendingWill pendingWill = dequeue(clientId);
         if (pendingWill != null) {
             getAndSendPendingWill(clientId, session);
         }
@@ -139,17 +160,20 @@ public class PendingWillMessages {
     }
 
     public void cancelWillIfPending(final @NotNull String clientId) {
-        pendingWills.remove(clientId);
+        dequeue(clientId);
     }
 
     public void reset() {
-        pendingWills.clear();
+        synchronized (willDelays) {
+            pendingWills.clear();
+            willDelays.clear();
+        }
         final ListenableFuture<Map<String, PendingWill>> future = clientSessionPersistence.pendingWills();
         Futures.addCallback(future, new FutureCallback<>() {
 
             @Override
             public void onSuccess(final @NotNull Map<String, PendingWill> result) {
-                pendingWills.putAll(result);
+                restore(result);
             }
 
             @Override
@@ -195,6 +219,24 @@ public class PendingWillMessages {
                 .build();
     }
 
+    /**
+     * Adds the pending wills of sessions that were disconnected before a restart. The send times are kept, so wills
+     * whose delay passed during the downtime are sent with the next check. Wills that are already pending are not
+     * replaced.
+     *
+     * @param restoredWills the pending wills read from the client session persistence
+     */
+    public void restore(final @NotNull Map<String, PendingWill> restoredWills) {
+        synchronized (willDelays) {
+            restoredWills.forEach((clientId, pendingWill) -> {
+                if (!pendingWills.containsKey(clientId)) {
+                    pendingWills.put(clientId, pendingWill);
+                    willDelays.schedule(clientId, pendingWill.getSendTime());
+                }
+            });
+        }
+    }
+
     @VisibleForTesting
     public @NotNull Map<String, PendingWill> getPendingWills() {
         return pendingWills;
@@ -204,18 +246,19 @@ public class PendingWillMessages {
         @Override
         public void run() {
             try {
-                for (final String clientId : pendingWills.keySet()) {
-                    // To avoid a race that could lead to sending duplicates, we must use a compute method to atomically
-                    // treat a PendingWill because there could be concurrent calls to sendWillIfPending which remove and
-                    // treat an entry.
-                    pendingWills.computeIfPresent(clientId, (clientIdKey, pendingWill) -> {
-                        if (pendingWill.getStartTime() + pendingWill.getDelayInterval() * 1000 < System
-                                .currentTimeMillis()) {
-                            getAndSendPendingWill(clientIdKey);
-                            return null;
+                final long now = System.currentTimeMillis();
+                final List<String> dueClientIds = new ArrayList<>();
+                // The due wills are removed while holding the lock, so concurrent calls to sendWillIfPending, which
+                // remove and treat an entry as well, can not lead to sending duplicates.
+                synchronized (willDelays) {
+                    for (final String clientId : willDelays.advance(now)) {
+                        if (pendingWills.remove(clientId) != null) {
+                            dueClientIds.add(clientId);
                         }
-                        return pendingWill;
-                    });
+                    }
+                }
+                for (final String clientId : dueClientIds) {
+                    getAndSendPendingWill(clientId);
                 }
             } catch (final Exception e) {
                 log.error("Exception while checking pending will messages", e);
@@ -239,5 +282,9 @@ public class PendingWillMessages {
         public long getStartTime() {
             return startTime;
         }
+
+        public long getSendTime() {
+            return startTime + delayInterval * 1000;
+        }
     }
 }
@@ -20,6 +20,7 @@ import com.hivemq.configuration.service.InternalConfigurations;
 import com.hivemq.extension.sdk.api.annotations.NotNull;
 import com.hivemq.migration.meta.PersistenceType;
 import com.hivemq.persistence.clientqueue.ClientQueueLocalPersistence;
+import com.hivemq.persistence.clientqueue.ClientQueueSegmentedLocalPersistence;
 import com.hivemq.persistence.clientqueue.ClientQueueXodusLocalPersistence;
 import com.hivemq.persistence.ioc.provider.local.ClientSessionLocalProvider;
 import com.hivemq.persistence.ioc.provider.local.ClientSessionSubscriptionLocalProvider;
@@ -39,10 +40,12 @@ public class PersistenceMigrationFileModule extends SingletonModule<Class<Persis
 
     private final @NotNull PersistenceType payloadPersistenceType;
     private final @NotNull PersistenceType retainedPersistenceType;
+    private final @NotNull PersistenceType queuePersistenceType;
     public PersistenceMigrationFileModule() {
         super(PersistenceMigrationFileModule.class);
         this.payloadPersistenceType = InternalConfigurations.PAYLOAD_PERSISTENCE_TYPE.get();
         this.retainedPersistenceType = InternalConfigurations.RETAINED_MESSAGE_PERSISTENCE_TYPE.get();
+        this.queuePersistenceType = InternalConfigurations.QUEUED_MESSAGES_PERSISTENCE_TYPE.get();
     }
 
     @Override
@@ -62,6 +65,11 @@ public class PersistenceMigrationFileModule extends SingletonModule<Class<Persis
         bind(ClientSessionLocalPersistence.class).toProvider(ClientSessionLocalProvider.class).in(Singleton.class);
         bind(ClientSessionSubscriptionLocalPersistence.class).toProvider(ClientSessionSubscriptionLocalProvider.class)
                 .in(Singleton.class);
-        bind(ClientQueueLocalPersistence.class).to(ClientQueueXodusLocalPersistence.class).in(Singleton.class);
+        if (queuePersistenceType == PersistenceType.FILE_SEGMENTED) {
+            bind(ClientQueueLocalPersistence.class).to(ClientQueueSegmentedLocalPersistence.class)
+                    .in(Singleton.class);
+        } else {
+            bind(ClientQueueLocalPersistence.class).to(ClientQueueXodusLocalPersistence.class).in(Singleton.class);
+        }
     }
 }
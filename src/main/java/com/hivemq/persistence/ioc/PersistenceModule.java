@@ -31,6 +31,7 @@ import com.hivemq.persistence.PersistenceShutdownHookInstaller;
 import com.hivemq.persistence.ScheduledCleanUpService;
 import com.hivemq.persistence.SingleWriterService;
 import com.hivemq.persistence.SingleWriterServiceImpl;
+import com.hivemq.persistence.clientqueue.ClientQueueCompactor;
 import com.hivemq.persistence.ioc.annotation.PayloadPersistence;
 import com.hivemq.persistence.ioc.annotation.Persistence;
 import com.hivemq.persistence.ioc.provider.local.PayloadPersistenceScheduledExecutorProvider;
@@ -84,6 +85,7 @@ public class PersistenceModule extends SingletonModule<Class<PersistenceModule>>
                 PayloadPersistence.class);
         bind(TopicTreeStartup.class).asEagerSingleton();
         bind(ScheduledCleanUpService.class).asEagerSingleton();
+        bind(ClientQueueCompactor.class).asEagerSingleton();
         requestStaticInjection(FutureUtils.class);
     }
 
@@ -23,6 +23,7 @@ import com.hivemq.extensions.iteration.BucketChunkResult;
 import com.hivemq.persistence.LocalPersistence;
 import com.hivemq.persistence.PersistenceEntry;
 import com.hivemq.persistence.clientsession.ClientSession;
+import com.hivemq.persistence.clientsession.ClientSessionState;
 import com.hivemq.persistence.clientsession.PendingWillMessages;
 import com.hivemq.persistence.exception.InvalidSessionExpiryIntervalException;
 
@@ -85,6 +86,18 @@ public interface ClientSessionLocalPersistence extends LocalPersistence {
      */
     @Nullable ClientSession getSession(@NotNull String clientId, boolean checkExpired, boolean includeWill);
 
+    /**
+     * Get the {@link ClientSessionState} for a specific client id with an expired check.
+     * <p>
+     * This method does not read the persistent store and does not block, it is meant for hot paths that only need the
+     * connected flag, the session expiry or the queue limit of a client.
+     *
+     * @param  clientId The id associated with the session
+     * @return          A {@link ClientSessionState} or {@code null} if there is no session stored for the given id or
+     *                  the session is expired
+     */
+    @Nullable ClientSessionState getSessionState(@NotNull String clientId);
+
     /**
      * @param  clientId The id associated with the session
      * @return          The timestamp of the client session (last connected/disconnected) or {@code null} if there is no
@@ -146,6 +159,26 @@ public interface ClientSessionLocalPersistence extends LocalPersistence {
     @ExecuteInSingleWriter
     @NotNull Set<@NotNull String> cleanUp(int bucketIndex);
 
+    /**
+     * Remove the client session of a specific client if it is expired.
+     *
+     * @param  clientId    The id associated with the session.
+     * @param  bucketIndex The index of the bucket in which the session is stored.
+     * @return             {@code true} if the session was expired and removed, else {@code false}.
+     */
+    @ExecuteInSingleWriter
+    boolean removeIfExpired(@NotNull String clientId, int bucketIndex);
+
+    /**
+     * Get the expiry times of all disconnected client sessions of a specific persistence bucket that expire.
+     * <p>
+     * Sessions that never expire or that expire on disconnect are not included.
+     *
+     * @param  bucketIndex The index of the bucket in which the client sessions are stored.
+     * @return             The timestamp in milliseconds at which the session expires. The key is the client id
+     */
+    @NotNull Map<String, Long> getSessionExpiries(int bucketIndex);
+
     /**
      * get all client identifiers of all stored disconnected clients form a specific persistence bucket.
      *
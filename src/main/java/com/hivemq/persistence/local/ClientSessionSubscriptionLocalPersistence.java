@@ -24,6 +24,7 @@ import com.hivemq.extensions.iteration.BucketChunkResult;
 import com.hivemq.mqtt.message.subscribe.Topic;
 import com.hivemq.persistence.LocalPersistence;
 
+import java.util.Iterator;
 import java.util.Map;
 
 /**
@@ -126,4 +127,18 @@ public interface ClientSessionSubscriptionLocalPersistence extends LocalPersiste
             int bucketIndex,
             @Nullable String lastClientId,
             int maxResults);
+
+    /**
+     * Get an iterator over the subscriptions of all clients in a bucket, that can be used outside the single writer.
+     * <p>
+     * The bucket is read lazily in chunks, so the whole bucket is never held in memory at once. The iterator is weakly
+     * consistent: subscriptions that are added or removed while iterating may or may not be returned.
+     *
+     * @param  bucketIndex the bucket index
+     * @param  chunkSize   the amount of subscriptions to read at once (can be exceeded, see {@link
+     *                     #getAllSubscribersChunk(int, String, int)})
+     * @return             an iterator of client identifiers with their subscriptions
+     */
+    @ReadOnly
+    @NotNull Iterator<Map.Entry<String, ImmutableSet<Topic>>> getAllSubscribersIterator(int bucketIndex, int chunkSize);
 }
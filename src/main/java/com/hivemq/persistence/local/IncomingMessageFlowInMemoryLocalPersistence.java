@@ -16,105 +16,69 @@
 package com.hivemq.persistence.local;
 
 import com.hivemq.bootstrap.ioc.lazysingleton.LazySingleton;
-import com.hivemq.extension.sdk.api.annotations.Immutable;
 import com.hivemq.extension.sdk.api.annotations.NotNull;
 import com.hivemq.extension.sdk.api.annotations.Nullable;
 import com.hivemq.mqtt.message.MessageWithID;
+import org.eclipse.collections.api.map.primitive.MutableIntObjectMap;
+import org.eclipse.collections.impl.map.mutable.primitive.IntObjectHashMap;
 
-import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * This is an in-memory on-heap implementation of the incoming message flow persistence.
  * <p>
- * Implementation note: No Locking is used since this implementation assumes the following:
+ * The flows are sharded by client id. Each client has its own map keyed by the primitive message id, so lookups do
+ * not allocate and deleting the flows of a client does not have to scan the flows of all other clients.
  * <p>
- * - The same thread is used for each client id
+ * The map of a client is synchronized, because a client id can be used by the connections of several event loops (for
+ * example during a session takeover). Lookups read it without locking the entry of the client in the backing map,
+ * modifications run inside the compute methods of the backing map so an emptied map is removed atomically.
  *
  * @author Dominik Obermaier
  */
 @LazySingleton
 public class IncomingMessageFlowInMemoryLocalPersistence implements IncomingMessageFlowLocalPersistence {
 
-    private final ConcurrentHashMap<MessageFlowKey, MessageWithID> backingMap = new ConcurrentHashMap<>();
+    private final @NotNull ConcurrentHashMap<String, MutableIntObjectMap<MessageWithID>> backingMap =
+            new ConcurrentHashMap<>();
     @Override
     public void closeDB() {
     }
 
     @Override
     @Nullable public MessageWithID get(@NotNull final String client, final int messageId) {
-        return backingMap.get(new MessageFlowKey(client, messageId));
+        final MutableIntObjectMap<MessageWithID> flows = backingMap.get(client);
+        if (flows == null) {
+            return null;
+        }
+        return flows.get(messageId);
     }
 
     @Override
     public void addOrReplace(@NotNull final String client, final int messageId, @NotNull final MessageWithID message) {
-        backingMap.put(new MessageFlowKey(client, messageId), message);
+        backingMap.compute(client, (key, flows) -> {
+            final MutableIntObjectMap<MessageWithID> clientFlows = flows != null ? flows :
+                    new IntObjectHashMap<MessageWithID>(4).asSynchronized();
+            clientFlows.put(messageId, message);
+            return clientFlows;
+        });
     }
 
     @Override
     public void remove(@NotNull final String client, final int messageId) {
-        backingMap.remove(new MessageFlowKey(client, messageId));
+        backingMap.computeIfPresent(client, (key, flows) -> {
+            flows.remove(messageId);
+            // returning null removes the client
+            return flows.isEmpty() ? null : flows;
+        });
     }
 
     @Override
     public void delete(@NotNull final String client) {
-        /*
-         * dobermai: This is a dangerous operation since that delete is not atomic. It shouldn't be a problem, though,
-         * since if delete is called, no adds / removes are expected for the same client key at the same time due to
-         * other threads interfering.
-         *
-         * Since the Netty layer gives us this guarantee, this should work for us. In case this guarantee is removed in
-         * the future, then we have a problem here and we need to lock the whole map while doing this expensive
-         * operation!
-         *
-         * Another problem here is that the removal has a complexity of O(n), which isn't really good for large maps.
-         * Fortunately we don't block and don't lock, so this shouldn't be much of a problem. However, the calling
-         * thread will be blocked. In case we have very large maps, it may be a good idea to execute this in a separate
-         * executor or we do parallel iteration.
-         */
-        final Set<MessageFlowKey> keys = backingMap.keySet();
-        for (final MessageFlowKey messageFlowKey : keys) {
-            if (messageFlowKey.getClientId().equals(client)) {
-                keys.remove(messageFlowKey);
-            }
-        }
+        backingMap.remove(client);
     }
-    @Immutable
-    static class MessageFlowKey {
 
-        private final String clientId;
-        // We only need the message ID for hashing, so we don't provide
-        // any access to it
-        private final int messageId;
-        public MessageFlowKey(@NotNull final String clientId, final int messageId) {
-            this.clientId = clientId;
-            this.messageId = messageId;
-        }
-
-        public String getClientId() {
-            return clientId;
-        }
-
-        @Override
-        public boolean equals(final Object o) {
-            if (this == o) {
-                return true;
-            }
-            if (o == null || getClass() != o.getClass()) {
-                return false;
-            }
-            final MessageFlowKey that = (MessageFlowKey) o;
-            if (messageId != that.messageId) {
-                return false;
-            }
-            return clientId.equals(that.clientId);
-        }
-
-        @Override
-        public int hashCode() {
-            int result = clientId.hashCode();
-            result = 31 * result + messageId;
-            return result;
-        }
+    int clientCount() {
+        return backingMap.size();
     }
 }
@@ -33,7 +33,11 @@ import com.hivemq.mqtt.message.QoS;
 import com.hivemq.mqtt.message.dropping.MessageDroppedService;
 import com.hivemq.mqtt.message.publish.PUBLISH;
 import com.hivemq.mqtt.message.pubrel.PUBREL;
+import com.hivemq.persistence.clientqueue.ClientQueueCompaction;
 import com.hivemq.persistence.clientqueue.ClientQueueLocalPersistence;
+import com.hivemq.persistence.clientqueue.ClientQueuePersistenceSerializer;
+import com.hivemq.persistence.local.xodus.CompactValueReader;
+import com.hivemq.persistence.local.xodus.CompactValueWriter;
 import com.hivemq.util.ObjectMemoryEstimation;
 import com.hivemq.util.Strings;
 import com.hivemq.util.ThreadPreConditions;
@@ -41,6 +45,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.inject.Inject;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.LinkedList;
@@ -53,7 +58,7 @@ import static com.hivemq.configuration.service.InternalConfigurations.QOS_0_MEMO
 import static com.hivemq.util.ThreadPreConditions.SINGLE_WRITER_THREAD_PREFIX;
 
 @LazySingleton
-public class ClientQueueMemoryLocalPersistence implements ClientQueueLocalPersistence {
+public class ClientQueueMemoryLocalPersistence implements ClientQueueLocalPersistence, MemorySnapshotPersistence {
 
     private static final @NotNull Logger log = LoggerFactory.getLogger(ClientQueueMemoryLocalPersistence.class);
     private static final int NO_PACKET_ID = 0;
@@ -65,6 +70,7 @@ public class ClientQueueMemoryLocalPersistence implements ClientQueueLocalPersis
         final @NotNull LinkedList<PublishWithRetained> qos0Messages = new LinkedList<>();
         int retainedQos1Or2Messages = 0;
         long qos0Memory = 0;
+        long expiryWatermark = ClientQueueCompaction.NO_EXPIRY;
     }
     private final @NotNull MessageDroppedService messageDroppedService;
     private final long qos0MemoryLimit;
@@ -72,6 +78,7 @@ public class ClientQueueMemoryLocalPersistence implements ClientQueueLocalPersis
     private final int retainedMessageMax;
     private final @NotNull AtomicLong qos0MessagesMemory;
     private final @NotNull AtomicLong totalMemorySize;
+    private final @NotNull ClientQueuePersistenceSerializer serializer = new ClientQueuePersistenceSerializer();
     @Inject
     ClientQueueMemoryLocalPersistence(
             final @NotNull MessageDroppedService messageDroppedService,
@@ -179,6 +186,7 @@ public class ClientQueueMemoryLocalPersistence implements ClientQueueLocalPersis
                 }
                 publishWithRetained.setPacketIdentifier(NO_PACKET_ID);
                 messages.qos1Or2Messages.add(publishWithRetained);
+                lowerExpiryWatermark(messages, publishWithRetained);
                 increaseMessagesMemory(publishWithRetained.getEstimatedSize());
             }
         }
@@ -217,6 +225,7 @@ public class ClientQueueMemoryLocalPersistence implements ClientQueueLocalPersis
             }
         }
         messages.qos0Messages.add(publishWithRetained);
+        lowerExpiryWatermark(messages, publishWithRetained);
         increaseQos0MessagesMemory(publishWithRetained.getEstimatedSize());
         increaseClientQos0MessagesMemory(messages, publishWithRetained.getEstimatedSize());
         increaseMessagesMemory(publishWithRetained.getEstimatedSize());
@@ -414,6 +423,7 @@ public class ClientQueueMemoryLocalPersistence implements ClientQueueLocalPersis
             // Ensure unknown PUBRELs are always first in queue
             messages.qos1Or2Messages.addFirst(pubrelWithRetained);
         }
+        lowerExpiryWatermark(messages, pubrelWithRetained);
         increaseMessagesMemory(pubrelWithRetained.getEstimatedSize());
         return replacedId;
     }
@@ -515,11 +525,29 @@ public class ClientQueueMemoryLocalPersistence implements ClientQueueLocalPersis
     @ExecuteInSingleWriter
     public @NotNull ImmutableSet<String> cleanUp(final int bucketIndex) {
         ThreadPreConditions.startsWith(SINGLE_WRITER_THREAD_PREFIX);
-        final Map<String, Messages> bucket = buckets[bucketIndex];
-        final Map<String, Messages> sharedBucket = sharedBuckets[bucketIndex];
-        bucket.forEach((queueId, messages) -> cleanExpiredMessages(messages));
-        sharedBucket.forEach((queueId, messages) -> cleanExpiredMessages(messages));
-        return ImmutableSet.copyOf(sharedBucket.keySet());
+        removeExpiredMessages(new ClientQueueCompaction(Integer.MAX_VALUE), bucketIndex);
+        return ImmutableSet.copyOf(sharedBuckets[bucketIndex].keySet());
+    }
+
+    @Override
+    @ExecuteInSingleWriter
+    public void removeExpiredMessages(final @NotNull ClientQueueCompaction compaction, final int bucketIndex) {
+        ThreadPreConditions.startsWith(SINGLE_WRITER_THREAD_PREFIX);
+        removeExpiredMessages(compaction, buckets[bucketIndex]);
+        removeExpiredMessages(compaction, sharedBuckets[bucketIndex]);
+    }
+
+    private void removeExpiredMessages(
+            final @NotNull ClientQueueCompaction compaction,
+            final @NotNull Map<String, Messages> bucket) {
+        for (final Messages messages : bucket.values()) {
+            if (compaction.isExhausted()) {
+                return;
+            }
+            if (compaction.isDue(messages.expiryWatermark)) {
+                cleanExpiredMessages(compaction, messages);
+            }
+        }
     }
 
     @Override
@@ -574,11 +602,18 @@ public class ClientQueueMemoryLocalPersistence implements ClientQueueLocalPersis
                     continue;
                 }
                 publish.setPacketIdentifier(NO_PACKET_ID);
+                // the message is not protected from expiry as in-flight QoS 2 message anymore
+                lowerExpiryWatermark(messages, publish);
                 break;
             }
         }
     }
 
+    @Override
+    public long getQos0MessagesMemory() {
+        return qos0MessagesMemory.get();
+    }
+
     @Override
     @ExecuteInSingleWriter
     public void closeDB(final int bucketIndex) {
@@ -589,6 +624,89 @@ public class ClientQueueMemoryLocalPersistence implements ClientQueueLocalPersis
         qos0MessagesMemory.set(0L);
     }
 
+    @Override
+    @ExecuteInSingleWriter
+    public @NotNull List<byte[]> snapshotBucket(final int bucketIndex) {
+        ThreadPreConditions.startsWith(SINGLE_WRITER_THREAD_PREFIX);
+        final List<byte[]> entries = new ArrayList<>(buckets[bucketIndex].size() + sharedBuckets[bucketIndex].size());
+        snapshotQueues(buckets[bucketIndex], false, entries);
+        snapshotQueues(sharedBuckets[bucketIndex], true, entries);
+        return entries;
+    }
+
+    private void snapshotQueues(
+            final @NotNull Map<String, Messages> bucket,
+            final boolean shared,
+            final @NotNull List<byte[]> entries) {
+        for (final Map.Entry<String, Messages> entry : bucket.entrySet()) {
+            final Messages messages = entry.getValue();
+            if (messages.qos1Or2Messages.isEmpty() && messages.qos0Messages.isEmpty()) {
+                continue;
+            }
+            final CompactValueWriter writer = new CompactValueWriter(256);
+            writer.writeString(entry.getKey());
+            writer.writeByte(shared ? 1 : 0);
+            writer.writeVarInt(messages.qos1Or2Messages.size());
+            for (final MessageWithID messageWithID : messages.qos1Or2Messages) {
+                writer.writeBytes(serializer.serializeMessage(messageWithID, isRetained(messageWithID)));
+                if (messageWithID instanceof PUBLISH) {
+                    writePayload(writer, (PUBLISH) messageWithID);
+                }
+            }
+            writer.writeVarInt(messages.qos0Messages.size());
+            for (final PublishWithRetained publishWithRetained : messages.qos0Messages) {
+                writer.writeBytes(serializer.serializeMessage(publishWithRetained, publishWithRetained.retained));
+                writePayload(writer, publishWithRetained);
+            }
+            entries.add(writer.toByteArray());
+        }
+    }
+
+    private static void writePayload(final @NotNull CompactValueWriter writer, final @NotNull PUBLISH publish) {
+        final byte[] payload = publish.getPayload();
+        writer.writeBytes(payload != null ? payload : new byte[0]);
+    }
+
+    @Override
+    public void restoreBucketEntry(final int bucketIndex, final @NotNull CompactValueReader entry) {
+        final String queueId = entry.readString();
+        final boolean shared = entry.readByte() == 1;
+        final Map<String, Messages> bucket = shared ? sharedBuckets[bucketIndex] : buckets[bucketIndex];
+        final Messages messages = bucket.computeIfAbsent(queueId, s -> new Messages());
+        messages.expiryWatermark = ClientQueueCompaction.UNKNOWN_EXPIRY;
+        final int qos1Or2Count = entry.readVarInt();
+        for (int i = 0; i < qos1Or2Count; i++) {
+            final byte[] serializedMessage = entry.readBytes();
+            final boolean retained = serializer.deserializeMessageRetained(serializedMessage);
+            final MessageWithID messageWithID = serializer.deserializeMessage(serializedMessage);
+            final MessageWithID restored;
+            if (messageWithID instanceof PUBLISH) {
+                final PUBLISH publish = (PUBLISH) messageWithID;
+                publish.setPayload(entry.readBytes());
+                restored = new PublishWithRetained(publish, retained);
+            } else {
+                restored = new PubrelWithRetained((PUBREL) messageWithID, retained);
+            }
+            if (retained) {
+                messages.retainedQos1Or2Messages++;
+            }
+            messages.qos1Or2Messages.add(restored);
+            increaseMessagesMemory(getMessageSize(restored));
+        }
+        final int qos0Count = entry.readVarInt();
+        for (int i = 0; i < qos0Count; i++) {
+            final byte[] serializedMessage = entry.readBytes();
+            final boolean retained = serializer.deserializeMessageRetained(serializedMessage);
+            final PUBLISH publish = (PUBLISH) serializer.deserializeMessage(serializedMessage);
+            publish.setPayload(entry.readBytes());
+            final PublishWithRetained publishWithRetained = new PublishWithRetained(publish, retained);
+            messages.qos0Messages.add(publishWithRetained);
+            increaseQos0MessagesMemory(publishWithRetained.getEstimatedSize());
+            increaseClientQos0MessagesMemory(messages, publishWithRetained.getEstimatedSize());
+            increaseMessagesMemory(publishWithRetained.getEstimatedSize());
+        }
+    }
+
     private int getMessageSize(final @NotNull MessageWithID messageWithID) {
         if (messageWithID instanceof PublishWithRetained) {
             return ((PublishWithRetained) messageWithID).getEstimatedSize();
@@ -687,19 +805,33 @@ public class ClientQueueMemoryLocalPersistence implements ClientQueueLocalPersis
         return false;
     }
 
-    private void cleanExpiredMessages(final @NotNull Messages messages) {
+    private void cleanExpiredMessages(
+            final @NotNull ClientQueueCompaction compaction,
+            final @NotNull Messages messages) {
+        // the queue stays due if the compaction is exhausted before all messages are checked
+        messages.expiryWatermark = ClientQueueCompaction.UNKNOWN_EXPIRY;
+        long expiryWatermark = ClientQueueCompaction.NO_EXPIRY;
         final Iterator<PublishWithRetained> iterator = messages.qos0Messages.iterator();
         while (iterator.hasNext()) {
+            if (compaction.isExhausted()) {
+                return;
+            }
             final PublishWithRetained publishWithRetained = iterator.next();
             if (publishWithRetained.isExpired()) {
                 increaseQos0MessagesMemory(-publishWithRetained.getEstimatedSize());
                 increaseClientQos0MessagesMemory(messages, -publishWithRetained.getEstimatedSize());
                 increaseMessagesMemory(-publishWithRetained.getEstimatedSize());
                 iterator.remove();
+                compaction.removed(publishWithRetained.getEstimatedSize());
+            } else {
+                expiryWatermark = Math.min(expiryWatermark, expiryTimestamp(publishWithRetained));
             }
         }
         final Iterator<MessageWithID> qos12iterator = messages.qos1Or2Messages.iterator();
         while (qos12iterator.hasNext()) {
+            if (compaction.isExhausted()) {
+                return;
+            }
             final MessageWithID messageWithID = qos12iterator.next();
             if (messageWithID instanceof PubrelWithRetained) {
                 final PubrelWithRetained pubrel = (PubrelWithRetained) messageWithID;
@@ -707,6 +839,7 @@ public class ClientQueueMemoryLocalPersistence implements ClientQueueLocalPersis
                     continue;
                 }
                 if (!pubrel.hasExpired(InternalConfigurations.MAXIMUM_INFLIGHT_PUBREL_EXPIRY)) {
+                    expiryWatermark = Math.min(expiryWatermark, expiryTimestamp(pubrel));
                     continue;
                 }
                 if (pubrel.retained) {
@@ -714,6 +847,7 @@ public class ClientQueueMemoryLocalPersistence implements ClientQueueLocalPersis
                 }
                 increaseMessagesMemory(-pubrel.getEstimatedSize());
                 qos12iterator.remove();
+                compaction.removed(pubrel.getEstimatedSize());
             } else if (messageWithID instanceof PublishWithRetained) {
                 final PublishWithRetained publish = (PublishWithRetained) messageWithID;
                 final boolean expireInflight = InternalConfigurations.EXPIRE_INFLIGHT_MESSAGES_ENABLED;
@@ -725,9 +859,24 @@ public class ClientQueueMemoryLocalPersistence implements ClientQueueLocalPersis
                     }
                     increaseMessagesMemory(-publish.getEstimatedSize());
                     qos12iterator.remove();
+                    compaction.removed(publish.getEstimatedSize());
+                } else {
+                    expiryWatermark = Math.min(expiryWatermark, expiryTimestamp(publish));
                 }
             }
         }
+        messages.expiryWatermark = expiryWatermark;
+    }
+
+    private static void lowerExpiryWatermark(
+            final @NotNull Messages messages,
+            final @NotNull MessageWithID messageWithID) {
+        messages.expiryWatermark = Math.min(messages.expiryWatermark, expiryTimestamp(messageWithID));
+    }
+
+    private static long expiryTimestamp(final @NotNull MessageWithID messageWithID) {
+        final boolean inFlight = messageWithID.getPacketIdentifier() != NO_PACKET_ID;
+        return ClientQueueCompaction.expiryTimestamp(messageWithID, inFlight);
     }
     @VisibleForTesting
     static class PublishWithRetained extends PUBLISH {
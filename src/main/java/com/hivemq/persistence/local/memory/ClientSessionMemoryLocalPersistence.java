@@ -31,11 +31,15 @@ import com.hivemq.metrics.MetricsHolder;
 import com.hivemq.persistence.NoSessionException;
 import com.hivemq.persistence.PersistenceEntry;
 import com.hivemq.persistence.clientsession.ClientSession;
+import com.hivemq.persistence.clientsession.ClientSessionState;
 import com.hivemq.persistence.clientsession.ClientSessionWill;
 import com.hivemq.persistence.clientsession.PendingWillMessages;
 import com.hivemq.persistence.exception.InvalidSessionExpiryIntervalException;
 import com.hivemq.persistence.local.ClientSessionLocalPersistence;
+import com.hivemq.persistence.local.xodus.CompactValueReader;
+import com.hivemq.persistence.local.xodus.CompactValueWriter;
 import com.hivemq.persistence.local.xodus.bucket.BucketUtils;
+import com.hivemq.persistence.local.xodus.clientsession.ClientSessionPersistenceSerializer;
 import com.hivemq.persistence.payload.PublishPayloadPersistence;
 import com.hivemq.util.ObjectMemoryEstimation;
 import com.hivemq.util.ThreadPreConditions;
@@ -43,10 +47,12 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.inject.Inject;
-import java.util.HashMap;
+import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.stream.Collectors;
@@ -54,6 +60,7 @@ import java.util.stream.Collectors;
 import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
 import static com.hivemq.mqtt.message.connect.Mqtt5CONNECT.SESSION_EXPIRE_ON_DISCONNECT;
+import static com.hivemq.mqtt.message.connect.Mqtt5CONNECT.SESSION_EXPIRY_MAX;
 import static com.hivemq.mqtt.message.disconnect.DISCONNECT.SESSION_EXPIRY_NOT_SET;
 import static com.hivemq.util.ThreadPreConditions.SINGLE_WRITER_THREAD_PREFIX;
 
@@ -61,12 +68,15 @@ import static com.hivemq.util.ThreadPreConditions.SINGLE_WRITER_THREAD_PREFIX;
  * @author Georg Held
  */
 @LazySingleton
-public class ClientSessionMemoryLocalPersistence implements ClientSessionLocalPersistence {
+public class ClientSessionMemoryLocalPersistence implements ClientSessionLocalPersistence, MemorySnapshotPersistence {
 
     private static final @NotNull Logger log = LoggerFactory.getLogger(ClientSessionMemoryLocalPersistence.class);
     private final @NotNull PublishPayloadPersistence payloadPersistence;
     private final @NotNull MetricsHolder metricsHolder;
     private final @NotNull EventLog eventLog;
+    private final @NotNull ClientSessionPersistenceSerializer serializer = new ClientSessionPersistenceSerializer();
+    // written by the single writer only, getSessionState reads from other threads. A stored session is never modified,
+    // every change stores a new session.
     private final @NotNull Map<String, PersistenceEntry<ClientSession>> @NotNull [] buckets;
     private final @NotNull AtomicInteger sessionsCount = new AtomicInteger(0);
     private final @NotNull AtomicLong currentMemorySize = new AtomicLong();
@@ -84,7 +94,7 @@ public class ClientSessionMemoryLocalPersistence implements ClientSessionLocalPe
         // noinspection unchecked
         buckets = new Map[bucketCount];
         for (int i = 0; i < bucketCount; i++) {
-            buckets[i] = new HashMap<>();
+            buckets[i] = new ConcurrentHashMap<>();
         }
         metricRegistry.register(HiveMQMetrics.CLIENT_SESSIONS_MEMORY_PERSISTENCE_TOTAL_SIZE.name(),
                 (Gauge<Long>) currentMemorySize::get);
@@ -149,6 +159,21 @@ public class ClientSessionMemoryLocalPersistence implements ClientSessionLocalPe
         return clientSession;
     }
 
+    @Override
+    public @Nullable ClientSessionState getSessionState(final @NotNull String clientId) {
+        final int bucketIndex = BucketUtils.getBucket(clientId, bucketCount);
+        final PersistenceEntry<ClientSession> storedSession = getBucket(bucketIndex).get(clientId);
+        if (storedSession == null) {
+            return null;
+        }
+        // the sessions are already in memory, so no separate index is needed, we just skip the deep copy
+        final ClientSessionState state = ClientSessionState.of(storedSession.getObject(), storedSession.getTimestamp());
+        if (state.isExpired(System.currentTimeMillis())) {
+            return null;
+        }
+        return state;
+    }
+
     @Override
     public @Nullable Long getTimestamp(final @NotNull String clientId) {
         final int bucketIndex = BucketUtils.getBucket(clientId, bucketCount);
@@ -231,7 +256,10 @@ public class ClientSessionMemoryLocalPersistence implements ClientSessionLocalPe
             final ClientSession oldSession = oldEntry.getObject();
             final ClientSession newSession;
             if (sendWill) {
-                newSession = oldSession;
+                newSession = new ClientSession(oldSession.isConnected(),
+                        oldSession.getSessionExpiryIntervalSec(),
+                        oldSession.getWillPublish(),
+                        oldSession.getQueueLimit());
             } else {
                 removeWillReference(oldSession);
                 newSession = oldSession.copyWithoutWill();
@@ -300,6 +328,44 @@ public class ClientSessionMemoryLocalPersistence implements ClientSessionLocalPe
         return expiredClientIds.build();
     }
 
+    @Override
+    @ExecuteInSingleWriter
+    public boolean removeIfExpired(final @NotNull String clientId, final int bucketIndex) {
+        ThreadPreConditions.startsWith(SINGLE_WRITER_THREAD_PREFIX);
+        final Map<String, PersistenceEntry<ClientSession>> bucket = getBucket(bucketIndex);
+        final PersistenceEntry<ClientSession> storedEntry = bucket.get(clientId);
+        if (storedEntry == null) {
+            return false;
+        }
+        final long timestamp = storedEntry.getTimestamp();
+        final ClientSession clientSession = storedEntry.getObject();
+        final long sessionExpiryInterval = clientSession.getSessionExpiryIntervalSec();
+        if (!clientSession.isExpired(System.currentTimeMillis() - timestamp)) {
+            return false;
+        }
+        if (sessionExpiryInterval > SESSION_EXPIRE_ON_DISCONNECT) {
+            sessionsCount.decrementAndGet();
+        }
+        eventLog.clientSessionExpired(timestamp + sessionExpiryInterval * 1000, clientId);
+        currentMemorySize.addAndGet(-(storedEntry.getEstimatedSize() + ObjectMemoryEstimation.stringSize(clientId)));
+        bucket.remove(clientId);
+        return true;
+    }
+
+    @Override
+    public @NotNull Map<String, Long> getSessionExpiries(final int bucketIndex) {
+        final Map<String, PersistenceEntry<ClientSession>> bucket = getBucket(bucketIndex);
+        return bucket.entrySet()
+                .stream()
+                .filter(entry -> !entry.getValue().getObject().isConnected())
+                .filter(entry -> entry.getValue().getObject().getSessionExpiryIntervalSec() >
+                        SESSION_EXPIRE_ON_DISCONNECT)
+                .filter(entry -> entry.getValue().getObject().getSessionExpiryIntervalSec() < SESSION_EXPIRY_MAX)
+                .collect(Collectors.toUnmodifiableMap(Map.Entry::getKey,
+                        entry -> entry.getValue().getTimestamp() +
+                                entry.getValue().getObject().getSessionExpiryIntervalSec() * 1000));
+    }
+
     @Override
     public @NotNull Set<String> getDisconnectedClients(final int bucketIndex) {
         final Map<String, PersistenceEntry<ClientSession>> bucket = getBucket(bucketIndex);
@@ -341,8 +407,11 @@ public class ClientSessionMemoryLocalPersistence implements ClientSessionLocalPe
             if (!clientSession.isConnected() && !isPersistent(clientSession)) {
                 throw NoSessionException.INSTANCE;
             }
-            clientSession.setSessionExpiryIntervalSec(sessionExpiryInterval);
-            return new PersistenceEntry<>(clientSession, storedSession.getTimestamp());
+            final ClientSession newSession = new ClientSession(clientSession.isConnected(),
+                    sessionExpiryInterval,
+                    clientSession.getWillPublish(),
+                    clientSession.getQueueLimit());
+            return new PersistenceEntry<>(newSession, storedSession.getTimestamp());
         });
     }
 
@@ -359,7 +428,7 @@ public class ClientSessionMemoryLocalPersistence implements ClientSessionLocalPe
                     return new PendingWillMessages.PendingWill(
                             Math.min(willPublish.getDelayInterval(),
                                     storedSession.getObject().getSessionExpiryIntervalSec()),
-                            willPublish.getDelayInterval());
+                            storedSession.getTimestamp());
                 }));
     }
 
@@ -420,6 +489,65 @@ public class ClientSessionMemoryLocalPersistence implements ClientSessionLocalPe
         currentMemorySize.set(0);
     }
 
+    @Override
+    @ExecuteInSingleWriter
+    public @NotNull List<byte[]> snapshotBucket(final int bucketIndex) {
+        ThreadPreConditions.startsWith(SINGLE_WRITER_THREAD_PREFIX);
+        final Map<String, PersistenceEntry<ClientSession>> bucket = getBucket(bucketIndex);
+        final long currentTimeMillis = System.currentTimeMillis();
+        final List<byte[]> entries = new ArrayList<>(bucket.size());
+        for (final Map.Entry<String, PersistenceEntry<ClientSession>> entry : bucket.entrySet()) {
+            final PersistenceEntry<ClientSession> storedEntry = entry.getValue();
+            ClientSession clientSession = storedEntry.getObject();
+            long timestamp = storedEntry.getTimestamp();
+            if (clientSession.isConnected()) {
+                // All clients lose their connection with the restart, so the session expiry starts now.
+                // Sessions without expiry are kept as well, the regular clean up then also removes their queues and
+                // subscriptions. The will was not pending at shutdown and must not be sent after the restart.
+                clientSession = clientSession.copyWithoutWill();
+                clientSession.setConnected(false);
+                timestamp = currentTimeMillis;
+            }
+            final ClientSessionWill willPublish = clientSession.getWillPublish();
+            final byte[] willPayload = willPublish != null ? willPublish.getPayload() : null;
+            final CompactValueWriter writer = new CompactValueWriter(64);
+            writer.writeString(entry.getKey());
+            writer.writeBytes(serializer.serializeValue(clientSession, timestamp));
+            writer.writeByte(willPayload != null ? 1 : 0);
+            if (willPayload != null) {
+                writer.writeBytes(willPayload);
+            }
+            entries.add(writer.toByteArray());
+        }
+        return entries;
+    }
+
+    @Override
+    public void restoreBucketEntry(final int bucketIndex, final @NotNull CompactValueReader entry) {
+        final String clientId = entry.readString();
+        final byte[] value = entry.readBytes();
+        final ClientSession clientSession = serializer.deserializeValue(value);
+        final ClientSessionWill willPublish = clientSession.getWillPublish();
+        if (entry.readByte() == 1) {
+            final byte[] willPayload = entry.readBytes();
+            if (willPublish != null) {
+                willPublish.getMqttWillPublish().setPayload(willPayload);
+            }
+        } else if (willPublish != null) {
+            clientSession.setWillPublish(null);
+        }
+        final PersistenceEntry<ClientSession> persistenceEntry =
+                new PersistenceEntry<>(clientSession, serializer.deserializeTimestamp(value));
+        getBucket(bucketIndex).put(clientId, persistenceEntry);
+        if (isPersistent(clientSession)) {
+            sessionsCount.incrementAndGet();
+        }
+        if (clientSession.getWillPublish() != null) {
+            metricsHolder.getStoredWillMessagesCount().inc();
+        }
+        currentMemorySize.addAndGet(persistenceEntry.getEstimatedSize() + ObjectMemoryEstimation.stringSize(clientId));
+    }
+
     private void removeWillReference(final @NotNull ClientSession clientSession) {
         final ClientSessionWill willPublish = clientSession.getWillPublish();
         if (willPublish == null) {
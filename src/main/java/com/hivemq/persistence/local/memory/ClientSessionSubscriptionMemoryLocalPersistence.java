@@ -19,6 +19,7 @@ import com.codahale.metrics.Gauge;
 import com.codahale.metrics.MetricRegistry;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Iterators;
 import com.google.common.collect.Sets;
 import com.hivemq.annotations.ExecuteInSingleWriter;
 import com.hivemq.bootstrap.ioc.lazysingleton.LazySingleton;
@@ -27,16 +28,24 @@ import com.hivemq.extension.sdk.api.annotations.NotNull;
 import com.hivemq.extension.sdk.api.annotations.Nullable;
 import com.hivemq.extensions.iteration.BucketChunkResult;
 import com.hivemq.metrics.HiveMQMetrics;
+import com.hivemq.mqtt.message.QoS;
+import com.hivemq.mqtt.message.mqtt5.Mqtt5RetainHandling;
 import com.hivemq.mqtt.message.subscribe.Topic;
 import com.hivemq.persistence.IterablePersistenceEntry;
 import com.hivemq.persistence.local.ClientSessionSubscriptionLocalPersistence;
+import com.hivemq.persistence.local.xodus.CompactValueReader;
+import com.hivemq.persistence.local.xodus.CompactValueWriter;
 import com.hivemq.persistence.local.xodus.bucket.BucketUtils;
 import com.hivemq.util.ObjectMemoryEstimation;
 import com.hivemq.util.ThreadPreConditions;
 
 import javax.inject.Inject;
-import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.stream.Collectors;
 
@@ -50,8 +59,12 @@ import static com.hivemq.util.ThreadPreConditions.SINGLE_WRITER_THREAD_PREFIX;
  * @author Florian Limpöck
  */
 @LazySingleton
-public class ClientSessionSubscriptionMemoryLocalPersistence implements ClientSessionSubscriptionLocalPersistence {
+public class ClientSessionSubscriptionMemoryLocalPersistence
+        implements ClientSessionSubscriptionLocalPersistence, MemorySnapshotPersistence {
 
+    private static final int NO_LOCAL_BIT = 0b0000_0001;
+    private static final int RETAIN_AS_PUBLISHED_BIT = 0b0000_0010;
+    private static final int NO_SUBSCRIPTION_IDENTIFIER = 0;
     private final @NotNull Map<String, IterablePersistenceEntry<ImmutableSet<Topic>>> @NotNull [] buckets;
     private final int bucketCount;
     @VisibleForTesting
@@ -59,10 +72,11 @@ public class ClientSessionSubscriptionMemoryLocalPersistence implements ClientSe
     @Inject
     ClientSessionSubscriptionMemoryLocalPersistence(@NotNull final MetricRegistry metricRegistry) {
         bucketCount = InternalConfigurations.PERSISTENCE_BUCKET_COUNT.get();
+        // concurrent maps, so the buckets can be iterated outside the single writer
         // noinspection unchecked
-        buckets = new HashMap[bucketCount];
+        buckets = new ConcurrentHashMap[bucketCount];
         for (int i = 0; i < bucketCount; i++) {
-            buckets[i] = new HashMap<>();
+            buckets[i] = new ConcurrentHashMap<>();
         }
         metricRegistry.register(HiveMQMetrics.CLIENT_SESSION_SUBSCRIPTIONS_MEMORY_PERSISTENCE_TOTAL_SIZE.name(),
                 (Gauge<Long>) currentMemorySize::get);
@@ -188,6 +202,15 @@ public class ClientSessionSubscriptionMemoryLocalPersistence implements ClientSe
         return new BucketChunkResult<>(result, true, lastClientIdIgnored, bucketIndex);
     }
 
+    @Override
+    public @NotNull Iterator<Map.Entry<String, ImmutableSet<Topic>>> getAllSubscribersIterator(
+            final int bucketIndex,
+            final int chunkSizeIgnored) {
+        // the bucket is iterated in place, so there are no chunks to read
+        return Iterators.transform(buckets[bucketIndex].entrySet().iterator(),
+                entry -> Map.entry(entry.getKey(), entry.getValue().getObject()));
+    }
+
     @Override
     public void cleanUp(final int bucket) {
         // noop because we have no duplicates in memory
@@ -198,4 +221,58 @@ public class ClientSessionSubscriptionMemoryLocalPersistence implements ClientSe
         buckets[bucketIndex].clear();
         currentMemorySize.set(0);
     }
+
+    @Override
+    @ExecuteInSingleWriter
+    public @NotNull List<byte[]> snapshotBucket(final int bucketIndex) {
+        ThreadPreConditions.startsWith(SINGLE_WRITER_THREAD_PREFIX);
+        final Map<String, IterablePersistenceEntry<ImmutableSet<Topic>>> bucket = buckets[bucketIndex];
+        final List<byte[]> entries = new ArrayList<>(bucket.size());
+        for (final Map.Entry<String, IterablePersistenceEntry<ImmutableSet<Topic>>> entry : bucket.entrySet()) {
+            final ImmutableSet<Topic> topics = entry.getValue().getObject();
+            final CompactValueWriter writer = new CompactValueWriter(32 * (topics.size() + 1));
+            writer.writeString(entry.getKey());
+            writer.writeVarLong(entry.getValue().getTimestamp());
+            writer.writeVarInt(topics.size());
+            for (final Topic topic : topics) {
+                writer.writeString(topic.getTopic());
+                writer.writeByte(topic.getQoS().getQosNumber());
+                writer.writeByte((topic.isNoLocal() ? NO_LOCAL_BIT : 0) |
+                        (topic.isRetainAsPublished() ? RETAIN_AS_PUBLISHED_BIT : 0));
+                writer.writeByte(topic.getRetainHandling().getCode());
+                final Integer subscriptionIdentifier = topic.getSubscriptionIdentifier();
+                writer.writeVarInt(
+                        subscriptionIdentifier != null ? subscriptionIdentifier : NO_SUBSCRIPTION_IDENTIFIER);
+            }
+            entries.add(writer.toByteArray());
+        }
+        return entries;
+    }
+
+    @Override
+    public void restoreBucketEntry(final int bucketIndex, final @NotNull CompactValueReader entry) {
+        final String client = entry.readString();
+        final long timestamp = entry.readVarLong();
+        final int topicCount = entry.readVarInt();
+        final ImmutableSet.Builder<Topic> topics = ImmutableSet.builderWithExpectedSize(topicCount);
+        for (int i = 0; i < topicCount; i++) {
+            final String topic = entry.readString();
+            final QoS qos = Objects.requireNonNull(QoS.valueOf(entry.readByte()));
+            final int flags = entry.readByte();
+            final Mqtt5RetainHandling retainHandling =
+                    Objects.requireNonNull(Mqtt5RetainHandling.fromCode(entry.readByte()));
+            final int subscriptionIdentifier = entry.readVarInt();
+            topics.add(new Topic(topic,
+                    qos,
+                    (flags & NO_LOCAL_BIT) == NO_LOCAL_BIT,
+                    (flags & RETAIN_AS_PUBLISHED_BIT) == RETAIN_AS_PUBLISHED_BIT,
+                    retainHandling,
+                    subscriptionIdentifier != NO_SUBSCRIPTION_IDENTIFIER ? subscriptionIdentifier : null));
+        }
+        final IterablePersistenceEntry<ImmutableSet<Topic>> persistenceEntry =
+                new IterablePersistenceEntry<>(topics.build(), timestamp);
+        buckets[bucketIndex].put(client, persistenceEntry);
+        currentMemorySize.addAndGet(persistenceEntry.getEstimatedSize());
+        currentMemorySize.addAndGet(ObjectMemoryEstimation.stringSize(client));
+    }
 }
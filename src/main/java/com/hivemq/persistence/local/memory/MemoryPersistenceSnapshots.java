@@ -0,0 +1,268 @@
+/*
+ * Copyright 2019-present HiveMQ GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hivemq.persistence.local.memory;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.hivemq.configuration.info.SystemInformation;
+import com.hivemq.configuration.service.InternalConfigurations;
+import com.hivemq.exceptions.UnrecoverableException;
+import com.hivemq.extension.sdk.api.annotations.NotNull;
+import com.hivemq.persistence.ProducerQueues;
+import com.hivemq.persistence.SingleWriterService;
+import com.hivemq.persistence.local.xodus.CompactValueReader;
+import com.hivemq.util.ThreadFactoryUtil;
+import org.apache.commons.io.FileUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import static com.hivemq.configuration.service.InternalConfigurations.PERSISTENCE_SHUTDOWN_TIMEOUT_SEC;
+
+/**
+ * Writes the in-memory persistences to a snapshot in the data folder and restores them from it, so planned restarts
+ * of a broker in in-memory mode do not lose the sessions, subscriptions, queued and retained messages.
+ * <p>
+ * Every bucket of every persistence is serialized in its single writer slot, so each bucket is consistent in itself.
+ * The serialized buckets are written to one file per bucket in parallel. A file consists of a header (magic number,
+ * format version, bucket count and entry count) followed by the length prefixed entries. The snapshot is written to
+ * a temporary folder first and only replaces a previous snapshot when all buckets were written.
+ * <p>
+ * On startup the bucket files are memory mapped and restored in parallel, before the persistences are used. A
+ * snapshot is deleted after it was restored, so a later crash can not bring back stale state.
+ */
+@Singleton
+public class MemoryPersistenceSnapshots {
+
+    private static final @NotNull Logger log = LoggerFactory.getLogger(MemoryPersistenceSnapshots.class);
+    public static final @NotNull String SNAPSHOT_FOLDER_NAME = "memory-snapshot";
+    private static final @NotNull String SNAPSHOT_TMP_FOLDER_NAME = SNAPSHOT_FOLDER_NAME + ".tmp";
+    private static final @NotNull String SNAPSHOT_FILE_SUFFIX = ".snapshot";
+    private static final int MAGIC = 0x484D_5153;
+    private static final int FORMAT_VERSION = 1;
+    private static final int WRITE_BUFFER_SIZE = 64 * 1024;
+    private final @NotNull File dataFolder;
+    private final @NotNull ImmutableList<SnapshotUnit> units;
+    @Inject
+    MemoryPersistenceSnapshots(
+            final @NotNull SystemInformation systemInformation,
+            final @NotNull ClientSessionMemoryLocalPersistence clientSessionPersistence,
+            final @NotNull ClientSessionSubscriptionMemoryLocalPersistence subscriptionPersistence,
+            final @NotNull ClientQueueMemoryLocalPersistence clientQueuePersistence,
+            final @NotNull RetainedMessageMemoryLocalPersistence retainedMessagePersistence) {
+        dataFolder = systemInformation.getDataFolder();
+        units = ImmutableList.of(new SnapshotUnit("client-sessions",
+                        clientSessionPersistence,
+                        SingleWriterService::getClientSessionQueue),
+                new SnapshotUnit("subscriptions", subscriptionPersistence, SingleWriterService::getSubscriptionQueue),
+                new SnapshotUnit("queued-messages",
+                        clientQueuePersistence,
+                        SingleWriterService::getQueuedMessagesQueue),
+                new SnapshotUnit("retained-messages",
+                        retainedMessagePersistence,
+                        SingleWriterService::getRetainedMessageQueue));
+    }
+
+    /**
+     * Writes a snapshot of all in-memory persistences. Must be called on shutdown, before the single writer is
+     * stopped. Failures are logged, the broker shuts down regardless.
+     */
+    public void write(final @NotNull SingleWriterService singleWriterService) {
+        final long start = System.currentTimeMillis();
+        final File tmpFolder = new File(dataFolder, SNAPSHOT_TMP_FOLDER_NAME);
+        final File snapshotFolder = new File(dataFolder, SNAPSHOT_FOLDER_NAME);
+        final int bucketCount = singleWriterService.getPersistenceBucketCount();
+        final ListeningExecutorService executorService = createExecutorService();
+        try {
+            FileUtils.deleteDirectory(tmpFolder);
+            final List<ListenableFuture<Integer>> futures = new ArrayList<>();
+            for (final SnapshotUnit unit : units) {
+                final File folder = new File(tmpFolder, unit.name);
+                Files.createDirectories(folder.toPath());
+                final ProducerQueues singleWriter = unit.singleWriter.apply(singleWriterService);
+                for (int i = 0; i < bucketCount; i++) {
+                    final File file = new File(folder, i + SNAPSHOT_FILE_SUFFIX);
+                    final ListenableFuture<List<byte[]>> entries =
+                            singleWriter.submit(i, unit.persistence::snapshotBucket);
+                    futures.add(Futures.transform(entries,
+                            bucketEntries -> writeBucket(file, bucketCount, bucketEntries),
+                            executorService));
+                }
+            }
+            final List<Integer> entryCounts =
+                    Futures.allAsList(futures).get(PERSISTENCE_SHUTDOWN_TIMEOUT_SEC.get(), TimeUnit.SECONDS);
+            FileUtils.deleteDirectory(snapshotFolder);
+            Files.move(tmpFolder.toPath(), snapshotFolder.toPath(), StandardCopyOption.ATOMIC_MOVE);
+            log.info("Wrote snapshot of the in-memory persistences with {} entries in {}ms.",
+                    entryCounts.stream().mapToLong(Integer::longValue).sum(),
+                    System.currentTimeMillis() - start);
+        } catch (final Exception e) {
+            log.error("Could not write snapshot of the in-memory persistences: {}", e.getMessage());
+            log.debug("Original Exception:", e);
+            FileUtils.deleteQuietly(tmpFolder);
+        } finally {
+            executorService.shutdownNow();
+        }
+    }
+
+    /**
+     * Restores the in-memory persistences from the snapshot in the data folder, if there is one. Must be called on
+     * startup, before the persistences are used.
+     *
+     * @throws UnrecoverableException if a snapshot exists but can not be restored
+     */
+    public void restore() {
+        final File snapshotFolder = new File(dataFolder, SNAPSHOT_FOLDER_NAME);
+        if (!snapshotFolder.isDirectory()) {
+            return;
+        }
+        final long start = System.currentTimeMillis();
+        final int bucketCount = InternalConfigurations.PERSISTENCE_BUCKET_COUNT.get();
+        final ListeningExecutorService executorService = createExecutorService();
+        try {
+            final List<ListenableFuture<Integer>> futures = new ArrayList<>();
+            for (final SnapshotUnit unit : units) {
+                final File folder = new File(snapshotFolder, unit.name);
+                for (int i = 0; i < bucketCount; i++) {
+                    final File file = new File(folder, i + SNAPSHOT_FILE_SUFFIX);
+                    final int bucketIndex = i;
+                    futures.add(executorService.submit(() -> restoreBucket(file,
+                            bucketCount,
+                            unit.persistence,
+                            bucketIndex)));
+                }
+            }
+            final List<Integer> entryCounts = Futures.allAsList(futures).get();
+            log.info("Restored {} entries of the in-memory persistences from the snapshot in {}ms.",
+                    entryCounts.stream().mapToLong(Integer::longValue).sum(),
+                    System.currentTimeMillis() - start);
+        } catch (final Exception e) {
+            log.error("Could not restore the in-memory persistences from the snapshot in {}. " +
+                    "Remove the folder to start without the snapshot.", snapshotFolder.getAbsolutePath());
+            log.debug("Original Exception:", e);
+            throw new UnrecoverableException(false);
+        } finally {
+            executorService.shutdownNow();
+        }
+        try {
+            FileUtils.deleteDirectory(snapshotFolder);
+        } catch (final IOException e) {
+            log.warn("Could not delete the restored snapshot of the in-memory persistences in {}.",
+                    snapshotFolder.getAbsolutePath());
+            log.debug("Original Exception:", e);
+        }
+    }
+
+    private static int writeBucket(
+            final @NotNull File file, final int bucketCount, final @NotNull List<byte[]> entries) {
+        try (final FileOutputStream fileOutputStream = new FileOutputStream(file);
+             final DataOutputStream outputStream = new DataOutputStream(new BufferedOutputStream(fileOutputStream,
+                     WRITE_BUFFER_SIZE))) {
+            outputStream.writeInt(MAGIC);
+            outputStream.writeByte(FORMAT_VERSION);
+            outputStream.writeInt(bucketCount);
+            outputStream.writeInt(entries.size());
+            for (final byte[] entry : entries) {
+                outputStream.writeInt(entry.length);
+                outputStream.write(entry);
+            }
+            outputStream.flush();
+            fileOutputStream.getFD().sync();
+        } catch (final IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return entries.size();
+    }
+
+    private static int restoreBucket(
+            final @NotNull File file,
+            final int bucketCount,
+            final @NotNull MemorySnapshotPersistence persistence,
+            final int bucketIndex) throws IOException {
+        try (final FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            final MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.getInt() != MAGIC) {
+                throw new IOException("Invalid snapshot file " + file);
+            }
+            final int version = buffer.get();
+            if (version != FORMAT_VERSION) {
+                throw new IOException("Unknown format version " + version + " of snapshot file " + file);
+            }
+            final int snapshotBucketCount = buffer.getInt();
+            if (snapshotBucketCount != bucketCount) {
+                throw new IOException("Snapshot was written with " + snapshotBucketCount + " buckets instead of " +
+                        bucketCount);
+            }
+            final int entryCount = buffer.getInt();
+            // the deserialization copies everything it keeps, so the entry buffer can be reused
+            byte[] entry = new byte[0];
+            for (int i = 0; i < entryCount; i++) {
+                final int length = buffer.getInt();
+                if (length < 0 || length > buffer.remaining()) {
+                    throw new IOException("Truncated snapshot file " + file);
+                }
+                if (entry.length < length) {
+                    entry = new byte[length];
+                }
+                buffer.get(entry, 0, length);
+                persistence.restoreBucketEntry(bucketIndex, new CompactValueReader(entry, 0, length));
+            }
+            return entryCount;
+        }
+    }
+
+    private static @NotNull ListeningExecutorService createExecutorService() {
+        return MoreExecutors.listeningDecorator(Executors.newFixedThreadPool(
+                InternalConfigurations.MEMORY_PERSISTENCE_SNAPSHOT_THREAD_POOL_SIZE.get(),
+                ThreadFactoryUtil.create("memory-snapshot-%d")));
+    }
+
+    private static class SnapshotUnit {
+
+        private final @NotNull String name;
+        private final @NotNull MemorySnapshotPersistence persistence;
+        private final @NotNull Function<SingleWriterService, ProducerQueues> singleWriter;
+        private SnapshotUnit(
+                final @NotNull String name,
+                final @NotNull MemorySnapshotPersistence persistence,
+                final @NotNull Function<SingleWriterService, ProducerQueues> singleWriter) {
+            this.name = name;
+            this.persistence = persistence;
+            this.singleWriter = singleWriter;
+        }
+    }
+}
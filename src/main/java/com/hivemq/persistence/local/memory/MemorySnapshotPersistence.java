@@ -0,0 +1,49 @@
+/*
+ * Copyright 2019-present HiveMQ GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hivemq.persistence.local.memory;
+
+import com.hivemq.annotations.ExecuteInSingleWriter;
+import com.hivemq.extension.sdk.api.annotations.NotNull;
+import com.hivemq.persistence.local.xodus.CompactValueReader;
+
+import java.util.List;
+
+/**
+ * An in-memory persistence whose buckets can be written to a snapshot on shutdown and restored from it on startup.
+ *
+ * @see MemoryPersistenceSnapshots
+ */
+public interface MemorySnapshotPersistence {
+
+    /**
+     * Serializes all entries of a bucket. As this is called in the single writer slot of the bucket, the snapshot of
+     * the bucket is consistent.
+     *
+     * @param  bucketIndex the index of the bucket
+     * @return             one serialized entry per item of the bucket
+     */
+    @ExecuteInSingleWriter
+    @NotNull List<byte[]> snapshotBucket(int bucketIndex);
+
+    /**
+     * Adds an entry that was serialized by {@link #snapshotBucket(int)} to a bucket. This is only called on startup,
+     * before the persistence is used.
+     *
+     * @param bucketIndex the index of the bucket
+     * @param entry       the serialized entry
+     */
+    void restoreBucketEntry(int bucketIndex, @NotNull CompactValueReader entry);
+}
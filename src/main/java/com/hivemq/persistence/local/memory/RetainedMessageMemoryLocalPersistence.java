@@ -26,14 +26,19 @@ import com.hivemq.extension.sdk.api.annotations.Nullable;
 import com.hivemq.extensions.iteration.BucketChunkResult;
 import com.hivemq.metrics.HiveMQMetrics;
 import com.hivemq.persistence.RetainedMessage;
+import com.hivemq.persistence.local.xodus.CompactValueReader;
+import com.hivemq.persistence.local.xodus.CompactValueWriter;
 import com.hivemq.persistence.local.xodus.PublishTopicTree;
+import com.hivemq.persistence.local.xodus.RetainedMessageSerializer;
 import com.hivemq.persistence.retained.RetainedMessageLocalPersistence;
 import com.hivemq.util.ThreadPreConditions;
 
 import javax.inject.Inject;
 import javax.inject.Singleton;
 import java.util.AbstractMap;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
@@ -44,7 +49,8 @@ import static com.google.common.base.Preconditions.checkNotNull;
 import static com.hivemq.util.ThreadPreConditions.SINGLE_WRITER_THREAD_PREFIX;
 
 @Singleton
-public class RetainedMessageMemoryLocalPersistence implements RetainedMessageLocalPersistence {
+public class RetainedMessageMemoryLocalPersistence
+        implements RetainedMessageLocalPersistence, MemorySnapshotPersistence {
 
     @VisibleForTesting
     final @NotNull AtomicLong currentMemorySize = new AtomicLong();
@@ -194,4 +200,35 @@ public class RetainedMessageMemoryLocalPersistence implements RetainedMessageLoc
     public void closeDB(final int bucketIndex) {
         // noop
     }
+
+    @ExecuteInSingleWriter
+    @Override
+    public @NotNull List<byte[]> snapshotBucket(final int bucketIndex) {
+        ThreadPreConditions.startsWith(SINGLE_WRITER_THREAD_PREFIX);
+        final Map<String, RetainedMessage> bucket = buckets[bucketIndex];
+        final List<byte[]> entries = new ArrayList<>(bucket.size());
+        for (final Map.Entry<String, RetainedMessage> entry : bucket.entrySet()) {
+            final RetainedMessage retainedMessage = entry.getValue();
+            if (retainedMessage.hasExpired() || retainedMessage.getMessage() == null) {
+                continue;
+            }
+            // the serialized value does not contain the payload, the memory persistence has no payload persistence
+            final CompactValueWriter writer = new CompactValueWriter(64);
+            writer.writeString(entry.getKey());
+            writer.writeBytes(RetainedMessageSerializer.serializeValue(retainedMessage));
+            writer.writeBytes(retainedMessage.getMessage());
+            entries.add(writer.toByteArray());
+        }
+        return entries;
+    }
+
+    @Override
+    public void restoreBucketEntry(final int bucketIndex, final @NotNull CompactValueReader entry) {
+        final String topic = entry.readString();
+        final RetainedMessage retainedMessage = RetainedMessageSerializer.deserializeValue(entry.readBytes());
+        retainedMessage.setMessage(entry.readBytes());
+        buckets[bucketIndex].put(topic, retainedMessage);
+        currentMemorySize.addAndGet(retainedMessage.getEstimatedSizeInMemory());
+        topicTrees[bucketIndex].add(topic);
+    }
 }
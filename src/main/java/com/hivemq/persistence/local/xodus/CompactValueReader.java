@@ -0,0 +1,134 @@
+/*
+ * Copyright 2019-present HiveMQ GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hivemq.persistence.local.xodus;
+
+import com.google.common.collect.ImmutableList;
+import com.hivemq.extension.sdk.api.annotations.NotNull;
+import com.hivemq.mqtt.message.mqtt5.Mqtt5UserProperties;
+import com.hivemq.mqtt.message.mqtt5.MqttUserProperty;
+
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Reads the fields of a persistence value written by a {@link CompactValueWriter}.
+ */
+public class CompactValueReader {
+
+    private final byte @NotNull [] bytes;
+    private final int limit;
+    private int position;
+    public CompactValueReader(final byte @NotNull [] bytes, final int offset, final int limit) {
+        this.bytes = bytes;
+        this.position = offset;
+        this.limit = limit;
+    }
+
+    public int position() {
+        return position;
+    }
+
+    public int readByte() {
+        checkRemaining(1);
+        return bytes[position++];
+    }
+
+    public int readVarInt() {
+        final long value = readVarLong();
+        if (value > 0xFFFF_FFFFL) {
+            throw new IllegalArgumentException("Malformed varint in compact persistence value");
+        }
+        return (int) value;
+    }
+
+    public long readVarLong() {
+        long value = 0;
+        for (int shift = 0; shift < Long.SIZE; shift += 7) {
+            checkRemaining(1);
+            final byte b = bytes[position++];
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("Malformed varint in compact persistence value");
+    }
+
+    public byte @NotNull [] readBytes() {
+        final int length = readVarInt();
+        checkRemaining(length);
+        final byte[] result = new byte[length];
+        System.arraycopy(bytes, position, result, 0, length);
+        position += length;
+        return result;
+    }
+
+    public @NotNull String readString() {
+        return readString(readVarInt());
+    }
+
+    /**
+     * Reads a string of the given length that was written without a length prefix.
+     */
+    public @NotNull String readString(final int length) {
+        checkRemaining(length);
+        final String result = new String(bytes, position, length, UTF_8);
+        position += length;
+        return result;
+    }
+
+    public @NotNull Mqtt5UserProperties readUserProperties() {
+        final int size = readVarInt();
+        final ImmutableList.Builder<MqttUserProperty> builder = ImmutableList.builderWithExpectedSize(size);
+        for (int i = 0; i < size; i++) {
+            final String name = readString();
+            final String value = readString();
+            builder.add(new MqttUserProperty(name, value));
+        }
+        return Mqtt5UserProperties.of(builder.build());
+    }
+
+    /**
+     * Inflates the rest of the value that was compressed by {@link CompactValueWriter#compressFrom(int, int)}.
+     *
+     * @return a reader for the original bytes of the variable part
+     */
+    public @NotNull CompactValueReader inflate() {
+        final int length = readVarInt();
+        final byte[] inflated = new byte[length];
+        final Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(bytes, position, limit - position);
+            if (inflater.inflate(inflated) != length || !inflater.finished()) {
+                throw new IllegalArgumentException("Truncated compressed persistence value");
+            }
+        } catch (final DataFormatException e) {
+            throw new IllegalArgumentException("Corrupt compressed persistence value", e);
+        } finally {
+            inflater.end();
+        }
+        position = limit;
+        return new CompactValueReader(inflated, 0, length);
+    }
+
+    private void checkRemaining(final int length) {
+        if (length > limit - position) {
+            throw new IllegalArgumentException("Compact persistence value is shorter than its fields");
+        }
+    }
+}
@@ -0,0 +1,150 @@
+/*
+ * Copyright 2019-present HiveMQ GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hivemq.persistence.local.xodus;
+
+import com.hivemq.extension.sdk.api.annotations.NotNull;
+import com.hivemq.mqtt.message.mqtt5.Mqtt5UserProperties;
+import com.hivemq.mqtt.message.mqtt5.MqttUserProperty;
+
+import java.util.Arrays;
+import java.util.zip.Deflater;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Writes the fields of a persistence value in the compact value format: unsigned numbers as varints (7 bits per byte,
+ * least significant group first) and strings and byte arrays with a varint length prefix.
+ * <p>
+ * The variable part of a value can be deflated in place with {@link #compressFrom(int, int)}, the {@link
+ * CompactValueReader} undoes this with {@link CompactValueReader#inflate()}.
+ */
+public class CompactValueWriter {
+
+    private byte @NotNull [] buffer;
+    private int position;
+    public CompactValueWriter(final int initialCapacity) {
+        buffer = new byte[Math.max(16, initialCapacity)];
+    }
+
+    public int position() {
+        return position;
+    }
+
+    public void writeByte(final int value) {
+        ensureCapacity(1);
+        buffer[position++] = (byte) value;
+    }
+
+    public void setByte(final int index, final int value) {
+        buffer[index] = (byte) value;
+    }
+
+    public void writeShort(final int value) {
+        ensureCapacity(Short.BYTES);
+        buffer[position++] = (byte) (value >>> 8);
+        buffer[position++] = (byte) value;
+    }
+
+    public void writeVarInt(final int value) {
+        writeVarLong(value & 0xFFFF_FFFFL);
+    }
+
+    public void writeVarLong(long value) {
+        ensureCapacity(10);
+        while ((value & ~0x7FL) != 0) {
+            buffer[position++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        buffer[position++] = (byte) value;
+    }
+
+    public void writeBytes(final byte @NotNull [] bytes) {
+        writeVarInt(bytes.length);
+        writeRaw(bytes);
+    }
+
+    /**
+     * Writes the bytes without a length prefix.
+     */
+    public void writeRaw(final byte @NotNull [] bytes) {
+        ensureCapacity(bytes.length);
+        System.arraycopy(bytes, 0, buffer, position, bytes.length);
+        position += bytes.length;
+    }
+
+    public void writeString(final @NotNull String string) {
+        writeBytes(string.getBytes(UTF_8));
+    }
+
+    public void writeUserProperties(final @NotNull Mqtt5UserProperties userProperties) {
+        writeVarInt(userProperties.asList().size());
+        for (final MqttUserProperty property : userProperties.asList()) {
+            writeString(property.getName());
+            writeString(property.getValue());
+        }
+    }
+
+    /**
+     * Deflates everything written since the offset if it is at least as large as the threshold and replaces it with
+     * the varint length of the original bytes followed by the deflated bytes, if that is actually smaller.
+     *
+     * @param  offset    the start of the variable part of the value
+     * @param  threshold the minimum size of the variable part to try compressing it, compression is disabled if <= 0
+     * @return           true if the variable part was replaced by its compressed form
+     */
+    public boolean compressFrom(final int offset, final int threshold) {
+        final int length = position - offset;
+        if (threshold <= 0 || length < threshold) {
+            return false;
+        }
+        final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try {
+            deflater.setInput(buffer, offset, length);
+            deflater.finish();
+            // anything that does not fit is not worth it
+            final byte[] compressed = new byte[length];
+            final int compressedLength = deflater.deflate(compressed);
+            if (!deflater.finished() || compressedLength + varIntSize(length) >= length) {
+                return false;
+            }
+            position = offset;
+            writeVarInt(length);
+            System.arraycopy(compressed, 0, buffer, position, compressedLength);
+            position += compressedLength;
+            return true;
+        } finally {
+            deflater.end();
+        }
+    }
+
+    public byte @NotNull [] toByteArray() {
+        return Arrays.copyOf(buffer, position);
+    }
+
+    public static int varIntSize(final int value) {
+        return varLongSize(value & 0xFFFF_FFFFL);
+    }
+
+    public static int varLongSize(final long value) {
+        return value == 0 ? 1 : (70 - Long.numberOfLeadingZeros(value)) / 7;
+    }
+
+    private void ensureCapacity(final int additional) {
+        if (position + additional > buffer.length) {
+            buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, position + additional));
+        }
+    }
+}
@@ -15,6 +15,8 @@
  */
 package com.hivemq.persistence.local.xodus;
 
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.annotations.VisibleForTesting;
 import com.hivemq.configuration.service.InternalConfigurations;
 import com.hivemq.extension.sdk.api.annotations.NotNull;
 import com.hivemq.migration.meta.PersistenceType;
@@ -22,6 +24,7 @@ import jetbrains.exodus.env.EnvironmentConfig;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.inject.Inject;
 import javax.inject.Singleton;
 
 import static com.google.common.base.Preconditions.checkNotNull;
@@ -46,6 +49,24 @@ public class EnvironmentUtil {
         RENAME
     }
     private static final Logger log = LoggerFactory.getLogger(EnvironmentUtil.class);
+    private final @NotNull XodusDurableSync durableSync;
+    @Inject
+    public EnvironmentUtil(final @NotNull XodusDurableSync durableSync) {
+        this.durableSync = durableSync;
+    }
+
+    @VisibleForTesting
+    public EnvironmentUtil() {
+        this(new XodusDurableSync(new MetricRegistry()));
+    }
+
+    /**
+     * @return the durable group commit the environments created with the configs of this class are registered at.
+     */
+    public @NotNull XodusDurableSync getDurableSync() {
+        return durableSync;
+    }
+
     /**
      * Creates a new Xodus Environment config from a PersistenceConfig
      *
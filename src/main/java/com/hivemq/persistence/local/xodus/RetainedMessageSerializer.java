@@ -16,10 +16,12 @@
 package com.hivemq.persistence.local.xodus;
 
 import com.hivemq.codec.encoder.mqtt5.Mqtt5PayloadFormatIndicator;
+import com.hivemq.configuration.service.InternalConfigurations;
 import com.hivemq.extension.sdk.api.annotations.NotNull;
 import com.hivemq.mqtt.message.QoS;
 import com.hivemq.mqtt.message.mqtt5.Mqtt5UserProperties;
 import com.hivemq.mqtt.message.mqtt5.PropertiesSerializationUtil;
+import com.hivemq.mqtt.message.publish.PUBLISH;
 import com.hivemq.persistence.RetainedMessage;
 import com.hivemq.util.Bytes;
 
@@ -48,9 +50,30 @@ import static java.nio.charset.StandardCharsets.UTF_8;
  * 0 <- QoS
  * <p>
  * 0 <- QoS
+ * <p>
+ * Values are written in the compact value format unless it is disabled, values in the format above stay readable:
+ * <p>
+ * 1 byte (header - compact, qos) | 1 byte format version | 1 byte present flags | varint timestamp | varint publish id
+ * | (varint message expiry) | (1 byte payload format indicator) | (response topic) | (content type) | (correlation
+ * data) | (user properties)
+ * <p>
+ * Optional fields are only written if their present flag is set. Everything after the present flags is deflated if
+ * it is large.
  */
 public final class RetainedMessageSerializer {
 
+    private static final byte COMPACT_FORMAT_BIT = (byte) 0b0100_0000;
+    private static final byte QOS_BITS = (byte) 0b0000_0011;
+    private static final byte RESPONSE_TOPIC_PRESENT_BIT = (byte) 0b1000_0000;
+    private static final byte CONTENT_TYPE_PRESENT_BIT = (byte) 0b0100_0000;
+    private static final byte CORRELATION_DATA_PRESENT_BIT = (byte) 0b0010_0000;
+    private static final byte USER_PROPERTIES_PRESENT_BIT = (byte) 0b0001_0000;
+    private static final byte MESSAGE_EXPIRY_PRESENT_BIT = (byte) 0b0000_0100;
+    private static final byte PAYLOAD_FORMAT_INDICATOR_PRESENT_BIT = (byte) 0b0000_0010;
+    private static final byte COMPRESSED_BIT = (byte) 0b0000_0001;
+    private static final int COMPACT_HEADER_LENGTH = 3;
+    static final int COMPACT_FORMAT_VERSION = 1;
+
     private RetainedMessageSerializer() {
     }
 
@@ -65,6 +88,14 @@ public final class RetainedMessageSerializer {
     }
 
     public static byte @NotNull [] serializeValue(@NotNull final RetainedMessage retainedMessage) {
+        if (InternalConfigurations.PERSISTENCE_COMPACT_VALUE_FORMAT_ENABLED.get()) {
+            return serializeCompactValue(retainedMessage,
+                    InternalConfigurations.PERSISTENCE_COMPACT_VALUE_COMPRESSION_THRESHOLD_BYTES.get());
+        }
+        return serializeLegacyValue(retainedMessage);
+    }
+
+    static byte @NotNull [] serializeLegacyValue(@NotNull final RetainedMessage retainedMessage) {
         final byte[] responseTopic =
                 retainedMessage.getResponseTopic() == null ? null : retainedMessage.getResponseTopic().getBytes(UTF_8);
         final byte[] contentType =
@@ -112,8 +143,69 @@ public final class RetainedMessageSerializer {
         return bytes;
     }
 
+    static byte @NotNull [] serializeCompactValue(
+            final @NotNull RetainedMessage retainedMessage,
+            final int compressionThreshold) {
+        final String responseTopic = retainedMessage.getResponseTopic();
+        final String contentType = retainedMessage.getContentType();
+        final byte[] correlationData = retainedMessage.getCorrelationData();
+        final Mqtt5PayloadFormatIndicator payloadFormatIndicator = retainedMessage.getPayloadFormatIndicator();
+        final Mqtt5UserProperties userProperties = retainedMessage.getUserProperties();
+        final long messageExpiryInterval = retainedMessage.getMessageExpiryInterval();
+        final CompactValueWriter writer = new CompactValueWriter(32);
+        writer.writeByte(COMPACT_FORMAT_BIT | retainedMessage.getQos().getQosNumber());
+        writer.writeByte(COMPACT_FORMAT_VERSION);
+        byte presentFlags = (byte) 0b0000_0000;
+        if (responseTopic != null) {
+            presentFlags |= RESPONSE_TOPIC_PRESENT_BIT;
+        }
+        if (contentType != null) {
+            presentFlags |= CONTENT_TYPE_PRESENT_BIT;
+        }
+        if (correlationData != null) {
+            presentFlags |= CORRELATION_DATA_PRESENT_BIT;
+        }
+        if (userProperties.asList().size() > 0) {
+            presentFlags |= USER_PROPERTIES_PRESENT_BIT;
+        }
+        if (messageExpiryInterval != PUBLISH.MESSAGE_EXPIRY_INTERVAL_NOT_SET) {
+            presentFlags |= MESSAGE_EXPIRY_PRESENT_BIT;
+        }
+        if (payloadFormatIndicator != null) {
+            presentFlags |= PAYLOAD_FORMAT_INDICATOR_PRESENT_BIT;
+        }
+        writer.writeByte(presentFlags);
+        writer.writeVarLong(retainedMessage.getTimestamp());
+        writer.writeVarLong(retainedMessage.getPublishId());
+        if (messageExpiryInterval != PUBLISH.MESSAGE_EXPIRY_INTERVAL_NOT_SET) {
+            writer.writeVarLong(messageExpiryInterval);
+        }
+        if (payloadFormatIndicator != null) {
+            writer.writeByte(payloadFormatIndicator.getCode());
+        }
+        if (responseTopic != null) {
+            writer.writeString(responseTopic);
+        }
+        if (contentType != null) {
+            writer.writeString(contentType);
+        }
+        if (correlationData != null) {
+            writer.writeBytes(correlationData);
+        }
+        if (userProperties.asList().size() > 0) {
+            writer.writeUserProperties(userProperties);
+        }
+        if (writer.compressFrom(COMPACT_HEADER_LENGTH, compressionThreshold)) {
+            writer.setByte(COMPACT_HEADER_LENGTH - 1, presentFlags | COMPRESSED_BIT);
+        }
+        return writer.toByteArray();
+    }
+
     public static @NotNull RetainedMessage deserializeValue(final byte @NotNull [] serialized) {
         checkNotNull(serialized, "Byte array must not be null");
+        if ((serialized[0] & COMPACT_FORMAT_BIT) == COMPACT_FORMAT_BIT) {
+            return deserializeCompactValue(serialized);
+        }
         final QoS qoS = QoS.valueOf(serialized[0] & 0b0000_0011);
         int cursor = 1;
         final long timestamp = Bytes.readLong(serialized, cursor);
@@ -165,4 +257,47 @@ public final class RetainedMessageSerializer {
                 payloadFormatIndicator,
                 timestamp);
     }
+
+    private static @NotNull RetainedMessage deserializeCompactValue(final byte @NotNull [] serialized) {
+        final QoS qoS = QoS.valueOf(serialized[0] & QOS_BITS);
+        final int version = serialized[1];
+        if (version != COMPACT_FORMAT_VERSION) {
+            throw new IllegalArgumentException("Unknown format version " + version + " of retained message value");
+        }
+        final byte presentFlags = serialized[2];
+        CompactValueReader reader = new CompactValueReader(serialized, COMPACT_HEADER_LENGTH, serialized.length);
+        if ((presentFlags & COMPRESSED_BIT) == COMPRESSED_BIT) {
+            reader = reader.inflate();
+        }
+        final long timestamp = reader.readVarLong();
+        final long publishId = reader.readVarLong();
+        final long ttl = (presentFlags & MESSAGE_EXPIRY_PRESENT_BIT) == MESSAGE_EXPIRY_PRESENT_BIT ?
+                reader.readVarLong() :
+                PUBLISH.MESSAGE_EXPIRY_INTERVAL_NOT_SET;
+        final Mqtt5PayloadFormatIndicator payloadFormatIndicator =
+                (presentFlags & PAYLOAD_FORMAT_INDICATOR_PRESENT_BIT) == PAYLOAD_FORMAT_INDICATOR_PRESENT_BIT ?
+                        Mqtt5PayloadFormatIndicator.fromCode(reader.readByte()) :
+                        null;
+        final String responseTopic =
+                (presentFlags & RESPONSE_TOPIC_PRESENT_BIT) == RESPONSE_TOPIC_PRESENT_BIT ? reader.readString() : null;
+        final String contentType =
+                (presentFlags & CONTENT_TYPE_PRESENT_BIT) == CONTENT_TYPE_PRESENT_BIT ? reader.readString() : null;
+        final byte[] correlationData =
+                (presentFlags & CORRELATION_DATA_PRESENT_BIT) == CORRELATION_DATA_PRESENT_BIT ? reader.readBytes() :
+                        null;
+        final Mqtt5UserProperties properties =
+                (presentFlags & USER_PROPERTIES_PRESENT_BIT) == USER_PROPERTIES_PRESENT_BIT ?
+                        reader.readUserProperties() :
+                        Mqtt5UserProperties.NO_USER_PROPERTIES;
+        return new RetainedMessage(null,
+                qoS,
+                publishId,
+                ttl,
+                properties,
+                responseTopic,
+                contentType,
+                correlationData,
+                payloadFormatIndicator,
+                timestamp);
+    }
 }
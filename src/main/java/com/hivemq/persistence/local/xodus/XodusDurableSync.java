@@ -0,0 +1,176 @@
+/*
+ * Copyright 2019-present HiveMQ GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hivemq.persistence.local.xodus;
+
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.hivemq.configuration.service.InternalConfigurations;
+import com.hivemq.extension.sdk.api.annotations.NotNull;
+import com.hivemq.extension.sdk.api.annotations.Nullable;
+import com.hivemq.extension.sdk.api.annotations.ThreadSafe;
+import com.hivemq.migration.meta.PersistenceType;
+import jetbrains.exodus.env.Environment;
+import jetbrains.exodus.env.EnvironmentImpl;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Durable group commit for the Xodus environments of the file persistences.
+ * <p>
+ * The environments are written without durable writes, so a committed transaction is only in the page cache until
+ * the next periodic sync. Callers that must not acknowledge a write before it is on disk call {@link #awaitSync()}
+ * after their transaction committed. All waiting callers share one sync of all registered environments, which runs
+ * every {@link InternalConfigurations#XODUS_PERSISTENCE_DURABLE_GROUP_COMMIT_INTERVAL_MSEC} or as soon as
+ * {@link InternalConfigurations#XODUS_PERSISTENCE_DURABLE_GROUP_COMMIT_MAX_WAITING} callers are waiting.
+ * <p>
+ * Only Xodus environments are synced. The mode is refused if the payload or retained message persistence uses RocksDB
+ * or the client queue persistence uses the segmented log, as their writes would be acknowledged before they are on
+ * disk.
+ */
+@Singleton
+@ThreadSafe
+public class XodusDurableSync {
+
+    private static final Logger log = LoggerFactory.getLogger(XodusDurableSync.class);
+    public static final @NotNull String METRIC_PREFIX = "com.hivemq.persistence.durable-group-commit.";
+
+    private final boolean enabled;
+    private final int maxWaiting;
+    private final @NotNull Set<Environment> environments = ConcurrentHashMap.newKeySet();
+    private final @NotNull Object waitingLock = new Object();
+    private @NotNull List<SettableFuture<Void>> waiting = new ArrayList<>();
+    private final @Nullable ScheduledExecutorService executor;
+    private final @NotNull Histogram batchSize;
+    private final @NotNull Timer syncTime;
+    @Inject
+    public XodusDurableSync(final @NotNull MetricRegistry metricRegistry) {
+        enabled = InternalConfigurations.XODUS_PERSISTENCE_DURABLE_GROUP_COMMIT_ENABLED.get() &&
+                InternalConfigurations.ACKNOWLEDGE_INCOMING_PUBLISH_AFTER_PERSISTING_ENABLED.get() &&
+                onlyXodusPersistences();
+        maxWaiting = Math.max(1, InternalConfigurations.XODUS_PERSISTENCE_DURABLE_GROUP_COMMIT_MAX_WAITING.get());
+        batchSize = metricRegistry.histogram(METRIC_PREFIX + "batch-size");
+        syncTime = metricRegistry.timer(METRIC_PREFIX + "fsync-time");
+        if (enabled) {
+            final int interval =
+                    Math.max(1, InternalConfigurations.XODUS_PERSISTENCE_DURABLE_GROUP_COMMIT_INTERVAL_MSEC.get());
+            executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder().setNameFormat(
+                    "durable-group-commit-%d").setDaemon(true).build());
+            executor.scheduleWithFixedDelay(this::sync, interval, interval, TimeUnit.MILLISECONDS);
+        } else {
+            executor = null;
+        }
+    }
+
+    private static boolean onlyXodusPersistences() {
+        final PersistenceType payloadType = InternalConfigurations.PAYLOAD_PERSISTENCE_TYPE.get();
+        final PersistenceType retainedType = InternalConfigurations.RETAINED_MESSAGE_PERSISTENCE_TYPE.get();
+        final PersistenceType queueType = InternalConfigurations.QUEUED_MESSAGES_PERSISTENCE_TYPE.get();
+        if (payloadType == PersistenceType.FILE &&
+                retainedType == PersistenceType.FILE &&
+                queueType == PersistenceType.FILE) {
+            return true;
+        }
+        log.warn("The durable group commit is disabled, it requires the file persistence type for payloads, " +
+                        "retained messages and queued messages (configured: {}, {}, {}).",
+                payloadType,
+                retainedType,
+                queueType);
+        return false;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    void register(final @NotNull Environment environment) {
+        if (enabled) {
+            environments.add(environment);
+        }
+    }
+
+    void unregister(final @NotNull Environment environment) {
+        environments.remove(environment);
+    }
+
+    /**
+     * Must be called after the writes that have to be durable were committed.
+     *
+     * @return a future that completes when all writes that were committed before this call are synced to disk.
+     */
+    public @NotNull ListenableFuture<Void> awaitSync() {
+        if (executor == null || environments.isEmpty()) {
+            return Futures.immediateFuture(null);
+        }
+        final SettableFuture<Void> future = SettableFuture.create();
+        final boolean full;
+        synchronized (waitingLock) {
+            waiting.add(future);
+            full = waiting.size() == maxWaiting;
+        }
+        if (full) {
+            executor.execute(this::sync);
+        }
+        return future;
+    }
+
+    @VisibleForTesting
+    void sync() {
+        final List<SettableFuture<Void>> batch;
+        synchronized (waitingLock) {
+            if (waiting.isEmpty()) {
+                return;
+            }
+            batch = waiting;
+            waiting = new ArrayList<>();
+        }
+        final Timer.Context context = syncTime.time();
+        try {
+            for (final Environment environment : environments) {
+                if (environment.isOpen()) {
+                    ((EnvironmentImpl) environment).flushAndSync();
+                }
+            }
+        } catch (final Exception e) {
+            log.error("Not able to sync the file persistences to disk.", e);
+            for (final SettableFuture<Void> future : batch) {
+                future.setException(e);
+            }
+            return;
+        } finally {
+            context.stop();
+        }
+        batchSize.update(batch.size());
+        for (final SettableFuture<Void> future : batch) {
+            future.set(null);
+        }
+    }
+}
@@ -17,6 +17,8 @@ package com.hivemq.persistence.local.xodus;
 
 import com.hivemq.exceptions.UnrecoverableException;
 import com.hivemq.extension.sdk.api.annotations.NotNull;
+import com.hivemq.extension.sdk.api.annotations.Nullable;
+import com.hivemq.persistence.BatchCommitPersistence;
 import com.hivemq.persistence.FilePersistence;
 import com.hivemq.persistence.LocalPersistence;
 import com.hivemq.persistence.PersistenceStartup;
@@ -29,6 +31,9 @@ import jetbrains.exodus.env.EnvironmentConfig;
 import jetbrains.exodus.env.Environments;
 import jetbrains.exodus.env.Store;
 import jetbrains.exodus.env.StoreConfig;
+import jetbrains.exodus.env.Transaction;
+import jetbrains.exodus.env.TransactionalComputable;
+import jetbrains.exodus.env.TransactionalExecutable;
 import jetbrains.exodus.io.FileDataWriter;
 import jetbrains.exodus.log.LogConfig;
 import org.slf4j.Logger;
@@ -41,7 +46,7 @@ import static com.google.common.base.Preconditions.checkArgument;
 import static com.hivemq.configuration.service.InternalConfigurations.PERSISTENCE_CLOSE_RETRIES;
 import static com.hivemq.configuration.service.InternalConfigurations.PERSISTENCE_CLOSE_RETRY_INTERVAL_MSEC;
 
-public abstract class XodusLocalPersistence implements LocalPersistence, FilePersistence {
+public abstract class XodusLocalPersistence implements LocalPersistence, FilePersistence, BatchCommitPersistence {
 
     private final @NotNull EnvironmentUtil environmentUtil;
     private final @NotNull LocalPersistenceFileUtil localPersistenceFileUtil;
@@ -52,6 +57,8 @@ public abstract class XodusLocalPersistence implements LocalPersistence, FilePer
     private final boolean enabled;
     private final int closeRetries;
     private final int closeRetryInterval;
+    // only written by the single writer, a batch is only used by the thread that started it
+    private final @Nullable Batch @NotNull [] batches;
     protected XodusLocalPersistence(
             final @NotNull EnvironmentUtil environmentUtil,
             final @NotNull LocalPersistenceFileUtil localPersistenceFileUtil,
@@ -63,6 +70,7 @@ public abstract class XodusLocalPersistence implements LocalPersistence, FilePer
         this.persistenceStartup = persistenceStartup;
         this.bucketCount = bucketCount;
         this.buckets = new Bucket[bucketCount];
+        this.batches = new Batch[bucketCount];
         this.enabled = enabled;
         this.closeRetries = PERSISTENCE_CLOSE_RETRIES.get();
         this.closeRetryInterval = PERSISTENCE_CLOSE_RETRY_INTERVAL_MSEC.get();
@@ -110,6 +118,7 @@ public abstract class XodusLocalPersistence implements LocalPersistence, FilePer
                 final Store store =
                         environment.computeInTransaction(txn -> environment.openStore(name, storeConfig, txn));
                 buckets[i] = new Bucket(environment, store);
+                environmentUtil.getDurableSync().register(environment);
             }
         } catch (final ExodusException e) {
             logger.error("An error occurred while opening the {} persistence. Is another HiveMQ instance running?",
@@ -144,6 +153,7 @@ public abstract class XodusLocalPersistence implements LocalPersistence, FilePer
                     final Store store =
                             environment.computeInTransaction(txn -> environment.openStore(name, storeConfig, txn));
                     buckets[finalI] = new Bucket(environment, store);
+                    environmentUtil.getDurableSync().register(environment);
                     counter.countDown();
                 });
             }
@@ -180,6 +190,7 @@ public abstract class XodusLocalPersistence implements LocalPersistence, FilePer
             return;
         }
         if (bucket.close()) {
+            environmentUtil.getDurableSync().unregister(bucket.getEnvironment());
             if (bucket.getEnvironment().isOpen()) {
                 new EnvironmentCloser(getName() + "-closer", bucket.getEnvironment(), closeRetries, closeRetryInterval)
                         .close();
@@ -194,6 +205,121 @@ public abstract class XodusLocalPersistence implements LocalPersistence, FilePer
     protected void checkBucketIndex(final int bucketIndex) {
         checkArgument(bucketIndex >= 0 && bucketIndex < buckets.length, "Invalid bucket index: " + bucketIndex);
     }
+
+    @Override
+    public void executeInBatch(final int bucketIndex, final @NotNull Runnable writes) {
+        checkBucketIndex(bucketIndex);
+        checkArgument(batches[bucketIndex] == null, "Batches must not be nested");
+        final Environment environment = buckets[bucketIndex].getEnvironment();
+        final Transaction txn = environment.beginExclusiveTransaction();
+        try {
+            while (true) {
+                final Batch batch = new Batch(txn);
+                batches[bucketIndex] = batch;
+                try {
+                    writes.run();
+                } finally {
+                    batches[bucketIndex] = null;
+                }
+                if (txn.isFinished() || txn.flush()) {
+                    break;
+                }
+                txn.revert();
+            }
+        } finally {
+            if (!txn.isFinished()) {
+                txn.abort();
+            }
+        }
+    }
+
+    /**
+     * Executes the writes in the batch transaction of the bucket if the calling thread started a batch, otherwise in
+     * an own transaction.
+     */
+    protected void executeInTransaction(final int bucketIndex, final @NotNull TransactionalExecutable executable) {
+        final Transaction batchTransaction = getBatchTransaction(bucketIndex);
+        if (batchTransaction != null) {
+            executable.execute(batchTransaction);
+        } else {
+            buckets[bucketIndex].getEnvironment().executeInTransaction(executable);
+        }
+    }
+
+    /**
+     * Executes the writes in the batch transaction of the bucket if the calling thread started a batch, otherwise in
+     * an own exclusive transaction.
+     */
+    protected void executeInExclusiveTransaction(
+            final int bucketIndex,
+            final @NotNull TransactionalExecutable executable) {
+        final Transaction batchTransaction = getBatchTransaction(bucketIndex);
+        if (batchTransaction != null) {
+            executable.execute(batchTransaction);
+        } else {
+            buckets[bucketIndex].getEnvironment().executeInExclusiveTransaction(executable);
+        }
+    }
+
+    /**
+     * Computes the result in the batch transaction of the bucket if the calling thread started a batch, otherwise in
+     * an own exclusive transaction.
+     */
+    protected <T> T computeInExclusiveTransaction(
+            final int bucketIndex,
+            final @NotNull TransactionalComputable<T> computable) {
+        final Transaction batchTransaction = getBatchTransaction(bucketIndex);
+        if (batchTransaction != null) {
+            return computable.compute(batchTransaction);
+        }
+        return buckets[bucketIndex].getEnvironment().computeInExclusiveTransaction(computable);
+    }
+
+    /**
+     * Reads in the batch transaction of the bucket if the calling thread started a batch, so the uncommitted writes of
+     * the batch are visible, otherwise in an own read-only transaction.
+     */
+    protected <T> T computeInReadonlyTransaction(
+            final int bucketIndex,
+            final @NotNull TransactionalComputable<T> computable) {
+        final Transaction batchTransaction = getBatchTransaction(bucketIndex);
+        if (batchTransaction != null) {
+            return computable.compute(batchTransaction);
+        }
+        return buckets[bucketIndex].getEnvironment().computeInReadonlyTransaction(computable);
+    }
+
+    /**
+     * Returns the actions that run when the writes of the transaction are committed. Inside a batch all writes share
+     * the actions of the batch, so they must not set their own commit hook.
+     */
+    protected @NotNull TransactionCommitActions commitActions(final int bucketIndex, final @NotNull Transaction txn) {
+        final Batch batch = batches[bucketIndex];
+        if (batch != null && batch.txn == txn) {
+            return batch.commitActions;
+        }
+        return TransactionCommitActions.asCommitHookFor(txn);
+    }
+
+    private @Nullable Transaction getBatchTransaction(final int bucketIndex) {
+        final Batch batch = batches[bucketIndex];
+        if (batch == null || batch.owner != Thread.currentThread()) {
+            return null;
+        }
+        return batch.txn;
+    }
+
+    private static final class Batch {
+
+        private final @NotNull Transaction txn;
+        private final @NotNull Thread owner;
+        private final @NotNull TransactionCommitActions commitActions;
+        private Batch(final @NotNull Transaction txn) {
+            this.txn = txn;
+            owner = Thread.currentThread();
+            commitActions = TransactionCommitActions.asCommitHookFor(txn);
+        }
+    }
     private static final class XodusNoLockDataWriter extends FileDataWriter {
 
         private XodusNoLockDataWriter(final @NotNull File persistenceFile, final @NotNull LogConfig logConfig) {
@@ -16,6 +16,7 @@
 package com.hivemq.persistence.local.xodus.clientsession;
 
 import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.AbstractIterator;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 import com.hivemq.bootstrap.ioc.lazysingleton.LazySingleton;
@@ -42,6 +43,7 @@ import org.slf4j.LoggerFactory;
 import javax.annotation.PostConstruct;
 import javax.inject.Inject;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.Map;
 import java.util.concurrent.atomic.AtomicLong;
 
@@ -138,7 +140,7 @@ public class ClientSessionSubscriptionXodusLocalPersistence extends XodusLocalPe
         checkNotNull(topic.getTopic(), "Topic must not be null");
         checkState(timestamp > 0, "Timestamp must not be 0");
         final Bucket bucket = buckets[bucketIndex];
-        bucket.getEnvironment().executeInTransaction(txn -> {
+        executeInTransaction(bucketIndex, txn -> {
             final ByteIterable key = bytesToByteIterable(serializer.serializeKey(client));
             bucket.getStore()
                     .put(txn,
@@ -157,7 +159,7 @@ public class ClientSessionSubscriptionXodusLocalPersistence extends XodusLocalPe
         checkNotNull(topics, "Topics must not be null");
         checkState(timestamp > 0, "Timestamp must not be 0");
         final Bucket bucket = buckets[bucketIndex];
-        bucket.getEnvironment().executeInTransaction(txn -> {
+        executeInTransaction(bucketIndex, txn -> {
             for (final Topic topic : topics) {
                 final long rowId = nextId.getAndIncrement();
                 final ByteIterable key = bytesToByteIterable(serializer.serializeKey(client));
@@ -177,7 +179,7 @@ public class ClientSessionSubscriptionXodusLocalPersistence extends XodusLocalPe
         checkNotNull(topics, "Topics must not be null");
         checkState(timestamp > 0, "Timestamp must not be 0");
         final Bucket bucket = buckets[bucketIndex];
-        bucket.getEnvironment().executeInTransaction(txn -> {
+        executeInTransaction(bucketIndex, txn -> {
             try (final Cursor cursor = bucket.getStore().openCursor(txn)) {
                 final ByteIterable clientByteIterable = bytesToByteIterable(serializer.serializeKey(client));
                 if (cursor.getSearchKey(clientByteIterable) == null) {
@@ -230,7 +232,7 @@ public class ClientSessionSubscriptionXodusLocalPersistence extends XodusLocalPe
         checkNotNull(client, "Clientid must not be null");
         checkState(timestamp > 0, "Timestamp must not be 0");
         final Bucket bucket = buckets[bucketIndex];
-        bucket.getEnvironment().executeInTransaction(txn -> {
+        executeInTransaction(bucketIndex, txn -> {
             try (final Cursor cursor = bucket.getStore().openCursor(txn)) {
                 removeClientFromCursor(client, cursor);
             }
@@ -318,6 +320,36 @@ public class ClientSessionSubscriptionXodusLocalPersistence extends XodusLocalPe
         });
     }
 
+    @Override
+    public @NotNull Iterator<Map.Entry<String, ImmutableSet<Topic>>> getAllSubscribersIterator(
+            final int bucketIndex,
+            final int chunkSize) {
+        checkArgument(chunkSize > 0, "chunk size must be greater than 0");
+        // every chunk is read in its own read only transaction, which xodus allows from any thread
+        return new AbstractIterator<>() {
+
+            private @NotNull Iterator<Map.Entry<String, ImmutableSet<Topic>>> chunk = ImmutableMap.<String,
+                    ImmutableSet<Topic>>of().entrySet().iterator();
+            private @Nullable String lastClientId;
+            private boolean finished;
+
+            @Override
+            protected @Nullable Map.Entry<String, ImmutableSet<Topic>> computeNext() {
+                while (!chunk.hasNext()) {
+                    if (finished) {
+                        return endOfData();
+                    }
+                    final BucketChunkResult<Map<String, ImmutableSet<Topic>>> result =
+                            getAllSubscribersChunk(bucketIndex, lastClientId, chunkSize);
+                    chunk = result.getValue().entrySet().iterator();
+                    lastClientId = result.getLastKey();
+                    finished = result.isFinished();
+                }
+                return chunk.next();
+            }
+        };
+    }
+
     @Override
     public void cleanUp(final int bucket) {
         if (stopped.get()) {
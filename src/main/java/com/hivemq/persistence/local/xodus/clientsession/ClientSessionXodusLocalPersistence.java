@@ -30,6 +30,8 @@ import com.hivemq.persistence.NoSessionException;
 import com.hivemq.persistence.PersistenceEntry;
 import com.hivemq.persistence.PersistenceStartup;
 import com.hivemq.persistence.clientsession.ClientSession;
+import com.hivemq.persistence.clientsession.ClientSessionState;
+import com.hivemq.persistence.clientsession.ClientSessionStateIndex;
 import com.hivemq.persistence.clientsession.ClientSessionWill;
 import com.hivemq.persistence.clientsession.PendingWillMessages;
 import com.hivemq.persistence.exception.InvalidSessionExpiryIntervalException;
@@ -60,6 +62,7 @@ import java.util.concurrent.atomic.AtomicInteger;
 import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
 import static com.hivemq.mqtt.message.connect.Mqtt5CONNECT.SESSION_EXPIRE_ON_DISCONNECT;
+import static com.hivemq.mqtt.message.connect.Mqtt5CONNECT.SESSION_EXPIRY_MAX;
 import static com.hivemq.mqtt.message.disconnect.DISCONNECT.SESSION_EXPIRY_NOT_SET;
 import static com.hivemq.persistence.local.xodus.XodusUtils.byteIterableToBytes;
 import static com.hivemq.persistence.local.xodus.XodusUtils.bytesToByteIterable;
@@ -82,6 +85,7 @@ public class ClientSessionXodusLocalPersistence extends XodusLocalPersistence im
     private final @NotNull EventLog eventLog;
     private final @NotNull MetricsHolder metricsHolder;
     private final @NotNull AtomicInteger sessionsCount = new AtomicInteger(0);
+    private final @NotNull ClientSessionStateIndex stateIndex = new ClientSessionStateIndex();
     @Inject
     ClientSessionXodusLocalPersistence(
             final @NotNull LocalPersistenceFileUtil localPersistenceFileUtil,
@@ -140,6 +144,9 @@ public class ClientSessionXodusLocalPersistence extends XodusLocalPersistence im
                         if (persistent(clientSession)) {
                             sessionCounterDelta.increment();
                         }
+                        stateIndex.put(serializer.deserializeKey(byteIterableToBytes(cursor.getKey())),
+                                clientSession,
+                                serializer.deserializeTimestamp(bytes));
                         final ClientSessionWill will = clientSession.getWillPublish();
                         if (will != null) {
                             commitActions.add(() -> {
@@ -173,20 +180,20 @@ public class ClientSessionXodusLocalPersistence extends XodusLocalPersistence im
     @Override
     public @Nullable ClientSession getSession(final @NotNull String clientId) {
         checkNotNull(clientId, "Client id must not be null");
-        return getSession(clientId, getBucket(clientId), true, true);
+        return getSession(clientId, BucketUtils.getBucket(clientId, bucketCount), true, true);
     }
 
     @Override
     public @Nullable ClientSession getSession(final @NotNull String clientId, final int bucketIndex) {
         checkNotNull(clientId, "Client id must not be null");
         checkBucketIndex(bucketIndex);
-        return getSession(clientId, buckets[bucketIndex], true, true);
+        return getSession(clientId, bucketIndex, true, true);
     }
 
     @Override
     public @Nullable ClientSession getSession(final @NotNull String clientId, final boolean checkExpired) {
         checkNotNull(clientId, "Client id must not be null");
-        return getSession(clientId, getBucket(clientId), checkExpired, true);
+        return getSession(clientId, BucketUtils.getBucket(clientId, bucketCount), checkExpired, true);
     }
 
     @Override
@@ -196,7 +203,7 @@ public class ClientSessionXodusLocalPersistence extends XodusLocalPersistence im
             final boolean checkExpired) {
         checkNotNull(clientId, "Client id must not be null");
         checkBucketIndex(bucketIndex);
-        return getSession(clientId, buckets[bucketIndex], checkExpired, true);
+        return getSession(clientId, bucketIndex, checkExpired, true);
     }
 
     @Override
@@ -205,15 +212,16 @@ public class ClientSessionXodusLocalPersistence extends XodusLocalPersistence im
             final boolean checkExpired,
             final boolean includeWill) {
         checkNotNull(clientId, "Client id must not be null");
-        return getSession(clientId, getBucket(clientId), checkExpired, includeWill);
+        return getSession(clientId, BucketUtils.getBucket(clientId, bucketCount), checkExpired, includeWill);
     }
 
     private @Nullable ClientSession getSession(
             final @NotNull String clientId,
-            final Bucket bucket,
+            final int bucketIndex,
             final boolean checkExpired,
             final boolean includeWill) {
-        return bucket.getEnvironment().computeInReadonlyTransaction(txn -> {
+        final Bucket bucket = buckets[bucketIndex];
+        return computeInReadonlyTransaction(bucketIndex, txn -> {
             final ByteIterable byteIterable =
                     bucket.getStore().get(txn, bytesToByteIterable(serializer.serializeKey(clientId)));
             if (byteIterable == null) {
@@ -237,6 +245,12 @@ public class ClientSessionXodusLocalPersistence extends XodusLocalPersistence im
         });
     }
 
+    @Override
+    public @Nullable ClientSessionState getSessionState(final @NotNull String clientId) {
+        checkNotNull(clientId, "Client id must not be null");
+        return stateIndex.getIfNotExpired(clientId, System.currentTimeMillis());
+    }
+
     @Override
     public @Nullable Long getTimestamp(final @NotNull String clientId) {
         return getTimestamp(clientId, BucketUtils.getBucket(clientId, bucketCount));
@@ -245,7 +259,7 @@ public class ClientSessionXodusLocalPersistence extends XodusLocalPersistence im
     @Override
     public @Nullable Long getTimestamp(final @NotNull String clientId, final int bucketIndex) {
         final Bucket bucket = buckets[bucketIndex];
-        return bucket.getEnvironment().computeInReadonlyTransaction(txn -> {
+        return computeInReadonlyTransaction(bucketIndex, txn -> {
             final ByteIterable byteIterable =
                     bucket.getStore().get(txn, bytesToByteIterable(serializer.serializeKey(clientId)));
             if (byteIterable == null) {
@@ -266,11 +280,12 @@ public class ClientSessionXodusLocalPersistence extends XodusLocalPersistence im
         checkArgument(timestamp > 0, "Timestamp must be greater than 0");
         ThreadPreConditions.startsWith(SINGLE_WRITER_THREAD_PREFIX);
         final Bucket bucket = buckets[bucketIndex];
-        bucket.getEnvironment().executeInExclusiveTransaction(txn -> {
+        executeInExclusiveTransaction(bucketIndex, txn -> {
             final ByteIterable key = bytesToByteIterable(serializer.serializeKey(clientId));
             final boolean isPersistent = persistent(newClientSession);
             final ByteIterable value = bucket.getStore().get(txn, key);
-            txn.setCommitHook(() -> {
+            commitActions(bucketIndex, txn).add(() -> {
+                stateIndex.put(clientId, newClientSession, timestamp);
                 if (value == null) {
                     if (isPersistent || newClientSession.isConnected()) {
                         sessionsCount.incrementAndGet();
@@ -307,12 +322,13 @@ public class ClientSessionXodusLocalPersistence extends XodusLocalPersistence im
         checkNotNull(clientId, "Client id must not be null");
         ThreadPreConditions.startsWith(SINGLE_WRITER_THREAD_PREFIX);
         final Bucket bucket = buckets[bucketIndex];
-        return bucket.getEnvironment().computeInExclusiveTransaction(txn -> {
+        return computeInExclusiveTransaction(bucketIndex, txn -> {
             final ByteIterable key = bytesToByteIterable(serializer.serializeKey(clientId));
             final ByteIterable byteIterable = bucket.getStore().get(txn, key);
             if (byteIterable == null) {
                 // we create a tombstone here which will be removed at next cleanup
                 final ClientSession clientSession = new ClientSession(false, SESSION_EXPIRE_ON_DISCONNECT);
+                commitActions(bucketIndex, txn).add(() -> stateIndex.put(clientId, clientSession, timestamp));
                 bucket.getStore()
                         .put(txn, key, bytesToByteIterable(serializer.serializeValue(clientSession, timestamp)));
                 return clientSession;
@@ -323,7 +339,8 @@ public class ClientSessionXodusLocalPersistence extends XodusLocalPersistence im
             }
             final boolean isConnected = clientSession.isConnected();
             final ClientSessionWill will = clientSession.getWillPublish();
-            txn.setCommitHook(() -> {
+            commitActions(bucketIndex, txn).add(() -> {
+                stateIndex.put(clientId, clientSession, timestamp);
                 if (isConnected && !persistent(clientSession)) {
                     sessionsCount.decrementAndGet();
                 }
@@ -454,6 +471,7 @@ public class ClientSessionXodusLocalPersistence extends XodusLocalPersistence im
                 bucket.getStore().delete(txn, bytesToByteIterable(serializer.serializeKey(client)));
             }
         });
+        stateIndex.remove(client);
     }
 
     @Override
@@ -466,7 +484,8 @@ public class ClientSessionXodusLocalPersistence extends XodusLocalPersistence im
             throw new InvalidSessionExpiryIntervalException("Invalid session expiry interval " + sessionExpiryInterval);
         }
         final Bucket bucket = buckets[bucketIndex];
-        bucket.getEnvironment().executeInExclusiveTransaction(txn -> {
+        final long timestamp = System.currentTimeMillis();
+        final ClientSession updatedSession = bucket.getEnvironment().computeInExclusiveTransaction(txn -> {
             final ByteIterable key = bytesToByteIterable(serializer.serializeKey(clientId));
             final ByteIterable valueFromStore = bucket.getStore().get(txn, key);
             if (valueFromStore == null) {
@@ -478,11 +497,10 @@ public class ClientSessionXodusLocalPersistence extends XodusLocalPersistence im
                 throw NoSessionException.INSTANCE;
             }
             clientSession.setSessionExpiryIntervalSec(sessionExpiryInterval);
-            bucket.getStore()
-                    .put(txn,
-                            key,
-                            bytesToByteIterable(serializer.serializeValue(clientSession, System.currentTimeMillis())));
+            bucket.getStore().put(txn, key, bytesToByteIterable(serializer.serializeValue(clientSession, timestamp)));
+            return clientSession;
         });
+        stateIndex.put(clientId, updatedSession, timestamp);
     }
 
     @Override
@@ -491,7 +509,7 @@ public class ClientSessionXodusLocalPersistence extends XodusLocalPersistence im
             return ImmutableSet.of();
         }
         final Bucket bucket = buckets[bucketIndex];
-        return bucket.getEnvironment().computeInExclusiveTransaction(txn -> {
+        final Set<String> expiredSessions = bucket.getEnvironment().computeInExclusiveTransaction(txn -> {
             final ImmutableSet.Builder<String> expiredSessionsBuilder = ImmutableSet.builder();
             try (final Cursor cursor = bucket.getStore().openCursor(txn)) {
                 final TransactionCommitActions commitActions = TransactionCommitActions.asCommitHookFor(txn);
@@ -518,6 +536,69 @@ public class ClientSessionXodusLocalPersistence extends XodusLocalPersistence im
             }
             return expiredSessionsBuilder.build();
         });
+        for (final String expiredSession : expiredSessions) {
+            stateIndex.remove(expiredSession);
+        }
+        return expiredSessions;
+    }
+
+    @Override
+    public boolean removeIfExpired(final @NotNull String clientId, final int bucketIndex) {
+        if (stopped.get()) {
+            return false;
+        }
+        final Bucket bucket = buckets[bucketIndex];
+        final boolean expired = bucket.getEnvironment().computeInExclusiveTransaction(txn -> {
+            final ByteIterable key = bytesToByteIterable(serializer.serializeKey(clientId));
+            final ByteIterable valueFromStore = bucket.getStore().get(txn, key);
+            if (valueFromStore == null) {
+                return false;
+            }
+            final byte[] valueBytes = byteIterableToBytes(valueFromStore);
+            final ClientSession clientSession = serializer.deserializeValueWithoutWill(valueBytes);
+            final long timestamp = serializer.deserializeTimestamp(valueBytes);
+            final long sessionExpiryInterval = clientSession.getSessionExpiryIntervalSec();
+            if (!clientSession.isExpired(System.currentTimeMillis() - timestamp)) {
+                return false;
+            }
+            final TransactionCommitActions commitActions = TransactionCommitActions.asCommitHookFor(txn);
+            if (sessionExpiryInterval > SESSION_EXPIRE_ON_DISCONNECT) {
+                final SessionCounterDelta sessionCounterDelta = new SessionCounterDelta();
+                sessionCounterDelta.decrement();
+                commitActions.add(sessionCounterDelta);
+            }
+            commitActions.add(() -> eventLog.clientSessionExpired(timestamp + sessionExpiryInterval * 1000, clientId));
+            bucket.getStore().delete(txn, key);
+            return true;
+        });
+        if (expired) {
+            stateIndex.remove(clientId);
+        }
+        return expired;
+    }
+
+    @Override
+    public @NotNull Map<String, Long> getSessionExpiries(final int bucketIndex) {
+        checkBucketIndex(bucketIndex);
+        final Bucket bucket = buckets[bucketIndex];
+        return bucket.getEnvironment().computeInReadonlyTransaction(txn -> {
+            final Map<String, Long> resultMap = new HashMap<>();
+            try (final Cursor cursor = bucket.getStore().openCursor(txn)) {
+                while (cursor.getNext()) {
+                    final byte[] valueBytes = byteIterableToBytes(cursor.getValue());
+                    final ClientSession clientSession = serializer.deserializeValueWithoutWill(valueBytes);
+                    final long sessionExpiryInterval = clientSession.getSessionExpiryIntervalSec();
+                    if (clientSession.isConnected() ||
+                            sessionExpiryInterval <= SESSION_EXPIRE_ON_DISCONNECT ||
+                            sessionExpiryInterval >= SESSION_EXPIRY_MAX) {
+                        continue;
+                    }
+                    final String clientId = serializer.deserializeKey(byteIterableToBytes(cursor.getKey()));
+                    resultMap.put(clientId, serializer.deserializeTimestamp(valueBytes) + sessionExpiryInterval * 1000);
+                }
+            }
+            return resultMap;
+        });
     }
 
     @Override
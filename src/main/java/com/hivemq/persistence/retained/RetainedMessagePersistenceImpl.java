@@ -15,16 +15,22 @@
  */
 package com.hivemq.persistence.retained;
 
+import com.codahale.metrics.MetricRegistry;
 import com.google.common.collect.ImmutableList;
 import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
 import com.google.common.util.concurrent.MoreExecutors;
 import com.hivemq.bootstrap.ioc.lazysingleton.LazySingleton;
 import com.hivemq.configuration.service.InternalConfigurations;
+import com.hivemq.configuration.service.PersistenceConfigurationService;
 import com.hivemq.extension.sdk.api.annotations.NotNull;
+import com.hivemq.extension.sdk.api.annotations.Nullable;
 import com.hivemq.extensions.iteration.ChunkCursor;
 import com.hivemq.extensions.iteration.Chunker;
 import com.hivemq.extensions.iteration.MultipleChunkResult;
+import com.hivemq.limitation.MemoryConsumer;
+import com.hivemq.limitation.MemoryGovernor;
+import com.hivemq.mqtt.message.dropping.MessageDroppedService;
 import com.hivemq.persistence.AbstractPersistence;
 import com.hivemq.persistence.ProducerQueues;
 import com.hivemq.persistence.RetainedMessage;
@@ -46,14 +52,33 @@ public class RetainedMessagePersistenceImpl extends AbstractPersistence implemen
     private final @NotNull RetainedMessageLocalPersistence localPersistence;
     private final @NotNull ProducerQueues singleWriter;
     private final @NotNull Chunker chunker;
+    private final @Nullable RetainedMessageReadCache readCache;
+    private final @NotNull MemoryGovernor memoryGovernor;
+    private final @NotNull MessageDroppedService messageDroppedService;
     @Inject
     RetainedMessagePersistenceImpl(
             final @NotNull RetainedMessageLocalPersistence localPersistence,
             final @NotNull SingleWriterService singleWriterService,
-            final @NotNull Chunker chunker) {
+            final @NotNull Chunker chunker,
+            final @NotNull PersistenceConfigurationService persistenceConfigurationService,
+            final @NotNull MetricRegistry metricRegistry,
+            final @NotNull MemoryGovernor memoryGovernor,
+            final @NotNull MessageDroppedService messageDroppedService) {
         this.localPersistence = localPersistence;
         singleWriter = singleWriterService.getRetainedMessageQueue();
         this.chunker = chunker;
+        this.memoryGovernor = memoryGovernor;
+        this.messageDroppedService = messageDroppedService;
+        // the memory persistence already holds the loaded messages
+        final int readCacheSize = InternalConfigurations.RETAINED_MESSAGE_READ_CACHE_SIZE_BYTES.get();
+        if (persistenceConfigurationService.getMode() == PersistenceConfigurationService.PersistenceMode.FILE &&
+                readCacheSize > 0) {
+            readCache = new RetainedMessageReadCache(singleWriterService.getPersistenceBucketCount(),
+                    readCacheSize,
+                    metricRegistry);
+        } else {
+            readCache = null;
+        }
     }
 
     @Override
@@ -67,7 +92,20 @@ public class RetainedMessagePersistenceImpl extends AbstractPersistence implemen
         } catch (final Throwable throwable) {
             return Futures.immediateFailedFuture(throwable);
         }
-        return singleWriter.submit(topic, (bucketIndex) -> localPersistence.get(topic, bucketIndex));
+        return singleWriter.submit(topic, (bucketIndex) -> {
+            if (readCache == null) {
+                return localPersistence.get(topic, bucketIndex);
+            }
+            final RetainedMessage cachedMessage = readCache.get(topic, bucketIndex);
+            if (cachedMessage != null) {
+                return cachedMessage;
+            }
+            final RetainedMessage retainedMessage = localPersistence.get(topic, bucketIndex);
+            if (retainedMessage != null && !memoryGovernor.isShedding(MemoryConsumer.RETAINED_MESSAGES)) {
+                readCache.put(topic, retainedMessage, bucketIndex);
+            }
+            return retainedMessage;
+        });
     }
 
     @Override
@@ -80,6 +118,9 @@ public class RetainedMessagePersistenceImpl extends AbstractPersistence implemen
         try {
             checkNotNull(topic, "Topic must not be null");
             return singleWriter.submit(topic, (bucketIndex) -> {
+                if (readCache != null) {
+                    readCache.invalidate(topic, bucketIndex);
+                }
                 localPersistence.remove(topic, bucketIndex);
                 return null;
             });
@@ -96,6 +137,18 @@ public class RetainedMessagePersistenceImpl extends AbstractPersistence implemen
             checkNotNull(topic, "Topic must not be null");
             checkNotNull(retainedMessage, "Retained message must not be null");
             return singleWriter.submit(topic, (bucketIndex) -> {
+                if (memoryGovernor.isShedding(MemoryConsumer.RETAINED_MESSAGES)) {
+                    // the new message is rejected, the existing retained message of the topic is kept
+                    memoryGovernor.shed(MemoryConsumer.RETAINED_MESSAGES);
+                    messageDroppedService.retainedMemoryExceeded(topic,
+                            retainedMessage.getQos().getQosNumber(),
+                            memoryGovernor.getUsage(MemoryConsumer.RETAINED_MESSAGES),
+                            memoryGovernor.getLimit(MemoryConsumer.RETAINED_MESSAGES));
+                    return null;
+                }
+                if (readCache != null) {
+                    readCache.invalidate(topic, bucketIndex);
+                }
                 localPersistence.put(retainedMessage, topic, bucketIndex);
                 return null;
             });
@@ -125,6 +178,9 @@ public class RetainedMessagePersistenceImpl extends AbstractPersistence implemen
     @Override
     public @NotNull ListenableFuture<Void> cleanUp(final int bucketIndex) {
         return singleWriter.submit(bucketIndex, (bucketIndex1) -> {
+            if (readCache != null) {
+                readCache.removeExpired(bucketIndex1);
+            }
             localPersistence.cleanUp(bucketIndex1);
             return null;
         });
@@ -138,6 +194,9 @@ public class RetainedMessagePersistenceImpl extends AbstractPersistence implemen
     @Override
     public @NotNull ListenableFuture<Void> clear() {
         final List<ListenableFuture<Void>> futureList = singleWriter.submitToAllBucketsParallel((bucketIndex) -> {
+            if (readCache != null) {
+                readCache.clear(bucketIndex);
+            }
             localPersistence.clear(bucketIndex);
             return null;
         });
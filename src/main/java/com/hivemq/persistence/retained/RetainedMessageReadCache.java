@@ -0,0 +1,159 @@
+/*
+ * Copyright 2019-present HiveMQ GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hivemq.persistence.retained;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import com.hivemq.extension.sdk.api.annotations.NotNull;
+import com.hivemq.extension.sdk.api.annotations.Nullable;
+import com.hivemq.metrics.HiveMQMetrics;
+import com.hivemq.persistence.RetainedMessage;
+import com.hivemq.util.ObjectMemoryEstimation;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A size bounded cache of fully loaded retained messages (including their payload) in front of a file persistence.
+ * <p>
+ * Every bucket has its own least recently used map that is only accessed by the single writer thread of the bucket,
+ * so no locking is needed. Writes to a topic invalidate its entry, they do not populate the cache.
+ */
+class RetainedMessageReadCache {
+
+    private static final int ENTRY_OVERHEAD = ObjectMemoryEstimation.objectShellSize() * 2 +
+            ObjectMemoryEstimation.objectRefSize() * 5 +
+            ObjectMemoryEstimation.intSize();
+
+    private final @NotNull Map<String, RetainedMessage>[] buckets;
+    private final @NotNull long[] bucketSizes;
+    private final long maxBucketSize;
+    private final @NotNull AtomicLong currentMemorySize = new AtomicLong();
+    private final @NotNull Counter hits;
+    private final @NotNull Counter misses;
+    RetainedMessageReadCache(
+            final int bucketCount, final long maxMemorySize, final @NotNull MetricRegistry metricRegistry) {
+        // noinspection unchecked
+        buckets = new Map[bucketCount];
+        for (int i = 0; i < bucketCount; i++) {
+            buckets[i] = new LinkedHashMap<>(16, 0.75f, true);
+        }
+        bucketSizes = new long[bucketCount];
+        maxBucketSize = maxMemorySize / bucketCount;
+        hits = metricRegistry.counter(HiveMQMetrics.RETAINED_MESSAGES_READ_CACHE_HITS.name());
+        misses = metricRegistry.counter(HiveMQMetrics.RETAINED_MESSAGES_READ_CACHE_MISSES.name());
+        metricRegistry.register(HiveMQMetrics.RETAINED_MESSAGES_READ_CACHE_HIT_RATIO.name(),
+                (Gauge<Double>) this::hitRatio);
+        metricRegistry.register(HiveMQMetrics.RETAINED_MESSAGES_READ_CACHE_TOTAL_SIZE.name(),
+                (Gauge<Long>) currentMemorySize::get);
+    }
+
+    /**
+     * @return the cached message for the topic or null if it is not cached. Expired messages are removed and not
+     *         returned.
+     */
+    @Nullable RetainedMessage get(final @NotNull String topic, final int bucketIndex) {
+        final Map<String, RetainedMessage> bucket = buckets[bucketIndex];
+        final RetainedMessage retainedMessage = bucket.get(topic);
+        if (retainedMessage == null) {
+            misses.inc();
+            return null;
+        }
+        if (retainedMessage.hasExpired()) {
+            bucket.remove(topic);
+            removed(topic, retainedMessage, bucketIndex);
+            misses.inc();
+            return null;
+        }
+        hits.inc();
+        return retainedMessage;
+    }
+
+    /**
+     * Caches a message that was loaded from the persistence. The least recently read messages of the bucket are
+     * evicted when the bucket exceeds its share of the memory limit.
+     */
+    void put(final @NotNull String topic, final @NotNull RetainedMessage retainedMessage, final int bucketIndex) {
+        final long size = size(topic, retainedMessage);
+        if (size > maxBucketSize) {
+            return;
+        }
+        final Map<String, RetainedMessage> bucket = buckets[bucketIndex];
+        final RetainedMessage previousMessage = bucket.put(topic, retainedMessage);
+        if (previousMessage != null) {
+            removed(topic, previousMessage, bucketIndex);
+        }
+        bucketSizes[bucketIndex] += size;
+        currentMemorySize.addAndGet(size);
+        final Iterator<Map.Entry<String, RetainedMessage>> iterator = bucket.entrySet().iterator();
+        while (bucketSizes[bucketIndex] > maxBucketSize && iterator.hasNext()) {
+            final Map.Entry<String, RetainedMessage> eldest = iterator.next();
+            iterator.remove();
+            removed(eldest.getKey(), eldest.getValue(), bucketIndex);
+        }
+    }
+
+    void invalidate(final @NotNull String topic, final int bucketIndex) {
+        final RetainedMessage retainedMessage = buckets[bucketIndex].remove(topic);
+        if (retainedMessage != null) {
+            removed(topic, retainedMessage, bucketIndex);
+        }
+    }
+
+    void removeExpired(final int bucketIndex) {
+        final Iterator<Map.Entry<String, RetainedMessage>> iterator = buckets[bucketIndex].entrySet().iterator();
+        while (iterator.hasNext()) {
+            final Map.Entry<String, RetainedMessage> entry = iterator.next();
+            if (entry.getValue().hasExpired()) {
+                iterator.remove();
+                removed(entry.getKey(), entry.getValue(), bucketIndex);
+            }
+        }
+    }
+
+    void clear(final int bucketIndex) {
+        buckets[bucketIndex].clear();
+        currentMemorySize.addAndGet(-bucketSizes[bucketIndex]);
+        bucketSizes[bucketIndex] = 0;
+    }
+
+    long getCurrentMemorySize() {
+        return currentMemorySize.get();
+    }
+
+    /**
+     * @return the share of reads that were served by the cache
+     */
+    double hitRatio() {
+        final long hitCount = hits.getCount();
+        final long total = hitCount + misses.getCount();
+        return total == 0 ? 0.0 : (double) hitCount / total;
+    }
+
+    private void removed(
+            final @NotNull String topic, final @NotNull RetainedMessage retainedMessage, final int bucketIndex) {
+        final long size = size(topic, retainedMessage);
+        bucketSizes[bucketIndex] -= size;
+        currentMemorySize.addAndGet(-size);
+    }
+
+    private static long size(final @NotNull String topic, final @NotNull RetainedMessage retainedMessage) {
+        return ObjectMemoryEstimation.stringSize(topic) + retainedMessage.getEstimatedSizeInMemory() + ENTRY_OVERHEAD;
+    }
+}
@@ -0,0 +1,109 @@
+/*
+ * Copyright 2019-present HiveMQ GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hivemq.throttling;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.hivemq.bootstrap.ClientConnectionContext;
+import com.hivemq.bootstrap.netty.AutoReadGate;
+import com.hivemq.configuration.service.entity.ClientRateLimits;
+import com.hivemq.extension.sdk.api.annotations.NotNull;
+import com.hivemq.extension.sdk.api.annotations.Nullable;
+import io.netty.channel.Channel;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Limits the PUBLISHes and PUBLISH bytes a single client may send per second.
+ * <p>
+ * A limiter belongs to exactly one channel and is only used on its event loop. When a limit is exceeded the limiter
+ * stops reading from the channel until the debt of the exceeded bucket is repaid, so the client is slowed down by TCP
+ * backpressure instead of being disconnected.
+ */
+public class ClientRateLimiter {
+
+    private final @NotNull ThrottledClients throttledClients;
+    private final @NotNull Channel channel;
+    private final @NotNull ClientRateLimits listenerLimits;
+    private final @NotNull TokenBucket publishes = new TokenBucket();
+    private final @NotNull TokenBucket bytes = new TokenBucket();
+    private final @NotNull Runnable resumeTask = this::resume;
+    private boolean ratesSet;
+    private @Nullable AtomicLong throttleCount;
+    private boolean throttled;
+    ClientRateLimiter(
+            final @NotNull ThrottledClients throttledClients,
+            final @NotNull Channel channel,
+            final @NotNull ClientRateLimits listenerLimits) {
+        this.throttledClients = throttledClients;
+        this.channel = channel;
+        this.listenerLimits = listenerLimits;
+    }
+
+    /**
+     * Accounts a PUBLISH of the client and stops reading from the client if it exceeded its limits.
+     *
+     * @param clientConnectionContext the connection of the client
+     * @param packetSize              the size of the PUBLISH packet in bytes
+     */
+    public void publishReceived(final @NotNull ClientConnectionContext clientConnectionContext, final int packetSize) {
+        publishReceived(clientConnectionContext, packetSize, System.nanoTime());
+    }
+
+    @VisibleForTesting
+    void publishReceived(
+            final @NotNull ClientConnectionContext clientConnectionContext,
+            final int packetSize,
+            final long nowNanos) {
+        if (listenerLimits.isUnlimited()) {
+            return;
+        }
+        if (!ratesSet) {
+            publishes.setRate(listenerLimits.getPublishesPerSecond(), nowNanos);
+            bytes.setRate(listenerLimits.getBytesPerSecond(), nowNanos);
+            ratesSet = true;
+        }
+        final long waitNanos = Math.max(publishes.consume(1, nowNanos), bytes.consume(packetSize, nowNanos));
+        if (waitNanos == 0 || throttled) {
+            return;
+        }
+        throttled = true;
+        AutoReadGate.of(channel).pause(AutoReadGate.Reason.RATE_LIMIT);
+        channel.eventLoop().schedule(resumeTask, waitNanos, TimeUnit.NANOSECONDS);
+        final String clientId = clientConnectionContext.getClientId();
+        if (clientId != null) {
+            if (throttleCount == null) {
+                final AtomicLong throttleCount = throttledClients.connectionThrottled(clientId);
+                this.throttleCount = throttleCount;
+                channel.closeFuture().addListener(future -> throttledClients.disconnected(clientId, throttleCount));
+            }
+            throttledClients.throttled(throttleCount);
+        }
+    }
+
+    @VisibleForTesting
+    boolean isThrottled() {
+        return throttled;
+    }
+
+    private void resume() {
+        throttled = false;
+        if (throttleCount != null) {
+            throttledClients.resumed();
+        }
+        AutoReadGate.of(channel).resume(AutoReadGate.Reason.RATE_LIMIT);
+    }
+}
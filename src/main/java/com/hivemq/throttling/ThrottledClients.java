@@ -0,0 +1,124 @@
+/*
+ * Copyright 2019-present HiveMQ GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hivemq.throttling;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.annotations.VisibleForTesting;
+import com.hivemq.configuration.service.InternalConfigurations;
+import com.hivemq.configuration.service.entity.ClientRateLimits;
+import com.hivemq.configuration.service.entity.Listener;
+import com.hivemq.configuration.service.impl.listener.ListenerConfigurationService;
+import com.hivemq.extension.sdk.api.annotations.NotNull;
+import com.hivemq.extension.sdk.api.annotations.Nullable;
+import com.hivemq.metrics.HiveMQMetrics;
+import io.netty.channel.Channel;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Creates the {@link ClientRateLimiter}s of the channels and keeps track of the clients they throttle.
+ * <p>
+ * The limits of a client are the client-rate-limits of its listener, or the internal defaults if the listener does not
+ * configure them.
+ */
+@Singleton
+public class ThrottledClients {
+
+    private final @NotNull ListenerConfigurationService listenerConfigurationService;
+    private final @NotNull ClientRateLimits defaultLimits;
+    private final @NotNull Map<String, AtomicLong> throttleCounts = new ConcurrentHashMap<>();
+    private final @NotNull AtomicInteger currentlyThrottled = new AtomicInteger();
+    private final @NotNull Counter throttledTotal;
+    private final int topClients;
+    @Inject
+    public ThrottledClients(
+            final @NotNull ListenerConfigurationService listenerConfigurationService,
+            final @NotNull MetricRegistry metricRegistry) {
+        this.listenerConfigurationService = listenerConfigurationService;
+        this.defaultLimits = new ClientRateLimits(InternalConfigurations.CLIENT_RATE_LIMIT_PUBLISHES_PER_SEC.get(),
+                InternalConfigurations.CLIENT_RATE_LIMIT_BYTES_PER_SEC.get());
+        this.topClients = InternalConfigurations.CLIENT_RATE_LIMIT_TOP_THROTTLED_CLIENTS.get();
+        throttledTotal = metricRegistry.counter(HiveMQMetrics.THROTTLED_CLIENTS_TOTAL.name());
+        metricRegistry.register(HiveMQMetrics.THROTTLED_CLIENTS_CURRENT.name(),
+                (Gauge<Integer>) currentlyThrottled::get);
+        metricRegistry.register(HiveMQMetrics.THROTTLED_CLIENTS_TOP.name(), (Gauge<List<String>>) this::topThrottled);
+    }
+
+    public @NotNull ClientRateLimiter createRateLimiter(
+            final @NotNull Channel channel,
+            final @NotNull Listener listener) {
+        final ClientRateLimits listenerLimits = listenerConfigurationService.getClientRateLimits(listener.getName());
+        return new ClientRateLimiter(this, channel, listenerLimits != null ? listenerLimits : defaultLimits);
+    }
+
+    /**
+     * Starts counting the throttles of the connection of a client when it is throttled the first time. The count
+     * replaces the count of a previous connection of the same client, which is still open during a takeover.
+     *
+     * @return the throttle count of the connection
+     */
+    @NotNull AtomicLong connectionThrottled(final @NotNull String clientId) {
+        final AtomicLong throttleCount = new AtomicLong();
+        throttleCounts.put(clientId, throttleCount);
+        return throttleCount;
+    }
+
+    void throttled(final @NotNull AtomicLong throttleCount) {
+        currentlyThrottled.incrementAndGet();
+        throttledTotal.inc();
+        throttleCount.incrementAndGet();
+    }
+
+    void resumed() {
+        currentlyThrottled.decrementAndGet();
+    }
+
+    void disconnected(final @NotNull String clientId, final @NotNull AtomicLong throttleCount) {
+        // only remove the count of this connection, not the count of a connection that took over the client
+        throttleCounts.remove(clientId, throttleCount);
+    }
+
+    @VisibleForTesting
+    @NotNull List<String> topThrottled() {
+        if (topClients <= 0) {
+            return List.of();
+        }
+        final PriorityQueue<Map.Entry<String, Long>> top =
+                new PriorityQueue<>(topClients + 1, Map.Entry.comparingByValue());
+        for (final Map.Entry<String, AtomicLong> entry : throttleCounts.entrySet()) {
+            top.add(Map.entry(entry.getKey(), entry.getValue().get()));
+            if (top.size() > topClients) {
+                top.poll();
+            }
+        }
+        final List<String> result = new ArrayList<>(top.size());
+        while (!top.isEmpty()) {
+            final Map.Entry<String, Long> entry = top.poll();
+            result.add(0, entry.getKey() + "=" + entry.getValue());
+        }
+        return result;
+    }
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright 2019-present HiveMQ GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hivemq.throttling;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A token bucket that holds at most the tokens of one second.
+ * <p>
+ * The bucket is confined to the event loop of a single channel and is therefore not thread safe. It does not allocate
+ * when tokens are consumed.
+ */
+public class TokenBucket {
+
+    private static final long NANOS_PER_SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    private long ratePerSecond;
+    private long tokens;
+    private long lastRefillNanos;
+
+    /**
+     * Sets the rate of the bucket and fills it.
+     *
+     * @param ratePerSecond the tokens that are added per second, 0 means unlimited
+     * @param nowNanos      the current {@link System#nanoTime()}
+     */
+    public void setRate(final long ratePerSecond, final long nowNanos) {
+        this.ratePerSecond = ratePerSecond;
+        this.tokens = ratePerSecond;
+        this.lastRefillNanos = nowNanos;
+    }
+
+    /**
+     * Consumes the given amount of tokens. If not enough tokens are available the bucket goes into debt which has to
+     * be repaid before the next consumption is free again.
+     *
+     * @param amount   the amount of tokens to consume
+     * @param nowNanos the current {@link System#nanoTime()}
+     * @return the nanoseconds until the debt of the bucket is repaid, 0 if the bucket is not in debt
+     */
+    public long consume(final long amount, final long nowNanos) {
+        if (ratePerSecond == 0) {
+            return 0;
+        }
+        refill(nowNanos);
+        tokens -= amount;
+        if (tokens >= 0) {
+            return 0;
+        }
+        // the debt is capped by the packet size, so this can not overflow for any sane rate
+        return (-tokens * NANOS_PER_SECOND + ratePerSecond - 1) / ratePerSecond;
+    }
+
+    public long getRatePerSecond() {
+        return ratePerSecond;
+    }
+
+    long getTokens() {
+        return tokens;
+    }
+
+    private void refill(final long nowNanos) {
+        final long elapsedNanos = nowNanos - lastRefillNanos;
+        if (elapsedNanos <= 0) {
+            return;
+        }
+        final long missing = ratePerSecond - tokens;
+        if (missing <= 0) {
+            lastRefillNanos = nowNanos;
+            return;
+        }
+        final double added = (double) elapsedNanos * ratePerSecond / NANOS_PER_SECOND;
+        if (added >= missing) {
+            tokens = ratePerSecond;
+            lastRefillNanos = nowNanos;
+        } else {
+            final long wholeTokens = (long) added;
+            tokens += wholeTokens;
+            // only account the time of the whole tokens so the fractions are not lost
+            lastRefillNanos += (long) ((double) wholeTokens * NANOS_PER_SECOND / ratePerSecond);
+        }
+    }
+}
@@ -0,0 +1,277 @@
+/*
+ * Copyright 2019-present HiveMQ GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hivemq.util;
+
+import com.google.common.collect.ImmutableList;
+import com.hivemq.extension.sdk.api.annotations.NotNull;
+import com.hivemq.extension.sdk.api.annotations.Nullable;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * A hierarchical timing wheel that fires keys at their deadline.
+ * <p>
+ * Scheduling and cancelling a key are O(1). The wheel has several levels of slots. A slot of a level spans as many
+ * ticks as a whole revolution of the level below. A key is placed in the lowest level that can tell its deadline
+ * apart from the current tick and is moved down a level whenever the wheel reaches its slot, so a key is moved at
+ * most once per level before it fires. Keys whose deadline is beyond the highest level wait in an overflow list
+ * that is placed again after each revolution of the highest level. Advancing the wheel skips the ticks in which no
+ * slot can hold a key, so advancing after a long pause does not visit every tick.
+ * <p>
+ * The ticks are counted in wall clock time, so deadlines that were persisted before a restart can be scheduled
+ * again as they are. A key never fires before its deadline, but up to one tick after it.
+ * <p>
+ * This class is not thread safe.
+ *
+ * @param <K> the type of the keys, a key is scheduled at most once
+ */
+public class HierarchicalTimingWheel<K> {
+
+    public static final int DEFAULT_SLOT_BITS = 6;
+    public static final int DEFAULT_LEVELS = 4;
+    private static final int OVERFLOW = -1;
+    private static final int DUE = -2;
+    private final long tickMillis;
+    private final int slotBits;
+    private final int levels;
+    private final long slotMask;
+    private final @Nullable Entry<K> @NotNull [] @NotNull [] slots;
+    private final int @NotNull [] levelSizes;
+    private final @NotNull Map<K, Entry<K>> entries = new HashMap<>();
+    private @Nullable Entry<K> overflow;
+    private @Nullable Entry<K> due;
+    private long currentTick;
+    public HierarchicalTimingWheel(final long tickMillis, final long nowMillis) {
+        this(tickMillis, DEFAULT_SLOT_BITS, DEFAULT_LEVELS, nowMillis);
+    }
+
+    /**
+     * @param tickMillis the resolution of the wheel in milliseconds
+     * @param slotBits   the binary logarithm of the amount of slots per level
+     * @param levels     the amount of levels
+     * @param nowMillis  the current wall clock time in milliseconds
+     */
+    @SuppressWarnings("unchecked")
+    public HierarchicalTimingWheel(final long tickMillis, final int slotBits, final int levels, final long nowMillis) {
+        checkArgument(tickMillis > 0, "Tick must be positive");
+        checkArgument(slotBits > 0 && levels > 0 && slotBits * levels < Long.SIZE - 1,
+                "Slots and levels must span less than 63 bits");
+        this.tickMillis = tickMillis;
+        this.slotBits = slotBits;
+        this.levels = levels;
+        slotMask = (1L << slotBits) - 1;
+        slots = new Entry[levels][1 << slotBits];
+        levelSizes = new int[levels];
+        currentTick = Math.floorDiv(nowMillis, tickMillis);
+    }
+
+    /**
+     * Schedules the key to fire at the deadline. A previous deadline of the key is replaced. A deadline that has
+     * already passed fires with the next advance, even if the advance does not reach the next tick.
+     */
+    public void schedule(final @NotNull K key, final long deadlineMillis) {
+        checkNotNull(key, "Key must not be null");
+        final Entry<K> previous = entries.remove(key);
+        if (previous != null) {
+            unlink(previous);
+        }
+        final Entry<K> entry = new Entry<>(key, ceilDiv(deadlineMillis, tickMillis));
+        entries.put(key, entry);
+        if (entry.deadlineTick <= currentTick) {
+            entry.level = DUE;
+            entry.prev = null;
+            entry.next = due;
+            if (due != null) {
+                due.prev = entry;
+            }
+            due = entry;
+        } else {
+            place(entry);
+        }
+    }
+
+    /**
+     * @return true if the key was scheduled, else false
+     */
+    public boolean cancel(final @NotNull K key) {
+        final Entry<K> entry = entries.remove(key);
+        if (entry == null) {
+            return false;
+        }
+        unlink(entry);
+        return true;
+    }
+
+    public boolean contains(final @NotNull K key) {
+        return entries.containsKey(key);
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    public void clear() {
+        entries.clear();
+        for (int level = 0; level < levels; level++) {
+            Arrays.fill(slots[level], null);
+            levelSizes[level] = 0;
+        }
+        overflow = null;
+        due = null;
+    }
+
+    /**
+     * Advances the wheel to the given time and removes all keys whose deadline has passed.
+     *
+     * @param nowMillis the current wall clock time in milliseconds, a time before the current tick is ignored
+     * @return the keys that fired, in no particular order
+     */
+    public @NotNull ImmutableList<K> advance(final long nowMillis) {
+        final long targetTick = Math.floorDiv(nowMillis, tickMillis);
+        final ImmutableList.Builder<K> expired = ImmutableList.builder();
+        final Entry<K> dueEntry = due;
+        due = null;
+        fireOrPlace(dueEntry, expired);
+        while (currentTick < targetTick) {
+            if (entries.isEmpty()) {
+                currentTick = targetTick;
+                break;
+            }
+            // only the boundaries of the lowest level that holds keys need to be visited
+            int lowestLevel = 0;
+            while (lowestLevel < levels && levelSizes[lowestLevel] == 0) {
+                lowestLevel++;
+            }
+            final int shift = lowestLevel * slotBits;
+            final long nextTick = ((currentTick >>> shift) + 1) << shift;
+            if (nextTick > targetTick) {
+                currentTick = targetTick;
+                break;
+            }
+            currentTick = nextTick;
+            processTick(expired);
+        }
+        return expired.build();
+    }
+
+    private void processTick(final @NotNull ImmutableList.Builder<K> expired) {
+        if ((currentTick & ((1L << (levels * slotBits)) - 1)) == 0) {
+            final Entry<K> entry = overflow;
+            overflow = null;
+            fireOrPlace(entry, expired);
+        }
+        // the higher levels first, their keys are moved to the lower levels
+        for (int level = levels - 1; level >= 0; level--) {
+            final int shift = level * slotBits;
+            if ((currentTick & ((1L << shift) - 1)) != 0) {
+                continue;
+            }
+            final int slot = (int) ((currentTick >>> shift) & slotMask);
+            final Entry<K> entry = slots[level][slot];
+            slots[level][slot] = null;
+            levelSizes[level] -= fireOrPlace(entry, expired);
+        }
+    }
+
+    /**
+     * @return the amount of entries in the list
+     */
+    private int fireOrPlace(final @Nullable Entry<K> first, final @NotNull ImmutableList.Builder<K> expired) {
+        int count = 0;
+        Entry<K> entry = first;
+        while (entry != null) {
+            final Entry<K> next = entry.next;
+            if (entry.deadlineTick <= currentTick) {
+                entries.remove(entry.key);
+                expired.add(entry.key);
+            } else {
+                place(entry);
+            }
+            count++;
+            entry = next;
+        }
+        return count;
+    }
+
+    private void place(final @NotNull Entry<K> entry) {
+        final long tick = entry.deadlineTick;
+        final int highestDifferentBit = Long.SIZE - 1 - Long.numberOfLeadingZeros(tick ^ currentTick);
+        final int level = highestDifferentBit / slotBits;
+        entry.prev = null;
+        if (level >= levels) {
+            entry.level = OVERFLOW;
+            entry.next = overflow;
+            if (overflow != null) {
+                overflow.prev = entry;
+            }
+            overflow = entry;
+            return;
+        }
+        final int slot = (int) ((tick >>> (level * slotBits)) & slotMask);
+        entry.level = level;
+        entry.slot = slot;
+        final Entry<K> head = slots[level][slot];
+        entry.next = head;
+        if (head != null) {
+            head.prev = entry;
+        }
+        slots[level][slot] = entry;
+        levelSizes[level]++;
+    }
+
+    private void unlink(final @NotNull Entry<K> entry) {
+        if (entry.prev != null) {
+            entry.prev.next = entry.next;
+        } else if (entry.level == OVERFLOW) {
+            overflow = entry.next;
+        } else if (entry.level == DUE) {
+            due = entry.next;
+        } else {
+            slots[entry.level][entry.slot] = entry.next;
+        }
+        if (entry.next != null) {
+            entry.next.prev = entry.prev;
+        }
+        if (entry.level >= 0) {
+            levelSizes[entry.level]--;
+        }
+        entry.prev = null;
+        entry.next = null;
+    }
+
+    private static long ceilDiv(final long dividend, final long divisor) {
+        return -Math.floorDiv(-dividend, divisor);
+    }
+
+    private static class Entry<K> {
+
+        private final @NotNull K key;
+        private final long deadlineTick;
+        private int level;
+        private int slot;
+        private @Nullable Entry<K> prev;
+        private @Nullable Entry<K> next;
+        private Entry(final @NotNull K key, final long deadlineTick) {
+            this.key = key;
+            this.deadlineTick = deadlineTick;
+        }
+    }
+}
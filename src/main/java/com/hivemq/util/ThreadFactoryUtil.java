@@ -35,6 +35,20 @@ public class ThreadFactoryUtil {
                 .setUncaughtExceptionHandler(new UncaughtExceptionHandler())
                 .build();
     }
+
+    /**
+     * Creates a {@link ThreadFactory} for virtual threads with given nameFormat and an
+     * {@link UncaughtExceptionHandler} to log every uncaught exception.
+     *
+     * @param  nameFormat                    the format of the name
+     * @throws UnsupportedOperationException if virtual threads are not supported by this JVM
+     */
+    public static @NotNull ThreadFactory createVirtual(final @NotNull String nameFormat) {
+        return new ThreadFactoryBuilder().setThreadFactory(VirtualThreads.factory())
+                .setNameFormat(nameFormat)
+                .setUncaughtExceptionHandler(new UncaughtExceptionHandler())
+                .build();
+    }
     private static class UncaughtExceptionHandler implements Thread.UncaughtExceptionHandler {
 
         private static final Logger log = LoggerFactory.getLogger(UncaughtExceptionHandler.class);
@@ -0,0 +1,141 @@
+/*
+ * Copyright 2019-present HiveMQ GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hivemq.util;
+
+import com.hivemq.extension.sdk.api.annotations.NotNull;
+import io.netty.buffer.ByteBuf;
+
+/**
+ * Validates an UTF-8 encoded topic name in a single pass straight from a {@link ByteBuf}, without creating a String
+ * first.
+ * <p>
+ * Topic names that only contain ASCII characters are read 8 bytes at a time. Each word is checked for the null
+ * character, control characters and the wildcard characters. As the bytes of multibyte UTF-8 sequences are never
+ * ASCII, a topic name with other characters falls back to {@link Utf8Utils} for the UTF-8 checks and a byte-wise scan
+ * for the wildcard characters.
+ */
+public class Utf8TopicValidator {
+
+    /**
+     * The topic name is valid.
+     */
+    public static final int VALID = 0;
+    /**
+     * The topic name is not well-formed UTF-8 or contains characters that are not allowed.
+     */
+    public static final int MALFORMED = 1;
+    /**
+     * The topic name contains a wildcard character.
+     */
+    public static final int WILDCARD = 2;
+
+    private static final long HIGH_BITS = 0x8080_8080_8080_8080L;
+    private static final long LOW_BITS = 0x7F7F_7F7F_7F7F_7F7FL;
+    private static final long ONES = 0x0101_0101_0101_0101L;
+    private static final long NULL_BYTES = 0;
+    private static final long SPACE_BYTES = ONES * ' ';
+    private static final long DEL_BYTES = ONES * 0x7F;
+    private static final long PLUS_BYTES = ONES * '+';
+    private static final long HASH_BYTES = ONES * '#';
+
+    private Utf8TopicValidator() {
+        // This is a utility class, don't instantiate it!
+    }
+
+    /**
+     * Validates the topic name of a PUBLISH.
+     * <p>
+     * A malformed topic name takes precedence over a wildcard character, the same as when the UTF-8 String is decoded
+     * before the topic is validated.
+     *
+     * @param  buf                         the buffer to read from, the reader index is not changed.
+     * @param  index                       the index of the first byte of the topic name.
+     * @param  length                      the length of the topic name in bytes.
+     * @param  validateMustNotCharacters   whether to check for UTF-8 well-formedness and the null character.
+     * @param  validateShouldNotCharacters whether to check for control characters and non characters.
+     * @return                             {@link #VALID}, {@link #MALFORMED} or {@link #WILDCARD}.
+     */
+    public static int validateTopicName(
+            final @NotNull ByteBuf buf,
+            final int index,
+            final int length,
+            final boolean validateMustNotCharacters,
+            final boolean validateShouldNotCharacters) {
+        final int end = index + length;
+        int i = index;
+        boolean wildcard = false;
+        for (; i + Long.BYTES <= end; i += Long.BYTES) {
+            final long word = buf.getLong(i);
+            if ((word & HIGH_BITS) != 0) {
+                return validateNonAscii(buf, index, length, validateMustNotCharacters, validateShouldNotCharacters);
+            }
+            if (validateShouldNotCharacters) {
+                // any null or control character, the high bits are known to be clear here
+                if ((((word - SPACE_BYTES) & ~word & HIGH_BITS) | matches(word, DEL_BYTES)) != 0) {
+                    return MALFORMED;
+                }
+            } else if (validateMustNotCharacters && matches(word, NULL_BYTES) != 0) {
+                return MALFORMED;
+            }
+            wildcard |= (matches(word, PLUS_BYTES) | matches(word, HASH_BYTES)) != 0;
+        }
+        for (; i < end; i++) {
+            final byte b = buf.getByte(i);
+            if (b < 0) {
+                return validateNonAscii(buf, index, length, validateMustNotCharacters, validateShouldNotCharacters);
+            }
+            if (validateShouldNotCharacters) {
+                if (b < ' ' || b == 0x7F) {
+                    return MALFORMED;
+                }
+            } else if (validateMustNotCharacters && b == 0) {
+                return MALFORMED;
+            }
+            wildcard |= b == '+' || b == '#';
+        }
+        return wildcard ? WILDCARD : VALID;
+    }
+
+    /**
+     * @return a word with the high bit set in exactly the bytes of the word that are equal to the bytes of pattern.
+     */
+    private static long matches(final long word, final long pattern) {
+        final long x = word ^ pattern;
+        return ~(((x & LOW_BITS) + LOW_BITS) | x | LOW_BITS);
+    }
+
+    private static int validateNonAscii(
+            final @NotNull ByteBuf buf,
+            final int index,
+            final int length,
+            final boolean validateMustNotCharacters,
+            final boolean validateShouldNotCharacters) {
+        final byte[] bytes = new byte[length];
+        buf.getBytes(index, bytes);
+        if (validateMustNotCharacters && Utf8Utils.containsMustNotCharacters(bytes)) {
+            return MALFORMED;
+        }
+        if (validateShouldNotCharacters && Utf8Utils.hasControlOrNonCharacter(bytes)) {
+            return MALFORMED;
+        }
+        for (final byte b : bytes) {
+            if (b == '+' || b == '#') {
+                return WILDCARD;
+            }
+        }
+        return VALID;
+    }
+}
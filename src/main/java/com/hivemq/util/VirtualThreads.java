@@ -0,0 +1,125 @@
+/*
+ * Copyright 2019-present HiveMQ GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hivemq.util;
+
+import com.hivemq.extension.sdk.api.annotations.NotNull;
+import com.hivemq.extension.sdk.api.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.function.Consumer;
+
+/**
+ * Access to virtual threads, which are available from Java 21 on.
+ * <p>
+ * HiveMQ is compiled for Java 11, so the Java 21 API is looked up once via reflection. All methods besides
+ * {@link #isSupported()} must only be called if virtual threads are supported.
+ */
+public final class VirtualThreads {
+
+    private static final @NotNull Logger log = LoggerFactory.getLogger(VirtualThreads.class);
+    private static final @NotNull String PINNED_EVENT = "jdk.VirtualThreadPinned";
+    private static final @Nullable Method OF_VIRTUAL;
+    private static final @Nullable Method BUILDER_FACTORY;
+    private static final @Nullable Method NEW_THREAD_PER_TASK_EXECUTOR;
+
+    static {
+        Method ofVirtual = null;
+        Method builderFactory = null;
+        Method newThreadPerTaskExecutor = null;
+        try {
+            ofVirtual = Thread.class.getMethod("ofVirtual");
+            builderFactory = Class.forName("java.lang.Thread$Builder").getMethod("factory");
+            newThreadPerTaskExecutor = Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class);
+            // virtual threads are a preview feature before Java 21 and throw if previews are not enabled
+            builderFactory.invoke(ofVirtual.invoke(null));
+        } catch (final ReflectiveOperationException | UnsupportedOperationException e) {
+            ofVirtual = null;
+            builderFactory = null;
+            newThreadPerTaskExecutor = null;
+        }
+        OF_VIRTUAL = ofVirtual;
+        BUILDER_FACTORY = builderFactory;
+        NEW_THREAD_PER_TASK_EXECUTOR = newThreadPerTaskExecutor;
+    }
+
+    private VirtualThreads() {
+    }
+
+    public static boolean isSupported() {
+        return OF_VIRTUAL != null;
+    }
+
+    /**
+     * @return a factory for unnamed virtual threads
+     * @throws UnsupportedOperationException if virtual threads are not supported by this JVM
+     */
+    public static @NotNull ThreadFactory factory() {
+        if (OF_VIRTUAL == null || BUILDER_FACTORY == null) {
+            throw new UnsupportedOperationException("Virtual threads require Java 21 or newer");
+        }
+        try {
+            return (ThreadFactory) BUILDER_FACTORY.invoke(OF_VIRTUAL.invoke(null));
+        } catch (final IllegalAccessException | InvocationTargetException e) {
+            throw new UnsupportedOperationException("Virtual threads are not available", e);
+        }
+    }
+
+    /**
+     * Creates an executor that starts a new thread from the given factory for each task, there is no queue and no
+     * upper bound for the amount of threads.
+     *
+     * @throws UnsupportedOperationException if virtual threads are not supported by this JVM
+     */
+    public static @NotNull ExecutorService newThreadPerTaskExecutor(final @NotNull ThreadFactory threadFactory) {
+        if (NEW_THREAD_PER_TASK_EXECUTOR == null) {
+            throw new UnsupportedOperationException("Virtual threads require Java 21 or newer");
+        }
+        try {
+            return (ExecutorService) NEW_THREAD_PER_TASK_EXECUTOR.invoke(null, threadFactory);
+        } catch (final IllegalAccessException | InvocationTargetException e) {
+            throw new UnsupportedOperationException("Virtual threads are not available", e);
+        }
+    }
+
+    /**
+     * Listens to the JFR events the JVM records if a virtual thread blocks while it is pinned to its carrier thread
+     * for longer than the default threshold of the event (20 ms).
+     *
+     * @param onPinned called on the JFR event stream thread for every pinned event
+     * @return the event stream, which must be closed to stop listening, or null if the JFR streaming API is not
+     *         available, for example in a runtime image without the jdk.jfr module
+     */
+    public static @Nullable AutoCloseable monitorPinning(final @NotNull Runnable onPinned) {
+        try {
+            final Class<?> streamClass = Class.forName("jdk.jfr.consumer.RecordingStream");
+            final Object stream = streamClass.getConstructor().newInstance();
+            streamClass.getMethod("enable", String.class).invoke(stream, PINNED_EVENT);
+            final Consumer<Object> eventConsumer = event -> onPinned.run();
+            streamClass.getMethod("onEvent", String.class, Consumer.class).invoke(stream, PINNED_EVENT, eventConsumer);
+            streamClass.getMethod("startAsync").invoke(stream);
+            return (AutoCloseable) stream;
+        } catch (final ReflectiveOperationException | RuntimeException e) {
+            log.debug("Not able to monitor pinned virtual threads, the JFR event stream is not available.", e);
+            return null;
+        }
+    }
+}
@@ -0,0 +1,126 @@
+/*
+ * Copyright 2019-present HiveMQ GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hivemq.websocket;
+
+import com.hivemq.extension.sdk.api.annotations.NotNull;
+import com.hivemq.extension.sdk.api.annotations.Nullable;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.CompositeByteBuf;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelOutboundHandlerAdapter;
+import io.netty.channel.ChannelPromise;
+import io.netty.handler.codec.http.websocketx.BinaryWebSocketFrame;
+
+import java.nio.channels.ClosedChannelException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Wraps the encoded MQTT packets into binary websocket frames. Instead of one frame per packet, all packets that are
+ * written between two flushes are coalesced into a single frame (up to a maximum frame size), which saves the frame
+ * headers and allows permessage-deflate to compress the packets together.
+ * <p>
+ * MQTT over websockets does not require packets to be aligned with frames, so the receiver is not affected.
+ */
+public class MQTTWebsocketFrameCoalescer extends ChannelOutboundHandlerAdapter {
+
+    private static final int MAX_COMPONENTS = 1024;
+
+    private final int maxFrameSize;
+    private @Nullable CompositeByteBuf pending;
+    private final @NotNull List<ChannelPromise> pendingPromises = new ArrayList<>();
+    public MQTTWebsocketFrameCoalescer(final int maxFrameSize) {
+        this.maxFrameSize = maxFrameSize;
+    }
+
+    @Override
+    public void write(
+            final @NotNull ChannelHandlerContext ctx,
+            final @NotNull Object msg,
+            final @NotNull ChannelPromise promise) {
+        if (!(msg instanceof ByteBuf)) {
+            writePending(ctx);
+            ctx.write(msg, promise);
+            return;
+        }
+        final ByteBuf buf = (ByteBuf) msg;
+        if (pending == null) {
+            pending = ctx.alloc().compositeBuffer(MAX_COMPONENTS);
+        }
+        pending.addComponent(true, buf);
+        pendingPromises.add(promise);
+        if (pending.readableBytes() >= maxFrameSize || pending.numComponents() >= MAX_COMPONENTS) {
+            writePending(ctx);
+        }
+    }
+
+    @Override
+    public void flush(final @NotNull ChannelHandlerContext ctx) {
+        writePending(ctx);
+        ctx.flush();
+    }
+
+    @Override
+    public void close(final @NotNull ChannelHandlerContext ctx, final @NotNull ChannelPromise promise)
+            throws Exception {
+        writePending(ctx);
+        super.close(ctx, promise);
+    }
+
+    @Override
+    public void handlerRemoved(final @NotNull ChannelHandlerContext ctx) {
+        if (pending != null) {
+            pending.release();
+            pending = null;
+            final ClosedChannelException cause = new ClosedChannelException();
+            for (final ChannelPromise promise : pendingPromises) {
+                promise.tryFailure(cause);
+            }
+            pendingPromises.clear();
+        }
+    }
+
+    private void writePending(final @NotNull ChannelHandlerContext ctx) {
+        final CompositeByteBuf buf = pending;
+        if (buf == null) {
+            return;
+        }
+        pending = null;
+        if (pendingPromises.size() == 1) {
+            final ChannelPromise promise = pendingPromises.get(0);
+            pendingPromises.clear();
+            ctx.write(new BinaryWebSocketFrame(buf), promise);
+            return;
+        }
+        final ChannelPromise[] promises = pendingPromises.toArray(new ChannelPromise[0]);
+        pendingPromises.clear();
+        ctx.write(new BinaryWebSocketFrame(buf)).addListener(future -> notify((ChannelFuture) future, promises));
+    }
+
+    private static void notify(final @NotNull ChannelFuture future, final @NotNull ChannelPromise[] promises) {
+        if (future.isSuccess()) {
+            for (final ChannelPromise promise : promises) {
+                promise.trySuccess();
+            }
+        } else {
+            final Throwable cause = future.cause();
+            for (final ChannelPromise promise : promises) {
+                promise.tryFailure(cause);
+            }
+        }
+    }
+}
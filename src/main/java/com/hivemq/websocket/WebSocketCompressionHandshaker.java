@@ -0,0 +1,176 @@
+/*
+ * Copyright 2019-present HiveMQ GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hivemq.websocket;
+
+import com.hivemq.configuration.service.entity.WebsocketCompression;
+import com.hivemq.extension.sdk.api.annotations.NotNull;
+import com.hivemq.extension.sdk.api.annotations.Nullable;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelOutboundHandlerAdapter;
+import io.netty.channel.ChannelPromise;
+import io.netty.handler.codec.http.websocketx.WebSocketFrame;
+import io.netty.handler.codec.http.websocketx.extensions.WebSocketExtension;
+import io.netty.handler.codec.http.websocketx.extensions.WebSocketExtensionData;
+import io.netty.handler.codec.http.websocketx.extensions.WebSocketExtensionDecoder;
+import io.netty.handler.codec.http.websocketx.extensions.WebSocketExtensionEncoder;
+import io.netty.handler.codec.http.websocketx.extensions.WebSocketExtensionFilter;
+import io.netty.handler.codec.http.websocketx.extensions.WebSocketExtensionFilterProvider;
+import io.netty.handler.codec.http.websocketx.extensions.WebSocketServerExtension;
+import io.netty.handler.codec.http.websocketx.extensions.WebSocketServerExtensionHandshaker;
+import io.netty.handler.codec.http.websocketx.extensions.compression.PerMessageDeflateServerExtensionHandshaker;
+
+import java.util.List;
+
+/**
+ * Negotiates permessage-deflate with the settings of a websocket listener. Frames smaller than the configured minimum
+ * size are sent uncompressed, and the time spent compressing and the achieved compression ratio are recorded in the
+ * {@link WebSocketCompressionMetrics} of the listener.
+ */
+public class WebSocketCompressionHandshaker implements WebSocketServerExtensionHandshaker {
+
+    private final @NotNull PerMessageDeflateServerExtensionHandshaker delegate;
+    private final @NotNull WebSocketCompressionMetrics metrics;
+    public WebSocketCompressionHandshaker(
+            final @NotNull WebsocketCompression compression, final @NotNull WebSocketCompressionMetrics metrics) {
+        final int minimumSize = compression.getMinimumSize();
+        final WebSocketExtensionFilter encoderFilter =
+                frame -> frame.content().readableBytes() < minimumSize;
+        // only the window of the clients is limited, a smaller window of the broker's compressor would need JZlib
+        this.delegate = new PerMessageDeflateServerExtensionHandshaker(compression.getCompressionLevel(),
+                true,
+                compression.getClientMaxWindowBits(),
+                false,
+                false,
+                new WebSocketExtensionFilterProvider() {
+                    @Override
+                    public @NotNull WebSocketExtensionFilter encoderFilter() {
+                        return encoderFilter;
+                    }
+
+                    @Override
+                    public @NotNull WebSocketExtensionFilter decoderFilter() {
+                        return WebSocketExtensionFilter.NEVER_SKIP;
+                    }
+                });
+        this.metrics = metrics;
+    }
+
+    @Override
+    public @Nullable WebSocketServerExtension handshakeExtension(final @NotNull WebSocketExtensionData extensionData) {
+        final WebSocketServerExtension extension = delegate.handshakeExtension(extensionData);
+        return extension == null ? null : new MeasuredExtension(extension, metrics);
+    }
+
+    private static class MeasuredExtension implements WebSocketServerExtension {
+
+        private final @NotNull WebSocketServerExtension delegate;
+        private final @NotNull WebSocketCompressionMetrics metrics;
+        MeasuredExtension(
+                final @NotNull WebSocketServerExtension delegate, final @NotNull WebSocketCompressionMetrics metrics) {
+            this.delegate = delegate;
+            this.metrics = metrics;
+        }
+
+        @Override
+        public int rsv() {
+            return delegate.rsv();
+        }
+
+        @Override
+        public @NotNull WebSocketExtensionEncoder newExtensionEncoder() {
+            return new MeasuringEncoder(delegate.newExtensionEncoder(), metrics);
+        }
+
+        @Override
+        public @NotNull WebSocketExtensionDecoder newExtensionDecoder() {
+            return delegate.newExtensionDecoder();
+        }
+
+        @Override
+        public @NotNull WebSocketExtensionData newReponseData() {
+            return delegate.newReponseData();
+        }
+    }
+
+    /**
+     * Surrounds the deflate encoder: frames pass this encoder, the deflate encoder and then the {@link Recorder}, so
+     * the time between this encoder and the recorder is the time spent compressing.
+     */
+    static class MeasuringEncoder extends WebSocketExtensionEncoder {
+
+        private final @NotNull WebSocketExtensionEncoder deflateEncoder;
+        private final @NotNull WebSocketCompressionMetrics metrics;
+        private int compressedBytes = -1;
+        MeasuringEncoder(
+                final @NotNull WebSocketExtensionEncoder deflateEncoder,
+                final @NotNull WebSocketCompressionMetrics metrics) {
+            this.deflateEncoder = deflateEncoder;
+            this.metrics = metrics;
+        }
+
+        @Override
+        public void handlerAdded(final @NotNull ChannelHandlerContext ctx) {
+            final String deflateName = ctx.name() + "#deflate";
+            ctx.pipeline().addBefore(ctx.name(), deflateName, deflateEncoder);
+            ctx.pipeline().addBefore(deflateName, ctx.name() + "#recorder", new Recorder(this));
+        }
+
+        @Override
+        public void write(
+                final @NotNull ChannelHandlerContext ctx,
+                final @NotNull Object msg,
+                final @NotNull ChannelPromise promise) throws Exception {
+            if (!(msg instanceof WebSocketFrame)) {
+                ctx.write(msg, promise);
+                return;
+            }
+            final int uncompressedBytes = ((WebSocketFrame) msg).content().readableBytes();
+            compressedBytes = -1;
+            final long start = System.nanoTime();
+            super.write(ctx, msg, promise);
+            if (compressedBytes >= 0) {
+                metrics.compressed(uncompressedBytes, compressedBytes, System.nanoTime() - start);
+            }
+        }
+
+        @Override
+        protected void encode(
+                final @NotNull ChannelHandlerContext ctx,
+                final @NotNull WebSocketFrame msg,
+                final @NotNull List<Object> out) {
+            out.add(msg.retain());
+        }
+    }
+
+    private static class Recorder extends ChannelOutboundHandlerAdapter {
+
+        private final @NotNull MeasuringEncoder encoder;
+        Recorder(final @NotNull MeasuringEncoder encoder) {
+            this.encoder = encoder;
+        }
+
+        @Override
+        public void write(
+                final @NotNull ChannelHandlerContext ctx,
+                final @NotNull Object msg,
+                final @NotNull ChannelPromise promise) {
+            if (msg instanceof WebSocketFrame && (((WebSocketFrame) msg).rsv() & WebSocketExtension.RSV1) != 0) {
+                encoder.compressedBytes = ((WebSocketFrame) msg).content().readableBytes();
+            }
+            ctx.write(msg, promise);
+        }
+    }
+}
@@ -0,0 +1,59 @@
+/*
+ * Copyright 2019-present HiveMQ GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hivemq.websocket;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import com.hivemq.extension.sdk.api.annotations.NotNull;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The permessage-deflate metrics of a single websocket listener. Only frames that were actually compressed are
+ * recorded, frames below the minimum size are not.
+ */
+public class WebSocketCompressionMetrics {
+
+    public static final @NotNull String METRIC_PREFIX = "com.hivemq.networking.websocket.";
+
+    private final @NotNull Counter uncompressedBytes;
+    private final @NotNull Counter compressedBytes;
+    private final @NotNull Timer compressionTime;
+    WebSocketCompressionMetrics(final @NotNull MetricRegistry metricRegistry, final @NotNull String listenerName) {
+        final String prefix = METRIC_PREFIX + listenerName + ".compression.";
+        uncompressedBytes = metricRegistry.counter(prefix + "bytes.uncompressed");
+        compressedBytes = metricRegistry.counter(prefix + "bytes.compressed");
+        compressionTime = metricRegistry.timer(prefix + "time");
+        // created once per listener, all channels of the listener share the metrics
+        metricRegistry.gauge(prefix + "ratio", () -> (Gauge<Double>) this::ratio);
+    }
+
+    void compressed(final int uncompressed, final int compressed, final long nanos) {
+        uncompressedBytes.inc(uncompressed);
+        compressedBytes.inc(compressed);
+        compressionTime.update(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * @return the compressed size in relation to the uncompressed size of all compressed frames
+     */
+    double ratio() {
+        final long uncompressed = uncompressedBytes.getCount();
+        return uncompressed == 0 ? 1.0 : (double) compressedBytes.getCount() / uncompressed;
+    }
+}
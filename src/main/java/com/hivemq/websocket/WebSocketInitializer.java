@@ -17,18 +17,24 @@ package com.hivemq.websocket;
 
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Joiner;
+import com.hivemq.configuration.service.InternalConfigurations;
+import com.hivemq.configuration.service.entity.WebsocketCompression;
 import com.hivemq.configuration.service.entity.WebsocketListener;
 import com.hivemq.extension.sdk.api.annotations.NotNull;
+import com.hivemq.extension.sdk.api.annotations.Nullable;
+import com.hivemq.metrics.MetricsHolder;
 import io.netty.channel.Channel;
 import io.netty.handler.codec.http.HttpObjectAggregator;
 import io.netty.handler.codec.http.HttpServerCodec;
 import io.netty.handler.codec.http.websocketx.WebSocketServerProtocolHandler;
+import io.netty.handler.codec.http.websocketx.extensions.WebSocketServerExtensionHandler;
 
 import static com.hivemq.bootstrap.netty.ChannelHandlerNames.HTTP_OBJECT_AGGREGATOR;
 import static com.hivemq.bootstrap.netty.ChannelHandlerNames.HTTP_SERVER_CODEC;
 import static com.hivemq.bootstrap.netty.ChannelHandlerNames.MQTT_WEBSOCKET_ENCODER;
 import static com.hivemq.bootstrap.netty.ChannelHandlerNames.WEBSOCKET_BINARY_FRAME_HANDLER;
 import static com.hivemq.bootstrap.netty.ChannelHandlerNames.WEBSOCKET_CONTINUATION_FRAME_HANDLER;
+import static com.hivemq.bootstrap.netty.ChannelHandlerNames.WEBSOCKET_SERVER_EXTENSION_HANDLER;
 import static com.hivemq.bootstrap.netty.ChannelHandlerNames.WEBSOCKET_SERVER_PROTOCOL_HANDLER;
 import static com.hivemq.bootstrap.netty.ChannelHandlerNames.WEBSOCKET_TEXT_FRAME_HANDLER;
 
@@ -41,8 +47,12 @@ public class WebSocketInitializer {
 
     public static final int WEBSOCKET_MAX_CONTENT_LENGTH = 65536;
     private final WebsocketListener websocketListener;
-    public WebSocketInitializer(final WebsocketListener websocketListener) {
+    private final @Nullable WebSocketCompressionMetrics compressionMetrics;
+    public WebSocketInitializer(final WebsocketListener websocketListener, final MetricsHolder metricsHolder) {
         this.websocketListener = websocketListener;
+        compressionMetrics = websocketListener.getCompression().isEnabled() ?
+                new WebSocketCompressionMetrics(metricsHolder.getMetricRegistry(), websocketListener.getName()) :
+                null;
     }
 
     public void addHandlers(final Channel ch, final @NotNull String handlerBefore) {
@@ -53,9 +63,21 @@ public class WebSocketInitializer {
                         new HttpObjectAggregator(WEBSOCKET_MAX_CONTENT_LENGTH));
         final String webSocketPath = websocketListener.getPath();
         final String subprotocols = getSubprotocolString();
-        final boolean allowExtensions = websocketListener.getAllowExtensions();
+        final WebsocketCompression compression = websocketListener.getCompression();
+        String protocolHandlerBefore = HTTP_OBJECT_AGGREGATOR;
+        if (compressionMetrics != null) {
+            ch.pipeline()
+                    .addAfter(HTTP_OBJECT_AGGREGATOR,
+                            WEBSOCKET_SERVER_EXTENSION_HANDLER,
+                            new WebSocketServerExtensionHandler(new WebSocketCompressionHandshaker(compression,
+                                    compressionMetrics)));
+            protocolHandlerBefore = WEBSOCKET_SERVER_EXTENSION_HANDLER;
+        }
+        // the extension handler only negotiates the extensions it was created with, the protocol handler must not
+        // reject the reserved bits they use
+        final boolean allowExtensions = websocketListener.getAllowExtensions() || compression.isEnabled();
         ch.pipeline()
-                .addAfter(HTTP_OBJECT_AGGREGATOR,
+                .addAfter(protocolHandlerBefore,
                         WEBSOCKET_SERVER_PROTOCOL_HANDLER,
                         new WebSocketServerProtocolHandler(webSocketPath,
                                 subprotocols,
@@ -73,7 +95,11 @@ public class WebSocketInitializer {
                 .addAfter(WEBSOCKET_BINARY_FRAME_HANDLER,
                         WEBSOCKET_TEXT_FRAME_HANDLER,
                         new WebSocketTextFrameHandler());
-        ch.pipeline().addAfter(WEBSOCKET_TEXT_FRAME_HANDLER, MQTT_WEBSOCKET_ENCODER, new MQTTWebsocketEncoder());
+        final int maxFrameSize = InternalConfigurations.WEBSOCKET_FRAME_COALESCING_MAX_BYTES.get();
+        ch.pipeline()
+                .addAfter(WEBSOCKET_TEXT_FRAME_HANDLER,
+                        MQTT_WEBSOCKET_ENCODER,
+                        maxFrameSize > 0 ? new MQTTWebsocketFrameCoalescer(maxFrameSize) : new MQTTWebsocketEncoder());
     }
 
     /**
@@ -0,0 +1,65 @@
+/*
+ * Copyright 2019-present HiveMQ GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hivemq.bootstrap.netty;
+
+import io.netty.channel.embedded.EmbeddedChannel;
+import org.junit.Test;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class AutoReadGateTest {
+
+    private final EmbeddedChannel channel = new EmbeddedChannel();
+
+    @Test
+    public void test_same_gate_per_channel() {
+        assertSame(AutoReadGate.of(channel), AutoReadGate.of(channel));
+    }
+
+    @Test
+    public void test_reads_again_when_all_reasons_resumed() {
+        final AutoReadGate gate = AutoReadGate.of(channel);
+        gate.pause(AutoReadGate.Reason.OVERLOAD_PROTECTION);
+        gate.pause(AutoReadGate.Reason.RATE_LIMIT);
+        assertFalse(channel.config().isAutoRead());
+
+        gate.resume(AutoReadGate.Reason.RATE_LIMIT);
+        assertFalse(channel.config().isAutoRead());
+        assertTrue(gate.isPaused(AutoReadGate.Reason.OVERLOAD_PROTECTION));
+
+        gate.resume(AutoReadGate.Reason.OVERLOAD_PROTECTION);
+        assertTrue(channel.config().isAutoRead());
+    }
+
+    @Test
+    public void test_resume_of_other_reason_keeps_paused() {
+        final AutoReadGate gate = AutoReadGate.of(channel);
+        gate.pause(AutoReadGate.Reason.SUBSCRIBE_BARRIER);
+        gate.resume(AutoReadGate.Reason.CONNECT_BARRIER);
+        assertFalse(channel.config().isAutoRead());
+    }
+
+    @Test
+    public void test_pause_twice_needs_one_resume() {
+        final AutoReadGate gate = AutoReadGate.of(channel);
+        gate.pause(AutoReadGate.Reason.CONNECT_BARRIER);
+        gate.pause(AutoReadGate.Reason.CONNECT_BARRIER);
+        gate.resume(AutoReadGate.Reason.CONNECT_BARRIER);
+        assertTrue(channel.config().isAutoRead());
+    }
+}
@@ -26,6 +26,7 @@ import com.hivemq.extensions.handler.ClientLifecycleEventHandler;
 import com.hivemq.extensions.handler.IncomingPublishHandler;
 import com.hivemq.extensions.handler.IncomingSubscribeHandler;
 import com.hivemq.extensions.handler.PluginInitializerHandler;
+import com.hivemq.limitation.OverloadProtection;
 import com.hivemq.logging.EventLog;
 import com.hivemq.metrics.MetricsHolder;
 import com.hivemq.metrics.handler.GlobalMQTTMessageCounter;
@@ -39,10 +40,13 @@ import com.hivemq.mqtt.handler.connect.NoConnectIdleHandler;
 import com.hivemq.mqtt.handler.disconnect.DisconnectHandler;
 import com.hivemq.mqtt.handler.disconnect.MqttServerDisconnector;
 import com.hivemq.mqtt.handler.ping.PingRequestHandler;
+import com.hivemq.mqtt.handler.publish.FlushMetrics;
 import com.hivemq.mqtt.handler.publish.MessageExpiryHandler;
 import com.hivemq.mqtt.handler.subscribe.SubscribeHandler;
 import com.hivemq.mqtt.handler.unsubscribe.UnsubscribeHandler;
+import com.hivemq.mqtt.services.SharedSubscriptionDispatcher;
 import com.hivemq.security.ssl.SslParameterHandler;
+import com.hivemq.throttling.ThrottledClients;
 import io.netty.channel.group.ChannelGroup;
 import io.netty.handler.traffic.GlobalTrafficShapingHandler;
 import org.junit.Before;
@@ -83,6 +87,10 @@ public class ChannelDependenciesTest {
     private final @NotNull InterceptorHandler interceptorHandler = mock();
     private final @NotNull GlobalMQTTMessageCounter globalMQTTMessageCounter = mock();
     private final @NotNull ShutdownHooks shutdownHooks = mock();
+    private final @NotNull SharedSubscriptionDispatcher sharedSubscriptionDispatcher = mock();
+    private final @NotNull OverloadProtection overloadProtection = mock();
+    private final @NotNull ThrottledClients throttledClients = mock();
+    private final @NotNull FlushMetrics flushMetrics = mock();
     private @NotNull ChannelDependencies channelDependencies;
     @Before
     public void setUp() throws Exception {
@@ -115,7 +123,11 @@ public class ChannelDependenciesTest {
                 mqttServerDisconnector,
                 interceptorHandler,
                 globalMQTTMessageCounter,
-                shutdownHooks);
+                shutdownHooks,
+                sharedSubscriptionDispatcher,
+                overloadProtection,
+                throttledClients,
+                flushMetrics);
     }
 
     @Test
@@ -148,5 +160,8 @@ public class ChannelDependenciesTest {
         assertNotNull(channelDependencies.getMqttServerDisconnector());
         assertNotNull(channelDependencies.getInterceptorHandler());
         assertNotNull(channelDependencies.getGlobalMQTTMessageCounter());
+        assertNotNull(channelDependencies.getOverloadProtection());
+        assertNotNull(channelDependencies.getThrottledClients());
+        assertNotNull(channelDependencies.createAdaptiveFlushHandler());
     }
 }
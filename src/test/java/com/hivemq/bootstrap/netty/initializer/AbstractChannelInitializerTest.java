@@ -20,6 +20,7 @@ import com.hivemq.bootstrap.UndefinedClientConnection;
 import com.hivemq.bootstrap.netty.ChannelDependencies;
 import com.hivemq.common.shutdown.ShutdownHooks;
 import com.hivemq.configuration.service.FullConfigurationService;
+import com.hivemq.configuration.service.InternalConfigurations;
 import com.hivemq.configuration.service.MqttConfigurationService;
 import com.hivemq.configuration.service.RestrictionsConfigurationService;
 import com.hivemq.configuration.service.entity.Listener;
@@ -27,6 +28,7 @@ import com.hivemq.extension.sdk.api.annotations.NotNull;
 import com.hivemq.logging.EventLog;
 import com.hivemq.mqtt.handler.disconnect.MqttServerDisconnector;
 import com.hivemq.mqtt.handler.disconnect.MqttServerDisconnectorImpl;
+import com.hivemq.mqtt.handler.publish.AdaptiveFlushHandler;
 import com.hivemq.security.exception.SslException;
 import io.netty.channel.Channel;
 import io.netty.channel.ChannelFutureListener;
@@ -46,6 +48,7 @@ import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
 
+import static com.hivemq.bootstrap.netty.ChannelHandlerNames.FLUSH_CONSOLIDATION_HANDLER;
 import static com.hivemq.bootstrap.netty.ChannelHandlerNames.GLOBAL_THROTTLING_HANDLER;
 import static com.hivemq.bootstrap.netty.ChannelHandlerNames.MQTT_MESSAGE_BARRIER;
 import static com.hivemq.bootstrap.netty.ChannelHandlerNames.MQTT_MESSAGE_DECODER;
@@ -102,6 +105,25 @@ public class AbstractChannelInitializerTest {
         verify(pipeline).addLast(eq(MQTT_MESSAGE_BARRIER), any(ChannelHandler.class));
     }
 
+    @Test
+    public void test_init_channel_flush_consolidation_disabled_by_default() throws Exception {
+        abstractChannelInitializer.initChannel(socketChannel);
+        verify(pipeline, never()).addLast(eq(FLUSH_CONSOLIDATION_HANDLER), any(ChannelHandler.class));
+    }
+
+    @Test
+    public void test_init_channel_flush_consolidation() throws Exception {
+        InternalConfigurations.FLUSH_CONSOLIDATION_ENABLED.set(true);
+        try {
+            when(channelDependencies.createAdaptiveFlushHandler()).thenReturn(mock(AdaptiveFlushHandler.class));
+            abstractChannelInitializer = new TestAbstractChannelInitializer(channelDependencies);
+            abstractChannelInitializer.initChannel(socketChannel);
+            verify(pipeline).addLast(eq(FLUSH_CONSOLIDATION_HANDLER), any(AdaptiveFlushHandler.class));
+        } finally {
+            InternalConfigurations.FLUSH_CONSOLIDATION_ENABLED.set(false);
+        }
+    }
+
     @Test
     public void test_init_channel_with_throttling() throws Exception {
         when(restrictionsConfigurationService.incomingLimit()).thenReturn(1000L);
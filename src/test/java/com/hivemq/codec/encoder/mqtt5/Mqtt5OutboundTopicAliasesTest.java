@@ -0,0 +1,100 @@
+/*
+ * Copyright 2019-present HiveMQ GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hivemq.codec.encoder.mqtt5;
+
+import com.hivemq.limitation.TopicAliasLimiter;
+import org.junit.Before;
+import org.junit.Test;
+
+import static com.hivemq.mqtt.message.publish.PUBLISH.DEFAULT_NO_TOPIC_ALIAS;
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class Mqtt5OutboundTopicAliasesTest {
+
+    private TopicAliasLimiter topicAliasLimiter;
+    private Mqtt5OutboundTopicAliases topicAliases;
+
+    @Before
+    public void setUp() throws Exception {
+        topicAliasLimiter = mock(TopicAliasLimiter.class);
+        when(topicAliasLimiter.outboundAliasesAvailable()).thenReturn(true);
+        topicAliases = new Mqtt5OutboundTopicAliases(2, topicAliasLimiter);
+    }
+
+    @Test
+    public void test_short_topic_no_alias() {
+        assertEquals(DEFAULT_NO_TOPIC_ALIAS, topicAliases.propose("short"));
+    }
+
+    @Test
+    public void test_alias_only_known_after_assign() {
+        final int alias = topicAliases.propose("topic/one");
+        assertEquals(1, alias);
+        assertEquals(DEFAULT_NO_TOPIC_ALIAS, topicAliases.get("topic/one"));
+
+        topicAliases.assign("topic/one", alias);
+        assertEquals(1, topicAliases.get("topic/one"));
+        verify(topicAliasLimiter).addOutboundUsage("topic/one");
+    }
+
+    @Test
+    public void test_least_recently_used_alias_reassigned() {
+        topicAliases.assign("topic/one", topicAliases.propose("topic/one"));
+        topicAliases.assign("topic/two", topicAliases.propose("topic/two"));
+        // topic/one is now more recently used than topic/two
+        assertEquals(1, topicAliases.get("topic/one"));
+
+        final int alias = topicAliases.propose("topic/three");
+        assertEquals(2, alias);
+        topicAliases.assign("topic/three", alias);
+
+        assertEquals(2, topicAliases.size());
+        assertEquals(DEFAULT_NO_TOPIC_ALIAS, topicAliases.get("topic/two"));
+        assertEquals(2, topicAliases.get("topic/three"));
+        verify(topicAliasLimiter).removeOutboundUsage("topic/two");
+    }
+
+    @Test
+    public void test_no_alias_when_global_limit_exceeded() {
+        when(topicAliasLimiter.outboundAliasesAvailable()).thenReturn(false);
+        assertEquals(DEFAULT_NO_TOPIC_ALIAS, topicAliases.propose("topic/one"));
+    }
+
+    @Test
+    public void test_release() {
+        topicAliases.assign("topic/one", topicAliases.propose("topic/one"));
+        topicAliases.release();
+
+        assertEquals(0, topicAliases.size());
+        verify(topicAliasLimiter).removeOutboundUsage("topic/one");
+    }
+
+    @Test
+    public void test_no_alias_after_release() {
+        topicAliases.release();
+
+        assertEquals(DEFAULT_NO_TOPIC_ALIAS, topicAliases.propose("topic/one"));
+        topicAliases.assign("topic/one", 1);
+
+        assertEquals(0, topicAliases.size());
+        assertEquals(DEFAULT_NO_TOPIC_ALIAS, topicAliases.get("topic/one"));
+        verify(topicAliasLimiter, never()).addOutboundUsage("topic/one");
+    }
+}
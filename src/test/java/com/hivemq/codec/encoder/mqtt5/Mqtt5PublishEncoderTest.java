@@ -15,15 +15,23 @@
  */
 package com.hivemq.codec.encoder.mqtt5;
 
+import com.codahale.metrics.MetricRegistry;
 import com.google.common.collect.ImmutableList;
+import com.google.common.primitives.ImmutableIntArray;
 import com.hivemq.bootstrap.ClientConnection;
 import com.hivemq.configuration.HivemqId;
 import com.hivemq.configuration.entity.mqtt.MqttConfigurationDefaults;
+import com.hivemq.extension.sdk.api.annotations.NotNull;
+import com.hivemq.limitation.MemoryGovernor;
+import com.hivemq.limitation.TopicAliasLimiterImpl;
+import com.hivemq.metrics.HiveMQMetrics;
 import com.hivemq.mqtt.message.QoS;
 import com.hivemq.mqtt.message.mqtt5.Mqtt5UserProperties;
 import com.hivemq.mqtt.message.mqtt5.MqttUserProperty;
 import com.hivemq.mqtt.message.publish.PUBLISH;
+import com.hivemq.mqtt.message.publish.PUBLISHFactory;
 import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
 import io.netty.buffer.Unpooled;
 import org.junit.Before;
 import org.junit.Test;
@@ -37,7 +45,11 @@ import static com.hivemq.codec.encoder.mqtt5.MqttVariableByteInteger.MAXIMUM_PAC
 import static com.hivemq.mqtt.message.mqtt5.MessageProperties.CORRELATION_DATA;
 import static com.hivemq.mqtt.message.mqtt5.MessageProperties.PAYLOAD_FORMAT_INDICATOR;
 import static com.hivemq.mqtt.message.mqtt5.Mqtt5UserProperties.NO_USER_PROPERTIES;
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.mockito.Mockito.mock;
 
 /**
  * @author Florian Limpöck
@@ -743,6 +755,71 @@ public class Mqtt5PublishEncoderTest extends AbstractMqtt5EncoderTest {
         encodeTestBufferSize(expected, publish);
     }
 
+    @Test
+    public void test_encode_outboundTopicAlias() {
+        final MetricRegistry metricRegistry = new MetricRegistry();
+        final TopicAliasLimiterImpl topicAliasLimiter = new TopicAliasLimiterImpl(metricRegistry,
+                mock(MemoryGovernor.class));
+        clientConnection.setOutboundTopicAliases(new Mqtt5OutboundTopicAliases(1, topicAliasLimiter));
+        final byte[] expectedFirst = {
+                // fixed header
+                // type, flags
+                0b0011_0000,
+                // remaining length
+                20,
+                // variable header
+                // topic name
+                0, 11, 't', 'o', 'p', 'i', 'c', '/', 'a', 'l', 'i', 'a', 's',
+                // properties
+                5,
+                // payload format indicator
+                0x01, 0,
+                // topic alias
+                0x23, 0, 1,
+                // payload
+                1};
+        final byte[] expectedSecond = {
+                // fixed header
+                // type, flags
+                0b0011_0000,
+                // remaining length
+                9,
+                // variable header
+                // topic name
+                0, 0,
+                // properties
+                5,
+                // payload format indicator
+                0x01, 0,
+                // topic alias
+                0x23, 0, 1,
+                // payload
+                1};
+        encodeTestBufferSize(expectedFirst, createAliasPublish());
+        encodeTestBufferSize(expectedSecond, createAliasPublish());
+        // 13 bytes topic - 2 bytes empty topic - 3 bytes topic alias property
+        assertEquals(8, metricRegistry.counter(HiveMQMetrics.TOPIC_ALIAS_OUTBOUND_BYTES_SAVED.name()).getCount());
+    }
+
+    private @NotNull PUBLISH createAliasPublish() {
+        return TestMessageUtil.createMqtt5Publish(hiveMQId.get(),
+                "topic/alias",
+                new byte[]{1},
+                QoS.AT_MOST_ONCE,
+                QoS.AT_MOST_ONCE,
+                false,
+                MqttConfigurationDefaults.MAX_EXPIRY_INTERVAL_DEFAULT,
+                Mqtt5PayloadFormatIndicator.UNSPECIFIED,
+                null,
+                null,
+                null,
+                NO_USER_PROPERTIES,
+                -1,
+                false,
+                true,
+                null);
+    }
+
     @Test
     public void test_encode_qos() {
         final byte[] expectedQos0 = {
@@ -897,4 +974,72 @@ public class Mqtt5PublishEncoderTest extends AbstractMqtt5EncoderTest {
         assertEquals(0, buf.readableBytes());
         expected.release();
     }
+
+    @Test
+    public void test_encode_copies_share_core() {
+        ClientConnection.of(channel).setMaxPacketSizeSend((long) MAXIMUM_PACKET_SIZE_LIMIT);
+        final PUBLISH publish = TestMessageUtil.createFullMqtt5Publish();
+        final PUBLISH first = new PUBLISHFactory.Mqtt5Builder().fromPublish(publish)
+                .withQoS(QoS.AT_LEAST_ONCE)
+                .withPacketIdentifier(1)
+                .withSubscriptionIdentifiers(ImmutableIntArray.of(5))
+                .build();
+        final PUBLISH second = new PUBLISHFactory.Mqtt5Builder().fromPublish(publish)
+                .withQoS(QoS.EXACTLY_ONCE)
+                .withPacketIdentifier(2)
+                .withDuplicateDelivery(true)
+                .withMessageExpiryInterval(10)
+                .withSubscriptionIdentifiers(ImmutableIntArray.of(300, 7))
+                .build();
+        // copies without the shared encoding are encoded from scratch
+        final byte[] firstExpected = encode(withoutSharedEncoding(first));
+        final byte[] secondExpected = encode(withoutSharedEncoding(second));
+
+        assertArrayEquals(firstExpected, encode(first));
+        assertNull(publish.getSharedEncoding().get(second));
+        assertArrayEquals(secondExpected, encode(second));
+        assertNotNull(publish.getSharedEncoding().get(second));
+        assertArrayEquals(firstExpected, encode(first));
+    }
+
+    @Test
+    public void test_encode_copy_with_other_topic_does_not_use_core() {
+        ClientConnection.of(channel).setMaxPacketSizeSend((long) MAXIMUM_PACKET_SIZE_LIMIT);
+        final PUBLISH publish = TestMessageUtil.createFullMqtt5Publish();
+        encode(publish);
+        encode(publish);
+        final PUBLISH otherTopic = new PUBLISHFactory.Mqtt5Builder().fromPublish(publish).withTopic("other").build();
+
+        assertNull(publish.getSharedEncoding().get(otherTopic));
+        assertArrayEquals(encode(withoutSharedEncoding(otherTopic)), encode(otherTopic));
+    }
+
+    private static @NotNull PUBLISH withoutSharedEncoding(final @NotNull PUBLISH copy) {
+        return new PUBLISHFactory.Mqtt5Builder().withHivemqId(copy.getHivemqId())
+                .withTopic(copy.getTopic())
+                .withPayload(copy.getPayload())
+                .withQoS(copy.getQoS())
+                .withOnwardQos(copy.getOnwardQoS())
+                .withRetain(copy.isRetain())
+                .withMessageExpiryInterval(copy.getMessageExpiryInterval())
+                .withPayloadFormatIndicator(copy.getPayloadFormatIndicator())
+                .withContentType(copy.getContentType())
+                .withResponseTopic(copy.getResponseTopic())
+                .withCorrelationData(copy.getCorrelationData())
+                .withUserProperties(copy.getUserProperties())
+                .withPacketIdentifier(copy.getPacketIdentifier())
+                .withDuplicateDelivery(copy.isDuplicateDelivery())
+                .withSubscriptionIdentifiers(copy.getSubscriptionIdentifiers())
+                .build();
+    }
+
+    private byte @NotNull [] encode(final @NotNull PUBLISH publish) {
+        channel.writeOutbound(publish);
+        final ByteBuf buf = channel.readOutbound();
+        try {
+            return ByteBufUtil.getBytes(buf);
+        } finally {
+            buf.release();
+        }
+    }
 }
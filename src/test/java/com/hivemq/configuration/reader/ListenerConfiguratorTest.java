@@ -16,10 +16,12 @@
 package com.hivemq.configuration.reader;
 
 import com.google.common.io.Files;
+import com.hivemq.configuration.service.entity.ClientRateLimits;
 import com.hivemq.configuration.service.entity.TcpListener;
 import com.hivemq.configuration.service.entity.Tls;
 import com.hivemq.configuration.service.entity.TlsTcpListener;
 import com.hivemq.configuration.service.entity.TlsWebsocketListener;
+import com.hivemq.configuration.service.entity.WebsocketCompression;
 import com.hivemq.configuration.service.entity.WebsocketListener;
 import org.junit.Test;
 
@@ -28,6 +30,7 @@ import java.io.File;
 import static java.nio.charset.StandardCharsets.UTF_8;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
@@ -214,6 +217,65 @@ public class ListenerConfiguratorTest extends AbstractConfigurationTest {
         assertFalse(websocketListener.getAllowExtensions());
     }
 
+    @Test
+    public void test_read_websocket_listener_compression() throws Exception {
+        final String contents = """
+                <hivemq>
+                    <listeners>
+                        <websocket-listener>
+                            <port>8000</port>
+                            <bind-address>0.0.0.0</bind-address>
+                            <compression>
+                                <compression-level>3</compression-level>
+                                <client-max-window-bits>10</client-max-window-bits>
+                                <minimum-size>512</minimum-size>
+                            </compression>
+                        </websocket-listener>
+                        <websocket-listener>
+                            <port>8001</port>
+                            <bind-address>0.0.0.0</bind-address>
+                        </websocket-listener>
+                    </listeners>
+                </hivemq>""";
+        Files.write(contents.getBytes(UTF_8), xmlFile);
+        reader.applyConfig();
+        final WebsocketCompression compression =
+                listenerConfigurationService.getWebsocketListeners().get(0).getCompression();
+        assertTrue(compression.isEnabled());
+        assertEquals(3, compression.getCompressionLevel());
+        assertEquals(10, compression.getClientMaxWindowBits());
+        assertEquals(512, compression.getMinimumSize());
+        assertFalse(listenerConfigurationService.getWebsocketListeners().get(1).getCompression().isEnabled());
+    }
+
+    @Test
+    public void test_read_listener_client_rate_limits() throws Exception {
+        final String contents = """
+                <hivemq>
+                    <listeners>
+                        <tcp-listener>
+                            <port>1883</port>
+                            <name>limited</name>
+                            <client-rate-limits>
+                                <publishes-per-second>100</publishes-per-second>
+                                <bytes-per-second>1024</bytes-per-second>
+                            </client-rate-limits>
+                        </tcp-listener>
+                        <tcp-listener>
+                            <port>1884</port>
+                            <name>unlimited</name>
+                        </tcp-listener>
+                    </listeners>
+                </hivemq>""";
+        Files.write(contents.getBytes(UTF_8), xmlFile);
+        reader.applyConfig();
+        final ClientRateLimits clientRateLimits = listenerConfigurationService.getClientRateLimits("limited");
+        assertNotNull(clientRateLimits);
+        assertEquals(100, clientRateLimits.getPublishesPerSecond());
+        assertEquals(1024, clientRateLimits.getBytesPerSecond());
+        assertNull(listenerConfigurationService.getClientRateLimits("unlimited"));
+    }
+
     @Test
     public void test_read_tls_websocket_listener() throws Exception {
         final String contents = """
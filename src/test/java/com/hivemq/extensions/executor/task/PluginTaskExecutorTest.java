@@ -16,6 +16,7 @@
 package com.hivemq.extensions.executor.task;
 
 import com.google.common.util.concurrent.SettableFuture;
+import com.hivemq.configuration.service.InternalConfigurations;
 import com.hivemq.extension.sdk.api.annotations.NotNull;
 import com.hivemq.extension.sdk.api.annotations.Nullable;
 import com.hivemq.extension.sdk.api.async.TimeoutFallback;
@@ -35,6 +36,7 @@ import java.util.concurrent.atomic.AtomicLong;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
 import static org.mockito.Mockito.mock;
 
 /**
@@ -192,6 +194,50 @@ public class PluginTaskExecutorTest {
         assertTrue(latch.await(30, TimeUnit.SECONDS));
     }
 
+    @Test(timeout = 5000)
+    public void test_virtual_threads_tasks_for_same_client_are_executed_in_order() throws Exception {
+        final PluginTaskExecutor virtualExecutor = virtualThreadExecutor();
+        try {
+            final int tries = 1000;
+            final CountDownLatch latch = new CountDownLatch(tries);
+            for (int i = 0; i < tries; i++) {
+                addTask(virtualExecutor, latch, "clientid", i % 2 == 0, i, executionOrder, 0, classloader);
+            }
+            assertTrue(latch.await(30, TimeUnit.SECONDS));
+            assertEquals(tries, executionOrder.size());
+            for (int i = 0; i < tries; i++) {
+                assertEquals(i, executionOrder.get(i).intValue());
+            }
+        } finally {
+            virtualExecutor.stop();
+        }
+    }
+
+    @Test(timeout = 5000)
+    public void test_virtual_threads_blocking_task_does_not_block_other_clients() throws Exception {
+        final PluginTaskExecutor virtualExecutor = virtualThreadExecutor();
+        try {
+            final CountDownLatch release = new CountDownLatch(1);
+            final CountDownLatch blockedDone = new CountDownLatch(1);
+            final PluginTaskExecution<TestPluginTaskInput, DefaultPluginTaskOutput> blockingTask =
+                    new PluginTaskExecution<>(new TestPluginInContext("blocked"),
+                            TestPluginTaskInput::new,
+                            null,
+                            new BlockingPluginInTask(release, blockedDone, classloader));
+            virtualExecutor.handlePluginTaskExecution(blockingTask);
+            final CountDownLatch latch = new CountDownLatch(100);
+            for (int i = 0; i < 100; i++) {
+                addInTask(virtualExecutor, latch, "client" + i, false, i, executionOrder, 0, classloader);
+            }
+            assertTrue(latch.await(30, TimeUnit.SECONDS));
+            assertEquals(1, blockedDone.getCount());
+            release.countDown();
+            assertTrue(blockedDone.await(30, TimeUnit.SECONDS));
+        } finally {
+            virtualExecutor.stop();
+        }
+    }
+
     @Test(timeout = 5000)
     public void test_out_task_is_executed() throws Exception {
         final CountDownLatch latch = new CountDownLatch(1);
@@ -429,6 +475,19 @@ public class PluginTaskExecutorTest {
         assertTrue(latch.await(30, TimeUnit.SECONDS));
     }
 
+    private static @NotNull PluginTaskExecutor virtualThreadExecutor() {
+        InternalConfigurations.EXTENSION_EXECUTOR_VIRTUAL_THREADS_ENABLED.set(true);
+        final PluginTaskExecutor virtualExecutor;
+        try {
+            virtualExecutor = new PluginTaskExecutor(new AtomicLong(0));
+        } finally {
+            InternalConfigurations.EXTENSION_EXECUTOR_VIRTUAL_THREADS_ENABLED.set(false);
+        }
+        assumeTrue(virtualExecutor.isVirtualThreads());
+        virtualExecutor.postConstruct();
+        return virtualExecutor;
+    }
+
     private static void addTask(
             final PluginTaskExecutor pluginTaskExecutor,
             @NotNull final CountDownLatch latch,
@@ -753,6 +812,36 @@ public class PluginTaskExecutorTest {
         }
     }
 
+    private static class BlockingPluginInTask implements PluginInTask<TestPluginTaskInput> {
+
+        private final @NotNull CountDownLatch release;
+        private final @NotNull CountDownLatch done;
+        private final @NotNull IsolatedExtensionClassloader classloader;
+        BlockingPluginInTask(
+                final @NotNull CountDownLatch release,
+                final @NotNull CountDownLatch done,
+                final @NotNull IsolatedExtensionClassloader classloader) {
+            this.release = release;
+            this.done = done;
+            this.classloader = classloader;
+        }
+
+        @Override
+        public void accept(final @NotNull TestPluginTaskInput testPluginTaskInput) {
+            try {
+                release.await();
+                done.countDown();
+            } catch (final InterruptedException ignored) {
+                // ignore
+            }
+        }
+
+        @Override
+        public @NotNull IsolatedExtensionClassloader getPluginClassLoader() {
+            return classloader;
+        }
+    }
+
     private static class TestPluginInOutexceptionTask extends TestPluginInOutTask {
 
         TestPluginInOutexceptionTask(
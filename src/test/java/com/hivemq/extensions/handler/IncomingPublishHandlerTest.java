@@ -654,6 +654,14 @@ public class IncomingPublishHandlerTest {
                 final long currentMemory,
                 final long maxMemory) {
         }
+
+        @Override
+        public void retainedMemoryExceeded(
+                final @NotNull String topic,
+                final int qos,
+                final long currentMemory,
+                final long maxMemory) {
+        }
     }
 
     private static class TestAuthService implements PluginAuthorizerService {
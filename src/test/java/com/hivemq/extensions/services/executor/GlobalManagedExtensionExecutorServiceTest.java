@@ -15,13 +15,23 @@
  */
 package com.hivemq.extensions.services.executor;
 
+import com.codahale.metrics.MetricRegistry;
 import com.hivemq.common.shutdown.ShutdownHooks;
 import com.hivemq.configuration.service.InternalConfigurations;
 import com.hivemq.extension.sdk.api.annotations.NotNull;
+import com.hivemq.metrics.HiveMQMetrics;
+import com.hivemq.util.VirtualThreads;
+import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
 import static org.mockito.Mockito.mock;
 
 /**
@@ -31,11 +41,17 @@ public class GlobalManagedExtensionExecutorServiceTest {
 
     private @NotNull GlobalManagedExtensionExecutorService managedPluginExecutorService;
     private final @NotNull ShutdownHooks shutdownHooks = mock(ShutdownHooks.class);
+    private final @NotNull MetricRegistry metricRegistry = new MetricRegistry();
     @Before
     public void setUp() throws Exception {
         InternalConfigurations.MANAGED_EXTENSION_THREAD_POOL_KEEP_ALIVE_SEC.set(60);
         InternalConfigurations.MANAGED_EXTENSION_THREAD_POOL_THREADS_COUNT.set(4);
-        managedPluginExecutorService = new GlobalManagedExtensionExecutorService(shutdownHooks);
+        managedPluginExecutorService = new GlobalManagedExtensionExecutorService(shutdownHooks, metricRegistry);
+    }
+
+    @After
+    public void tearDown() {
+        InternalConfigurations.EXTENSION_EXECUTOR_VIRTUAL_THREADS_ENABLED.set(false);
     }
 
     @Test
@@ -45,5 +61,31 @@ public class GlobalManagedExtensionExecutorServiceTest {
         assertEquals(60, managedPluginExecutorService.getKeepAliveSeconds());
         assertEquals(0, managedPluginExecutorService.getCurrentPoolSize());
         assertEquals(Integer.MAX_VALUE, managedPluginExecutorService.getMaxPoolSize());
+        assertFalse(managedPluginExecutorService.isVirtualThreads());
+    }
+
+    @Test(timeout = 10_000)
+    public void test_virtual_threads_not_bounded_by_pool_size() throws Exception {
+        assumeTrue(VirtualThreads.isSupported());
+        InternalConfigurations.EXTENSION_EXECUTOR_VIRTUAL_THREADS_ENABLED.set(true);
+        managedPluginExecutorService.postConstruct();
+        assertTrue(managedPluginExecutorService.isVirtualThreads());
+
+        final CountDownLatch running = new CountDownLatch(10);
+        final CountDownLatch release = new CountDownLatch(1);
+        for (int i = 0; i < 10; i++) {
+            managedPluginExecutorService.submit(() -> {
+                running.countDown();
+                release.await();
+                return null;
+            });
+        }
+        // more blocking tasks than the 4 threads of the platform pool run at the same time
+        assertTrue(running.await(5, TimeUnit.SECONDS));
+        assertEquals(10,
+                metricRegistry.getGauges().get(HiveMQMetrics.EXTENSION_EXECUTOR_ACTIVE_TASKS.name()).getValue());
+        release.countDown();
+        managedPluginExecutorService.shutdown();
+        assertTrue(managedPluginExecutorService.awaitTermination(5, TimeUnit.SECONDS));
     }
 }
@@ -15,6 +15,7 @@
  */
 package com.hivemq.extensions.services.executor;
 
+import com.codahale.metrics.MetricRegistry;
 import com.hivemq.common.shutdown.ShutdownHooks;
 import com.hivemq.configuration.service.InternalConfigurations;
 import com.hivemq.extension.sdk.api.annotations.NotNull;
@@ -67,7 +68,8 @@ public class ManagedExecutorServicePerExtensionTest {
         InternalConfigurations.MANAGED_EXTENSION_THREAD_POOL_KEEP_ALIVE_SEC.set(60);
         InternalConfigurations.MANAGED_EXTENSION_THREAD_POOL_THREADS_COUNT.set(4);
         when(hiveMQExtensions.getExtensionForClassloader(classLoader)).thenReturn(extension);
-        globalManagedPluginExecutorService = new GlobalManagedExtensionExecutorService(shutdownHooks);
+        globalManagedPluginExecutorService =
+                new GlobalManagedExtensionExecutorService(shutdownHooks, new MetricRegistry());
         globalManagedPluginExecutorService.postConstruct();
         managedExecutorServicePerExtension = new ManagedExecutorServicePerExtension(globalManagedPluginExecutorService,
                 classLoader,
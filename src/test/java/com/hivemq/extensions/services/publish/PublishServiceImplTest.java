@@ -15,6 +15,7 @@
  */
 package com.hivemq.extensions.services.publish;
 
+import com.codahale.metrics.MetricRegistry;
 import com.google.common.primitives.ImmutableIntArray;
 import com.google.common.util.concurrent.Futures;
 import com.hivemq.common.shutdown.ShutdownHooks;
@@ -76,7 +77,7 @@ public class PublishServiceImplTest {
     public void setUp() throws Exception {
         when(rateLimitService.rateLimitExceeded()).thenReturn(false);
         final GlobalManagedExtensionExecutorService managedPluginExecutorService =
-                new GlobalManagedExtensionExecutorService(shutdownHooks);
+                new GlobalManagedExtensionExecutorService(shutdownHooks, new MetricRegistry());
         managedPluginExecutorService.postConstruct();
         publishService = new PublishServiceImpl(rateLimitService,
                 managedPluginExecutorService,
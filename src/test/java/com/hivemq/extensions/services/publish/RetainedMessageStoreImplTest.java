@@ -15,6 +15,7 @@
  */
 package com.hivemq.extensions.services.publish;
 
+import com.codahale.metrics.MetricRegistry;
 import com.google.common.collect.ImmutableList;
 import com.google.common.util.concurrent.Futures;
 import com.hivemq.common.shutdown.ShutdownHooks;
@@ -68,7 +69,7 @@ public class RetainedMessageStoreImplTest {
     @Before
     public void setUp() throws Exception {
         closeableMock = managedPluginExecutorService =
-                new GlobalManagedExtensionExecutorService(Mockito.mock(ShutdownHooks.class));
+                new GlobalManagedExtensionExecutorService(Mockito.mock(ShutdownHooks.class), new MetricRegistry());
         managedPluginExecutorService.postConstruct();
         retainedMessageStore = new RetainedMessageStoreImpl(retainedMessagePersistence,
                 managedPluginExecutorService,
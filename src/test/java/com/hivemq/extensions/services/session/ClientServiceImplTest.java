@@ -15,6 +15,7 @@
  */
 package com.hivemq.extensions.services.session;
 
+import com.codahale.metrics.MetricRegistry;
 import com.google.common.collect.Lists;
 import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
@@ -443,7 +444,7 @@ public class ClientServiceImplTest {
 
     @NotNull private GlobalManagedExtensionExecutorService getManagedExtensionExecutorService() {
         final GlobalManagedExtensionExecutorService globalManagedPluginExecutorService =
-                new GlobalManagedExtensionExecutorService(mock(ShutdownHooks.class));
+                new GlobalManagedExtensionExecutorService(mock(ShutdownHooks.class), new MetricRegistry());
         globalManagedPluginExecutorService.postConstruct();
         return globalManagedPluginExecutorService;
     }
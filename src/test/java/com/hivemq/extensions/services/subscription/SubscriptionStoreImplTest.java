@@ -15,6 +15,7 @@
  */
 package com.hivemq.extensions.services.subscription;
 
+import com.codahale.metrics.MetricRegistry;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Sets;
@@ -22,6 +23,7 @@ import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
 import com.google.common.util.concurrent.MoreExecutors;
 import com.hivemq.common.shutdown.ShutdownHooks;
+import com.hivemq.configuration.service.InternalConfigurations;
 import com.hivemq.extension.sdk.api.annotations.NotNull;
 import com.hivemq.extension.sdk.api.packets.general.Qos;
 import com.hivemq.extension.sdk.api.services.exception.DoNotImplementException;
@@ -46,6 +48,7 @@ import com.hivemq.mqtt.message.subscribe.Topic;
 import com.hivemq.mqtt.topic.tree.LocalTopicTree;
 import com.hivemq.persistence.clientsession.ClientSessionSubscriptionPersistence;
 import com.hivemq.persistence.clientsession.callback.SubscriptionResult;
+import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 import util.TestException;
@@ -93,10 +96,17 @@ public class SubscriptionStoreImplTest {
                 rateLimitService,
                 topicTree,
                 getManagedExtensionExecutorService(),
-                asyncIteratorFactory);
+                asyncIteratorFactory,
+                new MetricRegistry());
         when(rateLimitService.rateLimitExceeded()).thenReturn(false);
     }
 
+    @After
+    public void tearDown() {
+        InternalConfigurations.SUBSCRIPTION_STORE_STREAMING_ITERATION_ENABLED.set(false);
+        InternalConfigurations.SUBSCRIPTION_STORE_STREAMING_ITERATION_RATE.set(0);
+    }
+
     @Test(timeout = 10000)
     public void test_get_rate_limit_exceeded() {
         when(rateLimitService.rateLimitExceeded()).thenReturn(true);
@@ -735,6 +745,53 @@ public class SubscriptionStoreImplTest {
         latch.await();
     }
 
+    @Test(timeout = 10000)
+    public void test_streaming_iteration() throws Exception {
+        InternalConfigurations.SUBSCRIPTION_STORE_STREAMING_ITERATION_ENABLED.set(true);
+        InternalConfigurations.SUBSCRIPTION_STORE_STREAMING_ITERATION_RATE.set(20);
+        when(clientSessionSubscriptionPersistence.getAllLocalSubscribersIterator()).thenReturn(List.of(
+                Map.entry("client1", ImmutableSet.of(new Topic("topic1", QoS.AT_LEAST_ONCE))),
+                Map.entry("client2",
+                        ImmutableSet.of(new Topic("topic2", QoS.AT_LEAST_ONCE), new Topic("topic3", QoS.AT_MOST_ONCE))),
+                Map.entry("client3", ImmutableSet.of(new Topic("topic4", QoS.EXACTLY_ONCE)))).iterator());
+        final List<SubscriptionsForClientResult> items = new ArrayList<>();
+        subscriptionStore.iterateAllSubscriptions((context, value) -> items.add(value)).get();
+        assertEquals(3, items.size());
+        assertEquals("client2", items.get(1).getClientId());
+        assertEquals(2, items.get(1).getSubscriptions().size());
+        verify(clientSessionSubscriptionPersistence, never()).getAllLocalSubscribersChunk(any());
+        verify(asyncIteratorFactory, never()).createIterator(any(), any());
+    }
+
+    @Test(timeout = 10000)
+    public void test_streaming_iteration_abort() throws Exception {
+        InternalConfigurations.SUBSCRIPTION_STORE_STREAMING_ITERATION_ENABLED.set(true);
+        when(clientSessionSubscriptionPersistence.getAllLocalSubscribersIterator()).thenReturn(List.of(
+                Map.entry("client1", ImmutableSet.of(new Topic("topic1", QoS.AT_LEAST_ONCE))),
+                Map.entry("client2", ImmutableSet.of(new Topic("topic2", QoS.AT_LEAST_ONCE)))).iterator());
+        final AtomicInteger count = new AtomicInteger();
+        subscriptionStore.iterateAllSubscriptions((context, value) -> {
+            count.incrementAndGet();
+            context.abortIteration();
+        }).get();
+        assertEquals(1, count.get());
+    }
+
+    @Test(timeout = 10000, expected = RuntimeException.class)
+    public void test_streaming_iteration_exception() throws Throwable {
+        InternalConfigurations.SUBSCRIPTION_STORE_STREAMING_ITERATION_ENABLED.set(true);
+        when(clientSessionSubscriptionPersistence.getAllLocalSubscribersIterator()).thenReturn(List.of(Map.entry(
+                "client1",
+                ImmutableSet.of(new Topic("topic1", QoS.AT_LEAST_ONCE)))).iterator());
+        try {
+            subscriptionStore.iterateAllSubscriptions((context, value) -> {
+                throw new RuntimeException("test-exception");
+            }).get();
+        } catch (final ExecutionException e) {
+            throw e.getCause();
+        }
+    }
+
     @Test
     public void test_test_fetch_callback_conversion() {
         final SubscriptionStoreImpl.AllSubscribersFetchCallback fetchCallback =
@@ -797,7 +854,7 @@ public class SubscriptionStoreImplTest {
     }
     private @NotNull GlobalManagedExtensionExecutorService getManagedExtensionExecutorService() {
         final GlobalManagedExtensionExecutorService globalManagedPluginExecutorService =
-                new GlobalManagedExtensionExecutorService(mock(ShutdownHooks.class));
+                new GlobalManagedExtensionExecutorService(mock(ShutdownHooks.class), new MetricRegistry());
         globalManagedPluginExecutorService.postConstruct();
         return globalManagedPluginExecutorService;
     }
@@ -0,0 +1,129 @@
+/*
+ * Copyright 2019-present HiveMQ GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hivemq.limitation;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import com.hivemq.common.shutdown.ShutdownHooks;
+import com.hivemq.extension.sdk.api.annotations.NotNull;
+import com.hivemq.metrics.HiveMQMetrics;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+
+public class MemoryGovernorTest {
+
+    private final @NotNull MetricRegistry metricRegistry = new MetricRegistry();
+    private final @NotNull AtomicLong qos0Usage = new AtomicLong();
+    private final @NotNull AtomicLong topicAliasUsage = new AtomicLong();
+    private final @NotNull AtomicLong retainedUsage = new AtomicLong();
+    private final @NotNull AtomicLong sessionUsage = new AtomicLong();
+    private final @NotNull AtomicLong subscriptionUsage = new AtomicLong();
+    private @NotNull MemoryGovernor memoryGovernor;
+    @Before
+    public void setUp() throws Exception {
+        memoryGovernor = new MemoryGovernor(metricRegistry, mock(ShutdownHooks.class), 10_000);
+        memoryGovernor.register(MemoryConsumer.QOS_0_MESSAGES, qos0Usage::get);
+        memoryGovernor.register(MemoryConsumer.TOPIC_ALIASES, topicAliasUsage::get);
+        memoryGovernor.register(MemoryConsumer.RETAINED_MESSAGES, retainedUsage::get);
+        memoryGovernor.register(MemoryConsumer.CLIENT_SESSIONS, sessionUsage::get);
+        memoryGovernor.register(MemoryConsumer.SUBSCRIPTIONS, subscriptionUsage::get);
+    }
+
+    @Test
+    public void test_unused_share_is_lent_by_weight() {
+        retainedUsage.set(500);
+        sessionUsage.set(8_000);
+        subscriptionUsage.set(8_000);
+        memoryGovernor.rebalance();
+        assertEquals(0, memoryGovernor.getBudget(MemoryConsumer.QOS_0_MESSAGES));
+        assertEquals(500, memoryGovernor.getBudget(MemoryConsumer.RETAINED_MESSAGES));
+        assertEquals(9_500 / 35 * 20, memoryGovernor.getBudget(MemoryConsumer.CLIENT_SESSIONS));
+        assertEquals(9_500 / 35 * 15, memoryGovernor.getBudget(MemoryConsumer.SUBSCRIPTIONS));
+        // the retained messages stay within their weighted share, the overflow is caused by the other consumers
+        assertEquals(10_000 / 50 * 15, memoryGovernor.getLimit(MemoryConsumer.RETAINED_MESSAGES));
+        assertFalse(memoryGovernor.isShedding(MemoryConsumer.RETAINED_MESSAGES));
+        // consumers which are not sheddable never shed
+        assertFalse(memoryGovernor.isShedding(MemoryConsumer.CLIENT_SESSIONS));
+        assertFalse(memoryGovernor.isShedding(MemoryConsumer.SUBSCRIPTIONS));
+    }
+
+    @Test
+    public void test_only_consumer_over_its_limit_sheds() {
+        qos0Usage.set(6_000);
+        retainedUsage.set(500);
+        sessionUsage.set(3_000);
+        memoryGovernor.rebalance();
+        assertEquals(6_500, memoryGovernor.getLimit(MemoryConsumer.QOS_0_MESSAGES));
+        assertFalse(memoryGovernor.isShedding(MemoryConsumer.QOS_0_MESSAGES));
+
+        qos0Usage.set(7_000);
+        memoryGovernor.rebalance();
+        assertTrue(memoryGovernor.isShedding(MemoryConsumer.QOS_0_MESSAGES));
+        assertFalse(memoryGovernor.isShedding(MemoryConsumer.RETAINED_MESSAGES));
+        assertFalse(memoryGovernor.isShedding(MemoryConsumer.TOPIC_ALIASES));
+        assertFalse(memoryGovernor.isShedding(MemoryConsumer.CLIENT_SESSIONS));
+        assertEquals(1, metricRegistry.getGauges()
+                .get(MemoryConsumer.QOS_0_MESSAGES.getSheddingMetric().name())
+                .getValue());
+    }
+
+    @Test
+    public void test_shedding_released_below_threshold_of_limit() {
+        // the client sessions exceed the budget on their own, they can not shed
+        sessionUsage.set(9_000);
+        qos0Usage.set(4_000);
+        memoryGovernor.rebalance();
+        final long limit = 10_000 / 30 * 10;
+        assertEquals(limit, memoryGovernor.getLimit(MemoryConsumer.QOS_0_MESSAGES));
+        assertTrue(memoryGovernor.isShedding(MemoryConsumer.QOS_0_MESSAGES));
+
+        qos0Usage.set(limit - 100);
+        memoryGovernor.rebalance();
+        assertTrue(memoryGovernor.isShedding(MemoryConsumer.QOS_0_MESSAGES));
+
+        // released although the total usage still exceeds the budget
+        qos0Usage.set(limit / 2);
+        memoryGovernor.rebalance();
+        assertFalse(memoryGovernor.isShedding(MemoryConsumer.QOS_0_MESSAGES));
+    }
+
+    @Test
+    public void test_shed_counted() {
+        memoryGovernor.shed(MemoryConsumer.RETAINED_MESSAGES);
+        memoryGovernor.shed(MemoryConsumer.RETAINED_MESSAGES);
+        assertEquals(2, metricRegistry.counter(MemoryConsumer.RETAINED_MESSAGES.getShedMetric().name()).getCount());
+    }
+
+    @Test
+    public void test_usage_from_persistence_gauges() {
+        qos0Usage.set(1_000);
+        metricRegistry.register(HiveMQMetrics.QUEUED_MESSAGES_MEMORY_PERSISTENCE_TOTAL_SIZE.name(),
+                (Gauge<Long>) () -> 4_000L);
+        metricRegistry.register(HiveMQMetrics.CLIENT_SESSIONS_MEMORY_PERSISTENCE_TOTAL_SIZE.name(),
+                (Gauge<Long>) () -> 2_000L);
+        // the QoS 0 messages are part of the queue accounting and counted once
+        assertEquals(3_000, memoryGovernor.getUsage(MemoryConsumer.QUEUED_MESSAGES));
+        assertEquals(2_000, memoryGovernor.getUsage(MemoryConsumer.CLIENT_SESSIONS));
+        assertEquals(6_000, memoryGovernor.getTotalUsage());
+    }
+}
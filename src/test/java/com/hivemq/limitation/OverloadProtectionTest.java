@@ -0,0 +1,255 @@
+/*
+ * Copyright 2019-present HiveMQ GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hivemq.limitation;
+
+import com.codahale.metrics.MetricRegistry;
+import com.hivemq.bootstrap.ClientConnectionContext;
+import com.hivemq.bootstrap.ClientState;
+import com.hivemq.common.shutdown.ShutdownHooks;
+import com.hivemq.configuration.service.InternalConfigurations;
+import com.hivemq.extension.sdk.api.annotations.NotNull;
+import com.hivemq.logging.EventLog;
+import com.hivemq.metrics.HiveMQMetrics;
+import com.hivemq.persistence.SingleWriterService;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.embedded.EmbeddedChannel;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class OverloadProtectionTest {
+
+    private final @NotNull SingleWriterService singleWriterService = mock();
+    private final @NotNull AtomicLong extensionTaskCount = new AtomicLong();
+    private final @NotNull AtomicInteger heapUsagePercent = new AtomicInteger();
+    private final @NotNull EventLog eventLog = mock();
+    private final @NotNull MetricRegistry metricRegistry = new MetricRegistry();
+    private @NotNull OverloadProtection overloadProtection;
+    @Before
+    public void setUp() throws Exception {
+        InternalConfigurations.OVERLOAD_PROTECTION_ENABLED.set(true);
+        InternalConfigurations.OVERLOAD_PROTECTION_SINGLE_WRITER_TASKS_THRESHOLD.set(100);
+        InternalConfigurations.OVERLOAD_PROTECTION_EXTENSION_TASKS_THRESHOLD.set(100);
+        InternalConfigurations.OVERLOAD_PROTECTION_HEAP_USAGE_THRESHOLD_PERCENT.set(90);
+        InternalConfigurations.OVERLOAD_PROTECTION_RELEASE_THRESHOLD_PERCENT.set(70);
+        InternalConfigurations.OVERLOAD_PROTECTION_PAUSED_CLIENTS_PERCENT.set(50);
+        InternalConfigurations.OVERLOAD_PROTECTION_RESUMED_CLIENTS_PER_SAMPLE.set(1);
+        InternalConfigurations.OVERLOAD_PROTECTION_RECOVERY_CONNECTS_PER_SAMPLE.set(2);
+        overloadProtection = new OverloadProtection(singleWriterService,
+                extensionTaskCount,
+                eventLog,
+                metricRegistry,
+                mock(ShutdownHooks.class),
+                heapUsagePercent::get);
+    }
+
+    @After
+    public void tearDown() {
+        InternalConfigurations.OVERLOAD_PROTECTION_ENABLED.set(false);
+        InternalConfigurations.OVERLOAD_PROTECTION_SINGLE_WRITER_TASKS_THRESHOLD.set(200_000);
+        InternalConfigurations.OVERLOAD_PROTECTION_EXTENSION_TASKS_THRESHOLD.set(100_000);
+        InternalConfigurations.OVERLOAD_PROTECTION_HEAP_USAGE_THRESHOLD_PERCENT.set(90);
+        InternalConfigurations.OVERLOAD_PROTECTION_RELEASE_THRESHOLD_PERCENT.set(70);
+        InternalConfigurations.OVERLOAD_PROTECTION_PAUSED_CLIENTS_PERCENT.set(10);
+        InternalConfigurations.OVERLOAD_PROTECTION_RESUMED_CLIENTS_PER_SAMPLE.set(100);
+        InternalConfigurations.OVERLOAD_PROTECTION_RECOVERY_CONNECTS_PER_SAMPLE.set(10);
+    }
+
+    @Test
+    public void test_below_thresholds_normal() {
+        when(singleWriterService.getPendingTaskCount()).thenReturn(99L);
+        extensionTaskCount.set(99);
+        heapUsagePercent.set(89);
+        overloadProtection.sample();
+        assertEquals(OverloadProtectionState.NORMAL, overloadProtection.getState());
+        assertTrue(overloadProtection.admitConnect());
+    }
+
+    @Test
+    public void test_single_writer_backlog_overloaded() {
+        final EmbeddedChannel busy = connectedChannel();
+        final EmbeddedChannel quiet = connectedChannel();
+        busy.writeInbound(Unpooled.wrappedBuffer(new byte[100]));
+        quiet.writeInbound(Unpooled.wrappedBuffer(new byte[10]));
+        when(singleWriterService.getPendingTaskCount()).thenReturn(100L);
+        overloadProtection.sample();
+
+        assertEquals(OverloadProtectionState.OVERLOADED, overloadProtection.getState());
+        assertFalse(busy.config().isAutoRead());
+        assertTrue(quiet.config().isAutoRead());
+        assertFalse(overloadProtection.admitConnect());
+        assertEquals(1, metricRegistry.counter(HiveMQMetrics.OVERLOAD_PROTECTION_REJECTED_CONNECTS.name()).getCount());
+        assertEquals(1, metricRegistry.counter(HiveMQMetrics.OVERLOAD_PROTECTION_STATE_CHANGES.name()).getCount());
+        assertEquals(2, metricRegistry.getGauges().get(HiveMQMetrics.OVERLOAD_PROTECTION_LEVEL.name()).getValue());
+        assertEquals(1,
+                metricRegistry.getGauges().get(HiveMQMetrics.OVERLOAD_PROTECTION_PAUSED_CLIENTS.name()).getValue());
+        verify(eventLog).overloadProtectionStateChanged(OverloadProtectionState.NORMAL,
+                OverloadProtectionState.OVERLOADED,
+                1d);
+    }
+
+    @Test
+    public void test_extension_and_heap_backlog_overloaded() {
+        extensionTaskCount.set(100);
+        overloadProtection.sample();
+        assertEquals(OverloadProtectionState.OVERLOADED, overloadProtection.getState());
+
+        final OverloadProtection heapProtection = new OverloadProtection(singleWriterService,
+                new AtomicLong(),
+                eventLog,
+                new MetricRegistry(),
+                mock(ShutdownHooks.class),
+                () -> 95);
+        heapProtection.sample();
+        assertEquals(OverloadProtectionState.OVERLOADED, heapProtection.getState());
+    }
+
+    @Test
+    public void test_busiest_clients_only_counted_since_last_sample() {
+        final EmbeddedChannel first = connectedChannel();
+        final EmbeddedChannel second = connectedChannel();
+        first.writeInbound(Unpooled.wrappedBuffer(new byte[100]));
+        overloadProtection.sample();
+        second.writeInbound(Unpooled.wrappedBuffer(new byte[10]));
+        extensionTaskCount.set(100);
+        overloadProtection.sample();
+
+        assertTrue(first.config().isAutoRead());
+        assertFalse(second.config().isAutoRead());
+    }
+
+    @Test
+    public void test_release_gradually() {
+        final EmbeddedChannel first = connectedChannel();
+        final EmbeddedChannel second = connectedChannel();
+        first.writeInbound(Unpooled.wrappedBuffer(new byte[100]));
+        second.writeInbound(Unpooled.wrappedBuffer(new byte[10]));
+        extensionTaskCount.set(100);
+        overloadProtection.sample();
+        second.writeInbound(Unpooled.wrappedBuffer(new byte[10]));
+        overloadProtection.sample();
+        assertFalse(first.config().isAutoRead());
+        assertFalse(second.config().isAutoRead());
+
+        // above the release threshold
+        extensionTaskCount.set(70);
+        overloadProtection.sample();
+        assertEquals(OverloadProtectionState.OVERLOADED, overloadProtection.getState());
+
+        extensionTaskCount.set(69);
+        overloadProtection.sample();
+        assertEquals(OverloadProtectionState.RECOVERING, overloadProtection.getState());
+        assertTrue(first.config().isAutoRead());
+        assertFalse(second.config().isAutoRead());
+        assertTrue(overloadProtection.admitConnect());
+        assertTrue(overloadProtection.admitConnect());
+        assertFalse(overloadProtection.admitConnect());
+
+        overloadProtection.sample();
+        assertTrue(second.config().isAutoRead());
+        for (int i = 0; i < 4; i++) {
+            assertTrue(overloadProtection.admitConnect());
+        }
+        assertFalse(overloadProtection.admitConnect());
+
+        for (int i = 2; i < OverloadProtection.RECOVERY_SAMPLES; i++) {
+            overloadProtection.sample();
+            assertEquals(OverloadProtectionState.RECOVERING, overloadProtection.getState());
+        }
+        overloadProtection.sample();
+        assertEquals(OverloadProtectionState.NORMAL, overloadProtection.getState());
+        assertTrue(overloadProtection.admitConnect());
+        assertEquals(0, metricRegistry.getGauges().get(HiveMQMetrics.OVERLOAD_PROTECTION_LEVEL.name()).getValue());
+        assertEquals(3, metricRegistry.counter(HiveMQMetrics.OVERLOAD_PROTECTION_STATE_CHANGES.name()).getCount());
+    }
+
+    @Test
+    public void test_recovering_overloaded_again() {
+        extensionTaskCount.set(100);
+        overloadProtection.sample();
+        extensionTaskCount.set(0);
+        overloadProtection.sample();
+        assertEquals(OverloadProtectionState.RECOVERING, overloadProtection.getState());
+
+        // between the release threshold and the threshold the recovery continues
+        extensionTaskCount.set(80);
+        overloadProtection.sample();
+        assertEquals(OverloadProtectionState.RECOVERING, overloadProtection.getState());
+
+        extensionTaskCount.set(100);
+        overloadProtection.sample();
+        assertEquals(OverloadProtectionState.OVERLOADED, overloadProtection.getState());
+        assertFalse(overloadProtection.admitConnect());
+    }
+
+    @Test
+    public void test_connecting_and_closed_clients_not_paused() {
+        final EmbeddedChannel connecting = connectedChannel();
+        final ClientConnectionContext connectingContext = mock();
+        when(connectingContext.getClientState()).thenReturn(ClientState.CONNECTING);
+        connecting.attr(ClientConnectionContext.CHANNEL_ATTRIBUTE_NAME).set(connectingContext);
+        final EmbeddedChannel closed = connectedChannel();
+        connecting.writeInbound(Unpooled.wrappedBuffer(new byte[100]));
+        closed.writeInbound(Unpooled.wrappedBuffer(new byte[100]));
+        closed.close();
+        extensionTaskCount.set(100);
+        overloadProtection.sample();
+
+        assertEquals(OverloadProtectionState.OVERLOADED, overloadProtection.getState());
+        assertTrue(connecting.config().isAutoRead());
+        assertEquals(0,
+                metricRegistry.getGauges().get(HiveMQMetrics.OVERLOAD_PROTECTION_PAUSED_CLIENTS.name()).getValue());
+    }
+
+    @Test
+    public void test_paused_client_closed_does_not_hold_up_recovery() {
+        final EmbeddedChannel busy = connectedChannel();
+        busy.writeInbound(Unpooled.wrappedBuffer(new byte[100]));
+        extensionTaskCount.set(100);
+        overloadProtection.sample();
+        assertFalse(busy.config().isAutoRead());
+
+        busy.close();
+        overloadProtection.sample();
+        assertEquals(OverloadProtectionState.OVERLOADED, overloadProtection.getState());
+        assertEquals(0,
+                metricRegistry.getGauges().get(HiveMQMetrics.OVERLOAD_PROTECTION_PAUSED_CLIENTS.name()).getValue());
+
+        extensionTaskCount.set(0);
+        for (int i = 0; i <= OverloadProtection.RECOVERY_SAMPLES; i++) {
+            overloadProtection.sample();
+        }
+        assertEquals(OverloadProtectionState.NORMAL, overloadProtection.getState());
+    }
+
+    private @NotNull EmbeddedChannel connectedChannel() {
+        final EmbeddedChannel channel = new EmbeddedChannel(new OverloadProtectionHandler(overloadProtection));
+        final ClientConnectionContext clientConnectionContext = mock();
+        when(clientConnectionContext.getClientState()).thenReturn(ClientState.AUTHENTICATED);
+        channel.attr(ClientConnectionContext.CHANNEL_ATTRIBUTE_NAME).set(clientConnectionContext);
+        return channel;
+    }
+}
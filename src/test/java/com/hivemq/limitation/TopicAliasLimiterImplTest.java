@@ -15,6 +15,7 @@
  */
 package com.hivemq.limitation;
 
+import com.codahale.metrics.MetricRegistry;
 import com.hivemq.configuration.service.InternalConfigurations;
 import org.apache.commons.lang3.RandomStringUtils;
 import org.junit.Before;
@@ -22,6 +23,9 @@ import org.junit.Test;
 
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
 
 /**
  * @author Florian Limpöck
@@ -30,11 +34,13 @@ import static org.junit.Assert.assertTrue;
 public class TopicAliasLimiterImplTest {
 
     private TopicAliasLimiter topicAliasLimiter;
+    private MemoryGovernor memoryGovernor;
     @Before
     public void setUp() throws Exception {
         InternalConfigurations.TOPIC_ALIAS_GLOBAL_MEMORY_SOFT_LIMIT_BYTES.set(50);
         InternalConfigurations.TOPIC_ALIAS_GLOBAL_MEMORY_HARD_LIMIT_BYTES.set(200);
-        topicAliasLimiter = new TopicAliasLimiterImpl();
+        memoryGovernor = mock(MemoryGovernor.class);
+        topicAliasLimiter = new TopicAliasLimiterImpl(new MetricRegistry(), memoryGovernor);
     }
 
     @Test
@@ -90,4 +96,13 @@ public class TopicAliasLimiterImplTest {
         assertFalse(topicAliasLimiter.limitExceeded());
         assertTrue(topicAliasLimiter.aliasesAvailable());
     }
+
+    @Test
+    public void test_no_aliases_available_while_memory_governor_sheds() {
+        assertTrue(topicAliasLimiter.aliasesAvailable());
+        when(memoryGovernor.isShedding(MemoryConsumer.TOPIC_ALIASES)).thenReturn(true);
+        assertFalse(topicAliasLimiter.aliasesAvailable());
+        assertFalse(topicAliasLimiter.outboundAliasesAvailable());
+        verify(memoryGovernor).shed(MemoryConsumer.TOPIC_ALIASES);
+    }
 }
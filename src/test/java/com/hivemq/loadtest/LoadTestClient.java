@@ -0,0 +1,324 @@
+/*
+ * Copyright 2019-present HiveMQ GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hivemq.loadtest;
+
+import com.hivemq.extension.sdk.api.annotations.NotNull;
+import com.hivemq.extension.sdk.api.annotations.Nullable;
+import io.netty.bootstrap.Bootstrap;
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.channel.socket.nio.NioSocketChannel;
+import io.netty.handler.codec.ByteToMessageDecoder;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A minimal MQTT 3.1.1 client on top of Netty, which only implements what the load test scenarios need: CONNECT,
+ * SUBSCRIBE, PUBLISH with QoS 0 and 1 and DISCONNECT. All clients of a load test share one event loop group.
+ */
+class LoadTestClient {
+
+    private static final int CONNECT = 0x10;
+    private static final int CONNACK = 0x20;
+    private static final int PUBLISH = 0x30;
+    private static final int PUBACK = 0x40;
+    private static final int SUBSCRIBE = 0x82;
+    private static final int SUBACK = 0x90;
+    private static final int DISCONNECT = 0xE0;
+    // the scenarios keep the connections busy, keep alive would only add PINGREQs
+    private static final int KEEP_ALIVE_DISABLED = 0;
+    private final @NotNull String clientId;
+    private final @NotNull EventLoopGroup eventLoopGroup;
+    private final @NotNull MessageListener messageListener;
+    private final @NotNull Semaphore inflightPermits;
+    private final @NotNull Map<Integer, CompletableFuture<Void>> pendingAcks = new ConcurrentHashMap<>();
+    private final @NotNull AtomicInteger packetIds = new AtomicInteger();
+    private volatile @Nullable Channel channel;
+    private volatile @Nullable CompletableFuture<Void> connectFuture;
+    LoadTestClient(
+            final @NotNull String clientId,
+            final @NotNull EventLoopGroup eventLoopGroup,
+            final int maxInflight,
+            final @NotNull MessageListener messageListener) {
+        this.clientId = clientId;
+        this.eventLoopGroup = eventLoopGroup;
+        this.messageListener = messageListener;
+        inflightPermits = new Semaphore(maxInflight);
+    }
+
+    @NotNull String getClientId() {
+        return clientId;
+    }
+
+    /**
+     * @return a future that completes with the CONNACK or exceptionally if the broker refused the connection
+     */
+    @NotNull CompletableFuture<Void> connect(final @NotNull String host, final int port, final boolean cleanSession) {
+        final CompletableFuture<Void> future = new CompletableFuture<>();
+        connectFuture = future;
+        final Bootstrap bootstrap = new Bootstrap().group(eventLoopGroup)
+                .channel(NioSocketChannel.class)
+                .option(ChannelOption.TCP_NODELAY, true)
+                .handler(new ChannelInitializer<SocketChannel>() {
+                    @Override
+                    protected void initChannel(final @NotNull SocketChannel ch) {
+                        ch.pipeline().addLast(new MqttClientHandler());
+                    }
+                });
+        bootstrap.connect(host, port).addListener((ChannelFuture connected) -> {
+            if (!connected.isSuccess()) {
+                future.completeExceptionally(connected.cause());
+                return;
+            }
+            channel = connected.channel();
+            final byte[] clientIdBytes = clientId.getBytes(StandardCharsets.UTF_8);
+            final ByteBuf buf = connected.channel().alloc().buffer();
+            writeFixedHeader(buf, CONNECT, 10 + 2 + clientIdBytes.length);
+            writeString(buf, "MQTT".getBytes(StandardCharsets.US_ASCII));
+            buf.writeByte(4); // protocol level 3.1.1
+            buf.writeByte(cleanSession ? 0x02 : 0x00);
+            buf.writeShort(KEEP_ALIVE_DISABLED);
+            writeString(buf, clientIdBytes);
+            connected.channel().writeAndFlush(buf);
+        });
+        return future;
+    }
+
+    @NotNull CompletableFuture<Void> subscribe(final @NotNull String topicFilter, final int qos) {
+        final Channel channel = activeChannel();
+        final byte[] topicBytes = topicFilter.getBytes(StandardCharsets.UTF_8);
+        final int packetId = nextPacketId();
+        final CompletableFuture<Void> future = new CompletableFuture<>();
+        pendingAcks.put(packetId, future);
+        final ByteBuf buf = channel.alloc().buffer();
+        writeFixedHeader(buf, SUBSCRIBE, 2 + 2 + topicBytes.length + 1);
+        buf.writeShort(packetId);
+        writeString(buf, topicBytes);
+        buf.writeByte(qos);
+        channel.writeAndFlush(buf);
+        return future;
+    }
+
+    /**
+     * Publishes a message. QoS 1 messages wait for a free in-flight slot and QoS 0 messages wait until the channel is
+     * writable again, so the calling thread is throttled to the speed of the broker.
+     *
+     * @return a future that completes with the PUBACK for QoS 1 and after the write for QoS 0
+     */
+    @NotNull CompletableFuture<Void> publish(
+            final @NotNull String topic,
+            final @NotNull byte[] payload,
+            final int qos,
+            final boolean retain) throws InterruptedException {
+        final Channel channel = activeChannel();
+        final byte[] topicBytes = topic.getBytes(StandardCharsets.UTF_8);
+        final CompletableFuture<Void> future = new CompletableFuture<>();
+        final ByteBuf buf;
+        if (qos > 0) {
+            inflightPermits.acquire();
+            final int packetId = nextPacketId();
+            pendingAcks.put(packetId, future);
+            future.whenComplete((ignored, throwable) -> inflightPermits.release());
+            buf = channel.alloc().buffer(5 + 2 + topicBytes.length + 2 + payload.length);
+            writeFixedHeader(buf, PUBLISH | (qos << 1) | (retain ? 1 : 0), 2 + topicBytes.length + 2 + payload.length);
+            writeString(buf, topicBytes);
+            buf.writeShort(packetId);
+        } else {
+            while (!channel.isWritable() && channel.isActive()) {
+                LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(100));
+            }
+            buf = channel.alloc().buffer(5 + 2 + topicBytes.length + payload.length);
+            writeFixedHeader(buf, PUBLISH | (retain ? 1 : 0), 2 + topicBytes.length + payload.length);
+            writeString(buf, topicBytes);
+        }
+        buf.writeBytes(payload);
+        final ChannelFuture writeFuture = channel.writeAndFlush(buf);
+        if (qos == 0) {
+            writeFuture.addListener(written -> {
+                if (written.isSuccess()) {
+                    future.complete(null);
+                } else {
+                    future.completeExceptionally(written.cause());
+                }
+            });
+        }
+        return future;
+    }
+
+    @NotNull CompletableFuture<Void> disconnect() {
+        final Channel channel = this.channel;
+        final CompletableFuture<Void> future = new CompletableFuture<>();
+        if (channel == null || !channel.isActive()) {
+            future.complete(null);
+            return future;
+        }
+        final ByteBuf buf = channel.alloc().buffer(2);
+        buf.writeByte(DISCONNECT);
+        buf.writeByte(0);
+        channel.writeAndFlush(buf);
+        channel.close().addListener(closed -> future.complete(null));
+        return future;
+    }
+
+    private @NotNull Channel activeChannel() {
+        final Channel channel = this.channel;
+        if (channel == null || !channel.isActive()) {
+            throw new IllegalStateException("Client " + clientId + " is not connected");
+        }
+        return channel;
+    }
+
+    private int nextPacketId() {
+        return (packetIds.getAndIncrement() & 0xFFFF) % 0xFFFF + 1;
+    }
+
+    private void sendPuback(final @NotNull ChannelHandlerContext ctx, final int packetId) {
+        final ByteBuf buf = ctx.alloc().buffer(4);
+        buf.writeByte(PUBACK);
+        buf.writeByte(2);
+        buf.writeShort(packetId);
+        ctx.writeAndFlush(buf);
+    }
+
+    private static void writeFixedHeader(final @NotNull ByteBuf buf, final int type, final int remainingLength) {
+        buf.writeByte(type);
+        int length = remainingLength;
+        do {
+            int encodedByte = length % 128;
+            length /= 128;
+            if (length > 0) {
+                encodedByte |= 0x80;
+            }
+            buf.writeByte(encodedByte);
+        } while (length > 0);
+    }
+
+    private static void writeString(final @NotNull ByteBuf buf, final @NotNull byte[] bytes) {
+        buf.writeShort(bytes.length);
+        buf.writeBytes(bytes);
+    }
+
+    private class MqttClientHandler extends ByteToMessageDecoder {
+
+        @Override
+        protected void decode(
+                final @NotNull ChannelHandlerContext ctx,
+                final @NotNull ByteBuf in,
+                final @NotNull List<Object> out) {
+            while (in.isReadable()) {
+                in.markReaderIndex();
+                final int type = in.readUnsignedByte();
+                int remainingLength = 0;
+                int multiplier = 1;
+                int encodedByte;
+                do {
+                    if (!in.isReadable()) {
+                        in.resetReaderIndex();
+                        return;
+                    }
+                    encodedByte = in.readUnsignedByte();
+                    remainingLength += (encodedByte & 0x7F) * multiplier;
+                    multiplier *= 128;
+                } while ((encodedByte & 0x80) != 0);
+                if (in.readableBytes() < remainingLength) {
+                    in.resetReaderIndex();
+                    return;
+                }
+                final ByteBuf packet = in.readSlice(remainingLength);
+                handlePacket(ctx, type, packet);
+            }
+        }
+
+        private void handlePacket(
+                final @NotNull ChannelHandlerContext ctx,
+                final int type,
+                final @NotNull ByteBuf packet) {
+            switch (type & 0xF0) {
+                case CONNACK: {
+                    packet.skipBytes(1);
+                    final int returnCode = packet.readUnsignedByte();
+                    final CompletableFuture<Void> future = connectFuture;
+                    if (future != null) {
+                        if (returnCode == 0) {
+                            future.complete(null);
+                        } else {
+                            future.completeExceptionally(new IllegalStateException(
+                                    "Connect of client " + clientId + " refused with return code " + returnCode));
+                        }
+                    }
+                    break;
+                }
+                case PUBLISH: {
+                    final int qos = (type >> 1) & 0x03;
+                    final int topicLength = packet.readUnsignedShort();
+                    final String topic = packet.readCharSequence(topicLength, StandardCharsets.UTF_8).toString();
+                    final int packetId = qos > 0 ? packet.readUnsignedShort() : 0;
+                    messageListener.onPublish(topic, packet);
+                    if (qos == 1) {
+                        sendPuback(ctx, packetId);
+                    }
+                    break;
+                }
+                case PUBACK:
+                case SUBACK: {
+                    final CompletableFuture<Void> future = pendingAcks.remove(packet.readUnsignedShort());
+                    if (future != null) {
+                        future.complete(null);
+                    }
+                    break;
+                }
+                default:
+                    // PINGRESP and other acknowledgements are not needed by the scenarios
+            }
+        }
+
+        @Override
+        public void channelInactive(final @NotNull ChannelHandlerContext ctx) throws Exception {
+            final IllegalStateException closed = new IllegalStateException("Connection of " + clientId + " closed");
+            for (final CompletableFuture<Void> future : pendingAcks.values()) {
+                future.completeExceptionally(closed);
+            }
+            pendingAcks.clear();
+            final CompletableFuture<Void> future = connectFuture;
+            if (future != null) {
+                future.completeExceptionally(closed);
+            }
+            super.channelInactive(ctx);
+        }
+    }
+
+    /**
+     * Called on the event loop for every received PUBLISH. The payload is only valid during the call.
+     */
+    interface MessageListener {
+
+        void onPublish(@NotNull String topic, @NotNull ByteBuf payload);
+    }
+}
@@ -0,0 +1,287 @@
+/*
+ * Copyright 2019-present HiveMQ GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hivemq.loadtest;
+
+import com.codahale.metrics.Counter;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.hivemq.configuration.service.PersistenceConfigurationService.PersistenceMode;
+import com.hivemq.embedded.EmbeddedHiveMQ;
+import com.hivemq.extension.sdk.api.annotations.NotNull;
+import com.hivemq.extension.sdk.api.annotations.Nullable;
+import com.hivemq.metrics.HiveMQMetrics;
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.nio.NioEventLoopGroup;
+import org.apache.commons.io.FileUtils;
+import util.RandomPortGenerator;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs the {@link LoadTestScenario}s end to end against an embedded HiveMQ with loopback MQTT clients in the same JVM
+ * and reports throughput, latency percentiles and GC and heap statistics as JSON.
+ * <p>
+ * The broker and the clients share the JVM, so the GC and heap statistics contain the clients as well. The numbers
+ * are meant to compare builds on the same machine, not as absolute broker capacity.
+ */
+class LoadTestHarness implements AutoCloseable {
+
+    static final @NotNull LoadTestClient.MessageListener IGNORE_MESSAGES = (topic, payload) -> {
+    };
+    private static final @NotNull String HOST = "127.0.0.1";
+    private static final long JOIN_TIMEOUT_SECONDS = 60;
+    private final @NotNull PersistenceMode persistenceMode;
+    private final @NotNull LoadTestSettings settings;
+    private final @NotNull Path folder;
+    private final int port = RandomPortGenerator.get();
+    private @Nullable EmbeddedHiveMQ embeddedHiveMQ;
+    private @Nullable EventLoopGroup eventLoopGroup;
+    private @Nullable ExecutorService publishExecutor;
+    LoadTestHarness(
+            final @NotNull PersistenceMode persistenceMode,
+            final @NotNull LoadTestSettings settings,
+            final @NotNull Path folder) {
+        this.persistenceMode = persistenceMode;
+        this.settings = settings;
+        this.folder = folder;
+    }
+
+    void start() throws IOException {
+        final File conf = Files.createDirectories(folder.resolve("conf")).toFile();
+        final String config = "<hivemq>\n" +
+                "    <listeners>\n" +
+                "        <tcp-listener>\n" +
+                "            <port>" + port + "</port>\n" +
+                "            <bind-address>" + HOST + "</bind-address>\n" +
+                "        </tcp-listener>\n" +
+                "    </listeners>\n" +
+                "    <persistence>\n" +
+                "        <mode>" + (persistenceMode == PersistenceMode.FILE ? "file" : "in-memory") + "</mode>\n" +
+                "    </persistence>\n" +
+                "    <anonymous-usage-statistics>\n" +
+                "        <enabled>false</enabled>\n" +
+                "    </anonymous-usage-statistics>\n" +
+                "</hivemq>";
+        FileUtils.write(new File(conf, "config.xml"), config, StandardCharsets.UTF_8);
+        embeddedHiveMQ = EmbeddedHiveMQ.builder()
+                .withConfigurationFolder(conf.toPath())
+                .withDataFolder(Files.createDirectories(folder.resolve("data")))
+                .withExtensionsFolder(Files.createDirectories(folder.resolve("extensions")))
+                .withoutLoggingBootstrap()
+                .build();
+        embeddedHiveMQ.start().join();
+        eventLoopGroup = new NioEventLoopGroup(Runtime.getRuntime().availableProcessors());
+        publishExecutor = Executors.newCachedThreadPool();
+    }
+
+    /**
+     * Runs all scenarios one after another on the same broker.
+     *
+     * @return the JSON report
+     */
+    @NotNull ObjectNode run(final @NotNull ObjectMapper objectMapper) throws Exception {
+        final ObjectNode report = objectMapper.createObjectNode();
+        report.put("persistence", persistenceMode == PersistenceMode.FILE ? "file" : "in-memory");
+        final ObjectNode jvm = report.putObject("jvm");
+        jvm.put("version", System.getProperty("java.version"));
+        jvm.put("availableProcessors", Runtime.getRuntime().availableProcessors());
+        jvm.put("maxHeapBytes", Runtime.getRuntime().maxMemory());
+        jvm.put("arguments", String.join(" ", ManagementFactory.getRuntimeMXBean().getInputArguments()));
+        settings.writeTo(report.putObject("settings"));
+        final ArrayNode scenarios = report.putArray("scenarios");
+        for (final LoadTestScenario scenario : LoadTestScenario.values()) {
+            runScenario(scenario).writeTo(scenarios.addObject());
+        }
+        return report;
+    }
+
+    @NotNull ScenarioResult runScenario(final @NotNull LoadTestScenario scenario) throws Exception {
+        final Counter droppedMessages = embeddedHiveMQ().getMetricRegistry()
+                .counter(HiveMQMetrics.DROPPED_MESSAGE_COUNT.name());
+        final long droppedBefore = droppedMessages.getCount();
+        final ScenarioResult result = new ScenarioResult(scenario);
+        scenario.run(this, result);
+        result.detail("droppedMessages", droppedMessages.getCount() - droppedBefore);
+        return result;
+    }
+
+    @Override
+    public void close() throws Exception {
+        if (publishExecutor != null) {
+            publishExecutor.shutdownNow();
+        }
+        if (eventLoopGroup != null) {
+            eventLoopGroup.shutdownGracefully(0, 1, TimeUnit.SECONDS).syncUninterruptibly();
+        }
+        if (embeddedHiveMQ != null) {
+            embeddedHiveMQ.stop().join();
+            embeddedHiveMQ.close();
+        }
+    }
+
+    @NotNull LoadTestSettings getSettings() {
+        return settings;
+    }
+
+    @NotNull LoadTestClient newClient(
+            final @NotNull String clientId,
+            final @NotNull LoadTestClient.MessageListener messageListener) {
+        if (eventLoopGroup == null) {
+            throw new IllegalStateException("The load test harness is not started");
+        }
+        return new LoadTestClient(clientId, eventLoopGroup, settings.getMaxInflightPerClient(), messageListener);
+    }
+
+    @NotNull CompletableFuture<Void> connect(final @NotNull LoadTestClient client, final boolean cleanSession) {
+        return client.connect(HOST, port, cleanSession);
+    }
+
+    @NotNull List<CompletableFuture<Void>> connect(
+            final @NotNull List<LoadTestClient> clients,
+            final boolean cleanSession) {
+        final List<CompletableFuture<Void>> connects = new ArrayList<>(clients.size());
+        for (final LoadTestClient client : clients) {
+            connects.add(connect(client, cleanSession));
+        }
+        return connects;
+    }
+
+    /**
+     * Creates and connects clients that ignore all messages.
+     */
+    @NotNull List<LoadTestClient> connectClients(final @NotNull String clientIdPrefix, final int count)
+            throws Exception {
+        return connectClients(clientIdPrefix, count, true);
+    }
+
+    @NotNull List<LoadTestClient> connectClients(
+            final @NotNull String clientIdPrefix,
+            final int count,
+            final boolean cleanSession) throws Exception {
+        final List<LoadTestClient> clients = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            clients.add(newClient(clientIdPrefix + i, IGNORE_MESSAGES));
+        }
+        join(connect(clients, cleanSession));
+        return clients;
+    }
+
+    void subscribe(final @NotNull List<LoadTestClient> clients, final @NotNull String topicFilter, final int qos)
+            throws Exception {
+        final List<CompletableFuture<Void>> subacks = new ArrayList<>(clients.size());
+        for (final LoadTestClient client : clients) {
+            subacks.add(client.subscribe(topicFilter, qos));
+        }
+        join(subacks);
+    }
+
+    void disconnect(final @NotNull List<LoadTestClient> clients) throws Exception {
+        final List<CompletableFuture<Void>> disconnects = new ArrayList<>(clients.size());
+        for (final LoadTestClient client : clients) {
+            disconnects.add(client.disconnect());
+        }
+        join(disconnects);
+    }
+
+    /**
+     * Runs the task for every publisher on its own thread and waits until all tasks are done.
+     */
+    void publishInParallel(final @NotNull List<LoadTestClient> publishers, final @NotNull PublishTask task)
+            throws Exception {
+        if (publishExecutor == null) {
+            throw new IllegalStateException("The load test harness is not started");
+        }
+        final List<Future<?>> futures = new ArrayList<>(publishers.size());
+        for (int i = 0; i < publishers.size(); i++) {
+            final int index = i;
+            final LoadTestClient publisher = publishers.get(i);
+            futures.add(publishExecutor.submit(() -> {
+                task.publish(index, publisher);
+                return null;
+            }));
+        }
+        for (final Future<?> future : futures) {
+            future.get(JOIN_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        }
+    }
+
+    void join(final @NotNull List<CompletableFuture<Void>> futures) throws Exception {
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).get(JOIN_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Waits until the expected operations of the scenario completed. QoS 0 messages may be dropped by the broker,
+     * so the wait ends as well if no operation completed during the idle timeout.
+     */
+    void awaitOperations(final @NotNull ScenarioResult result) throws InterruptedException {
+        long lastOperations = result.getOperations();
+        long lastProgress = System.nanoTime();
+        final long idleTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(settings.getIdleTimeoutMillis());
+        while (!result.isComplete()) {
+            Thread.sleep(1);
+            final long operations = result.getOperations();
+            final long now = System.nanoTime();
+            if (operations != lastOperations) {
+                lastOperations = operations;
+                lastProgress = now;
+            } else if (now - lastProgress > idleTimeoutNanos) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * @return a payload of the configured size that starts with the current {@link System#nanoTime()}
+     */
+    @NotNull byte[] timestampedPayload() {
+        final byte[] payload = new byte[Math.max(Long.BYTES, settings.getPayloadBytes())];
+        final long now = System.nanoTime();
+        for (int i = 0; i < Long.BYTES; i++) {
+            payload[i] = (byte) (now >>> (56 - 8 * i));
+        }
+        return payload;
+    }
+
+    static long latencyNanos(final @NotNull ByteBuf payload) {
+        return System.nanoTime() - payload.getLong(payload.readerIndex());
+    }
+
+    private @NotNull EmbeddedHiveMQ embeddedHiveMQ() {
+        if (embeddedHiveMQ == null) {
+            throw new IllegalStateException("The load test harness is not started");
+        }
+        return embeddedHiveMQ;
+    }
+
+    interface PublishTask {
+
+        void publish(int index, @NotNull LoadTestClient publisher) throws Exception;
+    }
+}
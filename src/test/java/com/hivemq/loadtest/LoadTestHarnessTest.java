@@ -0,0 +1,90 @@
+/*
+ * Copyright 2019-present HiveMQ GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hivemq.loadtest;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.hivemq.configuration.service.PersistenceConfigurationService.PersistenceMode;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * The smoke tests run every scenario with small sizes. The full load test only runs if the environment variable
+ * {@value #REPORT_ENV} is set to the file the JSON report is written to, for example
+ * {@code HIVEMQ_LOAD_TEST_REPORT=build/load-test.json ./gradlew test --tests "*LoadTestHarnessTest"}.
+ */
+public class LoadTestHarnessTest {
+
+    private static final String REPORT_ENV = "HIVEMQ_LOAD_TEST_REPORT";
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Test(timeout = 120_000)
+    public void test_smoke_in_memory_persistence() throws Exception {
+        assertSmoke(PersistenceMode.IN_MEMORY);
+    }
+
+    @Test(timeout = 120_000)
+    public void test_smoke_file_persistence() throws Exception {
+        assertSmoke(PersistenceMode.FILE);
+    }
+
+    @Test
+    public void test_full_load() throws Exception {
+        final String reportPath = System.getenv(REPORT_ENV);
+        assumeTrue(reportPath != null);
+        final ObjectNode report = objectMapper.createObjectNode();
+        final ArrayNode runs = report.putArray("runs");
+        for (final PersistenceMode persistenceMode : PersistenceMode.values()) {
+            try (final LoadTestHarness harness = new LoadTestHarness(persistenceMode,
+                    LoadTestSettings.full(),
+                    tmp.newFolder(persistenceMode.name()).toPath())) {
+                harness.start();
+                runs.add(harness.run(objectMapper));
+            }
+        }
+        objectMapper.writerWithDefaultPrettyPrinter().writeValue(new File(reportPath), report);
+    }
+
+    private void assertSmoke(final PersistenceMode persistenceMode) throws Exception {
+        try (final LoadTestHarness harness = new LoadTestHarness(persistenceMode,
+                LoadTestSettings.smoke(),
+                tmp.newFolder().toPath())) {
+            harness.start();
+            final ObjectNode report = harness.run(objectMapper);
+            final JsonNode scenarios = report.get("scenarios");
+            assertEquals(LoadTestScenario.values().length, scenarios.size());
+            for (final JsonNode scenario : scenarios) {
+                // QoS 0 telemetry may be dropped, all other scenarios use QoS 1
+                if (!LoadTestScenario.FAN_IN_TELEMETRY.getName().equals(scenario.get("scenario").asText())) {
+                    assertTrue(scenario.toString(), scenario.get("complete").asBoolean());
+                }
+                assertTrue(scenario.toString(), scenario.get("latencyMicros").get("samples").asLong() > 0);
+                assertTrue(scenario.toString(), scenario.get("throughputPerSecond").asDouble() > 0);
+            }
+        }
+    }
+}
@@ -0,0 +1,264 @@
+/*
+ * Copyright 2019-present HiveMQ GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hivemq.loadtest;
+
+import com.hivemq.extension.sdk.api.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * The scripted load test scenarios. Every scenario sets up its clients, measures between
+ * {@link ScenarioResult#start(long)} and {@link ScenarioResult#stop()} and disconnects its clients afterwards.
+ */
+enum LoadTestScenario {
+
+    /**
+     * Many clients connect at the same time. Latency: CONNECT to CONNACK.
+     */
+    CONNECT_STORM("connect-storm") {
+        @Override
+        void run(final @NotNull LoadTestHarness harness, final @NotNull ScenarioResult result) throws Exception {
+            final int clientCount = harness.getSettings().getConnectStormClients();
+            final List<LoadTestClient> clients = new ArrayList<>(clientCount);
+            for (int i = 0; i < clientCount; i++) {
+                clients.add(harness.newClient("connect-storm-" + i, LoadTestHarness.IGNORE_MESSAGES));
+            }
+            result.start(clientCount);
+            final List<CompletableFuture<Void>> connects = new ArrayList<>(clientCount);
+            for (final LoadTestClient client : clients) {
+                final long connectStart = System.nanoTime();
+                connects.add(harness.connect(client, true)
+                        .thenRun(() -> result.operationCompleted(System.nanoTime() - connectStart)));
+            }
+            harness.awaitOperations(result);
+            result.stop();
+            harness.join(connects);
+            harness.disconnect(clients);
+        }
+    },
+
+    /**
+     * Many publishers send QoS 0 telemetry to one wildcard subscriber. Latency: PUBLISH sent to received.
+     */
+    FAN_IN_TELEMETRY("fan-in-telemetry") {
+        @Override
+        void run(final @NotNull LoadTestHarness harness, final @NotNull ScenarioResult result) throws Exception {
+            final LoadTestSettings settings = harness.getSettings();
+            final LoadTestClient subscriber = harness.newClient("fan-in-subscriber",
+                    (topic, payload) -> result.operationCompleted(LoadTestHarness.latencyNanos(payload)));
+            harness.connect(subscriber, true).get();
+            subscriber.subscribe("fan-in/#", 0).get();
+            final List<LoadTestClient> publishers =
+                    harness.connectClients("fan-in-publisher-", settings.getFanInPublishers());
+            final int messages = settings.getFanInMessagesPerPublisher();
+            result.start((long) publishers.size() * messages);
+            harness.publishInParallel(publishers, (index, publisher) -> {
+                for (int i = 0; i < messages; i++) {
+                    publisher.publish("fan-in/" + index, harness.timestampedPayload(), 0, false);
+                }
+            });
+            harness.awaitOperations(result);
+            result.stop();
+            harness.disconnect(publishers);
+            subscriber.disconnect().get();
+        }
+    },
+
+    /**
+     * One publisher sends QoS 1 messages to a topic with many subscribers. Latency: PUBLISH sent to received.
+     */
+    FAN_OUT("fan-out") {
+        @Override
+        void run(final @NotNull LoadTestHarness harness, final @NotNull ScenarioResult result) throws Exception {
+            final LoadTestSettings settings = harness.getSettings();
+            final List<LoadTestClient> subscribers = new ArrayList<>();
+            for (int i = 0; i < settings.getFanOutSubscribers(); i++) {
+                subscribers.add(harness.newClient("fan-out-subscriber-" + i,
+                        (topic, payload) -> result.operationCompleted(LoadTestHarness.latencyNanos(payload))));
+            }
+            harness.join(harness.connect(subscribers, true));
+            harness.subscribe(subscribers, "fan-out/topic", 1);
+            final LoadTestClient publisher = harness.connectClients("fan-out-publisher-", 1).get(0);
+            final int messages = settings.getFanOutMessages();
+            result.start((long) messages * subscribers.size());
+            final List<CompletableFuture<Void>> pubacks = new ArrayList<>(messages);
+            for (int i = 0; i < messages; i++) {
+                pubacks.add(publisher.publish("fan-out/topic", harness.timestampedPayload(), 1, false));
+            }
+            harness.awaitOperations(result);
+            result.stop();
+            harness.join(pubacks);
+            publisher.disconnect().get();
+            harness.disconnect(subscribers);
+        }
+    },
+
+    /**
+     * Publishers send QoS 1 messages to a shared subscription group, every message is consumed once by the group.
+     * Latency: PUBLISH sent to received.
+     */
+    SHARED_SUBSCRIPTION("shared-subscription") {
+        @Override
+        void run(final @NotNull LoadTestHarness harness, final @NotNull ScenarioResult result) throws Exception {
+            final LoadTestSettings settings = harness.getSettings();
+            final int consumerCount = settings.getSharedSubscriptionConsumers();
+            final AtomicLongArray consumed = new AtomicLongArray(consumerCount);
+            final List<LoadTestClient> consumers = new ArrayList<>(consumerCount);
+            for (int i = 0; i < consumerCount; i++) {
+                final int consumer = i;
+                consumers.add(harness.newClient("shared-consumer-" + i, (topic, payload) -> {
+                    consumed.incrementAndGet(consumer);
+                    result.operationCompleted(LoadTestHarness.latencyNanos(payload));
+                }));
+            }
+            harness.join(harness.connect(consumers, true));
+            harness.subscribe(consumers, "$share/load/shared/#", 1);
+            final List<LoadTestClient> publishers =
+                    harness.connectClients("shared-publisher-", settings.getSharedSubscriptionPublishers());
+            final int messages = settings.getSharedSubscriptionMessagesPerPublisher();
+            result.start((long) publishers.size() * messages);
+            harness.publishInParallel(publishers, (index, publisher) -> {
+                final List<CompletableFuture<Void>> pubacks = new ArrayList<>(messages);
+                for (int i = 0; i < messages; i++) {
+                    pubacks.add(publisher.publish("shared/" + index, harness.timestampedPayload(), 1, false));
+                }
+                harness.join(pubacks);
+            });
+            harness.awaitOperations(result);
+            result.stop();
+            long min = Long.MAX_VALUE;
+            long max = 0;
+            for (int i = 0; i < consumerCount; i++) {
+                min = Math.min(min, consumed.get(i));
+                max = Math.max(max, consumed.get(i));
+            }
+            result.detail("minMessagesPerConsumer", min);
+            result.detail("maxMessagesPerConsumer", max);
+            harness.disconnect(publishers);
+            harness.disconnect(consumers);
+        }
+    },
+
+    /**
+     * Subscribers subscribe to a wildcard that matches many retained messages. Latency: SUBSCRIBE sent to the last
+     * retained message received, per subscriber.
+     */
+    RETAINED_SUBSCRIBE("retained-subscribe") {
+        @Override
+        void run(final @NotNull LoadTestHarness harness, final @NotNull ScenarioResult result) throws Exception {
+            final LoadTestSettings settings = harness.getSettings();
+            final int retainedMessages = settings.getRetainedMessages();
+            final LoadTestClient publisher = harness.connectClients("retained-publisher-", 1).get(0);
+            final List<CompletableFuture<Void>> pubacks = new ArrayList<>(retainedMessages);
+            for (int i = 0; i < retainedMessages; i++) {
+                pubacks.add(publisher.publish("retained/" + i, harness.timestampedPayload(), 1, true));
+            }
+            harness.join(pubacks);
+            publisher.disconnect().get();
+
+            final int subscriberCount = settings.getRetainedSubscribers();
+            final AtomicLongArray subscribeStarts = new AtomicLongArray(subscriberCount);
+            final List<LoadTestClient> subscribers = new ArrayList<>(subscriberCount);
+            for (int i = 0; i < subscriberCount; i++) {
+                final int subscriber = i;
+                final AtomicInteger received = new AtomicInteger();
+                subscribers.add(harness.newClient("retained-subscriber-" + i, (topic, payload) -> {
+                    result.operationCompleted();
+                    if (received.incrementAndGet() == retainedMessages) {
+                        result.latency(System.nanoTime() - subscribeStarts.get(subscriber));
+                    }
+                }));
+            }
+            harness.join(harness.connect(subscribers, true));
+            result.start((long) retainedMessages * subscriberCount);
+            for (int i = 0; i < subscriberCount; i++) {
+                subscribeStarts.set(i, System.nanoTime());
+                subscribers.get(i).subscribe("retained/#", 1);
+            }
+            harness.awaitOperations(result);
+            result.stop();
+            harness.disconnect(subscribers);
+        }
+    },
+
+    /**
+     * Persistent sessions go offline, messages are queued for them and they drain their queues after reconnecting.
+     * Latency: reconnect to the last queued message received, per client.
+     */
+    OFFLINE_QUEUE_DRAIN("offline-queue-drain") {
+        @Override
+        void run(final @NotNull LoadTestHarness harness, final @NotNull ScenarioResult result) throws Exception {
+            final LoadTestSettings settings = harness.getSettings();
+            final int clientCount = settings.getOfflineClients();
+            final int messages = settings.getOfflineMessagesPerClient();
+            final List<LoadTestClient> sessions = harness.connectClients("offline-client-", clientCount, false);
+            for (int i = 0; i < clientCount; i++) {
+                sessions.get(i).subscribe("offline/" + i, 1).get();
+            }
+            harness.disconnect(sessions);
+
+            final List<LoadTestClient> publishers = harness.connectClients("offline-publisher-", 1);
+            harness.publishInParallel(publishers, (index, publisher) -> {
+                final List<CompletableFuture<Void>> pubacks = new ArrayList<>(clientCount * messages);
+                for (int i = 0; i < clientCount; i++) {
+                    for (int j = 0; j < messages; j++) {
+                        pubacks.add(publisher.publish("offline/" + i, harness.timestampedPayload(), 1, false));
+                    }
+                }
+                harness.join(pubacks);
+            });
+            harness.disconnect(publishers);
+
+            final AtomicLongArray reconnectStarts = new AtomicLongArray(clientCount);
+            final List<LoadTestClient> reconnected = new ArrayList<>(clientCount);
+            for (int i = 0; i < clientCount; i++) {
+                final int client = i;
+                final AtomicInteger received = new AtomicInteger();
+                reconnected.add(harness.newClient("offline-client-" + i, (topic, payload) -> {
+                    result.operationCompleted();
+                    if (received.incrementAndGet() == messages) {
+                        result.latency(System.nanoTime() - reconnectStarts.get(client));
+                    }
+                }));
+            }
+            result.start((long) clientCount * messages);
+            final List<CompletableFuture<Void>> connects = new ArrayList<>(clientCount);
+            for (int i = 0; i < clientCount; i++) {
+                reconnectStarts.set(i, System.nanoTime());
+                connects.add(harness.connect(reconnected.get(i), false));
+            }
+            harness.awaitOperations(result);
+            result.stop();
+            harness.join(connects);
+            harness.disconnect(reconnected);
+        }
+    };
+
+    private final @NotNull String name;
+    LoadTestScenario(final @NotNull String name) {
+        this.name = name;
+    }
+
+    @NotNull String getName() {
+        return name;
+    }
+
+    abstract void run(@NotNull LoadTestHarness harness, @NotNull ScenarioResult result) throws Exception;
+}
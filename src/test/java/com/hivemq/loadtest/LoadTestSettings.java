@@ -0,0 +1,181 @@
+/*
+ * Copyright 2019-present HiveMQ GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hivemq.loadtest;
+
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.hivemq.extension.sdk.api.annotations.NotNull;
+
+/**
+ * The sizes of the load test scenarios.
+ */
+class LoadTestSettings {
+
+    private final int connectStormClients;
+    private final int fanInPublishers;
+    private final int fanInMessagesPerPublisher;
+    private final int fanOutSubscribers;
+    private final int fanOutMessages;
+    private final int sharedSubscriptionConsumers;
+    private final int sharedSubscriptionPublishers;
+    private final int sharedSubscriptionMessagesPerPublisher;
+    private final int retainedMessages;
+    private final int retainedSubscribers;
+    private final int offlineClients;
+    private final int offlineMessagesPerClient;
+    private final int payloadBytes;
+    private final int maxInflightPerClient;
+    private final long idleTimeoutMillis;
+    private LoadTestSettings(
+            final int connectStormClients,
+            final int fanInPublishers,
+            final int fanInMessagesPerPublisher,
+            final int fanOutSubscribers,
+            final int fanOutMessages,
+            final int sharedSubscriptionConsumers,
+            final int sharedSubscriptionPublishers,
+            final int sharedSubscriptionMessagesPerPublisher,
+            final int retainedMessages,
+            final int retainedSubscribers,
+            final int offlineClients,
+            final int offlineMessagesPerClient,
+            final int payloadBytes,
+            final int maxInflightPerClient,
+            final long idleTimeoutMillis) {
+        this.connectStormClients = connectStormClients;
+        this.fanInPublishers = fanInPublishers;
+        this.fanInMessagesPerPublisher = fanInMessagesPerPublisher;
+        this.fanOutSubscribers = fanOutSubscribers;
+        this.fanOutMessages = fanOutMessages;
+        this.sharedSubscriptionConsumers = sharedSubscriptionConsumers;
+        this.sharedSubscriptionPublishers = sharedSubscriptionPublishers;
+        this.sharedSubscriptionMessagesPerPublisher = sharedSubscriptionMessagesPerPublisher;
+        this.retainedMessages = retainedMessages;
+        this.retainedSubscribers = retainedSubscribers;
+        this.offlineClients = offlineClients;
+        this.offlineMessagesPerClient = offlineMessagesPerClient;
+        this.payloadBytes = payloadBytes;
+        this.maxInflightPerClient = maxInflightPerClient;
+        this.idleTimeoutMillis = idleTimeoutMillis;
+    }
+
+    /**
+     * Small enough to run with the unit tests, only checks that every scenario works end to end.
+     */
+    static @NotNull LoadTestSettings smoke() {
+        return new LoadTestSettings(50, 4, 250, 10, 100, 4, 2, 200, 100, 5, 10, 50, 64, 100, 10_000);
+    }
+
+    /**
+     * The sizes for comparing builds. The offline messages stay below the default max queued messages.
+     */
+    static @NotNull LoadTestSettings full() {
+        return new LoadTestSettings(5_000,
+                50,
+                20_000,
+                200,
+                5_000,
+                20,
+                20,
+                10_000,
+                10_000,
+                50,
+                500,
+                1_000,
+                256,
+                1_000,
+                30_000);
+    }
+
+    int getConnectStormClients() {
+        return connectStormClients;
+    }
+
+    int getFanInPublishers() {
+        return fanInPublishers;
+    }
+
+    int getFanInMessagesPerPublisher() {
+        return fanInMessagesPerPublisher;
+    }
+
+    int getFanOutSubscribers() {
+        return fanOutSubscribers;
+    }
+
+    int getFanOutMessages() {
+        return fanOutMessages;
+    }
+
+    int getSharedSubscriptionConsumers() {
+        return sharedSubscriptionConsumers;
+    }
+
+    int getSharedSubscriptionPublishers() {
+        return sharedSubscriptionPublishers;
+    }
+
+    int getSharedSubscriptionMessagesPerPublisher() {
+        return sharedSubscriptionMessagesPerPublisher;
+    }
+
+    int getRetainedMessages() {
+        return retainedMessages;
+    }
+
+    int getRetainedSubscribers() {
+        return retainedSubscribers;
+    }
+
+    int getOfflineClients() {
+        return offlineClients;
+    }
+
+    int getOfflineMessagesPerClient() {
+        return offlineMessagesPerClient;
+    }
+
+    int getPayloadBytes() {
+        return payloadBytes;
+    }
+
+    int getMaxInflightPerClient() {
+        return maxInflightPerClient;
+    }
+
+    /**
+     * @return how long a scenario waits without progress until it gives up on the missing messages
+     */
+    long getIdleTimeoutMillis() {
+        return idleTimeoutMillis;
+    }
+
+    void writeTo(final @NotNull ObjectNode node) {
+        node.put("connectStormClients", connectStormClients);
+        node.put("fanInPublishers", fanInPublishers);
+        node.put("fanInMessagesPerPublisher", fanInMessagesPerPublisher);
+        node.put("fanOutSubscribers", fanOutSubscribers);
+        node.put("fanOutMessages", fanOutMessages);
+        node.put("sharedSubscriptionConsumers", sharedSubscriptionConsumers);
+        node.put("sharedSubscriptionPublishers", sharedSubscriptionPublishers);
+        node.put("sharedSubscriptionMessagesPerPublisher", sharedSubscriptionMessagesPerPublisher);
+        node.put("retainedMessages", retainedMessages);
+        node.put("retainedSubscribers", retainedSubscribers);
+        node.put("offlineClients", offlineClients);
+        node.put("offlineMessagesPerClient", offlineMessagesPerClient);
+        node.put("payloadBytes", payloadBytes);
+        node.put("maxInflightPerClient", maxInflightPerClient);
+    }
+}
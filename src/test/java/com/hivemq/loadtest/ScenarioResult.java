@@ -0,0 +1,155 @@
+/*
+ * Copyright 2019-present HiveMQ GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hivemq.loadtest;
+
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.Snapshot;
+import com.codahale.metrics.UniformReservoir;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.hivemq.extension.sdk.api.annotations.NotNull;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryUsage;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Records the operations, latencies and the GC and heap statistics of one scenario run.
+ */
+class ScenarioResult {
+
+    private static final int LATENCY_SAMPLES = 100_000;
+    private final @NotNull LoadTestScenario scenario;
+    private final @NotNull Histogram latencyMicros = new Histogram(new UniformReservoir(LATENCY_SAMPLES));
+    private final @NotNull AtomicLong operations = new AtomicLong();
+    private final @NotNull Map<String, Long> details = new LinkedHashMap<>();
+    private long expectedOperations;
+    private long startNanos;
+    private long durationNanos;
+    private long gcCountBefore;
+    private long gcTimeMillisBefore;
+    private long gcCount;
+    private long gcTimeMillis;
+    private long heapUsedBefore;
+    private long heapUsedAfter;
+    private long heapCommittedAfter;
+    ScenarioResult(final @NotNull LoadTestScenario scenario) {
+        this.scenario = scenario;
+    }
+
+    /**
+     * Starts the measurement, everything before is the setup of the scenario.
+     */
+    void start(final long expectedOperations) {
+        this.expectedOperations = expectedOperations;
+        gcCountBefore = totalGcCount();
+        gcTimeMillisBefore = totalGcTimeMillis();
+        heapUsedBefore = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+        startNanos = System.nanoTime();
+    }
+
+    void stop() {
+        durationNanos = System.nanoTime() - startNanos;
+        gcCount = totalGcCount() - gcCountBefore;
+        gcTimeMillis = totalGcTimeMillis() - gcTimeMillisBefore;
+        final MemoryUsage heapUsage = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage();
+        heapUsedAfter = heapUsage.getUsed();
+        heapCommittedAfter = heapUsage.getCommitted();
+    }
+
+    void operationCompleted(final long latencyNanos) {
+        latencyMicros.update(TimeUnit.NANOSECONDS.toMicros(latencyNanos));
+        operations.incrementAndGet();
+    }
+
+    void operationCompleted() {
+        operations.incrementAndGet();
+    }
+
+    void latency(final long latencyNanos) {
+        latencyMicros.update(TimeUnit.NANOSECONDS.toMicros(latencyNanos));
+    }
+
+    void detail(final @NotNull String name, final long value) {
+        details.put(name, value);
+    }
+
+    long getOperations() {
+        return operations.get();
+    }
+
+    long getExpectedOperations() {
+        return expectedOperations;
+    }
+
+    boolean isComplete() {
+        return operations.get() >= expectedOperations;
+    }
+
+    @NotNull LoadTestScenario getScenario() {
+        return scenario;
+    }
+
+    void writeTo(final @NotNull ObjectNode node) {
+        final long operations = this.operations.get();
+        node.put("scenario", scenario.getName());
+        node.put("complete", isComplete());
+        node.put("expectedOperations", expectedOperations);
+        node.put("operations", operations);
+        node.put("durationMillis", TimeUnit.NANOSECONDS.toMillis(durationNanos));
+        node.put("throughputPerSecond", durationNanos == 0 ? 0 : operations * 1_000_000_000.0 / durationNanos);
+        final Snapshot snapshot = latencyMicros.getSnapshot();
+        final ObjectNode latency = node.putObject("latencyMicros");
+        latency.put("samples", latencyMicros.getCount());
+        latency.put("min", snapshot.getMin());
+        latency.put("mean", snapshot.getMean());
+        latency.put("p50", snapshot.getMedian());
+        latency.put("p90", snapshot.getValue(0.9));
+        latency.put("p99", snapshot.get99thPercentile());
+        latency.put("p999", snapshot.get999thPercentile());
+        latency.put("max", snapshot.getMax());
+        final ObjectNode gc = node.putObject("gc");
+        gc.put("collections", gcCount);
+        gc.put("timeMillis", gcTimeMillis);
+        final ObjectNode heap = node.putObject("heap");
+        heap.put("usedBeforeBytes", heapUsedBefore);
+        heap.put("usedAfterBytes", heapUsedAfter);
+        heap.put("committedAfterBytes", heapCommittedAfter);
+        if (!details.isEmpty()) {
+            final ObjectNode detailsNode = node.putObject("details");
+            details.forEach(detailsNode::put);
+        }
+    }
+
+    private static long totalGcCount() {
+        long count = 0;
+        for (final GarbageCollectorMXBean gcBean : ManagementFactory.getGarbageCollectorMXBeans()) {
+            count += Math.max(0, gcBean.getCollectionCount());
+        }
+        return count;
+    }
+
+    private static long totalGcTimeMillis() {
+        long time = 0;
+        for (final GarbageCollectorMXBean gcBean : ManagementFactory.getGarbageCollectorMXBeans()) {
+            time += Math.max(0, gcBean.getCollectionTime());
+        }
+        return time;
+    }
+}
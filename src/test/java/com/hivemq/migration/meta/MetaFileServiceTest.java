@@ -84,6 +84,8 @@ public class MetaFileServiceTest {
         metaInformation.setPublishPayloadPersistenceVersion("6.3.33");
         metaInformation.setPublishPayloadPersistenceType(PersistenceType.FILE);
         metaInformation.setRetainedMessagesPersistenceType(PersistenceType.FILE_NATIVE);
+        metaInformation.setQueuedMessagesPersistenceType(PersistenceType.FILE_SEGMENTED);
+        metaInformation.setQueuedMessagesValueFormatVersion(1);
         MetaFileService.writeMetaFile(systemInformation, metaInformation);
         final MetaInformation metaFile = MetaFileService.readMetaFile(systemInformation);
         assertTrue(metaFile.isDataFolderPresent());
@@ -97,6 +99,8 @@ public class MetaFileServiceTest {
         assertEquals("6.3.33", metaFile.getPublishPayloadPersistenceVersion());
         assertEquals(PersistenceType.FILE, metaFile.getPublishPayloadPersistenceType());
         assertEquals(PersistenceType.FILE_NATIVE, metaFile.getRetainedMessagesPersistenceType());
+        assertEquals(PersistenceType.FILE_SEGMENTED, metaFile.getQueuedMessagesPersistenceType());
+        assertEquals(Integer.valueOf(1), metaFile.getQueuedMessagesValueFormatVersion());
     }
 
     @Test
@@ -116,5 +120,7 @@ public class MetaFileServiceTest {
         assertNull(metaFile.getPublishPayloadPersistenceVersion());
         assertNull(metaFile.getRetainedMessagesPersistenceType());
         assertNull(metaFile.getPublishPayloadPersistenceType());
+        assertNull(metaFile.getQueuedMessagesPersistenceType());
+        assertNull(metaFile.getQueuedMessagesValueFormatVersion());
     }
 }
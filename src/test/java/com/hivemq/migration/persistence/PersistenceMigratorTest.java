@@ -20,12 +20,16 @@ import com.hivemq.extension.sdk.api.annotations.NotNull;
 import com.hivemq.migration.MigrationUnit;
 import com.hivemq.migration.meta.PersistenceType;
 import com.hivemq.migration.persistence.payload.PublishPayloadTypeMigration;
+import com.hivemq.migration.persistence.queue.ClientQueueCompactFormatMigration;
 import com.hivemq.migration.persistence.queue.ClientQueuePayloadIDMigration;
+import com.hivemq.migration.persistence.queue.ClientQueueTypeMigration;
 import com.hivemq.migration.persistence.retained.RetainedMessagePayloadIDMigration;
 import com.hivemq.migration.persistence.retained.RetainedMessageTypeMigration;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.util.Set;
+
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.verify;
 
@@ -39,12 +43,16 @@ public class PersistenceMigratorTest {
     private final @NotNull RetainedMessageTypeMigration retainedMessageTypeMigration = mock();
     private final @NotNull ClientQueuePayloadIDMigration clientQueuePayloadIDMigration = mock();
     private final @NotNull RetainedMessagePayloadIDMigration retainedMessagePayloadIDMigration = mock();
+    private final @NotNull ClientQueueTypeMigration clientQueueTypeMigration = mock();
+    private final @NotNull ClientQueueCompactFormatMigration clientQueueCompactFormatMigration = mock();
     @Before
     public void setUp() throws Exception {
         persistenceMigrator = new PersistenceMigrator(() -> publishPayloadTypeMigration,
                 () -> retainedMessageTypeMigration,
                 () -> retainedMessagePayloadIDMigration,
-                () -> clientQueuePayloadIDMigration);
+                () -> clientQueuePayloadIDMigration,
+                () -> clientQueueTypeMigration,
+                () -> clientQueueCompactFormatMigration);
     }
 
     @Test
@@ -77,6 +85,19 @@ public class PersistenceMigratorTest {
         verify(retainedMessageTypeMigration).migrateToType(PersistenceType.FILE_NATIVE);
     }
 
+    @Test
+    public void test_migrate_client_queue_to_segmented() {
+        persistenceMigrator.migratePersistenceTypes(ImmutableMap.of(MigrationUnit.FILE_PERSISTENCE_CLIENT_QUEUE,
+                PersistenceType.FILE_SEGMENTED));
+        verify(clientQueueTypeMigration).migrateToType(PersistenceType.FILE_SEGMENTED);
+    }
+
+    @Test
+    public void test_migrate_client_queue_to_compact_value_format() {
+        persistenceMigrator.migratePersistenceValues(Set.of(MigrationUnit.COMPACT_VALUE_FORMAT_CLIENT_QUEUE));
+        verify(clientQueueCompactFormatMigration).migrateToValue();
+    }
+
     @Test
     public void test_migrate_publish_to_nativr_and_retained_to_file() {
         persistenceMigrator.migratePersistenceTypes(ImmutableMap.of(MigrationUnit.FILE_PERSISTENCE_PUBLISH_PAYLOAD,
@@ -15,9 +15,11 @@
  */
 package com.hivemq.mqtt;
 
+import ch.qos.logback.classic.Level;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.SettableFuture;
 import com.hivemq.extension.sdk.api.annotations.NotNull;
 import com.hivemq.mqtt.handler.publish.PublishReturnCode;
 import com.hivemq.mqtt.message.QoS;
@@ -28,10 +30,14 @@ import com.hivemq.mqtt.topic.SubscriberWithIdentifiers;
 import com.hivemq.mqtt.topic.SubscriptionFlag;
 import com.hivemq.mqtt.topic.tree.LocalTopicTree;
 import com.hivemq.mqtt.topic.tree.TopicSubscribers;
+import com.hivemq.persistence.local.xodus.XodusDurableSync;
 import com.hivemq.persistence.retained.RetainedMessagePersistence;
+import com.hivemq.util.Exceptions;
 import org.junit.Before;
 import org.junit.Test;
 import org.mockito.ArgumentCaptor;
+import org.slf4j.LoggerFactory;
+import util.LogbackCapturingAppender;
 import util.TestException;
 import util.TestMessageUtil;
 
@@ -39,7 +45,9 @@ import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
+import static com.hivemq.mqtt.handler.publish.PublishReturnCode.DELIVERED;
 import static com.hivemq.mqtt.handler.publish.PublishReturnCode.FAILED;
 import static com.hivemq.mqtt.handler.publish.PublishReturnCode.NO_MATCHING_SUBSCRIBERS;
 import static org.junit.Assert.assertEquals;
@@ -64,6 +72,7 @@ public class InternalPublishServiceImplTest {
     private final @NotNull RetainedMessagePersistence retainedMessagePersistence = mock();
     private final @NotNull LocalTopicTree topicTree = mock();
     private final @NotNull PublishDistributor publishDistributor = mock();
+    private final @NotNull XodusDurableSync durableSync = mock();
     private ExecutorService executorService;
     private InternalPublishServiceImpl publishService;
     @Before
@@ -73,14 +82,20 @@ public class InternalPublishServiceImplTest {
                 .thenReturn(Futures.immediateFuture(null));
         when(publishDistributor.distributeToSharedSubscribers(anySet(), any(PUBLISH.class), eq(executorService)))
                 .thenReturn(Futures.immediateFuture(null));
-        publishService = new InternalPublishServiceImpl(retainedMessagePersistence, topicTree, publishDistributor);
+        publishService = new InternalPublishServiceImpl(retainedMessagePersistence,
+                topicTree,
+                publishDistributor,
+                durableSync);
     }
 
     @Test(timeout = 20000)
     public void test_retained_message_remove() throws Exception {
         when(topicTree.findTopicSubscribers(anyString()))
                 .thenReturn(new TopicSubscribers(ImmutableSet.of(), ImmutableSet.of()));
-        publishService = new InternalPublishServiceImpl(retainedMessagePersistence, topicTree, publishDistributor);
+        publishService = new InternalPublishServiceImpl(retainedMessagePersistence,
+                topicTree,
+                publishDistributor,
+                durableSync);
         final PUBLISH publish =
                 TestMessageUtil.createMqtt3Publish("hivemqId", "subonly", QoS.AT_LEAST_ONCE, new byte[0], true);
         when(retainedMessagePersistence.remove(anyString())).thenReturn(Futures.immediateFuture(null));
@@ -92,7 +107,10 @@ public class InternalPublishServiceImplTest {
     public void test_retained_message_remove_failed() throws Exception {
         when(topicTree.findTopicSubscribers(anyString()))
                 .thenReturn(new TopicSubscribers(ImmutableSet.of(), ImmutableSet.of()));
-        publishService = new InternalPublishServiceImpl(retainedMessagePersistence, topicTree, publishDistributor);
+        publishService = new InternalPublishServiceImpl(retainedMessagePersistence,
+                topicTree,
+                publishDistributor,
+                durableSync);
         final PUBLISH publish =
                 TestMessageUtil.createMqtt3Publish("hivemqId", "subonly", QoS.AT_LEAST_ONCE, new byte[0], true);
         when(retainedMessagePersistence.remove(anyString()))
@@ -226,4 +244,59 @@ public class InternalPublishServiceImplTest {
         assertNull(map.get("sub1"));
         assertNotNull(map.get("sub2"));
     }
+
+    @Test(timeout = 20000)
+    public void test_durable_group_commit_acknowledges_after_sync() throws Exception {
+        final SettableFuture<Void> syncFuture = SettableFuture.create();
+        when(durableSync.isEnabled()).thenReturn(true);
+        when(durableSync.awaitSync()).thenReturn(syncFuture);
+        final SubscriberWithIdentifiers sub = new SubscriberWithIdentifiers("sub", 1, (byte) 0, null);
+        when(topicTree.findTopicSubscribers("topic"))
+                .thenReturn(new TopicSubscribers(ImmutableSet.of(sub), ImmutableSet.of()));
+        final PUBLISH publish = TestMessageUtil.createMqtt5Publish("topic");
+
+        final Future<PublishReturnCode> returnCode = publishService.publish(publish, executorService, "sender");
+        assertFalse(returnCode.isDone());
+
+        syncFuture.set(null);
+        assertEquals(DELIVERED, returnCode.get());
+    }
+
+    @Test(timeout = 20000)
+    public void test_durable_group_commit_sync_failed() throws Exception {
+        when(durableSync.isEnabled()).thenReturn(true);
+        when(durableSync.awaitSync()).thenReturn(Futures.immediateFailedFuture(TestException.INSTANCE));
+        final SubscriberWithIdentifiers sub = new SubscriberWithIdentifiers("sub", 1, (byte) 0, null);
+        when(topicTree.findTopicSubscribers("topic"))
+                .thenReturn(new TopicSubscribers(ImmutableSet.of(sub), ImmutableSet.of()));
+        final PUBLISH publish = TestMessageUtil.createMqtt5Publish("topic");
+
+        assertEquals(FAILED, publishService.publish(publish, executorService, "sender").get());
+    }
+
+    @Test(timeout = 20000)
+    public void test_durable_group_commit_retained_sync_failed_is_logged() throws Exception {
+        when(durableSync.isEnabled()).thenReturn(true);
+        when(durableSync.awaitSync()).thenReturn(Futures.immediateFailedFuture(TestException.INSTANCE));
+        when(topicTree.findTopicSubscribers(anyString()))
+                .thenReturn(new TopicSubscribers(ImmutableSet.of(), ImmutableSet.of()));
+        when(retainedMessagePersistence.persist(anyString(), any())).thenReturn(Futures.immediateFuture(null));
+        final PUBLISH publish = TestMessageUtil.createMqtt3Publish("hivemqId",
+                "retained",
+                QoS.AT_LEAST_ONCE,
+                "payload".getBytes(),
+                true);
+        final LogbackCapturingAppender logCapture =
+                LogbackCapturingAppender.Factory.weaveInto(LoggerFactory.getLogger(Exceptions.class));
+        try {
+            assertEquals(NO_MATCHING_SUBSCRIBERS, publishService.publish(publish, executorService, "sender").get());
+            assertTrue(logCapture.isLogCaptured());
+            assertEquals(Level.ERROR, logCapture.getLastCapturedLog().getLevel());
+            assertTrue(logCapture.getLastCapturedLog()
+                    .getFormattedMessage()
+                    .startsWith("Unable to sync retained message for topic retained"));
+        } finally {
+            LogbackCapturingAppender.Factory.cleanUp();
+        }
+    }
 }
@@ -15,6 +15,7 @@
  */
 package com.hivemq.mqtt.handler.connect;
 
+import com.codahale.metrics.MetricRegistry;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.SettableFuture;
@@ -45,8 +46,10 @@ import com.hivemq.extensions.handler.tasks.PublishAuthorizerResult;
 import com.hivemq.extensions.packets.general.ModifiableDefaultPermissionsImpl;
 import com.hivemq.extensions.services.auth.Authorizers;
 import com.hivemq.extensions.services.builder.TopicPermissionBuilderImpl;
+import com.hivemq.limitation.MemoryGovernor;
 import com.hivemq.limitation.TopicAliasLimiterImpl;
 import com.hivemq.logging.EventLog;
+import com.hivemq.metrics.HiveMQMetrics;
 import com.hivemq.mqtt.handler.KeepAliveDisconnectHandler;
 import com.hivemq.mqtt.handler.KeepAliveDisconnectService;
 import com.hivemq.mqtt.handler.auth.AuthInProgressMessageHandler;
@@ -114,6 +117,7 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.ArgumentMatchers.eq;
@@ -123,6 +127,7 @@ import static org.mockito.Mockito.anyLong;
 import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.isNull;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
@@ -137,6 +142,7 @@ public class ConnectHandlerTest {
     private final @NotNull Authorizers authorizers = mock();
     private final @NotNull PluginAuthorizerService pluginAuthorizerService = mock();
     private final @NotNull PluginAuthenticatorServiceImpl internalAuthServiceImpl = mock();
+    private final @NotNull MetricRegistry metricRegistry = new MetricRegistry();
     private FullConfigurationService configurationService;
     private MqttConnacker mqttConnacker;
     private ChannelHandlerContext ctx;
@@ -538,6 +544,9 @@ public class ConnectHandlerTest {
         disconnectMessageWaiter.await();
         final DISCONNECT disconnectMessage = testDisconnectHandler.getDisconnectMessage();
         assertNull(disconnectMessage);
+        // the new connection resumes the session and may take it over without persisting the disconnect
+        assertSame(ClientConnection.of(channel), oldClientConnection.getTakeoverSuccessor());
+        assertEquals(1, metricRegistry.timer(HiveMQMetrics.SESSION_TAKEOVER_TIME.name()).getCount());
     }
 
     @Test(timeout = 5_000)
@@ -1254,6 +1263,26 @@ public class ConnectHandlerTest {
                 .clientConnected(eq("client"), eq(false), eq(SESSION_EXPIRY_MAX), eq(null), eq(123L));
     }
 
+    @Test
+    public void test_start_connection_session_handed_over() throws Exception {
+        final CONNECT connect = new CONNECT.Mqtt3Builder().withClientIdentifier("client")
+                .withProtocolVersion(ProtocolVersion.MQTTv3_1_1)
+                .withCleanStart(false)
+                .withSessionExpiryInterval(SESSION_EXPIRY_MAX)
+                .build();
+        clientConnectionContext.setClientId("client");
+        final ClientConnection clientConnection = ClientConnection.from(clientConnectionContext);
+        clientConnection.setHandedOverSessionExpiryInterval(20000L);
+        clientConnection.setTakeoverStartNanos(System.nanoTime());
+        handler.afterTakeover(ctx, clientConnection, connect);
+        channel.runPendingTasks();
+        verify(clientSessionPersistence, never()).isExistent(anyString());
+        verify(clientSessionPersistence)
+                .clientConnected(eq("client"), eq(false), eq(SESSION_EXPIRY_MAX), isNull(), isNull());
+        assertEquals(1, metricRegistry.counter(HiveMQMetrics.SESSION_TAKEOVER_FAST_PATH_COUNT.name()).getCount());
+        assertEquals(1, metricRegistry.timer(HiveMQMetrics.SESSION_TAKEOVER_TIME.name()).getCount());
+    }
+
     @Test
     public void test_update_persistence_data_fails() throws Exception {
         final CONNECT connect = new CONNECT.Mqtt3Builder().withClientIdentifier("client")
@@ -1300,14 +1329,15 @@ public class ConnectHandlerTest {
                 publishFlowHandlerProvider,
                 flowControlHandlerProvider,
                 mqttConnacker,
-                new TopicAliasLimiterImpl(),
+                new TopicAliasLimiterImpl(new MetricRegistry(), mock(MemoryGovernor.class)),
                 mock(PublishPollService.class),
                 mock(SharedSubscriptionService.class),
                 internalAuthServiceImpl,
                 authorizers,
                 pluginAuthorizerService,
                 serverDisconnector,
-                mock(KeepAliveDisconnectService.class));
+                mock(KeepAliveDisconnectService.class),
+                metricRegistry);
         handler.postConstruct();
         channel.pipeline()
                 .addAfter(ChannelHandlerNames.MQTT_MESSAGE_DECODER, ChannelHandlerNames.MQTT_CONNECT_HANDLER, handler);
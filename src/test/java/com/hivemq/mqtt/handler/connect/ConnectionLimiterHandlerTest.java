@@ -17,6 +17,7 @@ package com.hivemq.mqtt.handler.connect;
 
 import com.hivemq.configuration.service.RestrictionsConfigurationService;
 import com.hivemq.extension.sdk.api.annotations.NotNull;
+import com.hivemq.limitation.OverloadProtection;
 import com.hivemq.metrics.gauges.OpenConnectionsGauge;
 import com.hivemq.mqtt.handler.connack.MqttConnacker;
 import com.hivemq.mqtt.message.connect.CONNECT;
@@ -52,10 +53,12 @@ public class ConnectionLimiterHandlerTest {
     private final @NotNull MqttConnacker mqttConnacker = mock();
     private final @NotNull RestrictionsConfigurationService restrictionsEntity = mock();
     private final @NotNull CONNECT connect = mock();
+    private final @NotNull OverloadProtection overloadProtection = mock();
     @Before
     public void setUp() throws Exception {
         when(ctx.channel()).thenReturn(channel);
         when(ctx.pipeline()).thenReturn(pipeline);
+        when(overloadProtection.admitConnect()).thenReturn(true);
     }
 
     @Test
@@ -63,7 +66,7 @@ public class ConnectionLimiterHandlerTest {
         when(restrictionsEntity.maxConnections()).thenReturn(10L);
         when(connectionCounter.getValue()).thenReturn(11);
         final ConnectionLimiterHandler limiter =
-                new ConnectionLimiterHandler(mqttConnacker, restrictionsEntity, connectionCounter);
+                new ConnectionLimiterHandler(mqttConnacker, restrictionsEntity, connectionCounter, overloadProtection);
         limiter.channelActive(ctx);
         limiter.channelRead(ctx, connect);
         assertEquals(10L, limiter.getMaxConnections());
@@ -78,7 +81,7 @@ public class ConnectionLimiterHandlerTest {
         when(restrictionsEntity.maxConnections()).thenReturn(4L);
         when(connectionCounter.getValue()).thenReturn(3);
         final ConnectionLimiterHandler limiter =
-                new ConnectionLimiterHandler(mqttConnacker, restrictionsEntity, connectionCounter);
+                new ConnectionLimiterHandler(mqttConnacker, restrictionsEntity, connectionCounter, overloadProtection);
         limiter.channelActive(ctx);
         limiter.channelRead(ctx, connect);
         assertEquals(4L, limiter.getMaxConnections());
@@ -90,8 +93,38 @@ public class ConnectionLimiterHandlerTest {
         when(restrictionsEntity.maxConnections()).thenReturn(-1L);
         when(connectionCounter.getValue()).thenReturn(11);
         final ConnectionLimiterHandler limiter =
-                new ConnectionLimiterHandler(mqttConnacker, restrictionsEntity, connectionCounter);
+                new ConnectionLimiterHandler(mqttConnacker, restrictionsEntity, connectionCounter, overloadProtection);
         limiter.channelActive(ctx);
         verify(pipeline, atLeastOnce()).remove(any(ChannelHandler.class));
     }
+
+    @Test
+    public void overload_protection_rejects_connect() throws Exception {
+        when(restrictionsEntity.maxConnections()).thenReturn(10L);
+        when(connectionCounter.getValue()).thenReturn(3);
+        when(overloadProtection.admitConnect()).thenReturn(false);
+        final ConnectionLimiterHandler limiter =
+                new ConnectionLimiterHandler(mqttConnacker, restrictionsEntity, connectionCounter, overloadProtection);
+        limiter.channelActive(ctx);
+        limiter.channelRead(ctx, connect);
+        verify(mqttConnacker).connackError(any(
+                Channel.class), isNull(), anyString(), eq(Mqtt5ConnAckReasonCode.SERVER_BUSY), isNull());
+        verify(ctx, never()).fireChannelRead(connect);
+    }
+
+    @Test
+    public void unlimited_connections_overload_protection_enabled() throws Exception {
+        when(restrictionsEntity.maxConnections()).thenReturn(-1L);
+        when(connectionCounter.getValue()).thenReturn(11);
+        when(overloadProtection.isEnabled()).thenReturn(true);
+        final ConnectionLimiterHandler limiter =
+                new ConnectionLimiterHandler(mqttConnacker, restrictionsEntity, connectionCounter, overloadProtection);
+        limiter.channelActive(ctx);
+        verify(pipeline, never()).remove(any(ChannelHandler.class));
+
+        limiter.channelRead(ctx, connect);
+        verify(mqttConnacker, never()).connackError(any(), any(), any(), any(), any());
+        verify(overloadProtection).admitConnect();
+        verify(ctx).fireChannelRead(connect);
+    }
 }
@@ -30,6 +30,8 @@ import com.hivemq.mqtt.message.ProtocolVersion;
 import com.hivemq.mqtt.message.disconnect.DISCONNECT;
 import com.hivemq.mqtt.message.mqtt5.Mqtt5UserProperties;
 import com.hivemq.mqtt.message.reason.Mqtt5DisconnectReasonCode;
+import com.hivemq.mqtt.services.SharedSubscriptionDispatcher;
+import com.hivemq.persistence.clientqueue.ClientQueuePersistence;
 import com.hivemq.persistence.clientsession.ClientSessionPersistence;
 import com.hivemq.persistence.connection.ConnectionPersistence;
 import io.netty.channel.ChannelFuture;
@@ -40,6 +42,7 @@ import util.DummyClientConnection;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.ArgumentMatchers.anyBoolean;
 import static org.mockito.ArgumentMatchers.anyLong;
@@ -58,6 +61,8 @@ public class DisconnectHandlerTest {
     private final @NotNull TopicAliasLimiter topicAliasLimiter = mock();
     private final @NotNull ClientSessionPersistence clientSessionPersistence = mock();
     private final @NotNull ConnectionPersistence connectionPersistence = mock();
+    private final @NotNull SharedSubscriptionDispatcher sharedSubscriptionDispatcher = mock();
+    private final @NotNull ClientQueuePersistence clientQueuePersistence = mock();
     private final @NotNull EventLog eventLog = spy(new EventLog());
     private final @NotNull MetricsHolder metricsHolder = new MetricsHolder(new MetricRegistry());
     private @NotNull ClientConnection clientConnection;
@@ -67,7 +72,9 @@ public class DisconnectHandlerTest {
                 metricsHolder,
                 topicAliasLimiter,
                 clientSessionPersistence,
-                connectionPersistence);
+                connectionPersistence,
+                sharedSubscriptionDispatcher,
+                clientQueuePersistence);
         channel = new EmbeddedChannel(disconnectHandler);
         final ClientConnectionContext clientConnectionContext = new UndefinedClientConnection(channel, null, mock());
         clientConnectionContext.setClientId("clientId");
@@ -79,6 +86,8 @@ public class DisconnectHandlerTest {
         when(connectionPersistence.get(anyString())).thenReturn(clientConnection);
         when(clientSessionPersistence.clientDisconnected(anyString(), anyBoolean(), anyLong()))
                 .thenReturn(Futures.immediateFuture(null));
+        when(clientQueuePersistence.removeAllQos0Messages(anyString(), anyBoolean()))
+                .thenReturn(Futures.immediateFuture(null));
     }
 
     @Test
@@ -221,4 +230,43 @@ public class DisconnectHandlerTest {
         verify(clientSessionPersistence, never()).clientDisconnected(eq("client"), anyBoolean(), anyLong());
         assertTrue(disconnectFuture.isDone());
     }
+
+    @Test
+    public void test_takeover_hands_over_session_without_will() throws Exception {
+        final SettableFuture<Void> disconnectFuture = SettableFuture.create();
+        final ClientConnection successor = new DummyClientConnection(new EmbeddedChannel(), null);
+        clientConnection.setDisconnectFuture(disconnectFuture);
+        clientConnection.setTakeoverSuccessor(successor);
+        clientConnection.proposeClientState(ClientState.DISCONNECTED_TAKEN_OVER);
+        channel.disconnect().get();
+        verify(clientSessionPersistence, never()).clientDisconnected(anyString(), anyBoolean(), anyLong());
+        verify(clientQueuePersistence).removeAllQos0Messages("clientId", false);
+        verify(connectionPersistence).remove(clientConnection);
+        assertEquals(1245L, successor.getHandedOverSessionExpiryInterval().longValue());
+        assertTrue(disconnectFuture.isDone());
+    }
+
+    @Test
+    public void test_takeover_does_not_hand_over_session_with_will() throws Exception {
+        final ClientConnection successor = new DummyClientConnection(new EmbeddedChannel(), null);
+        clientConnection.setDisconnectFuture(SettableFuture.create());
+        clientConnection.setTakeoverSuccessor(successor);
+        clientConnection.setConnectedWithWill(true);
+        clientConnection.proposeClientState(ClientState.DISCONNECTED_TAKEN_OVER);
+        channel.disconnect().get();
+        verify(clientSessionPersistence).clientDisconnected(eq("clientId"), anyBoolean(), eq(1245L));
+        assertNull(successor.getHandedOverSessionExpiryInterval());
+    }
+
+    @Test
+    public void test_takeover_does_not_hand_over_session_expiring_on_disconnect() throws Exception {
+        final ClientConnection successor = new DummyClientConnection(new EmbeddedChannel(), null);
+        clientConnection.setDisconnectFuture(SettableFuture.create());
+        clientConnection.setTakeoverSuccessor(successor);
+        clientConnection.setClientSessionExpiryInterval(0L);
+        clientConnection.proposeClientState(ClientState.DISCONNECTED_TAKEN_OVER);
+        channel.disconnect().get();
+        verify(clientSessionPersistence).clientDisconnected(eq("clientId"), anyBoolean(), eq(0L));
+        assertNull(successor.getHandedOverSessionExpiryInterval());
+    }
 }
@@ -0,0 +1,125 @@
+/*
+ * Copyright 2019-present HiveMQ GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hivemq.mqtt.handler.publish;
+
+import com.codahale.metrics.MetricRegistry;
+import com.hivemq.configuration.service.InternalConfigurations;
+import com.hivemq.extension.sdk.api.annotations.NotNull;
+import com.hivemq.metrics.HiveMQMetrics;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.util.ReferenceCountUtil;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class AdaptiveFlushHandlerTest {
+
+    private final @NotNull MetricRegistry metricRegistry = new MetricRegistry();
+    private @NotNull AdaptiveFlushHandler adaptiveFlushHandler;
+    private @NotNull EmbeddedChannel channel;
+    @Before
+    public void setUp() {
+        adaptiveFlushHandler = new AdaptiveFlushHandler(new FlushMetrics(metricRegistry));
+        // answers every inbound message with a flushed packet like a PUBACK for a PUBLISH
+        channel = new EmbeddedChannel(adaptiveFlushHandler, new ChannelInboundHandlerAdapter() {
+            @Override
+            public void channelRead(final @NotNull ChannelHandlerContext ctx, final @NotNull Object msg) {
+                ReferenceCountUtil.release(msg);
+                ctx.writeAndFlush(Unpooled.wrappedBuffer(new byte[4]));
+            }
+        });
+    }
+
+    @Test
+    public void test_flushes_outside_of_read_coalesced_until_pending_tasks_run() {
+        channel.write(Unpooled.wrappedBuffer(new byte[10]));
+        channel.pipeline().flush();
+        channel.write(Unpooled.wrappedBuffer(new byte[20]));
+        channel.pipeline().flush();
+        assertNull(channel.readOutbound());
+
+        channel.runPendingTasks();
+        assertBytesOutbound(10);
+        assertBytesOutbound(20);
+        assertFlushed(1, 2, 30);
+    }
+
+    @Test
+    public void test_flushes_during_read_coalesced_until_read_complete() {
+        channel.writeInbound(Unpooled.wrappedBuffer(new byte[1]), Unpooled.wrappedBuffer(new byte[1]));
+        assertBytesOutbound(4);
+        assertBytesOutbound(4);
+        assertFlushed(1, 2, 8);
+    }
+
+    @Test
+    public void test_flush_immediately_when_threshold_reached() {
+        final int threshold = adaptiveFlushHandler.getThresholdBytes();
+        assertEquals(InternalConfigurations.FLUSH_CONSOLIDATION_MIN_THRESHOLD_BYTES.get().intValue(), threshold);
+        channel.write(Unpooled.wrappedBuffer(new byte[threshold]));
+        channel.pipeline().flush();
+        assertBytesOutbound(threshold);
+        assertFlushed(1, 1, threshold);
+    }
+
+    @Test
+    public void test_close_flushes_pending_writes() {
+        channel.write(Unpooled.wrappedBuffer(new byte[10]));
+        channel.pipeline().flush();
+        channel.close();
+        assertBytesOutbound(10);
+    }
+
+    @Test
+    public void test_threshold_grows_with_round_trip_time() throws Exception {
+        channel.write(Unpooled.wrappedBuffer(new byte[10]));
+        channel.flush();
+        assertBytesOutbound(10);
+
+        Thread.sleep(3);
+        channel.writeInbound(Unpooled.wrappedBuffer(new byte[1]));
+        final int min = InternalConfigurations.FLUSH_CONSOLIDATION_MIN_THRESHOLD_BYTES.get();
+        final int max = InternalConfigurations.FLUSH_CONSOLIDATION_MAX_THRESHOLD_BYTES.get();
+        assertTrue(adaptiveFlushHandler.getThresholdBytes() >= Math.min(max, 4 * min));
+        assertTrue(adaptiveFlushHandler.getThresholdBytes() <= max);
+    }
+
+    private void assertBytesOutbound(final int bytes) {
+        final ByteBuf buf = channel.readOutbound();
+        assertNotNull(buf);
+        assertEquals(bytes, buf.readableBytes());
+        buf.release();
+    }
+
+    private void assertFlushed(final long flushes, final long messages, final long bytes) {
+        assertEquals(flushes, metricRegistry.counter(HiveMQMetrics.MQTT_CONNECTION_FLUSHES.name()).getCount());
+        assertEquals(messages,
+                metricRegistry.counter(HiveMQMetrics.MQTT_CONNECTION_FLUSHED_MESSAGES.name()).getCount());
+        assertEquals(bytes, metricRegistry.counter(HiveMQMetrics.MQTT_CONNECTION_FLUSHED_BYTES.name()).getCount());
+        assertEquals((double) flushes / messages,
+                metricRegistry.getGauges().get(HiveMQMetrics.MQTT_CONNECTION_FLUSHES_PER_MESSAGE.name()).getValue());
+        assertEquals((double) bytes / flushes,
+                metricRegistry.getGauges().get(HiveMQMetrics.MQTT_CONNECTION_BYTES_PER_FLUSH.name()).getValue());
+    }
+}
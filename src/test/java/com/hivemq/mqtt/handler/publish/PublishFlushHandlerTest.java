@@ -24,6 +24,7 @@ import com.hivemq.mqtt.message.QoS;
 import com.hivemq.mqtt.message.publish.PUBLISH;
 import com.hivemq.mqtt.message.publish.PUBLISHFactory;
 import com.hivemq.mqtt.message.publish.PublishWithFuture;
+import com.hivemq.mqtt.services.SharedSubscriptionDispatcher;
 import io.netty.channel.Channel;
 import io.netty.channel.ChannelFuture;
 import io.netty.channel.ChannelHandlerContext;
@@ -56,7 +57,9 @@ public class PublishFlushHandlerTest {
     private final @NotNull ChannelHandlerContext channelHandlerContext = mock();
     private final @NotNull EventLoop eventLoop = mock();
     private final @NotNull MetricsHolder metricsHolder = new MetricsHolder(new MetricRegistry());
-    private @NotNull PublishFlushHandler publishFlushHandler = new PublishFlushHandler(metricsHolder);
+    private final @NotNull SharedSubscriptionDispatcher sharedSubscriptionDispatcher = mock();
+    private @NotNull PublishFlushHandler publishFlushHandler =
+            new PublishFlushHandler(metricsHolder, sharedSubscriptionDispatcher);
     @Before
     public void setUp() {
         initMocks(this);
@@ -116,7 +119,7 @@ public class PublishFlushHandlerTest {
         when(channel.isWritable()).thenReturn(true);
         when(channel.isActive()).thenReturn(true);
         InternalConfigurations.COUNT_OF_PUBLISHES_WRITTEN_TO_CHANNEL_TO_TRIGGER_FLUSH.set(1);
-        publishFlushHandler = new PublishFlushHandler(metricsHolder);
+        publishFlushHandler = new PublishFlushHandler(metricsHolder, sharedSubscriptionDispatcher);
         publishFlushHandler.handlerAdded(channelHandlerContext);
         final PUBLISH publish = new PUBLISHFactory.Mqtt3Builder().withTopic("topic")
                 .withHivemqId("hivemqId")
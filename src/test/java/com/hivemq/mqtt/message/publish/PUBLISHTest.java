@@ -33,6 +33,8 @@ import java.util.stream.Stream;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 
 /**
@@ -146,6 +148,47 @@ public class PUBLISHTest {
         }
     }
 
+    @Test
+    public void test_copies_for_subscribers_share_core() {
+        final PUBLISH publish = new PUBLISHFactory.Mqtt5Builder().withQoS(QoS.EXACTLY_ONCE)
+                .withOnwardQos(QoS.EXACTLY_ONCE)
+                .withHivemqId("hivemqId")
+                .withTopic("topic")
+                .withPayload("payload".getBytes())
+                .withResponseTopic("response")
+                .build();
+        final PUBLISH copy = new PUBLISHFactory.Mqtt5Builder().fromPublish(publish)
+                .withQoS(QoS.AT_LEAST_ONCE)
+                .withRetain(true)
+                .withPacketIdentifier(1)
+                .build();
+        assertSame(publish.getCore(), copy.getCore());
+        assertSame(publish.getUniqueId(), copy.getUniqueId());
+        assertSame(publish.getSharedEncoding(), copy.getSharedEncoding());
+        assertEquals(QoS.AT_LEAST_ONCE, copy.getQoS());
+        assertTrue(copy.isRetain());
+        assertEquals(publish.getEstimatedSizeInMemory(), copy.getEstimatedSizeInMemory());
+        assertSame(publish.getCore(), new PUBLISH(publish).getCore());
+    }
+
+    @Test
+    public void test_copies_with_changed_topic_or_properties_do_not_share_core() {
+        final PUBLISH publish = new PUBLISHFactory.Mqtt5Builder().withQoS(QoS.AT_MOST_ONCE)
+                .withOnwardQos(QoS.AT_MOST_ONCE)
+                .withHivemqId("hivemqId")
+                .withTopic("topic")
+                .build();
+        final PUBLISH otherTopic =
+                new PUBLISHFactory.Mqtt5Builder().fromPublish(publish).withTopic("other").build();
+        final PUBLISH otherContentType =
+                new PUBLISHFactory.Mqtt5Builder().fromPublish(publish).withContentType("type").build();
+        assertNotSame(publish.getCore(), otherTopic.getCore());
+        assertEquals("other", otherTopic.getTopic());
+        assertEquals(publish.getUniqueId(), otherTopic.getUniqueId());
+        assertNotSame(publish.getCore(), otherContentType.getCore());
+        assertEquals("type", otherContentType.getContentType());
+    }
+
     @Test
     public void test_estimated_size_min() {
         final PUBLISH publishMqtt5 = new PUBLISHFactory.Mqtt5Builder().withQoS(QoS.AT_MOST_ONCE)
@@ -170,6 +213,18 @@ public class PUBLISHTest {
                 publishMqtt5.getEstimatedSizeInMemory());
     }
 
+    @Test
+    public void test_estimated_size_before_unique_id_is_built() {
+        final PUBLISH publishMqtt5 = new PUBLISHFactory.Mqtt5Builder().withQoS(QoS.AT_MOST_ONCE)
+                .withOnwardQos(QoS.AT_MOST_ONCE)
+                .withHivemqId("hivemqId") // 16+38 = 54 bytes
+                .withPublishId(1_234_567_890_123L)
+                .withTopic("topic") // 10+38 = 48 bytes
+                .build();
+        final int size = publishMqtt5.getEstimatedSizeInMemory();
+        assertEquals(48 + 54 + FIXED_SIZE + ObjectMemoryEstimation.stringSize(publishMqtt5.getUniqueId()), size);
+    }
+
     @Test
     public void test_estimated_size_very_large() {
         final PUBLISH publishMqtt5 = new PUBLISHFactory.Mqtt5Builder().withQoS(QoS.AT_MOST_ONCE)
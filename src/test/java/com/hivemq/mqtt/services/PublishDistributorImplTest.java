@@ -27,7 +27,7 @@ import com.hivemq.mqtt.message.publish.PUBLISHFactory;
 import com.hivemq.mqtt.topic.SubscriberWithIdentifiers;
 import com.hivemq.persistence.SingleWriterService;
 import com.hivemq.persistence.clientqueue.ClientQueuePersistence;
-import com.hivemq.persistence.clientsession.ClientSession;
+import com.hivemq.persistence.clientsession.ClientSessionState;
 import com.hivemq.persistence.clientsession.ClientSessionPersistence;
 import org.junit.After;
 import org.junit.Before;
@@ -74,7 +74,7 @@ public class PublishDistributorImplTest {
 
     @Test(timeout = 5000)
     public void test_not_connected() throws ExecutionException, InterruptedException {
-        when(clientSessionPersistence.getSession("client", false)).thenReturn(new ClientSession(false, 1000L));
+        when(clientSessionPersistence.getSessionState("client")).thenReturn(sessionState(false));
         final PublishStatus status =
                 publishDistributor
                         .sendMessageToSubscriber(createPublish(
@@ -85,7 +85,7 @@ public class PublishDistributorImplTest {
 
     @Test(timeout = 5000)
     public void test_session_expired() throws ExecutionException, InterruptedException {
-        when(clientSessionPersistence.getSession("client", false)).thenReturn(null);
+        when(clientSessionPersistence.getSessionState("client")).thenReturn(null);
         final PublishStatus status =
                 publishDistributor
                         .sendMessageToSubscriber(createPublish(
@@ -96,7 +96,7 @@ public class PublishDistributorImplTest {
 
     @Test(timeout = 5000)
     public void test_success() throws ExecutionException, InterruptedException {
-        when(clientSessionPersistence.getSession("client", false)).thenReturn(new ClientSession(true, 1000L));
+        when(clientSessionPersistence.getSessionState("client")).thenReturn(sessionState(true));
         when(clientQueuePersistence.add(eq("client"), eq(false), any(PUBLISH.class), anyBoolean(), anyLong()))
                 .thenReturn(Futures.immediateFuture(null));
         final PublishStatus status =
@@ -110,7 +110,7 @@ public class PublishDistributorImplTest {
 
     @Test(timeout = 5000)
     public void test_failed() throws ExecutionException, InterruptedException {
-        when(clientSessionPersistence.getSession("client", false)).thenReturn(new ClientSession(true, 1000L));
+        when(clientSessionPersistence.getSessionState("client")).thenReturn(sessionState(true));
         when(clientQueuePersistence.add(eq("client"), eq(false), any(PUBLISH.class), anyBoolean(), anyLong()))
                 .thenReturn(Futures.immediateFailedFuture(new RuntimeException("test")));
         final PublishStatus status =
@@ -122,6 +122,23 @@ public class PublishDistributorImplTest {
         assertEquals(PublishStatus.FAILED, status);
     }
 
+    @Test(timeout = 5000)
+    public void test_success_uses_queue_limit_of_session() throws ExecutionException, InterruptedException {
+        when(clientSessionPersistence.getSessionState("client")).thenReturn(new ClientSessionState(true,
+                1000L,
+                System.currentTimeMillis(),
+                5L));
+        when(clientQueuePersistence.add(eq("client"), eq(false), any(PUBLISH.class), anyBoolean(), eq(5L)))
+                .thenReturn(Futures.immediateFuture(null));
+        final PublishStatus status =
+                publishDistributor
+                        .sendMessageToSubscriber(createPublish(
+                                QoS.AT_LEAST_ONCE), "client", 1, false, false, ImmutableIntArray.of(1))
+                        .get();
+        verify(clientQueuePersistence).add(eq("client"), eq(false), any(PUBLISH.class), anyBoolean(), eq(5L));
+        assertEquals(PublishStatus.DELIVERED, status);
+    }
+
     @Test(timeout = 5000)
     public void test_success_shared() throws ExecutionException, InterruptedException {
         when(clientQueuePersistence.add(eq("group/topic"), eq(true), any(PUBLISH.class), anyBoolean(), anyLong()))
@@ -137,8 +154,8 @@ public class PublishDistributorImplTest {
 
     @Test
     public void test_distribute_to_non_shared() {
-        when(clientSessionPersistence.getSession("client1", false)).thenReturn(new ClientSession(true, 1000L));
-        when(clientSessionPersistence.getSession("client2", false)).thenReturn(new ClientSession(true, 1000L));
+        when(clientSessionPersistence.getSessionState("client1")).thenReturn(sessionState(true));
+        when(clientSessionPersistence.getSessionState("client2")).thenReturn(sessionState(true));
         when(clientQueuePersistence.add(eq("client1"), eq(false), any(PUBLISH.class), anyBoolean(), anyLong()))
                 .thenReturn(Futures.immediateFuture(null));
         when(clientQueuePersistence.add(eq("client2"), eq(false), any(PUBLISH.class), anyBoolean(), anyLong()))
@@ -178,4 +195,11 @@ public class PublishDistributorImplTest {
                 .withHivemqId("hivemqId")
                 .build();
     }
+
+    private static @NotNull ClientSessionState sessionState(final boolean connected) {
+        return new ClientSessionState(connected,
+                1000L,
+                System.currentTimeMillis(),
+                ClientSessionState.QUEUE_LIMIT_NOT_SET);
+    }
 }
@@ -15,6 +15,7 @@
  */
 package com.hivemq.mqtt.services;
 
+import com.codahale.metrics.MetricRegistry;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.primitives.ImmutableIntArray;
@@ -24,6 +25,7 @@ import com.hivemq.bootstrap.ClientConnectionContext;
 import com.hivemq.bootstrap.ClientState;
 import com.hivemq.configuration.service.InternalConfigurations;
 import com.hivemq.extension.sdk.api.annotations.NotNull;
+import com.hivemq.metrics.MetricsHolder;
 import com.hivemq.mqtt.handler.publish.PublishFlowHandler;
 import com.hivemq.mqtt.handler.publish.PublishFlushHandler;
 import com.hivemq.mqtt.handler.publish.PublishStatus;
@@ -114,7 +116,10 @@ public class PublishPollServiceImplTest {
                 messageDroppedService,
                 sharedSubscriptionService,
                 singleWriterService,
-                clientSessionSubscriptionPersistence);
+                clientSessionSubscriptionPersistence,
+                new SharedSubscriptionDispatcher(sharedSubscriptionService,
+                        connectionPersistence,
+                        new MetricsHolder(new MetricRegistry())));
     }
 
     @After
@@ -211,6 +216,7 @@ public class PublishPollServiceImplTest {
                         .of(createPublish(), createPublish(), TestMessageUtil.createMqtt3Publish(QoS.AT_MOST_ONCE))));
         when(freePacketIdRanges.takeNextId()).thenReturn(2).thenReturn(3);
         when(channel.isActive()).thenReturn(true);
+        when(channel.isWritable()).thenReturn(true);
         final AtomicInteger inFlightCount = new AtomicInteger(0);
         clientConnection.setInFlightMessageCount(inFlightCount);
         clientConnection.setInFlightMessagesSent(true);
@@ -259,6 +265,60 @@ public class PublishPollServiceImplTest {
         verify(clientQueuePersistence, never()).readShared(anyString(), anyInt(), anyLong());
     }
 
+    @Test
+    public void test_poll_shared_publishes_first_member_busy_next_idle_member_polls() {
+        InternalConfigurations.SHARED_SUBSCRIPTION_SELECTION_STRATEGY.set(
+                SharedSubscriberSelectionStrategy.STICKY_TOPIC_HASH);
+        try {
+            publishPollService = new PublishPollServiceImpl(clientQueuePersistence,
+                    connectionPersistence,
+                    mock(MessageDroppedService.class),
+                    sharedSubscriptionService,
+                    singleWriterService,
+                    mock(ClientSessionSubscriptionPersistence.class),
+                    new SharedSubscriptionDispatcher(sharedSubscriptionService,
+                            connectionPersistence,
+                            new MetricsHolder(new MetricRegistry())));
+            final byte flags = SubscriptionFlag.getDefaultFlags(true, false, false);
+            when(sharedSubscriptionService.getSharedSubscriber("group/topic")).thenReturn(ImmutableSet.of(
+                    new SubscriberWithQoS("client1", 1, flags, null),
+                    new SubscriberWithQoS("client2", 1, flags, null)));
+            // client1 has its in-flight window in use
+            when(channel.isActive()).thenReturn(true);
+            when(channel.isWritable()).thenReturn(true);
+            clientConnection.setInFlightMessageCount(new AtomicInteger(5));
+            clientConnection.setInFlightMessagesSent(true);
+            when(connectionPersistence.get("client1")).thenReturn(clientConnection);
+            // client2 is idle
+            final Channel idleChannel = mock(Channel.class);
+            final PublishFlushHandler idleFlushHandler = mock(PublishFlushHandler.class);
+            final ClientConnection idleConnection = spy(new DummyClientConnection(idleChannel, idleFlushHandler));
+            idleConnection.setClientId("client2");
+            idleConnection.setInFlightMessageCount(new AtomicInteger(0));
+            idleConnection.setInFlightMessagesSent(true);
+            final FreePacketIdRanges idlePacketIds = mock(FreePacketIdRanges.class);
+            when(idleConnection.getFreePacketIdRanges()).thenReturn(idlePacketIds);
+            when(idleChannel.isActive()).thenReturn(true);
+            when(idleChannel.isWritable()).thenReturn(true);
+            final Attribute<ClientConnectionContext> idleAttribute = mock(Attribute.class);
+            when(idleChannel.attr(ClientConnectionContext.CHANNEL_ATTRIBUTE_NAME)).thenReturn(idleAttribute);
+            when(idleAttribute.get()).thenReturn(idleConnection);
+            when(connectionPersistence.get("client2")).thenReturn(idleConnection);
+            when(clientQueuePersistence.readShared(eq("group/topic"), anyInt(), anyLong()))
+                    .thenReturn(Futures.immediateFuture(ImmutableList.of(createPublish())));
+
+            // whichever member the topic sticks to, the idle member receives the queued messages
+            publishPollService.pollSharedPublishes("group/topic", 0);
+            publishPollService.pollSharedPublishes("group/topic", 1);
+
+            verify(idleFlushHandler, times(2)).sendPublishes(any());
+            verify(publishFlushHandler, never()).sendPublishes(any());
+        } finally {
+            InternalConfigurations.SHARED_SUBSCRIPTION_SELECTION_STRATEGY.set(
+                    SharedSubscriberSelectionStrategy.ROUND_ROBIN);
+        }
+    }
+
     @Test
     public void test_remove_shared_qos0_downgrade() throws NoMessageIdAvailableException {
         final PublishFlowHandler pubflishFlowHandler = mock(PublishFlowHandler.class);
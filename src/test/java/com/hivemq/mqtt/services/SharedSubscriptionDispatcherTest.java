@@ -0,0 +1,278 @@
+/*
+ * Copyright 2019-present HiveMQ GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hivemq.mqtt.services;
+
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.collect.ImmutableSet;
+import com.hivemq.bootstrap.ClientConnection;
+import com.hivemq.configuration.service.InternalConfigurations;
+import com.hivemq.extension.sdk.api.annotations.NotNull;
+import com.hivemq.metrics.MetricsHolder;
+import com.hivemq.mqtt.handler.publish.PublishFlushHandler;
+import com.hivemq.mqtt.topic.SubscriberWithQoS;
+import com.hivemq.mqtt.topic.SubscriptionFlag;
+import com.hivemq.persistence.clientsession.SharedSubscriptionService;
+import com.hivemq.persistence.connection.ConnectionPersistence;
+import io.netty.channel.Channel;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import util.DummyClientConnection;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.hivemq.mqtt.services.SharedSubscriberSelectionStrategy.LEAST_IN_FLIGHT;
+import static com.hivemq.mqtt.services.SharedSubscriberSelectionStrategy.ROUND_ROBIN;
+import static com.hivemq.mqtt.services.SharedSubscriberSelectionStrategy.STICKY_TOPIC_HASH;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class SharedSubscriptionDispatcherTest {
+
+    private static final byte FLAGS = SubscriptionFlag.getDefaultFlags(true, false, false);
+
+    private final @NotNull SharedSubscriptionService sharedSubscriptionService = mock();
+    private final @NotNull ConnectionPersistence connectionPersistence = mock();
+    private final @NotNull MetricRegistry metricRegistry = new MetricRegistry();
+    private @NotNull SharedSubscriptionDispatcher dispatcher;
+    @Before
+    public void setUp() {
+        InternalConfigurations.SHARED_SUBSCRIPTION_SELECTION_STRATEGY.set(ROUND_ROBIN);
+        dispatcher = new SharedSubscriptionDispatcher(sharedSubscriptionService,
+                connectionPersistence,
+                new MetricsHolder(metricRegistry));
+    }
+
+    @After
+    public void tearDown() {
+        InternalConfigurations.SHARED_SUBSCRIPTION_SELECTION_STRATEGY.set(ROUND_ROBIN);
+        InternalConfigurations.SHARED_SUBSCRIPTION_DISPATCH_MAX_GROUP_METRICS.set(1000);
+    }
+
+    @Test
+    public void select_roundRobin_cyclesThroughConnectedMembers() {
+        final ClientConnection client1 = connectedClient("client1");
+        final ClientConnection client2 = connectedClient("client2");
+        when(sharedSubscriptionService.getSharedSubscriber("group/topic")).thenReturn(ImmutableSet.of(
+                new SubscriberWithQoS("client1", 1, FLAGS, null),
+                new SubscriberWithQoS("client2", 1, FLAGS, null),
+                new SubscriberWithQoS("client3", 1, FLAGS, null)));
+        when(connectionPersistence.get("client1")).thenReturn(client1);
+        when(connectionPersistence.get("client2")).thenReturn(client2);
+
+        final List<SharedSubscriptionDispatcher.Member> first = dispatcher.select("group/topic", 0);
+        final List<SharedSubscriptionDispatcher.Member> second = dispatcher.select("group/topic", 0);
+
+        assertEquals(2, first.size());
+        assertEquals(2, second.size());
+        assertNotEquals(first.get(0).getClientId(), second.get(0).getClientId());
+        assertEquals(2,
+                metricRegistry.getGauges()
+                        .get(SharedSubscriptionDispatcher.METRIC_PREFIX + "group/topic.members.live")
+                        .getValue());
+    }
+
+    @Test
+    public void select_disconnectedMember_isNotSelected() {
+        final ClientConnection client1 = connectedClient("client1");
+        when(sharedSubscriptionService.getSharedSubscriber("group/topic"))
+                .thenReturn(ImmutableSet.of(new SubscriberWithQoS("client1", 1, FLAGS, null)));
+        when(connectionPersistence.get("client1")).thenReturn(client1);
+        assertEquals(1, dispatcher.select("group/topic", 0).size());
+
+        dispatcher.clientDisconnected(client1);
+
+        assertTrue(dispatcher.select("group/topic", 0).isEmpty());
+        dispatcher.memberAvailable(client1, "group/topic");
+        assertEquals(1, dispatcher.select("group/topic", 0).size());
+    }
+
+    @Test
+    public void select_notWritableMember_isNotSelected() {
+        final ClientConnection client1 = connectedClient("client1");
+        when(sharedSubscriptionService.getSharedSubscriber("group/topic"))
+                .thenReturn(ImmutableSet.of(new SubscriberWithQoS("client1", 1, FLAGS, null)));
+        when(connectionPersistence.get("client1")).thenReturn(client1);
+        assertEquals(1, dispatcher.select("group/topic", 0).size());
+
+        dispatcher.writabilityChanged(client1, false);
+        assertTrue(dispatcher.select("group/topic", 0).isEmpty());
+
+        dispatcher.writabilityChanged(client1, true);
+        assertEquals(1, dispatcher.select("group/topic", 0).size());
+    }
+
+    @Test
+    public void select_memberWithMessagesInFlight_isNotSelected() {
+        final ClientConnection client1 = connectedClient("client1");
+        client1.setInFlightMessageCount(new AtomicInteger(1));
+        when(sharedSubscriptionService.getSharedSubscriber("group/topic"))
+                .thenReturn(ImmutableSet.of(new SubscriberWithQoS("client1", 1, FLAGS, null)));
+        when(connectionPersistence.get("client1")).thenReturn(client1);
+
+        assertTrue(dispatcher.select("group/topic", 0).isEmpty());
+    }
+
+    @Test
+    public void select_subscriberSetChanged_groupIsRebuilt() {
+        final ClientConnection client1 = connectedClient("client1");
+        final ClientConnection client2 = connectedClient("client2");
+        when(connectionPersistence.get("client1")).thenReturn(client1);
+        when(connectionPersistence.get("client2")).thenReturn(client2);
+        when(sharedSubscriptionService.getSharedSubscriber("group/topic"))
+                .thenReturn(ImmutableSet.of(new SubscriberWithQoS("client1", 1, FLAGS, null)));
+        assertEquals("client1", dispatcher.select("group/topic", 0).get(0).getClientId());
+
+        when(sharedSubscriptionService.getSharedSubscriber("group/topic"))
+                .thenReturn(ImmutableSet.of(new SubscriberWithQoS("client2", 1, FLAGS, null)));
+
+        assertEquals("client2", dispatcher.select("group/topic", 0).get(0).getClientId());
+    }
+
+    @Test
+    public void select_noSubscribers_metricsAreRemoved() {
+        final ClientConnection client1 = connectedClient("client1");
+        when(connectionPersistence.get("client1")).thenReturn(client1);
+        when(sharedSubscriptionService.getSharedSubscriber("group/topic"))
+                .thenReturn(ImmutableSet.of(new SubscriberWithQoS("client1", 1, FLAGS, null)));
+        dispatcher.select("group/topic", 0);
+        assertEquals(1, metricRegistry.getGauges().size());
+
+        when(sharedSubscriptionService.getSharedSubscriber("group/topic")).thenReturn(ImmutableSet.of());
+
+        assertTrue(dispatcher.select("group/topic", 0).isEmpty());
+        assertTrue(metricRegistry.getGauges().isEmpty());
+    }
+
+    @Test
+    public void select_stickyTopicHash_selectsSameMemberFirstForTopic() {
+        InternalConfigurations.SHARED_SUBSCRIPTION_SELECTION_STRATEGY.set(STICKY_TOPIC_HASH);
+        dispatcher = new SharedSubscriptionDispatcher(sharedSubscriptionService,
+                connectionPersistence,
+                new MetricsHolder(metricRegistry));
+        final ClientConnection client1 = connectedClient("client1");
+        final ClientConnection client2 = connectedClient("client2");
+        when(sharedSubscriptionService.getSharedSubscriber("group/topic")).thenReturn(ImmutableSet.of(
+                new SubscriberWithQoS("client1", 1, FLAGS, null),
+                new SubscriberWithQoS("client2", 1, FLAGS, null)));
+        when(connectionPersistence.get("client1")).thenReturn(client1);
+        when(connectionPersistence.get("client2")).thenReturn(client2);
+
+        final String first = dispatcher.select("group/topic", 7).get(0).getClientId();
+        for (int i = 0; i < 10; i++) {
+            assertEquals(first, dispatcher.select("group/topic", 7).get(0).getClientId());
+        }
+        assertNotEquals(first, dispatcher.select("group/topic", 8).get(0).getClientId());
+    }
+
+    @Test
+    public void select_stickyTopicHash_busyMember_nextIdleMemberIsSelected() {
+        InternalConfigurations.SHARED_SUBSCRIPTION_SELECTION_STRATEGY.set(STICKY_TOPIC_HASH);
+        dispatcher = new SharedSubscriptionDispatcher(sharedSubscriptionService,
+                connectionPersistence,
+                new MetricsHolder(metricRegistry));
+        final ClientConnection client1 = connectedClient("client1");
+        final ClientConnection client2 = connectedClient("client2");
+        when(sharedSubscriptionService.getSharedSubscriber("group/topic")).thenReturn(ImmutableSet.of(
+                new SubscriberWithQoS("client1", 1, FLAGS, null),
+                new SubscriberWithQoS("client2", 1, FLAGS, null)));
+        when(connectionPersistence.get("client1")).thenReturn(client1);
+        when(connectionPersistence.get("client2")).thenReturn(client2);
+        final String sticky = dispatcher.select("group/topic", 7).get(0).getClientId();
+        final ClientConnection stickyConnection = sticky.equals("client1") ? client1 : client2;
+        stickyConnection.setInFlightMessageCount(new AtomicInteger(3));
+
+        final List<SharedSubscriptionDispatcher.Member> selected = dispatcher.select("group/topic", 7);
+
+        assertEquals(1, selected.size());
+        assertNotEquals(sticky, selected.get(0).getClientId());
+    }
+
+    @Test
+    public void select_leastInFlight_allMembersBusy_noMemberIsSelected() {
+        InternalConfigurations.SHARED_SUBSCRIPTION_SELECTION_STRATEGY.set(LEAST_IN_FLIGHT);
+        dispatcher = new SharedSubscriptionDispatcher(sharedSubscriptionService,
+                connectionPersistence,
+                new MetricsHolder(metricRegistry));
+        final ClientConnection client1 = connectedClient("client1");
+        client1.setInFlightMessageCount(new AtomicInteger(3));
+        final ClientConnection client2 = connectedClient("client2");
+        when(sharedSubscriptionService.getSharedSubscriber("group/topic")).thenReturn(ImmutableSet.of(
+                new SubscriberWithQoS("client1", 1, FLAGS, null),
+                new SubscriberWithQoS("client2", 1, FLAGS, null)));
+        when(connectionPersistence.get("client1")).thenReturn(client1);
+        when(connectionPersistence.get("client2")).thenReturn(client2);
+
+        final List<SharedSubscriptionDispatcher.Member> selected = dispatcher.select("group/topic", 0);
+        assertEquals(1, selected.size());
+        assertEquals("client2", selected.get(0).getClientId());
+
+        client2.setInFlightMessageCount(new AtomicInteger(1));
+        assertTrue(dispatcher.select("group/topic", 0).isEmpty());
+    }
+
+    @Test
+    public void select_siblingGroupRemoved_metricsOfOtherGroupAreKept() {
+        final ClientConnection client1 = connectedClient("client1");
+        when(connectionPersistence.get("client1")).thenReturn(client1);
+        when(sharedSubscriptionService.getSharedSubscriber("g/a"))
+                .thenReturn(ImmutableSet.of(new SubscriberWithQoS("client1", 1, FLAGS, null)));
+        when(sharedSubscriptionService.getSharedSubscriber("g/a.b"))
+                .thenReturn(ImmutableSet.of(new SubscriberWithQoS("client1", 1, FLAGS, null)));
+        dispatcher.select("g/a", 0);
+        dispatcher.select("g/a.b", 0);
+        assertEquals(2, metricRegistry.getGauges().size());
+
+        when(sharedSubscriptionService.getSharedSubscriber("g/a")).thenReturn(ImmutableSet.of());
+        dispatcher.select("g/a", 0);
+
+        assertEquals(1, metricRegistry.getGauges().size());
+        assertTrue(metricRegistry.getGauges()
+                .containsKey(SharedSubscriptionDispatcher.METRIC_PREFIX + "g/a.b.members.live"));
+    }
+
+    @Test
+    public void select_moreGroupsThanMetricLimit_metricsAreBounded() {
+        InternalConfigurations.SHARED_SUBSCRIPTION_DISPATCH_MAX_GROUP_METRICS.set(2);
+        dispatcher = new SharedSubscriptionDispatcher(sharedSubscriptionService,
+                connectionPersistence,
+                new MetricsHolder(metricRegistry));
+        final ClientConnection client1 = connectedClient("client1");
+        when(connectionPersistence.get("client1")).thenReturn(client1);
+        for (int i = 0; i < 5; i++) {
+            when(sharedSubscriptionService.getSharedSubscriber("group" + i + "/topic"))
+                    .thenReturn(ImmutableSet.of(new SubscriberWithQoS("client1", 1, FLAGS, null)));
+            assertEquals(1, dispatcher.select("group" + i + "/topic", 0).size());
+        }
+
+        assertEquals(2, metricRegistry.getGauges().size());
+        assertEquals(4, metricRegistry.getMeters().size());
+    }
+
+    private @NotNull ClientConnection connectedClient(final @NotNull String clientId) {
+        final Channel channel = mock();
+        when(channel.isActive()).thenReturn(true);
+        when(channel.isWritable()).thenReturn(true);
+        final ClientConnection clientConnection = new DummyClientConnection(channel, mock(PublishFlushHandler.class));
+        clientConnection.setClientId(clientId);
+        clientConnection.setInFlightMessagesSent(true);
+        return clientConnection;
+    }
+}
@@ -20,18 +20,24 @@ import com.google.common.util.concurrent.ListeningExecutorService;
 import com.google.common.util.concurrent.ListeningScheduledExecutorService;
 import com.google.common.util.concurrent.SettableFuture;
 import com.hivemq.configuration.service.InternalConfigurations;
+import com.hivemq.configuration.service.PersistenceConfigurationService;
 import com.hivemq.extension.sdk.api.annotations.NotNull;
 import com.hivemq.persistence.clientqueue.ClientQueuePersistence;
 import com.hivemq.persistence.clientsession.ClientSessionPersistence;
 import com.hivemq.persistence.clientsession.ClientSessionSubscriptionPersistence;
+import com.hivemq.persistence.local.memory.MemoryPersistenceSnapshots;
 import com.hivemq.persistence.payload.PublishPayloadPersistence;
 import com.hivemq.persistence.qos.IncomingMessageFlowPersistence;
 import com.hivemq.persistence.retained.RetainedMessagePersistence;
+import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
+import org.mockito.InOrder;
 
 import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.inOrder;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -47,6 +53,8 @@ public class PersistenceShutdownHookTest {
     private final @NotNull PublishPayloadPersistence payloadPersistence = mock();
     private final @NotNull ListeningScheduledExecutorService payloadPersistenceExecutor = mock();
     private final @NotNull ClientQueuePersistence clientQueuePersistence = mock();
+    private final @NotNull PersistenceConfigurationService persistenceConfigurationService = mock();
+    private final @NotNull MemoryPersistenceSnapshots memoryPersistenceSnapshots = mock();
     private PersistenceShutdownHook persistenceShutdownHook;
     @Before
     public void init() {
@@ -59,13 +67,22 @@ public class PersistenceShutdownHookTest {
                 persistenceExecutorService,
                 persistenceScheduledExecutorService,
                 payloadPersistenceExecutor,
-                singleWriterService);
+                singleWriterService,
+                persistenceConfigurationService,
+                () -> memoryPersistenceSnapshots);
+        when(persistenceConfigurationService.getMode())
+                .thenReturn(PersistenceConfigurationService.PersistenceMode.FILE);
         when(clientSessionPersistence.closeDB()).thenReturn(Futures.immediateFuture(null));
         when(clientSessionSubscriptionPersistence.closeDB()).thenReturn(Futures.immediateFuture(null));
         when(retainedMessagePersistence.closeDB()).thenReturn(Futures.immediateFuture(null));
         when(clientQueuePersistence.closeDB()).thenReturn(Futures.immediateFuture(null));
     }
 
+    @After
+    public void tearDown() {
+        InternalConfigurations.MEMORY_PERSISTENCE_SNAPSHOT_ENABLED.set(false);
+    }
+
     @Test
     public void test_dbs_closed() throws Exception {
         persistenceShutdownHook.run();
@@ -77,6 +94,19 @@ public class PersistenceShutdownHookTest {
         verify(persistenceExecutorService).shutdown();
         verify(persistenceScheduledExecutorService).shutdownNow();
         verify(singleWriterService).stop();
+        verify(memoryPersistenceSnapshots, never()).write(singleWriterService);
+    }
+
+    @Test
+    public void test_memory_snapshot_written_before_dbs_closed() {
+        InternalConfigurations.MEMORY_PERSISTENCE_SNAPSHOT_ENABLED.set(true);
+        when(persistenceConfigurationService.getMode())
+                .thenReturn(PersistenceConfigurationService.PersistenceMode.IN_MEMORY);
+        persistenceShutdownHook.run();
+        final InOrder inOrder = inOrder(memoryPersistenceSnapshots, clientSessionPersistence, singleWriterService);
+        inOrder.verify(memoryPersistenceSnapshots).write(singleWriterService);
+        inOrder.verify(clientSessionPersistence).closeDB();
+        inOrder.verify(singleWriterService).stop();
     }
 
     @Test(timeout = 15000)
@@ -15,15 +15,22 @@
  */
 package com.hivemq.persistence;
 
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.util.concurrent.ListenableFuture;
 import com.hivemq.extension.sdk.api.annotations.NotNull;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Queue;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.atomic.AtomicLong;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
@@ -40,6 +47,7 @@ public class ProducerQueuesImplTest {
         when(singleWriterServiceImpl.getPersistenceBucketCount()).thenReturn(64);
         when(singleWriterServiceImpl.getThreadPoolSize()).thenReturn(4);
         when(singleWriterServiceImpl.getGlobalTaskCount()).thenReturn(new AtomicLong());
+        when(singleWriterServiceImpl.getCreditsPerExecution()).thenReturn(100);
         producerQueues = new ProducerQueuesImpl(singleWriterServiceImpl, 4);
     }
 
@@ -77,4 +85,125 @@ public class ProducerQueuesImplTest {
             }
         }
     }
+
+    @Test
+    public void submit_groupCommit_consecutiveTasksCommittedTogether() throws Exception {
+        final BatchingPersistence persistence = new BatchingPersistence();
+        final MetricRegistry metricRegistry = new MetricRegistry();
+        final GroupCommit groupCommit = new GroupCommit("test", persistence, metricRegistry);
+        final List<ListenableFuture<Integer>> futures = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            final int number = i;
+            futures.add(producerQueues.submit("key", groupCommit, bucketIndex -> {
+                persistence.writes.add("write-" + number);
+                return number;
+            }));
+        }
+        executeAll(futures);
+
+        assertEquals(1, persistence.batches);
+        for (int i = 0; i < 5; i++) {
+            assertEquals(i, futures.get(i).get().intValue());
+        }
+        assertEquals(1, metricRegistry.histogram(GroupCommit.METRIC_PREFIX + "test.batch-size").getCount());
+        assertEquals(5, metricRegistry.histogram(GroupCommit.METRIC_PREFIX + "test.batch-size").getSnapshot().getMax());
+        assertEquals(1, metricRegistry.timer(GroupCommit.METRIC_PREFIX + "test.wait-time").getCount());
+    }
+
+    @Test
+    public void submit_groupCommit_tasksDoNotOvertakeOtherTasks() throws Exception {
+        final BatchingPersistence persistence = new BatchingPersistence();
+        final GroupCommit groupCommit = new GroupCommit("test", persistence, new MetricRegistry());
+        final List<ListenableFuture<Object>> futures = new ArrayList<>();
+        futures.add(producerQueues.submit("key", groupCommit, bucketIndex -> persistence.writes.add("first")));
+        futures.add(producerQueues.submit("key", bucketIndex -> persistence.writes.add("plain")));
+        futures.add(producerQueues.submit("key", groupCommit, bucketIndex -> persistence.writes.add("second")));
+        executeAll(futures);
+
+        assertEquals(List.of("first", "plain", "second"), persistence.writes);
+        assertEquals(2, persistence.batches);
+    }
+
+    @Test
+    public void submit_groupCommit_failingTaskOnlyFailsItself() throws Exception {
+        final BatchingPersistence persistence = new BatchingPersistence();
+        final GroupCommit groupCommit = new GroupCommit("test", persistence, new MetricRegistry());
+        final ListenableFuture<String> first = producerQueues.submit("key", groupCommit, bucketIndex -> "first");
+        final ListenableFuture<String> failing = producerQueues.submit("key", groupCommit, bucketIndex -> {
+            throw new IllegalStateException("test");
+        });
+        final ListenableFuture<String> last = producerQueues.submit("key", groupCommit, bucketIndex -> "last");
+        executeAll(List.of(first, failing, last));
+
+        assertEquals("first", first.get());
+        assertEquals("last", last.get());
+        try {
+            failing.get();
+            fail();
+        } catch (final ExecutionException e) {
+            assertTrue(e.getCause() instanceof IllegalStateException);
+        }
+    }
+
+    @Test
+    public void submit_groupCommit_commitActionsRunOnceAfterFailedBatch() throws Exception {
+        final BatchingPersistence persistence = new BatchingPersistence();
+        final GroupCommit groupCommit = new GroupCommit("test", persistence, new MetricRegistry());
+        final List<String> actions = new ArrayList<>();
+        final ListenableFuture<String> first = producerQueues.submit("key", groupCommit, bucketIndex -> {
+            groupCommit.afterCommit(bucketIndex, () -> actions.add("first"));
+            return "first";
+        });
+        final ListenableFuture<String> failing = producerQueues.submit("key", groupCommit, bucketIndex -> {
+            throw new IllegalStateException("test");
+        });
+        final ListenableFuture<String> last = producerQueues.submit("key", groupCommit, bucketIndex -> {
+            groupCommit.afterCommit(bucketIndex, () -> actions.add("last"));
+            return "last";
+        });
+        executeAll(List.of(first, failing, last));
+
+        assertEquals(List.of("first", "last"), actions);
+    }
+
+    @Test
+    public void submit_groupCommit_withoutBatchPersistence_executesTasks() throws Exception {
+        final GroupCommit groupCommit = new GroupCommit("test", bucketIndex -> {}, new MetricRegistry());
+        final ListenableFuture<String> future = producerQueues.submit("key", groupCommit, bucketIndex -> "result");
+        executeAll(List.of(future));
+
+        assertEquals(1, groupCommit.getMaxBatchSize());
+        assertEquals("result", future.get());
+    }
+
+    private void executeAll(final @NotNull List<? extends ListenableFuture<?>> futures) {
+        final SplittableRandom random = new SplittableRandom();
+        for (int i = 0; i < 10_000 && !futures.stream().allMatch(ListenableFuture::isDone); i++) {
+            producerQueues.execute(random);
+        }
+        assertTrue(futures.stream().allMatch(ListenableFuture::isDone));
+    }
+
+    private static class BatchingPersistence implements LocalPersistence, BatchCommitPersistence {
+
+        private final @NotNull List<String> writes = new ArrayList<>();
+        private int batches;
+
+        @Override
+        public void executeInBatch(final int bucketIndex, final @NotNull Runnable writes) {
+            batches++;
+            final int size = this.writes.size();
+            try {
+                writes.run();
+            } catch (final RuntimeException e) {
+                // nothing is committed if the batch fails
+                this.writes.subList(size, this.writes.size()).clear();
+                throw e;
+            }
+        }
+
+        @Override
+        public void closeDB(final int bucketIndex) {
+        }
+    }
 }
@@ -0,0 +1,112 @@
+/*
+ * Copyright 2019-present HiveMQ GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hivemq.persistence.clientqueue;
+
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListeningScheduledExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.hivemq.configuration.service.InternalConfigurations;
+import com.hivemq.metrics.HiveMQMetrics;
+import org.awaitility.Awaitility;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.time.Duration;
+import java.util.concurrent.Executors;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@SuppressWarnings("NullabilityAnnotations")
+public class ClientQueueCompactorTest {
+
+    private final ListeningScheduledExecutorService scheduledExecutorService =
+            MoreExecutors.listeningDecorator(Executors.newSingleThreadScheduledExecutor());
+    private final ClientQueuePersistence clientQueuePersistence = mock(ClientQueuePersistence.class);
+    private final MetricRegistry metricRegistry = new MetricRegistry();
+    @Before
+    public void setUp() throws Exception {
+        InternalConfigurations.PERSISTENCE_BUCKET_COUNT.set(4);
+        InternalConfigurations.QUEUED_MESSAGES_COMPACTION_INTERVAL_MSEC.set(1);
+        InternalConfigurations.QUEUED_MESSAGES_COMPACTION_BATCH_SIZE.set(10);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        scheduledExecutorService.shutdownNow();
+        InternalConfigurations.QUEUED_MESSAGES_COMPACTION_INTERVAL_MSEC.set(500);
+        InternalConfigurations.QUEUED_MESSAGES_COMPACTION_BATCH_SIZE.set(1000);
+    }
+
+    @Test
+    public void test_compact_counts_removed_messages_and_reclaimed_bytes() {
+        final ClientQueueCompaction compaction = new ClientQueueCompaction(10);
+        compaction.removed(100);
+        compaction.removed(50);
+        when(clientQueuePersistence.removeExpiredMessages(anyInt(), eq(10))).thenReturn(
+                Futures.immediateFuture(compaction));
+        final ClientQueueCompactor compactor =
+                new ClientQueueCompactor(scheduledExecutorService, clientQueuePersistence, metricRegistry);
+        compactor.compact(2);
+        verify(clientQueuePersistence).removeExpiredMessages(2, 10);
+        assertEquals(2,
+                metricRegistry.counter(HiveMQMetrics.QUEUED_MESSAGES_COMPACTION_REMOVED_MESSAGES.name()).getCount());
+        assertEquals(150,
+                metricRegistry.counter(HiveMQMetrics.QUEUED_MESSAGES_COMPACTION_RECLAIMED_BYTES.name()).getCount());
+    }
+
+    @Test
+    public void test_compaction_visits_all_buckets() {
+        when(clientQueuePersistence.removeExpiredMessages(anyInt(), anyInt())).thenReturn(
+                Futures.immediateFuture(new ClientQueueCompaction(10)));
+        final ClientQueueCompactor compactor =
+                new ClientQueueCompactor(scheduledExecutorService, clientQueuePersistence, metricRegistry);
+        compactor.postConstruct();
+        Awaitility.await().atMost(Duration.ofSeconds(5)).untilAsserted(() -> {
+            for (int i = 0; i < 4; i++) {
+                verify(clientQueuePersistence, atLeastOnce()).removeExpiredMessages(i, 10);
+            }
+        });
+    }
+
+    @Test
+    public void test_compaction_continues_after_failure() {
+        when(clientQueuePersistence.removeExpiredMessages(anyInt(), anyInt())).thenReturn(
+                Futures.immediateFailedFuture(new RuntimeException("test")));
+        final ClientQueueCompactor compactor =
+                new ClientQueueCompactor(scheduledExecutorService, clientQueuePersistence, metricRegistry);
+        compactor.postConstruct();
+        Awaitility.await().atMost(Duration.ofSeconds(5)).untilAsserted(() ->
+                verify(clientQueuePersistence, atLeastOnce()).removeExpiredMessages(3, 10));
+    }
+
+    @Test
+    public void test_compaction_disabled() {
+        InternalConfigurations.QUEUED_MESSAGES_COMPACTION_INTERVAL_MSEC.set(0);
+        final ClientQueueCompactor compactor =
+                new ClientQueueCompactor(scheduledExecutorService, clientQueuePersistence, metricRegistry);
+        compactor.postConstruct();
+        verify(clientQueuePersistence, never()).removeExpiredMessages(anyInt(), anyInt());
+    }
+}
@@ -22,8 +22,11 @@ import com.hivemq.bootstrap.ClientConnection;
 import com.hivemq.bootstrap.ClientConnectionContext;
 import com.hivemq.configuration.service.MqttConfigurationService;
 import com.hivemq.extension.sdk.api.annotations.NotNull;
+import com.hivemq.limitation.MemoryConsumer;
+import com.hivemq.limitation.MemoryGovernor;
 import com.hivemq.mqtt.message.MessageWithID;
 import com.hivemq.mqtt.message.QoS;
+import com.hivemq.mqtt.message.dropping.MessageDroppedService;
 import com.hivemq.mqtt.message.publish.PUBLISH;
 import com.hivemq.mqtt.message.publish.PUBLISHFactory;
 import com.hivemq.mqtt.services.PublishPollService;
@@ -69,6 +72,8 @@ public class ClientQueuePersistenceImplTest {
     private final @NotNull LocalTopicTree topicTree = mock();
     private final @NotNull ConnectionPersistence connectionPersistence = mock();
     private final @NotNull PublishPollService publishPollService = mock();
+    private final @NotNull MemoryGovernor memoryGovernor = mock();
+    private final @NotNull MessageDroppedService messageDroppedService = mock();
     private ClientQueuePersistenceImpl clientQueuePersistence;
     final int bucketSize = 64;
     private SingleWriterService singleWriterService;
@@ -83,7 +88,9 @@ public class ClientQueuePersistenceImplTest {
                 clientSessionLocalPersistence,
                 topicTree,
                 connectionPersistence,
-                publishPollService);
+                publishPollService,
+                memoryGovernor,
+                messageDroppedService);
     }
 
     @After
@@ -104,6 +111,22 @@ public class ClientQueuePersistenceImplTest {
                 anyInt());
     }
 
+    @Test(timeout = 5000)
+    public void test_add_qos0_dropped_while_memory_governor_sheds() throws ExecutionException, InterruptedException {
+        when(memoryGovernor.isShedding(MemoryConsumer.QOS_0_MESSAGES)).thenReturn(true);
+        clientQueuePersistence.add("client", false, createPublish(1, QoS.AT_MOST_ONCE, "topic"), false, 1000L).get();
+        clientQueuePersistence.add("client", false, createPublish(2, QoS.AT_LEAST_ONCE, "topic"), false, 1000L).get();
+        verify(messageDroppedService).qos0MemoryExceeded(eq("client"), eq("topic"), eq(0), anyLong(), anyLong());
+        verify(memoryGovernor).shed(MemoryConsumer.QOS_0_MESSAGES);
+        verify(localPersistence).add(eq("client"),
+                eq(false),
+                any(PUBLISH.class),
+                eq(1000L),
+                eq(QueuedMessagesStrategy.DISCARD),
+                anyBoolean(),
+                anyInt());
+    }
+
     @Test(timeout = 5000)
     public void test_add_shared() throws ExecutionException, InterruptedException {
         clientQueuePersistence.add("name/topic", true, createPublish(1, QoS.AT_LEAST_ONCE, "topic"), false, 1000L)
@@ -18,6 +18,7 @@ package com.hivemq.persistence.clientqueue;
 import com.google.common.collect.ImmutableList;
 import com.google.common.primitives.ImmutableIntArray;
 import com.hivemq.codec.encoder.mqtt5.Mqtt5PayloadFormatIndicator;
+import com.hivemq.extension.sdk.api.annotations.NotNull;
 import com.hivemq.mqtt.message.Message;
 import com.hivemq.mqtt.message.QoS;
 import com.hivemq.mqtt.message.mqtt5.Mqtt5UserProperties;
@@ -206,6 +207,86 @@ public class ClientQueuePersistenceSerializerTest {
         assertNull(readPublish.getCorrelationData());
     }
 
+    @Test
+    public void test_compact_publish_with_topic_dictionary() {
+        final PUBLISH publish = minimalPublish();
+        final TopicDictionary dictionary = new TopicDictionary(10);
+        final ByteIterable inline = serializer.serializePublishWithoutPacketId(publish, true, dictionary);
+        dictionary.register("topic");
+        dictionary.register("hivemqId");
+        final ByteIterable referenced = serializer.serializePublishWithoutPacketId(publish, true, dictionary);
+        assertTrue(serializer.isCompact(referenced));
+        assertTrue(serializer.deserializeRetained(referenced));
+        assertTrue(referenced.getLength() < inline.getLength());
+        assertTrue(inline.getLength() < serializer.legacyPublishSize(publish));
+        final PUBLISH readInline = (PUBLISH) serializer.deserializeValue(inline, dictionary);
+        final PUBLISH readReferenced = (PUBLISH) serializer.deserializeValue(referenced, dictionary);
+        for (final PUBLISH readPublish : ImmutableList.of(readInline, readReferenced)) {
+            assertEquals("topic", readPublish.getTopic());
+            assertEquals("hivemqId", readPublish.getHivemqId());
+            assertEquals(123, readPublish.getPublishId());
+            assertEquals(456, readPublish.getTimestamp());
+            assertEquals(PUBLISH.MESSAGE_EXPIRY_INTERVAL_NOT_SET, readPublish.getMessageExpiryInterval());
+            assertNull(readPublish.getPayloadFormatIndicator());
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void test_compact_publish_without_topic_dictionary() {
+        final TopicDictionary dictionary = new TopicDictionary(10);
+        dictionary.register("topic");
+        serializer.deserializeValue(serializer.serializePublishWithoutPacketId(minimalPublish(), false, dictionary));
+    }
+
+    @Test
+    public void test_compact_publish_compressed() {
+        final byte[] correlationData = new byte[4096];
+        final PUBLISH publish = new PUBLISHFactory.Mqtt5Builder().withPacketIdentifier(10)
+                .withQoS(QoS.EXACTLY_ONCE)
+                .withOnwardQos(QoS.EXACTLY_ONCE)
+                .withPublishId(123)
+                .withTimestamp(456)
+                .withHivemqId("hivemqId")
+                .withMessageExpiryInterval(60)
+                .withTopic("topic")
+                .withCorrelationData(correlationData)
+                .withSubscriptionIdentifiers(ImmutableIntArray.of(1, 200_000))
+                .build();
+        final ByteIterable serializedValue =
+                new ClientQueuePersistenceSerializer(true, 1024).serializePublishWithoutPacketId(publish, false);
+        assertTrue(serializedValue.getLength() < 1024);
+        final PUBLISH readPublish = (PUBLISH) serializer.deserializeValue(serializedValue);
+        assertEquals(QoS.EXACTLY_ONCE, readPublish.getQoS());
+        assertEquals(60, readPublish.getMessageExpiryInterval());
+        assertArrayEquals(correlationData, readPublish.getCorrelationData());
+        assertEquals(ImmutableIntArray.of(1, 200_000), readPublish.getSubscriptionIdentifiers());
+    }
+
+    @Test
+    public void test_previous_format_still_readable() {
+        final ClientQueuePersistenceSerializer legacySerializer = new ClientQueuePersistenceSerializer(false, 0);
+        final PUBLISH publish = minimalPublish();
+        final ByteIterable serializedValue = legacySerializer.serializePublishWithoutPacketId(publish, true);
+        assertFalse(serializer.isCompact(serializedValue));
+        assertEquals(legacySerializer.legacyPublishSize(publish), serializedValue.getLength());
+        final PUBLISH readPublish = (PUBLISH) serializer.deserializeValue(serializedValue, new TopicDictionary(10));
+        assertEquals("topic", readPublish.getTopic());
+        assertEquals("hivemqId", readPublish.getHivemqId());
+        assertEquals(123, readPublish.getPublishId());
+        assertTrue(serializer.deserializeRetained(serializedValue));
+    }
+
+    private static @NotNull PUBLISH minimalPublish() {
+        return new PUBLISHFactory.Mqtt3Builder().withPacketIdentifier(10)
+                .withQoS(QoS.AT_LEAST_ONCE)
+                .withOnwardQos(QoS.AT_LEAST_ONCE)
+                .withPublishId(123)
+                .withTimestamp(456)
+                .withHivemqId("hivemqId")
+                .withTopic("topic")
+                .build();
+    }
+
     @Test(expected = NullPointerException.class)
     public void test_deserializeClientId_not_null() {
         final ByteIterable iterable = null;
@@ -0,0 +1,376 @@
+/*
+ * Copyright 2019-present HiveMQ GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hivemq.persistence.clientqueue;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.primitives.ImmutableIntArray;
+import com.hivemq.configuration.service.InternalConfigurations;
+import com.hivemq.migration.meta.PersistenceType;
+import com.hivemq.mqtt.message.MessageWithID;
+import com.hivemq.mqtt.message.QoS;
+import com.hivemq.mqtt.message.dropping.MessageDroppedService;
+import com.hivemq.mqtt.message.publish.PUBLISH;
+import com.hivemq.mqtt.message.publish.PUBLISHFactory;
+import com.hivemq.mqtt.message.pubrel.PUBREL;
+import com.hivemq.persistence.PersistenceStartup;
+import com.hivemq.persistence.payload.PublishPayloadPersistence;
+import com.hivemq.util.LocalPersistenceFileUtil;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.hivemq.configuration.service.MqttConfigurationService.QueuedMessagesStrategy.DISCARD;
+import static com.hivemq.configuration.service.MqttConfigurationService.QueuedMessagesStrategy.DISCARD_OLDEST;
+import static com.hivemq.persistence.clientqueue.ClientQueuePersistenceImpl.SHARED_IN_FLIGHT_MARKER;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@SuppressWarnings("NullabilityAnnotations")
+public class ClientQueueSegmentedLocalPersistenceTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+    private final LocalPersistenceFileUtil localPersistenceFileUtil = mock(LocalPersistenceFileUtil.class);
+    private final PublishPayloadPersistence payloadPersistence = mock(PublishPayloadPersistence.class);
+    private final MessageDroppedService messageDroppedService = mock(MessageDroppedService.class);
+    private ClientQueueSegmentedLocalPersistence persistence;
+    private PersistenceStartup persistenceStartup;
+    private final int bucketCount = 4;
+    private final long byteLimit = 5 * 1024 * 1024;
+    @Before
+    public void setUp() throws Exception {
+        when(payloadPersistence.get(anyLong())).thenReturn(new byte[0]);
+        InternalConfigurations.PERSISTENCE_BUCKET_COUNT.set(bucketCount);
+        InternalConfigurations.QOS_0_MEMORY_HARD_LIMIT_DIVISOR.set(10000);
+        InternalConfigurations.QOS_0_MEMORY_LIMIT_PER_CLIENT_BYTES.set(1024);
+        InternalConfigurations.RETAINED_MESSAGE_QUEUE_SIZE.set(5);
+        InternalConfigurations.QUEUED_MESSAGES_SEGMENT_SIZE_BYTES.set(4096);
+        InternalConfigurations.QUEUED_MESSAGES_PERSISTENCE_TYPE.set(PersistenceType.FILE_SEGMENTED);
+        when(localPersistenceFileUtil.getVersionedLocalPersistenceFolder(anyString(), anyString()))
+                .thenReturn(temporaryFolder.newFolder());
+        persistenceStartup = new PersistenceStartup();
+        persistence = newPersistence();
+        persistence.start();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        persistence.stop();
+        persistenceStartup.finish();
+        InternalConfigurations.QUEUED_MESSAGES_SEGMENT_SIZE_BYTES.set(1024 * 1024 * 16);
+        InternalConfigurations.QUEUED_MESSAGES_PERSISTENCE_TYPE.set(PersistenceType.FILE);
+    }
+
+    private ClientQueueSegmentedLocalPersistence newPersistence() {
+        return new ClientQueueSegmentedLocalPersistence(payloadPersistence,
+                localPersistenceFileUtil,
+                persistenceStartup,
+                messageDroppedService);
+    }
+
+    @Test
+    public void test_add_and_read_new() {
+        for (int i = 0; i < 3; i++) {
+            persistence.add("client", false, createPublish(QoS.AT_LEAST_ONCE, "topic" + i, i), 100L, DISCARD, false, 0);
+        }
+        persistence.add("other", false, createPublish(QoS.AT_LEAST_ONCE, "other", 10), 100L, DISCARD, false, 0);
+        verify(payloadPersistence, times(4)).add(any(), anyLong());
+        final ImmutableList<PUBLISH> publishes =
+                persistence.readNew("client", false, ImmutableIntArray.of(2, 3), byteLimit, 0);
+        assertEquals(2, publishes.size());
+        assertEquals("topic0", publishes.get(0).getTopic());
+        assertEquals(2, publishes.get(0).getPacketIdentifier());
+        assertEquals("topic1", publishes.get(1).getTopic());
+        assertEquals(3, publishes.get(1).getPacketIdentifier());
+        assertEquals(3, persistence.size("client", false, 0));
+        final ImmutableList<PUBLISH> rest =
+                persistence.readNew("client", false, ImmutableIntArray.of(4, 5), byteLimit, 0);
+        assertEquals(1, rest.size());
+        assertEquals("topic2", rest.getFirst().getTopic());
+    }
+
+    @Test
+    public void test_read_new_interleaves_qos_0_messages() {
+        persistence.add("client", false, createPublish(QoS.AT_LEAST_ONCE, "topic1", 1), 100L, DISCARD, false, 0);
+        persistence.add("client", false, createPublish(QoS.AT_MOST_ONCE, "topic2", 2), 100L, DISCARD, false, 0);
+        persistence.add("client", false, createPublish(QoS.AT_LEAST_ONCE, "topic3", 3), 100L, DISCARD, false, 0);
+        assertEquals(3, persistence.size("client", false, 0));
+        final ImmutableList<PUBLISH> publishes =
+                persistence.readNew("client", false, ImmutableIntArray.of(1, 2, 3), byteLimit, 0);
+        assertEquals(3, publishes.size());
+        assertEquals("topic1", publishes.get(0).getTopic());
+        assertEquals("topic2", publishes.get(1).getTopic());
+        assertEquals("topic3", publishes.get(2).getTopic());
+        assertEquals(2, persistence.size("client", false, 0));
+    }
+
+    @Test
+    public void test_queue_limit_discard_oldest() {
+        for (int i = 0; i < 3; i++) {
+            persistence.add("client",
+                    false,
+                    createPublish(QoS.AT_LEAST_ONCE, "topic" + i, i),
+                    2L,
+                    DISCARD_OLDEST,
+                    false,
+                    0);
+        }
+        assertEquals(2, persistence.size("client", false, 0));
+        verify(messageDroppedService).queueFull("client", "topic0", 1);
+        final ImmutableList<PUBLISH> publishes =
+                persistence.readNew("client", false, ImmutableIntArray.of(1, 2, 3), byteLimit, 0);
+        assertEquals("topic1", publishes.get(0).getTopic());
+        assertEquals("topic2", publishes.get(1).getTopic());
+    }
+
+    @Test
+    public void test_read_inflight_and_remove() {
+        for (int i = 0; i < 3; i++) {
+            persistence.add("client", false, createPublish(QoS.AT_LEAST_ONCE, "topic" + i, i), 100L, DISCARD, false, 0);
+        }
+        persistence.readNew("client", false, ImmutableIntArray.of(2, 3, 4), byteLimit, 0);
+        assertEquals("hivemqId_pub_1", persistence.remove("client", 3, 0));
+        final ImmutableList<MessageWithID> messages = persistence.readInflight("client", false, 10, byteLimit, 0);
+        assertEquals(2, messages.size());
+        assertEquals(2, messages.get(0).getPacketIdentifier());
+        assertEquals(4, messages.get(1).getPacketIdentifier());
+        assertTrue(((PUBLISH) messages.get(0)).isDuplicateDelivery());
+        assertEquals(2, persistence.size("client", false, 0));
+        verify(payloadPersistence).decrementReferenceCounter(1L);
+    }
+
+    @Test
+    public void test_replace() {
+        for (int i = 0; i < 3; i++) {
+            persistence.add("client", false, createPublish(QoS.EXACTLY_ONCE, "topic", i), 100L, DISCARD, false, 0);
+        }
+        persistence.readNew("client", false, ImmutableIntArray.of(2, 3, 4), byteLimit, 0);
+        assertEquals("hivemqId_pub_1", persistence.replace("client", new PUBREL(3), 0));
+        final ImmutableList<MessageWithID> messages = persistence.readInflight("client", false, 10, byteLimit, 0);
+        assertEquals(3, messages.size());
+        assertTrue(messages.get(1) instanceof PUBREL);
+        assertEquals(3, messages.get(1).getPacketIdentifier());
+        assertEquals(3, persistence.size("client", false, 0));
+    }
+
+    @Test
+    public void test_replace_not_found() {
+        persistence.add("client", false, createPublish(QoS.EXACTLY_ONCE, "topic", 1), 100L, DISCARD, false, 0);
+        persistence.readNew("client", false, ImmutableIntArray.of(1), byteLimit, 0);
+        assertNull(persistence.replace("client", new PUBREL(4), 0));
+        assertEquals(2, persistence.size("client", false, 0));
+        final ImmutableList<MessageWithID> messages = persistence.readInflight("client", false, 10, byteLimit, 0);
+        // unknown PUBRELs are delivered first
+        assertTrue(messages.get(0) instanceof PUBREL);
+        assertEquals(4, messages.get(0).getPacketIdentifier());
+    }
+
+    @Test
+    public void test_clear() {
+        persistence.add("client", false, createPublish(QoS.AT_LEAST_ONCE, "topic1", 1), 100L, DISCARD, false, 0);
+        persistence.add("client", false, createPublish(QoS.AT_MOST_ONCE, "topic2", 2), 100L, DISCARD, false, 0);
+        persistence.readNew("client", false, ImmutableIntArray.of(1), byteLimit, 0);
+        persistence.add("client", false, createPublish(QoS.AT_LEAST_ONCE, "topic3", 3), 100L, DISCARD, false, 0);
+        persistence.clear("client", false, 0);
+        assertEquals(0, persistence.size("client", false, 0));
+        assertEquals(0, persistence.getAll("client", false, 0).size());
+        verify(payloadPersistence, times(3)).decrementReferenceCounter(anyLong());
+    }
+
+    @Test
+    public void test_restart_restores_queues_and_in_flight_state() throws Exception {
+        for (int i = 0; i < 3; i++) {
+            persistence.add("client", false, createPublish(QoS.EXACTLY_ONCE, "topic" + i, i), 100L, DISCARD, true, 1);
+        }
+        persistence.add("group/topic", true, createPublish(QoS.AT_LEAST_ONCE, "shared", 5), 100L, DISCARD, false, 2);
+        persistence.readNew("client", false, ImmutableIntArray.of(7, 8), byteLimit, 1);
+        persistence.replace("client", new PUBREL(8), 1);
+        persistence.stop();
+
+        persistence = newPersistence();
+        persistence.start();
+        verify(payloadPersistence, times(3)).incrementReferenceCounterOnBootstrap(anyLong());
+        assertEquals(3, persistence.size("client", false, 1));
+        assertEquals(1, persistence.size("group/topic", true, 2));
+        final ImmutableList<MessageWithID> inflight = persistence.readInflight("client", false, 10, byteLimit, 1);
+        assertEquals(2, inflight.size());
+        assertEquals(7, inflight.get(0).getPacketIdentifier());
+        assertTrue(inflight.get(0) instanceof PUBLISH);
+        assertEquals(8, inflight.get(1).getPacketIdentifier());
+        assertTrue(inflight.get(1) instanceof PUBREL);
+        final ImmutableList<PUBLISH> publishes =
+                persistence.readNew("client", false, ImmutableIntArray.of(9), byteLimit, 1);
+        assertEquals(1, publishes.size());
+        assertEquals("topic2", publishes.getFirst().getTopic());
+        final ImmutableList<ClientQueueEntry> entries = persistence.getAll("client", false, 1);
+        assertTrue(entries.get(0).isRetained());
+    }
+
+    @Test
+    public void test_restart_does_not_restore_removed_messages() throws Exception {
+        for (int i = 0; i < 3; i++) {
+            persistence.add("client", false, createPublish(QoS.AT_LEAST_ONCE, "topic" + i, i), 100L, DISCARD, false, 0);
+        }
+        persistence.readNew("client", false, ImmutableIntArray.of(1, 2), byteLimit, 0);
+        persistence.remove("client", 1, 0);
+        persistence.stop();
+
+        persistence = newPersistence();
+        persistence.start();
+        assertEquals(2, persistence.size("client", false, 0));
+        final ImmutableList<MessageWithID> inflight = persistence.readInflight("client", false, 10, byteLimit, 0);
+        assertEquals(1, inflight.size());
+        assertEquals(2, inflight.getFirst().getPacketIdentifier());
+        // new messages must not reuse the ids of removed messages
+        persistence.add("client", false, createPublish(QoS.AT_LEAST_ONCE, "topic3", 3), 100L, DISCARD, false, 0);
+        final ImmutableList<PUBLISH> publishes =
+                persistence.readNew("client", false, ImmutableIntArray.of(3, 4), byteLimit, 0);
+        assertEquals(2, publishes.size());
+        assertEquals("topic2", publishes.get(0).getTopic());
+        assertEquals("topic3", publishes.get(1).getTopic());
+    }
+
+    @Test
+    public void test_removed_segments_are_deleted_and_sparse_segments_compacted() {
+        final List<String> topics = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            topics.add("topic" + i);
+            final PUBLISH publish = createPublish(QoS.AT_LEAST_ONCE, "topic" + i, i);
+            persistence.add("client", false, publish, 1000L, DISCARD, false, 0);
+        }
+        final int segments = persistence.getSegmentCount(0);
+        assertTrue(segments > 2);
+        final ImmutableIntArray.Builder packetIds = ImmutableIntArray.builder();
+        for (int i = 1; i <= 100; i++) {
+            packetIds.add(i);
+        }
+        persistence.readNew("client", false, packetIds.build(), byteLimit, 0);
+        // remove all but every tenth message
+        for (int i = 1; i <= 100; i++) {
+            if (i % 10 != 0) {
+                persistence.remove("client", i, 0);
+            }
+        }
+        for (int i = 0; i < segments; i++) {
+            persistence.cleanUp(0);
+        }
+        assertTrue(persistence.getSegmentCount(0) < segments);
+        final ImmutableList<MessageWithID> inflight = persistence.readInflight("client", false, 100, byteLimit, 0);
+        assertEquals(10, inflight.size());
+        for (int i = 0; i < 10; i++) {
+            assertEquals((i + 1) * 10, inflight.get(i).getPacketIdentifier());
+            assertEquals(topics.get(i * 10 + 9), ((PUBLISH) inflight.get(i)).getTopic());
+        }
+    }
+
+    @Test
+    public void test_remove_shared() {
+        for (int i = 0; i < 3; i++) {
+            persistence.add("group/topic", true, createPublish(QoS.AT_LEAST_ONCE, "topic", i), 100L, DISCARD, false, 0);
+        }
+        persistence.removeShared("group/topic", "hivemqId_pub_2", 0);
+        final ImmutableList<PUBLISH> messages =
+                persistence.readNew("group/topic", true, ImmutableIntArray.of(1, 2, 3), byteLimit, 0);
+        assertEquals(2, messages.size());
+        assertEquals(2, persistence.size("group/topic", true, 0));
+        verify(payloadPersistence, times(1)).decrementReferenceCounter(anyLong());
+    }
+
+    @Test
+    public void test_remove_in_flight_marker() {
+        for (int i = 0; i < 3; i++) {
+            persistence.add("group/topic", true, createPublish(QoS.AT_LEAST_ONCE, "topic", i), 100L, DISCARD, false, 0);
+        }
+        persistence.readNew("group/topic",
+                true,
+                ImmutableIntArray.of(SHARED_IN_FLIGHT_MARKER, SHARED_IN_FLIGHT_MARKER, SHARED_IN_FLIGHT_MARKER),
+                byteLimit,
+                0);
+        persistence.removeInFlightMarker("group/topic", "hivemqId_pub_2", 0);
+        final ImmutableList<MessageWithID> messages = persistence.readInflight("group/topic", true, 10, byteLimit, 0);
+        assertEquals(2, messages.size());
+        assertEquals(3, persistence.size("group/topic", true, 0));
+        final ImmutableList<PUBLISH> publishes =
+                persistence.readNew("group/topic", true, ImmutableIntArray.of(SHARED_IN_FLIGHT_MARKER), byteLimit, 0);
+        assertEquals(1, publishes.size());
+        assertEquals("hivemqId_pub_2", publishes.getFirst().getUniqueId());
+        verify(payloadPersistence, never()).decrementReferenceCounter(anyLong());
+    }
+
+    @Test
+    public void test_remove_expired_messages_limited_by_batch_and_after_restart() throws Exception {
+        for (int i = 0; i < 3; i++) {
+            persistence.add("client", false, createExpiredPublish("topic" + i, i), 100L, DISCARD, false, 0);
+        }
+        persistence.add("client", false, createPublish(QoS.AT_LEAST_ONCE, "topic3", 3), 100L, DISCARD, false, 0);
+        final ClientQueueCompaction compaction = new ClientQueueCompaction(2);
+        persistence.removeExpiredMessages(compaction, 0);
+        assertEquals(2, compaction.getRemovedMessages());
+        assertTrue(compaction.getReclaimedBytes() > 0);
+        assertEquals(2, persistence.size("client", false, 0));
+        verify(payloadPersistence, times(2)).decrementReferenceCounter(anyLong());
+        persistence.stop();
+
+        // the expiry watermarks are not persisted, so all queues are due after a restart
+        persistence = newPersistence();
+        persistence.start();
+        final ClientQueueCompaction nextCompaction = new ClientQueueCompaction(2);
+        persistence.removeExpiredMessages(nextCompaction, 0);
+        assertEquals(1, nextCompaction.getRemovedMessages());
+        assertEquals(1, persistence.size("client", false, 0));
+        final ClientQueueCompaction lastCompaction = new ClientQueueCompaction(2);
+        persistence.removeExpiredMessages(lastCompaction, 0);
+        assertEquals(0, lastCompaction.getRemovedMessages());
+    }
+
+    private PUBLISH createExpiredPublish(final String topic, final long publishId) {
+        return new PUBLISHFactory.Mqtt5Builder().withPacketIdentifier(0)
+                .withQoS(QoS.AT_LEAST_ONCE)
+                .withOnwardQos(QoS.AT_LEAST_ONCE)
+                .withPublishId(publishId)
+                .withPayload("message".getBytes())
+                .withTopic(topic)
+                .withHivemqId("hivemqId")
+                .withMessageExpiryInterval(10)
+                .withTimestamp(System.currentTimeMillis() - 10000)
+                .build();
+    }
+
+    private PUBLISH createPublish(final QoS qos, final String topic, final long publishId) {
+        return new PUBLISHFactory.Mqtt5Builder().withPacketIdentifier(0)
+                .withQoS(qos)
+                .withOnwardQos(qos)
+                .withPublishId(publishId)
+                .withPayload("message".getBytes())
+                .withTopic(topic)
+                .withHivemqId("hivemqId")
+                .build();
+    }
+}
@@ -15,10 +15,13 @@
  */
 package com.hivemq.persistence.clientqueue;
 
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.MetricRegistry;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.primitives.ImmutableIntArray;
 import com.hivemq.configuration.service.InternalConfigurations;
+import com.hivemq.metrics.HiveMQMetrics;
 import com.hivemq.mqtt.message.MessageWithID;
 import com.hivemq.mqtt.message.QoS;
 import com.hivemq.mqtt.message.dropping.MessageDroppedService;
@@ -70,6 +73,7 @@ public class ClientQueueXodusLocalPersistenceTest {
     private final LocalPersistenceFileUtil localPersistenceFileUtil = mock(LocalPersistenceFileUtil.class);
     private final PublishPayloadPersistence payloadPersistence = mock(PublishPayloadPersistence.class);
     private final MessageDroppedService messageDroppedService = mock(MessageDroppedService.class);
+    private final MetricRegistry metricRegistry = new MetricRegistry();
     private ClientQueueXodusLocalPersistence persistence;
     private PersistenceStartup persistenceStartup;
     private final int bucketCount = 4;
@@ -91,7 +95,8 @@ public class ClientQueueXodusLocalPersistenceTest {
                 new EnvironmentUtil(),
                 localPersistenceFileUtil,
                 persistenceStartup,
-                messageDroppedService);
+                messageDroppedService,
+                metricRegistry);
         persistence.start();
     }
 
@@ -127,6 +132,56 @@ public class ClientQueueXodusLocalPersistenceTest {
         assertEquals((Long.MAX_VALUE / 2) + 100, ClientQueuePersistenceSerializer.NEXT_PUBLISH_NUMBER.get());
     }
 
+    @Test
+    public void test_stateful_start_in_flight() {
+        for (int i = 0; i < 10; i++) {
+            persistence.add("client", false, createPublish(i, QoS.EXACTLY_ONCE, "topic"), 100L, DISCARD, false, 0);
+        }
+        persistence.readNew("client", false, ImmutableIntArray.of(1, 2, 3), byteLimit, 0);
+        persistence.replace("client", new PUBREL(2), 0);
+        persistence.stop();
+        persistence.start();
+
+        final ImmutableList<MessageWithID> inFlight = persistence.readInflight("client", false, 10, byteLimit, 0);
+        assertEquals(3, inFlight.size());
+        assertEquals(1, inFlight.get(0).getPacketIdentifier());
+        assertTrue(inFlight.get(0) instanceof PUBLISH);
+        assertEquals(2, inFlight.get(1).getPacketIdentifier());
+        assertTrue(inFlight.get(1) instanceof PUBREL);
+        assertEquals(3, inFlight.get(2).getPacketIdentifier());
+        assertTrue(inFlight.get(2) instanceof PUBLISH);
+
+        final ImmutableList<PUBLISH> publishes =
+                persistence.readNew("client", false, ImmutableIntArray.of(4, 5), byteLimit, 0);
+        assertEquals(2, publishes.size());
+        assertEquals(4, publishes.get(0).getPacketIdentifier());
+
+        assertNotNull(persistence.remove("client", 3, 0));
+        assertEquals(9, persistence.size("client", false, 0));
+    }
+
+    @Test
+    public void test_readNew_does_not_rewrite_values() {
+        for (int i = 0; i < 10; i++) {
+            persistence.add("client", false, createPublish(i, QoS.AT_LEAST_ONCE, "topic"), 100L, DISCARD, false, 0);
+        }
+        final long enqueued =
+                metricRegistry.counter(HiveMQMetrics.QUEUED_MESSAGES_FILE_PERSISTENCE_ENQUEUED_BYTES.name()).getCount();
+        final long valueBytes =
+                metricRegistry.counter(HiveMQMetrics.QUEUED_MESSAGES_FILE_PERSISTENCE_VALUE_BYTES_WRITTEN.name())
+                        .getCount();
+        assertTrue(enqueued > 0);
+        assertEquals(enqueued, valueBytes);
+
+        persistence.readNew("client", false, ImmutableIntArray.of(1, 2, 3, 4, 5), byteLimit, 0);
+
+        assertEquals(valueBytes,
+                metricRegistry.counter(HiveMQMetrics.QUEUED_MESSAGES_FILE_PERSISTENCE_VALUE_BYTES_WRITTEN.name())
+                        .getCount());
+        assertTrue(metricRegistry.counter(
+                HiveMQMetrics.QUEUED_MESSAGES_FILE_PERSISTENCE_IN_FLIGHT_BYTES_WRITTEN.name()).getCount() > 0);
+    }
+
     @Test
     public void test_readNew_lessAvailable() {
         final PUBLISH publish = createPublish(10, QoS.AT_LEAST_ONCE, "topic1");
@@ -1112,6 +1167,75 @@ public class ClientQueueXodusLocalPersistenceTest {
         verify(payloadPersistence, never()).decrementReferenceCounter(anyLong());
     }
 
+    @Test
+    public void test_rewrite_in_compact_value_format() {
+        for (int i = 0; i < 10; i++) {
+            final PUBLISH publish = createPublish(i, QoS.AT_LEAST_ONCE, "topic" + i);
+            persistence.add("client", false, publish, 100L, DISCARD, false, 0);
+        }
+        assertEquals(0, persistence.rewriteInCompactValueFormat());
+        persistence.stop();
+        InternalConfigurations.PERSISTENCE_COMPACT_VALUE_FORMAT_ENABLED.set(true);
+        try {
+            persistence = new ClientQueueXodusLocalPersistence(payloadPersistence,
+                    new EnvironmentUtil(),
+                    localPersistenceFileUtil,
+                    persistenceStartup,
+                    messageDroppedService,
+                    metricRegistry);
+            persistence.start();
+            assertEquals(10, persistence.rewriteInCompactValueFormat());
+            assertEquals(0, persistence.rewriteInCompactValueFormat());
+            final Counter legacyBytes = metricRegistry.counter(
+                    HiveMQMetrics.QUEUED_MESSAGES_FILE_PERSISTENCE_COMPACT_VALUES_LEGACY_BYTES.name());
+            final Counter compactBytes =
+                    metricRegistry.counter(HiveMQMetrics.QUEUED_MESSAGES_FILE_PERSISTENCE_COMPACT_VALUES_BYTES.name());
+            assertTrue(compactBytes.getCount() > 0);
+            assertTrue(compactBytes.getCount() < legacyBytes.getCount());
+            // the topic dictionary is loaded again on startup
+            persistence.stop();
+            persistence.start();
+            final ImmutableList<PUBLISH> publishes =
+                    persistence.readNew("client", false, createPacketIds(1, 10), byteLimit, 0);
+            assertEquals(10, publishes.size());
+            for (int i = 0; i < 10; i++) {
+                assertEquals("topic" + i, publishes.get(i).getTopic());
+                assertEquals("hivemqId", publishes.get(i).getHivemqId());
+            }
+        } finally {
+            InternalConfigurations.PERSISTENCE_COMPACT_VALUE_FORMAT_ENABLED.set(false);
+        }
+    }
+
+    @Test
+    public void test_compact_value_format_topic_dictionary_survives_restart() {
+        persistence.stop();
+        InternalConfigurations.PERSISTENCE_COMPACT_VALUE_FORMAT_ENABLED.set(true);
+        try {
+            persistence = new ClientQueueXodusLocalPersistence(payloadPersistence,
+                    new EnvironmentUtil(),
+                    localPersistenceFileUtil,
+                    persistenceStartup,
+                    messageDroppedService,
+                    metricRegistry);
+            persistence.start();
+            // the repeated topic is added to the dictionary in the transaction of its second message
+            persistence.add("client", false, createPublish(1, QoS.AT_LEAST_ONCE, "repeated"), 100L, DISCARD, false, 0);
+            persistence.add("client", false, createPublish(2, QoS.AT_LEAST_ONCE, "repeated"), 100L, DISCARD, false, 0);
+            persistence.add("client", false, createPublish(3, QoS.AT_LEAST_ONCE, "single"), 100L, DISCARD, false, 0);
+            persistence.stop();
+            persistence.start();
+            final ImmutableList<PUBLISH> publishes =
+                    persistence.readNew("client", false, createPacketIds(1, 3), byteLimit, 0);
+            assertEquals(3, publishes.size());
+            assertEquals("repeated", publishes.get(0).getTopic());
+            assertEquals("repeated", publishes.get(1).getTopic());
+            assertEquals("single", publishes.get(2).getTopic());
+        } finally {
+            InternalConfigurations.PERSISTENCE_COMPACT_VALUE_FORMAT_ENABLED.set(false);
+        }
+    }
+
     @Test
     public void test_read_byte_limit_respected_qos0() {
         InternalConfigurations.QOS_0_MEMORY_LIMIT_PER_CLIENT_BYTES.set(1024 * 100);
@@ -1120,7 +1244,8 @@ public class ClientQueueXodusLocalPersistenceTest {
                 new EnvironmentUtil(),
                 localPersistenceFileUtil,
                 persistenceStartup,
-                messageDroppedService);
+                messageDroppedService,
+                metricRegistry);
         persistence.start();
         final ImmutableList.Builder<PUBLISH> publishes = ImmutableList.builder();
         int totalPublishBytes = 0;
@@ -1151,7 +1276,8 @@ public class ClientQueueXodusLocalPersistenceTest {
                 new EnvironmentUtil(),
                 localPersistenceFileUtil,
                 persistenceStartup,
-                messageDroppedService);
+                messageDroppedService,
+                metricRegistry);
         persistence.start();
         final ImmutableList.Builder<PUBLISH> publishes = ImmutableList.builder();
         int totalPublishBytes = 0;
@@ -1189,7 +1315,8 @@ public class ClientQueueXodusLocalPersistenceTest {
                 new EnvironmentUtil(),
                 localPersistenceFileUtil,
                 persistenceStartup,
-                messageDroppedService);
+                messageDroppedService,
+                metricRegistry);
         persistence.start();
         final ImmutableList.Builder<PUBLISH> publishes = ImmutableList.builder();
         int totalPublishBytes = 0;
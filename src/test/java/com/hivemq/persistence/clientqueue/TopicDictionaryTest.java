@@ -0,0 +1,66 @@
+/*
+ * Copyright 2019-present HiveMQ GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hivemq.persistence.clientqueue;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class TopicDictionaryTest {
+
+    @Test
+    public void test_register_assigns_ascending_ids() {
+        final TopicDictionary dictionary = new TopicDictionary(100);
+        for (int i = 0; i < 40; i++) {
+            assertEquals(i, dictionary.register("topic/" + i));
+        }
+        assertEquals(7, dictionary.register("topic/7"));
+        assertEquals(7, dictionary.id("topic/7"));
+        assertEquals("topic/39", dictionary.value(39));
+        assertEquals(40, dictionary.size());
+    }
+
+    @Test
+    public void test_unknown() {
+        final TopicDictionary dictionary = new TopicDictionary(100);
+        assertEquals(TopicDictionary.NO_ID, dictionary.id("topic"));
+        assertNull(dictionary.value(0));
+        assertNull(dictionary.value(-1));
+    }
+
+    @Test
+    public void test_admitted_when_seen_twice() {
+        final TopicDictionary dictionary = new TopicDictionary(100);
+        assertFalse(dictionary.admit("topic"));
+        assertTrue(dictionary.admit("topic"));
+        dictionary.register("topic");
+        assertTrue(dictionary.admit("topic"));
+        assertFalse(dictionary.admit("other"));
+    }
+
+    @Test
+    public void test_full() {
+        final TopicDictionary dictionary = new TopicDictionary(2);
+        assertEquals(0, dictionary.register("a"));
+        assertEquals(1, dictionary.register("b"));
+        assertEquals(TopicDictionary.NO_ID, dictionary.register("c"));
+        assertEquals(TopicDictionary.NO_ID, dictionary.id("c"));
+        assertEquals(1, dictionary.register("b"));
+    }
+}
@@ -15,10 +15,12 @@
  */
 package com.hivemq.persistence.clientsession;
 
+import com.codahale.metrics.MetricRegistry;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningScheduledExecutorService;
 import com.hivemq.bootstrap.ClientConnection;
 import com.hivemq.bootstrap.ClientConnectionContext;
 import com.hivemq.extensions.iteration.Chunker;
@@ -43,6 +45,7 @@ import util.TestSingleWriterFactory;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
@@ -54,6 +57,8 @@ import static org.mockito.ArgumentMatchers.anyLong;
 import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -67,6 +72,7 @@ public class ClientSessionPersistenceImplTest {
     private ConnectionPersistenceImpl connectionPersistence;
     private ClientSessionPersistenceImpl clientSessionPersistence;
     private SingleWriterService singleWriterService;
+    private ListeningScheduledExecutorService executorService;
     @Before
     public void setUp() throws Exception {
         localPersistence = mock(ClientSessionLocalPersistence.class);
@@ -77,6 +83,7 @@ public class ClientSessionPersistenceImplTest {
         connectionPersistence = mock(ConnectionPersistenceImpl.class);
         clientSessionPersistence = mock(ClientSessionPersistenceImpl.class);
         singleWriterService = TestSingleWriterFactory.defaultSingleWriter();
+        executorService = mock(ListeningScheduledExecutorService.class);
         clientSessionPersistence = new ClientSessionPersistenceImpl(localPersistence,
                 subscriptionPersistence,
                 clientQueuePersistence,
@@ -85,7 +92,9 @@ public class ClientSessionPersistenceImplTest {
                 mock(EventLog.class),
                 pendingWillMessages,
                 mqttServerDisconnector,
-                new Chunker());
+                new Chunker(),
+                new MetricRegistry(),
+                executorService);
     }
 
     @After
@@ -94,6 +103,19 @@ public class ClientSessionPersistenceImplTest {
         clientSessionPersistence.closeDB();
     }
 
+    @Test
+    public void test_session_expiry_check_scheduled_in_post_construct() {
+        verify(executorService, never()).scheduleAtFixedRate(any(Runnable.class),
+                anyLong(),
+                anyLong(),
+                any(TimeUnit.class));
+        clientSessionPersistence.postConstruct();
+        verify(executorService).scheduleAtFixedRate(any(Runnable.class),
+                anyLong(),
+                anyLong(),
+                eq(TimeUnit.SECONDS));
+    }
+
     @Test
     public void test_is_existent() {
         when(localPersistence.getSession(eq("client1"), anyBoolean(), anyBoolean()))
@@ -257,6 +279,36 @@ public class ClientSessionPersistenceImplTest {
         assertEquals(3, willMap.size());
     }
 
+    @Test
+    public void test_expired_session_removed_after_disconnect() throws ExecutionException, InterruptedException {
+        when(clientQueuePersistence.removeAllQos0Messages("client", false)).thenReturn(Futures.immediateFuture(null));
+        when(clientQueuePersistence.clear("client", false)).thenReturn(Futures.immediateFuture(null));
+        when(subscriptionPersistence.removeAll("client")).thenReturn(Futures.immediateFuture(null));
+        when(localPersistence.disconnect(eq("client"), anyLong(), eq(true), anyInt(), eq(10L)))
+                .thenReturn(new ClientSession(false, 10));
+        when(localPersistence.removeIfExpired(eq("client"), anyInt())).thenReturn(true);
+        clientSessionPersistence.clientDisconnected("client", true, 10).get();
+        clientSessionPersistence.expireSessions(System.currentTimeMillis() + 5_000);
+        verify(localPersistence, never()).removeIfExpired(eq("client"), anyInt());
+        clientSessionPersistence.expireSessions(System.currentTimeMillis() + 12_000);
+        verify(localPersistence, timeout(5000)).removeIfExpired(eq("client"), anyInt());
+        verify(pendingWillMessages, timeout(5000)).sendWillIfPending("client");
+        verify(clientQueuePersistence, timeout(5000)).clear("client", false);
+    }
+
+    @Test
+    public void test_session_expiry_cancelled_on_connect() throws ExecutionException, InterruptedException {
+        when(clientQueuePersistence.removeAllQos0Messages("client", false)).thenReturn(Futures.immediateFuture(null));
+        when(localPersistence.disconnect(eq("client"), anyLong(), eq(false), anyInt(), eq(10L)))
+                .thenReturn(new ClientSession(false, 10));
+        when(localPersistence.getTimestamp(eq("client"), anyInt())).thenReturn(null);
+        clientSessionPersistence.clientDisconnected("client", false, 10).get();
+        clientSessionPersistence.clientConnected("client", false, 10, null, null).get();
+        clientSessionPersistence.expireSessions(System.currentTimeMillis() + 12_000);
+        clientSessionPersistence.deleteWill("client").get();
+        verify(localPersistence, never()).removeIfExpired(eq("client"), anyInt());
+    }
+
     private MqttWillPublish createWillPublish() {
         return new MqttWillPublish.Mqtt3Builder().withTopic("topic")
                 .withPayload("message".getBytes())
@@ -15,6 +15,7 @@
  */
 package com.hivemq.persistence.clientsession;
 
+import com.codahale.metrics.MetricRegistry;
 import com.google.common.collect.ImmutableSet;
 import com.hivemq.bootstrap.ClientConnection;
 import com.hivemq.bootstrap.ClientConnectionContext;
@@ -79,7 +80,8 @@ public class ClientSessionSubscriptionPersistenceImplTest {
                 clientSessionLocalPersistence,
                 publishPollService,
                 new Chunker(),
-                mock(MqttServerDisconnector.class));
+                mock(MqttServerDisconnector.class),
+                new MetricRegistry());
     }
 
     @After
@@ -188,13 +188,40 @@ public class PendingWillMessagesTest {
         final ClientSessionWill sessionWill = new ClientSessionWill(mqttWillPublish, 1L);
         final ClientSession clientSession = new ClientSession(false, 10, sessionWill, 123L);
         when(clientSessionLocalPersistence.getSession("client", false)).thenReturn(clientSession);
-        pendingWillMessages.getPendingWills()
-                .put("client", new PendingWillMessages.PendingWill(3, System.currentTimeMillis() - 5000));
+        pendingWillMessages.restore(ImmutableMap.of("client",
+                new PendingWillMessages.PendingWill(3, System.currentTimeMillis() - 5000)));
         final PendingWillMessages.CheckWillsTask checkWillsTask = pendingWillMessages.new CheckWillsTask();
         checkWillsTask.run();
         verify(publishService).publish(any(PUBLISH.class), any(ExecutorService.class), eq("client"));
     }
 
+    @Test
+    public void test_check_send_restored() {
+        final MqttWillPublish mqttWillPublish = new MqttWillPublish.Mqtt5Builder().withHivemqId("hivemqId")
+                .withUserProperties(Mqtt5UserProperties.NO_USER_PROPERTIES)
+                .withPayload("message".getBytes())
+                .withQos(QoS.AT_MOST_ONCE)
+                .withTopic("topic")
+                .withDelayInterval(5)
+                .build();
+        final ClientSessionWill sessionWill = new ClientSessionWill(mqttWillPublish, 1L);
+        final ClientSession clientSession = new ClientSession(false, 10, sessionWill, 123L);
+        when(clientSessionLocalPersistence.getSession(anyString(), eq(false))).thenReturn(clientSession);
+        pendingWillMessages.sendOrEnqueueWillIfAvailable("client1", clientSession);
+        pendingWillMessages.restore(ImmutableMap.of("client1",
+                new PendingWillMessages.PendingWill(5, System.currentTimeMillis() - 10_000),
+                "client2",
+                new PendingWillMessages.PendingWill(5, System.currentTimeMillis() - 10_000),
+                "client3",
+                new PendingWillMessages.PendingWill(5, System.currentTimeMillis() - 10_000)));
+        pendingWillMessages.cancelWillIfPending("client3");
+        pendingWillMessages.new CheckWillsTask().run();
+        verify(publishService).publish(any(PUBLISH.class), any(ExecutorService.class), eq("client2"));
+        verify(publishService, never()).publish(any(PUBLISH.class), any(ExecutorService.class), eq("client1"));
+        verify(publishService, never()).publish(any(PUBLISH.class), any(ExecutorService.class), eq("client3"));
+        assertEquals(1, pendingWillMessages.getPendingWills().size());
+    }
+
     @Test
     public void sendWillIfPending_sendsPendingWillIfAvailable_andRemovesIt() {
         final MqttWillPublish mqttWillPublish = new MqttWillPublish.Mqtt5Builder().withHivemqId("hivemqId")
@@ -101,5 +101,17 @@ public class IncomingMessageFlowInMemoryLocalPersistenceTest {
         assertNull(persistence.get("client", 1));
         assertNull(persistence.get("client", 2));
         assertEquals(message, persistence.get("client2", 1));
+        assertEquals(1, persistence.clientCount());
+    }
+
+    @Test
+    public void test_remove_last_entry_of_client() throws Exception {
+        persistence.addOrReplace("client", 1, new PUBACK(1));
+        persistence.addOrReplace("client", 2, new PUBACK(2));
+        persistence.remove("client", 1);
+        assertEquals(1, persistence.clientCount());
+        persistence.remove("client", 2);
+        assertEquals(0, persistence.clientCount());
+        assertNull(persistence.get("client", 2));
     }
 }
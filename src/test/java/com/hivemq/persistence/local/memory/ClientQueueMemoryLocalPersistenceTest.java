@@ -29,6 +29,7 @@ import com.hivemq.mqtt.message.dropping.MessageDroppedService;
 import com.hivemq.mqtt.message.publish.PUBLISH;
 import com.hivemq.mqtt.message.publish.PUBLISHFactory;
 import com.hivemq.mqtt.message.pubrel.PUBREL;
+import com.hivemq.persistence.clientqueue.ClientQueueCompaction;
 import com.hivemq.persistence.local.memory.ClientQueueMemoryLocalPersistence.PublishWithRetained;
 import com.hivemq.persistence.local.xodus.bucket.BucketUtils;
 import com.hivemq.util.ObjectMemoryEstimation;
@@ -765,6 +766,48 @@ public class ClientQueueMemoryLocalPersistenceTest {
         assertEquals(0, persistence.size("client1", false, 0));
     }
 
+    @Test
+    public void test_remove_expired_messages_limited_by_batch() {
+        for (int i = 0; i < 3; i++) {
+            persistence.add("client1",
+                    false,
+                    createPublish(0, QoS.AT_LEAST_ONCE, 10, System.currentTimeMillis() - 10000),
+                    10,
+                    DISCARD,
+                    false,
+                    0);
+        }
+        persistence.add("client1", false, createPublish(0, QoS.AT_LEAST_ONCE, "topic2"), 10, DISCARD, false, 0);
+        final ClientQueueCompaction compaction = new ClientQueueCompaction(2);
+        persistence.removeExpiredMessages(compaction, 0);
+        assertEquals(2, compaction.getRemovedMessages());
+        assertTrue(compaction.getReclaimedBytes() > 0);
+        assertEquals(2, persistence.size("client1", false, 0));
+        final ClientQueueCompaction nextCompaction = new ClientQueueCompaction(2);
+        persistence.removeExpiredMessages(nextCompaction, 0);
+        assertEquals(1, nextCompaction.getRemovedMessages());
+        assertEquals(1, persistence.size("client1", false, 0));
+    }
+
+    @Test
+    public void test_remove_expired_messages_watermark_lowered_by_add() {
+        persistence.add("client1", false, createPublish(0, QoS.AT_LEAST_ONCE, "topic2"), 10, DISCARD, false, 0);
+        final ClientQueueCompaction compaction = new ClientQueueCompaction(10);
+        persistence.removeExpiredMessages(compaction, 0);
+        assertEquals(0, compaction.getRemovedMessages());
+        persistence.add("client1",
+                false,
+                createPublish(0, QoS.AT_MOST_ONCE, 10, System.currentTimeMillis() - 10000),
+                10,
+                DISCARD,
+                false,
+                0);
+        final ClientQueueCompaction nextCompaction = new ClientQueueCompaction(10);
+        persistence.removeExpiredMessages(nextCompaction, 0);
+        assertEquals(1, nextCompaction.getRemovedMessages());
+        assertEquals(1, persistence.size("client1", false, 0));
+    }
+
     @Test
     public void test_clean_up_expired_pubrels_not_configured() throws InterruptedException {
         persistence.add("client1",
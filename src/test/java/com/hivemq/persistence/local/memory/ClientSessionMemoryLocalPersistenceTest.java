@@ -31,6 +31,7 @@ import com.hivemq.mqtt.message.mqtt5.Mqtt5UserProperties;
 import com.hivemq.persistence.NoSessionException;
 import com.hivemq.persistence.PersistenceEntry;
 import com.hivemq.persistence.clientsession.ClientSession;
+import com.hivemq.persistence.clientsession.ClientSessionState;
 import com.hivemq.persistence.clientsession.ClientSessionWill;
 import com.hivemq.persistence.clientsession.PendingWillMessages;
 import com.hivemq.persistence.exception.InvalidSessionExpiryIntervalException;
@@ -666,6 +667,55 @@ public class ClientSessionMemoryLocalPersistenceTest {
         assertEquals(10L, Objects.requireNonNull(session.getQueueLimit()).longValue());
     }
 
+    @Test
+    public void test_session_state() {
+        final int bucketIndex = BucketUtils.getBucket("clientId", BUCKET_COUNT);
+        persistence.put("clientId", new ClientSession(true, 1000L, null, 10L), System.currentTimeMillis(), bucketIndex);
+        final ClientSessionState connectedState = persistence.getSessionState("clientId");
+        assertNotNull(connectedState);
+        assertTrue(connectedState.isConnected());
+        assertEquals(10L, connectedState.getQueueLimit());
+
+        persistence.disconnect("clientId", System.currentTimeMillis(), false, bucketIndex, SESSION_EXPIRE_ON_DISCONNECT);
+        assertNull(persistence.getSessionState("clientId"));
+        assertNull(persistence.getSessionState("unknown"));
+    }
+
+    @Test
+    public void test_session_state_after_disconnect_and_expiry_change() {
+        final int bucketIndex = BucketUtils.getBucket("clientId", BUCKET_COUNT);
+        final MqttWillPublish.Mqtt5Builder willPublish =
+                new MqttWillPublish.Mqtt5Builder().withPayload("payload".getBytes())
+                        .withTopic("topic")
+                        .withQos(QoS.AT_MOST_ONCE)
+                        .withUserProperties(Mqtt5UserProperties.NO_USER_PROPERTIES)
+                        .withHivemqId("hivemqId")
+                        .withRetain(false)
+                        .withDelayInterval(10);
+        final ClientSessionWill sessionWill = new ClientSessionWill(willPublish.build(), 1L);
+        persistence.put("clientId",
+                new ClientSession(true, 1000L, sessionWill, 10L),
+                System.currentTimeMillis(),
+                bucketIndex);
+        final ClientSessionState connectedState = persistence.getSessionState("clientId");
+
+        persistence.disconnect("clientId", System.currentTimeMillis(), true, bucketIndex, 2000L);
+        final ClientSessionState disconnectedState = persistence.getSessionState("clientId");
+        persistence.setSessionExpiryInterval("clientId", 3000L, bucketIndex);
+        final ClientSessionState changedState = persistence.getSessionState("clientId");
+
+        assertNotNull(connectedState);
+        assertTrue(connectedState.isConnected());
+        assertEquals(1000L, connectedState.getSessionExpiryIntervalSec());
+        assertNotNull(disconnectedState);
+        assertFalse(disconnectedState.isConnected());
+        assertEquals(2000L, disconnectedState.getSessionExpiryIntervalSec());
+        assertNotNull(changedState);
+        assertEquals(3000L, changedState.getSessionExpiryIntervalSec());
+        assertEquals(10L, changedState.getQueueLimit());
+        assertTrue(persistence.getPendingWills(bucketIndex).containsKey("clientId"));
+    }
+
     @NotNull public ArrayList<String> getRandomUniqueIds() {
         final Set<String> clientIdSet = new HashSet<>();
         final Random random = new Random();
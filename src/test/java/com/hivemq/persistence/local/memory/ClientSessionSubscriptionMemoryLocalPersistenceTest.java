@@ -39,6 +39,7 @@ import org.junit.rules.TemporaryFolder;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Random;
@@ -51,6 +52,7 @@ import static com.hivemq.mqtt.message.subscribe.Mqtt5Topic.DEFAULT_RETAIN_AS_PUB
 import static com.hivemq.mqtt.message.subscribe.Mqtt5Topic.DEFAULT_RETAIN_HANDLING;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 import static org.mockito.ArgumentMatchers.anyString;
@@ -578,6 +580,33 @@ public class ClientSessionSubscriptionMemoryLocalPersistenceTest {
         assertTrue(value > 0L);
     }
 
+    @Test
+    public void test_get_all_subscribers_iterator() {
+        for (int i = 0; i < 60; i++) {
+            persistence.addSubscription("client" + i,
+                    new Topic("A" + i, QoS.AT_LEAST_ONCE),
+                    123L,
+                    BucketUtils.getBucket("client" + i, bucketCount));
+            persistence.addSubscription("client" + i,
+                    new Topic("B" + i, QoS.AT_LEAST_ONCE),
+                    123L,
+                    BucketUtils.getBucket("client" + i, bucketCount));
+        }
+        final Map<String, Set<Topic>> all = new HashMap<>();
+        for (int i = 0; i < bucketCount; i++) {
+            final Iterator<Map.Entry<String, ImmutableSet<Topic>>> iterator =
+                    persistence.getAllSubscribersIterator(i, 1);
+            while (iterator.hasNext()) {
+                final Map.Entry<String, ImmutableSet<Topic>> entry = iterator.next();
+                assertNull(all.put(entry.getKey(), entry.getValue()));
+            }
+        }
+        assertEquals(60, all.size());
+        for (final Map.Entry<String, Set<Topic>> entry : all.entrySet()) {
+            assertEquals(2, entry.getValue().size());
+        }
+    }
+
     @Test
     public void test_get_chunk_multiple_subscriptions() {
         for (int i = 0; i < 60; i++) {
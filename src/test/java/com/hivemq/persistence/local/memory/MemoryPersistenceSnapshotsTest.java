@@ -0,0 +1,197 @@
+/*
+ * Copyright 2019-present HiveMQ GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hivemq.persistence.local.memory;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.primitives.ImmutableIntArray;
+import com.hivemq.configuration.entity.mqtt.MqttConfigurationDefaults;
+import com.hivemq.configuration.info.SystemInformation;
+import com.hivemq.configuration.service.InternalConfigurations;
+import com.hivemq.configuration.service.MqttConfigurationService.QueuedMessagesStrategy;
+import com.hivemq.exceptions.UnrecoverableException;
+import com.hivemq.extension.sdk.api.annotations.NotNull;
+import com.hivemq.logging.EventLog;
+import com.hivemq.metrics.MetricsHolder;
+import com.hivemq.mqtt.message.QoS;
+import com.hivemq.mqtt.message.connect.MqttWillPublish;
+import com.hivemq.mqtt.message.dropping.MessageDroppedService;
+import com.hivemq.mqtt.message.mqtt5.Mqtt5RetainHandling;
+import com.hivemq.mqtt.message.publish.PUBLISH;
+import com.hivemq.mqtt.message.subscribe.Topic;
+import com.hivemq.persistence.RetainedMessage;
+import com.hivemq.persistence.SingleWriterService;
+import com.hivemq.persistence.clientsession.ClientSession;
+import com.hivemq.persistence.clientsession.ClientSessionWill;
+import com.hivemq.persistence.local.xodus.bucket.BucketUtils;
+import com.hivemq.persistence.payload.PublishPayloadPersistence;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import util.TestMessageUtil;
+import util.TestSingleWriterFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class MemoryPersistenceSnapshotsTest {
+
+    @Rule
+    public @NotNull TemporaryFolder temporaryFolder = new TemporaryFolder();
+    private final @NotNull SystemInformation systemInformation = mock();
+    private final @NotNull MetricsHolder metricsHolder = mock();
+    private @NotNull SingleWriterService singleWriterService;
+    private @NotNull File dataFolder;
+    private int bucketCount;
+    @Before
+    public void setUp() throws Exception {
+        singleWriterService = TestSingleWriterFactory.defaultSingleWriter();
+        bucketCount = InternalConfigurations.PERSISTENCE_BUCKET_COUNT.get();
+        dataFolder = temporaryFolder.newFolder();
+        when(systemInformation.getDataFolder()).thenReturn(dataFolder);
+        when(metricsHolder.getStoredWillMessagesCount()).thenReturn(new Counter());
+    }
+
+    @After
+    public void tearDown() {
+        singleWriterService.stop();
+    }
+
+    @Test
+    public void test_restore_without_snapshot() {
+        final Persistences persistences = new Persistences();
+        persistences.snapshots.restore();
+        assertEquals(0, persistences.clientSessions.getSessionsCount());
+    }
+
+    @Test
+    public void test_write_and_restore() {
+        final Persistences written = new Persistences();
+        final long timestamp = System.currentTimeMillis();
+        written.clientSessions.put("connected",
+                new ClientSession(true, 100),
+                timestamp,
+                BucketUtils.getBucket("connected", bucketCount));
+        final MqttWillPublish will = new MqttWillPublish.Mqtt3Builder().withTopic("will")
+                .withPayload("will-payload".getBytes())
+                .withQos(QoS.AT_LEAST_ONCE)
+                .withHivemqId("hivemqId")
+                .build();
+        written.clientSessions.put("disconnected",
+                new ClientSession(false, 100, new ClientSessionWill(will, 1L), null),
+                timestamp,
+                BucketUtils.getBucket("disconnected", bucketCount));
+        final Topic topic =
+                new Topic("topic/#", QoS.EXACTLY_ONCE, true, false, Mqtt5RetainHandling.DO_NOT_SEND, 5);
+        written.subscriptions.addSubscriptions("connected",
+                ImmutableSet.of(topic, new Topic("other", QoS.AT_MOST_ONCE)),
+                timestamp,
+                BucketUtils.getBucket("connected", bucketCount));
+        final int queueBucket = BucketUtils.getBucket("disconnected", bucketCount);
+        written.clientQueue.add("disconnected",
+                false,
+                ImmutableList.of(TestMessageUtil.createMqtt5Publish("topic/a"),
+                        TestMessageUtil.createMqtt5Publish("topic/b", QoS.AT_MOST_ONCE)),
+                100,
+                QueuedMessagesStrategy.DISCARD,
+                false,
+                queueBucket);
+        written.retainedMessages.put(new RetainedMessage("retained".getBytes(),
+                QoS.AT_LEAST_ONCE,
+                1L,
+                MqttConfigurationDefaults.TTL_DISABLED), "topic/a", BucketUtils.getBucket("topic/a", bucketCount));
+
+        written.snapshots.write(singleWriterService);
+        assertTrue(new File(dataFolder, MemoryPersistenceSnapshots.SNAPSHOT_FOLDER_NAME).isDirectory());
+
+        final Persistences restored = new Persistences();
+        restored.snapshots.restore();
+        assertFalse(new File(dataFolder, MemoryPersistenceSnapshots.SNAPSHOT_FOLDER_NAME).exists());
+
+        final ClientSession connectedSession = restored.clientSessions.getSession("connected");
+        assertNotNull(connectedSession);
+        assertFalse(connectedSession.isConnected());
+        assertEquals(100, connectedSession.getSessionExpiryIntervalSec());
+        final ClientSession disconnectedSession = restored.clientSessions.getSession("disconnected");
+        assertNotNull(disconnectedSession);
+        assertNotNull(disconnectedSession.getWillPublish());
+        assertArrayEquals("will-payload".getBytes(), disconnectedSession.getWillPublish().getPayload());
+        assertEquals(2, restored.clientSessions.getSessionsCount());
+
+        assertEquals(written.subscriptions.getSubscriptions("connected"),
+                restored.subscriptions.getSubscriptions("connected"));
+
+        assertEquals(2, restored.clientQueue.size("disconnected", false, queueBucket));
+        final ImmutableList<PUBLISH> publishes = restored.clientQueue.readNew("disconnected",
+                false,
+                ImmutableIntArray.of(1, 2),
+                Long.MAX_VALUE,
+                queueBucket);
+        assertEquals(2, publishes.size());
+        assertEquals("topic/a", publishes.get(0).getTopic());
+        assertArrayEquals("payload".getBytes(), publishes.get(0).getPayload());
+        assertEquals("topic/b", publishes.get(1).getTopic());
+
+        final RetainedMessage retainedMessage =
+                restored.retainedMessages.get("topic/a", BucketUtils.getBucket("topic/a", bucketCount));
+        assertNotNull(retainedMessage);
+        assertArrayEquals("retained".getBytes(), retainedMessage.getMessage());
+        assertNull(restored.retainedMessages.get("topic/b", BucketUtils.getBucket("topic/b", bucketCount)));
+    }
+
+    @Test(expected = UnrecoverableException.class)
+    public void test_restore_corrupted_snapshot() throws IOException {
+        final Persistences written = new Persistences();
+        written.snapshots.write(singleWriterService);
+        final File snapshotFolder = new File(dataFolder, MemoryPersistenceSnapshots.SNAPSHOT_FOLDER_NAME);
+        Files.write(new File(new File(snapshotFolder, "subscriptions"), "0.snapshot").toPath(), new byte[]{1, 2, 3});
+        new Persistences().snapshots.restore();
+    }
+
+    private class Persistences {
+
+        final @NotNull ClientSessionMemoryLocalPersistence clientSessions =
+                new ClientSessionMemoryLocalPersistence(mock(PublishPayloadPersistence.class),
+                        new MetricRegistry(),
+                        metricsHolder,
+                        mock(EventLog.class));
+        final @NotNull ClientSessionSubscriptionMemoryLocalPersistence subscriptions =
+                new ClientSessionSubscriptionMemoryLocalPersistence(new MetricRegistry());
+        final @NotNull ClientQueueMemoryLocalPersistence clientQueue =
+                new ClientQueueMemoryLocalPersistence(mock(MessageDroppedService.class), new MetricRegistry());
+        final @NotNull RetainedMessageMemoryLocalPersistence retainedMessages =
+                new RetainedMessageMemoryLocalPersistence(new MetricRegistry());
+        final @NotNull MemoryPersistenceSnapshots snapshots = new MemoryPersistenceSnapshots(systemInformation,
+                clientSessions,
+                subscriptions,
+                clientQueue,
+                retainedMessages);
+    }
+}
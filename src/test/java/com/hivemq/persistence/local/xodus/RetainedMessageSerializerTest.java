@@ -20,13 +20,18 @@ import com.hivemq.mqtt.message.QoS;
 import com.hivemq.mqtt.message.mqtt5.Mqtt5UserProperties;
 import com.hivemq.mqtt.message.mqtt5.MqttUserProperty;
 import com.hivemq.mqtt.message.mqtt5.PropertiesSerializationUtil;
+import com.hivemq.mqtt.message.publish.PUBLISH;
 import com.hivemq.persistence.RetainedMessage;
 import com.hivemq.util.Bytes;
 import org.junit.Test;
 
+import java.util.Arrays;
+
 import static java.nio.charset.StandardCharsets.UTF_8;
 import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 
 public class RetainedMessageSerializerTest {
 
@@ -44,7 +49,7 @@ public class RetainedMessageSerializerTest {
 
     @Test
     public void test_serializeValue_qos0() {
-        final byte[] value = RetainedMessageSerializer.serializeValue(new RetainedMessage(new byte[]{5, 5, 5},
+        final byte[] value = RetainedMessageSerializer.serializeLegacyValue(new RetainedMessage(new byte[]{5, 5, 5},
                 QoS.AT_MOST_ONCE,
                 10L,
                 10,
@@ -88,7 +93,7 @@ public class RetainedMessageSerializerTest {
 
     @Test
     public void test_serializeValue_qos1() {
-        final byte[] value = RetainedMessageSerializer.serializeValue(new RetainedMessage(new byte[]{5, 5, 5},
+        final byte[] value = RetainedMessageSerializer.serializeLegacyValue(new RetainedMessage(new byte[]{5, 5, 5},
                 QoS.AT_LEAST_ONCE,
                 10L,
                 10,
@@ -132,7 +137,7 @@ public class RetainedMessageSerializerTest {
 
     @Test
     public void test_serializeValue_qos2() {
-        final byte[] value = RetainedMessageSerializer.serializeValue(new RetainedMessage(new byte[]{5, 5, 5},
+        final byte[] value = RetainedMessageSerializer.serializeLegacyValue(new RetainedMessage(new byte[]{5, 5, 5},
                 QoS.EXACTLY_ONCE,
                 10L,
                 10,
@@ -199,4 +204,56 @@ public class RetainedMessageSerializerTest {
         assertArrayEquals(new byte[]{1, 2, 3}, messageFromStore.getCorrelationData());
         assertEquals(Mqtt5PayloadFormatIndicator.UTF_8, messageFromStore.getPayloadFormatIndicator());
     }
+
+    @Test
+    public void test_compact_value_omits_defaults() {
+        final RetainedMessage retainedMessage = new RetainedMessage(new byte[]{5, 5, 5},
+                QoS.AT_LEAST_ONCE,
+                10L,
+                PUBLISH.MESSAGE_EXPIRY_INTERVAL_NOT_SET,
+                Mqtt5UserProperties.NO_USER_PROPERTIES,
+                null,
+                null,
+                null,
+                null,
+                1231321231321L);
+        final byte[] compact = RetainedMessageSerializer.serializeCompactValue(retainedMessage, 1024);
+        // header, version, present flags, 6 byte timestamp, 1 byte publish id
+        assertEquals(10, compact.length);
+        assertTrue(compact.length < RetainedMessageSerializer.serializeLegacyValue(retainedMessage).length);
+        final RetainedMessage messageFromStore = RetainedMessageSerializer.deserializeValue(compact);
+        assertEquals(QoS.AT_LEAST_ONCE, messageFromStore.getQos());
+        assertEquals(10L, messageFromStore.getPublishId());
+        assertEquals(1231321231321L, messageFromStore.getTimestamp());
+        assertEquals(PUBLISH.MESSAGE_EXPIRY_INTERVAL_NOT_SET, messageFromStore.getMessageExpiryInterval());
+        assertNull(messageFromStore.getResponseTopic());
+        assertNull(messageFromStore.getPayloadFormatIndicator());
+        assertTrue(messageFromStore.getUserProperties().asList().isEmpty());
+    }
+
+    @Test
+    public void test_compact_value_compressed() {
+        final byte[] correlationData = new byte[4096];
+        Arrays.fill(correlationData, (byte) 7);
+        final RetainedMessage retainedMessage = new RetainedMessage(new byte[]{5, 5, 5},
+                QoS.EXACTLY_ONCE,
+                10L,
+                60,
+                Mqtt5UserProperties.of(MqttUserProperty.of("name", "value")),
+                "responseTopic",
+                "contentType",
+                correlationData,
+                Mqtt5PayloadFormatIndicator.UTF_8,
+                1231321231321L);
+        final byte[] compressed = RetainedMessageSerializer.serializeCompactValue(retainedMessage, 1024);
+        assertTrue(compressed.length < 1024);
+        final RetainedMessage messageFromStore = RetainedMessageSerializer.deserializeValue(compressed);
+        assertEquals(QoS.EXACTLY_ONCE, messageFromStore.getQos());
+        assertEquals(60, messageFromStore.getMessageExpiryInterval());
+        assertEquals("responseTopic", messageFromStore.getResponseTopic());
+        assertEquals("contentType", messageFromStore.getContentType());
+        assertArrayEquals(correlationData, messageFromStore.getCorrelationData());
+        assertEquals(Mqtt5PayloadFormatIndicator.UTF_8, messageFromStore.getPayloadFormatIndicator());
+        assertEquals("value", messageFromStore.getUserProperties().asList().getFirst().getValue());
+    }
 }
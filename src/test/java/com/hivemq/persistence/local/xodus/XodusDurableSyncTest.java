@@ -0,0 +1,126 @@
+/*
+ * Copyright 2019-present HiveMQ GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hivemq.persistence.local.xodus;
+
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.hivemq.configuration.service.InternalConfigurations;
+import com.hivemq.migration.meta.PersistenceType;
+import jetbrains.exodus.env.Environment;
+import jetbrains.exodus.env.Environments;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class XodusDurableSyncTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+    private final MetricRegistry metricRegistry = new MetricRegistry();
+    private Environment environment;
+    @Before
+    public void setUp() throws Exception {
+        InternalConfigurations.XODUS_PERSISTENCE_DURABLE_GROUP_COMMIT_ENABLED.set(true);
+        InternalConfigurations.XODUS_PERSISTENCE_DURABLE_GROUP_COMMIT_INTERVAL_MSEC.set(60_000);
+        InternalConfigurations.XODUS_PERSISTENCE_DURABLE_GROUP_COMMIT_MAX_WAITING.set(3);
+        InternalConfigurations.PAYLOAD_PERSISTENCE_TYPE.set(PersistenceType.FILE);
+        InternalConfigurations.RETAINED_MESSAGE_PERSISTENCE_TYPE.set(PersistenceType.FILE);
+        environment = Environments.newInstance(temporaryFolder.newFolder());
+    }
+
+    @After
+    public void tearDown() {
+        InternalConfigurations.XODUS_PERSISTENCE_DURABLE_GROUP_COMMIT_ENABLED.set(false);
+        InternalConfigurations.XODUS_PERSISTENCE_DURABLE_GROUP_COMMIT_INTERVAL_MSEC.set(5);
+        InternalConfigurations.XODUS_PERSISTENCE_DURABLE_GROUP_COMMIT_MAX_WAITING.set(1024);
+        InternalConfigurations.PAYLOAD_PERSISTENCE_TYPE.set(PersistenceType.FILE_NATIVE);
+        InternalConfigurations.RETAINED_MESSAGE_PERSISTENCE_TYPE.set(PersistenceType.FILE_NATIVE);
+        InternalConfigurations.QUEUED_MESSAGES_PERSISTENCE_TYPE.set(PersistenceType.FILE);
+        environment.close();
+    }
+
+    @Test
+    public void test_disabled() {
+        InternalConfigurations.XODUS_PERSISTENCE_DURABLE_GROUP_COMMIT_ENABLED.set(false);
+        final XodusDurableSync durableSync = new XodusDurableSync(metricRegistry);
+        durableSync.register(environment);
+        assertFalse(durableSync.isEnabled());
+        assertTrue(durableSync.awaitSync().isDone());
+    }
+
+    @Test
+    public void test_refused_with_rocksdb_persistence() {
+        InternalConfigurations.RETAINED_MESSAGE_PERSISTENCE_TYPE.set(PersistenceType.FILE_NATIVE);
+        final XodusDurableSync durableSync = new XodusDurableSync(metricRegistry);
+        durableSync.register(environment);
+        assertFalse(durableSync.isEnabled());
+        assertTrue(durableSync.awaitSync().isDone());
+    }
+
+    @Test
+    public void test_refused_with_segmented_client_queue() {
+        InternalConfigurations.QUEUED_MESSAGES_PERSISTENCE_TYPE.set(PersistenceType.FILE_SEGMENTED);
+        final XodusDurableSync durableSync = new XodusDurableSync(metricRegistry);
+        assertFalse(durableSync.isEnabled());
+    }
+
+    @Test
+    public void test_no_environments_completes_immediately() {
+        final XodusDurableSync durableSync = new XodusDurableSync(metricRegistry);
+        assertTrue(durableSync.isEnabled());
+        assertTrue(durableSync.awaitSync().isDone());
+    }
+
+    @Test
+    public void test_waiting_completed_by_one_sync() {
+        final XodusDurableSync durableSync = new XodusDurableSync(metricRegistry);
+        durableSync.register(environment);
+        final ListenableFuture<Void> first = durableSync.awaitSync();
+        final ListenableFuture<Void> second = durableSync.awaitSync();
+        assertFalse(first.isDone());
+        assertFalse(second.isDone());
+
+        durableSync.sync();
+
+        assertTrue(first.isDone());
+        assertTrue(second.isDone());
+        assertEquals(1, metricRegistry.histogram(XodusDurableSync.METRIC_PREFIX + "batch-size").getCount());
+        assertEquals(1, metricRegistry.timer(XodusDurableSync.METRIC_PREFIX + "fsync-time").getCount());
+    }
+
+    @Test(timeout = 10_000)
+    public void test_max_waiting_triggers_sync() throws Exception {
+        final XodusDurableSync durableSync = new XodusDurableSync(metricRegistry);
+        durableSync.register(environment);
+        durableSync.awaitSync();
+        durableSync.awaitSync();
+        durableSync.awaitSync().get();
+    }
+
+    @Test
+    public void test_unregistered_environment_is_not_waited_for() {
+        final XodusDurableSync durableSync = new XodusDurableSync(metricRegistry);
+        durableSync.register(environment);
+        durableSync.unregister(environment);
+        assertTrue(durableSync.awaitSync().isDone());
+    }
+}
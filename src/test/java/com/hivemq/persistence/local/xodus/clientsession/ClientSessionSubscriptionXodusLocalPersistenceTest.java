@@ -40,6 +40,7 @@ import org.junit.rules.TemporaryFolder;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.Map;
 import java.util.Random;
 import java.util.Set;
@@ -53,6 +54,7 @@ import static com.hivemq.mqtt.message.subscribe.Mqtt5Topic.DEFAULT_RETAIN_HANDLI
 import static com.hivemq.persistence.local.xodus.XodusUtils.byteIterableToBytes;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 import static org.mockito.ArgumentMatchers.anyString;
@@ -480,6 +482,33 @@ public class ClientSessionSubscriptionXodusLocalPersistenceTest {
         assertEquals(1, client2Entries.get("clientid2").size());
     }
 
+    @Test
+    public void test_get_all_subscribers_iterator() {
+        for (int i = 0; i < 60; i++) {
+            persistence.addSubscription("client" + i,
+                    new Topic("A" + i, QoS.AT_LEAST_ONCE),
+                    123L,
+                    BucketUtils.getBucket("client" + i, bucketCount));
+            persistence.addSubscription("client" + i,
+                    new Topic("B" + i, QoS.AT_LEAST_ONCE),
+                    123L,
+                    BucketUtils.getBucket("client" + i, bucketCount));
+        }
+        final Map<String, Set<Topic>> all = new HashMap<>();
+        for (int i = 0; i < bucketCount; i++) {
+            final Iterator<Map.Entry<String, ImmutableSet<Topic>>> iterator =
+                    persistence.getAllSubscribersIterator(i, 1);
+            while (iterator.hasNext()) {
+                final Map.Entry<String, ImmutableSet<Topic>> entry = iterator.next();
+                assertNull(all.put(entry.getKey(), entry.getValue()));
+            }
+        }
+        assertEquals(60, all.size());
+        for (final Map.Entry<String, Set<Topic>> entry : all.entrySet()) {
+            assertEquals(2, entry.getValue().size());
+        }
+    }
+
     @Test
     public void test_get_chunk_multiple_subscriptions() throws InterruptedException {
         for (int i = 0; i < 60; i++) {
@@ -620,6 +649,39 @@ public class ClientSessionSubscriptionXodusLocalPersistenceTest {
         assertEquals(100, clientIds.size());
     }
 
+    @Test
+    public void test_execute_in_batch_commits_all_writes() {
+        final int bucketIndex = BucketUtils.getBucket("clientid", bucketCount);
+        persistence.executeInBatch(bucketIndex, () -> {
+            persistence.addSubscription("clientid", new Topic("topic1", QoS.AT_MOST_ONCE), 123L, bucketIndex);
+            persistence.addSubscription("clientid", new Topic("topic2", QoS.AT_MOST_ONCE), 124L, bucketIndex);
+            persistence.removeSubscriptions("clientid", ImmutableSet.of("topic1"), 125L, bucketIndex);
+        });
+
+        final ImmutableSet<Topic> subscriptions = persistence.getSubscriptions("clientid");
+        assertEquals(1, subscriptions.size());
+        assertEquals("topic2", subscriptions.iterator().next().getTopic());
+    }
+
+    @Test
+    public void test_execute_in_batch_failure_discards_all_writes() {
+        final int bucketIndex = BucketUtils.getBucket("clientid", bucketCount);
+        try {
+            persistence.executeInBatch(bucketIndex, () -> {
+                persistence.addSubscription("clientid", new Topic("topic1", QoS.AT_MOST_ONCE), 123L, bucketIndex);
+                throw new IllegalStateException("test");
+            });
+            fail();
+        } catch (final IllegalStateException e) {
+            assertEquals("test", e.getMessage());
+        }
+
+        assertTrue(persistence.getSubscriptions("clientid").isEmpty());
+
+        persistence.addSubscription("clientid", new Topic("topic2", QoS.AT_MOST_ONCE), 124L, bucketIndex);
+        assertEquals(1, persistence.getSubscriptions("clientid").size());
+    }
+
     public @NotNull ArrayList<String> getRandomUniqueIds() {
         final Set<String> clientIdSet = new HashSet<>();
         final Random random = new Random();
@@ -29,6 +29,7 @@ import com.hivemq.persistence.NoSessionException;
 import com.hivemq.persistence.PersistenceEntry;
 import com.hivemq.persistence.PersistenceStartup;
 import com.hivemq.persistence.clientsession.ClientSession;
+import com.hivemq.persistence.clientsession.ClientSessionState;
 import com.hivemq.persistence.clientsession.ClientSessionWill;
 import com.hivemq.persistence.clientsession.PendingWillMessages;
 import com.hivemq.persistence.exception.InvalidSessionExpiryIntervalException;
@@ -80,18 +81,20 @@ public class ClientSessionXodusLocalPersistenceTest {
     private PublishPayloadPersistence payloadPersistence;
     private EventLog eventLog;
     private PersistenceStartup persistenceStartup;
+    private LocalPersistenceFileUtil localPersistenceFileUtil;
+    private MetricsHolder metricsHolder;
     @Before
     public void setUp() throws Exception {
         payloadPersistence = mock(PublishPayloadPersistence.class);
         eventLog = mock(EventLog.class);
-        final LocalPersistenceFileUtil localPersistenceFileUtil = mock(LocalPersistenceFileUtil.class);
+        localPersistenceFileUtil = mock(LocalPersistenceFileUtil.class);
         InternalConfigurations.PERSISTENCE_CLOSE_RETRIES.set(3);
         InternalConfigurations.PERSISTENCE_CLOSE_RETRY_INTERVAL_MSEC.set(5);
         InternalConfigurations.PERSISTENCE_BUCKET_COUNT.set(BUCKET_COUNT);
         when(localPersistenceFileUtil.getVersionedLocalPersistenceFolder(anyString(), anyString()))
                 .thenReturn(temporaryFolder.newFolder());
         persistenceStartup = new PersistenceStartup();
-        final MetricsHolder metricsHolder = mock(MetricsHolder.class);
+        metricsHolder = mock(MetricsHolder.class);
         when(metricsHolder.getStoredWillMessagesCount()).thenReturn(mock(Counter.class));
         persistence = new ClientSessionXodusLocalPersistence(localPersistenceFileUtil,
                 new EnvironmentUtil(),
@@ -628,6 +631,74 @@ public class ClientSessionXodusLocalPersistenceTest {
         assertEquals(10L, Objects.requireNonNull(session.getQueueLimit()).longValue());
     }
 
+    @Test
+    public void test_session_state_follows_writes() {
+        persistence.put("clientId", new ClientSession(true, 1000L, null, 10L), System.currentTimeMillis(), 0);
+        final ClientSessionState connectedState = persistence.getSessionState("clientId");
+        assertNotNull(connectedState);
+        assertTrue(connectedState.isConnected());
+        assertEquals(1000L, connectedState.getSessionExpiryIntervalSec());
+        assertEquals(10L, connectedState.getQueueLimit());
+
+        persistence.disconnect("clientId", System.currentTimeMillis(), false, 0, 2000L);
+        final ClientSessionState disconnectedState = persistence.getSessionState("clientId");
+        assertNotNull(disconnectedState);
+        assertFalse(disconnectedState.isConnected());
+        assertEquals(2000L, disconnectedState.getSessionExpiryIntervalSec());
+        assertEquals(10L, disconnectedState.getQueueLimit());
+
+        persistence.setSessionExpiryInterval("clientId", 3000L, 0);
+        final ClientSessionState updatedState = persistence.getSessionState("clientId");
+        assertNotNull(updatedState);
+        assertEquals(3000L, updatedState.getSessionExpiryIntervalSec());
+
+        persistence.removeWithTimestamp("clientId", 0);
+        assertNull(persistence.getSessionState("clientId"));
+    }
+
+    @Test
+    public void test_session_state_expired_and_tombstone() {
+        persistence.put("expired", new ClientSession(false, 10L), System.currentTimeMillis() - 20_000L, 0);
+        persistence.disconnect("tombstone", System.currentTimeMillis(), false, 0, SESSION_EXPIRE_ON_DISCONNECT);
+        persistence.put("valid", new ClientSession(false, 100L), System.currentTimeMillis() - 20_000L, 0);
+
+        assertNull(persistence.getSessionState("expired"));
+        assertNull(persistence.getSessionState("tombstone"));
+        assertNull(persistence.getSessionState("unknown"));
+        final ClientSessionState state = persistence.getSessionState("valid");
+        assertNotNull(state);
+        assertEquals(ClientSessionState.QUEUE_LIMIT_NOT_SET, state.getQueueLimit());
+        assertNull(state.getQueueLimitOrNull());
+
+        final Set<String> expired = persistence.cleanUp(0);
+        assertTrue(expired.contains("expired"));
+        assertNull(persistence.getSessionState("expired"));
+        assertNotNull(persistence.getSessionState("valid"));
+    }
+
+    @Test
+    public void test_session_state_restored_on_start() {
+        persistence.put("connected", new ClientSession(true, 1000L, null, 10L), System.currentTimeMillis(), 0);
+        persistence.put("disconnected", new ClientSession(false, 1000L), System.currentTimeMillis(), 1);
+        persistence.closeDB();
+
+        persistence = new ClientSessionXodusLocalPersistence(localPersistenceFileUtil,
+                new EnvironmentUtil(),
+                payloadPersistence,
+                eventLog,
+                persistenceStartup,
+                metricsHolder);
+        persistence.start();
+
+        final ClientSessionState connectedState = persistence.getSessionState("connected");
+        assertNotNull(connectedState);
+        assertTrue(connectedState.isConnected());
+        assertEquals(10L, connectedState.getQueueLimit());
+        final ClientSessionState disconnectedState = persistence.getSessionState("disconnected");
+        assertNotNull(disconnectedState);
+        assertFalse(disconnectedState.isConnected());
+    }
+
     @NotNull public ArrayList<String> getRandomUniqueIds() {
         final Set<String> clientIdSet = new HashSet<>();
         final Random random = new Random();
@@ -15,8 +15,17 @@
  */
 package com.hivemq.persistence.retained;
 
+import com.codahale.metrics.MetricRegistry;
 import com.google.common.collect.Sets;
+import com.hivemq.configuration.service.InternalConfigurations;
+import com.hivemq.configuration.service.PersistenceConfigurationService;
 import com.hivemq.extensions.iteration.Chunker;
+import com.hivemq.limitation.MemoryConsumer;
+import com.hivemq.limitation.MemoryGovernor;
+import com.hivemq.metrics.HiveMQMetrics;
+import com.hivemq.mqtt.message.dropping.MessageDroppedService;
+import com.hivemq.mqtt.message.QoS;
+import com.hivemq.mqtt.message.mqtt5.Mqtt5UserProperties;
 import com.hivemq.persistence.RetainedMessage;
 import com.hivemq.persistence.SingleWriterService;
 import com.hivemq.persistence.local.xodus.bucket.BucketUtils;
@@ -31,6 +40,7 @@ import java.util.concurrent.ExecutionException;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.Mockito.any;
@@ -51,18 +61,35 @@ public class RetainedMessagePersistenceImplTest {
     private RetainedMessagePersistenceImpl retainedMessagePersistence;
     private RetainedMessage message;
     private SingleWriterService singleWriterService;
+    private MetricRegistry metricRegistry;
+    private MemoryGovernor memoryGovernor;
+    private MessageDroppedService messageDroppedService;
     @Before
     public void setUp() throws Exception {
         message = new RetainedMessage(TestMessageUtil.createMqtt3Publish(), 1000);
         singleWriterService = TestSingleWriterFactory.defaultSingleWriter();
-        retainedMessagePersistence =
-                new RetainedMessagePersistenceImpl(localPersistence, singleWriterService, new Chunker());
+        metricRegistry = new MetricRegistry();
+        memoryGovernor = mock(MemoryGovernor.class);
+        messageDroppedService = mock(MessageDroppedService.class);
+        InternalConfigurations.RETAINED_MESSAGE_READ_CACHE_SIZE_BYTES.set(32 * 1024 * 1024);
+        final PersistenceConfigurationService persistenceConfigurationService =
+                mock(PersistenceConfigurationService.class);
+        when(persistenceConfigurationService.getMode()).thenReturn(
+                PersistenceConfigurationService.PersistenceMode.FILE);
+        retainedMessagePersistence = new RetainedMessagePersistenceImpl(localPersistence,
+                singleWriterService,
+                new Chunker(),
+                persistenceConfigurationService,
+                metricRegistry,
+                memoryGovernor,
+                messageDroppedService);
     }
 
     @After
     public void tearDown() throws Exception {
         retainedMessagePersistence.closeDB();
         singleWriterService.stop();
+        InternalConfigurations.RETAINED_MESSAGE_READ_CACHE_SIZE_BYTES.set(0);
     }
 
     @Test(expected = NullPointerException.class)
@@ -188,6 +215,25 @@ public class RetainedMessagePersistenceImplTest {
         verify(localPersistence).put(eq(message), eq("topic"), anyInt());
     }
 
+    @Test
+    public void test_persist_rejected_while_memory_governor_sheds() throws Throwable {
+        when(memoryGovernor.isShedding(MemoryConsumer.RETAINED_MESSAGES)).thenReturn(true);
+        when(memoryGovernor.getUsage(MemoryConsumer.RETAINED_MESSAGES)).thenReturn(2000L);
+        when(memoryGovernor.getLimit(MemoryConsumer.RETAINED_MESSAGES)).thenReturn(1000L);
+        try {
+            retainedMessagePersistence.persist("topic", message).get();
+        } catch (final InterruptedException | ExecutionException e) {
+            throw e.getCause();
+        }
+        verify(localPersistence, never()).put(any(RetainedMessage.class), anyString(), anyInt());
+        verify(localPersistence, never()).remove(anyString(), anyInt());
+        verify(memoryGovernor).shed(MemoryConsumer.RETAINED_MESSAGES);
+        verify(messageDroppedService).retainedMemoryExceeded("topic",
+                message.getQos().getQosNumber(),
+                2000L,
+                1000L);
+    }
+
     @Test
     public void test_cleanup() throws Exception {
         retainedMessagePersistence.cleanUp(1).get();
@@ -205,4 +251,62 @@ public class RetainedMessagePersistenceImplTest {
         retainedMessagePersistence.clear().get();
         verify(localPersistence, times(64)).clear(anyInt());
     }
+
+    @Test
+    public void test_get_served_from_read_cache() throws Exception {
+        final int bucketIndex = BucketUtils.getBucket("topic", 64);
+        when(localPersistence.get("topic", bucketIndex)).thenReturn(message);
+        assertSame(message, retainedMessagePersistence.get("topic").get());
+        assertSame(message, retainedMessagePersistence.get("topic").get());
+        verify(localPersistence, times(1)).get("topic", bucketIndex);
+        assertEquals(1, metricRegistry.counter(HiveMQMetrics.RETAINED_MESSAGES_READ_CACHE_HITS.name()).getCount());
+        assertEquals(1, metricRegistry.counter(HiveMQMetrics.RETAINED_MESSAGES_READ_CACHE_MISSES.name()).getCount());
+        assertEquals(0.5,
+                (double) metricRegistry.getGauges()
+                        .get(HiveMQMetrics.RETAINED_MESSAGES_READ_CACHE_HIT_RATIO.name())
+                        .getValue(),
+                0.0);
+        assertTrue((long) metricRegistry.getGauges()
+                .get(HiveMQMetrics.RETAINED_MESSAGES_READ_CACHE_TOTAL_SIZE.name())
+                .getValue() >= message.getEstimatedSizeInMemory());
+    }
+
+    @Test
+    public void test_read_cache_invalidated_by_persist_and_remove() throws Exception {
+        final int bucketIndex = BucketUtils.getBucket("topic", 64);
+        when(localPersistence.get("topic", bucketIndex)).thenReturn(message);
+        retainedMessagePersistence.get("topic").get();
+        retainedMessagePersistence.persist("topic", message).get();
+        retainedMessagePersistence.get("topic").get();
+        retainedMessagePersistence.remove("topic").get();
+        when(localPersistence.get("topic", bucketIndex)).thenReturn(null);
+        assertNull(retainedMessagePersistence.get("topic").get());
+        verify(localPersistence, times(3)).get("topic", bucketIndex);
+        assertEquals(0L,
+                metricRegistry.getGauges()
+                        .get(HiveMQMetrics.RETAINED_MESSAGES_READ_CACHE_TOTAL_SIZE.name())
+                        .getValue());
+    }
+
+    @Test
+    public void test_read_cache_does_not_return_expired_message() throws Exception {
+        final int bucketIndex = BucketUtils.getBucket("topic", 64);
+        // expires in half a second
+        final RetainedMessage expiringMessage = new RetainedMessage(new byte[]{1},
+                QoS.AT_MOST_ONCE,
+                1L,
+                1,
+                Mqtt5UserProperties.NO_USER_PROPERTIES,
+                null,
+                null,
+                null,
+                null,
+                System.currentTimeMillis() - 500);
+        when(localPersistence.get("topic", bucketIndex)).thenReturn(expiringMessage);
+        assertSame(expiringMessage, retainedMessagePersistence.get("topic").get());
+        Thread.sleep(600);
+        when(localPersistence.get("topic", bucketIndex)).thenReturn(null);
+        assertNull(retainedMessagePersistence.get("topic").get());
+        verify(localPersistence, times(2)).get("topic", bucketIndex);
+    }
 }
@@ -0,0 +1,126 @@
+/*
+ * Copyright 2019-present HiveMQ GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hivemq.throttling;
+
+import com.codahale.metrics.MetricRegistry;
+import com.hivemq.bootstrap.ClientConnectionContext;
+import com.hivemq.bootstrap.netty.AutoReadGate;
+import com.hivemq.configuration.service.entity.ClientRateLimits;
+import com.hivemq.configuration.service.entity.Listener;
+import com.hivemq.configuration.service.impl.listener.ListenerConfigurationService;
+import com.hivemq.extension.sdk.api.annotations.NotNull;
+import com.hivemq.metrics.HiveMQMetrics;
+import io.netty.channel.embedded.EmbeddedChannel;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class ClientRateLimiterTest {
+
+    private final @NotNull ListenerConfigurationService listenerConfigurationService = mock();
+    private final @NotNull Listener listener = mock();
+    private final @NotNull ClientConnectionContext clientConnectionContext = mock();
+    private final @NotNull MetricRegistry metricRegistry = new MetricRegistry();
+    private final @NotNull EmbeddedChannel channel = new EmbeddedChannel();
+    private @NotNull ThrottledClients throttledClients;
+    @Before
+    public void setUp() {
+        when(listener.getName()).thenReturn("listener");
+        when(clientConnectionContext.getClientId()).thenReturn("client");
+        throttledClients = new ThrottledClients(listenerConfigurationService, metricRegistry);
+    }
+
+    @Test
+    public void test_without_limits_never_throttled() {
+        final ClientRateLimiter rateLimiter = throttledClients.createRateLimiter(channel, listener);
+        for (int i = 0; i < 1000; i++) {
+            rateLimiter.publishReceived(clientConnectionContext, 1000, 0);
+        }
+        assertFalse(rateLimiter.isThrottled());
+        assertTrue(channel.config().isAutoRead());
+    }
+
+    @Test
+    public void test_listener_limits_pause_reading_until_debt_repaid() throws Exception {
+        when(listenerConfigurationService.getClientRateLimits("listener")).thenReturn(new ClientRateLimits(0, 1000));
+        final ClientRateLimiter rateLimiter = throttledClients.createRateLimiter(channel, listener);
+
+        rateLimiter.publishReceived(clientConnectionContext, 1010);
+        assertTrue(rateLimiter.isThrottled());
+        assertFalse(channel.config().isAutoRead());
+        assertEquals(1, metricRegistry.counter(HiveMQMetrics.THROTTLED_CLIENTS_TOTAL.name()).getCount());
+        assertEquals(1, metricRegistry.getGauges().get(HiveMQMetrics.THROTTLED_CLIENTS_CURRENT.name()).getValue());
+        assertEquals(List.of("client=1"), throttledClients.topThrottled());
+
+        // the debt of 10 bytes is repaid after 10 milliseconds
+        Thread.sleep(20);
+        channel.runScheduledPendingTasks();
+        assertFalse(rateLimiter.isThrottled());
+        assertTrue(channel.config().isAutoRead());
+        assertEquals(0, metricRegistry.getGauges().get(HiveMQMetrics.THROTTLED_CLIENTS_CURRENT.name()).getValue());
+    }
+
+    @Test
+    public void test_rate_limit_does_not_resume_channel_paused_by_other_owner() throws Exception {
+        when(listenerConfigurationService.getClientRateLimits("listener")).thenReturn(new ClientRateLimits(0, 1000));
+        final ClientRateLimiter rateLimiter = throttledClients.createRateLimiter(channel, listener);
+        AutoReadGate.of(channel).pause(AutoReadGate.Reason.OVERLOAD_PROTECTION);
+
+        rateLimiter.publishReceived(clientConnectionContext, 1010);
+        Thread.sleep(20);
+        channel.runScheduledPendingTasks();
+        assertFalse(rateLimiter.isThrottled());
+        assertFalse(channel.config().isAutoRead());
+    }
+
+    @Test
+    public void test_top_throttled_clients_removed_on_disconnect() {
+        when(listenerConfigurationService.getClientRateLimits("listener")).thenReturn(new ClientRateLimits(1, 0));
+        final ClientRateLimiter rateLimiter = throttledClients.createRateLimiter(channel, listener);
+        rateLimiter.publishReceived(clientConnectionContext, 10, 0);
+        rateLimiter.publishReceived(clientConnectionContext, 10, 0);
+        assertEquals(List.of("client=1"), throttledClients.topThrottled());
+
+        channel.close();
+        assertEquals(List.of(), throttledClients.topThrottled());
+    }
+
+    @Test
+    public void test_top_throttled_clients_taken_over_connection_does_not_remove_new_count() {
+        when(listenerConfigurationService.getClientRateLimits("listener")).thenReturn(new ClientRateLimits(1, 0));
+        final ClientRateLimiter rateLimiter = throttledClients.createRateLimiter(channel, listener);
+        rateLimiter.publishReceived(clientConnectionContext, 10, 0);
+        rateLimiter.publishReceived(clientConnectionContext, 10, 0);
+
+        final EmbeddedChannel newChannel = new EmbeddedChannel();
+        final ClientRateLimiter newRateLimiter = throttledClients.createRateLimiter(newChannel, listener);
+        newRateLimiter.publishReceived(clientConnectionContext, 10, 0);
+        newRateLimiter.publishReceived(clientConnectionContext, 10, 0);
+        assertEquals(List.of("client=1"), throttledClients.topThrottled());
+
+        channel.close();
+        assertEquals(List.of("client=1"), throttledClients.topThrottled());
+        newChannel.close();
+        assertEquals(List.of(), throttledClients.topThrottled());
+    }
+}
@@ -0,0 +1,75 @@
+/*
+ * Copyright 2019-present HiveMQ GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hivemq.throttling;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+
+public class TokenBucketTest {
+
+    private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    private final TokenBucket tokenBucket = new TokenBucket();
+
+    @Test
+    public void test_unlimited_never_waits() {
+        tokenBucket.setRate(0, 0);
+        assertEquals(0, tokenBucket.consume(Long.MAX_VALUE / 2, 0));
+        assertEquals(0, tokenBucket.consume(Long.MAX_VALUE / 2, 0));
+    }
+
+    @Test
+    public void test_burst_of_one_second() {
+        tokenBucket.setRate(10, 0);
+        for (int i = 0; i < 10; i++) {
+            assertEquals(0, tokenBucket.consume(1, 0));
+        }
+        assertEquals(SECOND / 10, tokenBucket.consume(1, 0));
+    }
+
+    @Test
+    public void test_debt_is_repaid_over_time() {
+        tokenBucket.setRate(100, 0);
+        assertEquals(SECOND, tokenBucket.consume(200, 0));
+        assertEquals(-100, tokenBucket.getTokens());
+        tokenBucket.consume(0, SECOND / 2);
+        assertEquals(-50, tokenBucket.getTokens());
+        assertEquals(0, tokenBucket.consume(0, SECOND));
+        assertEquals(0, tokenBucket.getTokens());
+    }
+
+    @Test
+    public void test_refill_capped_at_rate() {
+        tokenBucket.setRate(100, 0);
+        tokenBucket.consume(100, 0);
+        tokenBucket.consume(0, 10 * SECOND);
+        assertEquals(100, tokenBucket.getTokens());
+    }
+
+    @Test
+    public void test_fractions_of_tokens_are_kept() {
+        tokenBucket.setRate(10, 0);
+        tokenBucket.consume(10, 0);
+        // every call adds less than one token, together they add one
+        for (int i = 1; i <= 4; i++) {
+            tokenBucket.consume(0, i * SECOND / 40);
+        }
+        assertEquals(1, tokenBucket.getTokens());
+    }
+}
@@ -0,0 +1,120 @@
+/*
+ * Copyright 2019-present HiveMQ GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hivemq.util;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class HierarchicalTimingWheelTest {
+
+    @Test
+    public void test_fires_at_deadline() {
+        final HierarchicalTimingWheel<String> wheel = new HierarchicalTimingWheel<>(1000, 0);
+        wheel.schedule("a", 5000);
+        wheel.schedule("b", 4500);
+        assertTrue(wheel.advance(3999).isEmpty());
+        assertTrue(wheel.advance(4999).isEmpty());
+        assertEquals(Set.of("a", "b"), Set.copyOf(wheel.advance(5000)));
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    public void test_cancel_and_reschedule() {
+        final HierarchicalTimingWheel<String> wheel = new HierarchicalTimingWheel<>(1000, 0);
+        wheel.schedule("a", 5000);
+        wheel.schedule("b", 5000);
+        assertTrue(wheel.cancel("a"));
+        assertFalse(wheel.cancel("a"));
+        wheel.schedule("b", 100_000);
+        assertTrue(wheel.advance(10_000).isEmpty());
+        assertTrue(wheel.contains("b"));
+        assertEquals(ImmutableList.of("b"), wheel.advance(100_000));
+    }
+
+    @Test
+    public void test_passed_deadline_fires_with_next_advance() {
+        final HierarchicalTimingWheel<String> wheel = new HierarchicalTimingWheel<>(1000, 10_000);
+        wheel.schedule("a", 2000);
+        wheel.schedule("b", 10_000);
+        wheel.schedule("c", 10_001);
+        assertEquals(ImmutableSet.of("a", "b"), ImmutableSet.copyOf(wheel.advance(10_500)));
+        assertEquals(ImmutableList.of("c"), wheel.advance(11_000));
+    }
+
+    @Test
+    public void test_deadline_beyond_all_levels() {
+        // 4 slots and 2 levels span 16 ticks
+        final HierarchicalTimingWheel<String> wheel = new HierarchicalTimingWheel<>(1, 2, 2, 0);
+        wheel.schedule("a", 1000);
+        wheel.schedule("b", 17);
+        assertEquals(ImmutableList.of("b"), wheel.advance(999));
+        assertEquals(ImmutableList.of("a"), wheel.advance(1000));
+    }
+
+    @Test
+    public void test_advance_after_long_pause() {
+        final HierarchicalTimingWheel<String> wheel = new HierarchicalTimingWheel<>(1000, 0);
+        wheel.schedule("a", 1000L * Integer.MAX_VALUE);
+        assertTrue(wheel.advance(1000L * Integer.MAX_VALUE - 1).isEmpty());
+        assertEquals(ImmutableList.of("a"), wheel.advance(1000L * Integer.MAX_VALUE));
+    }
+
+    @Test
+    public void test_random_deadlines_fire_in_their_tick() {
+        final Random random = new Random(42);
+        final HierarchicalTimingWheel<Integer> wheel = new HierarchicalTimingWheel<>(10, 2, 3, 0);
+        final Map<Integer, Long> deadlines = new HashMap<>();
+        long now = 0;
+        for (int round = 0; round < 2000; round++) {
+            for (int i = 0; i < 3; i++) {
+                final int key = random.nextInt(200);
+                if (random.nextInt(4) == 0) {
+                    assertEquals(deadlines.remove(key) != null, wheel.cancel(key));
+                } else {
+                    final long deadline = now + random.nextInt(2000) - 100;
+                    wheel.schedule(key, deadline);
+                    deadlines.put(key, deadline);
+                }
+            }
+            now += random.nextInt(50);
+            final Set<Integer> expected = new HashSet<>();
+            final List<Integer> due = new ArrayList<>();
+            for (final Map.Entry<Integer, Long> entry : deadlines.entrySet()) {
+                // a key fires with the first advance that reaches the tick of its deadline
+                if (-Math.floorDiv(-entry.getValue(), 10) <= Math.floorDiv(now, 10)) {
+                    expected.add(entry.getKey());
+                    due.add(entry.getKey());
+                }
+            }
+            due.forEach(deadlines::remove);
+            assertEquals(expected, Set.copyOf(wheel.advance(now)));
+            assertEquals(deadlines.size(), wheel.size());
+        }
+    }
+}
@@ -0,0 +1,104 @@
+/*
+ * Copyright 2019-present HiveMQ GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hivemq.util;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import org.junit.Test;
+
+import static com.hivemq.util.Utf8TopicValidator.MALFORMED;
+import static com.hivemq.util.Utf8TopicValidator.VALID;
+import static com.hivemq.util.Utf8TopicValidator.WILDCARD;
+import static com.hivemq.util.Utf8TopicValidator.validateTopicName;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertEquals;
+
+public class Utf8TopicValidatorTest {
+
+    @Test
+    public void test_empty() {
+        assertEquals(VALID, validate(""));
+    }
+
+    @Test
+    public void test_valid() {
+        assertEquals(VALID, validate("topic"));
+        assertEquals(VALID, validate("a/b/c"));
+        assertEquals(VALID, validate("/topic/"));
+        assertEquals(VALID, validate("some/longer/topic/with/more/than/eight-bytes"));
+        assertEquals(VALID, validate("tö/pic/ümlauts"));
+    }
+
+    @Test
+    public void test_wildcards() {
+        assertEquals(WILDCARD, validate("topic/+"));
+        assertEquals(WILDCARD, validate("#"));
+        assertEquals(WILDCARD, validate("a/long/topic/+/with/wildcard"));
+        assertEquals(WILDCARD, validate("a/long/topic/with/wildcard/#"));
+        assertEquals(WILDCARD, validate("ümlaut/+"));
+    }
+
+    @Test
+    public void test_null_character() {
+        assertEquals(MALFORMED, validate("topic\u0000"));
+        assertEquals(MALFORMED, validate("a/long/top\u0000ic/name"));
+        assertEquals(MALFORMED, validate("ümlaut/\u0000"));
+    }
+
+    @Test
+    public void test_malformed_takes_precedence_over_wildcard() {
+        assertEquals(MALFORMED, validate("#/long/top\u0000ic/name"));
+    }
+
+    @Test
+    public void test_control_characters() {
+        assertEquals(MALFORMED, validate("a/long/top\u0001ic/name"));
+        assertEquals(MALFORMED, validate("a/long/top\u007Fic/name"));
+        assertEquals(MALFORMED, validate("top\u001Fic"));
+        assertEquals(MALFORMED, validate("ümlaut/\u0085"));
+    }
+
+    @Test
+    public void test_control_characters_not_validated() {
+        final ByteBuf buf = Unpooled.wrappedBuffer("a/long/top\u0001ic/name".getBytes(UTF_8));
+        assertEquals(VALID, validateTopicName(buf, 0, buf.readableBytes(), true, false));
+    }
+
+    @Test
+    public void test_nothing_validated() {
+        final ByteBuf buf = Unpooled.wrappedBuffer("a/long/top\u0000ic/name".getBytes(UTF_8));
+        assertEquals(VALID, validateTopicName(buf, 0, buf.readableBytes(), false, false));
+    }
+
+    @Test
+    public void test_not_well_formed() {
+        final byte[] bytes = {'a', '/', 'l', 'o', 'n', 'g', '/', (byte) 0xC3, 't', 'o', 'p', 'i', 'c'};
+        final ByteBuf buf = Unpooled.wrappedBuffer(bytes);
+        assertEquals(MALFORMED, validateTopicName(buf, 0, bytes.length, true, true));
+    }
+
+    @Test
+    public void test_validates_range_only() {
+        final ByteBuf buf = Unpooled.wrappedBuffer("++a/long/topic/name\u0000".getBytes(UTF_8));
+        assertEquals(VALID, validateTopicName(buf, 2, buf.readableBytes() - 3, true, true));
+        assertEquals(0, buf.readerIndex());
+    }
+
+    private static int validate(final String topic) {
+        final ByteBuf buf = Unpooled.wrappedBuffer(topic.getBytes(UTF_8));
+        return validateTopicName(buf, 0, buf.readableBytes(), true, true);
+    }
+}
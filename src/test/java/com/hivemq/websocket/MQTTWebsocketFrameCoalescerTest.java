@@ -0,0 +1,77 @@
+/*
+ * Copyright 2019-present HiveMQ GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hivemq.websocket;
+
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.http.websocketx.BinaryWebSocketFrame;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class MQTTWebsocketFrameCoalescerTest {
+
+    @Test
+    public void test_packets_until_flush_are_one_frame() {
+        final EmbeddedChannel channel = new EmbeddedChannel(new MQTTWebsocketFrameCoalescer(1024));
+        final ChannelFuture first = channel.write(Unpooled.wrappedBuffer(new byte[]{1, 2}));
+        final ChannelFuture second = channel.write(Unpooled.wrappedBuffer(new byte[]{3, 4, 5}));
+        assertNull(channel.readOutbound());
+        assertFalse(first.isDone());
+
+        channel.flush();
+
+        final BinaryWebSocketFrame frame = channel.readOutbound();
+        assertEquals(5, frame.content().readableBytes());
+        assertEquals(1, frame.content().getByte(0));
+        assertEquals(5, frame.content().getByte(4));
+        assertNull(channel.readOutbound());
+        assertTrue(first.isSuccess());
+        assertTrue(second.isSuccess());
+        frame.release();
+    }
+
+    @Test
+    public void test_max_frame_size_writes_frame_before_flush() {
+        final EmbeddedChannel channel = new EmbeddedChannel(new MQTTWebsocketFrameCoalescer(4));
+        channel.write(Unpooled.wrappedBuffer(new byte[]{1, 2}));
+        channel.write(Unpooled.wrappedBuffer(new byte[]{3, 4}));
+        channel.write(Unpooled.wrappedBuffer(new byte[]{5}));
+        channel.flush();
+
+        final BinaryWebSocketFrame first = channel.readOutbound();
+        final BinaryWebSocketFrame second = channel.readOutbound();
+        assertEquals(4, first.content().readableBytes());
+        assertEquals(1, second.content().readableBytes());
+        first.release();
+        second.release();
+    }
+
+    @Test
+    public void test_pending_packets_released_on_close() {
+        final EmbeddedChannel channel = new EmbeddedChannel(new MQTTWebsocketFrameCoalescer(1024));
+        final ChannelFuture future = channel.write(Unpooled.wrappedBuffer(new byte[]{1, 2}));
+
+        channel.pipeline().removeFirst();
+
+        assertFalse(future.isSuccess());
+        assertTrue(future.isDone());
+    }
+}
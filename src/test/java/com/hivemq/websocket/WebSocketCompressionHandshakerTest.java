@@ -0,0 +1,85 @@
+/*
+ * Copyright 2019-present HiveMQ GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hivemq.websocket;
+
+import com.codahale.metrics.MetricRegistry;
+import com.hivemq.configuration.service.entity.WebsocketCompression;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.http.websocketx.BinaryWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.WebSocketFrame;
+import io.netty.handler.codec.http.websocketx.extensions.WebSocketExtension;
+import io.netty.handler.codec.http.websocketx.extensions.WebSocketExtensionData;
+import io.netty.handler.codec.http.websocketx.extensions.WebSocketServerExtension;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class WebSocketCompressionHandshakerTest {
+
+    private final MetricRegistry metricRegistry = new MetricRegistry();
+    private EmbeddedChannel channel;
+    @Before
+    public void setUp() {
+        final WebSocketCompressionHandshaker handshaker =
+                new WebSocketCompressionHandshaker(new WebsocketCompression(true, 6, 15, 64),
+                        new WebSocketCompressionMetrics(metricRegistry, "listener"));
+        final WebSocketServerExtension extension =
+                handshaker.handshakeExtension(new WebSocketExtensionData("permessage-deflate", Map.of()));
+        assertNotNull(extension);
+        channel = new EmbeddedChannel(extension.newExtensionEncoder());
+    }
+
+    @Test
+    public void test_unknown_extension_not_negotiated() {
+        final WebSocketCompressionHandshaker handshaker =
+                new WebSocketCompressionHandshaker(new WebsocketCompression(true, 6, 15, 64),
+                        new WebSocketCompressionMetrics(metricRegistry, "listener"));
+        assertNull(handshaker.handshakeExtension(new WebSocketExtensionData("x-unknown", Map.of())));
+    }
+
+    @Test
+    public void test_large_frame_compressed_and_measured() {
+        channel.writeAndFlush(new BinaryWebSocketFrame(Unpooled.wrappedBuffer(new byte[1000])));
+
+        final WebSocketFrame frame = channel.readOutbound();
+        assertTrue((frame.rsv() & WebSocketExtension.RSV1) != 0);
+        final String prefix = WebSocketCompressionMetrics.METRIC_PREFIX + "listener.compression.";
+        assertEquals(1000, metricRegistry.counter(prefix + "bytes.uncompressed").getCount());
+        assertEquals(frame.content().readableBytes(), metricRegistry.counter(prefix + "bytes.compressed").getCount());
+        assertEquals(1, metricRegistry.timer(prefix + "time").getCount());
+        assertTrue((Double) metricRegistry.getGauges().get(prefix + "ratio").getValue() < 0.1);
+        frame.release();
+    }
+
+    @Test
+    public void test_small_frame_not_compressed() {
+        channel.writeAndFlush(new BinaryWebSocketFrame(Unpooled.wrappedBuffer(new byte[10])));
+
+        final WebSocketFrame frame = channel.readOutbound();
+        assertEquals(0, frame.rsv() & WebSocketExtension.RSV1);
+        assertEquals(10, frame.content().readableBytes());
+        final String prefix = WebSocketCompressionMetrics.METRIC_PREFIX + "listener.compression.";
+        assertEquals(0, metricRegistry.counter(prefix + "bytes.uncompressed").getCount());
+        frame.release();
+    }
+}
@@ -15,8 +15,12 @@
  */
 package com.hivemq.websocket;
 
+import com.codahale.metrics.MetricRegistry;
 import com.google.common.collect.Lists;
+import com.hivemq.configuration.service.InternalConfigurations;
+import com.hivemq.configuration.service.entity.WebsocketCompression;
 import com.hivemq.configuration.service.entity.WebsocketListener;
+import com.hivemq.metrics.MetricsHolder;
 import io.netty.channel.embedded.EmbeddedChannel;
 import org.junit.Before;
 import org.junit.Test;
@@ -29,14 +33,17 @@ import static com.hivemq.bootstrap.netty.ChannelHandlerNames.HTTP_OBJECT_AGGREGA
 import static com.hivemq.bootstrap.netty.ChannelHandlerNames.HTTP_SERVER_CODEC;
 import static com.hivemq.bootstrap.netty.ChannelHandlerNames.MQTT_WEBSOCKET_ENCODER;
 import static com.hivemq.bootstrap.netty.ChannelHandlerNames.WEBSOCKET_BINARY_FRAME_HANDLER;
+import static com.hivemq.bootstrap.netty.ChannelHandlerNames.WEBSOCKET_SERVER_EXTENSION_HANDLER;
 import static com.hivemq.bootstrap.netty.ChannelHandlerNames.WEBSOCKET_SERVER_PROTOCOL_HANDLER;
 import static com.hivemq.bootstrap.netty.ChannelHandlerNames.WEBSOCKET_TEXT_FRAME_HANDLER;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
 public class WebSocketInitializerTest {
 
     private final EmbeddedChannel channel = new EmbeddedChannel();
+    private final MetricsHolder metricsHolder = new MetricsHolder(new MetricRegistry());
     @Before
     public void setUp() throws Exception {
         channel.pipeline().addLast("dummy", new DummyHandler());
@@ -46,7 +53,7 @@ public class WebSocketInitializerTest {
     public void test_handler_in_pipeline() {
         final WebsocketListener websocketListener =
                 new WebsocketListener.Builder().port(8000).bindAddress("0.0.0.0").build();
-        final WebSocketInitializer webSocketInitializer = new WebSocketInitializer(websocketListener);
+        final WebSocketInitializer webSocketInitializer = new WebSocketInitializer(websocketListener, metricsHolder);
         webSocketInitializer.addHandlers(channel, "dummy");
         final List<String> handlerNames = channel.pipeline().names();
         assertTrue(handlerNames.contains(HTTP_SERVER_CODEC));
@@ -61,7 +68,7 @@ public class WebSocketInitializerTest {
     public void test_handler_order() {
         final WebsocketListener websocketListener =
                 new WebsocketListener.Builder().port(8000).bindAddress("0.0.0.0").build();
-        final WebSocketInitializer webSocketInitializer = new WebSocketInitializer(websocketListener);
+        final WebSocketInitializer webSocketInitializer = new WebSocketInitializer(websocketListener, metricsHolder);
         webSocketInitializer.addHandlers(channel, "dummy");
         final List<String> handlerNames = channel.pipeline().names();
         final int hscIdx = handlerNames.indexOf(HTTP_SERVER_CODEC);
@@ -77,13 +84,50 @@ public class WebSocketInitializerTest {
         assertTrue(wtfhIdx < mweIdx);
     }
 
+    @Test
+    public void test_compression_disabled_no_extension_handler() {
+        final WebsocketListener websocketListener =
+                new WebsocketListener.Builder().port(8000).bindAddress("0.0.0.0").build();
+        new WebSocketInitializer(websocketListener, metricsHolder).addHandlers(channel, "dummy");
+        assertFalse(channel.pipeline().names().contains(WEBSOCKET_SERVER_EXTENSION_HANDLER));
+        assertTrue(channel.pipeline().get(MQTT_WEBSOCKET_ENCODER) instanceof MQTTWebsocketEncoder);
+    }
+
+    @Test
+    public void test_frame_coalescing_enabled() {
+        InternalConfigurations.WEBSOCKET_FRAME_COALESCING_MAX_BYTES.set(65536);
+        try {
+            final WebsocketListener websocketListener =
+                    new WebsocketListener.Builder().port(8000).bindAddress("0.0.0.0").build();
+            new WebSocketInitializer(websocketListener, metricsHolder).addHandlers(channel, "dummy");
+            assertTrue(channel.pipeline().get(MQTT_WEBSOCKET_ENCODER) instanceof MQTTWebsocketFrameCoalescer);
+        } finally {
+            InternalConfigurations.WEBSOCKET_FRAME_COALESCING_MAX_BYTES.set(0);
+        }
+    }
+
+    @Test
+    public void test_compression_enabled_extension_handler_before_protocol_handler() {
+        final WebsocketListener websocketListener = new WebsocketListener.Builder().port(8000)
+                .bindAddress("0.0.0.0")
+                .compression(new WebsocketCompression(true, 6, 15, 256))
+                .build();
+        new WebSocketInitializer(websocketListener, metricsHolder).addHandlers(channel, "dummy");
+        final List<String> handlerNames = channel.pipeline().names();
+        final int hoaIdx = handlerNames.indexOf(HTTP_OBJECT_AGGREGATOR);
+        final int wsehIdx = handlerNames.indexOf(WEBSOCKET_SERVER_EXTENSION_HANDLER);
+        final int wsphIdx = handlerNames.indexOf(WEBSOCKET_SERVER_PROTOCOL_HANDLER);
+        assertTrue(hoaIdx < wsehIdx);
+        assertTrue(wsehIdx < wsphIdx);
+    }
+
     @Test
     public void test_no_subprotocols() {
         final WebsocketListener websocketListener = new WebsocketListener.Builder().port(8000)
                 .bindAddress("0.0.0.0")
                 .subprotocols(new ArrayList<>())
                 .build();
-        final WebSocketInitializer webSocketInitializer = new WebSocketInitializer(websocketListener);
+        final WebSocketInitializer webSocketInitializer = new WebSocketInitializer(websocketListener, metricsHolder);
         final String subprotocolString = webSocketInitializer.getSubprotocolString();
         assertEquals("", subprotocolString);
     }
@@ -94,7 +138,7 @@ public class WebSocketInitializerTest {
                 .bindAddress("0.0.0.0")
                 .subprotocols(Lists.newArrayList("mqttv3.1"))
                 .build();
-        final WebSocketInitializer webSocketInitializer = new WebSocketInitializer(websocketListener);
+        final WebSocketInitializer webSocketInitializer = new WebSocketInitializer(websocketListener, metricsHolder);
         final String subprotocolString = webSocketInitializer.getSubprotocolString();
         assertEquals("mqttv3.1", subprotocolString);
     }
@@ -105,7 +149,7 @@ public class WebSocketInitializerTest {
                 .bindAddress("0.0.0.0")
                 .subprotocols(Lists.newArrayList("mqttv3.1", "mqtt"))
                 .build();
-        final WebSocketInitializer webSocketInitializer = new WebSocketInitializer(websocketListener);
+        final WebSocketInitializer webSocketInitializer = new WebSocketInitializer(websocketListener, metricsHolder);
         final String subprotocolString = webSocketInitializer.getSubprotocolString();
         assertEquals("mqttv3.1,mqtt", subprotocolString);
     }
@@ -40,6 +40,7 @@ import com.hivemq.codec.decoder.mqtt5.Mqtt5UnsubscribeDecoder;
 import com.hivemq.configuration.HivemqId;
 import com.hivemq.configuration.service.FullConfigurationService;
 import com.hivemq.extension.sdk.api.annotations.NotNull;
+import com.hivemq.limitation.MemoryGovernor;
 import com.hivemq.limitation.TopicAliasLimiterImpl;
 import com.hivemq.logging.EventLog;
 import com.hivemq.metrics.MetricsHolder;
@@ -52,6 +53,7 @@ import com.hivemq.util.ClientIds;
 
 import static com.hivemq.mqtt.message.connect.Mqtt5CONNECT.SESSION_EXPIRY_MAX;
 import static com.hivemq.mqtt.message.publish.PUBLISH.MESSAGE_EXPIRY_INTERVAL_MAX;
+import static org.mockito.Mockito.mock;
 
 /**
  * @author Christoph Schäbel
@@ -89,7 +91,7 @@ public class TestMqttDecoder {
                         new Mqtt5PublishDecoder(disconnector,
                                 hiveMQId,
                                 fullConfigurationService,
-                                new TopicAliasLimiterImpl()),
+                                new TopicAliasLimiterImpl(new MetricRegistry(), mock(MemoryGovernor.class))),
                         new Mqtt5DisconnectDecoder(disconnector, fullConfigurationService),
                         new Mqtt5SubscribeDecoder(disconnector, fullConfigurationService),
                         new Mqtt5PubackDecoder(disconnector, fullConfigurationService),